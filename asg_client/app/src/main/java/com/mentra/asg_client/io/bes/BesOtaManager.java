@@ -6,6 +6,7 @@ import android.util.Log;
 import com.mentra.asg_client.io.bes.events.BesOtaProgressEvent;
 import com.mentra.asg_client.utils.WakeLockManager;
 import com.mentra.asg_client.io.bes.protocol.*;
+import com.mentra.asg_client.io.bes.util.BesFirmwareImage;
 import com.mentra.asg_client.io.bes.util.BesOtaUtil;
 import com.mentra.asg_client.io.bluetooth.core.ComManager;
 import com.mentra.asg_client.io.bluetooth.utils.ByteUtil;
@@ -13,8 +14,6 @@ import com.mentra.asg_client.io.bluetooth.utils.ByteUtil;
 import org.greenrobot.eventbus.EventBus;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 
 /**
@@ -34,6 +33,10 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
     private static final long WAKELOCK_TIMEOUT_MS = 300000; // 5 minutes
     private static final long BES_TOTAL_TIMEOUT_MS = 300000; // 5 minutes total operation timeout
     private static final long BES_AUTH_TIMEOUT_MS = 30000; // 30 seconds authorization timeout
+    // Data packets sent ahead of their ack. 1 keeps the stop-and-wait flow the BES2700 was
+    // validated with; raise it with setPacketsInFlight() once the chip's UART buffer allows.
+    private static final int DEFAULT_PACKETS_IN_FLIGHT = 1;
+    private static final int MAX_SEGMENT_RETRIES = 2;
     private Context mContext;
 
     private long operationStartTime = 0;
@@ -42,13 +45,14 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
 
     private String filePath;
     private boolean bInit = false;
-    private byte[] fileData = null;
+    private BesFirmwareImage image = null;
     private int fileLen = 0;
-    private int sentPos = 0;
-    private int curSentLen = 0;
-    private int confirmTimes = 0;
-    private int confirmSentPos = 0;
-    private boolean bWait4Confirm = false;
+    private int packetsInFlight = DEFAULT_PACKETS_IN_FLIGHT;
+    private volatile BesSegmentTransfer transfer = null;
+    private boolean transferDone = false;
+    private android.os.HandlerThread ackWatchdogThread;
+    private volatile android.os.Handler ackWatchdogHandler;
+    private Runnable ackWatchdogRunnable;
     private boolean isWaitingForAuthorization = false;
     
     private ComManager comManager;
@@ -137,6 +141,14 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
     public void registerCmdListener(BesOtaCommandListener listener) {
         mListener = listener;
     }
+
+    /**
+     * Set how many firmware data packets may wait for their ack at once (applies to the next update)
+     * @param packets 1 for stop-and-wait
+     */
+    public void setPacketsInFlight(int packets) {
+        packetsInFlight = Math.max(1, packets);
+    }
     
     /**
      * Query current firmware version from BES device (without starting OTA)
@@ -202,31 +214,27 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
         Log.d(TAG, "✅ File exists, size: " + f.length() + " bytes");
         try {
             fileLen = (int) f.length();
-            FileInputStream inputStream = new FileInputStream(filePath);
-            Log.d(TAG, "📥 Loading firmware into memory, size=" + fileLen + " bytes");
-            fileData = new byte[fileLen];
-            int bytesRead = inputStream.read(fileData, 0, fileLen);
-            inputStream.close();
-            Log.i(TAG, "✅ Firmware loaded into memory: " + bytesRead + " bytes");
-
-            // Calculate and log CRC32 for debugging
-            long crc32 = BesOtaUtil.crc32(fileData, 0, fileLen);
+            if (fileLen > BesOtaUtil.MAX_FILE_SIZE) {
+                Log.e(TAG, "❌ BES firmware file too big, len=" + fileLen + " (max: " + BesOtaUtil.MAX_FILE_SIZE + ")");
+                return false;
+            }
+            // Mapped rather than loaded: packets are copied from the page cache as they are sent
+            image = BesFirmwareImage.open(f);
+            fileLen = image.size();
+            Log.d(TAG, "📥 Firmware mapped, size=" + fileLen + " bytes");
+
+            // Whole-image CRC32 for SetStartInfo; the one full pass over the file
+            long crc32 = image.crc32();
             Log.i(TAG, "========== BesOtaManager CRC32 Debug ==========");
             Log.i(TAG, "Firmware CRC32 (decimal): " + crc32);
             Log.i(TAG, "Firmware CRC32 (hex): 0x" + String.format("%08X", crc32));
             Log.i(TAG, "================================================");
 
             bInit = true;
-            if (fileLen > BesOtaUtil.MAX_FILE_SIZE) {
-                Log.e(TAG, "❌ BES firmware file too big, len=" + fileLen + " (max: " + BesOtaUtil.MAX_FILE_SIZE + ")");
-                return false;
-            }
             Log.i(TAG, "✅ BES firmware initialization complete - ready to transmit " + fileLen + " bytes");
             return true;
-        } catch (FileNotFoundException e) {
-            Log.e(TAG, "❌ BES firmware file not found", e);
         } catch (IOException e) {
-            Log.e(TAG, "❌ Error reading BES firmware file", e);
+            Log.e(TAG, "❌ Error mapping BES firmware file", e);
         }
         return false;
     }
@@ -253,7 +261,6 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
         isBesOtaInProgress = true;
         
         // DO NOT enable OTA mode yet - wait for authorization
-        // DO NOT set fast mode yet - wait for authorization
         
         // Emit started event (for internal state management, not sent to phone)
         EventBus.getDefault().post(BesOtaProgressEvent.createStarted(fileLen));
@@ -296,6 +303,7 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
         }
 
         operationStartTime = 0;
+        stopAckWatchdog();
 
         // Release wakelock
         WakeLockManager.releaseCpuWakeLock();
@@ -305,12 +313,10 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
         isWaitingForAuthorization = false;
         if (comManager != null) {
             comManager.setOtaUpdating(false);
-            comManager.setFastMode(false);
         }
         bInit = false;
-        fileData = null;
-        sentPos = 0;
-        confirmTimes = 0;
+        image = null;
+        transfer = null;
     }
 
     /**
@@ -336,7 +342,6 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
         // NOW enable OTA mode (routes UART to OTA listener)
         if (comManager != null) {
             comManager.setOtaUpdating(true);
-            comManager.setFastMode(true);
         }
         
         // NOW start the actual OTA protocol
@@ -400,9 +405,7 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
     public byte[] SCmd_SetStartInfo() {
         if (!bInit) return null;
         BesCmd_SetStartInfo cmd = new BesCmd_SetStartInfo();
-        if (!cmd.setFilePath(filePath)) {
-            return null;
-        }
+        cmd.setImageInfo(image.size(), image.crc32());
         return cmd.getSendData();
     }
 
@@ -418,43 +421,13 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
             cmd.setUpdateBtAddress(true, btAddress);
         if (bleAddress != null && bleAddress.length() > 0)
             cmd.setUpdateBleAddress(true, bleAddress);
-        if (!cmd.setFilePath(filePath)) {
-            return null;
-        }
-        bWait4Confirm = false;
+        cmd.setImageTail(image.tail(4));
         return cmd.getSendData();
     }
     
-    public byte[] SCmd_SendFileData() {
-        if (!bInit) {
-            Log.e(TAG, "❌ SCmd_SendFileData called but not initialized");
-            return null;
-        }
-        BesCmd_SendData cmd = new BesCmd_SendData();
-        int len = curSentLen;
-        if (len > 0) {
-            byte[] data = new byte[len];
-            System.arraycopy(fileData, sentPos, data, 0, len);
-            cmd.setFileData(data);
-            return cmd.getSendData();
-        }
-        Log.w(TAG, "⚠️ curSentLen is 0 - no data to send");
-        return null;
-    }
-
-    public void addSentSize(int size) {
-        sentPos += size;
-    }
-
-    public void crc32ConfirmSuccess() {
-        confirmTimes++;
-        confirmSentPos = sentPos;
-        bWait4Confirm = false;
-        Log.i(TAG, "✅ CRC32 verification successful - confirmTimes=" + confirmTimes + ", confirmed " + confirmSentPos + "/" + fileLen + " bytes");
-    }
-
     public int getConfirmLength() {
-        return confirmSentPos;
+        BesSegmentTransfer t = transfer;
+        return t != null ? t.getConfirmedLength() : 0;
     }
     
     public int getTotalLength() {
@@ -462,39 +435,7 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
     }
     
     public boolean isSentFinish() {
-        return confirmSentPos == fileLen;
-    }
-
-    public boolean isNeedSegmentVerify() {
-        if (bWait4Confirm) {
-            Log.d(TAG, "⏳ Waiting for segment verification confirmation");
-            return true;
-        }
-        int minSize = Math.min(BesOtaUtil.SEGMENT_SIZE * (confirmTimes + 1), fileLen);
-        if (sentPos + BesOtaUtil.PACKET_SIZE >= minSize) {
-            curSentLen = minSize - sentPos;
-            bWait4Confirm = true;
-            Log.i(TAG, "🔍 Segment boundary reached - requesting verification (segment " + (confirmTimes + 1) + ", size=" + curSentLen + " bytes)");
-        } else {
-            curSentLen = BesOtaUtil.PACKET_SIZE;
-        }
-        return false;
-    }
-
-    public byte[] SCmd_SegmentVerify() {
-        if (!bInit) return null;
-        int srcPos = BesOtaUtil.SEGMENT_SIZE * confirmTimes;
-        byte[] crcSegmentData = new byte[sentPos - srcPos];
-        System.arraycopy(fileData, srcPos, crcSegmentData, 0, crcSegmentData.length);
-        long crc32 = BesOtaUtil.crc32(crcSegmentData, 0, crcSegmentData.length);
-        Log.i(TAG, "🔍 Computing segment CRC32 - segment=" + (confirmTimes + 1) + 
-                   ", srcPos=" + srcPos + ", sentPos=" + sentPos + 
-                   ", segmentLen=" + crcSegmentData.length + ", CRC32=0x" + Long.toHexString(crc32).toUpperCase());
-        byte[] crcBytes = BesOtaUtil.long2Bytes(crc32);
-        Log.d(TAG, "🔍 CRC32 bytes: " + ByteUtil.outputHexString(crcBytes, 0, crcBytes.length));
-        BesCmd_SegmentVerify cmd = new BesCmd_SegmentVerify();
-        cmd.setSegmentCrc32(crcBytes);
-        return cmd.getSendData();
+        return getConfirmLength() == fileLen;
     }
 
     public byte[] SCmd_FinshSend() {
@@ -719,50 +660,38 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
         }
         else if (msg.cmd == BesProtocolConstants.RCMD_SET_CONFIG) {
             if (msg.len == 1 && msg.body != null && msg.body[0] == 1) {
-                sendOtaData();
+                startTransfer();
             } else {
                 Log.e(TAG, "Set config error");
             }
         }
         else if (msg.cmd == BesProtocolConstants.RCMD_SEND_DATA) {
-            sendOtaData();
+            BesSegmentTransfer t = transfer;
+            if (t != null) {
+                onTransferStatus(t.onDataAck(android.os.SystemClock.elapsedRealtime()));
+            }
         }
         else if (msg.cmd == BesProtocolConstants.RCMD_SEGMENT_VERIFY) {
             Log.d(TAG, "Received SegmentVerify command, len=" + msg.len);
             Log.d(TAG, "Received SegmentVerify command, body=" + (msg.body != null ? ByteUtil.outputHexString(msg.body, 0, msg.body.length) : "null"));
-            if (msg.len == 1 && msg.body != null && msg.body[0] == 1) {
+            BesSegmentTransfer t = transfer;
+            if (t == null) {
+                return;
+            }
+            boolean ok = msg.len == 1 && msg.body != null && msg.body[0] == 1;
+            if (!ok) {
+                Log.w(TAG, "Segment verify error at " + t.getConfirmedLength() + "/" + getTotalLength()
+                        + " - resending segment from its start");
+            }
+            onTransferStatus(t.onSegmentVerified(ok, android.os.SystemClock.elapsedRealtime()));
+            if (ok) {
                 int sent = getConfirmLength();
                 int percent = 100 * sent / getTotalLength();
                 Log.i(TAG, "OTA progress: " + percent + "% (" + sent + "/" + getTotalLength() + " bytes)");
-                
+
                 // Note: BES install progress is sent to phone via sr_adota from BES chip directly
                 // We don't post PROGRESS events here because UART is busy and can't send to phone anyway
                 // Phone (MentraLive) maps sr_adota → ota_status for the app UI
-                Log.d(TAG, "BES install progress: " + percent + "% (" + sent + "/" + getTotalLength() + " bytes)");
-                
-                crc32ConfirmSuccess();
-                if (isSentFinish()) {
-                    // Calculate CRC32 of all sent data for comparison
-                    long sentCrc32 = BesOtaUtil.crc32(fileData, 0, sentPos);
-                    Log.i(TAG, "========== FinishSend CRC32 Debug ==========");
-                    Log.i(TAG, "Total bytes sent: " + sentPos);
-                    Log.i(TAG, "File length: " + fileLen);
-                    Log.i(TAG, "Sent data CRC32 (decimal): " + sentCrc32);
-                    Log.i(TAG, "Sent data CRC32 (hex): 0x" + String.format("%08X", sentCrc32));
-                    Log.i(TAG, "First 16 bytes of sent data: " + ByteUtil.outputHexString(fileData, 0, Math.min(16, sentPos)));
-                    Log.i(TAG, "Last 16 bytes of sent data: " + ByteUtil.outputHexString(fileData, Math.max(0, sentPos - 16), Math.min(16, sentPos)));
-                    Log.i(TAG, "============================================");
-
-                    byte[] data = SCmd_FinshSend();
-                    Log.d(TAG, "Sending FinishSend command, data=" + (data != null ? ByteUtil.outputHexString(data, 0, data.length) : "null"));
-                    send(data);
-                } else {
-                    sendOtaData();
-                }
-            } else {
-                Log.e(TAG, "Segment verify error");
-                EventBus.getDefault().post(BesOtaProgressEvent.createFailed("Segment verification failed"));
-                cleanup();
             }
         }
         else if (msg.cmd == BesProtocolConstants.RCMD_SEND_FINISH) {
@@ -779,9 +708,9 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
                 Log.e(TAG, "❌   1. Data corruption during UART transfer");
                 Log.e(TAG, "❌   2. File changed between SetStartInfo and data transfer");
                 Log.e(TAG, "❌   3. Bytes dropped or duplicated during transmission");
-                Log.e(TAG, "❌ Sent bytes: " + sentPos + ", Expected: " + fileLen);
-                if (sentPos != fileLen) {
-                    Log.e(TAG, "❌ SIZE MISMATCH! sentPos=" + sentPos + " != fileLen=" + fileLen);
+                Log.e(TAG, "❌ Confirmed bytes: " + getConfirmLength() + ", Expected: " + fileLen);
+                if (getConfirmLength() != fileLen) {
+                    Log.e(TAG, "❌ SIZE MISMATCH! confirmed=" + getConfirmLength() + " != fileLen=" + fileLen);
                 }
                 Log.e(TAG, "❌ =============================================");
                 EventBus.getDefault().post(BesOtaProgressEvent.createFailed("Whole CRC32 check failed - data corruption?"));
@@ -801,24 +730,92 @@ public class BesOtaManager implements BesOtaUartListener, BesOtaCommandListener
         }
     }
 
-    private void sendOtaData() {
-        // Reduced logging - only log segment boundaries, not every packet
-        if (isNeedSegmentVerify()) {
-            byte[] data = SCmd_SegmentVerify();
-            Log.i(TAG, "🔍 Segment " + (confirmTimes + 1) + " verify - sentPos=" + sentPos + "/" + fileLen);
-            send(data);
+    private void startTransfer() {
+        BesSegmentTransfer t = new BesSegmentTransfer(image, this::send, packetsInFlight,
+                MAX_SEGMENT_RETRIES, BesSegmentTransfer.DEFAULT_ACK_TIMEOUT_MS);
+        transfer = t;
+        transferDone = false;
+        Log.i(TAG, "Sending " + fileLen + " bytes, " + packetsInFlight + " packet(s) in flight");
+        startAckWatchdog();
+        onTransferStatus(t.start(android.os.SystemClock.elapsedRealtime()));
+    }
+
+    // Called from the UART reader and the watchdog; acts once on the end of the transfer
+    private synchronized void onTransferStatus(BesSegmentTransfer.Status status) {
+        BesSegmentTransfer t = transfer;
+        if (t == null || transferDone || status == BesSegmentTransfer.Status.SENDING) {
             return;
         }
-
-        byte[] data = SCmd_SendFileData();
-        if (send(data)) {
-            int payloadSize = data.length - BesBaseCommand.MIN_LENGTH;
-            addSentSize(payloadSize);
-        } else {
-            Log.e(TAG, "❌ Failed to send file data packet at sentPos=" + sentPos);
-            EventBus.getDefault().post(BesOtaProgressEvent.createFailed("Failed to send firmware data"));
+        transferDone = true;
+        stopAckWatchdog();
+        if (status == BesSegmentTransfer.Status.FAILED) {
+            Log.e(TAG, "❌ " + t.getFailureReason() + " at " + t.getConfirmedLength() + "/" + fileLen
+                    + " (segments resent=" + t.getSegmentsResent() + ", verify repeats=" + t.getVerifyRepeats() + ")");
+            EventBus.getDefault().post(BesOtaProgressEvent.createFailed(t.getFailureReason()));
             cleanup();
+            return;
+        }
+
+        // The running CRC over the confirmed segments must match what SetStartInfo announced
+        long sentCrc32 = t.getConfirmedCrc32();
+        Log.i(TAG, "========== FinishSend CRC32 Debug ==========");
+        Log.i(TAG, "Total bytes confirmed: " + t.getConfirmedLength());
+        Log.i(TAG, "File length: " + fileLen);
+        Log.i(TAG, "Sent data CRC32 (hex): 0x" + String.format("%08X", sentCrc32)
+                + ", image CRC32 (hex): 0x" + String.format("%08X", image.crc32()));
+        Log.i(TAG, "Packets sent: " + t.getPacketsSent() + ", segments resent: " + t.getSegmentsResent()
+                + ", ack timeouts: " + t.getAckTimeouts() + ", verify repeats: " + t.getVerifyRepeats());
+        Log.i(TAG, "============================================");
+
+        byte[] data = SCmd_FinshSend();
+        Log.d(TAG, "Sending FinishSend command, data=" + (data != null ? ByteUtil.outputHexString(data, 0, data.length) : "null"));
+        send(data);
+    }
+
+    /**
+     * Ticks the transfer so a lost ack doesn't stall it. Runs on its own thread for the length of
+     * the transfer, since a tick may send frames over UART.
+     */
+    private void startAckWatchdog() {
+        stopAckWatchdog();
+        ackWatchdogThread = new android.os.HandlerThread("BesOtaWatchdog");
+        ackWatchdogThread.start();
+        ackWatchdogHandler = new android.os.Handler(ackWatchdogThread.getLooper());
+        ackWatchdogRunnable = new Runnable() {
+            @Override
+            public void run() {
+                BesSegmentTransfer t = transfer;
+                if (t == null) {
+                    return;
+                }
+                int repeats = t.getVerifyRepeats();
+                BesSegmentTransfer.Status status = t.onTick(android.os.SystemClock.elapsedRealtime());
+                if (t.getVerifyRepeats() > repeats) {
+                    Log.w(TAG, "SegmentVerify unanswered at " + t.getConfirmedLength() + "/" + fileLen
+                            + ", sent again (" + t.getVerifyRepeats() + " so far, at most "
+                            + BesSegmentTransfer.MAX_VERIFY_REPEATS + " per segment); assumes BES answers"
+                            + " a repeated verify of a committed segment with the same result");
+                }
+                onTransferStatus(status);
+                android.os.Handler h = ackWatchdogHandler;
+                if (h != null) {
+                    h.postDelayed(this, BesSegmentTransfer.DEFAULT_ACK_TIMEOUT_MS / 2);
+                }
+            }
+        };
+        ackWatchdogHandler.postDelayed(ackWatchdogRunnable, BesSegmentTransfer.DEFAULT_ACK_TIMEOUT_MS / 2);
+    }
+
+    private void stopAckWatchdog() {
+        if (ackWatchdogHandler != null && ackWatchdogRunnable != null) {
+            ackWatchdogHandler.removeCallbacks(ackWatchdogRunnable);
+        }
+        if (ackWatchdogThread != null) {
+            ackWatchdogThread.quitSafely();
         }
+        ackWatchdogThread = null;
+        ackWatchdogHandler = null;
+        ackWatchdogRunnable = null;
     }
 
     private boolean send(byte[] data) {
@@ -0,0 +1,277 @@
+package com.mentra.asg_client.io.bes;
+
+import com.mentra.asg_client.io.bes.protocol.BesBaseCommand;
+import com.mentra.asg_client.io.bes.protocol.BesCmd_SegmentVerify;
+import com.mentra.asg_client.io.bes.protocol.BesProtocolConstants;
+import com.mentra.asg_client.io.bes.util.BesFirmwareImage;
+import com.mentra.asg_client.io.bes.util.BesOtaUtil;
+
+import java.util.zip.CRC32;
+
+/**
+ * Data phase of a BES OTA: sends the image in {@link BesOtaUtil#PACKET_SIZE} packets, closes every
+ * {@link BesOtaUtil#SEGMENT_SIZE} segment with a CRC32 SegmentVerify, and stops once the last
+ * segment is confirmed (the caller then sends FinishSend).
+ *
+ * - Up to packetsInFlight data packets may wait for their ack; with 1 this is the original
+ *   stop-and-wait flow. Acks are only flow control: if one doesn't come back within the ack
+ *   timeout the packet is treated as sent, and the segment CRC decides whether it arrived.
+ * - The segment CRC is computed as packets go out, and a running CRC of the confirmed prefix is
+ *   checkpointed at every segment boundary, so nothing is read twice.
+ * - A failed SegmentVerify rewinds to the start of that segment and sends it again, up to
+ *   maxSegmentRetries times per segment. A SegmentVerify that gets no answer within the ack
+ *   timeout is repeated up to {@link #MAX_VERIFY_REPEATS} times, then the transfer fails.
+ *
+ * Frames are built in reused buffers; the sender must be done with a frame when send returns.
+ * Thread safe (the UART reader delivers acks, a timer delivers ticks).
+ */
+public class BesSegmentTransfer {
+
+    public interface FrameSender {
+        boolean send(byte[] frame);
+    }
+
+    public enum Status {
+        /** More acks or a SegmentVerify result are expected */
+        SENDING,
+        /** Every segment is confirmed */
+        COMPLETE,
+        /** A send failed or a segment kept failing verification */
+        FAILED
+    }
+
+    public static final long DEFAULT_ACK_TIMEOUT_MS = 1000;
+    /**
+     * Times an unanswered SegmentVerify is sent again. Protocol assumption: BES answers a repeated
+     * SegmentVerify for a segment it already committed with the same result rather than checking
+     * it against an empty segment, and a late answer to the first one is harmless (it's ignored
+     * once a result was taken).
+     */
+    public static final int MAX_VERIFY_REPEATS = 2;
+
+    private final BesFirmwareImage image;
+    private final FrameSender sender;
+    private final int packetsInFlight;
+    private final int maxSegmentRetries;
+    private final long ackTimeoutMs;
+
+    private final CRC32 segmentCrc = new CRC32();
+    private final byte[] fullFrame = new byte[BesBaseCommand.MIN_LENGTH + BesOtaUtil.PACKET_SIZE];
+    private byte[] shortFrame = new byte[0];
+
+    private Status status = Status.SENDING;
+    private String failureReason;
+    // Checkpoint: the image before segmentStart is confirmed and its CRC32 is confirmedCrc
+    private int segmentStart;
+    private long confirmedCrc;
+    private int segmentEnd;
+    private int sentPos;
+    private int inFlight;
+    private boolean awaitingVerify;
+    private byte[] verifyFrame;
+    private int verifyRepeats;
+    private long lastActivityMs;
+    private int segmentRetries;
+
+    // Metrics
+    private int segmentsConfirmed;
+    private int segmentsResent;
+    private int ackTimeouts;
+    private int verifyRepeatsTotal;
+    private long packetsSent;
+
+    /**
+     * @param packetsInFlight Data packets that may wait for an ack at once (1 = stop-and-wait)
+     * @param maxSegmentRetries Times one segment may be resent after failing verification
+     * @param ackTimeoutMs How long to wait for an ack before treating the packet as sent
+     */
+    public BesSegmentTransfer(BesFirmwareImage image, FrameSender sender, int packetsInFlight,
+                              int maxSegmentRetries, long ackTimeoutMs) {
+        this.image = image;
+        this.sender = sender;
+        this.packetsInFlight = Math.max(1, packetsInFlight);
+        this.maxSegmentRetries = maxSegmentRetries;
+        this.ackTimeoutMs = ackTimeoutMs;
+    }
+
+    /** Send the first window of the first segment */
+    public synchronized Status start(long nowMs) {
+        segmentStart = 0;
+        confirmedCrc = 0;
+        beginSegment(nowMs);
+        return pump(nowMs);
+    }
+
+    /** RCMD_SEND_DATA: one packet acknowledged */
+    public synchronized Status onDataAck(long nowMs) {
+        if (status != Status.SENDING) {
+            return status;
+        }
+        if (inFlight > 0) {
+            inFlight--;
+        }
+        lastActivityMs = nowMs;
+        return pump(nowMs);
+    }
+
+    /** RCMD_SEGMENT_VERIFY: the result for the segment just sent */
+    public synchronized Status onSegmentVerified(boolean ok, long nowMs) {
+        if (status != Status.SENDING || !awaitingVerify) {
+            return status;
+        }
+        awaitingVerify = false;
+        verifyRepeats = 0;
+        lastActivityMs = nowMs;
+        if (ok) {
+            confirmedCrc = BesOtaUtil.crc32Combine(confirmedCrc, segmentCrc.getValue(), segmentEnd - segmentStart);
+            segmentStart = segmentEnd;
+            segmentsConfirmed++;
+            segmentRetries = 0;
+            if (segmentStart >= image.size()) {
+                status = Status.COMPLETE;
+                return status;
+            }
+        } else {
+            if (++segmentRetries > maxSegmentRetries) {
+                fail("Segment verification failed");
+                return status;
+            }
+            segmentsResent++;
+        }
+        // Either the next segment or the same one again, from the checkpoint
+        beginSegment(nowMs);
+        return pump(nowMs);
+    }
+
+    /**
+     * Call periodically; gives up on acks that haven't come back within the ack timeout and
+     * repeats an unanswered SegmentVerify
+     */
+    public synchronized Status onTick(long nowMs) {
+        if (status != Status.SENDING || nowMs - lastActivityMs < ackTimeoutMs) {
+            return status;
+        }
+        lastActivityMs = nowMs;
+        if (awaitingVerify) {
+            if (++verifyRepeats > MAX_VERIFY_REPEATS) {
+                fail("Segment verification timed out");
+            } else if (!sender.send(verifyFrame)) {
+                fail("Failed to send segment verification");
+            } else {
+                verifyRepeatsTotal++;
+            }
+            return status;
+        }
+        if (inFlight > 0) {
+            ackTimeouts++;
+            inFlight = 0;
+            return pump(nowMs);
+        }
+        return status;
+    }
+
+    /** Bytes confirmed by SegmentVerify */
+    public synchronized int getConfirmedLength() {
+        return segmentStart;
+    }
+
+    /** CRC32 of the confirmed bytes; equals the image CRC32 once the transfer is complete */
+    public synchronized long getConfirmedCrc32() {
+        return confirmedCrc;
+    }
+
+    public synchronized int getSegmentsConfirmed() {
+        return segmentsConfirmed;
+    }
+
+    public synchronized int getSegmentsResent() {
+        return segmentsResent;
+    }
+
+    public synchronized int getAckTimeouts() {
+        return ackTimeouts;
+    }
+
+    /** SegmentVerify commands sent again because the first got no answer */
+    public synchronized int getVerifyRepeats() {
+        return verifyRepeatsTotal;
+    }
+
+    public synchronized long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /** Why the transfer failed, or null */
+    public synchronized String getFailureReason() {
+        return failureReason;
+    }
+
+    private void fail(String reason) {
+        status = Status.FAILED;
+        failureReason = reason;
+    }
+
+    private void beginSegment(long nowMs) {
+        segmentEnd = Math.min(segmentStart + BesOtaUtil.SEGMENT_SIZE, image.size());
+        sentPos = segmentStart;
+        inFlight = 0;
+        segmentCrc.reset();
+        lastActivityMs = nowMs;
+    }
+
+    /** Fill the window; once the whole segment is acked, ask for its verification */
+    private Status pump(long nowMs) {
+        while (!awaitingVerify) {
+            if (sentPos < segmentEnd) {
+                if (inFlight >= packetsInFlight) {
+                    break;
+                }
+                if (!sendPacket(Math.min(BesOtaUtil.PACKET_SIZE, segmentEnd - sentPos))) {
+                    fail("Failed to send firmware data");
+                    break;
+                }
+                inFlight++;
+                lastActivityMs = nowMs;
+            } else if (inFlight == 0) {
+                BesCmd_SegmentVerify cmd = new BesCmd_SegmentVerify();
+                cmd.setSegmentCrc32(BesOtaUtil.long2Bytes(segmentCrc.getValue()));
+                verifyFrame = cmd.getSendData();
+                if (!sender.send(verifyFrame)) {
+                    fail("Failed to send segment verification");
+                    break;
+                }
+                awaitingVerify = true;
+                lastActivityMs = nowMs;
+            } else {
+                break;
+            }
+        }
+        return status;
+    }
+
+    private boolean sendPacket(int length) {
+        byte[] frame;
+        if (length == BesOtaUtil.PACKET_SIZE) {
+            frame = fullFrame;
+        } else {
+            // Only the last packet of a segment is short, and they're all the same length
+            if (shortFrame.length != BesBaseCommand.MIN_LENGTH + length) {
+                shortFrame = new byte[BesBaseCommand.MIN_LENGTH + length];
+            }
+            frame = shortFrame;
+        }
+        frame[0] = BesProtocolConstants.SCMD_SEND_DATA;
+        frame[1] = (byte) length;
+        frame[2] = (byte) (length >> 8);
+        frame[3] = 0;
+        frame[4] = 0;
+        image.read(sentPos, frame, BesBaseCommand.MIN_LENGTH, length);
+        if (!sender.send(frame)) {
+            return false;
+        }
+        segmentCrc.update(frame, BesBaseCommand.MIN_LENGTH, length);
+        sentPos += length;
+        packetsSent++;
+        return true;
+    }
+}
@@ -4,9 +4,9 @@ import android.util.Log;
 
 import com.mentra.asg_client.io.ota.utils.OtaUtils;
 
+import com.mentra.asg_client.io.bes.util.BesFirmwareImage;
+
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 
 /**
@@ -62,74 +62,71 @@ public class BesCmd_SetConfig extends BesBaseCommand {
      * @return true if successful
      */
     public boolean setFilePath(String filePath) {
-        File f = new File(filePath);
-        if (!f.exists())
-            return false;
-        FileInputStream inputStream = null;
         try {
-            inputStream = new FileInputStream(filePath);
-            int totalSize = inputStream.available();
-            int dataSize = totalSize;
-            byte[] imageBytes = new byte[dataSize];
-            inputStream.read(imageBytes, 0, dataSize);
-            inputStream.close();
-
-            byte[] followingLenBytes = OtaUtils.int2Bytes(data.length - 4);
-            System.arraycopy(followingLenBytes, 0, data, 0, 4);
-
-            data[4] = imageBytes[dataSize - 4];
-            data[5] = imageBytes[dataSize - 3];
-            data[6] = imageBytes[dataSize - 2];
-
-            byte enable = 0x00;
-            enable |= (bClearUserData ? 0x01 : 0x00);
-            enable |= (bUpdateBtName ? (0x01 << 1) : 0x00);
-            enable |= (bUpdateBleName ? (0x01 << 2) : 0x00);
-            enable |= (bUpdateBtAddress ? (0x01 << 3) : 0x00);
-            enable |= (bUpdateBleAddress ? (0x01 << 4) : 0x00);
-            data[8] = enable;
-
-            if (bUpdateBtName && btName != null && btName.length() > 0) {
-                byte[] names = btName.getBytes();
-                int namelen = names.length;
-                if (namelen > 32)
-                    namelen = 32;
-                for (int i = 0; i < namelen; i++)
-                    data[12 + i] = names[i];
-            }
+            BesFirmwareImage image = BesFirmwareImage.open(new File(filePath));
+            Log.d(TAG, "ota config file=" + filePath + ",size=" + image.size());
+            setImageTail(image.tail(4));
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
 
-            if (bUpdateBleName && bleName != null && bleName.length() > 0) {
-                byte[] names = bleName.getBytes();
-                int namelen = names.length;
-                if (namelen > 32)
-                    namelen = 32;
-                for (int i = 0; i < namelen; i++)
-                    data[44 + i] = names[i];
-            }
+    /**
+     * Build the config payload from the image trailer, without reading the rest of the image
+     * @param tail The last 4 bytes of the firmware image
+     */
+    public void setImageTail(byte[] tail) {
+        byte[] followingLenBytes = OtaUtils.int2Bytes(data.length - 4);
+        System.arraycopy(followingLenBytes, 0, data, 0, 4);
+
+        data[4] = tail[0];
+        data[5] = tail[1];
+        data[6] = tail[2];
+
+        byte enable = 0x00;
+        enable |= (bClearUserData ? 0x01 : 0x00);
+        enable |= (bUpdateBtName ? (0x01 << 1) : 0x00);
+        enable |= (bUpdateBleName ? (0x01 << 2) : 0x00);
+        enable |= (bUpdateBtAddress ? (0x01 << 3) : 0x00);
+        enable |= (bUpdateBleAddress ? (0x01 << 4) : 0x00);
+        data[8] = enable;
+
+        if (bUpdateBtName && btName != null && btName.length() > 0) {
+            byte[] names = btName.getBytes();
+            int namelen = names.length;
+            if (namelen > 32)
+                namelen = 32;
+            for (int i = 0; i < namelen; i++)
+                data[12 + i] = names[i];
+        }
 
-            if (bUpdateBtAddress && btAddress != null && btAddress.length() > 0) {
-                for (int i = 0; i < 6; i++) {
-                    data[76 + 5 - i] = Integer.valueOf(btAddress.substring(i * 2, i * 2 + 2), 16).byteValue();
-                }
+        if (bUpdateBleName && bleName != null && bleName.length() > 0) {
+            byte[] names = bleName.getBytes();
+            int namelen = names.length;
+            if (namelen > 32)
+                namelen = 32;
+            for (int i = 0; i < namelen; i++)
+                data[44 + i] = names[i];
+        }
+
+        if (bUpdateBtAddress && btAddress != null && btAddress.length() > 0) {
+            for (int i = 0; i < 6; i++) {
+                data[76 + 5 - i] = Integer.valueOf(btAddress.substring(i * 2, i * 2 + 2), 16).byteValue();
             }
+        }
 
-            if (bUpdateBleAddress && bleAddress != null && bleAddress.length() > 0) {
-                for (int i = 0; i < 6; i++) {
-                    data[82 + 5 - i] = Integer.valueOf(bleAddress.substring(i * 2, i * 2 + 2), 16).byteValue();
-                }
+        if (bUpdateBleAddress && bleAddress != null && bleAddress.length() > 0) {
+            for (int i = 0; i < 6; i++) {
+                data[82 + 5 - i] = Integer.valueOf(bleAddress.substring(i * 2, i * 2 + 2), 16).byteValue();
             }
-            ////
-            long crc32 = OtaUtils.crc32(data, 0, data.length - 4);
-            byte[] crc32OfConfig = OtaUtils.long2Bytes(crc32);
-            Log.e("_test_", "ota config file=" + filePath + ",size=" + totalSize + ",crc32=" + crc32);
-            System.arraycopy(crc32OfConfig, 0, data, 88, crc32OfConfig.length);
-            return true;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        return false;
+        ////
+        long crc32 = OtaUtils.crc32(data, 0, data.length - 4);
+        byte[] crc32OfConfig = OtaUtils.long2Bytes(crc32);
+        Log.d(TAG, "ota config crc32=" + crc32);
+        System.arraycopy(crc32OfConfig, 0, data, 88, crc32OfConfig.length);
     }
 
     @Override
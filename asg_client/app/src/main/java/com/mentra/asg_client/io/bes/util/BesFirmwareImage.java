@@ -0,0 +1,83 @@
+package com.mentra.asg_client.io.bes.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only view of a BES firmware image, memory-mapped so packets are copied straight from the
+ * page cache into the outgoing frame instead of loading the whole file onto the heap.
+ * Not thread safe; callers serialize access.
+ */
+public class BesFirmwareImage {
+    private final ByteBuffer reader;
+    private final int size;
+    private long crc32 = -1;
+
+    private BesFirmwareImage(ByteBuffer buffer) {
+        this.reader = buffer.duplicate();
+        this.size = buffer.remaining();
+    }
+
+    /**
+     * Map a firmware file
+     * @param file Firmware .bin file
+     * @return The image; the mapping stays valid after the file is closed
+     */
+    public static BesFirmwareImage open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Firmware image too large: " + length);
+            }
+            return new BesFirmwareImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    /** Wrap an image already in memory */
+    public static BesFirmwareImage wrap(byte[] data) {
+        return new BesFirmwareImage(ByteBuffer.wrap(data));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * CRC32 of the whole image, as announced in SetStartInfo; computed on first use
+     */
+    public long crc32() {
+        if (crc32 < 0) {
+            ByteBuffer all = reader.duplicate();
+            all.position(0);
+            all.limit(size);
+            CRC32 crc = new CRC32();
+            crc.update(all);
+            crc32 = crc.getValue();
+        }
+        return crc32;
+    }
+
+    /**
+     * Copy bytes of the image
+     * @param position Offset in the image
+     * @param dst Destination array
+     * @param offset Offset in dst
+     * @param length Number of bytes
+     */
+    public void read(int position, byte[] dst, int offset, int length) {
+        reader.position(position);
+        reader.get(dst, offset, length);
+    }
+
+    /** The last n bytes of the image */
+    public byte[] tail(int n) {
+        byte[] bytes = new byte[n];
+        read(size - n, bytes, 0, n);
+        return bytes;
+    }
+}
@@ -150,4 +150,9 @@ public abstract class BaseBluetoothManager implements IBluetoothManager {
         Log.w(TAG, "sendImageFile not implemented in " + getClass().getSimpleName());
         return false;
     }
+
+    public boolean sendImageData(String fileName, byte[] data) {
+        Log.w(TAG, "sendImageData not implemented in " + getClass().getSimpleName());
+        return false;
+    }
 } 
\ No newline at end of file
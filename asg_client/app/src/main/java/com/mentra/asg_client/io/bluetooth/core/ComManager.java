@@ -1,11 +1,13 @@
 package com.mentra.asg_client.io.bluetooth.core;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.lhs.serialport.api.SerialManager;
 import com.mentra.asg_client.io.bluetooth.interfaces.SerialListener;
 import com.mentra.asg_client.io.bes.BesOtaUartListener;
+import com.mentra.asg_client.io.bluetooth.utils.LatencyRecorder;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -20,17 +22,22 @@ public class ComManager {
     // Serial port configuration - matches the K900 SDK
     private static final String COM_PATH = "/dev/ttyS1";
     private static final int COM_BAUDRATE = 460800;
+    // 8N1: a start and a stop bit around each byte
+    private static final int UART_BITS_PER_BYTE = 10;
+    // Receive turnaround samples kept for the p50/p99 metrics
+    private static final int LATENCY_SAMPLES = 512;
 
     private SerialListener mListener;
     private BesOtaUartListener mOtaListener;
-    private RecvThread mRecvThread = null;
-    private byte[] mReadBuf = new byte[1024];
+    private UartReceiveThread mRecvThread = null;
+    private final LatencyRecorder mRecvLatency = new LatencyRecorder(LATENCY_SAMPLES);
     private boolean mbStart = false;
     protected OutputStream mOS;
     protected InputStream mIS;
     private Context mContext = null;
-    private boolean mbRequestFast = false;
-    public boolean mbOtaUpdating = false;
+    public volatile boolean mbOtaUpdating = false; // Read on the receive thread
+    // SystemClock.elapsedRealtime() at which the last message has left the UART
+    private volatile long mLastMessageDrainedAt = 0;
 
     /**
      * Create a new ComManager
@@ -84,7 +91,7 @@ public class ComManager {
                 mRecvThread = null;
             }
 
-            mRecvThread = new RecvThread();
+            mRecvThread = new UartReceiveThread(mIS, this::onUartData, mRecvLatency);
             mRecvThread.start();
 
             if (mListener != null)
@@ -127,6 +134,9 @@ public class ComManager {
                 Log.d(TAG, ">>> sending " + data.length + " bytes");
                 mOS.write(data);
                 mOS.flush();
+                // flush() returns once the driver has the bytes, not once they are on the wire
+                long wireTimeMs = ((long) data.length * UART_BITS_PER_BYTE * 1000 + COM_BAUDRATE - 1) / COM_BAUDRATE;
+                mLastMessageDrainedAt = SystemClock.elapsedRealtime() + wireTimeMs;
 
                 return true;
             } catch (IOException e) {
@@ -143,6 +153,14 @@ public class ComManager {
         return false;
     }
 
+    /**
+     * @return SystemClock.elapsedRealtime() by which the last message sent with
+     *         {@link #send(byte[])} has been written out of the UART, or 0 if none was sent
+     */
+    public long getLastMessageDrainedAt() {
+        return mLastMessageDrainedAt;
+    }
+
     /**
      * Send file data over the serial port (without logging the data content)
      * Blocked during BES OTA updates
@@ -167,16 +185,6 @@ public class ComManager {
         }
     }
 
-    /**
-     * Set fast mode for file transfers
-     *
-     * @param bFast true to enable fast mode (5ms sleep), false for normal mode (50ms sleep)
-     */
-    public void setFastMode(boolean bFast) {
-        mbRequestFast = bFast;
-        Log.d(TAG, "Fast mode " + (bFast ? "enabled" : "disabled"));
-    }
-
     /**
      * Set BES OTA updating state
      * When true, normal UART traffic is blocked and only OTA commands pass through
@@ -212,54 +220,28 @@ public class ComManager {
 
 
     /**
-     * Thread for receiving data from the serial port
+     * Receive turnaround of the UART reader: how long inbound bytes can wait in the driver
+     * before they are read (see {@link UartReceiveThread}).
+     *
+     * @return Recorder with p50/p99 over recent reads
      */
-    class RecvThread extends Thread {
-        private boolean mbStop = false;
-
-        public RecvThread() {
-        }
-
-        public void setStop() {
-            mbStop = true;
-        }
-
-        @Override
-        public void run() {
-            int readSize;
-
-            while (!mbStop) {
-                if (mIS != null) {
-                    try {
-                        readSize = mIS.read(mReadBuf);
-                        if (readSize > 0) {
-                            // Route data based on OTA state
-                            if (mbOtaUpdating) {
-                                if (mOtaListener != null) {
-                                    mOtaListener.onOtaRecv(mReadBuf, readSize);
-                                }
-                            } else {
-                                if (mListener != null) {
-                                    mListener.onSerialRead(COM_PATH, mReadBuf, readSize);
-                                }
-                            }
-                        }
-                    } catch (IOException e) {
-                        Log.e(TAG, "Error reading from serial port", e);
-                    }
-                }
+    public LatencyRecorder getReceiveLatency() {
+        return mRecvLatency;
+    }
 
-                try {
-                    // Use fast mode (5ms) for file transfers, normal mode (50ms) otherwise
-                    // Note: Original K900_server_sdk used 150ms, but K900Server_common uses 50ms/5ms
-                    Thread.sleep(mbRequestFast ? 5 : 50);
-                } catch (InterruptedException e) {
-                    Log.e(TAG, "RecvThread interrupted", e);
-                    break;
-                }
+    /**
+     * Route data from the receive thread based on OTA state.
+     * The buffer is reused for the next read.
+     */
+    private void onUartData(byte[] buffer, int size) {
+        if (mbOtaUpdating) {
+            if (mOtaListener != null) {
+                mOtaListener.onOtaRecv(buffer, size);
+            }
+        } else {
+            if (mListener != null) {
+                mListener.onSerialRead(COM_PATH, buffer, size);
             }
-
-            Log.d(TAG, "RecvThread exiting");
         }
     }
-} 
\ No newline at end of file
+}
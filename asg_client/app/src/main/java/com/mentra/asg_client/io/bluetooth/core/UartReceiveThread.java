@@ -0,0 +1,112 @@
+package com.mentra.asg_client.io.bluetooth.core;
+
+import android.util.Log;
+
+import com.mentra.asg_client.io.bluetooth.utils.LatencyRecorder;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receive loop for the BES2700 UART.
+ * <p>
+ * The serial port is opened blocking, so read() waits in the driver until bytes arrive and returns
+ * them straight away - no sleeping between reads, which used to add up to 50ms to every inbound
+ * command, ACK and OTA response. The receive buffer is reused for every read; receivers must
+ * consume or copy the bytes before returning.
+ * <p>
+ * For each read the thread records its turnaround: the time from read() returning until it is
+ * blocked in read() again. That is the longest time newly arrived bytes can wait in the driver
+ * before we pick them up.
+ */
+public class UartReceiveThread extends Thread {
+    private static final String TAG = "UartReceiveThread";
+
+    private static final int RECEIVE_BUFFER_SIZE = 4096;
+    // Back-off when the stream reports no data instead of blocking, or keeps failing
+    private static final long IDLE_BACKOFF_MS = 5;
+
+    /**
+     * Receives the bytes of each read
+     */
+    public interface Receiver {
+        /**
+         * @param buffer Receive buffer, reused for the next read
+         * @param size   Number of valid bytes at the start of the buffer
+         */
+        void onReceive(byte[] buffer, int size);
+    }
+
+    private final InputStream inputStream;
+    private final Receiver receiver;
+    private final LatencyRecorder turnaround;
+    private final byte[] buffer = new byte[RECEIVE_BUFFER_SIZE];
+    private volatile boolean stopped = false;
+
+    public UartReceiveThread(InputStream inputStream, Receiver receiver, LatencyRecorder turnaround) {
+        super(TAG);
+        this.inputStream = inputStream;
+        this.receiver = receiver;
+        this.turnaround = turnaround;
+    }
+
+    /**
+     * Stop receiving. A read already blocked in the driver only returns when the port is closed or
+     * more bytes arrive; anything read after this call is dropped.
+     */
+    public void setStop() {
+        stopped = true;
+    }
+
+    @Override
+    public void run() {
+        long lastReturnNanos = 0;
+        boolean failing = false;
+
+        while (!stopped) {
+            if (lastReturnNanos != 0) {
+                turnaround.recordNanos(System.nanoTime() - lastReturnNanos);
+                lastReturnNanos = 0;
+            }
+
+            int readSize;
+            try {
+                readSize = inputStream.read(buffer);
+                failing = false;
+            } catch (IOException e) {
+                if (stopped) {
+                    break;
+                }
+                // Log once per run of failures, not once per retry
+                if (!failing) {
+                    Log.e(TAG, "Error reading from serial port", e);
+                    failing = true;
+                }
+                readSize = 0;
+            }
+
+            if (stopped) {
+                break;
+            }
+
+            if (readSize > 0) {
+                lastReturnNanos = System.nanoTime();
+                receiver.onReceive(buffer, readSize);
+            } else if (!backOff()) {
+                break;
+            }
+        }
+
+        Log.d(TAG, "UartReceiveThread exiting");
+    }
+
+    private boolean backOff() {
+        try {
+            Thread.sleep(IDLE_BACKOFF_MS);
+            return true;
+        } catch (InterruptedException e) {
+            Log.d(TAG, "UartReceiveThread interrupted");
+            return false;
+        }
+    }
+}
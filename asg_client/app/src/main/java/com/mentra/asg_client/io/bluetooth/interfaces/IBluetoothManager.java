@@ -41,6 +41,14 @@ public interface IBluetoothManager {
     boolean sendData(byte[] data);
 
     boolean sendImageFile(String filePath);
+
+    /**
+     * Send an image held in memory using the same transfer as {@link #sendImageFile}
+     * @param fileName Name the phone receives the file under
+     * @param data Encoded image
+     * @return true if the transfer started
+     */
+    boolean sendImageData(String fileName, byte[] data);
     
     /**
      * Check if a file transfer is currently in progress
@@ -1,20 +1,24 @@
 package com.mentra.asg_client.io.bluetooth.managers;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.mentra.asg_client.io.bluetooth.core.ComManager;
 import com.mentra.asg_client.io.bluetooth.interfaces.SerialListener;
+import com.mentra.asg_client.io.bluetooth.utils.FileTransferWindow;
 import com.mentra.asg_client.io.bluetooth.utils.K900MessageParser;
 import com.mentra.asg_client.io.bluetooth.core.BaseBluetoothManager;
 import com.mentra.asg_client.io.bluetooth.utils.DebugNotificationManager;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Executors;
 
 import com.mentra.asg_client.service.core.AsgClientService;
+import com.mentra.asg_client.utils.smartglasses.CompactWireCodec;
 import com.mentra.asg_client.utils.smartglasses.K900ProtocolUtils;
 import com.mentra.asg_client.reporting.domains.BluetoothReporting;
 
@@ -23,6 +27,7 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -37,6 +42,8 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
     private boolean isSerialOpen = false;
     private final DebugNotificationManager notificationManager;
     private K900MessageParser messageParser;
+    // Reused view of the frame being handled on the serial read thread
+    private final K900MessageParser.Frame receivedFrame = new K900MessageParser.Frame();
 
     // File transfer state management
     private FileTransferSession currentFileTransfer = null;
@@ -46,6 +53,8 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
     private static final int FILE_TRANSFER_MAX_RETRIES = 5;
     private static final int PHONE_CONFIRMATION_TIMEOUT_MS = 5000; // 5 seconds
     private static final int MAX_TRANSFER_RETRIES = 3; // Max full transfer retries
+    // Time the MCU needs to forward a message over BLE after it has left the UART
+    private static final int MESSAGE_SETTLE_MS = 200;
     private ScheduledFuture<?> phoneConfirmationTimeout = null;
 
     // BES2700 BLE flow control - tracks consecutive failures for exponential backoff
@@ -55,9 +64,17 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
     private static final int PACING_DELAY_MS = 75; // Delay between successful packets - BES2700 needs time to drain BLE TX
     private int consecutiveFailures = 0;
 
+    // Windowed transfers (negotiated with the phone): guards the session's FileTransferWindow,
+    // which is touched from the serial thread (ACKs) and the file transfer executor (timeouts)
+    private final Object fileWindowLock = new Object();
+    private ScheduledFuture<?> fileWindowTimeout = null;
+
+    // Chunk IDs for compact frames (CompactWireCodec uses the low 8 bits)
+    private final AtomicInteger compactMessageId = new AtomicInteger();
+
     // Inner class to track file transfer state
     private static class FileTransferSession {
-        String filePath;
+        String filePath;     // null when the data only exists in memory
         String fileName;
         byte[] fileData;
         int fileSize;        // Real file size (for our internal tracking)
@@ -68,6 +85,8 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
         long startTime;
         boolean waitingForPhoneConfirmation;
         int retryCount;
+        FileTransferWindow window; // null for stop-and-wait transfers
+        long windowPausedUntil;    // BES flow-control backoff for windowed transfers
 
         // BES2700 firmware hardcodes FILE_PACK_SIZE=400 when calculating totalPack:
         //   totalPack = (fileSize + 400 - 1) / 400
@@ -94,6 +113,11 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
             Log.i(TAG, "📦 BES Lie Strategy: realSize=" + fileSize + ", fakeSize=" + fakeFileSize +
                        ", totalPackets=" + totalPackets + ", actualPackSize=" + K900ProtocolUtils.getFilePackSize());
         }
+
+        /** What is being sent, for failure reports */
+        String source() {
+            return filePath != null ? filePath : fileName;
+        }
     }
 
     // Inner class to track packet state
@@ -131,6 +155,18 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
         fileTransferExecutor = Executors.newSingleThreadScheduledExecutor();
     }
 
+    /**
+     * Encode a JSON message as compact frames, or return null if it must use the legacy framing:
+     * C-wrapped messages are meant for the BES, which only reads that format.
+     */
+    private List<byte[]> encodeCompact(byte[] data) {
+        if (K900ProtocolUtils.isCWrappedJson(new String(data, StandardCharsets.UTF_8))) {
+            return null;
+        }
+        return CompactWireCodec.encode(data, K900ProtocolUtils.getMessageFrameSize(),
+                compactMessageId.getAndIncrement());
+    }
+
     @Override
     protected boolean sendDataInternal(byte[] data) {
         Log.d(TAG, "📡 =========================================");
@@ -150,6 +186,20 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
         }
 
 
+        // Phones that negotiated the compact wire format get JSON as-is in MTU-sized frames
+        if (K900ProtocolUtils.getWireFormat() > 0 && data[0] == '{') {
+            List<byte[]> frames = encodeCompact(data);
+            if (frames != null) {
+                boolean sent = true;
+                for (byte[] frame : frames) {
+                    sent &= comManager.send(frame);
+                }
+                Log.d(TAG, "📡 " + (sent ? "✅" : "❌") + " Sent " + data.length + "-byte message as "
+                        + frames.size() + " compact frame(s)");
+                return sent;
+            }
+        }
+
         Log.d(TAG, "📡 🔍 Checking if data is already in K900 protocol format...");
         //First check if it 's already in protocol format
         if (!K900ProtocolUtils.isK900ProtocolFormat(data)) {
@@ -224,7 +274,6 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
         if (currentFileTransfer != null && currentFileTransfer.isActive) {
             Log.d(TAG, "Cancelling active file transfer");
             currentFileTransfer.isActive = false;
-            comManager.setFastMode(false);
         }
         
         // Clear pending packets
@@ -419,59 +468,59 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
         Log.d(TAG, "📥 K900 SERIAL READ - " + size + " bytes");
 
         if (data != null && size > 0) {
-            // Copy the data to avoid issues with buffer reuse
-            byte[] dataCopy = new byte[size];
-            System.arraycopy(data, 0, dataCopy, 0, size);
-            
             // Hex dump suppressed to prevent logcat overflow
             // Enable only when debugging specific issues
 
-            // Add the data to our message parser
-            if (messageParser != null && messageParser.addData(dataCopy, size)) {
-                // Try to extract complete messages
-                List<byte[]> completeMessages = messageParser.parseMessages();
-                if (completeMessages != null && !completeMessages.isEmpty()) {
-                    Log.d(TAG, "📥 Extracted " + completeMessages.size() + " complete messages");
-                    // Process each complete message
-                    for (byte[] message : completeMessages) {
-                        // Check for file transfer acknowledgments first
-                        processReceivedMessage(message);
-                        
-                        // Extract payload from K900 protocol message for listeners
-                        if (K900ProtocolUtils.isK900ProtocolFormat(message)) {
-                            // Try to extract payload (big-endian first, then little-endian)
-                            byte[] payload = K900ProtocolUtils.extractPayload(message);
-                            if (payload == null) {
-                                payload = K900ProtocolUtils.extractPayloadFromK900(message);
-                            }
-                            
-                            if (payload != null && payload.length > 0) {
-                                // Notify listeners with the clean payload (JSON data without markers)
-                                String payloadPreview = new String(payload, 0, Math.min(payload.length, 200));
-                                Log.d(TAG, "📥 Extracted K900 payload (" + payload.length + " bytes): " + payloadPreview);
-                                
-                                // Check if this is a sr_syvr response (BES system version)
-                                // Handle it directly here to avoid timing issues with CommandProcessor initialization
-                                if (!handleSrSyvrResponse(payload)) {
-                                    // Not a sr_syvr response, forward to listeners
-                                    notifyDataReceived(payload);
-                                }
-                            } else {
-                                Log.w(TAG, "📥 Failed to extract payload from K900 message");
-                            }
-                        } else {
-                            // Not a K900 protocol message, pass as-is
-                            Log.d(TAG, "📥 Non-K900 message, passing as-is");
-                            notifyDataReceived(message);
+            // Add the data to our message parser. The parser copies it into its own ring buffer,
+            // so ComManager's receive buffer can be handed over as-is.
+            if (messageParser != null && messageParser.addData(data, size)) {
+                // Extract complete messages; each one is a view into the parser's buffer
+                int messageCount = 0;
+                while (messageParser.nextFrame(receivedFrame)) {
+                    messageCount++;
+                    byte[] frame = receivedFrame.getArray();
+                    int frameOffset = receivedFrame.getOffset();
+                    int frameLength = receivedFrame.getLength();
+
+                    // Check for file transfer acknowledgments first
+                    processReceivedMessage(frame, frameOffset, frameLength);
+
+                    // Extract payload from K900 protocol message for listeners
+                    // (big-endian length first, then little-endian)
+                    int payloadLength = K900ProtocolUtils.getPayloadLength(frame, frameOffset, frameLength);
+                    if (payloadLength > 0) {
+                        // Listeners get the clean payload (JSON data without markers) in an array
+                        // of their own, since the frame view is reused for the next message
+                        byte[] payload = new byte[payloadLength];
+                        System.arraycopy(frame, frameOffset + 5, payload, 0, payloadLength);
+                        if (Log.isLoggable(TAG, Log.DEBUG)) {
+                            String payloadPreview = new String(payload, 0, Math.min(payloadLength, 200),
+                                    java.nio.charset.StandardCharsets.UTF_8);
+                            Log.d(TAG, "📥 Extracted K900 payload (" + payloadLength + " bytes): " + payloadPreview);
+                        }
+
+                        // Check if this is a sr_syvr response (BES system version)
+                        // Handle it directly here to avoid timing issues with CommandProcessor initialization
+                        if (!handleSrSyvrResponse(payload)) {
+                            // Not a sr_syvr response, forward to listeners
+                            notifyDataReceived(payload);
                         }
+                    } else {
+                        Log.w(TAG, "📥 Failed to extract payload from K900 message");
                     }
+                }
+                if (messageCount > 0) {
+                    Log.d(TAG, "📥 Extracted " + messageCount + " complete messages");
                 } else {
                     // No complete messages yet, just accumulating data
                     Log.d(TAG, "📥 Data added to parser, waiting for complete message");
                 }
             } else {
                 // If parser is not available or data couldn't be added, send raw data
+                // (copied, since the receive buffer is reused for the next read)
                 Log.d(TAG, "📥 📤 Parser unavailable, notifying listeners of raw data...");
+                byte[] dataCopy = new byte[size];
+                System.arraycopy(data, 0, dataCopy, 0, size);
                 notifyDataReceived(dataCopy);
             }
             // Data processing complete
@@ -591,30 +640,85 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
             return false;
         }
         
-        // Create file transfer session
-        String fileName = file.getName();
+        return startFileTransfer(filePath, file.getName(), fileData);
+    }
+
+    /**
+     * Send an image held in memory over the K900 Bluetooth connection
+     * @param fileName Name the phone receives the file under (at most 16 characters are sent)
+     * @param data Encoded image
+     * @return true if transfer started successfully
+     */
+    @Override
+    public boolean sendImageData(String fileName, byte[] data) {
+        if (!isSerialOpen) {
+            Log.e(TAG, "Cannot send image - serial port not open");
+            BluetoothReporting.reportFileTransferFailure(context, fileName, "send_file",
+                "serial_port_not_open", null);
+            return false;
+        }
+
+        if (currentFileTransfer != null && currentFileTransfer.isActive) {
+            Log.e(TAG, "File transfer already in progress");
+            BluetoothReporting.reportFileTransferFailure(context, fileName, "send_file",
+                "transfer_already_in_progress", null);
+            return false;
+        }
+
+        if (data == null || data.length == 0) {
+            Log.e(TAG, "No image data to send: " + fileName);
+            return false;
+        }
+
+        return startFileTransfer(null, fileName, data);
+    }
+
+    /**
+     * @param filePath File the data came from, deleted once the phone confirms; null for data
+     *                 that only exists in memory
+     */
+    private boolean startFileTransfer(String filePath, String fileName, byte[] fileData) {
         if (fileName.length() > 16) {
             fileName = fileName.substring(0, 16); // Truncate to 16 chars max
         }
         
         currentFileTransfer = new FileTransferSession(filePath, fileName, fileData);
+        currentFileTransfer.window = createFileTransferWindow(currentFileTransfer);
         pendingPackets.clear();
         consecutiveFailures = 0; // Reset failure counter for new transfer
         
         Log.d(TAG, "Starting file transfer: " + fileName + " (" + fileData.length + " bytes, " + 
-                   currentFileTransfer.totalPackets + " packets)");
+                   currentFileTransfer.totalPackets + " packets, " +
+                   (currentFileTransfer.window != null ?
+                       "window up to " + K900ProtocolUtils.getFileTransferWindow() : "stop-and-wait") + ")");
         
         notificationManager.showDebugNotification("File Transfer", 
             "Starting transfer of " + fileName + " (" + currentFileTransfer.totalPackets + " packets)");
         
-        // Enable fast mode for file transfer
-        comManager.setFastMode(true);
-        
-        // Send the first packet
-        sendNextFilePacket();
+        // A message the MCU is still forwarding must not interleave with the first file packets
+        // at the BLE MTU boundary. Wait out the rest of its settle time off the caller's thread.
+        FileTransferSession session = currentFileTransfer;
+        long settleMs = comManager.getLastMessageDrainedAt() + MESSAGE_SETTLE_MS - SystemClock.elapsedRealtime();
+        if (settleMs > 0) {
+            Log.d(TAG, "⏱️ First file packet in " + settleMs + "ms, once the last message has been forwarded");
+            fileTransferExecutor.schedule(() -> sendFirstFilePackets(session), settleMs, TimeUnit.MILLISECONDS);
+        } else {
+            sendFirstFilePackets(session);
+        }
         
         return true;
     }
+
+    private void sendFirstFilePackets(FileTransferSession session) {
+        if (currentFileTransfer != session || !session.isActive) {
+            return;
+        }
+        if (session.window != null) {
+            pumpFileWindow();
+        } else {
+            sendNextFilePacket();
+        }
+    }
     
     /**
      * Send the next file packet
@@ -627,47 +731,13 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
         }
         
         if (currentFileTransfer.currentPacketIndex >= currentFileTransfer.totalPackets) {
-            // All packets sent and ACKed by MCU
-            long transferDuration = System.currentTimeMillis() - currentFileTransfer.startTime;
-            Log.d(TAG, "📤 All packets sent and ACKed by MCU: " + currentFileTransfer.fileName);
-            Log.d(TAG, "⏱️ Transfer took: " + transferDuration + "ms for " + currentFileTransfer.fileSize + " bytes");
-            Log.d(TAG, "📊 Transfer rate: " + (currentFileTransfer.fileSize * 1000 / transferDuration) + " bytes/sec");
-            Log.d(TAG, "⏳ Waiting for phone confirmation before cleanup...");
-
-            notificationManager.showDebugNotification("Waiting for Phone Confirmation",
-                currentFileTransfer.fileName + " - " + transferDuration + "ms");
-
-            // Set state to waiting for phone confirmation
-            currentFileTransfer.waitingForPhoneConfirmation = true;
-
-            // Start timeout for phone confirmation (5 seconds)
-            schedulePhoneConfirmationTimeout();
-
-            // DO NOT delete file yet!
-            // DO NOT clear state yet!
-            // Keep everything in memory for potential retry
+            awaitPhoneConfirmation();
             return;
         }
         
         // Calculate packet data
         int packetIndex = currentFileTransfer.currentPacketIndex;
-        int offset = packetIndex * K900ProtocolUtils.getFilePackSize();
-        int packSize = Math.min(K900ProtocolUtils.getFilePackSize(),
-                                currentFileTransfer.fileSize - offset);
-        
-        // Extract packet data
-        byte[] packetData = new byte[packSize];
-        System.arraycopy(currentFileTransfer.fileData, offset, packetData, 0, packSize);
-        
-        // Pack the file packet
-        // NOTE: We use fakeFileSize to lie to BES firmware about total file size.
-        // BES hardcodes 400-byte pack size when calculating totalPack, so we inflate
-        // fileSize to make BES expect the correct number of our smaller packets.
-        byte[] packet = K900ProtocolUtils.packFilePacket(
-            packetData, packetIndex, packSize, currentFileTransfer.fakeFileSize,
-            currentFileTransfer.fileName, 0, // flags = 0
-            K900ProtocolUtils.CMD_TYPE_PHOTO
-        );
+        byte[] packet = packFilePacket(currentFileTransfer, packetIndex);
         
         if (packet == null) {
             Log.e(TAG, "Failed to pack file packet " + packetIndex);
@@ -691,13 +761,60 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
         
         long totalMethodTime = System.currentTimeMillis() - methodStartTime;
         Log.d(TAG, "📊 Sent file packet " + packetIndex + "/" + (currentFileTransfer.totalPackets - 1) + 
-                   " (" + packSize + " bytes) - UART send took " + (sendEndTime - sendStartTime) + 
+                   " (" + packet.length + " bytes) - UART send took " + (sendEndTime - sendStartTime) + 
                    "ms, total method time: " + totalMethodTime + "ms");
         
         // Schedule acknowledgment timeout check
         fileTransferExecutor.schedule(() -> checkFilePacketAck(packetIndex), 
                                      FILE_TRANSFER_ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
     }
+
+    /**
+     * Build the K900 file packet for one packet index of the session
+     */
+    private byte[] packFilePacket(FileTransferSession session, int packetIndex) {
+        int offset = packetIndex * K900ProtocolUtils.getFilePackSize();
+        int packSize = Math.min(K900ProtocolUtils.getFilePackSize(), session.fileSize - offset);
+        
+        // Extract packet data
+        byte[] packetData = new byte[packSize];
+        System.arraycopy(session.fileData, offset, packetData, 0, packSize);
+        
+        // Pack the file packet
+        // NOTE: We use fakeFileSize to lie to BES firmware about total file size.
+        // BES hardcodes 400-byte pack size when calculating totalPack, so we inflate
+        // fileSize to make BES expect the correct number of our smaller packets.
+        return K900ProtocolUtils.packFilePacket(
+            packetData, packetIndex, packSize, session.fakeFileSize,
+            session.fileName, 0, // flags = 0
+            K900ProtocolUtils.CMD_TYPE_PHOTO
+        );
+    }
+
+    /**
+     * All packets were sent and ACKed by MCU - hold on to the file until the phone confirms
+     */
+    private void awaitPhoneConfirmation() {
+        long transferDuration = System.currentTimeMillis() - currentFileTransfer.startTime;
+        Log.d(TAG, "📤 All packets sent and ACKed by MCU: " + currentFileTransfer.fileName);
+        Log.d(TAG, "⏱️ Transfer took: " + transferDuration + "ms for " + currentFileTransfer.fileSize + " bytes");
+        Log.d(TAG, "📊 Transfer rate: " + (currentFileTransfer.fileSize * 1000L / Math.max(1, transferDuration)) + " bytes/sec");
+        Log.d(TAG, "📊 UART receive turnaround: " + comManager.getReceiveLatency().getSummary());
+        Log.d(TAG, "⏳ Waiting for phone confirmation before cleanup...");
+
+        notificationManager.showDebugNotification("Waiting for Phone Confirmation",
+            currentFileTransfer.fileName + " - " + transferDuration + "ms");
+
+        // Set state to waiting for phone confirmation
+        currentFileTransfer.waitingForPhoneConfirmation = true;
+
+        // Start timeout for phone confirmation (5 seconds)
+        schedulePhoneConfirmationTimeout();
+
+        // DO NOT delete file yet!
+        // DO NOT clear state yet!
+        // Keep everything in memory for potential retry
+    }
     
     /**
      * Check if file packet acknowledgment was received
@@ -721,14 +838,13 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
                 Log.e(TAG, "File packet " + packetIndex + " failed after " + FILE_TRANSFER_MAX_RETRIES + " retries");
                 
                 // Report file transfer failure
-                BluetoothReporting.reportFileTransferFailure(context, currentFileTransfer.filePath, 
+                BluetoothReporting.reportFileTransferFailure(context, currentFileTransfer.source(), 
                     "send_file", "packet_timeout", null);
                 
                 notificationManager.showDebugNotification("File Transfer Failed", 
                     "Packet " + packetIndex + " timeout");
                 
                 // Cancel transfer
-                comManager.setFastMode(false);
                 currentFileTransfer = null;
                 pendingPackets.clear();
             } else {
@@ -742,6 +858,202 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
         }
     }
     
+    /**
+     * Create the send window for a new transfer, or null to use stop-and-wait.
+     * Only phones that negotiated a window (set_ble_mtu fileWindow) can reassemble packets
+     * that arrive out of order and ask for just the missing ones.
+     */
+    private FileTransferWindow createFileTransferWindow(FileTransferSession session) {
+        int maxWindow = K900ProtocolUtils.getFileTransferWindow();
+        if (maxWindow <= 1) {
+            return null;
+        }
+        return new FileTransferWindow(session.totalPackets, maxWindow, FILE_TRANSFER_MAX_RETRIES);
+    }
+
+    /**
+     * Windowed transfers: send packets until the window is full, retransmits first.
+     * Called on start, on every ACK and from the timeout check.
+     */
+    private void pumpFileWindow() {
+        synchronized (fileWindowLock) {
+            FileTransferSession session = currentFileTransfer;
+            if (session == null || !session.isActive || session.window == null ||
+                    session.waitingForPhoneConfirmation) {
+                return;
+            }
+
+            FileTransferWindow window = session.window;
+            if (window.isComplete()) {
+                cancelFileWindowTimeout();
+                session.currentPacketIndex = session.totalPackets;
+                Log.d(TAG, "📊 Windowed transfer done: " + window.getRetransmissionCount() +
+                           " retransmissions, window=" + window.getWindowSize() +
+                           ", srtt=" + window.getSmoothedRttMs() + "ms");
+                awaitPhoneConfirmation();
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now < session.windowPausedUntil) {
+                return;
+            }
+
+            int packetIndex;
+            while ((packetIndex = window.nextPacket(now)) >= 0) {
+                byte[] packet = packFilePacket(session, packetIndex);
+                if (packet == null) {
+                    Log.e(TAG, "Failed to pack file packet " + packetIndex);
+                    abortWindowedTransfer("pack_failed", "Failed to pack packet " + packetIndex);
+                    return;
+                }
+                comManager.sendFile(packet);
+            }
+
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "📊 Window: " + window.getInFlightCount() + "/" + window.getWindowSize() +
+                           " in flight, " + window.getAckedCount() + "/" + session.totalPackets + " ACKed");
+            }
+
+            // (Re)arm the ACK timeout for whatever is still in flight
+            if (window.getInFlightCount() > 0) {
+                scheduleFileWindowTimeout(window.getRetransmitTimeoutMs());
+            }
+        }
+    }
+
+    /**
+     * Windowed transfers: requeue overdue packets and keep the window moving
+     */
+    private void checkFileWindowTimeouts() {
+        synchronized (fileWindowLock) {
+            FileTransferSession session = currentFileTransfer;
+            if (session == null || !session.isActive || session.window == null) {
+                return;
+            }
+
+            int failedPacket = session.window.checkTimeouts(System.currentTimeMillis());
+            if (failedPacket >= 0) {
+                Log.e(TAG, "File packet " + failedPacket + " failed after " + FILE_TRANSFER_MAX_RETRIES + " retries");
+                abortWindowedTransfer("packet_timeout", "Packet " + failedPacket + " timeout");
+                return;
+            }
+
+            pumpFileWindow();
+        }
+    }
+
+    /**
+     * Windowed transfers: handle a BES ACK (state=1) or flow-control rejection (state=0)
+     */
+    private void handleWindowedFileTransferAck(int state, int zeroBasedIndex) {
+        synchronized (fileWindowLock) {
+            FileTransferSession session = currentFileTransfer;
+            if (session == null || !session.isActive || session.window == null) {
+                return;
+            }
+            FileTransferWindow window = session.window;
+
+            if (state == 1) {
+                if (!window.onAck(zeroBasedIndex, System.currentTimeMillis())) {
+                    Log.w(TAG, "⚠️ Ignoring duplicate ACK for packet " + zeroBasedIndex);
+                    return;
+                }
+                consecutiveFailures = 0;
+                session.currentPacketIndex = window.getAckedPrefix();
+                pumpFileWindow();
+                return;
+            }
+
+            if (!window.onNack(zeroBasedIndex)) {
+                Log.w(TAG, "⚠️ Ignoring stale failure ACK for packet " + zeroBasedIndex);
+                return;
+            }
+
+            consecutiveFailures++;
+            if (consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                Log.e(TAG, "❌💥 File transfer ABORTED: " + consecutiveFailures +
+                          " consecutive failures - BES2700 BLE TX likely stuck");
+                abortWindowedTransfer("ble_tx_stuck_consecutive_failures",
+                    "BLE TX stuck after " + consecutiveFailures + " failures at packet " + zeroBasedIndex);
+                return;
+            }
+
+            // Same exponential backoff as stop-and-wait, on top of the window being halved
+            int backoffMs = Math.min(BASE_BACKOFF_MS * (1 << (consecutiveFailures - 1)), MAX_BACKOFF_MS);
+            session.windowPausedUntil = System.currentTimeMillis() + backoffMs;
+
+            Log.w(TAG, "⚠️ File packet " + zeroBasedIndex + " failed (state=" + state +
+                      "), consecutive failures: " + consecutiveFailures +
+                      ", window: " + window.getWindowSize() + ", backoff: " + backoffMs + "ms");
+
+            fileTransferExecutor.schedule(this::pumpFileWindow, backoffMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Resend only the packets the phone reports missing.
+     * Phones that negotiated windowed transfers send this instead of failing the whole transfer,
+     * since a retransmitted packet can legitimately arrive after the final one.
+     * Made public so TransferCompleteCommandHandler can call it.
+     */
+    public void handleMissingPacketsRequest(String fileName, List<Integer> missingPackets) {
+        synchronized (fileWindowLock) {
+            FileTransferSession session = currentFileTransfer;
+            if (session == null || !session.isActive || !session.fileName.equals(fileName)) {
+                Log.w(TAG, "⚠️ Missing packets request but no active transfer for: " + fileName);
+                return;
+            }
+            if (session.window == null) {
+                Log.w(TAG, "⚠️ Missing packets request for stop-and-wait transfer " + fileName + " - ignoring");
+                return;
+            }
+
+            int requeued = 0;
+            for (int index : missingPackets) {
+                if (session.window.requeue(index)) {
+                    requeued++;
+                }
+            }
+
+            Log.i(TAG, "🔁 Phone is missing " + missingPackets.size() + " packets of " + fileName +
+                       ", resending " + requeued);
+            if (requeued == 0) {
+                return;
+            }
+
+            cancelPhoneConfirmationTimeout();
+            session.waitingForPhoneConfirmation = false;
+            session.currentPacketIndex = session.window.getAckedPrefix();
+            pumpFileWindow();
+        }
+    }
+
+    private void abortWindowedTransfer(String reason, String message) {
+        BluetoothReporting.reportFileTransferFailure(context, currentFileTransfer.source(),
+            "send_file", reason, null);
+        notificationManager.showDebugNotification("File Transfer Failed", message);
+
+        cancelFileWindowTimeout();
+        currentFileTransfer.isActive = false;
+        currentFileTransfer = null;
+        pendingPackets.clear();
+        consecutiveFailures = 0;
+    }
+
+    private void scheduleFileWindowTimeout(long delayMs) {
+        cancelFileWindowTimeout();
+        fileWindowTimeout = fileTransferExecutor.schedule(this::checkFileWindowTimeouts,
+            delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelFileWindowTimeout() {
+        if (fileWindowTimeout != null) {
+            fileWindowTimeout.cancel(false);
+            fileWindowTimeout = null;
+        }
+    }
+
     /**
      * Handle file transfer acknowledgment
      * Made public so K900CommandHandler can call it when ACK is received as JSON
@@ -754,6 +1066,11 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
         // MCU uses 1-based indexing, convert to 0-based for our packet tracking
         int zeroBasedIndex = index - 1;
 
+        if (currentFileTransfer.window != null) {
+            handleWindowedFileTransferAck(state, zeroBasedIndex);
+            return;
+        }
+
         // Calculate time since packet was sent
         FilePacketState packetState = pendingPackets.get(zeroBasedIndex);
         long ackDelay = packetState != null ?
@@ -803,14 +1120,13 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
                           " consecutive failures - BES2700 BLE TX likely stuck");
 
                 // Report the failure
-                BluetoothReporting.reportFileTransferFailure(context, currentFileTransfer.filePath,
+                BluetoothReporting.reportFileTransferFailure(context, currentFileTransfer.source(),
                     "send_file", "ble_tx_stuck_consecutive_failures", null);
 
                 notificationManager.showDebugNotification("Transfer Failed",
                     "BLE TX stuck after " + consecutiveFailures + " failures at packet " + zeroBasedIndex);
 
                 // Abort the transfer
-                comManager.setFastMode(false);
                 currentFileTransfer.isActive = false;
                 currentFileTransfer = null;
                 pendingPackets.clear();
@@ -840,16 +1156,16 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
     /**
      * Process received message for file transfer acknowledgments
      */
-    private void processReceivedMessage(byte[] message) {
-        if (message == null || message.length < 4) {
+    private void processReceivedMessage(byte[] message, int offset, int length) {
+        if (message == null || length < 4) {
             return;
         }
 
         // Check if this is a file transfer acknowledgment
         // Format: [CMD_TYPE][STATE][INDEX_HIGH][INDEX_LOW]...
-        if (message[0] == K900ProtocolUtils.CMD_TYPE_PHOTO && message.length >= 4) {
-            int state = message[1] & 0xFF;
-            int index = ((message[2] & 0xFF) << 8) | (message[3] & 0xFF);
+        if (message[offset] == K900ProtocolUtils.CMD_TYPE_PHOTO) {
+            int state = message[offset + 1] & 0xFF;
+            int index = ((message[offset + 2] & 0xFF) << 8) | (message[offset + 3] & 0xFF);
             handleFileTransferAck(state, index);
         }
     }
@@ -902,7 +1218,6 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
                 currentFileTransfer.fileName + " confirmed by phone");
 
             deleteFileAfterSuccess();
-            comManager.setFastMode(false);
             currentFileTransfer = null;
             pendingPackets.clear();
         } else {
@@ -924,7 +1239,13 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
 
                 // Restart transfer from packet 0
                 Log.d(TAG, "🔄 Restarting transfer from packet 0");
-                sendNextFilePacket();
+                // Fresh send window (or stop-and-wait if the phone renegotiated meanwhile)
+                currentFileTransfer.window = createFileTransferWindow(currentFileTransfer);
+                if (currentFileTransfer.window != null) {
+                    pumpFileWindow();
+                } else {
+                    sendNextFilePacket();
+                }
             } else {
                 Log.e(TAG, "❌ Max retries exceeded (" + MAX_TRANSFER_RETRIES + ") - giving up on transfer");
 
@@ -932,7 +1253,6 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
                     "Max retries exceeded for " + currentFileTransfer.fileName);
 
                 // Clean up but DON'T delete file (might be useful for debugging)
-                comManager.setFastMode(false);
                 currentFileTransfer = null;
                 pendingPackets.clear();
 
@@ -987,7 +1307,7 @@ public class K900BluetoothManager extends BaseBluetoothManager implements Serial
      * Delete file after successful transfer
      */
     private void deleteFileAfterSuccess() {
-        if (currentFileTransfer == null) {
+        if (currentFileTransfer == null || currentFileTransfer.filePath == null) {
             return;
         }
 
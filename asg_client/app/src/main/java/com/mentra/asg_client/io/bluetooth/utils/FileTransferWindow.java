@@ -0,0 +1,255 @@
+package com.mentra.asg_client.io.bluetooth.utils;
+
+import java.util.ArrayDeque;
+
+/**
+ * Sliding-window, selective-repeat bookkeeping for K900 file transfers.
+ * <p>
+ * Up to {@link #getWindowSize()} packets may be waiting for their BES ACK at the same time, and
+ * only packets that BES rejects, that time out, or that the phone reports missing are sent again.
+ * The window grows by about one packet per round trip while the ACK round trip stays close to the
+ * fastest one seen, and shrinks when the round trip climbs (packets queueing up in BES) or when
+ * BES rejects a packet. With a maximum window of 1 this degenerates to stop-and-wait.
+ * <p>
+ * Not thread safe; callers serialize access.
+ */
+public class FileTransferWindow {
+    // Bounds for the retransmission timeout derived from the measured ACK round trip
+    public static final long MIN_RETRANSMIT_TIMEOUT_MS = 250;
+    public static final long MAX_RETRANSMIT_TIMEOUT_MS = 3000;
+
+    private static final int INITIAL_WINDOW = 4;
+    // A smoothed round trip above this multiple of the best one means BES is queueing our packets
+    private static final double QUEUEING_RTT_FACTOR = 2.0;
+
+    // Packet states; 0 means not sent yet
+    private static final byte STATE_IN_FLIGHT = 1;
+    private static final byte STATE_QUEUED = 2;
+    private static final byte STATE_ACKED = 3;
+
+    private final int totalPackets;
+    private final int maxWindow;
+    private final int maxTimeouts;
+
+    private final byte[] states;
+    private final long[] sendTimes;
+    private final int[] timeouts;
+    private final boolean[] resent;
+    private final ArrayDeque<Integer> retransmitQueue = new ArrayDeque<>();
+
+    private double window;
+    private int nextNewPacket;
+    private int inFlightCount;
+    private int ackedCount;
+    private int ackedPrefix;
+    private int retransmissionCount;
+
+    private long smoothedRttMs = -1;
+    private long rttVarianceMs;
+    private long minRttMs = Long.MAX_VALUE;
+
+    /**
+     * @param totalPackets Number of packets in the file
+     * @param maxWindow    Largest number of packets allowed in flight
+     * @param maxTimeouts  Times a single packet may time out before the transfer should give up
+     */
+    public FileTransferWindow(int totalPackets, int maxWindow, int maxTimeouts) {
+        this.totalPackets = totalPackets;
+        this.maxWindow = Math.max(1, maxWindow);
+        this.maxTimeouts = maxTimeouts;
+        this.states = new byte[totalPackets];
+        this.sendTimes = new long[totalPackets];
+        this.timeouts = new int[totalPackets];
+        this.resent = new boolean[totalPackets];
+        this.window = Math.min(INITIAL_WINDOW, this.maxWindow);
+    }
+
+    /**
+     * Pick the next packet to send, if the window has room. Retransmits go before new packets.
+     *
+     * @return The packet index to send now, or -1 if nothing may be sent
+     */
+    public int nextPacket(long now) {
+        if (inFlightCount >= getWindowSize()) {
+            return -1;
+        }
+
+        int index;
+        if (!retransmitQueue.isEmpty()) {
+            index = retransmitQueue.poll();
+            retransmissionCount++;
+        } else if (nextNewPacket < totalPackets) {
+            index = nextNewPacket++;
+        } else {
+            return -1;
+        }
+
+        states[index] = STATE_IN_FLIGHT;
+        sendTimes[index] = now;
+        inFlightCount++;
+        return index;
+    }
+
+    /**
+     * Record a successful BES ACK.
+     *
+     * @return true if this acknowledged a packet that wasn't acknowledged yet
+     */
+    public boolean onAck(int index, long now) {
+        if (index < 0 || index >= totalPackets) {
+            return false;
+        }
+
+        byte state = states[index];
+        if (state == STATE_IN_FLIGHT) {
+            inFlightCount--;
+            // Karn's rule: a resent packet's ACK can't tell which send it belongs to
+            if (!resent[index]) {
+                onRttSample(now - sendTimes[index]);
+            }
+        } else if (state == STATE_QUEUED) {
+            // Late ACK for a packet we already gave up on - it got through after all
+            retransmitQueue.remove(Integer.valueOf(index));
+        } else {
+            return false;
+        }
+
+        states[index] = STATE_ACKED;
+        ackedCount++;
+        while (ackedPrefix < totalPackets && states[ackedPrefix] == STATE_ACKED) {
+            ackedPrefix++;
+        }
+        return true;
+    }
+
+    /**
+     * Record a BES rejection (state=0): its buffer is full, so the packet is queued for
+     * retransmission and the window is halved.
+     *
+     * @return true if the packet was in flight
+     */
+    public boolean onNack(int index) {
+        if (index < 0 || index >= totalPackets || states[index] != STATE_IN_FLIGHT) {
+            return false;
+        }
+
+        inFlightCount--;
+        queueRetransmit(index);
+        window = Math.max(1, window / 2);
+        return true;
+    }
+
+    /**
+     * Queue every in-flight packet whose ACK is overdue for retransmission. Any timeout collapses
+     * the window to a single packet until ACKs start flowing again.
+     *
+     * @return Index of a packet that has now timed out too often, or -1
+     */
+    public int checkTimeouts(long now) {
+        long timeout = getRetransmitTimeoutMs();
+        boolean timedOut = false;
+        for (int i = ackedPrefix; i < nextNewPacket; i++) {
+            if (states[i] == STATE_IN_FLIGHT && now - sendTimes[i] >= timeout) {
+                if (++timeouts[i] >= maxTimeouts) {
+                    return i;
+                }
+                inFlightCount--;
+                queueRetransmit(i);
+                timedOut = true;
+            }
+        }
+        if (timedOut) {
+            window = 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Send an acknowledged packet again because the phone never received it.
+     *
+     * @return true if the packet was queued; packets still in flight or queued are left alone
+     */
+    public boolean requeue(int index) {
+        if (index < 0 || index >= totalPackets || states[index] != STATE_ACKED) {
+            return false;
+        }
+
+        ackedCount--;
+        ackedPrefix = Math.min(ackedPrefix, index);
+        queueRetransmit(index);
+        return true;
+    }
+
+    public boolean isComplete() {
+        return ackedCount == totalPackets;
+    }
+
+    /**
+     * @return Current window size in packets
+     */
+    public int getWindowSize() {
+        return (int) window;
+    }
+
+    /**
+     * @return Timeout for an unacknowledged packet, from the smoothed round trip and its variance
+     */
+    public long getRetransmitTimeoutMs() {
+        if (smoothedRttMs < 0) {
+            return MAX_RETRANSMIT_TIMEOUT_MS;
+        }
+        long timeout = smoothedRttMs + 4 * rttVarianceMs;
+        return Math.max(MIN_RETRANSMIT_TIMEOUT_MS, Math.min(MAX_RETRANSMIT_TIMEOUT_MS, timeout));
+    }
+
+    public int getTotalPackets() {
+        return totalPackets;
+    }
+
+    public int getAckedCount() {
+        return ackedCount;
+    }
+
+    /**
+     * @return Number of packets acknowledged without a gap from packet 0
+     */
+    public int getAckedPrefix() {
+        return ackedPrefix;
+    }
+
+    public int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    public int getRetransmissionCount() {
+        return retransmissionCount;
+    }
+
+    public long getSmoothedRttMs() {
+        return smoothedRttMs;
+    }
+
+    private void queueRetransmit(int index) {
+        states[index] = STATE_QUEUED;
+        resent[index] = true;
+        retransmitQueue.add(index);
+    }
+
+    private void onRttSample(long rttMs) {
+        minRttMs = Math.min(minRttMs, rttMs);
+        if (smoothedRttMs < 0) {
+            smoothedRttMs = rttMs;
+            rttVarianceMs = rttMs / 2;
+        } else {
+            rttVarianceMs = (3 * rttVarianceMs + Math.abs(smoothedRttMs - rttMs)) / 4;
+            smoothedRttMs = (7 * smoothedRttMs + rttMs) / 8;
+        }
+
+        // Each ACK moves the window by 1/window, i.e. about one packet per round trip
+        if (smoothedRttMs > QUEUEING_RTT_FACTOR * Math.max(minRttMs, 1)) {
+            window = Math.max(1, window - 1 / window);
+        } else {
+            window = Math.min(maxWindow, window + 1 / window);
+        }
+    }
+}
@@ -7,32 +7,77 @@ import java.util.List;
 
 /**
  * Parser for K900 protocol messages.
- * Uses a CircleBuffer to handle fragmented messages across multiple UART reads.
+ * <p>
+ * UART reads are appended to a ring buffer and scanned in place for ##...$$ frames. The scan
+ * position is kept between reads, so a frame arriving in many small reads is only scanned once,
+ * and complete frames are handed out through a reused {@link Frame} view instead of being copied
+ * out one by one.
  */
 public class K900MessageParser {
     private static final String TAG = "K900MessageParser";
-    
+
     // K900 Protocol markers
-    private static final String PROTOCOL_START_MARKER = "##";
-    private static final String PROTOCOL_END_MARKER = "$$";
-    private static final byte[] START_MARKER_BYTES = {0x23, 0x23}; // ##
-    private static final byte[] END_MARKER_BYTES = {0x24, 0x24};   // $$
-    
-    // Buffer size for parsing messages
+    private static final byte START_MARKER = 0x23; // #
+    private static final byte END_MARKER = 0x24;   // $
+
+    // Buffer size for parsing messages (power of two, positions are masked into the ring)
     private static final int BUFFER_SIZE = 8192; // 8KB buffer
-    
-    private final CircleBuffer mCircleBuffer;
-    private final byte[] mTempBuffer;
-    
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    // Markers plus the 4-byte command header: ## must be at least 6 bytes before $$
+    private static final int MIN_START_TO_END = 6;
+
+    // An unterminated frame longer than this is treated as garbage and dropped
+    private static final int MAX_PENDING_FRAME = 512;
+
+    /**
+     * View of one complete frame, markers included. Reused for every frame: it is only valid
+     * until the next call to {@link #nextFrame(Frame)} or {@link #addData(byte[], int)}.
+     */
+    public static class Frame {
+        private byte[] array;
+        private int offset;
+        private int length;
+
+        public byte[] getArray() {
+            return array;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return A copy of the frame that the caller owns
+         */
+        public byte[] toByteArray() {
+            byte[] copy = new byte[length];
+            System.arraycopy(array, offset, copy, 0, length);
+            return copy;
+        }
+    }
+
+    private final byte[] mRing = new byte[BUFFER_SIZE];
+    // Frames that wrap around the end of the ring are made contiguous here
+    private final byte[] mWrapBuffer = new byte[BUFFER_SIZE];
+
+    // Absolute stream positions; ring index is position & BUFFER_MASK
+    private long mHead;          // first byte not yet consumed
+    private long mTail;          // next byte to be written
+    private long mScanPos;       // next byte to look at for a marker
+    private long mFrameStart = -1; // position of ## of the frame being scanned, or -1
+
     /**
      * Create a new K900MessageParser
      */
     public K900MessageParser() {
-        mCircleBuffer = new CircleBuffer(BUFFER_SIZE);
-        mTempBuffer = new byte[BUFFER_SIZE];
         Log.d(TAG, "K900MessageParser initialized with " + BUFFER_SIZE + " byte buffer");
     }
-    
+
     /**
      * Add data to the message buffer
      * @param data Raw data received from UART
@@ -44,167 +89,152 @@ public class K900MessageParser {
             return false;
         }
 
-        // Always append the full UART read. parseMessages() is responsible for
+        // Always append the full UART read. nextFrame() is responsible for
         // extracting all complete ##...$$ frames (including multiple frames per read).
-        boolean added = mCircleBuffer.add(data, 0, size);
-        if (!added) {
+        if (size > BUFFER_SIZE - (int) (mTail - mHead)) {
             Log.w(TAG, "Failed to append " + size + " bytes to parser buffer");
+            return false;
+        }
+
+        int index = (int) (mTail & BUFFER_MASK);
+        int firstPart = Math.min(size, BUFFER_SIZE - index);
+        System.arraycopy(data, 0, mRing, index, firstPart);
+        if (firstPart < size) {
+            System.arraycopy(data, firstPart, mRing, 0, size - firstPart);
         }
-        return added;
+        mTail += size;
+        return true;
     }
-    
+
     /**
-     * Parse and extract complete messages from the buffer
-     * @return List of complete messages, or null if none were found
+     * Find the next complete frame in the buffer. Bytes before a ## start marker are discarded, as
+     * are frames too short to hold a command header.
+     * @param frame View to point at the frame
+     * @return true if a frame was found, false if more data is needed
      */
-    public List<byte[]> parseMessages() {
-        int dataLen = mCircleBuffer.getDataLen();
-        if (dataLen == 0) {
-            return null;
-        }
-        
-        // Fetch all available data into our temp buffer
-        int fetchSize = mCircleBuffer.fetch(mTempBuffer, 0, dataLen);
-        if (fetchSize == 0) {
-            return null;
-        }
-        
-        List<byte[]> completeMessages = new ArrayList<>();
-        int currentPos = 0;
-        boolean foundValidMessage = false;
-        
-        // Continue until we can't find any more complete messages
-        while (currentPos < fetchSize) {
-            // Find start marker
-            int startMarkerPos = findMarker(mTempBuffer, currentPos, fetchSize - currentPos, START_MARKER_BYTES);
-            if (startMarkerPos == -1) {
-                // No start marker found
-                if (!foundValidMessage) {
-                    // If we haven't found any valid messages, clear the whole buffer
-                    mCircleBuffer.clear();
-                    return null;
+    public boolean nextFrame(Frame frame) {
+        while (true) {
+            if (mFrameStart < 0) {
+                long start = findMarker(START_MARKER, mScanPos);
+                if (start < 0) {
+                    // Nothing but garbage; keep a trailing # in case the marker is split
+                    long keep = (mTail > mHead && byteAt(mTail - 1) == START_MARKER) ? mTail - 1 : mTail;
+                    mHead = keep;
+                    mScanPos = keep;
+                    return false;
                 }
-                break;
+                mHead = start;
+                mFrameStart = start;
+                mScanPos = start + 2;
             }
-            
-            // If we found a start marker that's not at our current position, skip to it
-            if (startMarkerPos > currentPos) {
-                currentPos = startMarkerPos;
-            }
-            
-            // Find end marker
-            int endMarkerPos = findMarker(mTempBuffer, currentPos + 2, fetchSize - currentPos - 2, END_MARKER_BYTES);
-            if (endMarkerPos == -1) {
-                // No end marker found
-                // If we've already found at least one valid message, process that and keep the rest
-                if (foundValidMessage) {
-                    break;
-                }
-                
-                // Check if buffer has been waiting too long
-                // For now, if the buffer size exceeds a reasonable message size, clear it
-                if (fetchSize > 512) {  // 512 bytes should be more than enough for any valid message
-                    Log.d(TAG, "Buffer size too large without valid message - clearing");
-                    mCircleBuffer.clear();
+
+            long end = findMarker(END_MARKER, mScanPos);
+            if (end < 0) {
+                // The last byte may be the first half of $$: look at it again next time
+                mScanPos = Math.max(mScanPos, mTail - 1);
+                if (mTail - mFrameStart > MAX_PENDING_FRAME) {
+                    // No $$ in any sensible frame length: drop this ## and resync on the next one
+                    Log.d(TAG, "Buffer size too large without valid message - dropping frame start");
+                    mHead = mFrameStart + 2;
+                    mScanPos = mHead;
+                    mFrameStart = -1;
+                    continue;
                 }
-                return null;
+                return false;
             }
-            
-            // Validate the message format (check ## is followed by at least 4 bytes of command header)
-            if (endMarkerPos - currentPos < 6) {
-                currentPos = endMarkerPos + 2;
+
+            long start = mFrameStart;
+            mFrameStart = -1;
+            mHead = end + 2;
+            mScanPos = end + 2;
+
+            if (end - start < MIN_START_TO_END) {
                 continue;
             }
-            
-            // Calculate message length including markers
-            int messageLength = (endMarkerPos + 2) - currentPos;
-            
-            // Extract the complete message
-            byte[] completeMessage = new byte[messageLength];
-            ByteUtil.copyBytes(mTempBuffer, currentPos, messageLength, completeMessage, 0);
-            
-            // Verify this looks like a valid K900 message with proper structure
-            if (isValidK900Message(completeMessage)) {
-                completeMessages.add(completeMessage);
-                foundValidMessage = true;
-            }
-            
-            // Move past this message
-            currentPos = endMarkerPos + 2;
+            view(frame, start, (int) (end + 2 - start));
+            return true;
         }
-        
-        // Remove the processed data from the circle buffer
-        if (currentPos > 0) {
-            mCircleBuffer.removeHead(currentPos);
-            // Keep this log as it's useful for monitoring circle buffer state
-            Log.d(TAG, "Removed " + currentPos + " bytes from buffer, " + 
-                 mCircleBuffer.getDataLen() + " remaining");
-        }
-        
-        return completeMessages.isEmpty() ? null : completeMessages;
     }
-    
+
     /**
-     * Validate that a message appears to follow the K900 protocol format
-     * @param message The message bytes to validate
-     * @return true if the message appears valid
+     * Parse and extract complete messages from the buffer, each copied into its own array.
+     * Prefer {@link #nextFrame(Frame)} on the receive path.
+     * @return List of complete messages, or null if none were found
      */
-    private boolean isValidK900Message(byte[] message) {
-        if (message == null || message.length < 8) {  // Minimum size for a valid message
-            return false;
-        }
-        
-        // Check start marker
-        if (message[0] != START_MARKER_BYTES[0] || message[1] != START_MARKER_BYTES[1]) {
-            return false;
-        }
-        
-        // Check end marker
-        int len = message.length;
-        if (message[len-2] != END_MARKER_BYTES[0] || message[len-1] != END_MARKER_BYTES[1]) {
-            return false;
+    public List<byte[]> parseMessages() {
+        List<byte[]> completeMessages = null;
+        Frame frame = new Frame();
+        while (nextFrame(frame)) {
+            if (completeMessages == null) {
+                completeMessages = new ArrayList<>();
+            }
+            completeMessages.add(frame.toByteArray());
         }
-        
-        // Message has proper markers
-        return true;
+        return completeMessages;
     }
-    
+
     /**
-     * Find a marker (start or end) in the buffer
-     * @param buffer The buffer to search
-     * @param offset Starting position
-     * @param length Length to search
-     * @param marker The marker bytes to find
+     * Find the first occurrence of a doubled marker byte at or after a position
      * @return Position of the marker, or -1 if not found
      */
-    private int findMarker(byte[] buffer, int offset, int length, byte[] marker) {
-        if (buffer == null || marker == null || marker.length != 2) {
-            return -1;
-        }
-        
-        int maxPos = Math.min(offset + length, buffer.length - 1);
-        for (int i = offset; i < maxPos; i++) {
-            if (buffer[i] == marker[0] && buffer[i+1] == marker[1]) {
-                return i;
+    private long findMarker(byte marker, long from) {
+        long last = mTail - 1;
+        long pos = Math.max(from, mHead);
+        while (pos < last) {
+            int index = (int) (pos & BUFFER_MASK);
+            // Scan the contiguous stretch up to the end of the ring without masking every byte
+            int stop = (int) Math.min(BUFFER_SIZE - 2, index + (last - pos) - 1);
+            for (int i = index; i <= stop; i++) {
+                if (mRing[i] == marker && mRing[i + 1] == marker) {
+                    return pos + (i - index);
+                }
+            }
+            pos += stop - index + 1;
+            // Marker pair split across the end of the ring
+            if (pos < last && (pos & BUFFER_MASK) == BUFFER_SIZE - 1) {
+                if (mRing[BUFFER_SIZE - 1] == marker && mRing[0] == marker) {
+                    return pos;
+                }
+                pos++;
             }
         }
-        
         return -1;
     }
-    
+
+    private byte byteAt(long pos) {
+        return mRing[(int) (pos & BUFFER_MASK)];
+    }
+
+    private void view(Frame frame, long start, int length) {
+        int index = (int) (start & BUFFER_MASK);
+        if (index + length <= BUFFER_SIZE) {
+            frame.array = mRing;
+            frame.offset = index;
+        } else {
+            int firstPart = BUFFER_SIZE - index;
+            System.arraycopy(mRing, index, mWrapBuffer, 0, firstPart);
+            System.arraycopy(mRing, 0, mWrapBuffer, firstPart, length - firstPart);
+            frame.array = mWrapBuffer;
+            frame.offset = 0;
+        }
+        frame.length = length;
+    }
+
     /**
      * Clear the message buffer
      */
     public void clear() {
-        mCircleBuffer.clear();
+        mHead = mTail;
+        mScanPos = mTail;
+        mFrameStart = -1;
         Log.d(TAG, "Message buffer cleared");
     }
-    
+
     /**
      * Get the current buffer size
      * @return Number of bytes currently in the buffer
      */
     public int getBufferSize() {
-        return mCircleBuffer.getDataLen();
+        return (int) (mTail - mHead);
     }
-}
\ No newline at end of file
+}
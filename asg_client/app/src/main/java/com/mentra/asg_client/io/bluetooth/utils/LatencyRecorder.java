@@ -0,0 +1,79 @@
+package com.mentra.asg_client.io.bluetooth.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Keeps the most recent latency samples and reports percentiles over them.
+ * Recording is a single array store; percentiles are computed (copy and sort) only when asked for,
+ * so this is cheap enough to sit on the UART receive path.
+ */
+public class LatencyRecorder {
+    private final long[] samplesMicros;
+    private int nextSample;
+    private long count;
+    private long maxMicros;
+
+    /**
+     * @param capacity Number of most recent samples to keep
+     */
+    public LatencyRecorder(int capacity) {
+        samplesMicros = new long[capacity];
+    }
+
+    public synchronized void recordNanos(long nanos) {
+        long micros = nanos / 1000;
+        samplesMicros[nextSample] = micros;
+        nextSample = (nextSample + 1) % samplesMicros.length;
+        count++;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+    }
+
+    /**
+     * @return Total samples recorded since creation or the last reset
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Largest sample since creation or the last reset, in microseconds
+     */
+    public synchronized long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return The percentile over the retained samples in microseconds, or 0 without samples
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            int retained = (int) Math.min(count, samplesMicros.length);
+            if (retained == 0) {
+                return 0;
+            }
+            sorted = Arrays.copyOf(samplesMicros, retained);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    public synchronized void reset() {
+        nextSample = 0;
+        count = 0;
+        maxMicros = 0;
+    }
+
+    /**
+     * @return One-line p50/p99/max summary for logs and status reports
+     */
+    public String getSummary() {
+        return String.format(Locale.US, "n=%d p50=%dus p99=%dus max=%dus",
+                getCount(), getPercentileMicros(50), getPercentileMicros(99), getMaxMicros());
+    }
+}
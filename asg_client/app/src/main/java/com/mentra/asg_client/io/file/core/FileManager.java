@@ -5,8 +5,12 @@ import com.mentra.asg_client.io.file.interfaces.FileMetadataOperations;
 import com.mentra.asg_client.io.file.interfaces.PackageOperations;
 import com.mentra.asg_client.io.file.interfaces.StorageOperations;
 import com.mentra.asg_client.io.file.utils.FileOperationLogger;
+import com.mentra.asg_client.io.file.managers.MediaCatalogManager;
 import com.mentra.asg_client.io.file.managers.ThumbnailManager;
 import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * FileManager interface following SOLID principles.
@@ -117,4 +121,55 @@ public interface FileManager extends FileOperations, FileMetadataOperations, Pac
      * @return ThumbnailManager instance
      */
     ThumbnailManager getThumbnailManager();
+
+    /**
+     * Get file count and total size for a package from the media catalog,
+     * without walking the package directory.
+     * @param packageName The package name
+     * @return Catalog statistics
+     */
+    MediaCatalogManager.CatalogStats getCatalogStats(String packageName);
+
+    /**
+     * Get one page of catalog changes (new, modified and deleted files) after a sync cursor.
+     * @param packageName The package name
+     * @param cursor Cursor returned by a previous call, or null for a full listing
+     * @param limit Maximum number of entries in the page (0 = unlimited)
+     * @return Change set page
+     */
+    MediaCatalogManager.ChangeSet getChangesSince(String packageName, String cursor, int limit);
+
+    /**
+     * Get tombstones for files deleted after the given wall-clock time.
+     * @param packageName The package name
+     * @param sinceMs Exclusive lower bound on deletion time (epoch millis)
+     * @return Tombstones, oldest first
+     */
+    List<MediaCatalogManager.Tombstone> getDeletionsSince(String packageName, long sinceMs);
+
+    /**
+     * Notify the media catalog that a file or capture folder was created, rewritten or
+     * removed outside of {@link #saveFile}/{@link #deleteFile}, so the next listing
+     * picks the change up without waiting for directory mtime revalidation.
+     * @param packageName The package name
+     * @param relativePath Path relative to the package directory
+     */
+    void notifyFileChanged(String packageName, String relativePath);
+
+    /**
+     * Remember files a delta sync could not serve yet although its cursor moved past them.
+     * They are persisted with the media catalog, so they survive a restart.
+     * @param packageName The package name
+     * @param relativePaths Paths relative to the package directory
+     */
+    void deferSyncFiles(String packageName, Collection<String> relativePaths);
+
+    /**
+     * Give deferred files that can now be served a fresh change sequence, so the next delta
+     * sync reports them.
+     * @param packageName The package name
+     * @param stillDeferred Returns true for paths that must stay deferred
+     * @return Number of files released
+     */
+    int releaseDeferredSyncFiles(String packageName, Predicate<String> stillDeferred);
 } 
\ No newline at end of file
@@ -5,14 +5,17 @@ import com.mentra.asg_client.io.file.managers.FileOperationsManager;
 import com.mentra.asg_client.io.file.managers.FileSecurityManager;
 import com.mentra.asg_client.io.file.managers.FileLockManager;
 import com.mentra.asg_client.io.file.managers.DirectoryManager;
+import com.mentra.asg_client.io.file.managers.MediaCatalogManager;
 import com.mentra.asg_client.io.file.managers.ThumbnailManager;
 import com.mentra.asg_client.io.file.utils.FileOperationLogger;
 import com.mentra.asg_client.io.file.utils.MimeTypeRegistry;
 import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Predicate;
 import android.util.Log;
 import java.util.Map;
 
@@ -30,7 +33,9 @@ public class FileManagerImpl implements FileManager {
     private final FileLockManager lockManager;
     private final DirectoryManager directoryManager;
     private final ThumbnailManager thumbnailManager;
+    private final MediaCatalogManager catalogManager;
     private final FileOperationLogger operationLogger;
+    private final MimeTypeRegistry mimeTypeRegistry = new MimeTypeRegistry();
     
     // Dependencies
     private final Logger logger;
@@ -46,6 +51,7 @@ public class FileManagerImpl implements FileManager {
         this.lockManager = new FileLockManager(logger);
         this.directoryManager = new DirectoryManager(baseDirectory, logger);
         this.thumbnailManager = new ThumbnailManager(baseDirectory, logger);
+        this.catalogManager = new MediaCatalogManager(baseDirectory, logger);
         this.operationLogger = new FileOperationLogger(logger);
         
         logger.info(TAG, "FileManagerImpl initialized with base directory: " + baseDirectory.getAbsolutePath());
@@ -76,7 +82,9 @@ public class FileManagerImpl implements FileManager {
             }
             
             // Perform file operation
-            return operationsManager.saveFile(packageName, fileName, inputStream, mimeType);
+            FileOperationResult result = operationsManager.saveFile(packageName, fileName, inputStream, mimeType);
+            catalogManager.invalidatePath(packageName, fileName);
+            return result;
         } finally {
             lockManager.releaseWriteLock(lock, packageName);
         }
@@ -167,7 +175,9 @@ public class FileManagerImpl implements FileManager {
         // Thread synchronization
         ReadWriteLock lock = lockManager.acquireWriteLock(packageName);
         try {
-            return operationsManager.deleteFile(packageName, fileName);
+            FileOperationResult result = operationsManager.deleteFile(packageName, fileName);
+            catalogManager.invalidatePath(packageName, fileName);
+            return result;
         } finally {
             lockManager.releaseWriteLock(lock, packageName);
         }
@@ -191,7 +201,9 @@ public class FileManagerImpl implements FileManager {
         // Thread synchronization
         ReadWriteLock lock = lockManager.acquireWriteLock(packageName);
         try {
-            return operationsManager.updateFile(packageName, fileName, inputStream, mimeType);
+            FileOperationResult result = operationsManager.updateFile(packageName, fileName, inputStream, mimeType);
+            catalogManager.invalidatePath(packageName, fileName);
+            return result;
         } finally {
             lockManager.releaseWriteLock(lock, packageName);
         }
@@ -229,7 +241,7 @@ public class FileManagerImpl implements FileManager {
             
             // Use the original fileName (which may be a relative path) for the metadata
             // This preserves the directory structure information
-            String mimeType = new MimeTypeRegistry().getMimeType(file.getName());
+            String mimeType = mimeTypeRegistry.getMimeType(file.getName());
             
             FileMetadata metadata = new FileMetadata(
                     fileName, // Use the original fileName to preserve path structure
@@ -280,12 +292,11 @@ public class FileManagerImpl implements FileManager {
                 return new ArrayList<>();
             }
             
-            // Recursively collect all files from package directory and subdirectories
-            List<FileMetadata> metadataList = new ArrayList<>();
-            int totalFiles = collectFilesRecursively(packageDir, packageDir, packageName, metadataList);
+            // Served from the incrementally maintained catalog; only changed directories are re-read
+            List<FileMetadata> metadataList = catalogManager.listFiles(packageName, packageDir);
             
             operationLogger.logOperation("LIST", packageName, null, metadataList.size(), true);
-            Log.d(TAG, "✅ File listing completed - " + metadataList.size() + " files found in " + totalFiles + " locations");
+            Log.d(TAG, "✅ File listing completed - " + metadataList.size() + " files found");
             return metadataList;
         } catch (Exception e) {
             Log.e(TAG, "💥 Error listing files", e);
@@ -298,62 +309,41 @@ public class FileManagerImpl implements FileManager {
         }
     }
     
-    /**
-     * Recursively collect all files from a directory and its subdirectories
-     * @param directory The directory to scan
-     * @param rootDir The root package directory (for computing relative paths)
-     * @param packageName The package name for metadata
-     * @param metadataList The list to populate with file metadata
-     * @return Total number of files found
-     */
-    private int collectFilesRecursively(File directory, File rootDir, String packageName, List<FileMetadata> metadataList) {
-        if (!directory.exists() || !directory.isDirectory()) {
-            return 0;
+    @Override
+    public List<FileMetadata> listFilesModifiedSince(String packageName, long sinceMs) {
+        Log.d(TAG, "📋 listFilesModifiedSince() called - Package: " + packageName + ", Since: " + sinceMs);
+        
+        // Security validation
+        if (!securityManager.validateOperation(packageName, null, "LIST")) {
+            Log.w(TAG, "❌ Security validation failed for file listing");
+            return new ArrayList<>();
         }
-
-        int fileCount = 0;
-        File[] items = directory.listFiles();
-
-        if (items != null) {
-            for (File item : items) {
-                if (item.isFile()) {
-                    // Skip transient *.partial sidecars (e.g. imu.jsonl.partial). These are in-flight
-                    // or retained-on-error recovery files; they must never be counted or advertised
-                    // for Wi-Fi sync, where unknown leaf names are treated as primary capture files.
-                    if (item.getName().endsWith(".partial")) {
-                        Log.d(TAG, "⏭️ Skipping .partial file from listing: " + item.getAbsolutePath());
-                        continue;
-                    }
-                    // Add file to metadata list
-                    String mimeType = new MimeTypeRegistry().getMimeType(item.getName());
-                    String relativePath = getRelativePath(rootDir, item);
-
-                    metadataList.add(new FileMetadata(
-                        relativePath, // Use relative path from package root to preserve directory structure
-                        item.getAbsolutePath(),
-                        item.length(),
-                        item.lastModified(),
-                        mimeType,
-                        packageName
-                    ));
-                    fileCount++;
-
-                    Log.d(TAG, "📄 Found file: " + relativePath + " (" + item.length() + " bytes)");
-                } else if (item.isDirectory()) {
-                    // Skip the transient holding area for SDK no-save photos — those files are
-                    // mid-upload and must never appear in gallery counts or Wi-Fi sync listings.
-                    if (FileManager.SDK_PENDING_DIR_NAME.equals(item.getName())) {
-                        Log.d(TAG, "⏭️ Skipping SDK pending dir from listing: " + item.getAbsolutePath());
-                        continue;
-                    }
-                    // Recursively scan subdirectory
-                    Log.d(TAG, "📁 Scanning subdirectory: " + item.getName());
-                    fileCount += collectFilesRecursively(item, rootDir, packageName, metadataList);
-                }
+        
+        ReadWriteLock lock = null;
+        try {
+            lock = lockManager.acquireReadLock(packageName, 3000, "FILE_LIST"); // 3 second timeout
+            if (lock == null) {
+                Log.w(TAG, "⚠️ Failed to acquire read lock for file listing - timeout");
+                return new ArrayList<>();
+            }
+            
+            File packageDir = directoryManager.getPackageDirectory(packageName);
+            if (!packageDir.exists() || !packageDir.isDirectory()) {
+                return new ArrayList<>();
+            }
+            
+            List<FileMetadata> metadataList = catalogManager.listFilesModifiedSince(packageName, packageDir, sinceMs);
+            operationLogger.logOperation("LIST", packageName, null, metadataList.size(), true);
+            Log.d(TAG, "✅ Delta listing completed - " + metadataList.size() + " files modified since " + sinceMs);
+            return metadataList;
+        } catch (Exception e) {
+            Log.e(TAG, "💥 Error listing modified files", e);
+            return new ArrayList<>();
+        } finally {
+            if (lock != null) {
+                lockManager.releaseReadLock(lock, packageName);
             }
         }
-
-        return fileCount;
     }
     
     /**
@@ -569,6 +559,9 @@ public class FileManagerImpl implements FileManager {
             long totalDeletedSize = 0;
 
             deletedCount = cleanupFilesRecursively(packageDir, packageName, cutoffTime, totalDeletedSize);
+            if (deletedCount > 0) {
+                catalogManager.invalidatePackage(packageName);
+            }
 
             Log.i(TAG, "✅ Cleanup completed: " + deletedCount + " files deleted, " + totalDeletedSize + " bytes freed");
             return deletedCount;
@@ -677,6 +670,46 @@ public class FileManagerImpl implements FileManager {
         return thumbnailManager;
     }
 
+    @Override
+    public MediaCatalogManager.CatalogStats getCatalogStats(String packageName) {
+        if (!securityManager.validateOperation(packageName, null, "LIST")) {
+            return new MediaCatalogManager.CatalogStats(0, 0, 0);
+        }
+        return catalogManager.getStats(packageName, directoryManager.getPackageDirectory(packageName));
+    }
+
+    @Override
+    public MediaCatalogManager.ChangeSet getChangesSince(String packageName, String cursor, int limit) {
+        if (!securityManager.validateOperation(packageName, null, "LIST")) {
+            return new MediaCatalogManager.ChangeSet(new ArrayList<>(), new ArrayList<>(), cursor, false, false);
+        }
+        return catalogManager.getChangesSince(packageName, directoryManager.getPackageDirectory(packageName), cursor, limit);
+    }
+
+    @Override
+    public List<MediaCatalogManager.Tombstone> getDeletionsSince(String packageName, long sinceMs) {
+        if (!securityManager.validateOperation(packageName, null, "LIST")) {
+            return new ArrayList<>();
+        }
+        return catalogManager.getDeletionsSince(packageName, directoryManager.getPackageDirectory(packageName), sinceMs);
+    }
+
+    @Override
+    public void notifyFileChanged(String packageName, String relativePath) {
+        catalogManager.invalidatePath(packageName, relativePath);
+    }
+
+    @Override
+    public void deferSyncFiles(String packageName, Collection<String> relativePaths) {
+        catalogManager.deferPaths(packageName, directoryManager.getPackageDirectory(packageName), relativePaths);
+    }
+
+    @Override
+    public int releaseDeferredSyncFiles(String packageName, Predicate<String> stillDeferred) {
+        return catalogManager.releaseDeferredPaths(packageName, directoryManager.getPackageDirectory(packageName),
+                stillDeferred);
+    }
+
     /**
      * Remove capture folders that are empty or contain no primary media file
      * (no base.jpg, base.mp4, or any other image/video). These are left behind
@@ -747,6 +780,7 @@ public class FileManagerImpl implements FileManager {
             }
 
             if (cleaned > 0) {
+                catalogManager.invalidatePackage(getDefaultPackageName());
                 logger.info(TAG, "Cleaned up " + cleaned + " orphaned capture folder(s)");
             }
         } catch (Exception e) {
@@ -23,6 +23,14 @@ public interface FileMetadataOperations {
      * @return List of file metadata
      */
     List<FileMetadata> listFiles(String packageName);
+
+    /**
+     * List files modified strictly after the given time, oldest first
+     * @param packageName The package name
+     * @param sinceMs Exclusive lower bound on last-modified time (epoch millis)
+     * @return List of file metadata
+     */
+    List<FileMetadata> listFilesModifiedSince(String packageName, long sinceMs);
     
     /**
      * Check if a file exists
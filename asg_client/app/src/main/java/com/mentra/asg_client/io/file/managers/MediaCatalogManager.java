@@ -0,0 +1,1075 @@
+package com.mentra.asg_client.io.file.managers;
+
+import com.mentra.asg_client.io.file.core.FileManager;
+import com.mentra.asg_client.io.file.core.FileManager.FileMetadata;
+import com.mentra.asg_client.io.file.utils.MimeTypeRegistry;
+import com.mentra.asg_client.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Incrementally maintained catalog of the media files inside each package directory.
+ * Follows Single Responsibility Principle by handling only listing/index bookkeeping.
+ * <p>
+ * Instead of walking and stat'ing every file on each {@code listFiles()} call, the catalog
+ * keeps an in-memory view sorted by modification time and revalidates only what may have
+ * changed:
+ * <ul>
+ *   <li>the package directory itself, plus directories a hook marked dirty and "hot"
+ *       directories modified within the last few minutes (a capture folder still receiving
+ *       its sidecars) - each costs one {@code stat} and is only re-listed when its mtime moved;</li>
+ *   <li>"hot" files - files that were still being written the last time we looked, such as
+ *       a video that is recording - are re-stat'ed until they settle;</li>
+ *   <li>quiet directories are swept at most once per {@link #COLD_SWEEP_INTERVAL_MS}, and a
+ *       periodic full rescan remains the safety net for writers that bypass every hook.</li>
+ * </ul>
+ * A query on an idle gallery therefore costs a handful of stats however many capture folders
+ * there are. The view is persisted to a small index file next to the package directories so
+ * a fresh process serves the gallery after checking the same few directories, instead of
+ * rescanning it.
+ * <p>
+ * Every insertion or change is stamped with a monotonically increasing change sequence and
+ * every removal leaves a tombstone, so sync clients can ask for "everything after cursor N"
+ * (see {@link #getChangesSince}) instead of re-listing the gallery. Cursors carry the
+ * catalog epoch; a client holding a cursor from a lost index, or one older than the
+ * retained tombstone window, is told to do a full resync.
+ * <p>
+ * The same filters as the legacy recursive walk apply: {@code *.partial} files and the
+ * {@link FileManager#SDK_PENDING_DIR_NAME} holding area are never cataloged.
+ */
+public class MediaCatalogManager {
+
+    private static final String TAG = "MediaCatalogManager";
+
+    /** Files modified within this window of our last observation are re-stat'ed on refresh. */
+    static final long HOT_FILE_WINDOW_MS = 2 * 60 * 1000L;
+
+    /** Directories modified this close to our last observation are re-listed on refresh. */
+    static final long DIR_SETTLE_WINDOW_MS = 2000L;
+
+    /** Quiet directories (outside the hot window and not invalidated) are re-stat'ed this often. */
+    static final long COLD_SWEEP_INTERVAL_MS = 60_000L;
+
+    /** Safety-net full rescan interval for writers that change files without touching dirs. */
+    static final long FULL_RESCAN_INTERVAL_MS = 15 * 60 * 1000L;
+
+    /** Minimum spacing between index writes so bursts of captures cost one flash write. */
+    static final long PERSIST_INTERVAL_MS = 10_000L;
+
+    private static final String INDEX_FILE_PREFIX = ".media_catalog_";
+    private static final String INDEX_FILE_SUFFIX = ".idx";
+    private static final String INDEX_VERSION = "v2";
+
+    /** Tombstones retained for delta sync; older cursors fall back to a full resync. */
+    static final int MAX_TOMBSTONES = 5000;
+
+    /**
+     * Sequence numbers skipped after reloading the index, so sequences handed out after the
+     * last persisted index (and before a crash) are never reused for different changes.
+     */
+    static final long SEQUENCE_RESTART_GAP = 1_000_000L;
+
+    private static final Comparator<CatalogEntry> BY_MODIFIED = (a, b) -> {
+        int cmp = Long.compare(a.lastModified, b.lastModified);
+        return cmp != 0 ? cmp : a.relativePath.compareTo(b.relativePath);
+    };
+
+    private final File indexDirectory;
+    private final Logger logger;
+    private final MimeTypeRegistry mimeTypeRegistry = new MimeTypeRegistry();
+    private final Map<String, PackageCatalog> catalogs = new ConcurrentHashMap<>();
+
+    /**
+     * @param indexDirectory Directory holding the persisted index files (normally the base
+     *                       media directory, i.e. the parent of the package directories)
+     * @param logger         Logger
+     */
+    public MediaCatalogManager(File indexDirectory, Logger logger) {
+        this.indexDirectory = indexDirectory;
+        this.logger = logger;
+    }
+
+    /**
+     * Aggregate counters for a package, answered from the catalog without touching disk
+     * beyond the revalidation pass.
+     */
+    public static class CatalogStats {
+        public final int fileCount;
+        public final long totalBytes;
+        public final long newestModified;
+
+        public CatalogStats(int fileCount, long totalBytes, long newestModified) {
+            this.fileCount = fileCount;
+            this.totalBytes = totalBytes;
+            this.newestModified = newestModified;
+        }
+    }
+
+    /**
+     * A removed file, kept so delta-sync clients learn about deletions.
+     */
+    public static class Tombstone {
+        public final String relativePath;
+        public final long sequence;
+        public final long deletedAt;
+
+        public Tombstone(String relativePath, long sequence, long deletedAt) {
+            this.relativePath = relativePath;
+            this.sequence = sequence;
+            this.deletedAt = deletedAt;
+        }
+    }
+
+    /**
+     * One page of changes after a sync cursor. Clients apply {@link #deleted} before
+     * {@link #changed} and resume from {@link #nextCursor} while {@link #hasMore} is set.
+     * When {@link #fullResync} is set the cursor was unknown or expired: {@link #changed}
+     * then pages through every current file and the client should drop anything it holds
+     * that does not appear by the time {@link #hasMore} clears.
+     */
+    public static class ChangeSet {
+        public final List<FileMetadata> changed;
+        public final List<Tombstone> deleted;
+        public final String nextCursor;
+        public final boolean hasMore;
+        public final boolean fullResync;
+
+        public ChangeSet(List<FileMetadata> changed, List<Tombstone> deleted, String nextCursor,
+                         boolean hasMore, boolean fullResync) {
+            this.changed = changed;
+            this.deleted = deleted;
+            this.nextCursor = nextCursor;
+            this.hasMore = hasMore;
+            this.fullResync = fullResync;
+        }
+    }
+
+    /**
+     * List all cataloged files, oldest first.
+     * @param packageName The package name
+     * @param packageDir The package directory
+     * @return Snapshot list of file metadata
+     */
+    public List<FileMetadata> listFiles(String packageName, File packageDir) {
+        return listFilesModifiedSince(packageName, packageDir, Long.MIN_VALUE);
+    }
+
+    /**
+     * List files whose modification time is strictly after {@code sinceMs}, oldest first.
+     * @param packageName The package name
+     * @param packageDir The package directory
+     * @param sinceMs Exclusive lower bound on last-modified time
+     * @return Snapshot list of file metadata
+     */
+    public List<FileMetadata> listFilesModifiedSince(String packageName, File packageDir, long sinceMs) {
+        PackageCatalog catalog = catalogFor(packageName, packageDir);
+        synchronized (catalog) {
+            catalog.refresh();
+            List<FileMetadata> result = new ArrayList<>();
+            if (sinceMs == Long.MAX_VALUE) {
+                return result;
+            }
+            // Sentinel sorts before every entry with lastModified == sinceMs + 1
+            CatalogEntry bound = new CatalogEntry("", 0, sinceMs + 1, 0);
+            for (CatalogEntry entry : catalog.byModified.tailSet(bound, true)) {
+                result.add(entry.toMetadata(catalog.root, packageName, mimeTypeRegistry));
+            }
+            catalog.persistIfDue();
+            return result;
+        }
+    }
+
+    /**
+     * Get file count and total bytes for a package.
+     * @param packageName The package name
+     * @param packageDir The package directory
+     * @return Catalog statistics
+     */
+    public CatalogStats getStats(String packageName, File packageDir) {
+        PackageCatalog catalog = catalogFor(packageName, packageDir);
+        synchronized (catalog) {
+            catalog.refresh();
+            long newest = catalog.byModified.isEmpty() ? 0 : catalog.byModified.last().lastModified;
+            catalog.persistIfDue();
+            return new CatalogStats(catalog.entries.size(), catalog.totalBytes, newest);
+        }
+    }
+
+    /**
+     * Get the changes recorded after a sync cursor, in change-sequence order.
+     * @param packageName The package name
+     * @param packageDir The package directory
+     * @param cursor Cursor from a previous {@link ChangeSet#nextCursor}, or null for a full listing
+     * @param limit Maximum number of changed plus deleted entries to return (0 = unlimited)
+     * @return Change set page
+     */
+    public ChangeSet getChangesSince(String packageName, File packageDir, String cursor, int limit) {
+        PackageCatalog catalog = catalogFor(packageName, packageDir);
+        synchronized (catalog) {
+            catalog.refresh();
+            ChangeSet changes = catalog.changesSince(cursor, limit > 0 ? limit : Integer.MAX_VALUE);
+            catalog.persistIfDue();
+            return changes;
+        }
+    }
+
+    /**
+     * Get tombstones for files removed after the given wall-clock time.
+     * @param packageName The package name
+     * @param packageDir The package directory
+     * @param sinceMs Exclusive lower bound on deletion time
+     * @return Tombstones, oldest first
+     */
+    public List<Tombstone> getDeletionsSince(String packageName, File packageDir, long sinceMs) {
+        PackageCatalog catalog = catalogFor(packageName, packageDir);
+        synchronized (catalog) {
+            catalog.refresh();
+            List<Tombstone> result = new ArrayList<>();
+            for (Tombstone tombstone : catalog.tombstones.values()) {
+                if (tombstone.deletedAt > sinceMs) {
+                    result.add(tombstone);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Remember files a delta-sync client was not shown (e.g. still recording) although its
+     * cursor moved past them. The set is saved with the index right away, so the files are
+     * still owed a fresh change sequence after a restart.
+     * @param packageName The package name
+     * @param packageDir The package directory
+     * @param relativePaths Paths relative to the package directory
+     */
+    public void deferPaths(String packageName, File packageDir, Collection<String> relativePaths) {
+        if (relativePaths.isEmpty()) {
+            return;
+        }
+        PackageCatalog catalog = catalogFor(packageName, packageDir);
+        synchronized (catalog) {
+            if (!catalog.loaded) {
+                catalog.refresh();
+            }
+            if (catalog.deferredPaths.addAll(relativePaths)) {
+                catalog.indexDirty = true;
+                catalog.persist(System.currentTimeMillis());
+            }
+        }
+    }
+
+    /**
+     * Give deferred files that can now be served a fresh change sequence on the next query,
+     * and forget them.
+     * @param packageName The package name
+     * @param packageDir The package directory
+     * @param stillDeferred Returns true for paths that must stay deferred
+     * @return Number of files released
+     */
+    public int releaseDeferredPaths(String packageName, File packageDir, Predicate<String> stillDeferred) {
+        PackageCatalog catalog = catalogFor(packageName, packageDir);
+        synchronized (catalog) {
+            if (!catalog.loaded) {
+                catalog.refresh();
+            }
+            int released = 0;
+            Iterator<String> iterator = catalog.deferredPaths.iterator();
+            while (iterator.hasNext()) {
+                String path = iterator.next();
+                if (!stillDeferred.test(path)) {
+                    iterator.remove();
+                    invalidatePath(packageName, path);
+                    released++;
+                }
+            }
+            if (released > 0) {
+                catalog.indexDirty = true;
+            }
+            return released;
+        }
+    }
+
+    /**
+     * Hook for writers: mark the directory containing {@code relativePath} dirty so the next
+     * query re-lists it even if its mtime did not move. Files at or under {@code relativePath}
+     * also get a fresh change sequence, so delta-sync clients see them again even when their
+     * size and mtime are unchanged (e.g. a capture that just became servable).
+     * @param packageName The package name
+     * @param relativePath File path relative to the package directory (may be a capture folder)
+     */
+    public void invalidatePath(String packageName, String relativePath) {
+        PackageCatalog catalog = catalogs.get(packageName);
+        if (catalog == null || relativePath == null) {
+            return;
+        }
+        synchronized (catalog) {
+            String normalized = relativePath.replace(File.separatorChar, '/');
+            int slash = normalized.lastIndexOf('/');
+            catalog.dirtyDirs.add(slash > 0 ? normalized.substring(0, slash) : "");
+            // The path itself may be a directory (e.g. a deleted capture folder)
+            catalog.dirtyDirs.add(normalized);
+            catalog.touchedPaths.add(normalized);
+        }
+    }
+
+    /**
+     * Hook for bulk operations (cleanup, orphan removal): force a full rescan on next query.
+     * @param packageName The package name
+     */
+    public void invalidatePackage(String packageName) {
+        PackageCatalog catalog = catalogs.get(packageName);
+        if (catalog == null) {
+            return;
+        }
+        synchronized (catalog) {
+            catalog.needsFullScan = true;
+        }
+    }
+
+    private PackageCatalog catalogFor(String packageName, File packageDir) {
+        PackageCatalog catalog = catalogs.get(packageName);
+        if (catalog == null || !catalog.root.equals(packageDir)) {
+            catalog = new PackageCatalog(packageName, packageDir);
+            catalogs.put(packageName, catalog);
+        }
+        return catalog;
+    }
+
+    private static final class CatalogEntry {
+        String relativePath;
+        long size;
+        long lastModified;
+        long observedAt;
+        long observedPass;
+        long sequence;
+        FileMetadata metadata;
+
+        CatalogEntry(String relativePath, long size, long lastModified, long observedAt) {
+            this.relativePath = relativePath;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.observedAt = observedAt;
+        }
+
+        boolean isHot() {
+            return observedAt - lastModified < HOT_FILE_WINDOW_MS;
+        }
+
+        FileMetadata toMetadata(File root, String packageName, MimeTypeRegistry registry) {
+            if (metadata == null) {
+                String leaf = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+                metadata = new FileMetadata(relativePath, new File(root, relativePath).getAbsolutePath(),
+                        size, lastModified,
+                        registry.getMimeType(leaf), packageName);
+            }
+            return metadata;
+        }
+    }
+
+    private static final class DirState {
+        long lastModified;
+        long observedAt;
+        long observedPass;
+        final Set<String> fileNames = new HashSet<>();
+        final Set<String> subdirNames = new HashSet<>();
+
+        boolean isHot(long now) {
+            return now - lastModified < HOT_FILE_WINDOW_MS;
+        }
+    }
+
+    /**
+     * Catalog of a single package directory. All access is synchronized on the instance.
+     */
+    private final class PackageCatalog {
+        final String packageName;
+        final File root;
+        final File indexFile;
+        final Map<String, DirState> dirs = new HashMap<>();
+        final Map<String, CatalogEntry> entries = new HashMap<>();
+        final TreeSet<CatalogEntry> byModified = new TreeSet<>(BY_MODIFIED);
+        final Set<String> hotPaths = new HashSet<>();
+        // Directories modified within the hot window; revalidated on every refresh
+        final Set<String> hotDirs = new HashSet<>();
+        final Set<String> dirtyDirs = new HashSet<>();
+        final Set<String> touchedPaths = new HashSet<>();
+        final TreeMap<Long, CatalogEntry> bySequence = new TreeMap<>();
+        final TreeMap<Long, Tombstone> tombstones = new TreeMap<>();
+        // Files a delta sync skipped after its cursor moved past them; re-sequenced when released
+        final Set<String> deferredPaths = new HashSet<>();
+        Map<String, CatalogEntry> previousEntries;
+        String epoch;
+        long nextSequence = 1;
+        long tombstoneFloor;
+        long totalBytes;
+        long lastFullScanAt;
+        long lastColdSweepAt;
+        long lastPersistAt;
+        // Incremented by every refresh; marks what a pass has already re-listed or re-stat'ed
+        long pass;
+        boolean loaded;
+        boolean needsFullScan;
+        boolean indexDirty;
+
+        PackageCatalog(String packageName, File root) {
+            this.packageName = packageName;
+            this.root = root;
+            this.indexFile = new File(indexDirectory, INDEX_FILE_PREFIX + root.getName() + INDEX_FILE_SUFFIX);
+        }
+
+        void refresh() {
+            long now = System.currentTimeMillis();
+            pass++;
+            if (!loaded) {
+                loaded = true;
+                if (loadIndex()) {
+                    // Captures added or removed while we were down move the package directory's
+                    // mtime; edits inside quiet capture folders wait for the first cold sweep
+                    lastColdSweepAt = now;
+                } else {
+                    epoch = Long.toHexString(new Random().nextLong() & Long.MAX_VALUE);
+                    needsFullScan = true;
+                }
+            }
+            if (!root.isDirectory()) {
+                if (!entries.isEmpty() || !dirs.isEmpty()) {
+                    for (String path : new ArrayList<>(entries.keySet())) {
+                        remove(path);
+                    }
+                    dirs.clear();
+                }
+                return;
+            }
+            if (needsFullScan || now - lastFullScanAt > FULL_RESCAN_INTERVAL_MS) {
+                fullScan(now);
+                return;
+            }
+
+            int relisted;
+            if (now - lastColdSweepAt >= COLD_SWEEP_INTERVAL_MS) {
+                relisted = revalidateTree("", now);
+                lastColdSweepAt = now;
+            } else {
+                relisted = revalidateChangedDirs(now);
+            }
+            int restated = restatHotFiles(now);
+            // Re-listing clears a dirty dir; what is left is not a known directory (a file, or a
+            // path that is gone) and is covered by its parent's entry
+            dirtyDirs.retainAll(dirs.keySet());
+            bumpTouchedPaths();
+            if (relisted > 0 || restated > 0) {
+                logger.debug(TAG, "Catalog refresh for " + packageName + ": " + relisted
+                        + " dirs re-listed, " + restated + " hot files re-stat'ed, "
+                        + entries.size() + " files");
+            }
+        }
+
+        private void fullScan(long now) {
+            long start = System.currentTimeMillis();
+            // Keep the previous view so unchanged files keep their sequence and vanished
+            // files still leave tombstones
+            previousEntries = new HashMap<>(entries);
+            clear();
+            scanDirRecursively("", root, root.lastModified(), now);
+            for (String path : previousEntries.keySet()) {
+                if (!entries.containsKey(path)) {
+                    addTombstone(path, now);
+                }
+            }
+            previousEntries = null;
+            needsFullScan = false;
+            dirtyDirs.clear();
+            bumpTouchedPaths();
+            lastFullScanAt = now;
+            lastColdSweepAt = now;
+            indexDirty = true;
+            logger.debug(TAG, "Full catalog scan for " + packageName + ": " + entries.size()
+                    + " files in " + (System.currentTimeMillis() - start) + "ms");
+        }
+
+        private void clear() {
+            dirs.clear();
+            entries.clear();
+            byModified.clear();
+            bySequence.clear();
+            hotPaths.clear();
+            hotDirs.clear();
+            totalBytes = 0;
+        }
+
+        private void bumpTouchedPaths() {
+            if (touchedPaths.isEmpty()) {
+                return;
+            }
+            for (String touched : touchedPaths) {
+                CatalogEntry entry = entries.get(touched);
+                if (entry != null) {
+                    bumpSequence(entry);
+                }
+                bumpDirRecursively(touched);
+            }
+            touchedPaths.clear();
+        }
+
+        private void bumpDirRecursively(String relDir) {
+            DirState state = dirs.get(relDir);
+            if (state == null) {
+                return;
+            }
+            for (String name : state.fileNames) {
+                CatalogEntry entry = entries.get(child(relDir, name));
+                if (entry != null) {
+                    bumpSequence(entry);
+                }
+            }
+            for (String sub : state.subdirNames) {
+                bumpDirRecursively(child(relDir, sub));
+            }
+        }
+
+        private void bumpSequence(CatalogEntry entry) {
+            bySequence.remove(entry.sequence);
+            entry.sequence = nextSequence++;
+            bySequence.put(entry.sequence, entry);
+            indexDirty = true;
+        }
+
+        private void addTombstone(String path, long now) {
+            long sequence = nextSequence++;
+            tombstones.put(sequence, new Tombstone(path, sequence, now));
+            while (tombstones.size() > MAX_TOMBSTONES) {
+                tombstoneFloor = tombstones.pollFirstEntry().getKey();
+            }
+            indexDirty = true;
+        }
+
+        ChangeSet changesSince(String cursor, int limit) {
+            long fromSequence = parseCursor(cursor);
+            boolean fullResync = fromSequence < 0;
+            if (fullResync) {
+                fromSequence = 0;
+            }
+
+            List<FileMetadata> changed = new ArrayList<>();
+            List<Tombstone> deleted = new ArrayList<>();
+            Iterator<CatalogEntry> changes = bySequence.tailMap(fromSequence, false).values().iterator();
+            Iterator<Tombstone> removals = fullResync
+                    ? Collections.<Tombstone>emptyIterator()
+                    : tombstones.tailMap(fromSequence, false).values().iterator();
+            CatalogEntry nextChange = changes.hasNext() ? changes.next() : null;
+            Tombstone nextRemoval = removals.hasNext() ? removals.next() : null;
+            long lastSequence = fromSequence;
+            int count = 0;
+            while ((nextChange != null || nextRemoval != null) && count < limit) {
+                if (nextRemoval == null || (nextChange != null && nextChange.sequence < nextRemoval.sequence)) {
+                    changed.add(nextChange.toMetadata(root, packageName, mimeTypeRegistry));
+                    lastSequence = nextChange.sequence;
+                    nextChange = changes.hasNext() ? changes.next() : null;
+                } else {
+                    deleted.add(nextRemoval);
+                    lastSequence = nextRemoval.sequence;
+                    nextRemoval = removals.hasNext() ? removals.next() : null;
+                }
+                count++;
+            }
+            boolean hasMore = nextChange != null || nextRemoval != null;
+            if (!hasMore) {
+                lastSequence = Math.max(lastSequence, nextSequence - 1);
+            }
+            return new ChangeSet(changed, deleted, epoch + ":" + lastSequence, hasMore, fullResync);
+        }
+
+        /**
+         * @return the sequence encoded in a cursor, or -1 if the client must fully resync
+         */
+        private long parseCursor(String cursor) {
+            if (cursor == null || cursor.isEmpty()) {
+                return -1;
+            }
+            int colon = cursor.indexOf(':');
+            if (colon <= 0 || !cursor.substring(0, colon).equals(epoch)) {
+                return -1;
+            }
+            try {
+                long sequence = Long.parseLong(cursor.substring(colon + 1));
+                if (sequence < tombstoneFloor || sequence >= nextSequence) {
+                    return -1;
+                }
+                return sequence;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * Walk the whole known directory tree, re-listing only directories whose mtime moved.
+         * @return number of directories re-listed
+         */
+        private int revalidateTree(String relDir, long now) {
+            DirState state = dirs.get(relDir);
+            if (state == null) {
+                File dir = relDir.isEmpty() ? root : new File(root, relDir);
+                if (dir.isDirectory()) {
+                    scanDirRecursively(relDir, dir, dir.lastModified(), now);
+                    return 1;
+                }
+                return 0;
+            }
+            int relisted = revalidateDir(relDir, state, now);
+            if (dirs.get(relDir) != state) {
+                return relisted; // Gone
+            }
+            for (String sub : new ArrayList<>(state.subdirNames)) {
+                relisted += revalidateTree(child(relDir, sub), now);
+            }
+            return relisted;
+        }
+
+        /**
+         * Revalidate only the package directory, dirty directories, hot directories and the
+         * directories of hot files (a long recording's folder gets its sidecar renamed in at
+         * stop, long after the folder itself went quiet); the rest is left to the cold sweep.
+         * @return number of directories re-listed
+         */
+        private int revalidateChangedDirs(long now) {
+            Set<String> candidates = new HashSet<>(hotDirs);
+            candidates.addAll(dirtyDirs);
+            candidates.add("");
+            for (String path : hotPaths) {
+                int slash = path.lastIndexOf('/');
+                candidates.add(slash > 0 ? path.substring(0, slash) : "");
+            }
+            int relisted = 0;
+            for (String relDir : candidates) {
+                DirState state = dirs.get(relDir);
+                if (state != null) {
+                    relisted += revalidateDir(relDir, state, now);
+                }
+            }
+            return relisted;
+        }
+
+        /**
+         * Stat one known directory and re-list it if its mtime moved, it has not settled yet
+         * or a hook marked it dirty. Subdirectories that appeared are scanned as part of the
+         * re-list; known subdirectories are not visited.
+         * @return 1 if the directory was re-listed or removed, 0 otherwise
+         */
+        private int revalidateDir(String relDir, DirState state, long now) {
+            // Directories discovered or re-listed earlier in this same pass are already current
+            if (state.observedPass == pass) {
+                return 0;
+            }
+            File dir = relDir.isEmpty() ? root : new File(root, relDir);
+            long mtime = dir.lastModified();
+            if (mtime == 0 && !dir.isDirectory()) {
+                removeDirRecursively(relDir);
+                return 1;
+            }
+            boolean changed = mtime != state.lastModified
+                    || state.observedAt - state.lastModified < DIR_SETTLE_WINDOW_MS;
+            if (changed || dirtyDirs.contains(relDir)) {
+                relistDir(relDir, dir, state, now);
+                return 1;
+            }
+            if (!state.isHot(now)) {
+                hotDirs.remove(relDir);
+            }
+            return 0;
+        }
+
+        /**
+         * Re-list a single directory and reconcile its immediate children with the catalog.
+         */
+        private void relistDir(String relDir, File dir, DirState state, long now) {
+            File[] items = dir.listFiles();
+            state.lastModified = dir.lastModified();
+            state.observedAt = now;
+            state.observedPass = pass;
+            dirtyDirs.remove(relDir);
+            indexDirty = true;
+            Set<String> seenFiles = new HashSet<>();
+            Set<String> seenDirs = new HashSet<>();
+            if (items != null) {
+                for (File item : items) {
+                    String name = item.getName();
+                    BasicFileAttributes attributes = stat(item);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    if (attributes.isRegularFile()) {
+                        if (isExcludedFile(name)) {
+                            continue;
+                        }
+                        seenFiles.add(name);
+                        upsert(child(relDir, name), attributes.size(), attributes.lastModifiedTime().toMillis(), now);
+                    } else if (attributes.isDirectory()) {
+                        if (isExcludedDir(name)) {
+                            continue;
+                        }
+                        seenDirs.add(name);
+                        if (!state.subdirNames.contains(name)) {
+                            scanDirRecursively(child(relDir, name), item, attributes.lastModifiedTime().toMillis(), now);
+                        }
+                    }
+                }
+            }
+            for (String name : state.fileNames) {
+                if (!seenFiles.contains(name)) {
+                    remove(child(relDir, name));
+                }
+            }
+            for (String name : state.subdirNames) {
+                if (!seenDirs.contains(name)) {
+                    removeDirRecursively(child(relDir, name));
+                }
+            }
+            state.fileNames.clear();
+            state.fileNames.addAll(seenFiles);
+            state.subdirNames.clear();
+            state.subdirNames.addAll(seenDirs);
+            trackHotDir(relDir, state, now);
+        }
+
+        private void trackHotDir(String relDir, DirState state, long now) {
+            if (state.isHot(now)) {
+                hotDirs.add(relDir);
+            } else {
+                hotDirs.remove(relDir);
+            }
+        }
+
+        private void scanDirRecursively(String relDir, File dir, long dirModified, long now) {
+            DirState state = new DirState();
+            state.lastModified = dirModified;
+            state.observedAt = now;
+            state.observedPass = pass;
+            dirs.put(relDir, state);
+            dirtyDirs.remove(relDir);
+            trackHotDir(relDir, state, now);
+            File[] items = dir.listFiles();
+            if (items == null) {
+                return;
+            }
+            for (File item : items) {
+                String name = item.getName();
+                BasicFileAttributes attributes = stat(item);
+                if (attributes == null) {
+                    continue;
+                }
+                if (attributes.isRegularFile()) {
+                    if (isExcludedFile(name)) {
+                        continue;
+                    }
+                    state.fileNames.add(name);
+                    upsert(child(relDir, name), attributes.size(), attributes.lastModifiedTime().toMillis(), now);
+                } else if (attributes.isDirectory()) {
+                    if (isExcludedDir(name)) {
+                        continue;
+                    }
+                    state.subdirNames.add(name);
+                    scanDirRecursively(child(relDir, name), item, attributes.lastModifiedTime().toMillis(), now);
+                }
+            }
+        }
+
+        private void removeDirRecursively(String relDir) {
+            DirState state = dirs.remove(relDir);
+            hotDirs.remove(relDir);
+            if (state == null) {
+                return;
+            }
+            for (String name : state.fileNames) {
+                remove(child(relDir, name));
+            }
+            for (String sub : state.subdirNames) {
+                removeDirRecursively(child(relDir, sub));
+            }
+            indexDirty = true;
+        }
+
+        private int restatHotFiles(long now) {
+            if (hotPaths.isEmpty()) {
+                return 0;
+            }
+            int restated = 0;
+            for (String path : new ArrayList<>(hotPaths)) {
+                CatalogEntry entry = entries.get(path);
+                if (entry == null) {
+                    hotPaths.remove(path);
+                    continue;
+                }
+                if (entry.observedPass == pass) {
+                    continue; // Already refreshed by a re-list in this pass
+                }
+                File file = new File(root, path);
+                long mtime = file.lastModified();
+                if (mtime == 0 && !file.exists()) {
+                    // Parent directory mtime will catch the removal; drop it eagerly anyway
+                    remove(path);
+                    continue;
+                }
+                upsert(path, file.length(), mtime, now);
+                restated++;
+            }
+            return restated;
+        }
+
+        private void upsert(String path, long size, long lastModified, long now) {
+            CatalogEntry entry = entries.get(path);
+            if (entry == null) {
+                entry = new CatalogEntry(path, size, lastModified, now);
+                CatalogEntry previous = previousEntries != null ? previousEntries.get(path) : null;
+                entry.sequence = previous != null && previous.size == size && previous.lastModified == lastModified
+                        ? previous.sequence : nextSequence++;
+                entries.put(path, entry);
+                byModified.add(entry);
+                bySequence.put(entry.sequence, entry);
+                totalBytes += size;
+                indexDirty = true;
+            } else if (entry.size != size || entry.lastModified != lastModified) {
+                byModified.remove(entry);
+                bySequence.remove(entry.sequence);
+                totalBytes += size - entry.size;
+                entry.size = size;
+                entry.lastModified = lastModified;
+                entry.sequence = nextSequence++;
+                entry.metadata = null;
+                byModified.add(entry);
+                bySequence.put(entry.sequence, entry);
+                indexDirty = true;
+            }
+            entry.observedAt = now;
+            entry.observedPass = pass;
+            if (entry.isHot()) {
+                hotPaths.add(path);
+            } else {
+                hotPaths.remove(path);
+            }
+        }
+
+        private void remove(String path) {
+            CatalogEntry entry = entries.remove(path);
+            if (entry != null) {
+                byModified.remove(entry);
+                bySequence.remove(entry.sequence);
+                totalBytes -= entry.size;
+                addTombstone(path, System.currentTimeMillis());
+            }
+            hotPaths.remove(path);
+        }
+
+        void persistIfDue() {
+            long now = System.currentTimeMillis();
+            if (!indexDirty || now - lastPersistAt < PERSIST_INTERVAL_MS) {
+                return;
+            }
+            persist(now);
+        }
+
+        void persist(long now) {
+            lastPersistAt = now;
+            File tmp = new File(indexFile.getPath() + ".tmp");
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(tmp), StandardCharsets.UTF_8), 65536)) {
+                writer.write(INDEX_VERSION + "\t" + lastFullScanAt + "\t" + epoch + "\t"
+                        + nextSequence + "\t" + tombstoneFloor + "\n");
+                for (Map.Entry<String, DirState> dir : dirs.entrySet()) {
+                    DirState state = dir.getValue();
+                    writer.write("D\t" + dir.getKey() + "\t" + state.lastModified + "\t" + state.observedAt + "\n");
+                }
+                for (CatalogEntry entry : byModified) {
+                    writer.write("F\t" + entry.relativePath + "\t" + entry.size + "\t"
+                            + entry.lastModified + "\t" + entry.observedAt + "\t" + entry.sequence + "\n");
+                }
+                for (Tombstone tombstone : tombstones.values()) {
+                    writer.write("T\t" + tombstone.relativePath + "\t" + tombstone.sequence + "\t"
+                            + tombstone.deletedAt + "\n");
+                }
+                for (String path : deferredPaths) {
+                    writer.write("W\t" + path + "\n");
+                }
+            } catch (IOException e) {
+                logger.warn(TAG, "Failed to write catalog index for " + packageName + ": " + e.getMessage());
+                tmp.delete();
+                return;
+            }
+            if (!tmp.renameTo(indexFile)) {
+                logger.warn(TAG, "Failed to publish catalog index: " + indexFile.getAbsolutePath());
+                tmp.delete();
+                return;
+            }
+            indexDirty = false;
+        }
+
+        /**
+         * Load the persisted index. Directory listings are reconstructed from the file entries
+         * and then revalidated against on-disk mtimes by the normal refresh pass: the package
+         * directory and hot directories straight away, quiet ones on the next cold sweep.
+         * @return true if an index was loaded
+         */
+        private boolean loadIndex() {
+            if (!indexFile.isFile()) {
+                return false;
+            }
+            long start = System.currentTimeMillis();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(indexFile), StandardCharsets.UTF_8), 65536)) {
+                String header = reader.readLine();
+                if (header == null || !header.startsWith(INDEX_VERSION + "\t")) {
+                    return false;
+                }
+                String[] fields = header.split("\t", -1);
+                if (fields.length != 5) {
+                    return false;
+                }
+                lastFullScanAt = Long.parseLong(fields[1]);
+                epoch = fields[2];
+                nextSequence = Long.parseLong(fields[3]);
+                tombstoneFloor = Long.parseLong(fields[4]);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("F\t")) {
+                        // The bulk of the index; parsed without split() as it dominates load time
+                        loadFileLine(line);
+                        continue;
+                    }
+                    String[] parts = line.split("\t", -1);
+                    if (parts.length == 4 && "D".equals(parts[0])) {
+                        DirState state = dirs.get(parts[1]);
+                        if (state == null) {
+                            state = new DirState();
+                            dirs.put(parts[1], state);
+                        }
+                        state.lastModified = Long.parseLong(parts[2]);
+                        state.observedAt = Long.parseLong(parts[3]);
+                        trackHotDir(parts[1], state, start);
+                        linkToParent(parts[1]);
+                    } else if (parts.length == 2 && "W".equals(parts[0])) {
+                        deferredPaths.add(parts[1]);
+                    } else if (parts.length == 5 && "T".equals(parts[0])) {
+                        long sequence = Long.parseLong(parts[2]);
+                        tombstones.put(sequence, new Tombstone(parts[1], sequence, Long.parseLong(parts[3])));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn(TAG, "Discarding unreadable catalog index " + indexFile.getName() + ": " + e.getMessage());
+                clear();
+                tombstones.clear();
+                deferredPaths.clear();
+                nextSequence = 1;
+                tombstoneFloor = 0;
+                return false;
+            }
+            // Not marked dirty: nothing has changed yet, and the first sequence handed out
+            // marks the index dirty, which persists the gap along with it
+            nextSequence += SEQUENCE_RESTART_GAP;
+            logger.debug(TAG, "Loaded catalog index for " + packageName + ": " + entries.size()
+                    + " files in " + (System.currentTimeMillis() - start) + "ms");
+            return true;
+        }
+
+        /**
+         * Parse an {@code F<TAB>path<TAB>size<TAB>modified<TAB>observed<TAB>sequence} line.
+         * @throws IllegalArgumentException if the line is malformed
+         */
+        private void loadFileLine(String line) {
+            int pathEnd = line.indexOf('\t', 2);
+            int sizeEnd = line.indexOf('\t', pathEnd + 1);
+            int modifiedEnd = line.indexOf('\t', sizeEnd + 1);
+            int observedEnd = line.indexOf('\t', modifiedEnd + 1);
+            if (pathEnd < 0 || sizeEnd < 0 || modifiedEnd < 0 || observedEnd < 0
+                    || line.indexOf('\t', observedEnd + 1) >= 0) {
+                throw new IllegalArgumentException("Malformed file entry: " + line);
+            }
+            String path = line.substring(2, pathEnd);
+            CatalogEntry entry = new CatalogEntry(path,
+                    Long.parseLong(line.substring(pathEnd + 1, sizeEnd)),
+                    Long.parseLong(line.substring(sizeEnd + 1, modifiedEnd)),
+                    Long.parseLong(line.substring(modifiedEnd + 1, observedEnd)));
+            entry.sequence = Long.parseLong(line.substring(observedEnd + 1));
+            entries.put(path, entry);
+            byModified.add(entry);
+            bySequence.put(entry.sequence, entry);
+            totalBytes += entry.size;
+            if (entry.isHot()) {
+                hotPaths.add(path);
+            }
+            int slash = path.lastIndexOf('/');
+            String parent = slash > 0 ? path.substring(0, slash) : "";
+            DirState state = dirs.get(parent);
+            if (state == null) {
+                state = new DirState();
+                dirs.put(parent, state);
+            }
+            state.fileNames.add(path.substring(slash + 1));
+        }
+
+        private void linkToParent(String relDir) {
+            if (relDir.isEmpty()) {
+                return;
+            }
+            int slash = relDir.lastIndexOf('/');
+            String parent = slash > 0 ? relDir.substring(0, slash) : "";
+            DirState state = dirs.get(parent);
+            if (state == null) {
+                state = new DirState();
+                dirs.put(parent, state);
+            }
+            state.subdirNames.add(relDir.substring(slash + 1));
+        }
+    }
+
+    /**
+     * One stat for type, size and mtime, where {@link File#isFile()}, {@link File#length()} and
+     * {@link File#lastModified()} would take three.
+     * @return the attributes, or null if the item vanished or can't be read
+     */
+    private static BasicFileAttributes stat(File item) {
+        try {
+            return Files.readAttributes(item.toPath(), BasicFileAttributes.class);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String child(String relDir, String name) {
+        return relDir.isEmpty() ? name : relDir + "/" + name;
+    }
+
+    private static boolean isExcludedFile(String name) {
+        // *.partial files are never advertised for Wi-Fi sync: in-flight or retained-on-error
+        // sidecars (imu.bin.partial) and the cached JSON export of a binary IMU sidecar, which
+        // is written as imu.json.partial (ImuSidecarFile.JSON_EXPORT_NAME) for this reason.
+        return name.endsWith(".partial");
+    }
+
+    private static boolean isExcludedDir(String name) {
+        return FileManager.SDK_PENDING_DIR_NAME.equals(name);
+    }
+}
@@ -0,0 +1,327 @@
+package com.mentra.asg_client.io.file.managers;
+
+import com.mentra.asg_client.logging.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Stores precomputed per-media metadata (thumbnail, duration, dimensions) next to the thumbnails.
+ *
+ * Each entry is a small ".meta" sidecar on disk plus the thumbnail JPEG it references. Loaded
+ * entries are kept in a byte-budgeted LRU with the thumbnail already base64-encoded, so sync
+ * responses can include it without touching the media file, MediaMetadataRetriever or the encoder.
+ * Entries are bound to the source file's size and modification time and are treated as missing
+ * once the source changes.
+ */
+public class MediaSidecarStore {
+
+    private static final String TAG = "MediaSidecarStore";
+    private static final String SIDECAR_SUFFIX = ".meta";
+    private static final int SIDECAR_VERSION = 1;
+    /** Approximate per-entry bookkeeping cost counted against the memory budget. */
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    /**
+     * Matches android.util.Base64.DEFAULT: 76-character lines, each terminated by '\n'.
+     * Produced here with the JDK encoder so the output is identical to what sync used to send.
+     */
+    private static final Base64.Encoder BASE64_ENCODER =
+            Base64.getMimeEncoder(76, new byte[]{'\n'});
+
+    private final File sidecarDirectory;
+    private final long maxCacheBytes;
+    private final Logger logger;
+
+    private final LinkedHashMap<String, Sidecar> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * Immutable metadata for a single media file.
+     */
+    public static class Sidecar {
+        private final long sourceModified;
+        private final long sourceLength;
+        private final String thumbnailBase64;
+        private final long thumbnailSize;
+        private final long durationMs;
+        private final int width;
+        private final int height;
+
+        public Sidecar(long sourceModified, long sourceLength, String thumbnailBase64,
+                       long thumbnailSize, long durationMs, int width, int height) {
+            this.sourceModified = sourceModified;
+            this.sourceLength = sourceLength;
+            this.thumbnailBase64 = thumbnailBase64;
+            this.thumbnailSize = thumbnailSize;
+            this.durationMs = durationMs;
+            this.width = width;
+            this.height = height;
+        }
+
+        public long getSourceModified() { return sourceModified; }
+        public long getSourceLength() { return sourceLength; }
+        /** @return Base64 thumbnail (android.util.Base64.DEFAULT layout) or null if none */
+        public String getThumbnailBase64() { return thumbnailBase64; }
+        public long getThumbnailSize() { return thumbnailSize; }
+        /** @return Duration in milliseconds, or -1 if unknown / not a video */
+        public long getDurationMs() { return durationMs; }
+        /** @return Width in pixels, or 0 if unknown */
+        public int getWidth() { return width; }
+        /** @return Height in pixels, or 0 if unknown */
+        public int getHeight() { return height; }
+
+        boolean matches(File mediaFile) {
+            return mediaFile.lastModified() == sourceModified && mediaFile.length() == sourceLength;
+        }
+
+        long memoryCost() {
+            return ENTRY_OVERHEAD_BYTES + (thumbnailBase64 != null ? thumbnailBase64.length() : 0);
+        }
+    }
+
+    public MediaSidecarStore(File sidecarDirectory, long maxCacheBytes, Logger logger) {
+        this.sidecarDirectory = sidecarDirectory;
+        this.maxCacheBytes = maxCacheBytes;
+        this.logger = logger;
+    }
+
+    /**
+     * Look up the sidecar for a media file, from memory first and then from disk.
+     * @param key Stable key for the media file (e.g. its thumbnail hash)
+     * @param mediaFile The media file the sidecar describes
+     * @return The sidecar, or null if none exists or the media file changed since it was written
+     */
+    public Sidecar get(String key, File mediaFile) {
+        synchronized (cache) {
+            Sidecar cached = cache.get(key);
+            if (cached != null) {
+                if (cached.matches(mediaFile)) {
+                    hitCount++;
+                    return cached;
+                }
+                evict(key);
+            }
+            missCount++;
+        }
+
+        Sidecar loaded = load(key, mediaFile);
+        if (loaded != null) {
+            cachePut(key, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * Record metadata for a media file, persisting it and caching it in memory.
+     * @param key Stable key for the media file (e.g. its thumbnail hash)
+     * @param mediaFile The media file the sidecar describes
+     * @param thumbnailFile Thumbnail JPEG for the media file, or null if none could be created
+     * @param durationMs Duration in milliseconds, or -1 if unknown
+     * @param width Width in pixels, or 0 if unknown
+     * @param height Height in pixels, or 0 if unknown
+     * @return The stored sidecar
+     */
+    public Sidecar put(String key, File mediaFile, File thumbnailFile, long durationMs, int width, int height) {
+        String thumbnailBase64 = null;
+        long thumbnailSize = 0;
+        if (thumbnailFile != null && thumbnailFile.isFile()) {
+            try {
+                byte[] thumbnailData = Files.readAllBytes(thumbnailFile.toPath());
+                thumbnailBase64 = encodeBase64(thumbnailData);
+                thumbnailSize = thumbnailData.length;
+            } catch (IOException e) {
+                logger.warn(TAG, "Failed to read thumbnail " + thumbnailFile.getName() + ": " + e.getMessage());
+            }
+        }
+
+        Sidecar sidecar = new Sidecar(mediaFile.lastModified(), mediaFile.length(),
+                thumbnailBase64, thumbnailSize, durationMs, width, height);
+        persist(key, sidecar, thumbnailBase64 != null ? thumbnailFile.getName() : null);
+        cachePut(key, sidecar);
+        return sidecar;
+    }
+
+    /**
+     * Drop the sidecar for a key from memory and disk.
+     * @param key Key passed to {@link #put}
+     */
+    public void remove(String key) {
+        synchronized (cache) {
+            evict(key);
+        }
+        File sidecarFile = getSidecarFile(key);
+        if (sidecarFile.exists() && !sidecarFile.delete()) {
+            logger.warn(TAG, "Failed to delete sidecar: " + sidecarFile.getName());
+        }
+    }
+
+    /**
+     * Drop all in-memory entries. Sidecars on disk are kept.
+     */
+    public void clearMemory() {
+        synchronized (cache) {
+            cache.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    /**
+     * @param fileName File name inside the sidecar directory
+     * @return true if the file is a sidecar written by this store
+     */
+    public static boolean isSidecarFile(String fileName) {
+        return fileName != null && fileName.endsWith(SIDECAR_SUFFIX);
+    }
+
+    public long getCachedBytes() {
+        synchronized (cache) {
+            return cachedBytes;
+        }
+    }
+
+    public int getCachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHitCount() {
+        synchronized (cache) {
+            return hitCount;
+        }
+    }
+
+    public long getMissCount() {
+        synchronized (cache) {
+            return missCount;
+        }
+    }
+
+    /**
+     * Encode bytes exactly like android.util.Base64.encodeToString(data, DEFAULT).
+     */
+    static String encodeBase64(byte[] data) {
+        if (data.length == 0) {
+            return "";
+        }
+        return BASE64_ENCODER.encodeToString(data) + "\n";
+    }
+
+    private void cachePut(String key, Sidecar sidecar) {
+        long cost = sidecar.memoryCost();
+        if (cost > maxCacheBytes) {
+            return;
+        }
+        synchronized (cache) {
+            evict(key);
+            cache.put(key, sidecar);
+            cachedBytes += cost;
+
+            Iterator<Map.Entry<String, Sidecar>> it = cache.entrySet().iterator();
+            while (cachedBytes > maxCacheBytes && it.hasNext()) {
+                Map.Entry<String, Sidecar> eldest = it.next();
+                cachedBytes -= eldest.getValue().memoryCost();
+                it.remove();
+            }
+        }
+    }
+
+    private void evict(String key) {
+        Sidecar removed = cache.remove(key);
+        if (removed != null) {
+            cachedBytes -= removed.memoryCost();
+        }
+    }
+
+    private File getSidecarFile(String key) {
+        return new File(sidecarDirectory, key + SIDECAR_SUFFIX);
+    }
+
+    private Sidecar load(String key, File mediaFile) {
+        File sidecarFile = getSidecarFile(key);
+        if (!sidecarFile.isFile()) {
+            return null;
+        }
+
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(sidecarFile)) {
+            props.load(in);
+        } catch (IOException e) {
+            logger.warn(TAG, "Failed to read sidecar " + sidecarFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+
+        try {
+            if (Integer.parseInt(props.getProperty("version", "0")) != SIDECAR_VERSION) {
+                return null;
+            }
+            long sourceModified = Long.parseLong(props.getProperty("source_modified"));
+            long sourceLength = Long.parseLong(props.getProperty("source_length"));
+            if (mediaFile.lastModified() != sourceModified || mediaFile.length() != sourceLength) {
+                return null;
+            }
+
+            String thumbnailBase64 = null;
+            long thumbnailSize = 0;
+            String thumbnailName = props.getProperty("thumbnail");
+            if (thumbnailName != null) {
+                File thumbnailFile = new File(sidecarDirectory, thumbnailName);
+                if (!thumbnailFile.isFile()) {
+                    // Thumbnail was cleaned up; let the caller regenerate both
+                    return null;
+                }
+                byte[] thumbnailData = Files.readAllBytes(thumbnailFile.toPath());
+                thumbnailBase64 = encodeBase64(thumbnailData);
+                thumbnailSize = thumbnailData.length;
+            }
+
+            return new Sidecar(sourceModified, sourceLength, thumbnailBase64, thumbnailSize,
+                    Long.parseLong(props.getProperty("duration_ms", "-1")),
+                    Integer.parseInt(props.getProperty("width", "0")),
+                    Integer.parseInt(props.getProperty("height", "0")));
+        } catch (NumberFormatException | IOException e) {
+            logger.warn(TAG, "Ignoring unreadable sidecar " + sidecarFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void persist(String key, Sidecar sidecar, String thumbnailName) {
+        Properties props = new Properties();
+        props.setProperty("version", String.valueOf(SIDECAR_VERSION));
+        props.setProperty("source_modified", String.valueOf(sidecar.getSourceModified()));
+        props.setProperty("source_length", String.valueOf(sidecar.getSourceLength()));
+        props.setProperty("duration_ms", String.valueOf(sidecar.getDurationMs()));
+        props.setProperty("width", String.valueOf(sidecar.getWidth()));
+        props.setProperty("height", String.valueOf(sidecar.getHeight()));
+        if (thumbnailName != null) {
+            props.setProperty("thumbnail", thumbnailName);
+        }
+
+        File sidecarFile = getSidecarFile(key);
+        File tmpFile = new File(sidecarDirectory, key + SIDECAR_SUFFIX + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmpFile)) {
+            props.store(out, null);
+        } catch (IOException e) {
+            logger.warn(TAG, "Failed to write sidecar " + sidecarFile.getName() + ": " + e.getMessage());
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(sidecarFile)) {
+            logger.warn(TAG, "Failed to commit sidecar " + sidecarFile.getName());
+            tmpFile.delete();
+        }
+    }
+}
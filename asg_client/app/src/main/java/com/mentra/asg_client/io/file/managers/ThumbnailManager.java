@@ -11,6 +11,7 @@ import java.io.FileOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -28,10 +29,19 @@ public class ThumbnailManager {
     private static final int THUMBNAIL_WIDTH = 320;
     private static final int THUMBNAIL_HEIGHT = 240;
     private static final int THUMBNAIL_QUALITY = 80;
+    private static final long SIDECAR_CACHE_BYTES = 4L * 1024 * 1024;
     
     private final File baseDirectory;
     private final Logger logger;
     private final File thumbnailDirectory;
+    private final MediaSidecarStore sidecarStore;
+    private final ConcurrentHashMap<String, Object> sidecarLocks = new ConcurrentHashMap<>();
+    private final ExecutorService precomputeExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "MediaSidecarPrecompute");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
     
     public ThumbnailManager(File baseDirectory, Logger logger) {
         this.baseDirectory = baseDirectory;
@@ -42,6 +52,7 @@ public class ThumbnailManager {
         if (!thumbnailDirectory.exists() && !thumbnailDirectory.mkdirs()) {
             logger.error(TAG, "Failed to create thumbnail directory: " + thumbnailDirectory.getAbsolutePath());
         }
+        this.sidecarStore = new MediaSidecarStore(thumbnailDirectory, SIDECAR_CACHE_BYTES, logger);
         
         logger.info(TAG, "ThumbnailManager initialized with directory: " + thumbnailDirectory.getAbsolutePath());
     }
@@ -105,6 +116,135 @@ public class ThumbnailManager {
         return createImageThumbnail(imageFile, thumbnailFile);
     }
     
+    /**
+     * Get thumbnail, duration and dimensions for a media file.
+     * Served from the in-memory cache or the on-disk sidecar when available; otherwise the
+     * metadata is computed once (thumbnail generation plus a single MediaMetadataRetriever pass
+     * for videos) and persisted for later requests.
+     * @param mediaFile The photo or video file
+     * @return Sidecar metadata, or null if the file doesn't exist
+     */
+    public MediaSidecarStore.Sidecar getMediaSidecar(File mediaFile) {
+        if (mediaFile == null || !mediaFile.exists()) {
+            return null;
+        }
+
+        String key = generateSidecarKey(mediaFile);
+        MediaSidecarStore.Sidecar sidecar = sidecarStore.get(key, mediaFile);
+        if (sidecar != null) {
+            return sidecar;
+        }
+
+        // Serialize computation per file so a sync request and the capture-time precompute
+        // don't both decode the same media
+        Object lock = sidecarLocks.computeIfAbsent(key, k -> new Object());
+        try {
+            synchronized (lock) {
+                sidecar = sidecarStore.get(key, mediaFile);
+                if (sidecar == null) {
+                    sidecar = computeSidecar(key, mediaFile);
+                }
+                return sidecar;
+            }
+        } finally {
+            sidecarLocks.remove(key, lock);
+        }
+    }
+
+    /**
+     * Compute the sidecar for a freshly captured media file in the background,
+     * so the first gallery sync that includes it doesn't pay for thumbnail and metadata extraction.
+     * @param mediaFile The photo or video file
+     */
+    public void precomputeMediaSidecarAsync(File mediaFile) {
+        if (mediaFile == null) {
+            return;
+        }
+        try {
+            precomputeExecutor.execute(() -> {
+                try {
+                    getMediaSidecar(mediaFile);
+                } catch (Exception e) {
+                    logger.warn(TAG, "Sidecar precompute failed for " + mediaFile.getName() + ": " + e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            logger.warn(TAG, "Could not schedule sidecar precompute for " + mediaFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the sidecar store backing {@link #getMediaSidecar(File)}
+     * @return MediaSidecarStore instance
+     */
+    public MediaSidecarStore getSidecarStore() {
+        return sidecarStore;
+    }
+
+    private MediaSidecarStore.Sidecar computeSidecar(String key, File mediaFile) {
+        File thumbnailFile = new File(thumbnailDirectory, key + ".jpg");
+        boolean thumbnailFresh = thumbnailFile.exists() && thumbnailFile.lastModified() >= mediaFile.lastModified();
+
+        if (isVideoFile(mediaFile.getName())) {
+            long durationMs = -1;
+            int width = 0;
+            int height = 0;
+            MediaMetadataRetriever retriever = null;
+            try {
+                retriever = new MediaMetadataRetriever();
+                retriever.setDataSource(mediaFile.getAbsolutePath());
+                durationMs = parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION), -1);
+                width = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH), 0);
+                height = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT), 0);
+                int rotation = (int) parseLong(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION), 0);
+                if (rotation == 90 || rotation == 270) {
+                    int tmp = width;
+                    width = height;
+                    height = tmp;
+                }
+                if (!thumbnailFresh) {
+                    logger.info(TAG, "Creating thumbnail for video: " + mediaFile.getName());
+                    thumbnailFile = writeVideoThumbnail(retriever, mediaFile, thumbnailFile);
+                }
+            } catch (Exception e) {
+                logger.warn(TAG, "Failed to read video metadata for " + mediaFile.getName() + ": " + e.getMessage());
+                if (!thumbnailFresh) {
+                    thumbnailFile = null;
+                }
+            } finally {
+                if (retriever != null) {
+                    try {
+                        retriever.release();
+                    } catch (Exception e) {
+                        logger.warn(TAG, "Error releasing MediaMetadataRetriever: " + e.getMessage());
+                    }
+                }
+            }
+            return sidecarStore.put(key, mediaFile, thumbnailFile, durationMs, width, height);
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(mediaFile.getAbsolutePath(), bounds);
+        if (!thumbnailFresh) {
+            logger.info(TAG, "Creating thumbnail for image: " + mediaFile.getName());
+            thumbnailFile = createImageThumbnail(mediaFile, thumbnailFile);
+        }
+        return sidecarStore.put(key, mediaFile, thumbnailFile, -1,
+                Math.max(bounds.outWidth, 0), Math.max(bounds.outHeight, 0));
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
     /**
      * Create a thumbnail for an image file using BitmapFactory
      * @param imageFile The image file
@@ -207,7 +347,30 @@ public class ThumbnailManager {
         try {
             retriever = new MediaMetadataRetriever();
             retriever.setDataSource(videoFile.getAbsolutePath());
+            return writeVideoThumbnail(retriever, videoFile, thumbnailFile);
+        } catch (Exception e) {
+            logger.error(TAG, "Error creating thumbnail for " + videoFile.getName() + ": " + e.getMessage(), e);
+            return null;
+        } finally {
+            if (retriever != null) {
+                try {
+                    retriever.release();
+                } catch (Exception e) {
+                    logger.warn(TAG, "Error releasing MediaMetadataRetriever: " + e.getMessage());
+                }
+            }
+        }
+    }
 
+    /**
+     * Extract a frame from an already-opened retriever and write it as the thumbnail
+     * @param retriever Retriever with the video as its data source
+     * @param videoFile The video file
+     * @param thumbnailFile The target thumbnail file
+     * @return Thumbnail file or null if failed
+     */
+    private File writeVideoThumbnail(MediaMetadataRetriever retriever, File videoFile, File thumbnailFile) {
+        try {
             // Extract frame with timeout to prevent hangs on corrupted videos
             final MediaMetadataRetriever finalRetriever = retriever;
             ExecutorService executor = Executors.newSingleThreadExecutor();
@@ -267,14 +430,6 @@ public class ThumbnailManager {
         } catch (Exception e) {
             logger.error(TAG, "Error creating thumbnail for " + videoFile.getName() + ": " + e.getMessage(), e);
             return null;
-        } finally {
-            if (retriever != null) {
-                try {
-                    retriever.release();
-                } catch (Exception e) {
-                    logger.warn(TAG, "Error releasing MediaMetadataRetriever: " + e.getMessage());
-                }
-            }
         }
     }
     
@@ -297,6 +452,16 @@ public class ThumbnailManager {
                lowerFileName.endsWith(".3gp");
     }
     
+    /**
+     * Generate the sidecar key for a media file (thumbnail filename without extension)
+     * @param mediaFile The media file
+     * @return Sidecar key
+     */
+    private String generateSidecarKey(File mediaFile) {
+        String thumbnailFileName = generateThumbnailFileName(mediaFile);
+        return thumbnailFileName.substring(0, thumbnailFileName.length() - ".jpg".length());
+    }
+
     /**
      * Generate a unique thumbnail filename based on video file
      * @param videoFile The video file
@@ -402,7 +567,7 @@ public class ThumbnailManager {
             return 0;
         }
         
-        File[] files = thumbnailDirectory.listFiles();
+        File[] files = thumbnailDirectory.listFiles((dir, name) -> !MediaSidecarStore.isSidecarFile(name));
         return files != null ? files.length : 0;
     }
     
@@ -428,6 +593,7 @@ public class ThumbnailManager {
 
         String thumbnailFileName = generateThumbnailFileName(mediaFile);
         File thumbnailFile = new File(thumbnailDirectory, thumbnailFileName);
+        sidecarStore.remove(generateSidecarKey(mediaFile));
 
         if (!thumbnailFile.exists()) {
             logger.debug(TAG, "Thumbnail doesn't exist for: " + mediaFile.getName());
@@ -11,6 +11,7 @@ import com.mentra.asg_client.io.file.core.FileManager;
 import com.mentra.asg_client.io.media.upload.MediaUploadService;
 import com.mentra.asg_client.io.media.managers.MediaUploadQueueManager;
 import com.mentra.asg_client.io.media.interfaces.ServiceCallbackInterface;
+import com.mentra.asg_client.io.media.utils.PhotoDownscaler;
 import com.mentra.asg_client.camera.CameraNeoService;
 import com.mentra.asg_client.settings.VideoSettings;
 import com.mentra.asg_client.io.hardware.interfaces.IHardwareManager;
@@ -40,10 +41,12 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -314,6 +317,17 @@ public class MediaCaptureService {
         t.setPriority(Thread.NORM_PRIORITY - 1);
         return t;
     });
+    // Resizes and encodes photos for BLE and compressed uploads. One worker: each job holds a
+    // decoded frame, so running them one at a time bounds peak memory. Overflow is rejected.
+    private static final int PHOTO_COMPRESSION_QUEUE_SIZE = 4;
+    private final ThreadPoolExecutor photoCompressionExecutor = new ThreadPoolExecutor(1, 1,
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(PHOTO_COMPRESSION_QUEUE_SIZE), r -> {
+        Thread t = new Thread(r, "PhotoCompression");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+    // Only used on the photo compression thread
+    private final PhotoDownscaler photoDownscaler = new PhotoDownscaler();
     // Safety timeout covers the full job (capture + upload/BLE-handoff). Sized to outlast a
     // slow webhook upload on flaky WiFi so we don't prematurely free the flag while the upload
     // is still grinding. Force-resets isPhotoJobInFlight if no terminal callback fires.
@@ -867,6 +881,7 @@ public class MediaCaptureService {
                                 mainHandler.post(() -> {
                                     videoCaptureIdsPendingIntegrityCheck.remove(captureId);
                                     if (ok) {
+                                        precomputeMediaSidecar(filePath);
                                         if (mMediaCaptureListener != null) {
                                             mMediaCaptureListener.onVideoRecordingStopped(pendingRequestId, filePath);
                                         }
@@ -1284,6 +1299,7 @@ public class MediaCaptureService {
                         }
                         
                         Log.d(TAG, "Local photo captured successfully at: " + filePath);
+                        precomputeMediaSidecar(filePath);
                         
                         // LED is now managed by CameraNeoService and will turn off when camera closes
                         
@@ -1652,159 +1668,133 @@ public class MediaCaptureService {
      * Compress image based on SDK compression level
      */
     private void compressImageForUpload(String originalPath, String requestId, String webhookUrl, String authToken, String compress) {
-        new Thread(() -> {
-            try {
-                Log.d(TAG, "🗜️ Starting image compression for " + compress + " level");
-                long compressionStartTime = System.currentTimeMillis();
-                
-                // Load original image
-                android.graphics.Bitmap original = android.graphics.BitmapFactory.decodeFile(originalPath);
-                if (original == null) {
-                    Log.e(TAG, "❌ Failed to load original image for compression");
-                    performDirectUpload(originalPath, requestId, webhookUrl, authToken);
-                    return;
-                }
-                
-                // Calculate compression parameters based on SDK compression level
-                int originalWidth = original.getWidth();
-                int originalHeight = original.getHeight();
-                Log.d(TAG, "📐 Original image dimensions: " + originalWidth + "x" + originalHeight);
-                
-                // Compression parameters based on SDK compression level
-                float compressionRatio;
-                int jpegQuality;
-                String compressionStrategy;
-                
-                if ("heavy".equals(compress)) {
-                    compressionRatio = 0.50f; // 50% of original size
-                    jpegQuality = 60;
-                    compressionStrategy = "50% size + 60% quality (HEAVY)";
-                } else { // "medium"
-                    compressionRatio = 0.75f; // 75% of original size
-                    jpegQuality = 80;
-                    compressionStrategy = "75% size + 80% quality (MEDIUM)";
-                }
-                
-                Log.d(TAG, "🎯 Compression strategy: " + compressionStrategy);
-                
-                // Calculate compressed dimensions
-                int compressedWidth = (int)(originalWidth * compressionRatio);
-                int compressedHeight = (int)(originalHeight * compressionRatio);
-                
-                // Maintain aspect ratio
-                float aspectRatio = (float) originalWidth / originalHeight;
-                if (aspectRatio > 1) {
-                    compressedHeight = (int) (compressedWidth / aspectRatio);
-                } else {
-                    compressedWidth = (int) (compressedHeight * aspectRatio);
-                }
-                
-                Log.d(TAG, "📐 Compressed image dimensions: " + compressedWidth + "x" + compressedHeight);
-                
-                // Create compressed bitmap
-                android.graphics.Bitmap compressed = android.graphics.Bitmap.createScaledBitmap(
-                    original, compressedWidth, compressedHeight, true);
-                original.recycle();
-                
-                // Save compressed image to temporary file
-                String compressedPath = originalPath.replace(".jpg", "_compressed_" + compress + ".jpg");
-                java.io.FileOutputStream fos = new java.io.FileOutputStream(compressedPath);
-                compressed.compress(android.graphics.Bitmap.CompressFormat.JPEG, jpegQuality, fos);
-                fos.close();
-                compressed.recycle();
-                
-                long compressionDuration = System.currentTimeMillis() - compressionStartTime;
-                Log.d(TAG, "⏱️ Image compression completed in: " + compressionDuration + "ms");
-                Log.d(TAG, "✅ Compressed image saved: " + compressedPath);
-                
-                // Calculate compression ratio achieved
-                File originalFile = new File(originalPath);
-                File compressedFile = new File(compressedPath);
-                long originalSize = originalFile.length();
-                long compressedSize = compressedFile.length();
-                float sizeReduction = ((float)(originalSize - compressedSize) / originalSize) * 100;
-                
-                Log.d(TAG, "📊 Compression stats:");
-                Log.d(TAG, "📊 Original size: " + originalSize + " bytes");
-                Log.d(TAG, "📊 Compressed size: " + compressedSize + " bytes");
-                Log.d(TAG, "📊 Size reduction: " + String.format("%.1f", sizeReduction) + "%");
-                
-                // Upload compressed version
-                performDirectUpload(compressedPath, requestId, webhookUrl, authToken);
-                
-                // Clean up compressed file after upload
-                new File(compressedPath).deleteOnExit();
-                
-            } catch (Exception e) {
-                Log.e(TAG, "❌ Error compressing image, falling back to original: " + e.getMessage());
+        submitUploadCompression(originalPath, requestId, webhookUrl, authToken, () -> {
+            Log.d(TAG, "🗜️ Starting image compression for " + compress + " level");
+            long compressionStartTime = System.currentTimeMillis();
+
+            // Compression parameters based on SDK compression level
+            float compressionRatio;
+            int jpegQuality;
+            String compressionStrategy;
+
+            if ("heavy".equals(compress)) {
+                compressionRatio = 0.50f; // 50% of original size
+                jpegQuality = 60;
+                compressionStrategy = "50% size + 60% quality (HEAVY)";
+            } else { // "medium"
+                compressionRatio = 0.75f; // 75% of original size
+                jpegQuality = 80;
+                compressionStrategy = "75% size + 80% quality (MEDIUM)";
+            }
+
+            Log.d(TAG, "🎯 Compression strategy: " + compressionStrategy);
+
+            // Decode straight to the compressed size
+            android.graphics.Bitmap compressed = photoDownscaler.decode(originalPath,
+                    (width, height) -> PhotoDownscaler.scaleBy(width, height, compressionRatio));
+            if (compressed == null) {
+                Log.e(TAG, "❌ Failed to load original image for compression");
                 performDirectUpload(originalPath, requestId, webhookUrl, authToken);
+                return;
             }
-        }).start();
+            Log.d(TAG, "📐 Compressed image dimensions: " + compressed.getWidth() + "x" + compressed.getHeight());
+
+            // Save compressed image to temporary file
+            String compressedPath = originalPath.replace(".jpg", "_compressed_" + compress + ".jpg");
+            try (java.io.FileOutputStream fos = new java.io.FileOutputStream(compressedPath)) {
+                compressed.compress(android.graphics.Bitmap.CompressFormat.JPEG, jpegQuality, fos);
+            } finally {
+                photoDownscaler.release(compressed);
+            }
+
+            long compressionDuration = System.currentTimeMillis() - compressionStartTime;
+            Log.d(TAG, "⏱️ Image compression completed in: " + compressionDuration + "ms");
+            Log.d(TAG, "✅ Compressed image saved: " + compressedPath);
+
+            // Calculate compression ratio achieved
+            File originalFile = new File(originalPath);
+            File compressedFile = new File(compressedPath);
+            long originalSize = originalFile.length();
+            long compressedSize = compressedFile.length();
+            float sizeReduction = ((float)(originalSize - compressedSize) / originalSize) * 100;
+
+            Log.d(TAG, "📊 Compression stats:");
+            Log.d(TAG, "📊 Original size: " + originalSize + " bytes");
+            Log.d(TAG, "📊 Compressed size: " + compressedSize + " bytes");
+            Log.d(TAG, "📊 Size reduction: " + String.format("%.1f", sizeReduction) + "%");
+
+            // Upload compressed version
+            performDirectUpload(compressedPath, requestId, webhookUrl, authToken);
+
+            // Clean up compressed file after upload
+            new File(compressedPath).deleteOnExit();
+        });
     }
 
     /**
      * Compress image for poor connection scenarios (legacy method - kept for compatibility)
      */
     private void compressImageForPoorConnection(String originalPath, String requestId, String webhookUrl, String authToken) {
-        new Thread(() -> {
-            try {
-                Log.d(TAG, "🗜️ Compressing image for poor connection: " + originalPath);
-                long compressionStartTime = System.currentTimeMillis();
-                
-                // Load original image
-                android.graphics.Bitmap original = android.graphics.BitmapFactory.decodeFile(originalPath);
-                if (original == null) {
-                    Log.e(TAG, "❌ Failed to load original image for compression");
-                    performDirectUpload(originalPath, requestId, webhookUrl, authToken);
-                    return;
-                }
-                
-                // Calculate compression parameters for poor connection
-                int originalWidth = original.getWidth();
-                int originalHeight = original.getHeight();
-                Log.d(TAG, "📐 Original image dimensions: " + originalWidth + "x" + originalHeight);
-                
-                // Reduce to 50% of original size for poor connections
-                int compressedWidth = originalWidth / 2;
-                int compressedHeight = originalHeight / 2;
-                
-                // Maintain aspect ratio
-                float aspectRatio = (float) originalWidth / originalHeight;
-                if (aspectRatio > 1) {
-                    compressedHeight = (int) (compressedWidth / aspectRatio);
-                } else {
-                    compressedWidth = (int) (compressedHeight * aspectRatio);
-                }
-                
-                Log.d(TAG, "📐 Compressed image dimensions: " + compressedWidth + "x" + compressedHeight);
-                
-                // Create compressed bitmap
-                android.graphics.Bitmap compressed = android.graphics.Bitmap.createScaledBitmap(
-                    original, compressedWidth, compressedHeight, true);
-                original.recycle();
-                
-                // Save compressed image to temporary file
-                String compressedPath = originalPath.replace(".jpg", "_compressed.jpg");
-                java.io.FileOutputStream fos = new java.io.FileOutputStream(compressedPath);
-                compressed.compress(android.graphics.Bitmap.CompressFormat.JPEG, 60, fos); // 60% quality
-                fos.close();
-                compressed.recycle();
-                
-                long compressionDuration = System.currentTimeMillis() - compressionStartTime;
-                Log.d(TAG, "⏱️ Image compression completed in: " + compressionDuration + "ms");
-                Log.d(TAG, "✅ Image compressed for poor connection: " + compressedPath);
-                
-                // Upload compressed version
-                performDirectUpload(compressedPath, requestId, webhookUrl, authToken);
-                
-                // Clean up compressed file after upload
-                new File(compressedPath).deleteOnExit();
-                
-            } catch (Exception e) {
-                Log.e(TAG, "❌ Error compressing image, falling back to original: " + e.getMessage());
+        submitUploadCompression(originalPath, requestId, webhookUrl, authToken, () -> {
+            Log.d(TAG, "🗜️ Compressing image for poor connection: " + originalPath);
+            long compressionStartTime = System.currentTimeMillis();
+
+            // Reduce to 50% of original size for poor connections
+            android.graphics.Bitmap compressed = photoDownscaler.decode(originalPath,
+                    (width, height) -> PhotoDownscaler.scaleBy(width, height, 0.5f));
+            if (compressed == null) {
+                Log.e(TAG, "❌ Failed to load original image for compression");
                 performDirectUpload(originalPath, requestId, webhookUrl, authToken);
+                return;
             }
-        }).start();
+            Log.d(TAG, "📐 Compressed image dimensions: " + compressed.getWidth() + "x" + compressed.getHeight());
+
+            // Save compressed image to temporary file
+            String compressedPath = originalPath.replace(".jpg", "_compressed.jpg");
+            try (java.io.FileOutputStream fos = new java.io.FileOutputStream(compressedPath)) {
+                compressed.compress(android.graphics.Bitmap.CompressFormat.JPEG, 60, fos); // 60% quality
+            } finally {
+                photoDownscaler.release(compressed);
+            }
+
+            long compressionDuration = System.currentTimeMillis() - compressionStartTime;
+            Log.d(TAG, "⏱️ Image compression completed in: " + compressionDuration + "ms");
+            Log.d(TAG, "✅ Image compressed for poor connection: " + compressedPath);
+
+            // Upload compressed version
+            performDirectUpload(compressedPath, requestId, webhookUrl, authToken);
+
+            // Clean up compressed file after upload
+            new File(compressedPath).deleteOnExit();
+        });
+    }
+
+    /**
+     * Compression work for an upload; may throw to fall back to the original
+     */
+    private interface UploadCompression {
+        void run() throws Exception;
+    }
+
+    /**
+     * Run an upload compression on the photo compression thread. If it fails, or the queue is
+     * full, the original photo is uploaded instead.
+     */
+    private void submitUploadCompression(String originalPath, String requestId, String webhookUrl, String authToken,
+                                         UploadCompression compression) {
+        try {
+            photoCompressionExecutor.execute(() -> {
+                try {
+                    compression.run();
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Error compressing image, falling back to original: " + e.getMessage());
+                    performDirectUpload(originalPath, requestId, webhookUrl, authToken);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "⚠️ Photo compression queue full - uploading original: " + originalPath);
+            performDirectUpload(originalPath, requestId, webhookUrl, authToken);
+        }
     }
 
     /**
@@ -2175,6 +2165,17 @@ public class MediaCaptureService {
         );
     }
 
+    /**
+     * Precompute the gallery thumbnail, duration and dimensions for a newly captured file
+     * in the background so the next gallery sync can serve them from cache.
+     */
+    private void precomputeMediaSidecar(String mediaFilePath) {
+        if (fileManager == null || mediaFilePath == null) {
+            return;
+        }
+        fileManager.getThumbnailManager().precomputeMediaSidecarAsync(new File(mediaFilePath));
+    }
+
     /**
      * Save media to local app directory
      */
@@ -2507,130 +2508,121 @@ public class MediaCaptureService {
      * Compress photo and send via BLE
      */
     private void compressAndSendViaBle(String originalPath, String requestId, String bleImgId) {
-        new Thread(() -> {
-            long startTime = System.currentTimeMillis();
-            recordTiming(requestId, "ble_compress_start");
-            Log.d(TAG, "🚀 BLE photo transfer started for " + bleImgId);
-
-            // TESTING: Check for fake compression failure
-            if (PhotoCaptureTestFramework.shouldFail("COMPRESSION")) {
-                releasePhotoJob(requestId);
-                Log.e(TAG, "TESTING: Simulating compression failure");
-                sendPhotoErrorResponse(requestId, PhotoCaptureTestFramework.getErrorCode(),
-                    PhotoCaptureTestFramework.getErrorMessage());
-                return;
-            }
+        long startTime = System.currentTimeMillis();
+        try {
+            photoCompressionExecutor.execute(() -> compressAndSendViaBleNow(originalPath, requestId, bleImgId, startTime));
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Photo compression queue full - rejecting BLE photo " + bleImgId);
+            photoSaveFlags.remove(requestId);
+            releasePhotoJob(requestId);
+            sendPhotoErrorResponse(requestId, "BLE_TRANSFER_FAILED", "Photo compression queue full");
+        }
+    }
 
-            // TESTING: Add fake delay for compression
-            PhotoCaptureTestFramework.addFakeDelay("COMPRESSION");
+    private void compressAndSendViaBleNow(String originalPath, String requestId, String bleImgId, long startTime) {
+        recordTiming(requestId, "ble_compress_start");
+        Log.d(TAG, "🚀 BLE photo transfer started for " + bleImgId);
 
-            try {
-                // 1. Load original image
-                android.graphics.Bitmap original = android.graphics.BitmapFactory.decodeFile(originalPath);
-                if (original == null) {
-                    throw new Exception("Failed to decode image file");
-                }
+        // TESTING: Check for fake compression failure
+        if (PhotoCaptureTestFramework.shouldFail("COMPRESSION")) {
+            releasePhotoJob(requestId);
+            Log.e(TAG, "TESTING: Simulating compression failure");
+            sendPhotoErrorResponse(requestId, PhotoCaptureTestFramework.getErrorCode(),
+                PhotoCaptureTestFramework.getErrorMessage());
+            return;
+        }
 
-                // 2. Resolve BLE resize and quality parameters based on requested size
-                String requestedSize = photoRequestedSizes.get(requestId);
-                if (requestedSize == null || requestedSize.isEmpty()) {
-                    requestedSize = "medium";
-                }
+        // TESTING: Add fake delay for compression
+        PhotoCaptureTestFramework.addFakeDelay("COMPRESSION");
 
-                BleParams bleParams = resolveBleParams(requestedSize);
+        try {
+            // 1. Resolve BLE resize and quality parameters based on requested size
+            String requestedSize = photoRequestedSizes.get(requestId);
+            if (requestedSize == null || requestedSize.isEmpty()) {
+                requestedSize = "medium";
+            }
 
-                // Calculate new dimensions maintaining aspect ratio, constrained by requested target
-                int targetWidth = bleParams.targetWidth;
-                int targetHeight = bleParams.targetHeight;
-                float aspectRatio = (float) original.getWidth() / original.getHeight();
+            BleParams bleParams = resolveBleParams(requestedSize);
 
-                if (aspectRatio > targetWidth / (float) targetHeight) {
-                    targetHeight = (int) (targetWidth / aspectRatio);
-                } else {
-                    targetWidth = (int) (targetHeight * aspectRatio);
-                }
+            // 2. Decode straight to the target size, keeping the aspect ratio
+            android.graphics.Bitmap resized = photoDownscaler.decode(originalPath,
+                    (width, height) -> PhotoDownscaler.fitWithin(width, height,
+                            bleParams.targetWidth, bleParams.targetHeight));
+            if (resized == null) {
+                throw new Exception("Failed to decode image file");
+            }
 
-                // 3. Resize bitmap
-                android.graphics.Bitmap resized = android.graphics.Bitmap.createScaledBitmap(original, targetWidth, targetHeight, true);
-                original.recycle();
+            // 3. Encode as AVIF with aggressive compression
+            byte[] compressedData;
+            try {
+                // Use avif-coder library for AVIF encoding
+                HeifCoder heifCoder = new HeifCoder();
+                compressedData = heifCoder.encodeAvif(
+                    resized,
+                        bleParams.avifQuality,  // quality (0-100)
+                    PreciseMode.LOSSY   // Use FAST mode for reasonable compression speed
+                );
+                Log.d(TAG, "Successfully encoded as AVIF");
+            } catch (Exception e) {
+                Log.w(TAG, "AVIF encoding failed, falling back to JPEG: " + e.getMessage());
+                // Fallback to JPEG if AVIF fails
+                java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+                resized.compress(android.graphics.Bitmap.CompressFormat.JPEG, bleParams.jpegFallbackQuality, baos);
+                compressedData = baos.toByteArray();
+            } finally {
+                photoDownscaler.release(resized);
+            }
 
-                // 4. Encode as AVIF with aggressive compression
-                byte[] compressedData;
-                try {
-                    // Use avif-coder library for AVIF encoding
-                    HeifCoder heifCoder = new HeifCoder();
-                    compressedData = heifCoder.encodeAvif(
-                        resized,
-                            bleParams.avifQuality,  // quality (0-100)
-                        PreciseMode.LOSSY   // Use FAST mode for reasonable compression speed
-                    );
-                    Log.d(TAG, "Successfully encoded as AVIF");
-                } catch (Exception e) {
-                    Log.w(TAG, "AVIF encoding failed, falling back to JPEG: " + e.getMessage());
-                    // Fallback to JPEG if AVIF fails
-                    java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-                    resized.compress(android.graphics.Bitmap.CompressFormat.JPEG, bleParams.jpegFallbackQuality, baos);
-                    compressedData = baos.toByteArray();
-                }
-                resized.recycle();
-
-                long compressionTime = System.currentTimeMillis() - startTime;
-                recordTiming(requestId, "ble_compress_done");
-                Log.d(TAG, "✅ Compressed photo for BLE: " + originalPath + " -> " + compressedData.length + " bytes");
-                Log.d(TAG, "⏱️ Compression took: " + compressionTime + "ms");
-
-                // 5. Save compressed data to temporary file with bleImgId as name
-                // For BLE, we ALWAYS use AVIF (no extension in filename due to 16-char limit)
-                String compressedPath = fileManager.getDefaultMediaDirectory() + "/" + bleImgId;
-                try (java.io.FileOutputStream fos = new java.io.FileOutputStream(compressedPath)) {
-                    fos.write(compressedData);
-                }
+            long compressionTime = System.currentTimeMillis() - startTime;
+            recordTiming(requestId, "ble_compress_done");
+            Log.d(TAG, "✅ Compressed photo for BLE: " + originalPath + " -> " + compressedData.length + " bytes");
+            Log.d(TAG, "⏱️ Compression took: " + compressionTime + "ms");
 
-                // 6. Send via BLE using K900BluetoothManager
-                recordTiming(requestId, "ble_send_start");
-                sendCompressedPhotoViaBle(compressedPath, bleImgId, requestId, startTime);
+            // 4. Send via BLE using K900BluetoothManager, straight from memory.
+            // For BLE, we ALWAYS use AVIF (no extension in the name due to 16-char limit)
+            recordTiming(requestId, "ble_send_start");
+            sendCompressedPhotoViaBle(compressedData, bleImgId, requestId, startTime);
 
-                // 7. Delete original photo if not saving to gallery
-                Boolean save = photoSaveFlags.get(requestId);
-                if (save == null || !save) {
-                    try {
-                        File originalFile = new File(originalPath);
-                        if (originalFile.exists() && originalFile.delete()) {
-                            Log.d(TAG, "🗑️ Deleted original photo after BLE compression: " + originalPath);
-                        } else {
-                            Log.w(TAG, "Failed to delete original photo: " + originalPath);
-                        }
-                    } catch (Exception deleteEx) {
-                        Log.e(TAG, "Error deleting original photo after BLE compression", deleteEx);
+            // 5. Delete original photo if not saving to gallery
+            Boolean save = photoSaveFlags.get(requestId);
+            if (save == null || !save) {
+                try {
+                    File originalFile = new File(originalPath);
+                    if (originalFile.exists() && originalFile.delete()) {
+                        Log.d(TAG, "🗑️ Deleted original photo after BLE compression: " + originalPath);
+                    } else {
+                        Log.w(TAG, "Failed to delete original photo: " + originalPath);
                     }
-                } else {
-                    Log.d(TAG, "💾 Keeping original photo as requested: " + originalPath);
+                } catch (Exception deleteEx) {
+                    Log.e(TAG, "Error deleting original photo after BLE compression", deleteEx);
                 }
+            } else {
+                Log.d(TAG, "💾 Keeping original photo as requested: " + originalPath);
+            }
 
-                // Clean up the flag
-                photoSaveFlags.remove(requestId);
-            } catch (Exception e) {
-                Log.e(TAG, "Error compressing photo for BLE", e);
-                dumpTimings(requestId);
-                sendPhotoErrorResponse(requestId, "BLE_TRANSFER_FAILED", e.getMessage());
+            // Clean up the flag
+            photoSaveFlags.remove(requestId);
+        } catch (Exception e) {
+            Log.e(TAG, "Error compressing photo for BLE", e);
+            dumpTimings(requestId);
+            sendPhotoErrorResponse(requestId, "BLE_TRANSFER_FAILED", e.getMessage());
 
-                // Clean up flag on error too
-                photoSaveFlags.remove(requestId);
-            } finally {
-                // BLE compress + handoff (or its failure) ends our authority over the photo
-                // job. From here, mServiceCallback.isBleTransferInProgress() is the active
-                // gate against new requests (enforced by PhotoCommandHandler).
-                releasePhotoJob(requestId);
-                Log.d(TAG, "📡 BLE handoff complete - photo job released: " + requestId);
-            }
-        }).start();
+            // Clean up flag on error too
+            photoSaveFlags.remove(requestId);
+        } finally {
+            // BLE compress + handoff (or its failure) ends our authority over the photo
+            // job. From here, mServiceCallback.isBleTransferInProgress() is the active
+            // gate against new requests (enforced by PhotoCommandHandler).
+            releasePhotoJob(requestId);
+            Log.d(TAG, "📡 BLE handoff complete - photo job released: " + requestId);
+        }
     }
 
     /**
      * Send compressed photo via BLE
      */
-    private void sendCompressedPhotoViaBle(String compressedPath, String bleImgId, String requestId, long transferStartTime) {
-        Log.d(TAG, "Ready to send compressed photo via BLE: " + compressedPath + " with ID: " + bleImgId);
+    private void sendCompressedPhotoViaBle(byte[] compressedData, String bleImgId, String requestId, long transferStartTime) {
+        Log.d(TAG, "Ready to send compressed photo via BLE: " + compressedData.length + " bytes with ID: " + bleImgId);
 
         // TESTING: Check for fake BLE transfer failure
         if (PhotoCaptureTestFramework.shouldFail("BLE_TRANSFER")) {
@@ -2643,76 +2635,49 @@ public class MediaCaptureService {
         // TESTING: Add fake delay for BLE transfer
         PhotoCaptureTestFramework.addFakeDelay("BLE_TRANSFER");
 
-        boolean transferStarted = false;
-        try {
-            if (mServiceCallback != null) {
-                // CRITICAL: Check if BLE is busy BEFORE sending ANY data to BES2700
-                if (mServiceCallback.isBleTransferInProgress()) {
-                    Log.e(TAG, "❌ BLE transfer already in progress - queuing error message to avoid BES2700 overload");
-                    
-                    // Send error response immediately
-                    sendPhotoErrorResponse(requestId, "BLE_TRANSFER_BUSY", "BLE transfer busy - another transfer in progress");
-                    
-                    // Also notify local listener
-                    if (mMediaCaptureListener != null) {
-                        mMediaCaptureListener.onMediaError(requestId, "BLE transfer busy - another transfer in progress", MediaUploadQueueManager.MEDIA_TYPE_PHOTO);
-                    }
-                    return;
-                }
+        if (mServiceCallback != null) {
+            // CRITICAL: Check if BLE is busy BEFORE sending ANY data to BES2700
+            if (mServiceCallback.isBleTransferInProgress()) {
+                Log.e(TAG, "❌ BLE transfer already in progress - queuing error message to avoid BES2700 overload");
                 
-                // BLE is available - send the ready message first (phone expects this for timing tracking)
-                recordTiming(requestId, "ble_ready_msg");
-                sendBlePhotoReadyMsg(compressedPath, bleImgId, requestId, transferStartTime);
-
-                // Add delay to ensure JSON packet completes transmission through MCU before file packets start
-                // This prevents packet interleaving at the BLE MTU boundary
-                try {
-                    Thread.sleep(200); // 200ms delay for JSON packet to fully transmit over BLE
-                    Log.d(TAG, "⏱️ Waited 200ms for JSON packet to complete BLE transmission");
-                } catch (InterruptedException e) {
-                    Log.w(TAG, "Delay interrupted", e);
+                // Send error response immediately
+                sendPhotoErrorResponse(requestId, "BLE_TRANSFER_BUSY", "BLE transfer busy - another transfer in progress");
+                
+                // Also notify local listener
+                if (mMediaCaptureListener != null) {
+                    mMediaCaptureListener.onMediaError(requestId, "BLE transfer busy - another transfer in progress", MediaUploadQueueManager.MEDIA_TYPE_PHOTO);
                 }
+                return;
+            }
+            
+            // BLE is available - send the ready message first (phone expects this for timing tracking)
+            recordTiming(requestId, "ble_ready_msg");
+            sendBlePhotoReadyMsg(bleImgId, requestId, transferStartTime);
 
-                // Then try to start the file transfer
-                recordTiming(requestId, "ble_file_transfer_start");
-                transferStarted = mServiceCallback.sendFileViaBluetooth(compressedPath);
+            // Then start the file transfer. The Bluetooth manager holds the first file packet
+            // back until the ready message has been forwarded, so the two don't interleave.
+            recordTiming(requestId, "ble_file_transfer_start");
+            boolean transferStarted = mServiceCallback.sendImageDataViaBluetooth(bleImgId, compressedData);
 
-                if (transferStarted) {
-                    recordTiming(requestId, "ble_transfer_started");
-                    dumpTimings(requestId);
-                    Log.i(TAG, "✅ BLE file transfer started for: " + bleImgId);
-                } else {
-                    // This shouldn't happen since we checked above, but handle it anyway
-                    Log.e(TAG, "Failed to start BLE file transfer despite availability check");
-                    sendPhotoErrorResponse(requestId, "BLE_TRANSFER_FAILED_TO_START", "BLE transfer failed to start");
-                }
+            if (transferStarted) {
+                recordTiming(requestId, "ble_transfer_started");
+                dumpTimings(requestId);
+                Log.i(TAG, "✅ BLE file transfer started for: " + bleImgId);
             } else {
-                Log.e(TAG, "Service callback not available for BLE file transfer");
-                sendPhotoErrorResponse(requestId, "BLE_TRANSFER_FAILED", "Service callback not available");
-            }
-        } finally {
-            // Critical: Clean up compressed file if transfer didn't start
-            if (!transferStarted) {
-                try {
-                    File compressedFile = new File(compressedPath);
-                    if (compressedFile.exists()) {
-                        if (compressedFile.delete()) {
-                            Log.d(TAG, "🗑️ Deleted compressed file after BLE transfer failure: " + compressedPath);
-                        } else {
-                            Log.w(TAG, "⚠️ Failed to delete compressed file: " + compressedPath);
-                        }
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error deleting compressed file: " + compressedPath, e);
-                }
+                // This shouldn't happen since we checked above, but handle it anyway
+                Log.e(TAG, "Failed to start BLE file transfer despite availability check");
+                sendPhotoErrorResponse(requestId, "BLE_TRANSFER_FAILED_TO_START", "BLE transfer failed to start");
             }
+        } else {
+            Log.e(TAG, "Service callback not available for BLE file transfer");
+            sendPhotoErrorResponse(requestId, "BLE_TRANSFER_FAILED", "Service callback not available");
         }
     }
 
     /**
      * Request BLE file transfer through AsgClientService
      */
-    private void sendBlePhotoReadyMsg(String filePath, String bleImgId, String requestId, long transferStartTime) {
+    private void sendBlePhotoReadyMsg(String bleImgId, String requestId, long transferStartTime) {
         try {
             // Calculate compression duration on glasses side
             long compressionDuration = System.currentTimeMillis() - transferStartTime;
@@ -2918,6 +2883,8 @@ public class MediaCaptureService {
             }
             videoCaptureIdsInFlight.clear();
             videoCaptureIdsPendingIntegrityCheck.clear();
+            // Queued compressions still finish and report their result
+            photoCompressionExecutor.shutdown();
 
             Log.d(TAG, "✅ MediaCaptureService cleanup complete");
 
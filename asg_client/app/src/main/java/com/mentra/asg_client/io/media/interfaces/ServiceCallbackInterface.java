@@ -16,6 +16,14 @@ public interface ServiceCallbackInterface {
      * @return true if file transfer started successfully, false otherwise
      */
     boolean sendFileViaBluetooth(String filePath);
+
+    /**
+     * Send an image held in memory via Bluetooth using the K900 file transfer protocol
+     * @param fileName Name the phone receives the image under
+     * @param data The encoded image
+     * @return true if file transfer started successfully, false otherwise
+     */
+    boolean sendImageDataViaBluetooth(String fileName, byte[] data);
     
     /**
      * Check if a BLE file transfer is currently in progress
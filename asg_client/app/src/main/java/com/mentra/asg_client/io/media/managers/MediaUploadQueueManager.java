@@ -5,7 +5,6 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -13,7 +12,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.FileLock;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -21,10 +19,17 @@ import java.util.concurrent.Executors;
 
 // Renamed from PhotoUploadService to MediaUploadService
 import com.mentra.asg_client.io.media.upload.MediaUploadService;
+import com.mentra.asg_client.io.streaming.services.RtmpStreamingService;
+import com.mentra.asg_client.io.streaming.services.SrtStreamingService;
+import com.mentra.asg_client.io.streaming.services.WhipStreamingService;
 
 /**
  * Manages a queue of media (photos/videos) to be uploaded.
  * Provides persistence, retry mechanism, and robust error handling.
+ * Uploads run in parallel through an {@link UploadScheduler} (small and SDK-requested items first,
+ * throttled while a live stream is active).
+ * Queue state is kept in memory and persisted through an append-only {@link UploadQueueJournal},
+ * so enqueue and status updates are O(1) instead of rewriting the whole manifest.
  */
 public class MediaUploadQueueManager {
     private static final String TAG = "MediaUploadQueueManager"; // Renamed TAG
@@ -43,17 +48,18 @@ public class MediaUploadQueueManager {
     public static final String STATUS_COMPLETED = "completed";
     public static final String STATUS_FAILED = "failed";
 
-    // File lock timeout (milliseconds)
-    private static final long LOCK_TIMEOUT_MS = 5000;
-
     // Context and directories
     private final Context mContext;
     private final File mQueueDir;
     private final File mManifestFile;
+    private final UploadQueueJournal mJournal;
 
     // Thread pool for async operations
     private final ExecutorService mExecutor;
 
+    // Decides upload order and concurrency
+    private final UploadScheduler mScheduler;
+
     // Callbacks
     public interface MediaQueueCallback { // Renamed interface
         void onMediaQueued(String requestId, String filePath, int mediaType);
@@ -66,7 +72,7 @@ public class MediaUploadQueueManager {
     private MediaQueueCallback mCallback;
 
     /**
-     * Constructor - initializes the queue directory and manifest file
+     * Constructor - initializes the queue directory and loads the manifest journal
      *
      * @param context Application context
      */
@@ -75,6 +81,9 @@ public class MediaUploadQueueManager {
         mQueueDir = new File(mContext.getExternalFilesDir(null), QUEUE_DIR_NAME);
         mManifestFile = new File(mQueueDir, MANIFEST_FILENAME);
         mExecutor = Executors.newSingleThreadExecutor();
+        mScheduler = new UploadScheduler.Builder(this::startScheduledUpload)
+                .setStreamingProbe(MediaUploadQueueManager::isLiveStreamActive)
+                .build();
 
         // Create queue directory if it doesn't exist
         if (!mQueueDir.exists()) {
@@ -83,27 +92,17 @@ public class MediaUploadQueueManager {
             }
         }
 
-        // Create manifest file if it doesn't exist
-        if (!mManifestFile.exists()) {
-            try {
-                createEmptyManifest();
-            } catch (IOException | JSONException e) {
-                Log.e(TAG, "Failed to create manifest file", e);
-            }
-        } else {
-            // Validate manifest file on startup
-            try {
-                validateManifest();
-            } catch (IOException | JSONException e) {
-                Log.e(TAG, "Failed to validate manifest file", e);
-                // Create a new manifest if validation fails
-                try {
-                    createEmptyManifest();
-                } catch (IOException | JSONException e2) {
-                    Log.e(TAG, "Failed to recreate manifest file", e2);
-                }
+        // Load manifest snapshot and replay the journal on top of it
+        UploadQueueJournal journal = null;
+        try {
+            journal = new UploadQueueJournal(mManifestFile, "mediaItems");
+            if (journal.wasRecovered()) {
+                Log.w(TAG, "Manifest or journal was damaged; recovered " + journal.size() + " media items");
             }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open manifest journal", e);
         }
+        mJournal = journal;
     }
 
     /**
@@ -114,37 +113,10 @@ public class MediaUploadQueueManager {
     }
 
     /**
-     * Create an empty manifest file
+     * Set how many uploads may run in parallel while no live stream is active
      */
-    private void createEmptyManifest() throws IOException, JSONException {
-        JSONObject manifest = new JSONObject();
-        JSONArray mediaItems = new JSONArray(); // Renamed from photos
-        manifest.put("mediaItems", mediaItems); // Renamed field
-        manifest.put("lastUpdated", System.currentTimeMillis());
-
-        writeManifest(manifest);
-    }
-
-    /**
-     * Validate the manifest file and ensure it's properly structured
-     */
-    private void validateManifest() throws IOException, JSONException {
-        JSONObject manifest = readManifest();
-
-        // Check for required fields
-        if (!manifest.has("mediaItems") || !manifest.has("lastUpdated")) { // Updated field name
-            throw new JSONException("Manifest file is missing required fields");
-        }
-
-        // Verify mediaItems array
-        if (!(manifest.get("mediaItems") instanceof JSONArray)) { // Updated field name
-            throw new JSONException("Manifest 'mediaItems' field is not an array");
-        }
-
-        // Validate timestamp
-        if (!(manifest.get("lastUpdated") instanceof Long)) {
-            throw new JSONException("Manifest 'lastUpdated' field is not a valid timestamp");
-        }
+    public void setMaxConcurrentUploads(int maxConcurrent) {
+        mScheduler.setMaxConcurrent(maxConcurrent);
     }
 
     /**
@@ -215,41 +187,29 @@ public class MediaUploadQueueManager {
     }
 
     /**
-     * Process the queue and upload any pending media items
+     * Hand queued media items to the upload scheduler, which decides order and concurrency
      */
     public void processQueue() {
         mExecutor.execute(() -> {
             try {
-                JSONObject manifest = readManifest();
-                JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-
-                // Process each media item in the queue
-                int processed = 0;
-                for (int i = 0; i < mediaItems.length(); i++) {
-                    JSONObject media = mediaItems.getJSONObject(i);
-                    String status = media.getString("status");
-
-                    // Only process queued media in this pass
-                    if (STATUS_QUEUED.equals(status)) {
-                        String requestId = media.getString("requestId");
-                        String appId = media.getString("appId");
-                        String queuedPath = media.getString("queuedPath");
-                        int mediaType = media.getInt("mediaType"); // Get mediaType
-
-                        // Update status to uploading
-                        media.put("status", STATUS_UPLOADING);
-                        media.put("uploadStartTime", System.currentTimeMillis());
-                        updateMediaInManifest(i, media);
-
-                        // Attempt to upload the media
-                        uploadMedia(queuedPath, requestId, appId, mediaType, i);
-
-                        processed++;
+                UploadQueueJournal journal = requireJournal();
+
+                // Submit each queued media (status index, no full-manifest scan)
+                int submitted = 0;
+                for (JSONObject media : journal.getWithStatus(STATUS_QUEUED)) {
+                    String queuedPath = media.getString("queuedPath");
+                    UploadScheduler.UploadTask task = new UploadScheduler.UploadTask(
+                            queuedPath,
+                            new File(queuedPath).length(),
+                            isSdkRequest(media),
+                            media.optLong("nextAttemptTime", 0));
+                    if (mScheduler.submit(task)) {
+                        submitted++;
                     }
                 }
 
-                if (processed > 0) {
-                    Log.d(TAG, "Started uploading " + processed + " media items from queue");
+                if (submitted > 0) {
+                    Log.d(TAG, "Scheduled " + submitted + " media items for upload");
                 }
 
             } catch (IOException | JSONException e) {
@@ -258,10 +218,58 @@ public class MediaUploadQueueManager {
         });
     }
 
+    /**
+     * Start an upload picked by the scheduler
+     */
+    private void startScheduledUpload(UploadScheduler.UploadTask task, Runnable onComplete) {
+        mExecutor.execute(() -> {
+            try {
+                String queuedPath = task.getKey();
+                JSONObject media = requireJournal().get(queuedPath);
+
+                // Skip entries that were cleared or already picked up while waiting
+                if (media == null || !STATUS_QUEUED.equals(media.getString("status"))) {
+                    onComplete.run();
+                    return;
+                }
+
+                // Update status to uploading
+                JSONObject update = new JSONObject();
+                update.put("status", STATUS_UPLOADING);
+                update.put("uploadStartTime", System.currentTimeMillis());
+                updateMediaInManifest(queuedPath, update);
+
+                // Attempt to upload the media
+                uploadMedia(queuedPath, media.getString("requestId"), media.optString("appId", ""),
+                        media.getInt("mediaType"), onComplete);
+
+            } catch (IOException | JSONException e) {
+                Log.e(TAG, "Error starting scheduled upload", e);
+                onComplete.run();
+            }
+        });
+    }
+
+    /**
+     * SDK uploads have an app waiting on the result; "system" entries are recovered background uploads
+     */
+    private static boolean isSdkRequest(JSONObject entry) {
+        return !entry.optString("requestId", "").isEmpty() && !"system".equals(entry.optString("appId", ""));
+    }
+
+    /**
+     * Live streams share the uplink with uploads, so any active one throttles the scheduler
+     */
+    private static boolean isLiveStreamActive() {
+        return RtmpStreamingService.isStreaming()
+                || WhipStreamingService.isStreaming()
+                || SrtStreamingService.isStreaming();
+    }
+
     /**
      * Upload a media item from the queue
      */
-    private void uploadMedia(String queuedPath, String requestId, String appId, int mediaType, int index) {
+    private void uploadMedia(String queuedPath, String requestId, String appId, int mediaType, Runnable onComplete) {
         MediaUploadService.uploadMedia(
                 mContext,
                 queuedPath,
@@ -270,12 +278,14 @@ public class MediaUploadQueueManager {
                 new MediaUploadService.UploadCallback() {
                     @Override
                     public void onSuccess(String url) {
-                        handleUploadSuccess(requestId, url, mediaType, index);
+                        onComplete.run();
+                        handleUploadSuccess(requestId, url, mediaType, queuedPath);
                     }
 
                     @Override
                     public void onFailure(String errorMessage) {
-                        handleUploadFailure(requestId, errorMessage, mediaType, index);
+                        onComplete.run();
+                        handleUploadFailure(requestId, errorMessage, mediaType, queuedPath);
                     }
                 }
         );
@@ -284,41 +294,35 @@ public class MediaUploadQueueManager {
     /**
      * Handle a successful media upload
      */
-    private void handleUploadSuccess(String requestId, String url, int mediaType, int index) {
+    private void handleUploadSuccess(String requestId, String url, int mediaType, String queuedPath) {
         mExecutor.execute(() -> {
             try {
-                JSONObject manifest = readManifest();
-                JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-
-                // Make sure the index is still valid
-                if (index >= 0 && index < mediaItems.length()) {
-                    JSONObject media = mediaItems.getJSONObject(index);
+                JSONObject media = requireJournal().get(queuedPath);
 
-                    // Verify this is the same media item (by requestId)
-                    if (requestId.equals(media.getString("requestId"))) {
-                        // Update status and add URL
-                        media.put("status", STATUS_COMPLETED);
-                        media.put("mediaUrl", url); // Changed from photoUrl
-                        media.put("completedTime", System.currentTimeMillis());
+                // Verify this is still the same media item (by requestId)
+                if (media != null && requestId.equals(media.getString("requestId"))) {
+                    // Update status and add URL
+                    JSONObject update = new JSONObject();
+                    update.put("status", STATUS_COMPLETED);
+                    update.put("mediaUrl", url); // Changed from photoUrl
+                    update.put("completedTime", System.currentTimeMillis());
 
-                        // Update in manifest
-                        boolean updated = updateMediaInManifest(index, media);
+                    // Update in manifest
+                    boolean updated = updateMediaInManifest(queuedPath, update);
 
-                        if (updated) {
-                            Log.d(TAG, "Media upload successful: " + requestId + ", URL: " + url);
+                    if (updated) {
+                        Log.d(TAG, "Media upload successful: " + requestId + ", URL: " + url);
 
-                            // Delete the queued file
-                            String queuedPath = media.getString("queuedPath");
-                            new File(queuedPath).delete();
+                        // Delete the queued file
+                        new File(queuedPath).delete();
 
-                            // Notify callback
-                            if (mCallback != null) {
-                                mCallback.onMediaUploaded(requestId, url, mediaType);
-                            }
-
-                            // Schedule cleanup of completed items
-                            cleanupCompleted();
+                        // Notify callback
+                        if (mCallback != null) {
+                            mCallback.onMediaUploaded(requestId, url, mediaType);
                         }
+
+                        // Schedule cleanup of completed items
+                        cleanupCompleted();
                     }
                 }
 
@@ -331,35 +335,29 @@ public class MediaUploadQueueManager {
     /**
      * Handle a failed media upload attempt
      */
-    private void handleUploadFailure(String requestId, String errorMessage, int mediaType, int index) {
+    private void handleUploadFailure(String requestId, String errorMessage, int mediaType, String queuedPath) {
         mExecutor.execute(() -> {
             try {
-                JSONObject manifest = readManifest();
-                JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-
-                // Make sure the index is still valid
-                if (index >= 0 && index < mediaItems.length()) {
-                    JSONObject media = mediaItems.getJSONObject(index);
-
-                    // Verify this is the same media item (by requestId)
-                    if (requestId.equals(media.getString("requestId"))) {
-                        // Update retry count and status
-                        int retryCount = media.getInt("retryCount") + 1;
-                        media.put("retryCount", retryCount);
-                        media.put("status", STATUS_FAILED);
-                        media.put("lastError", errorMessage);
-                        media.put("failedTime", System.currentTimeMillis());
-
-                        // Update in manifest
-                        boolean updated = updateMediaInManifest(index, media);
-
-                        if (updated) {
-                            Log.d(TAG, "Media upload failed: " + requestId + ", error: " + errorMessage);
-
-                            // Notify callback
-                            if (mCallback != null) {
-                                mCallback.onMediaUploadFailed(requestId, errorMessage, mediaType);
-                            }
+                JSONObject media = requireJournal().get(queuedPath);
+
+                // Verify this is still the same media item (by requestId)
+                if (media != null && requestId.equals(media.getString("requestId"))) {
+                    // Update retry count and status
+                    JSONObject update = new JSONObject();
+                    update.put("retryCount", media.getInt("retryCount") + 1);
+                    update.put("status", STATUS_FAILED);
+                    update.put("lastError", errorMessage);
+                    update.put("failedTime", System.currentTimeMillis());
+
+                    // Update in manifest
+                    boolean updated = updateMediaInManifest(queuedPath, update);
+
+                    if (updated) {
+                        Log.d(TAG, "Media upload failed: " + requestId + ", error: " + errorMessage);
+
+                        // Notify callback
+                        if (mCallback != null) {
+                            mCallback.onMediaUploadFailed(requestId, errorMessage, mediaType);
                         }
                     }
                 }
@@ -376,30 +374,7 @@ public class MediaUploadQueueManager {
     private void cleanupCompleted() {
         mExecutor.execute(() -> {
             try {
-                JSONObject manifest = readManifest();
-                JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-
-                // Create a new array without completed items
-                JSONArray updatedMediaItems = new JSONArray();
-                int removed = 0;
-
-                for (int i = 0; i < mediaItems.length(); i++) {
-                    JSONObject media = mediaItems.getJSONObject(i);
-                    String status = media.getString("status");
-
-                    // Keep all non-completed media
-                    if (!STATUS_COMPLETED.equals(status)) {
-                        updatedMediaItems.put(media);
-                    } else {
-                        removed++;
-                    }
-                }
-
-                // Update manifest with filtered list
-                manifest.put("mediaItems", updatedMediaItems);
-                manifest.put("lastUpdated", System.currentTimeMillis());
-
-                writeManifest(manifest);
+                int removed = requireJournal().removeWithStatus(STATUS_COMPLETED).size();
 
                 if (removed > 0) {
                     Log.d(TAG, "Cleaned up " + removed + " completed media items from queue");
@@ -419,26 +394,23 @@ public class MediaUploadQueueManager {
      */
     public int retryFailedUploads(int maxRetries) {
         try {
-            JSONObject manifest = readManifest();
-            JSONArray mediaItems = manifest.getJSONArray("mediaItems");
+            UploadQueueJournal journal = requireJournal();
 
             int retryCount = 0;
 
             // Find failed media to retry
-            for (int i = 0; i < mediaItems.length(); i++) {
-                JSONObject media = mediaItems.getJSONObject(i);
-                String status = media.getString("status");
-
-                if (STATUS_FAILED.equals(status)) {
-                    int attempts = media.getInt("retryCount");
-
-                    // Only retry if under max retry count
-                    if (attempts <= maxRetries) {
-                        // Reset to queued status
-                        media.put("status", STATUS_QUEUED);
-                        updateMediaInManifest(i, media);
-                        retryCount++;
-                    }
+            for (JSONObject media : journal.getWithStatus(STATUS_FAILED)) {
+                int attempts = media.getInt("retryCount");
+
+                // Only retry if under max retry count
+                if (attempts <= maxRetries) {
+                    // Reset to queued status, starting no earlier than the backoff allows
+                    JSONObject update = new JSONObject();
+                    update.put("status", STATUS_QUEUED);
+                    update.put("nextAttemptTime",
+                            media.optLong("failedTime", 0) + mScheduler.getRetryDelayMs(attempts));
+                    updateMediaInManifest(media.getString("queuedPath"), update);
+                    retryCount++;
                 }
             }
 
@@ -464,14 +436,8 @@ public class MediaUploadQueueManager {
         List<JSONObject> queuedMedia = new ArrayList<>();
 
         try {
-            JSONObject manifest = readManifest();
-            JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-
-            for (int i = 0; i < mediaItems.length(); i++) {
-                queuedMedia.add(mediaItems.getJSONObject(i));
-            }
-
-        } catch (IOException | JSONException e) {
+            queuedMedia.addAll(requireJournal().getAll());
+        } catch (IOException e) {
             Log.e(TAG, "Error getting queued media", e);
         }
 
@@ -487,41 +453,17 @@ public class MediaUploadQueueManager {
         JSONObject stats = new JSONObject();
 
         try {
-            JSONObject manifest = readManifest();
-            JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-
-            int totalCount = mediaItems.length();
-            int queuedCount = 0;
-            int uploadingCount = 0;
-            int completedCount = 0;
-            int failedCount = 0;
-
-            for (int i = 0; i < mediaItems.length(); i++) {
-                JSONObject media = mediaItems.getJSONObject(i);
-                String status = media.getString("status");
-
-                switch (status) {
-                    case STATUS_QUEUED:
-                        queuedCount++;
-                        break;
-                    case STATUS_UPLOADING:
-                        uploadingCount++;
-                        break;
-                    case STATUS_COMPLETED:
-                        completedCount++;
-                        break;
-                    case STATUS_FAILED:
-                        failedCount++;
-                        break;
-                }
-            }
-
-            stats.put("totalCount", totalCount);
-            stats.put("queuedCount", queuedCount);
-            stats.put("uploadingCount", uploadingCount);
-            stats.put("completedCount", completedCount);
-            stats.put("failedCount", failedCount);
-            stats.put("lastUpdated", manifest.getLong("lastUpdated"));
+            UploadQueueJournal journal = requireJournal();
+
+            stats.put("totalCount", journal.size());
+            stats.put("queuedCount", journal.countWithStatus(STATUS_QUEUED));
+            stats.put("uploadingCount", journal.countWithStatus(STATUS_UPLOADING));
+            stats.put("completedCount", journal.countWithStatus(STATUS_COMPLETED));
+            stats.put("failedCount", journal.countWithStatus(STATUS_FAILED));
+            stats.put("lastUpdated", journal.getLastUpdated());
+            stats.put("scheduledCount", mScheduler.getPendingCount());
+            stats.put("inFlightCount", mScheduler.getInFlightCount());
+            stats.put("uploadThrottled", mScheduler.isThrottled());
 
         } catch (IOException | JSONException e) {
             Log.e(TAG, "Error getting queue stats", e);
@@ -538,9 +480,8 @@ public class MediaUploadQueueManager {
      */
     public boolean rebuildManifest() {
         try {
-            // Create a new manifest
-            JSONObject manifest = new JSONObject();
-            JSONArray mediaItems = new JSONArray();
+            // Collect entries for a new manifest
+            List<JSONObject> mediaItems = new ArrayList<>();
 
             // List all files in the queue directory
             File[] files = mQueueDir.listFiles((dir, name) ->
@@ -590,15 +531,12 @@ public class MediaUploadQueueManager {
                     mediaEntry.put("queuedTime", timestamp);
                     mediaEntry.put("retryCount", 0);
 
-                    mediaItems.put(mediaEntry);
+                    mediaItems.add(mediaEntry);
                 }
             }
 
-            // Save the new manifest
-            manifest.put("mediaItems", mediaItems);
-            manifest.put("lastUpdated", System.currentTimeMillis());
-
-            writeManifest(manifest);
+            // Save the new manifest (fresh snapshot, empty journal)
+            requireJournal().replaceAll(mediaItems);
 
             Log.d(TAG, "Manifest rebuilt with " + (files != null ? files.length : 0) + " media items");
             return true;
@@ -616,169 +554,29 @@ public class MediaUploadQueueManager {
      * @return true if successful, false otherwise
      */
     private boolean addMediaToManifest(JSONObject mediaEntry) throws IOException, JSONException {
-        // Lock the manifest file
-        FileOutputStream lockStream = new FileOutputStream(mManifestFile, true);
-        FileLock lock = null;
-
-        try {
-            // Try to acquire lock with timeout
-            long startTime = System.currentTimeMillis();
-            while (lock == null && System.currentTimeMillis() - startTime < LOCK_TIMEOUT_MS) {
-                try {
-                    lock = lockStream.getChannel().tryLock();
-                } catch (IOException e) {
-                    // Failed to lock, wait and retry
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted while waiting for manifest lock", ie);
-                    }
-                }
-            }
-
-            if (lock == null) {
-                throw new IOException("Failed to acquire manifest lock within timeout");
-            }
-
-            // Read current manifest
-            JSONObject manifest = readManifest();
-            JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-
-            // Add the new media entry
-            mediaItems.put(mediaEntry);
-
-            // Update timestamp
-            manifest.put("lastUpdated", System.currentTimeMillis());
-
-            // Write updated manifest
-            writeManifest(manifest);
-
-            return true;
-
-        } finally {
-            // Release lock and close stream
-            if (lock != null) {
-                lock.release();
-            }
-            lockStream.close();
-        }
+        requireJournal().put(mediaEntry);
+        return true;
     }
 
     /**
      * Update a media entry in the manifest
      *
-     * @param index      Index of the media item to update
-     * @param mediaEntry Updated JSON object with media information
-     * @return true if successful, false otherwise
-     */
-    private boolean updateMediaInManifest(int index, JSONObject mediaEntry) throws IOException, JSONException {
-        // Lock the manifest file
-        FileOutputStream lockStream = new FileOutputStream(mManifestFile, true);
-        FileLock lock = null;
-
-        try {
-            // Try to acquire lock with timeout
-            long startTime = System.currentTimeMillis();
-            while (lock == null && System.currentTimeMillis() - startTime < LOCK_TIMEOUT_MS) {
-                try {
-                    lock = lockStream.getChannel().tryLock();
-                } catch (IOException e) {
-                    // Failed to lock, wait and retry
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted while waiting for manifest lock", ie);
-                    }
-                }
-            }
-
-            if (lock == null) {
-                throw new IOException("Failed to acquire manifest lock within timeout");
-            }
-
-            // Read current manifest
-            JSONObject manifest = readManifest();
-            JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-
-            // Validate index
-            if (index < 0 || index >= mediaItems.length()) {
-                throw new IndexOutOfBoundsException("Invalid media index: " + index);
-            }
-
-            // Update the media entry at the specified index
-            mediaItems.put(index, mediaEntry);
-
-            // Update timestamp
-            manifest.put("lastUpdated", System.currentTimeMillis());
-
-            // Write updated manifest
-            writeManifest(manifest);
-
-            return true;
-
-        } finally {
-            // Release lock and close stream
-            if (lock != null) {
-                lock.release();
-            }
-            lockStream.close();
-        }
-    }
-
-    /**
-     * Read the manifest file
-     *
-     * @return JSONObject with manifest contents
+     * @param queuedPath Queued file path identifying the media item
+     * @param fields     Fields to set on the entry
+     * @return true if successful, false if the entry no longer exists
      */
-    private JSONObject readManifest() throws IOException, JSONException {
-        if (!mManifestFile.exists()) {
-            // If manifest doesn't exist, create an empty one
-            createEmptyManifest();
-        }
-
-        // Read the manifest file
-        StringBuilder jsonString = new StringBuilder();
-        try (FileInputStream input = new FileInputStream(mManifestFile)) {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-
-            while ((bytesRead = input.read(buffer)) != -1) {
-                jsonString.append(new String(buffer, 0, bytesRead));
-            }
-        }
-
-        return new JSONObject(jsonString.toString());
+    private boolean updateMediaInManifest(String queuedPath, JSONObject fields) throws IOException, JSONException {
+        return requireJournal().update(queuedPath, fields) != null;
     }
 
     /**
-     * Write manifest to file
-     *
-     * @param manifest JSONObject to write
+     * Get the manifest journal, failing like a manifest read would if it couldn't be opened
      */
-    private void writeManifest(JSONObject manifest) throws IOException {
-        // Ensure the directory exists
-        if (!mQueueDir.exists()) {
-            if (!mQueueDir.mkdirs()) {
-                throw new IOException("Failed to create queue directory");
-            }
-        }
-
-        // Write to temporary file first
-        File tempFile = new File(mQueueDir, MANIFEST_FILENAME + ".tmp");
-        try (FileOutputStream output = new FileOutputStream(tempFile)) {
-            byte[] jsonBytes = manifest.toString(2).getBytes();
-            output.write(jsonBytes);
-            output.getFD().sync(); // Ensure data is written to disk
-        } catch (JSONException e) {
-            throw new RuntimeException(e);
-        }
-
-        // Atomic rename to ensure consistency
-        if (!tempFile.renameTo(mManifestFile)) {
-            throw new IOException("Failed to update manifest file (rename failed)");
+    private UploadQueueJournal requireJournal() throws IOException {
+        if (mJournal == null) {
+            throw new IOException("Manifest journal unavailable");
         }
+        return mJournal;
     }
 
     /**
@@ -806,10 +604,8 @@ public class MediaUploadQueueManager {
      */
     public boolean isQueueEmpty() {
         try {
-            JSONObject manifest = readManifest();
-            JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-            return mediaItems.length() == 0;
-        } catch (IOException | JSONException e) {
+            return requireJournal().size() == 0;
+        } catch (IOException e) {
             Log.e(TAG, "Error checking if queue is empty", e);
             return true;
         }
@@ -822,19 +618,18 @@ public class MediaUploadQueueManager {
      */
     public int clearQueue() {
         try {
-            JSONObject manifest = readManifest();
-            JSONArray mediaItems = manifest.getJSONArray("mediaItems");
-            int count = mediaItems.length();
+            UploadQueueJournal journal = requireJournal();
+            List<JSONObject> mediaItems = journal.getAll();
+            int count = mediaItems.size();
 
             // Delete all queued files
-            for (int i = 0; i < mediaItems.length(); i++) {
-                JSONObject media = mediaItems.getJSONObject(i);
+            for (JSONObject media : mediaItems) {
                 String filePath = media.getString("queuedPath");
                 new File(filePath).delete();
             }
 
-            // Create new empty manifest
-            createEmptyManifest();
+            // Reset to an empty manifest
+            journal.replaceAll(new ArrayList<>());
 
             return count;
         } catch (IOException | JSONException e) {
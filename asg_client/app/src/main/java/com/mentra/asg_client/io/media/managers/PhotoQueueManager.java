@@ -5,7 +5,6 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -13,7 +12,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.FileLock;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -21,10 +19,16 @@ import java.util.concurrent.Executors;
 
 import com.mentra.asg_client.io.media.upload.PhotoUploadService;
 import com.mentra.asg_client.camera.CameraNeoService;
+import com.mentra.asg_client.io.streaming.services.RtmpStreamingService;
+import com.mentra.asg_client.io.streaming.services.SrtStreamingService;
+import com.mentra.asg_client.io.streaming.services.WhipStreamingService;
 
 /**
  * Manages a queue of photos to be uploaded to AugmentOS Cloud.
  * Provides persistence, retry mechanism, and robust error handling.
+ * Uploads run in parallel through an {@link UploadScheduler} (small and SDK-requested items first,
+ * throttled while a live stream is active).
+ * Queue state is kept in memory and persisted through an append-only {@link UploadQueueJournal}.
  */
 public class PhotoQueueManager {
     private static final String TAG = "PhotoQueueManager";
@@ -39,17 +43,18 @@ public class PhotoQueueManager {
     public static final String STATUS_COMPLETED = "completed";
     public static final String STATUS_FAILED = "failed";
     
-    // File lock timeout (milliseconds)
-    private static final long LOCK_TIMEOUT_MS = 5000;
-    
     // Context and directories
     private final Context mContext;
     private final File mQueueDir;
     private final File mManifestFile;
+    private final UploadQueueJournal mJournal;
     
     // Thread pool for async operations
     private final ExecutorService mExecutor;
     
+    // Decides upload order and concurrency
+    private final UploadScheduler mScheduler;
+    
     // Callbacks
     public interface QueueCallback {
         void onPhotoQueued(String requestId, String filePath);
@@ -65,7 +70,7 @@ public class PhotoQueueManager {
     private QueueCallback mCallback;
     
     /**
-     * Constructor - initializes the queue directory and manifest file
+     * Constructor - initializes the queue directory and loads the manifest journal
      * 
      * @param context Application context
      */
@@ -74,6 +79,9 @@ public class PhotoQueueManager {
         mQueueDir = new File(mContext.getExternalFilesDir(null), QUEUE_DIR_NAME);
         mManifestFile = new File(mQueueDir, MANIFEST_FILENAME);
         mExecutor = Executors.newSingleThreadExecutor();
+        mScheduler = new UploadScheduler.Builder(this::startScheduledUpload)
+                .setStreamingProbe(PhotoQueueManager::isLiveStreamActive)
+                .build();
         
         // Create queue directory if it doesn't exist
         if (!mQueueDir.exists()) {
@@ -82,27 +90,17 @@ public class PhotoQueueManager {
             }
         }
         
-        // Create manifest file if it doesn't exist
-        if (!mManifestFile.exists()) {
-            try {
-                createEmptyManifest();
-            } catch (IOException | JSONException e) {
-                Log.e(TAG, "Failed to create manifest file", e);
-            }
-        } else {
-            // Validate manifest file on startup
-            try {
-                validateManifest();
-            } catch (IOException | JSONException e) {
-                Log.e(TAG, "Failed to validate manifest file", e);
-                // Create a new manifest if validation fails
-                try {
-                    createEmptyManifest();
-                } catch (IOException | JSONException e2) {
-                    Log.e(TAG, "Failed to recreate manifest file", e2);
-                }
+        // Load manifest snapshot and replay the journal on top of it
+        UploadQueueJournal journal = null;
+        try {
+            journal = new UploadQueueJournal(mManifestFile, "photos");
+            if (journal.wasRecovered()) {
+                Log.w(TAG, "Manifest or journal was damaged; recovered " + journal.size() + " photos");
             }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open manifest journal", e);
         }
+        mJournal = journal;
     }
     
     /**
@@ -112,6 +110,13 @@ public class PhotoQueueManager {
         mCallback = callback;
     }
     
+    /**
+     * Set how many uploads may run in parallel while no live stream is active
+     */
+    public void setMaxConcurrentUploads(int maxConcurrent) {
+        mScheduler.setMaxConcurrent(maxConcurrent);
+    }
+    
     /**
      * Take a photo using CameraNeoService
      * 
@@ -138,40 +143,6 @@ public class PhotoQueueManager {
         );
     }
     
-    /**
-     * Create an empty manifest file
-     */
-    private void createEmptyManifest() throws IOException, JSONException {
-        JSONObject manifest = new JSONObject();
-        JSONArray photos = new JSONArray();
-        manifest.put("photos", photos);
-        manifest.put("lastUpdated", System.currentTimeMillis());
-        
-        writeManifest(manifest);
-    }
-    
-    /**
-     * Validate the manifest file and ensure it's properly structured
-     */
-    private void validateManifest() throws IOException, JSONException {
-        JSONObject manifest = readManifest();
-        
-        // Check for required fields
-        if (!manifest.has("photos") || !manifest.has("lastUpdated")) {
-            throw new JSONException("Manifest file is missing required fields");
-        }
-        
-        // Verify photos array
-        if (!(manifest.get("photos") instanceof JSONArray)) {
-            throw new JSONException("Manifest 'photos' field is not an array");
-        }
-        
-        // Validate timestamp
-        if (!(manifest.get("lastUpdated") instanceof Long)) {
-            throw new JSONException("Manifest 'lastUpdated' field is not a valid timestamp");
-        }
-    }
-    
     /**
      * Queue a photo for upload
      * 
@@ -250,52 +221,88 @@ public class PhotoQueueManager {
     }
     
     /**
-     * Process the queue and upload any pending photos
+     * Hand queued photos to the upload scheduler, which decides order and concurrency
      */
     public void processQueue() {
         mExecutor.execute(() -> {
             try {
-                JSONObject manifest = readManifest();
-                JSONArray photos = manifest.getJSONArray("photos");
+                UploadQueueJournal journal = requireJournal();
                 
-                // Process each photo in the queue
-                int processed = 0;
-                for (int i = 0; i < photos.length(); i++) {
-                    JSONObject photo = photos.getJSONObject(i);
-                    String status = photo.getString("status");
-                    
-                    // Only process queued photos in this pass
-                    if (STATUS_QUEUED.equals(status)) {
-                        String requestId = photo.getString("requestId");
-                        String appId = photo.getString("appId");
-                        String queuedPath = photo.getString("queuedPath");
-                        
-                        // Update status to uploading
-                        photo.put("status", STATUS_UPLOADING);
-                        photo.put("uploadStartTime", System.currentTimeMillis());
-                        updatePhotoInManifest(i, photo);
-                        
-                        // Attempt to upload the photo
-                        uploadPhoto(queuedPath, requestId, appId, i);
-                        
-                        processed++;
+                // Submit each queued photo (status index, no full-manifest scan)
+                int submitted = 0;
+                for (JSONObject photo : journal.getWithStatus(STATUS_QUEUED)) {
+                    String queuedPath = photo.getString("queuedPath");
+                    UploadScheduler.UploadTask task = new UploadScheduler.UploadTask(
+                            queuedPath,
+                            new File(queuedPath).length(),
+                            isSdkRequest(photo),
+                            photo.optLong("nextAttemptTime", 0));
+                    if (mScheduler.submit(task)) {
+                        submitted++;
                     }
                 }
                 
-                if (processed > 0) {
-                    Log.d(TAG, "Started uploading " + processed + " photos from queue");
+                if (submitted > 0) {
+                    Log.d(TAG, "Scheduled " + submitted + " photos for upload");
                 }
-                
+            
             } catch (IOException | JSONException e) {
                 Log.e(TAG, "Error processing queue", e);
             }
         });
     }
     
+    /**
+     * Start an upload picked by the scheduler
+     */
+    private void startScheduledUpload(UploadScheduler.UploadTask task, Runnable onComplete) {
+        mExecutor.execute(() -> {
+            try {
+                String queuedPath = task.getKey();
+                JSONObject photo = requireJournal().get(queuedPath);
+                
+                // Skip entries that were cleared or already picked up while waiting
+                if (photo == null || !STATUS_QUEUED.equals(photo.getString("status"))) {
+                    onComplete.run();
+                    return;
+                }
+                
+                // Update status to uploading
+                JSONObject update = new JSONObject();
+                update.put("status", STATUS_UPLOADING);
+                update.put("uploadStartTime", System.currentTimeMillis());
+                updatePhotoInManifest(queuedPath, update);
+                
+                // Attempt to upload the photo
+                uploadPhoto(queuedPath, photo.getString("requestId"), photo.optString("appId", ""), onComplete);
+            
+            } catch (IOException | JSONException e) {
+                Log.e(TAG, "Error starting scheduled upload", e);
+                onComplete.run();
+            }
+        });
+    }
+    
+    /**
+     * SDK uploads have an app waiting on the result; "system" entries are recovered background uploads
+     */
+    private static boolean isSdkRequest(JSONObject entry) {
+        return !entry.optString("requestId", "").isEmpty() && !"system".equals(entry.optString("appId", ""));
+    }
+    
+    /**
+     * Live streams share the uplink with uploads, so any active one throttles the scheduler
+     */
+    private static boolean isLiveStreamActive() {
+        return RtmpStreamingService.isStreaming()
+                || WhipStreamingService.isStreaming()
+                || SrtStreamingService.isStreaming();
+    }
+    
     /**
      * Upload a photo from the queue
      */
-    private void uploadPhoto(String queuedPath, String requestId, String appId, int index) {
+    private void uploadPhoto(String queuedPath, String requestId, String appId, Runnable onComplete) {
         PhotoUploadService.uploadPhoto(
             mContext,
             queuedPath,
@@ -303,12 +310,14 @@ public class PhotoQueueManager {
             new PhotoUploadService.UploadCallback() {
                 @Override
                 public void onSuccess(String url) {
-                    handleUploadSuccess(requestId, url, index);
+                    onComplete.run();
+                    handleUploadSuccess(requestId, url, queuedPath);
                 }
                 
                 @Override
                 public void onFailure(String errorMessage) {
-                    handleUploadFailure(requestId, errorMessage, index);
+                    onComplete.run();
+                    handleUploadFailure(requestId, errorMessage, queuedPath);
                 }
             }
         );
@@ -317,44 +326,38 @@ public class PhotoQueueManager {
     /**
      * Handle a successful photo upload
      */
-    private void handleUploadSuccess(String requestId, String url, int index) {
+    private void handleUploadSuccess(String requestId, String url, String queuedPath) {
         mExecutor.execute(() -> {
             try {
-                JSONObject manifest = readManifest();
-                JSONArray photos = manifest.getJSONArray("photos");
+                JSONObject photo = requireJournal().get(queuedPath);
                 
-                // Make sure the index is still valid
-                if (index >= 0 && index < photos.length()) {
-                    JSONObject photo = photos.getJSONObject(index);
+                // Verify this is still the same photo (by requestId)
+                if (photo != null && requestId.equals(photo.getString("requestId"))) {
+                    // Update status and add URL
+                    JSONObject update = new JSONObject();
+                    update.put("status", STATUS_COMPLETED);
+                    update.put("photoUrl", url);
+                    update.put("completedTime", System.currentTimeMillis());
                     
-                    // Verify this is the same photo (by requestId)
-                    if (requestId.equals(photo.getString("requestId"))) {
-                        // Update status and add URL
-                        photo.put("status", STATUS_COMPLETED);
-                        photo.put("photoUrl", url);
-                        photo.put("completedTime", System.currentTimeMillis());
+                    // Update in manifest
+                    boolean updated = updatePhotoInManifest(queuedPath, update);
+                    
+                    if (updated) {
+                        Log.d(TAG, "Photo upload successful: " + requestId + ", URL: " + url);
                         
-                        // Update in manifest
-                        boolean updated = updatePhotoInManifest(index, photo);
+                        // Delete the queued file
+                        new File(queuedPath).delete();
                         
-                        if (updated) {
-                            Log.d(TAG, "Photo upload successful: " + requestId + ", URL: " + url);
-                            
-                            // Delete the queued file
-                            String queuedPath = photo.getString("queuedPath");
-                            new File(queuedPath).delete();
-                            
-                            // Notify callback
-                            if (mCallback != null) {
-                                mCallback.onPhotoUploaded(requestId, url);
-                            }
-                            
-                            // Schedule cleanup of completed items
-                            cleanupCompleted();
+                        // Notify callback
+                        if (mCallback != null) {
+                            mCallback.onPhotoUploaded(requestId, url);
                         }
+                        
+                        // Schedule cleanup of completed items
+                        cleanupCompleted();
                     }
                 }
-                
+            
             } catch (IOException | JSONException e) {
                 Log.e(TAG, "Error handling upload success", e);
             }
@@ -364,39 +367,33 @@ public class PhotoQueueManager {
     /**
      * Handle a failed photo upload attempt
      */
-    private void handleUploadFailure(String requestId, String errorMessage, int index) {
+    private void handleUploadFailure(String requestId, String errorMessage, String queuedPath) {
         mExecutor.execute(() -> {
             try {
-                JSONObject manifest = readManifest();
-                JSONArray photos = manifest.getJSONArray("photos");
+                JSONObject photo = requireJournal().get(queuedPath);
                 
-                // Make sure the index is still valid
-                if (index >= 0 && index < photos.length()) {
-                    JSONObject photo = photos.getJSONObject(index);
+                // Verify this is still the same photo (by requestId)
+                if (photo != null && requestId.equals(photo.getString("requestId"))) {
+                    // Update retry count and status
+                    JSONObject update = new JSONObject();
+                    update.put("retryCount", photo.getInt("retryCount") + 1);
+                    update.put("status", STATUS_FAILED);
+                    update.put("lastError", errorMessage);
+                    update.put("failedTime", System.currentTimeMillis());
                     
-                    // Verify this is the same photo (by requestId)
-                    if (requestId.equals(photo.getString("requestId"))) {
-                        // Update retry count and status
-                        int retryCount = photo.getInt("retryCount") + 1;
-                        photo.put("retryCount", retryCount);
-                        photo.put("status", STATUS_FAILED);
-                        photo.put("lastError", errorMessage);
-                        photo.put("failedTime", System.currentTimeMillis());
-                        
-                        // Update in manifest
-                        boolean updated = updatePhotoInManifest(index, photo);
+                    // Update in manifest
+                    boolean updated = updatePhotoInManifest(queuedPath, update);
+                    
+                    if (updated) {
+                        Log.d(TAG, "Photo upload failed: " + requestId + ", error: " + errorMessage);
                         
-                        if (updated) {
-                            Log.d(TAG, "Photo upload failed: " + requestId + ", error: " + errorMessage);
-                            
-                            // Notify callback
-                            if (mCallback != null) {
-                                mCallback.onPhotoUploadFailed(requestId, errorMessage);
-                            }
+                        // Notify callback
+                        if (mCallback != null) {
+                            mCallback.onPhotoUploadFailed(requestId, errorMessage);
                         }
                     }
                 }
-                
+            
             } catch (IOException | JSONException e) {
                 Log.e(TAG, "Error handling upload failure", e);
             }
@@ -409,35 +406,12 @@ public class PhotoQueueManager {
     private void cleanupCompleted() {
         mExecutor.execute(() -> {
             try {
-                JSONObject manifest = readManifest();
-                JSONArray photos = manifest.getJSONArray("photos");
-                
-                // Create a new array without completed items
-                JSONArray updatedPhotos = new JSONArray();
-                int removed = 0;
-                
-                for (int i = 0; i < photos.length(); i++) {
-                    JSONObject photo = photos.getJSONObject(i);
-                    String status = photo.getString("status");
-                    
-                    // Keep all non-completed photos
-                    if (!STATUS_COMPLETED.equals(status)) {
-                        updatedPhotos.put(photo);
-                    } else {
-                        removed++;
-                    }
-                }
-                
-                // Update manifest with filtered list
-                manifest.put("photos", updatedPhotos);
-                manifest.put("lastUpdated", System.currentTimeMillis());
-                
-                writeManifest(manifest);
+                int removed = requireJournal().removeWithStatus(STATUS_COMPLETED).size();
                 
                 if (removed > 0) {
                     Log.d(TAG, "Cleaned up " + removed + " completed photos from queue");
                 }
-                
+            
             } catch (IOException | JSONException e) {
                 Log.e(TAG, "Error cleaning up completed photos", e);
             }
@@ -446,32 +420,29 @@ public class PhotoQueueManager {
     
     /**
      * Retry failed uploads
-     * 
+     *
      * @param maxRetries Maximum retry count (photos with more retries will not be retried)
      * @return Number of photos that will be retried
      */
     public int retryFailedUploads(int maxRetries) {
         try {
-            JSONObject manifest = readManifest();
-            JSONArray photos = manifest.getJSONArray("photos");
+            UploadQueueJournal journal = requireJournal();
             
             int retryCount = 0;
             
             // Find failed photos to retry
-            for (int i = 0; i < photos.length(); i++) {
-                JSONObject photo = photos.getJSONObject(i);
-                String status = photo.getString("status");
+            for (JSONObject photo : journal.getWithStatus(STATUS_FAILED)) {
+                int attempts = photo.getInt("retryCount");
                 
-                if (STATUS_FAILED.equals(status)) {
-                    int attempts = photo.getInt("retryCount");
-                    
-                    // Only retry if under max retry count
-                    if (attempts <= maxRetries) {
-                        // Reset to queued status
-                        photo.put("status", STATUS_QUEUED);
-                        updatePhotoInManifest(i, photo);
-                        retryCount++;
-                    }
+                // Only retry if under max retry count
+                if (attempts <= maxRetries) {
+                    // Reset to queued status, starting no earlier than the backoff allows
+                    JSONObject update = new JSONObject();
+                    update.put("status", STATUS_QUEUED);
+                    update.put("nextAttemptTime",
+                            photo.optLong("failedTime", 0) + mScheduler.getRetryDelayMs(attempts));
+                    updatePhotoInManifest(photo.getString("queuedPath"), update);
+                    retryCount++;
                 }
             }
             
@@ -481,7 +452,7 @@ public class PhotoQueueManager {
             }
             
             return retryCount;
-            
+        
         } catch (IOException | JSONException e) {
             Log.e(TAG, "Error retrying failed uploads", e);
             return 0;
@@ -490,21 +461,15 @@ public class PhotoQueueManager {
     
     /**
      * Get a list of queued photo information
-     * 
+     *
      * @return List of photo information objects
      */
     public List<JSONObject> getQueuedPhotos() {
         List<JSONObject> queuedPhotos = new ArrayList<>();
         
         try {
-            JSONObject manifest = readManifest();
-            JSONArray photos = manifest.getJSONArray("photos");
-            
-            for (int i = 0; i < photos.length(); i++) {
-                queuedPhotos.add(photos.getJSONObject(i));
-            }
-            
-        } catch (IOException | JSONException e) {
+            queuedPhotos.addAll(requireJournal().getAll());
+        } catch (IOException e) {
             Log.e(TAG, "Error getting queued photos", e);
         }
         
@@ -513,49 +478,25 @@ public class PhotoQueueManager {
     
     /**
      * Get statistics about the queue
-     * 
+     *
      * @return JSONObject with queue statistics
      */
     public JSONObject getQueueStats() {
         JSONObject stats = new JSONObject();
         
         try {
-            JSONObject manifest = readManifest();
-            JSONArray photos = manifest.getJSONArray("photos");
-            
-            int totalCount = photos.length();
-            int queuedCount = 0;
-            int uploadingCount = 0;
-            int completedCount = 0;
-            int failedCount = 0;
-            
-            for (int i = 0; i < photos.length(); i++) {
-                JSONObject photo = photos.getJSONObject(i);
-                String status = photo.getString("status");
-                
-                switch (status) {
-                    case STATUS_QUEUED:
-                        queuedCount++;
-                        break;
-                    case STATUS_UPLOADING:
-                        uploadingCount++;
-                        break;
-                    case STATUS_COMPLETED:
-                        completedCount++;
-                        break;
-                    case STATUS_FAILED:
-                        failedCount++;
-                        break;
-                }
-            }
-            
-            stats.put("totalCount", totalCount);
-            stats.put("queuedCount", queuedCount);
-            stats.put("uploadingCount", uploadingCount);
-            stats.put("completedCount", completedCount);
-            stats.put("failedCount", failedCount);
-            stats.put("lastUpdated", manifest.getLong("lastUpdated"));
-            
+            UploadQueueJournal journal = requireJournal();
+            
+            stats.put("totalCount", journal.size());
+            stats.put("queuedCount", journal.countWithStatus(STATUS_QUEUED));
+            stats.put("uploadingCount", journal.countWithStatus(STATUS_UPLOADING));
+            stats.put("completedCount", journal.countWithStatus(STATUS_COMPLETED));
+            stats.put("failedCount", journal.countWithStatus(STATUS_FAILED));
+            stats.put("lastUpdated", journal.getLastUpdated());
+            stats.put("scheduledCount", mScheduler.getPendingCount());
+            stats.put("inFlightCount", mScheduler.getInFlightCount());
+            stats.put("uploadThrottled", mScheduler.isThrottled());
+        
         } catch (IOException | JSONException e) {
             Log.e(TAG, "Error getting queue stats", e);
         }
@@ -571,9 +512,8 @@ public class PhotoQueueManager {
      */
     public boolean rebuildManifest() {
         try {
-            // Create a new manifest
-            JSONObject manifest = new JSONObject();
-            JSONArray photos = new JSONArray();
+            // Collect entries for a new manifest
+            List<JSONObject> photos = new ArrayList<>();
             
             // List all files in the queue directory
             File[] files = mQueueDir.listFiles((dir, name) -> 
@@ -611,15 +551,12 @@ public class PhotoQueueManager {
                     photoEntry.put("queuedTime", timestamp);
                     photoEntry.put("retryCount", 0);
                     
-                    photos.put(photoEntry);
+                    photos.add(photoEntry);
                 }
             }
             
-            // Save the new manifest
-            manifest.put("photos", photos);
-            manifest.put("lastUpdated", System.currentTimeMillis());
-            
-            writeManifest(manifest);
+            // Save the new manifest (fresh snapshot, empty journal)
+            requireJournal().replaceAll(photos);
             
             Log.d(TAG, "Manifest rebuilt with " + (files != null ? files.length : 0) + " photos");
             return true;
@@ -632,174 +569,34 @@ public class PhotoQueueManager {
     
     /**
      * Add a photo entry to the manifest
-     * 
+     *
      * @param photoEntry JSON object with photo information
      * @return true if successful, false otherwise
      */
     private boolean addPhotoToManifest(JSONObject photoEntry) throws IOException, JSONException {
-        // Lock the manifest file
-        FileOutputStream lockStream = new FileOutputStream(mManifestFile, true);
-        FileLock lock = null;
-        
-        try {
-            // Try to acquire lock with timeout
-            long startTime = System.currentTimeMillis();
-            while (lock == null && System.currentTimeMillis() - startTime < LOCK_TIMEOUT_MS) {
-                try {
-                    lock = lockStream.getChannel().tryLock();
-                } catch (IOException e) {
-                    // Failed to lock, wait and retry
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted while waiting for manifest lock", ie);
-                    }
-                }
-            }
-            
-            if (lock == null) {
-                throw new IOException("Failed to acquire manifest lock within timeout");
-            }
-            
-            // Read current manifest
-            JSONObject manifest = readManifest();
-            JSONArray photos = manifest.getJSONArray("photos");
-            
-            // Add the new photo entry
-            photos.put(photoEntry);
-            
-            // Update timestamp
-            manifest.put("lastUpdated", System.currentTimeMillis());
-            
-            // Write updated manifest
-            writeManifest(manifest);
-            
-            return true;
-            
-        } finally {
-            // Release lock and close stream
-            if (lock != null) {
-                lock.release();
-            }
-            lockStream.close();
-        }
+        requireJournal().put(photoEntry);
+        return true;
     }
     
     /**
      * Update a photo entry in the manifest
-     * 
-     * @param index Index of the photo to update
-     * @param photoEntry Updated JSON object with photo information
-     * @return true if successful, false otherwise
-     */
-    private boolean updatePhotoInManifest(int index, JSONObject photoEntry) throws IOException, JSONException {
-        // Lock the manifest file
-        FileOutputStream lockStream = new FileOutputStream(mManifestFile, true);
-        FileLock lock = null;
-        
-        try {
-            // Try to acquire lock with timeout
-            long startTime = System.currentTimeMillis();
-            while (lock == null && System.currentTimeMillis() - startTime < LOCK_TIMEOUT_MS) {
-                try {
-                    lock = lockStream.getChannel().tryLock();
-                } catch (IOException e) {
-                    // Failed to lock, wait and retry
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted while waiting for manifest lock", ie);
-                    }
-                }
-            }
-            
-            if (lock == null) {
-                throw new IOException("Failed to acquire manifest lock within timeout");
-            }
-            
-            // Read current manifest
-            JSONObject manifest = readManifest();
-            JSONArray photos = manifest.getJSONArray("photos");
-            
-            // Validate index
-            if (index < 0 || index >= photos.length()) {
-                throw new IndexOutOfBoundsException("Invalid photo index: " + index);
-            }
-            
-            // Update the photo entry at the specified index
-            photos.put(index, photoEntry);
-            
-            // Update timestamp
-            manifest.put("lastUpdated", System.currentTimeMillis());
-            
-            // Write updated manifest
-            writeManifest(manifest);
-            
-            return true;
-            
-        } finally {
-            // Release lock and close stream
-            if (lock != null) {
-                lock.release();
-            }
-            lockStream.close();
-        }
-    }
-    
-    /**
-     * Read the manifest file
-     * 
-     * @return JSONObject with manifest contents
+     *
+     * @param queuedPath Queued file path identifying the photo
+     * @param fields     Fields to set on the entry
+     * @return true if successful, false if the entry no longer exists
      */
-    private JSONObject readManifest() throws IOException, JSONException {
-        if (!mManifestFile.exists()) {
-            // If manifest doesn't exist, create an empty one
-            createEmptyManifest();
-        }
-        
-        // Read the manifest file
-        StringBuilder jsonString = new StringBuilder();
-        try (FileInputStream input = new FileInputStream(mManifestFile)) {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            
-            while ((bytesRead = input.read(buffer)) != -1) {
-                jsonString.append(new String(buffer, 0, bytesRead));
-            }
-        }
-        
-        return new JSONObject(jsonString.toString());
+    private boolean updatePhotoInManifest(String queuedPath, JSONObject fields) throws IOException, JSONException {
+        return requireJournal().update(queuedPath, fields) != null;
     }
     
     /**
-     * Write manifest to file
-     * 
-     * @param manifest JSONObject to write
+     * Get the manifest journal, failing like a manifest read would if it couldn't be opened
      */
-    private void writeManifest(JSONObject manifest) throws IOException {
-        // Ensure the directory exists
-        if (!mQueueDir.exists()) {
-            if (!mQueueDir.mkdirs()) {
-                throw new IOException("Failed to create queue directory");
-            }
-        }
-        
-        // Write to temporary file first
-        File tempFile = new File(mQueueDir, MANIFEST_FILENAME + ".tmp");
-        try (FileOutputStream output = new FileOutputStream(tempFile)) {
-            byte[] jsonBytes = manifest.toString(2).getBytes();
-            output.write(jsonBytes);
-            output.getFD().sync(); // Ensure data is written to disk
-        } catch (JSONException e) {
-            throw new RuntimeException(e);
-        }
-
-        // Atomic rename to ensure consistency
-        if (!tempFile.renameTo(mManifestFile)) {
-            throw new IOException("Failed to update manifest file (rename failed)");
+    private UploadQueueJournal requireJournal() throws IOException {
+        if (mJournal == null) {
+            throw new IOException("Manifest journal unavailable");
         }
+        return mJournal;
     }
     
     /**
@@ -822,15 +619,13 @@ public class PhotoQueueManager {
     
     /**
      * Check if the queue is empty
-     * 
+     *
      * @return true if the queue is empty, false otherwise
      */
     public boolean isQueueEmpty() {
         try {
-            JSONObject manifest = readManifest();
-            JSONArray photos = manifest.getJSONArray("photos");
-            return photos.length() == 0;
-        } catch (IOException | JSONException e) {
+            return requireJournal().size() == 0;
+        } catch (IOException e) {
             Log.e(TAG, "Error checking if queue is empty", e);
             return true;
         }
@@ -838,24 +633,23 @@ public class PhotoQueueManager {
     
     /**
      * Remove all photos from the queue
-     * 
+     *
      * @return Number of photos removed
      */
     public int clearQueue() {
         try {
-            JSONObject manifest = readManifest();
-            JSONArray photos = manifest.getJSONArray("photos");
-            int count = photos.length();
+            UploadQueueJournal journal = requireJournal();
+            List<JSONObject> photos = journal.getAll();
+            int count = photos.size();
             
             // Delete all queued files
-            for (int i = 0; i < photos.length(); i++) {
-                JSONObject photo = photos.getJSONObject(i);
+            for (JSONObject photo : photos) {
                 String filePath = photo.getString("queuedPath");
                 new File(filePath).delete();
             }
             
-            // Create new empty manifest
-            createEmptyManifest();
+            // Reset to an empty manifest
+            journal.replaceAll(new ArrayList<>());
             
             return count;
         } catch (IOException | JSONException e) {
@@ -0,0 +1,474 @@
+package com.mentra.asg_client.io.media.managers;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Crash-safe persistence for an upload queue manifest.
+ *
+ * Queue state is held in memory, keyed by each entry's queued file path and indexed by status.
+ * Every mutation is appended to a journal file as one JSON line and fsynced, so enqueue and status
+ * changes cost a single small append instead of rewriting the whole manifest. Once the journal
+ * outgrows the live queue it is folded back into the manifest snapshot, which keeps the original
+ * {@code {"<items>": [...], "lastUpdated": ...}} layout.
+ *
+ * The snapshot and the journal carry a generation number. Compaction writes the new snapshot
+ * (generation + 1) before truncating the journal, so a crash in between leaves a stale journal
+ * that is recognised and ignored on the next open. A torn final journal line is dropped.
+ *
+ * All methods are thread-safe.
+ */
+public class UploadQueueJournal {
+
+    /** Entry field used as the unique key. */
+    public static final String KEY_FIELD = "queuedPath";
+    /** Entry field holding the upload status. */
+    public static final String STATUS_FIELD = "status";
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String GENERATION_FIELD = "journalGeneration";
+    private static final int MIN_COMPACT_RECORDS = 256;
+
+    private static final String OP_BEGIN = "begin";
+    private static final String OP_PUT = "put";
+    private static final String OP_UPDATE = "update";
+    private static final String OP_REMOVE = "remove";
+
+    private final File manifestFile;
+    private final File journalFile;
+    private final String itemsField;
+    private final boolean syncWrites;
+
+    private final LinkedHashMap<String, JSONObject> entries = new LinkedHashMap<>();
+    private final Map<String, LinkedHashSet<String>> keysByStatus = new HashMap<>();
+
+    private FileOutputStream journalOut;
+    private long generation;
+    private int journalRecords;
+    private long lastUpdated;
+    private boolean recovered;
+
+    /**
+     * Open (or create) the journal for a manifest file.
+     *
+     * @param manifestFile Manifest snapshot file
+     * @param itemsField   Name of the entries array inside the manifest
+     */
+    public UploadQueueJournal(File manifestFile, String itemsField) throws IOException {
+        this(manifestFile, itemsField, true);
+    }
+
+    UploadQueueJournal(File manifestFile, String itemsField, boolean syncWrites) throws IOException {
+        this.manifestFile = manifestFile;
+        this.journalFile = new File(manifestFile.getParentFile(), manifestFile.getName() + JOURNAL_SUFFIX);
+        this.itemsField = itemsField;
+        this.syncWrites = syncWrites;
+        open();
+    }
+
+    /**
+     * @return true if the manifest or journal was unreadable on open and state was partially or fully reset
+     */
+    public synchronized boolean wasRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Append a new entry (or replace the entry with the same key).
+     *
+     * @param entry Entry with a {@link #KEY_FIELD}
+     */
+    public synchronized void put(JSONObject entry) throws IOException, JSONException {
+        String key = entry.getString(KEY_FIELD);
+        JSONObject stored = copy(entry);
+        append(new JSONObject().put("op", OP_PUT).put("entry", stored));
+        applyPut(key, stored);
+        maybeCompact();
+    }
+
+    /**
+     * Merge fields into an existing entry.
+     *
+     * @param key    Entry key
+     * @param fields Fields to set
+     * @return Copy of the updated entry, or null if no entry has this key
+     */
+    public synchronized JSONObject update(String key, JSONObject fields) throws IOException, JSONException {
+        if (!entries.containsKey(key)) {
+            return null;
+        }
+        JSONObject stored = copy(fields);
+        append(new JSONObject().put("op", OP_UPDATE).put("key", key).put("fields", stored));
+        JSONObject updated = copy(applyUpdate(key, stored));
+        maybeCompact();
+        return updated;
+    }
+
+    /**
+     * Remove an entry.
+     *
+     * @param key Entry key
+     * @return Copy of the removed entry, or null if no entry has this key
+     */
+    public synchronized JSONObject remove(String key) throws IOException, JSONException {
+        if (!entries.containsKey(key)) {
+            return null;
+        }
+        append(new JSONObject().put("op", OP_REMOVE).put("key", key));
+        JSONObject removed = applyRemove(key);
+        maybeCompact();
+        return removed;
+    }
+
+    /**
+     * Remove every entry with the given status.
+     *
+     * @return Removed entries
+     */
+    public synchronized List<JSONObject> removeWithStatus(String status) throws IOException, JSONException {
+        List<JSONObject> removed = new ArrayList<>();
+        for (String key : new ArrayList<>(keysFor(status))) {
+            removed.add(remove(key));
+        }
+        return removed;
+    }
+
+    /**
+     * Replace the whole queue, writing a fresh snapshot and an empty journal.
+     *
+     * @param newEntries Entries to keep (each with a {@link #KEY_FIELD})
+     */
+    public synchronized void replaceAll(List<JSONObject> newEntries) throws IOException, JSONException {
+        entries.clear();
+        keysByStatus.clear();
+        for (JSONObject entry : newEntries) {
+            applyPut(entry.getString(KEY_FIELD), copy(entry));
+        }
+        lastUpdated = System.currentTimeMillis();
+        compact();
+    }
+
+    /**
+     * @param key Entry key
+     * @return Copy of the entry, or null if absent
+     */
+    public synchronized JSONObject get(String key) {
+        JSONObject entry = entries.get(key);
+        return entry != null ? copy(entry) : null;
+    }
+
+    /**
+     * @return Copies of all entries in queue order
+     */
+    public synchronized List<JSONObject> getAll() {
+        List<JSONObject> result = new ArrayList<>(entries.size());
+        for (JSONObject entry : entries.values()) {
+            result.add(copy(entry));
+        }
+        return result;
+    }
+
+    /**
+     * @return Copies of the entries with the given status, in queue order
+     */
+    public synchronized List<JSONObject> getWithStatus(String status) {
+        LinkedHashSet<String> keys = keysFor(status);
+        List<JSONObject> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            result.add(copy(entries.get(key)));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int countWithStatus(String status) {
+        return keysFor(status).size();
+    }
+
+    public synchronized long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    /** @return Number of records appended since the last compaction */
+    public synchronized int getJournalRecordCount() {
+        return journalRecords;
+    }
+
+    /**
+     * Fold the journal into the manifest snapshot now.
+     */
+    public synchronized void compact() throws IOException {
+        long nextGeneration = generation + 1;
+        writeSnapshot(nextGeneration);
+        generation = nextGeneration;
+        resetJournal();
+    }
+
+    public synchronized void close() {
+        if (journalOut != null) {
+            try {
+                journalOut.close();
+            } catch (IOException ignored) {
+                // Nothing left to flush; records were synced on append
+            }
+            journalOut = null;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Replay
+
+    private void open() throws IOException {
+        File dir = manifestFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create queue directory: " + dir.getAbsolutePath());
+        }
+
+        boolean snapshotOk = loadSnapshot();
+        boolean journalOk = snapshotOk && replayJournal();
+
+        if (!snapshotOk || !journalOk || !journalFile.exists() || journalRecords > 0) {
+            // Start every session from a clean snapshot; also repairs a stale or torn journal
+            compact();
+        } else {
+            journalOut = new FileOutputStream(journalFile, true);
+        }
+    }
+
+    private boolean loadSnapshot() {
+        generation = 0;
+        lastUpdated = System.currentTimeMillis();
+        if (!manifestFile.exists()) {
+            return true;
+        }
+        try {
+            JSONObject manifest = new JSONObject(readFile(manifestFile));
+            JSONArray items = manifest.getJSONArray(itemsField);
+            for (int i = 0; i < items.length(); i++) {
+                JSONObject entry = items.getJSONObject(i);
+                String key = entry.optString(KEY_FIELD, null);
+                if (key != null) {
+                    applyPut(key, entry);
+                }
+            }
+            generation = manifest.optLong(GENERATION_FIELD, 0);
+            lastUpdated = manifest.optLong("lastUpdated", lastUpdated);
+            return true;
+        } catch (IOException | JSONException e) {
+            entries.clear();
+            keysByStatus.clear();
+            recovered = true;
+            return false;
+        }
+    }
+
+    private boolean replayJournal() throws IOException {
+        journalRecords = 0;
+        if (!journalFile.exists()) {
+            return true;
+        }
+        byte[] data = Files.readAllBytes(journalFile.toPath());
+        int lineStart = 0;
+        boolean headerSeen = false;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            String line = new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            lineStart = i + 1;
+            try {
+                JSONObject record = new JSONObject(line);
+                String op = record.getString("op");
+                if (!headerSeen) {
+                    if (!OP_BEGIN.equals(op) || record.getLong("generation") != generation) {
+                        // Journal predates the snapshot (crash during compaction); snapshot already has it
+                        return false;
+                    }
+                    headerSeen = true;
+                    continue;
+                }
+                applyRecord(op, record);
+                journalRecords++;
+            } catch (JSONException e) {
+                recovered = true;
+                return false;
+            }
+        }
+        if (lineStart < data.length) {
+            // Torn final write; everything before it was applied
+            recovered = true;
+            return false;
+        }
+        return headerSeen || data.length == 0;
+    }
+
+    private void applyRecord(String op, JSONObject record) throws JSONException {
+        switch (op) {
+            case OP_PUT: {
+                JSONObject entry = record.getJSONObject("entry");
+                applyPut(entry.getString(KEY_FIELD), entry);
+                break;
+            }
+            case OP_UPDATE: {
+                String key = record.getString("key");
+                if (entries.containsKey(key)) {
+                    applyUpdate(key, record.getJSONObject("fields"));
+                }
+                break;
+            }
+            case OP_REMOVE:
+                applyRemove(record.getString("key"));
+                break;
+            default:
+                throw new JSONException("Unknown journal op: " + op);
+        }
+        lastUpdated = record.optLong("ts", lastUpdated);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // In-memory state
+
+    private void applyPut(String key, JSONObject entry) {
+        applyRemove(key);
+        entries.put(key, entry);
+        keysFor(entry.optString(STATUS_FIELD, "")).add(key);
+    }
+
+    private JSONObject applyUpdate(String key, JSONObject fields) throws JSONException {
+        JSONObject entry = entries.get(key);
+        String oldStatus = entry.optString(STATUS_FIELD, "");
+        Iterator<String> names = fields.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            entry.put(name, fields.get(name));
+        }
+        String newStatus = entry.optString(STATUS_FIELD, "");
+        if (!oldStatus.equals(newStatus)) {
+            keysFor(oldStatus).remove(key);
+            keysFor(newStatus).add(key);
+        }
+        return entry;
+    }
+
+    private JSONObject applyRemove(String key) {
+        JSONObject removed = entries.remove(key);
+        if (removed != null) {
+            keysFor(removed.optString(STATUS_FIELD, "")).remove(key);
+        }
+        return removed;
+    }
+
+    private LinkedHashSet<String> keysFor(String status) {
+        LinkedHashSet<String> keys = keysByStatus.get(status);
+        if (keys == null) {
+            keys = new LinkedHashSet<>();
+            keysByStatus.put(status, keys);
+        }
+        return keys;
+    }
+
+    private static JSONObject copy(JSONObject source) {
+        try {
+            return new JSONObject(source.toString());
+        } catch (JSONException e) {
+            // A JSONObject always re-parses its own serialization
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Disk
+
+    private void append(JSONObject record) throws IOException, JSONException {
+        long now = System.currentTimeMillis();
+        record.put("ts", now);
+        writeRecord(record);
+        lastUpdated = now;
+        journalRecords++;
+    }
+
+    /**
+     * Compact once the journal holds clearly more records than there are live entries.
+     * Called after a record has been both appended and applied, so the snapshot includes it.
+     */
+    private void maybeCompact() throws IOException {
+        if (journalRecords >= Math.max(MIN_COMPACT_RECORDS, 2 * entries.size())) {
+            compact();
+        }
+    }
+
+    private void writeRecord(JSONObject record) throws IOException {
+        if (journalOut == null) {
+            journalOut = new FileOutputStream(journalFile, true);
+        }
+        journalOut.write((record.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        if (syncWrites) {
+            journalOut.getFD().sync();
+        }
+    }
+
+    private void resetJournal() throws IOException {
+        close();
+        journalOut = new FileOutputStream(journalFile, false);
+        journalRecords = 0;
+        try {
+            writeRecord(new JSONObject().put("op", OP_BEGIN).put("generation", generation));
+        } catch (JSONException e) {
+            throw new IOException("Failed to write journal header", e);
+        }
+    }
+
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        JSONArray items = new JSONArray();
+        for (JSONObject entry : entries.values()) {
+            items.put(entry);
+        }
+        JSONObject manifest = new JSONObject();
+        try {
+            manifest.put(itemsField, items);
+            manifest.put("lastUpdated", lastUpdated);
+            manifest.put(GENERATION_FIELD, snapshotGeneration);
+        } catch (JSONException e) {
+            throw new IOException("Failed to build manifest snapshot", e);
+        }
+
+        File tempFile = new File(manifestFile.getParentFile(), manifestFile.getName() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(tempFile)) {
+            output.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+            output.getFD().sync();
+        }
+        if (!tempFile.renameTo(manifestFile)) {
+            throw new IOException("Failed to update manifest file (rename failed)");
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = input.read(data, offset, data.length - offset)) != -1) {
+                offset += read;
+            }
+            return new String(data, 0, offset, StandardCharsets.UTF_8);
+        }
+    }
+}
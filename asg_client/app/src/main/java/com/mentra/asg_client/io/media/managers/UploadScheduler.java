@@ -0,0 +1,319 @@
+package com.mentra.asg_client.io.media.managers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which queued uploads run, in what order and how many at once.
+ *
+ * Pending uploads are ordered by: SDK requests before background ones, then smaller files
+ * before larger ones, then queue order. Up to {@link Builder#setMaxConcurrent} uploads run in
+ * parallel. While a live stream is active the limit drops to {@link Builder#setStreamingConcurrent}
+ * and files larger than {@link Builder#setMaxBytesWhileStreaming} are held back until the stream
+ * ends, so uploads don't compete with the stream for uplink bandwidth.
+ *
+ * The scheduler only tracks slots; the actual transfer is done by the {@link Uploader}, which must
+ * call the supplied completion exactly once when the upload finishes (successfully or not).
+ *
+ * All methods are thread-safe.
+ */
+public class UploadScheduler {
+
+    /**
+     * Starts a transfer. Called on the scheduler thread; must not block for the duration of the upload.
+     */
+    public interface Uploader {
+        void startUpload(UploadTask task, Runnable onComplete);
+    }
+
+    /**
+     * Reports whether a live stream is currently using the uplink.
+     */
+    public interface StreamingProbe {
+        boolean isStreaming();
+    }
+
+    /**
+     * A single pending upload.
+     */
+    public static final class UploadTask {
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+
+        private final String key;
+        private final long sizeBytes;
+        private final boolean sdkRequest;
+        private final long notBeforeMs;
+        private final long sequence = SEQUENCE.getAndIncrement();
+
+        /**
+         * @param key         Unique key (the queued file path)
+         * @param sizeBytes   Size of the file to upload
+         * @param sdkRequest  true if an app is waiting on this upload through the SDK
+         * @param notBeforeMs Earliest start time (epoch ms) for retry backoff, or 0 to start immediately
+         */
+        public UploadTask(String key, long sizeBytes, boolean sdkRequest, long notBeforeMs) {
+            this.key = key;
+            this.sizeBytes = sizeBytes;
+            this.sdkRequest = sdkRequest;
+            this.notBeforeMs = notBeforeMs;
+        }
+
+        public String getKey() { return key; }
+        public long getSizeBytes() { return sizeBytes; }
+        public boolean isSdkRequest() { return sdkRequest; }
+        public long getNotBeforeMs() { return notBeforeMs; }
+    }
+
+    private static int compare(UploadTask a, UploadTask b) {
+        if (a.sdkRequest != b.sdkRequest) {
+            return a.sdkRequest ? -1 : 1;
+        }
+        if (a.sizeBytes != b.sizeBytes) {
+            return Long.compare(a.sizeBytes, b.sizeBytes);
+        }
+        return Long.compare(a.sequence, b.sequence);
+    }
+
+    private final Uploader uploader;
+    private final StreamingProbe streamingProbe;
+    private final ScheduledExecutorService executor;
+    private final int streamingConcurrent;
+    private final long maxBytesWhileStreaming;
+    private final long streamRecheckMs;
+    private final long retryBaseDelayMs;
+    private final long retryMaxDelayMs;
+
+    private final TreeSet<UploadTask> pending = new TreeSet<>(UploadScheduler::compare);
+    private final Set<String> knownKeys = new HashSet<>();
+    private int maxConcurrent;
+    private int inFlight;
+    private boolean throttled;
+    private long wakeAtMs = Long.MAX_VALUE;
+
+    private UploadScheduler(Builder builder) {
+        this.uploader = builder.uploader;
+        this.streamingProbe = builder.streamingProbe;
+        this.maxConcurrent = builder.maxConcurrent;
+        this.streamingConcurrent = builder.streamingConcurrent;
+        this.maxBytesWhileStreaming = builder.maxBytesWhileStreaming;
+        this.streamRecheckMs = builder.streamRecheckMs;
+        this.retryBaseDelayMs = builder.retryBaseDelayMs;
+        this.retryMaxDelayMs = builder.retryMaxDelayMs;
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+        } else {
+            ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "UploadScheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.setRemoveOnCancelPolicy(true);
+            this.executor = pool;
+        }
+    }
+
+    /**
+     * Add an upload. Ignored if an upload with the same key is already pending or running.
+     *
+     * @return true if the task was added
+     */
+    public boolean submit(UploadTask task) {
+        synchronized (this) {
+            if (!knownKeys.add(task.key)) {
+                return false;
+            }
+            pending.add(task);
+        }
+        executor.execute(this::dispatch);
+        return true;
+    }
+
+    /**
+     * Re-evaluate pending uploads now, e.g. after a stream stopped or connectivity returned.
+     */
+    public void kick() {
+        executor.execute(this::dispatch);
+    }
+
+    /**
+     * Change the parallel upload limit used while no stream is live.
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        synchronized (this) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+        }
+        kick();
+    }
+
+    /**
+     * Retry backoff for an upload that has failed {@code retryCount} times: doubles from the base
+     * delay on each attempt, capped at the maximum delay.
+     */
+    public long getRetryDelayMs(int retryCount) {
+        if (retryCount <= 0) {
+            return 0;
+        }
+        int shift = Math.min(retryCount - 1, 30);
+        long delay = retryBaseDelayMs << shift;
+        return delay <= 0 || delay > retryMaxDelayMs ? retryMaxDelayMs : delay;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    /**
+     * @return true if the last dispatch ran with the reduced limits because a stream was live
+     */
+    public synchronized boolean isThrottled() {
+        return throttled;
+    }
+
+    /**
+     * Stop scheduling. Running uploads are not cancelled.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void dispatch() {
+        List<UploadTask> toStart = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            boolean streaming = streamingProbe != null && streamingProbe.isStreaming();
+            int limit = streaming ? Math.min(streamingConcurrent, maxConcurrent) : maxConcurrent;
+            throttled = streaming;
+
+            long nextWake = Long.MAX_VALUE;
+            Iterator<UploadTask> it = pending.iterator();
+            while (it.hasNext() && inFlight < limit) {
+                UploadTask task = it.next();
+                if (task.notBeforeMs > now) {
+                    nextWake = Math.min(nextWake, task.notBeforeMs);
+                    continue;
+                }
+                if (streaming && task.sizeBytes > maxBytesWhileStreaming) {
+                    nextWake = Math.min(nextWake, now + streamRecheckMs);
+                    continue;
+                }
+                it.remove();
+                inFlight++;
+                toStart.add(task);
+            }
+
+            // Uploads waiting on backoff or a live stream need a timer; slot-bound ones wake on completion
+            if (nextWake != Long.MAX_VALUE && nextWake < wakeAtMs) {
+                wakeAtMs = nextWake;
+                executor.schedule(this::onWake, Math.max(0, nextWake - now), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        for (UploadTask task : toStart) {
+            AtomicBoolean completed = new AtomicBoolean(false);
+            Runnable onComplete = () -> {
+                if (completed.compareAndSet(false, true)) {
+                    complete(task);
+                }
+            };
+            try {
+                uploader.startUpload(task, onComplete);
+            } catch (RuntimeException e) {
+                onComplete.run();
+            }
+        }
+    }
+
+    private void onWake() {
+        synchronized (this) {
+            wakeAtMs = Long.MAX_VALUE;
+        }
+        dispatch();
+    }
+
+    private void complete(UploadTask task) {
+        synchronized (this) {
+            inFlight--;
+            knownKeys.remove(task.key);
+        }
+        if (!executor.isShutdown()) {
+            executor.execute(this::dispatch);
+        }
+    }
+
+    /**
+     * Builder for {@link UploadScheduler}.
+     */
+    public static class Builder {
+        private final Uploader uploader;
+        private StreamingProbe streamingProbe;
+        private ScheduledExecutorService executor;
+        private int maxConcurrent = 3;
+        private int streamingConcurrent = 1;
+        private long maxBytesWhileStreaming = 2 * 1024 * 1024;
+        private long streamRecheckMs = 5000;
+        private long retryBaseDelayMs = 5000;
+        private long retryMaxDelayMs = 5 * 60 * 1000;
+
+        public Builder(Uploader uploader) {
+            this.uploader = uploader;
+        }
+
+        public Builder setStreamingProbe(StreamingProbe streamingProbe) {
+            this.streamingProbe = streamingProbe;
+            return this;
+        }
+
+        /** Parallel uploads while no stream is live (default 3). */
+        public Builder setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            return this;
+        }
+
+        /** Parallel uploads while a stream is live (default 1). */
+        public Builder setStreamingConcurrent(int streamingConcurrent) {
+            this.streamingConcurrent = Math.max(1, streamingConcurrent);
+            return this;
+        }
+
+        /** Largest file started while a stream is live; larger ones wait for it to end (default 2MB). */
+        public Builder setMaxBytesWhileStreaming(long maxBytesWhileStreaming) {
+            this.maxBytesWhileStreaming = maxBytesWhileStreaming;
+            return this;
+        }
+
+        /** How often held-back uploads re-check whether the stream has ended (default 5s). */
+        public Builder setStreamRecheckMs(long streamRecheckMs) {
+            this.streamRecheckMs = streamRecheckMs;
+            return this;
+        }
+
+        /** First retry delay and its cap (defaults 5s and 5min). */
+        public Builder setRetryBackoff(long baseDelayMs, long maxDelayMs) {
+            this.retryBaseDelayMs = baseDelayMs;
+            this.retryMaxDelayMs = maxDelayMs;
+            return this;
+        }
+
+        Builder setExecutor(ScheduledExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public UploadScheduler build() {
+            return new UploadScheduler(this);
+        }
+    }
+}
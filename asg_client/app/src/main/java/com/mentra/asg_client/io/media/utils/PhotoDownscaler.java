@@ -0,0 +1,339 @@
+package com.mentra.asg_client.io.media.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Decodes a JPEG straight to a smaller size for compression, without holding the full-resolution
+ * frame.
+ * <p>
+ * The decoder subsamples by the largest power of two that keeps the image at least as large as
+ * the target ({@code inSampleSize}); the rest of the scaling is a filtered draw into the output.
+ * If even the subsampled frame would be large (e.g. a 75% resize, where subsampling can't help),
+ * the source is decoded in horizontal strips with {@link BitmapRegionDecoder} and drawn into the
+ * output strip by strip, so the peak is the output plus one strip. Decode, strip and output
+ * bitmaps are kept up to {@link #MAX_POOLED_BYTES} and reused through {@code inBitmap} and
+ * {@link Bitmap#reconfigure}, so back-to-back photos at the same resolution allocate nothing.
+ * <p>
+ * Not thread safe: use one instance per worker thread.
+ */
+public class PhotoDownscaler {
+    private static final String TAG = "PhotoDownscaler";
+
+    /** Bitmaps up to this size are kept for the next photo; larger ones are recycled */
+    static final int MAX_POOLED_BYTES = 4 * 1024 * 1024;
+    /** Subsampled frames larger than this are decoded in strips */
+    static final int MAX_WHOLE_DECODE_BYTES = MAX_POOLED_BYTES;
+    /** Target size of one decoded strip */
+    static final int STRIP_BYTES = 1024 * 1024;
+    /** Extra subsampled rows decoded above and below each strip so filtering is seamless */
+    private static final int STRIP_OVERLAP_ROWS = 2;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * Chooses the output size from the source size
+     */
+    public interface SizePolicy {
+        /** @return {width, height} of the output */
+        int[] outputSize(int width, int height);
+    }
+
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Bitmap pooledDecode;
+    private Bitmap pooledOutput;
+    private long liveBytes;
+    private long peakBytes;
+
+    /**
+     * Fit within a box keeping the aspect ratio
+     */
+    public static int[] fitWithin(int width, int height, int maxWidth, int maxHeight) {
+        int targetWidth = maxWidth;
+        int targetHeight = maxHeight;
+        float aspectRatio = (float) width / height;
+        if (aspectRatio > maxWidth / (float) maxHeight) {
+            targetHeight = (int) (maxWidth / aspectRatio);
+        } else {
+            targetWidth = (int) (maxHeight * aspectRatio);
+        }
+        return new int[]{Math.max(1, targetWidth), Math.max(1, targetHeight)};
+    }
+
+    /**
+     * Scale both sides by a ratio, keeping the aspect ratio
+     */
+    public static int[] scaleBy(int width, int height, float ratio) {
+        int targetWidth = (int) (width * ratio);
+        int targetHeight = (int) (height * ratio);
+        float aspectRatio = (float) width / height;
+        if (aspectRatio > 1) {
+            targetHeight = (int) (targetWidth / aspectRatio);
+        } else {
+            targetWidth = (int) (targetHeight * aspectRatio);
+        }
+        return new int[]{Math.max(1, targetWidth), Math.max(1, targetHeight)};
+    }
+
+    /**
+     * Largest power of two the decoder can subsample by and still produce at least
+     * {@code targetWidth} x {@code targetHeight}
+     */
+    public static int sampleSizeFor(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Decode {@code path} at the size chosen by {@code policy}.
+     * @return The scaled image, or null if the file can't be decoded. Hand it back with
+     *         {@link #release} once it has been encoded.
+     */
+    public Bitmap decode(String path, SizePolicy policy) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        int width = bounds.outWidth;
+        int height = bounds.outHeight;
+        int[] size = policy.outputSize(width, height);
+        int sampleSize = sampleSizeFor(width, height, size[0], size[1]);
+        int sampledWidth = ceilDiv(width, sampleSize);
+        int sampledHeight = ceilDiv(height, sampleSize);
+        long sampledBytes = (long) sampledWidth * sampledHeight * BYTES_PER_PIXEL;
+
+        Log.d(TAG, "Decoding " + width + "x" + height + " -> " + size[0] + "x" + size[1] +
+                   " (inSampleSize " + sampleSize + (sampledBytes > MAX_WHOLE_DECODE_BYTES ? ", in strips)" : ")"));
+
+        if (sampledBytes > MAX_WHOLE_DECODE_BYTES) {
+            return decodeInStrips(path, width, height, sampleSize, size[0], size[1]);
+        }
+
+        Bitmap sampled = decodeWhole(path, sampleSize, sampledBytes);
+        if (sampled == null) {
+            return null;
+        }
+        if (sampled.getWidth() == size[0] && sampled.getHeight() == size[1]) {
+            // Subsampling alone hit the target; the decode bitmap is the output
+            return sampled;
+        }
+        Bitmap output = obtainOutput(size[0], size[1]);
+        new Canvas(output).drawBitmap(sampled, null, new RectF(0, 0, size[0], size[1]), paint);
+        recycleOrPool(sampled, true);
+        return output;
+    }
+
+    /**
+     * Return a bitmap from {@link #decode}; it may be reused for the next photo
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap != null) {
+            recycleOrPool(bitmap, false);
+        }
+    }
+
+    /**
+     * Drop pooled bitmaps
+     */
+    public void trim() {
+        if (pooledDecode != null) {
+            untrack(pooledDecode);
+            pooledDecode.recycle();
+            pooledDecode = null;
+        }
+        if (pooledOutput != null) {
+            untrack(pooledOutput);
+            pooledOutput.recycle();
+            pooledOutput = null;
+        }
+    }
+
+    /**
+     * Most bitmap memory this instance held at once, including pooled bitmaps
+     */
+    public long getPeakBitmapBytes() {
+        return peakBytes;
+    }
+
+    public void resetPeakBitmapBytes() {
+        peakBytes = liveBytes;
+    }
+
+    private Bitmap decodeWhole(String path, int sampleSize, long bytes) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        Bitmap reusable = takePooledDecode(bytes);
+        options.inBitmap = reusable;
+        Bitmap sampled;
+        try {
+            sampled = BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap couldn't be reused after all
+            options.inBitmap = null;
+            sampled = BitmapFactory.decodeFile(path, options);
+        }
+        if (reusable != null && sampled != reusable) {
+            untrack(reusable);
+            reusable.recycle();
+        }
+        if (sampled != null && sampled != reusable) {
+            track(sampled);
+        }
+        return sampled;
+    }
+
+    private Bitmap decodeInStrips(String path, int width, int height, int sampleSize,
+                                 int outWidth, int outHeight) throws IOException {
+        @SuppressWarnings("deprecation")
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(path, false);
+        if (decoder == null) {
+            return null;
+        }
+        Bitmap output = obtainOutput(outWidth, outHeight);
+        Bitmap strip = null;
+        try {
+            Canvas canvas = new Canvas(output);
+            float scaleX = outWidth / (float) width;
+            float scaleY = outHeight / (float) height;
+            int sampledWidth = ceilDiv(width, sampleSize);
+            // Whole subsampled rows per strip, in source rows (a multiple of the sample size)
+            int stripRows = Math.max(16, STRIP_BYTES / (sampledWidth * BYTES_PER_PIXEL)) * sampleSize;
+            int overlap = STRIP_OVERLAP_ROWS * sampleSize;
+            // The region decoder keeps a reused bitmap's size, so it has to fit the tallest region
+            strip = obtainStrip(sampledWidth, ceilDiv(stripRows + 2 * overlap, sampleSize));
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            Rect region = new Rect();
+            Rect decodedRows = new Rect();
+            RectF destination = new RectF();
+
+            for (int top = 0; top < height; top += stripRows) {
+                int bottom = Math.min(height, top + stripRows);
+                region.set(0, Math.max(0, top - overlap), width, Math.min(height, bottom + overlap));
+                options.inBitmap = strip;
+                Bitmap decoded = decoder.decodeRegion(region, options);
+                if (decoded == null) {
+                    throw new IOException("Failed to decode rows " + region.top + "-" + region.bottom);
+                }
+                if (decoded != strip) {
+                    untrack(strip);
+                    strip.recycle();
+                    strip = decoded;
+                    track(strip);
+                }
+                // Only the top-left of the strip holds this region; map it onto the region's
+                // place in the output and draw just this strip's own rows
+                decodedRows.set(0, 0, Math.min(decoded.getWidth(), sampledWidth),
+                        Math.min(decoded.getHeight(), ceilDiv(region.height(), sampleSize)));
+                destination.set(0, region.top * scaleY, outWidth, region.bottom * scaleY);
+                canvas.save();
+                canvas.clipRect(0, top * scaleY, outWidth, bottom == height ? outHeight : bottom * scaleY);
+                canvas.drawBitmap(decoded, decodedRows, destination, paint);
+                canvas.restore();
+            }
+        } catch (IOException | RuntimeException e) {
+            release(output);
+            throw e;
+        } finally {
+            if (strip != null) {
+                recycleOrPool(strip, true);
+            }
+            decoder.recycle();
+        }
+        return output;
+    }
+
+    /**
+     * A mutable strip bitmap of exactly the given size, reusing the pooled decode bitmap
+     */
+    private Bitmap obtainStrip(int width, int height) {
+        Bitmap reusable = takePooledDecode((long) width * height * BYTES_PER_PIXEL);
+        if (reusable != null) {
+            reusable.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            return reusable;
+        }
+        Bitmap strip = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        track(strip);
+        return strip;
+    }
+
+    /**
+     * A mutable bitmap of exactly the given size, reusing the pooled output when it is big enough
+     */
+    private Bitmap obtainOutput(int width, int height) {
+        long bytes = (long) width * height * BYTES_PER_PIXEL;
+        if (pooledOutput != null) {
+            Bitmap reusable = pooledOutput;
+            pooledOutput = null;
+            if (reusable.getAllocationByteCount() >= bytes) {
+                reusable.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                reusable.eraseColor(Color.BLACK);
+                return reusable;
+            }
+            untrack(reusable);
+            reusable.recycle();
+        }
+        Bitmap output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        track(output);
+        return output;
+    }
+
+    private Bitmap takePooledDecode(long bytes) {
+        Bitmap reusable = pooledDecode;
+        pooledDecode = null;
+        if (reusable != null && reusable.getAllocationByteCount() < bytes) {
+            untrack(reusable);
+            reusable.recycle();
+            return null;
+        }
+        return reusable;
+    }
+
+    private void recycleOrPool(Bitmap bitmap, boolean decodeBitmap) {
+        if (bitmap.isMutable() && bitmap.getAllocationByteCount() <= MAX_POOLED_BYTES) {
+            Bitmap previous = decodeBitmap ? pooledDecode : pooledOutput;
+            if (previous == null || previous.getAllocationByteCount() < bitmap.getAllocationByteCount()) {
+                if (previous != null) {
+                    untrack(previous);
+                    previous.recycle();
+                }
+                if (decodeBitmap) {
+                    pooledDecode = bitmap;
+                } else {
+                    pooledOutput = bitmap;
+                }
+                return;
+            }
+        }
+        untrack(bitmap);
+        bitmap.recycle();
+    }
+
+    private void track(Bitmap bitmap) {
+        liveBytes += bitmap.getAllocationByteCount();
+        peakBytes = Math.max(peakBytes, liveBytes);
+    }
+
+    private void untrack(Bitmap bitmap) {
+        liveBytes -= bitmap.getAllocationByteCount();
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -35,7 +35,6 @@ import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -44,6 +43,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import com.mentra.asg_client.io.ota.session.OtaSessionManager;
 import com.mentra.asg_client.io.ota.utils.FirmwareDownloadException;
 import com.mentra.asg_client.io.ota.utils.OtaConstants;
+import com.mentra.asg_client.io.ota.utils.OtaDownloader;
 import com.mentra.asg_client.settings.AsgSettings;
 import com.mentra.asg_client.service.utils.SysProp;
 import com.mentra.asg_client.utils.WakeLockManager;
@@ -373,6 +373,9 @@ public class OtaHelper {
     // Wakelock timeout for OTA process (10 minutes)
     private static final long OTA_WAKELOCK_TIMEOUT_MS = 600000;
     private static final int REACHABILITY_TIMEOUT_MS = 5000;
+    // APKs and MTK images at least this big are fetched over several range requests at once
+    private static final int PARALLEL_DOWNLOAD_RANGES = 3;
+    private static final long PARALLEL_DOWNLOAD_MIN_BYTES = 16L * 1024 * 1024;
 
     /**
      * Quick HEAD request to CDN to verify internet reachability before starting OTA.
@@ -1256,7 +1259,8 @@ public class OtaHelper {
         return downloadApk(urlStr, json, context, "asg_client_update.apk");
     }
     
-    // Modified to accept custom filename for different apps. Single download attempt — no retries.
+    // Modified to accept custom filename for different apps. Single download call; dropped connections
+    // are resumed inside it by OtaDownloader.
 
     public boolean downloadApk(String urlStr, JSONObject json, Context context, String filename) {
         try {
@@ -1269,12 +1273,8 @@ public class OtaHelper {
                 DownloadProgressEvent.DownloadStatus.FAILED, "Verification failed"));
             return false;
         } catch (Exception e) {
+            // The partial download stays on disk and the next attempt resumes it
             Log.e(TAG, "APK download failed", e);
-            File partialFile = new File(OtaConstants.BASE_DIR, filename);
-            if (partialFile.exists()) {
-                partialFile.delete();
-                Log.d(TAG, "Cleaned up partial download file");
-            }
             String errorCode = classifyDownloadError(e);
             EventBus.getDefault().post(new DownloadProgressEvent(
                 DownloadProgressEvent.DownloadStatus.FAILED, errorCode));
@@ -1283,77 +1283,82 @@ public class OtaHelper {
         }
     }
     
-    // Internal download method (original logic)
+    // Internal download method. A dropped connection resumes where it stopped (see OtaDownloader);
+    // a failed attempt leaves the partial file for the next check to continue.
     private boolean downloadApkInternal(String urlStr, JSONObject json, Context context, String filename) throws Exception {
-        File asgDir = new File(OtaConstants.BASE_DIR);
-
-        if (!asgDir.exists()) {
-            boolean created = asgDir.mkdirs();
-            Log.d(TAG, "ASG directory created: " + created);
-        }
-
-        File apkFile = new File(asgDir, filename);
+        File apkFile = new File(OtaConstants.BASE_DIR, filename);
 
         Log.d(TAG, "Download started ...");
-        // Download new APK file
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setConnectTimeout(OtaConstants.CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(OtaConstants.READ_TIMEOUT_MS);
-        conn.connect();
-
-        InputStream in = conn.getInputStream();
-        FileOutputStream out = new FileOutputStream(apkFile);
-
-        byte[] buffer = new byte[4096];
-        int len;
-        long total = 0;
-        long fileSize = conn.getContentLength();
-        int lastProgress = 0;
-
-        Log.d(TAG, "APK download started, file size: " + fileSize + " bytes");
 
         // Set current update stage for phone progress
         currentUpdateStage = "download";
         currentUpdateType = "apk";
 
-        // Now that we have the real file size, tell the phone the download is starting.
-        Log.i(TAG, "📥 Sending download STARTED to phone");
-        sendProgressToPhone("download", 0, 0, fileSize, "STARTED", null);
-
-        // Emit download started event
-        EventBus.getDefault().post(DownloadProgressEvent.createStarted(fileSize));
+        DownloadProgressReporter reporter = new DownloadProgressReporter("APK", 5, true);
+        OtaDownloader.Result result = new OtaDownloader.Builder(urlStr, apkFile)
+                .setParallelRanges(PARALLEL_DOWNLOAD_RANGES, PARALLEL_DOWNLOAD_MIN_BYTES)
+                .setProgressListener(reporter)
+                .build()
+                .download();
 
-        while ((len = in.read(buffer)) > 0) {
-            out.write(buffer, 0, len);
-            total += len;
+        Log.d(TAG, "APK downloaded to: " + apkFile.getAbsolutePath() + " (sha256 " + result.sha256 + ")");
 
-            // Calculate progress percentage
-            int progress = fileSize > 0 ? (int) (total * 100 / fileSize) : 0;
+        // APK hash check disabled – downloaded APK is accepted without integrity verification.
+        Log.w(TAG, "WARNING: OTA APK SHA256 hash verification is DISABLED. Downloaded APK is not integrity-checked.");
+        EventBus.getDefault().post(DownloadProgressEvent.createFinished(result.size));
+        sendProgressToPhone("download", 100, result.size, result.size, "FINISHED", null);
+        createMetaDataJson(json, context);
+        return true;
+    }
 
-            // Log progress at 5% intervals and emit progress events
-            if (progress >= lastProgress + 5 || progress == 100) {
-                Log.d(TAG, "Download progress: " + progress + "% (" + total + "/" + fileSize + " bytes)");
-                // Emit progress event
-                EventBus.getDefault().post(new DownloadProgressEvent(DownloadProgressEvent.DownloadStatus.PROGRESS, progress, total, fileSize));
+    /**
+     * Logs OtaDownloader progress every stepPercent. For APKs it also reports STARTED/PROGRESS
+     * to the phone and posts DownloadProgressEvents.
+     */
+    private class DownloadProgressReporter implements OtaDownloader.ProgressListener {
+        private final String label;
+        private final int stepPercent;
+        private final boolean notifyPhone;
+        private int lastProgress = 0;
+
+        DownloadProgressReporter(String label, int stepPercent, boolean notifyPhone) {
+            this.label = label;
+            this.stepPercent = stepPercent;
+            this.notifyPhone = notifyPhone;
+        }
+
+        @Override
+        public void onStart(long totalBytes, long resumedBytes) {
+            Log.d(TAG, label + " download started, file size: " + totalBytes + " bytes"
+                    + (resumedBytes > 0 ? ", resuming at " + resumedBytes : ""));
+            if (notifyPhone) {
+                // Now that we have the real file size, tell the phone the download is starting.
+                Log.i(TAG, "📥 Sending download STARTED to phone");
+                sendProgressToPhone("download", 0, 0, totalBytes, "STARTED", null);
+                EventBus.getDefault().post(DownloadProgressEvent.createStarted(totalBytes));
+            }
+        }
+
+        @Override
+        public void onProgress(long downloadedBytes, long totalBytes) {
+            int progress = totalBytes > 0 ? (int) (downloadedBytes * 100 / totalBytes) : 0;
+            if (progress >= lastProgress + stepPercent || (progress == 100 && lastProgress != 100)) {
+                Log.d(TAG, label + " download progress: " + progress + "% (" + downloadedBytes + "/" + totalBytes + " bytes)");
+                onStep(progress, downloadedBytes, totalBytes);
                 lastProgress = progress;
             }
-
-            // Send progress to phone (throttled internally)
-            sendProgressToPhone("download", progress, total, fileSize, "PROGRESS", null);
+            if (notifyPhone) {
+                // Send progress to phone (throttled internally)
+                sendProgressToPhone("download", progress, downloadedBytes, totalBytes, "PROGRESS", null);
+            }
         }
 
-        out.close();
-        in.close();
-
-        Log.d(TAG, "APK downloaded to: " + apkFile.getAbsolutePath());
-
-        // APK hash check disabled – downloaded APK is accepted without integrity verification.
-        Log.w(TAG, "WARNING: OTA APK SHA256 hash verification is DISABLED. Downloaded APK is not integrity-checked.");
-        EventBus.getDefault().post(DownloadProgressEvent.createFinished(fileSize));
-        sendProgressToPhone("download", 100, fileSize, fileSize, "FINISHED", null);
-        createMetaDataJson(json, context);
-        return true;
+        protected void onStep(int progress, long downloadedBytes, long totalBytes) {
+            if (notifyPhone) {
+                EventBus.getDefault().post(new DownloadProgressEvent(
+                    DownloadProgressEvent.DownloadStatus.PROGRESS, progress, downloadedBytes, totalBytes));
+            }
+        }
     }
 
     private boolean verifyApkFile(String apkPath, JSONObject jsonObject) {
@@ -1895,25 +1900,23 @@ public class OtaHelper {
             sendProgressToPhone("download", 0, 0, 0, "FAILED", nonRetryable.getErrorCode());
             return false;
         } catch (Exception e) {
+            // The partial download stays on disk and the next attempt resumes it
             Log.e(TAG, "BES firmware download failed", e);
-            File partialFile = new File(OtaConstants.BASE_DIR, OtaConstants.BES_FIRMWARE_FILENAME);
-            if (partialFile.exists()) {
-                partialFile.delete();
-                Log.d(TAG, "Cleaned up partial BES firmware file");
-            }
             sendProgressToPhone("download", 0, 0, 0, "FAILED", classifyDownloadError(e));
             return false;
         }
     }
 
     private boolean downloadBesFirmwareInternal(String firmwareUrl, JSONObject firmwareInfo, Context context) throws Exception {
-        File asgDir = new File(OtaConstants.BASE_DIR);
-        if (!asgDir.exists()) {
-            boolean created = asgDir.mkdirs();
-            Log.d(TAG, "ASG directory created: " + created);
+        String expectedHash = firmwareInfo.optString("sha256", "");
+        if (expectedHash.isEmpty()) {
+            throw new FirmwareDownloadException(
+                FirmwareDownloadException.CODE_VERIFY_FAILED,
+                "BES firmware has no sha256 to verify against"
+            );
         }
-        
-        File firmwareFile = new File(asgDir, OtaConstants.BES_FIRMWARE_FILENAME);
+
+        File firmwareFile = new File(OtaConstants.BASE_DIR, OtaConstants.BES_FIRMWARE_FILENAME);
         
         if (firmwareFile.exists()) {
             Log.d(TAG, "Deleting existing firmware file");
@@ -1922,112 +1925,20 @@ public class OtaHelper {
         
         Log.d(TAG, "Downloading BES firmware from: " + firmwareUrl);
 
-        URL url = new URL(firmwareUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setConnectTimeout(OtaConstants.CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(OtaConstants.READ_TIMEOUT_MS);
-        conn.connect();
-
-        // 2 MiB hard cap. Server-advertised content-length is checked first; we also
-        // enforce the cap during the streaming loop so a missing/lying header
-        // (Content-Length: -1) cannot drain disk.
-        final long maxBytes = 2L * 1024 * 1024;
-        long fileSize = conn.getContentLength();
-
-        if (fileSize > maxBytes) {
-            conn.disconnect();
-            throw new FirmwareDownloadException(
-                FirmwareDownloadException.CODE_FILE_TOO_LARGE,
-                "BES firmware file too large: " + fileSize + " bytes (max " + maxBytes + ")"
-            );
-        }
-
-        InputStream in = conn.getInputStream();
-        FileOutputStream out = new FileOutputStream(firmwareFile);
-
-        byte[] buffer = new byte[4096];
-        int len;
-        long total = 0;
-        int lastProgress = 0;
-
-        Log.d(TAG, "Downloading BES firmware, size: " + fileSize + " bytes");
-
         currentUpdateType = "bes";
 
-        try {
-            while ((len = in.read(buffer)) > 0) {
-                total += len;
-                if (total > maxBytes) {
-                    throw new FirmwareDownloadException(
-                        FirmwareDownloadException.CODE_FILE_TOO_LARGE,
-                        "BES firmware exceeded " + maxBytes + " bytes during streaming (Content-Length=" + fileSize + ")"
-                    );
-                }
-                out.write(buffer, 0, len);
-
-                int progress = fileSize > 0 ? (int) (total * 100 / fileSize) : 0;
-                if (progress >= lastProgress + 10 || progress == 100) {
-                    Log.d(TAG, "BES firmware download progress: " + progress + "%");
-                    lastProgress = progress;
-                }
-            }
-        } finally {
-            try { out.close(); } catch (Exception ignored) {}
-            try { in.close(); } catch (Exception ignored) {}
-            conn.disconnect();
-        }
-
-        Log.d(TAG, "BES firmware downloaded to: " + firmwareFile.getAbsolutePath());
-
-        boolean verified = verifyFirmwareFile(firmwareFile.getAbsolutePath(), firmwareInfo);
-        if (verified) {
-            Log.i(TAG, "Firmware file verified successfully");
-            return true;
-        } else {
-            firmwareFile.delete();
-            throw new FirmwareDownloadException(
-                FirmwareDownloadException.CODE_VERIFY_FAILED,
-                "BES firmware sha256 verification failed"
-            );
-        }
-    }
-    
-    /**
-     * Verify BES firmware file integrity using SHA256
-     * @param filePath Path to firmware file
-     * @param firmwareInfo JSON metadata containing expected SHA256
-     * @return true if hash matches
-     */
-    private boolean verifyFirmwareFile(String filePath, JSONObject firmwareInfo) {
-        try {
-            String expectedHash = firmwareInfo.getString("sha256");
-
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            InputStream is = new FileInputStream(filePath);
-            byte[] buffer = new byte[4096];
-            int read;
-            while ((read = is.read(buffer)) != -1) {
-                digest.update(buffer, 0, read);
-            }
-            is.close();
-            
-            byte[] hashBytes = digest.digest();
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            String calculatedHash = sb.toString();
-            
-            Log.d(TAG, "Expected firmware SHA256: " + expectedHash);
-            Log.d(TAG, "Calculated firmware SHA256: " + calculatedHash);
-            
-            boolean match = calculatedHash.equalsIgnoreCase(expectedHash);
-            Log.d(TAG, "Firmware SHA256 check " + (match ? "passed" : "failed"));
-            return match;
-        } catch (Exception e) {
-            Log.e(TAG, "Firmware SHA256 check error", e);
-            return false;
-        }
+        // 2 MiB hard cap, checked against Content-Length and again while streaming so a
+        // missing/lying header cannot drain disk. The hash is computed as the bytes arrive;
+        // a mismatch deletes the file.
+        new OtaDownloader.Builder(firmwareUrl, firmwareFile)
+                .setMaxBytes(2L * 1024 * 1024)
+                .setExpectedSha256(expectedHash)
+                .setProgressListener(new DownloadProgressReporter("BES firmware", 10, false))
+                .build()
+                .download();
+
+        Log.i(TAG, "BES firmware downloaded and verified: " + firmwareFile.getAbsolutePath());
+        return true;
     }
     
     // ========== MTK Firmware Update Methods ==========
@@ -2201,12 +2112,8 @@ public class OtaHelper {
             sendProgressToPhone("download", 0, 0, 0, "FAILED", nonRetryable.getErrorCode());
             return false;
         } catch (Exception e) {
+            // The partial download stays on disk and the next attempt resumes it
             Log.e(TAG, "MTK firmware download failed", e);
-            File partialFile = new File(OtaConstants.BASE_DIR, OtaConstants.MTK_FIRMWARE_FILENAME);
-            if (partialFile.exists()) {
-                partialFile.delete();
-                Log.d(TAG, "Cleaned up partial MTK firmware file");
-            }
             sendProgressToPhone("download", 0, 0, 0, "FAILED", classifyDownloadError(e));
             return false;
         }
@@ -2214,11 +2121,6 @@ public class OtaHelper {
 
     private boolean downloadMtkFirmwareInternal(String firmwareUrl, JSONObject firmwareInfo, Context context) throws Exception {
         File asgDir = new File(OtaConstants.BASE_DIR);
-        if (!asgDir.exists()) {
-            boolean created = asgDir.mkdirs();
-            Log.d(TAG, "ASG directory created: " + created);
-        }
-        
         File firmwareFile = new File(asgDir, OtaConstants.MTK_FIRMWARE_FILENAME);
         
         if (firmwareFile.exists()) {
@@ -2232,123 +2134,36 @@ public class OtaHelper {
         
         Log.d(TAG, "Downloading MTK firmware from: " + firmwareUrl);
 
-        URL url = new URL(firmwareUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setConnectTimeout(OtaConstants.CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(OtaConstants.READ_TIMEOUT_MS);
-        conn.connect();
-
-        // 100 MiB hard cap. Server-advertised content-length is checked first; the
-        // streaming loop also enforces the cap so a missing/lying header
-        // (Content-Length: -1) cannot drain disk.
-        final long maxBytes = 100L * 1024 * 1024;
-        long fileSize = conn.getContentLength();
-
-        if (fileSize > maxBytes) {
-            conn.disconnect();
-            throw new FirmwareDownloadException(
-                FirmwareDownloadException.CODE_FILE_TOO_LARGE,
-                "MTK firmware file too large: " + fileSize + " bytes (max " + maxBytes + ")"
-            );
+        String expectedHash = firmwareInfo.optString("sha256", "");
+        if (expectedHash.isEmpty()) {
+            Log.w(TAG, "No SHA256 hash provided for MTK firmware - skipping verification");
         }
 
-        InputStream in = conn.getInputStream();
-        FileOutputStream out = new FileOutputStream(firmwareFile);
-
-        byte[] buffer = new byte[8192];
-        int len;
-        long total = 0;
-        int lastProgress = 0;
-
-        Log.d(TAG, "Downloading MTK firmware, size: " + fileSize + " bytes");
-
         currentUpdateType = "mtk";
 
-        try {
-            while ((len = in.read(buffer)) > 0) {
-                total += len;
-                if (total > maxBytes) {
-                    throw new FirmwareDownloadException(
-                        FirmwareDownloadException.CODE_FILE_TOO_LARGE,
-                        "MTK firmware exceeded " + maxBytes + " bytes during streaming (Content-Length=" + fileSize + ")"
-                    );
-                }
-                out.write(buffer, 0, len);
-
-                int progress = fileSize > 0 ? (int) (total * 100 / fileSize) : 0;
-                if (progress >= lastProgress + 10 || progress == 100) {
-                    Log.d(TAG, "MTK firmware download progress: " + progress + "%");
-                    EventBus.getDefault().post(new DownloadProgressEvent(
-                        DownloadProgressEvent.DownloadStatus.PROGRESS,
-                        progress,
-                        total,
-                        fileSize
-                    ));
-                    lastProgress = progress;
-                }
-            }
-        } finally {
-            try { out.close(); } catch (Exception ignored) {}
-            try { in.close(); } catch (Exception ignored) {}
-            conn.disconnect();
-        }
-
-        Log.i(TAG, "MTK firmware downloaded to: " + firmwareFile.getAbsolutePath());
+        // 100 MiB hard cap, checked against Content-Length and again while streaming so a
+        // missing/lying header cannot drain disk. The hash is computed as the bytes arrive;
+        // a mismatch deletes the file.
+        OtaDownloader.Result result = new OtaDownloader.Builder(firmwareUrl, firmwareFile)
+                .setMaxBytes(100L * 1024 * 1024)
+                .setExpectedSha256(expectedHash)
+                .setParallelRanges(PARALLEL_DOWNLOAD_RANGES, PARALLEL_DOWNLOAD_MIN_BYTES)
+                .setProgressListener(new DownloadProgressReporter("MTK firmware", 10, false) {
+                    @Override
+                    protected void onStep(int progress, long downloadedBytes, long totalBytes) {
+                        EventBus.getDefault().post(new DownloadProgressEvent(
+                            DownloadProgressEvent.DownloadStatus.PROGRESS,
+                            progress,
+                            downloadedBytes,
+                            totalBytes
+                        ));
+                    }
+                })
+                .build()
+                .download();
 
-        boolean verified = verifyMtkFirmwareChecksum(firmwareFile.getAbsolutePath(), firmwareInfo);
-        if (verified) {
-            Log.i(TAG, "MTK firmware file verified successfully");
-            return true;
-        } else {
-            firmwareFile.delete();
-            throw new FirmwareDownloadException(
-                FirmwareDownloadException.CODE_VERIFY_FAILED,
-                "MTK firmware sha256 verification failed"
-            );
-        }
-    }
-    
-    /**
-     * Verify MTK firmware zip file checksum
-     * @param filePath Path to firmware file
-     * @param firmwareInfo JSON with expected sha256
-     * @return true if checksum matches
-     */
-    private boolean verifyMtkFirmwareChecksum(String filePath, JSONObject firmwareInfo) {
-        try {
-            String expectedHash = firmwareInfo.optString("sha256", "");
-            if (expectedHash.isEmpty()) {
-                Log.w(TAG, "No SHA256 hash provided for MTK firmware - skipping verification");
-                return true;
-            }
-            
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            FileInputStream is = new FileInputStream(filePath);
-            
-            byte[] buffer = new byte[8192];
-            int read;
-            while ((read = is.read(buffer)) > 0) {
-                digest.update(buffer, 0, read);
-            }
-            is.close();
-            
-            byte[] hashBytes = digest.digest();
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            String calculatedHash = sb.toString();
-            
-            Log.d(TAG, "Expected MTK firmware SHA256: " + expectedHash);
-            Log.d(TAG, "Calculated MTK firmware SHA256: " + calculatedHash);
-            
-            boolean match = calculatedHash.equalsIgnoreCase(expectedHash);
-            Log.d(TAG, "MTK firmware SHA256 check " + (match ? "passed" : "failed"));
-            return match;
-        } catch (Exception e) {
-            Log.e(TAG, "MTK firmware SHA256 check error", e);
-            return false;
-        }
+        Log.i(TAG, "MTK firmware downloaded to: " + firmwareFile.getAbsolutePath() + " (sha256 " + result.sha256 + ")");
+        return true;
     }
     
     // ========== MTK Firmware Update State Management ==========
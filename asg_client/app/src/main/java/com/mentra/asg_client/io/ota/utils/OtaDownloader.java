@@ -0,0 +1,753 @@
+package com.mentra.asg_client.io.ota.utils;
+
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads an OTA artifact so that a dropped connection costs only the bytes in flight.
+ *
+ * - The body is written to {@code <target>.part}; a sidecar {@code <target>.part.state}
+ *   records the byte offset reached (per range), the server's validator (ETag or
+ *   Last-Modified) and the size. After a drop the download continues with an HTTP
+ *   {@code Range} request guarded by {@code If-Range}, both within one
+ *   {@link #download()} call and across calls (e.g. after the process restarted).
+ * - SHA-256 is computed as the bytes are written, so verifying doesn't read the file
+ *   again. (A download resumed from the sidecar hashes the bytes already on disk once.)
+ * - Large artifacts can be fetched over several ranges in parallel. The hash still runs
+ *   over the first range's stream; the later ranges are hashed from the page cache once
+ *   everything has arrived.
+ * - Servers that don't support ranges, or whose file changed, restart the download from
+ *   zero.
+ *
+ * On success the file is moved to the target path. Transient failures ({@link IOException})
+ * keep the partial file and sidecar for the next attempt; a size cap or hash mismatch
+ * ({@link FirmwareDownloadException}) deletes them.
+ */
+public class OtaDownloader {
+    private static final String TAG = OtaConstants.TAG;
+
+    public interface ProgressListener {
+        /**
+         * The size is known and bytes are about to flow
+         * @param totalBytes Size of the artifact, or -1 if the server doesn't say
+         * @param resumedBytes Bytes already on disk from an earlier attempt
+         */
+        void onStart(long totalBytes, long resumedBytes);
+
+        /** Called from the download thread(s) after each write */
+        void onProgress(long downloadedBytes, long totalBytes);
+    }
+
+    /** A completed, verified download */
+    public static final class Result {
+        public final File file;
+        public final long size;
+        public final String sha256;
+        /** HTTP requests it took, including resumed ones */
+        public final int requests;
+
+        Result(File file, long size, String sha256, int requests) {
+            this.file = file;
+            this.size = size;
+            this.sha256 = sha256;
+            this.requests = requests;
+        }
+    }
+
+    static final String PART_SUFFIX = ".part";
+    static final String STATE_SUFFIX = ".part.state";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Sidecar writes are cheap but not free; a drop loses at most this much progress
+    private static final long STATE_SAVE_INTERVAL_BYTES = 512 * 1024;
+
+    private final String url;
+    private final File target;
+    private final File partFile;
+    private final File stateFile;
+    private final long maxBytes;
+    private final String expectedSha256;
+    private final int parallelRanges;
+    private final long minParallelBytes;
+    private final int maxStalledAttempts;
+    private final long retryBaseDelayMs;
+    private final long retryMaxDelayMs;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final ProgressListener listener;
+
+    // Download state, guarded by this
+    private String validator;
+    private long totalBytes = -1;
+    private List<Range> ranges = new ArrayList<>();
+    private long downloadedBytes;
+    private long lastSavedBytes;
+    private int requests;
+
+    private OtaDownloader(Builder builder) {
+        this.url = builder.url;
+        this.target = builder.target;
+        this.partFile = new File(target.getPath() + PART_SUFFIX);
+        this.stateFile = new File(target.getPath() + STATE_SUFFIX);
+        this.maxBytes = builder.maxBytes;
+        this.expectedSha256 = builder.expectedSha256;
+        this.parallelRanges = builder.parallelRanges;
+        this.minParallelBytes = builder.minParallelBytes;
+        this.maxStalledAttempts = builder.maxStalledAttempts;
+        this.retryBaseDelayMs = builder.retryBaseDelayMs;
+        this.retryMaxDelayMs = builder.retryMaxDelayMs;
+        this.connectTimeoutMs = builder.connectTimeoutMs;
+        this.readTimeoutMs = builder.readTimeoutMs;
+        this.listener = builder.listener;
+    }
+
+    /**
+     * Download, resuming from the sidecar if there is one for this URL
+     *
+     * @throws FirmwareDownloadException if the artifact exceeds the size cap or doesn't match
+     *         the expected SHA-256 (partial state is deleted)
+     * @throws IOException if the network kept failing without progress (partial state is kept)
+     */
+    public Result download() throws IOException, FirmwareDownloadException {
+        File dir = target.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+
+        boolean allowParallel = parallelRanges > 1;
+        for (int pass = 0; ; pass++) {
+            try {
+                return downloadOnce(allowParallel);
+            } catch (RestartException e) {
+                if (pass > 0) {
+                    throw new IOException("Download restarted twice: " + e.getMessage(), e);
+                }
+                // The server ignored a range or the file changed: start over in one stream
+                Log.w(TAG, "Restarting download from zero: " + e.getMessage());
+                discardPartial();
+                allowParallel = false;
+            } catch (FirmwareDownloadException e) {
+                discardPartial();
+                throw e;
+            }
+        }
+    }
+
+    private Result downloadOnce(boolean allowParallel)
+            throws IOException, FirmwareDownloadException {
+        MessageDigest digest = newSha256();
+        HttpURLConnection firstConnection = null;
+        boolean resumed = loadState();
+        long size;
+        String sha256;
+
+        try (RandomAccessFile file = new RandomAccessFile(partFile, "rw")) {
+            FileChannel channel = file.getChannel();
+            Range first;
+            if (resumed) {
+                first = ranges.get(0);
+                // The sidecar only has offsets; the bytes before them are hashed once from disk
+                hashFile(channel, digest, 0, first.pos);
+                Log.i(TAG, "Resuming " + url + " at " + downloadedBytes + "/" + totalBytes + " bytes");
+            } else {
+                channel.truncate(0);
+                firstConnection = openFresh(allowParallel, file);
+                first = ranges.get(0);
+            }
+
+            if (listener != null) {
+                listener.onStart(totalBytes, resumed ? downloadedBytes : 0);
+            }
+
+            runRanges(channel, first, firstConnection, digest);
+            firstConnection = null;
+
+            // Everything after the first range arrived over other connections
+            long hashed = first.pos;
+            size = totalBytes >= 0 ? totalBytes : first.pos;
+            hashFile(channel, digest, hashed, size);
+            channel.force(false);
+
+            sha256 = toHex(digest.digest());
+            if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(sha256)) {
+                throw new FirmwareDownloadException(FirmwareDownloadException.CODE_VERIFY_FAILED,
+                        "SHA-256 mismatch for " + target.getName() + ": expected " + expectedSha256
+                                + ", got " + sha256);
+            }
+        } finally {
+            if (firstConnection != null) {
+                firstConnection.disconnect();
+            }
+        }
+
+        // The partial file is closed by now, so it can be moved into place
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Cannot replace " + target);
+        }
+        if (!partFile.renameTo(target)) {
+            throw new IOException("Cannot move " + partFile + " to " + target);
+        }
+        stateFile.delete();
+        Log.i(TAG, "Downloaded " + target.getName() + " (" + size + " bytes, " + requests
+                + " requests, sha256 " + sha256 + ")");
+        return new Result(target, size, sha256, requests);
+    }
+
+    /**
+     * Start a download from zero: the first response tells us the size, the validator and
+     * whether ranges work, and becomes the stream for the first range
+     */
+    private HttpURLConnection openFresh(boolean allowParallel, RandomAccessFile file)
+            throws IOException, FirmwareDownloadException {
+        HttpURLConnection conn = open(0, -1, null);
+        int code = conn.getResponseCode();
+        boolean rangesSupported;
+        long total;
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            long[] contentRange = parseContentRange(conn.getHeaderField("Content-Range"));
+            if (contentRange == null || contentRange[0] != 0) {
+                conn.disconnect();
+                throw new IOException("Bad Content-Range: " + conn.getHeaderField("Content-Range"));
+            }
+            rangesSupported = true;
+            total = contentRange[2];
+        } else if (code == HttpURLConnection.HTTP_OK) {
+            rangesSupported = false;
+            total = conn.getContentLengthLong();
+        } else {
+            conn.disconnect();
+            throw new HttpStatusException(code);
+        }
+
+        if (maxBytes > 0 && total > maxBytes) {
+            conn.disconnect();
+            throw new FirmwareDownloadException(FirmwareDownloadException.CODE_FILE_TOO_LARGE,
+                    target.getName() + " too large: " + total + " bytes (max " + maxBytes + ")");
+        }
+
+        synchronized (this) {
+            validator = rangesSupported ? validatorOf(conn) : null;
+            totalBytes = total;
+            ranges = new ArrayList<>();
+            downloadedBytes = 0;
+            lastSavedBytes = 0;
+            if (allowParallel && rangesSupported && validator != null && total >= minParallelBytes) {
+                long size = (total + parallelRanges - 1) / parallelRanges;
+                for (long start = 0; start < total; start += size) {
+                    ranges.add(new Range(start, Math.min(total, start + size)));
+                }
+                // Ranges write at their own offsets
+                file.setLength(total);
+            } else {
+                ranges.add(new Range(0, total));
+            }
+            saveState();
+        }
+        Log.d(TAG, "Downloading " + url + ": " + total + " bytes, ranges "
+                + (rangesSupported ? "supported" : "unsupported") + ", " + ranges.size() + " stream(s)");
+        return conn;
+    }
+
+    /** Run every unfinished range to completion: the first on this thread, the rest on a pool */
+    private void runRanges(FileChannel channel, Range first, HttpURLConnection firstConnection,
+                           MessageDigest digest) throws IOException, FirmwareDownloadException {
+        List<Range> others = new ArrayList<>();
+        for (Range range : ranges) {
+            if (range != first && !range.isDone()) {
+                others.add(range);
+            }
+        }
+        if (others.isEmpty()) {
+            runRange(channel, first, firstConnection, digest);
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(others.size());
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Range range : others) {
+                futures.add(pool.submit(() -> {
+                    runRange(channel, range, null, null);
+                    return null;
+                }));
+            }
+            runRange(channel, first, firstConnection, digest);
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof FirmwareDownloadException) {
+                        throw (FirmwareDownloadException) cause;
+                    }
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Stream one range to disk, reconnecting at the current offset after each failure. Gives
+     * up after {@link Builder#setMaxStalledAttempts} consecutive attempts without progress.
+     *
+     * @param digest Updated with the range's bytes in order, or null
+     */
+    private void runRange(FileChannel channel, Range range, HttpURLConnection conn,
+                          MessageDigest digest) throws IOException, FirmwareDownloadException {
+        int stalled = 0;
+        while (!range.isDone()) {
+            long before = range.pos;
+            try {
+                if (conn == null) {
+                    conn = openRange(channel, range, digest);
+                }
+                streamRange(conn, channel, range, digest);
+            } catch (RestartException | HttpStatusException e) {
+                if (e instanceof RestartException || !((HttpStatusException) e).isRetryable()) {
+                    throw e;
+                }
+                stalled = onAttemptFailed(range, before, stalled, e);
+            } catch (IOException e) {
+                stalled = onAttemptFailed(range, before, stalled, e);
+            } finally {
+                if (conn != null) {
+                    conn.disconnect();
+                    conn = null;
+                }
+            }
+        }
+        synchronized (this) {
+            saveState();
+        }
+    }
+
+    private int onAttemptFailed(Range range, long before, int stalled, IOException e) throws IOException {
+        stalled = range.pos > before ? 0 : stalled + 1;
+        synchronized (this) {
+            saveState();
+        }
+        if (stalled >= maxStalledAttempts) {
+            Log.e(TAG, "Download of " + target.getName() + " failed at " + range.pos + " after "
+                    + stalled + " attempts without progress");
+            throw e;
+        }
+        long delay = Math.min(retryMaxDelayMs, retryBaseDelayMs << Math.min(10, stalled));
+        Log.w(TAG, "Download of " + target.getName() + " interrupted at " + range.pos + " ("
+                + e.getMessage() + "), retrying in " + delay + "ms");
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", interrupted);
+        }
+        return stalled;
+    }
+
+    /** Request the rest of a range; the response must continue exactly where the range left off */
+    private HttpURLConnection openRange(FileChannel channel, Range range, MessageDigest digest)
+            throws IOException {
+        HttpURLConnection conn = open(range.pos, range.end, validator);
+        int code = conn.getResponseCode();
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            long[] contentRange = parseContentRange(conn.getHeaderField("Content-Range"));
+            if (contentRange == null || contentRange[0] != range.pos
+                    || (totalBytes >= 0 && contentRange[2] >= 0 && contentRange[2] != totalBytes)) {
+                conn.disconnect();
+                throw new RestartException("Unexpected Content-Range " + conn.getHeaderField("Content-Range")
+                        + " for offset " + range.pos);
+            }
+            return conn;
+        }
+        if (code == HttpURLConnection.HTTP_OK && ranges.size() == 1) {
+            // Whole body again (no range support, or If-Range saw a changed file): take it from zero
+            long total = conn.getContentLengthLong();
+            if (maxBytes > 0 && total > maxBytes) {
+                conn.disconnect();
+                throw new RestartException("Replacement body too large: " + total);
+            }
+            Log.w(TAG, "Server sent the whole of " + target.getName() + " again; restarting at 0");
+            synchronized (this) {
+                channel.truncate(0);
+                downloadedBytes -= range.pos;
+                range.pos = 0;
+                range.end = total;
+                totalBytes = total;
+                validator = null;
+                saveState();
+            }
+            if (digest != null) {
+                digest.reset();
+            }
+            return conn;
+        }
+        conn.disconnect();
+        if (code == HttpURLConnection.HTTP_OK || code == 416) {
+            throw new RestartException("HTTP " + code + " for range at " + range.pos);
+        }
+        throw new HttpStatusException(code);
+    }
+
+    private void streamRange(HttpURLConnection conn, FileChannel channel, Range range,
+                             MessageDigest digest) throws IOException, FirmwareDownloadException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        try (InputStream in = conn.getInputStream()) {
+            while (range.end < 0 || range.pos < range.end) {
+                int want = range.end < 0 ? buffer.length : (int) Math.min(buffer.length, range.end - range.pos);
+                int read = in.read(buffer, 0, want);
+                if (read < 0) {
+                    break;
+                }
+                if (maxBytes > 0 && range.pos + read > maxBytes) {
+                    throw new FirmwareDownloadException(FirmwareDownloadException.CODE_FILE_TOO_LARGE,
+                            target.getName() + " exceeded " + maxBytes + " bytes while streaming");
+                }
+
+                wrapped.clear().limit(read);
+                long position = range.pos;
+                while (wrapped.hasRemaining()) {
+                    position += channel.write(wrapped, position);
+                }
+                if (digest != null) {
+                    digest.update(buffer, 0, read);
+                }
+                onWritten(range, read);
+            }
+        }
+        if (range.end >= 0 && range.pos < range.end) {
+            throw new EOFException("Connection closed at " + range.pos + " of " + range.end);
+        }
+        if (range.end < 0) {
+            // No length given: the end of the stream is the end of the file
+            synchronized (this) {
+                range.end = range.pos;
+                totalBytes = range.pos;
+            }
+        }
+    }
+
+    private synchronized void onWritten(Range range, int bytes) {
+        range.pos += bytes;
+        downloadedBytes += bytes;
+        if (downloadedBytes - lastSavedBytes >= STATE_SAVE_INTERVAL_BYTES) {
+            saveState();
+        }
+        if (listener != null) {
+            listener.onProgress(downloadedBytes, totalBytes);
+        }
+    }
+
+    private HttpURLConnection open(long from, long end, String ifRange) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(connectTimeoutMs);
+        conn.setReadTimeout(readTimeoutMs);
+        // Byte offsets must refer to the stored representation
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        conn.setRequestProperty("Range", "bytes=" + from + "-" + (end >= 0 ? String.valueOf(end - 1) : ""));
+        if (ifRange != null) {
+            conn.setRequestProperty("If-Range", ifRange);
+        }
+        synchronized (this) {
+            requests++;
+        }
+        conn.connect();
+        return conn;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Sidecar
+
+    /**
+     * Load the sidecar if it belongs to this URL and matches the partial file
+     * @return true if the download can resume from it
+     */
+    private synchronized boolean loadState() {
+        if (!stateFile.exists() || !partFile.exists()) {
+            return false;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(stateFile)) {
+            props.load(in);
+            if (!url.equals(props.getProperty("url")) || props.getProperty("validator") == null) {
+                // Without a validator we can't tell whether the server still has the same file
+                return false;
+            }
+            long total = Long.parseLong(props.getProperty("total", "-1"));
+            List<Range> loaded = new ArrayList<>();
+            long downloaded = 0;
+            for (String entry : props.getProperty("ranges", "").split(",")) {
+                String[] fields = entry.split(":");
+                Range range = new Range(Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+                range.pos = Long.parseLong(fields[2]);
+                if (range.pos < range.start || (range.end >= 0 && range.pos > range.end)) {
+                    return false;
+                }
+                downloaded += range.pos - range.start;
+                loaded.add(range);
+            }
+            if (loaded.isEmpty()) {
+                return false;
+            }
+
+            long partLength = partFile.length();
+            if (loaded.size() == 1) {
+                Range only = loaded.get(0);
+                if (partLength < only.pos) {
+                    // The sidecar got ahead of the data (e.g. power loss); trust the file
+                    downloaded -= only.pos - partLength;
+                    only.pos = partLength;
+                } else if (partLength > only.pos) {
+                    try (RandomAccessFile file = new RandomAccessFile(partFile, "rw")) {
+                        file.setLength(only.pos);
+                    }
+                }
+            } else if (partLength != total) {
+                return false;
+            }
+
+            validator = props.getProperty("validator");
+            totalBytes = total;
+            ranges = loaded;
+            downloadedBytes = downloaded;
+            lastSavedBytes = downloaded;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Ignoring unreadable download state " + stateFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Write the sidecar (to a temp file, then rename, so a crash never leaves half a sidecar) */
+    private void saveState() {
+        Properties props = new Properties();
+        props.setProperty("url", url);
+        if (validator != null) {
+            props.setProperty("validator", validator);
+        }
+        props.setProperty("total", String.valueOf(totalBytes));
+        StringBuilder entries = new StringBuilder();
+        for (Range range : ranges) {
+            if (entries.length() > 0) {
+                entries.append(',');
+            }
+            entries.append(range.start).append(':').append(range.end).append(':').append(range.pos);
+        }
+        props.setProperty("ranges", entries.toString());
+
+        File temp = new File(stateFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            props.store(out, null);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save download state: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(stateFile)) {
+            stateFile.delete();
+            temp.renameTo(stateFile);
+        }
+        lastSavedBytes = downloadedBytes;
+    }
+
+    private void discardPartial() {
+        partFile.delete();
+        stateFile.delete();
+        synchronized (this) {
+            ranges = new ArrayList<>();
+            totalBytes = -1;
+            validator = null;
+            downloadedBytes = 0;
+            lastSavedBytes = 0;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void hashFile(FileChannel channel, MessageDigest digest, long from, long to)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = from;
+        while (position < to) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, to - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Partial file shorter than recorded progress");
+            }
+            digest.update(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    /** @return {first, last, total} from "bytes first-last/total" (total -1 for "*"), or null */
+    static long[] parseContentRange(String header) {
+        if (header == null || !header.startsWith("bytes ")) {
+            return null;
+        }
+        try {
+            int dash = header.indexOf('-');
+            int slash = header.indexOf('/');
+            long first = Long.parseLong(header.substring(6, dash).trim());
+            long last = Long.parseLong(header.substring(dash + 1, slash).trim());
+            String total = header.substring(slash + 1).trim();
+            return new long[]{first, last, "*".equals(total) ? -1 : Long.parseLong(total)};
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String validatorOf(HttpURLConnection conn) {
+        String etag = conn.getHeaderField("ETag");
+        // Weak ETags can't be used with If-Range
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return conn.getHeaderField("Last-Modified");
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /** Bytes [start, end) of the artifact; pos is the next byte to write (end -1 while unknown) */
+    private static final class Range {
+        final long start;
+        volatile long end;
+        volatile long pos;
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.pos = start;
+        }
+
+        boolean isDone() {
+            return end >= 0 && pos >= end;
+        }
+    }
+
+    /** The partial download can't be continued and has to start from zero */
+    private static final class RestartException extends IOException {
+        RestartException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class HttpStatusException extends IOException {
+        final int code;
+
+        HttpStatusException(int code) {
+            super("HTTP " + code);
+            this.code = code;
+        }
+
+        boolean isRetryable() {
+            return code >= 500 || code == 408 || code == 429;
+        }
+    }
+
+    public static class Builder {
+        private final String url;
+        private final File target;
+        private long maxBytes = -1;
+        private String expectedSha256;
+        private int parallelRanges = 1;
+        private long minParallelBytes = 8L * 1024 * 1024;
+        private int maxStalledAttempts = 5;
+        private long retryBaseDelayMs = 1000;
+        private long retryMaxDelayMs = 15000;
+        private int connectTimeoutMs = OtaConstants.CONNECT_TIMEOUT_MS;
+        private int readTimeoutMs = OtaConstants.READ_TIMEOUT_MS;
+        private ProgressListener listener;
+
+        public Builder(String url, File target) {
+            this.url = url;
+            this.target = target;
+        }
+
+        /** Fail with {@link FirmwareDownloadException#CODE_FILE_TOO_LARGE} beyond this size (default none). */
+        public Builder setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /** Fail with {@link FirmwareDownloadException#CODE_VERIFY_FAILED} unless the hash matches (hex, default unchecked). */
+        public Builder setExpectedSha256(String expectedSha256) {
+            this.expectedSha256 = (expectedSha256 == null || expectedSha256.isEmpty()) ? null : expectedSha256;
+            return this;
+        }
+
+        /** Parallel range requests for artifacts of at least minBytes (default 1, i.e. one stream). */
+        public Builder setParallelRanges(int parallelRanges, long minBytes) {
+            this.parallelRanges = Math.max(1, parallelRanges);
+            this.minParallelBytes = minBytes;
+            return this;
+        }
+
+        /** Consecutive failed attempts without progress before giving up (default 5). */
+        public Builder setMaxStalledAttempts(int maxStalledAttempts) {
+            this.maxStalledAttempts = Math.max(1, maxStalledAttempts);
+            return this;
+        }
+
+        /** First retry delay and its cap (defaults 1s and 15s). */
+        public Builder setRetryBackoff(long baseDelayMs, long maxDelayMs) {
+            this.retryBaseDelayMs = baseDelayMs;
+            this.retryMaxDelayMs = maxDelayMs;
+            return this;
+        }
+
+        public Builder setTimeouts(int connectTimeoutMs, int readTimeoutMs) {
+            this.connectTimeoutMs = connectTimeoutMs;
+            this.readTimeoutMs = readTimeoutMs;
+            return this;
+        }
+
+        public Builder setProgressListener(ProgressListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public OtaDownloader build() {
+            return new OtaDownloader(this);
+        }
+    }
+}
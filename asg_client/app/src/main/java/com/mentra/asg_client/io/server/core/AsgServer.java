@@ -6,6 +6,7 @@ import fi.iki.elonen.NanoHTTPD;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.Socket;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,15 +20,22 @@ public abstract class AsgServer extends NanoHTTPD {
     protected static final int CACHE_SIZE_LIMIT = 10; // Max 10 files in cache
     
     // Extended timeout for large file transfers (5 minutes)
-    // Default NanoHTTPD timeout is 10 seconds which is too short for 500MB+ videos
+    // Default NanoHTTPD timeout is 10 seconds which is too short for 500MB+ videos.
+    // Applies while a request is in progress; idle keep-alive connections use the config's
+    // much shorter keep-alive timeout so they don't pin worker threads.
     protected static final int EXTENDED_SOCKET_TIMEOUT = 300000; // 5 minutes
 
+    // The connection being served on the current worker thread
+    private static final ThreadLocal<ConnectionInputStream> currentConnection = new ThreadLocal<>();
+
     // Dependencies injected through constructor
     protected final ServerConfig config;
     protected final NetworkProvider networkProvider;
     protected final CacheManager cacheManager;
     protected final RateLimiter rateLimiter;
     protected final Logger logger;
+    protected final BoundedAsyncRunner workerPool;
+    protected final RouteMetrics routeMetrics = new RouteMetrics();
 
     /**
      * Constructor for ASG server with dependency injection.
@@ -41,6 +49,9 @@ public abstract class AsgServer extends NanoHTTPD {
         this.cacheManager = cacheManager;
         this.rateLimiter = rateLimiter;
         this.logger = logger;
+        this.workerPool = new BoundedAsyncRunner(config.getMaxWorkerThreads(),
+                                                 config.getMaxQueuedConnections(), logger);
+        setAsyncRunner(workerPool);
         
         logger.info(getTag(), "🚀 =========================================");
         logger.info(getTag(), "🚀 " + config.getServerName() + " INITIALIZED");
@@ -49,6 +60,9 @@ public abstract class AsgServer extends NanoHTTPD {
         logger.info(getTag(), "🚀 📍 Max file size: " + MAX_FILE_SIZE + " bytes");
         logger.info(getTag(), "🚀 📍 Rate limit: " + rateLimiter.getMaxRequests() + 
                                 " requests per " + rateLimiter.getTimeWindow() + "ms");
+        logger.info(getTag(), "🚀 📍 Workers: " + workerPool.getMaxWorkers() +
+                                ", queue: " + workerPool.getMaxQueued() +
+                                ", keep-alive timeout: " + config.getKeepAliveTimeout() + "ms");
     }
 
     /**
@@ -79,13 +93,14 @@ public abstract class AsgServer extends NanoHTTPD {
         logger.info(getTag(), "🚀 =========================================");
         
         try {
-            // Use extended timeout instead of default SOCKET_READ_TIMEOUT
-            // This allows large video transfers (500MB+) to complete without timing out
-            start(EXTENDED_SOCKET_TIMEOUT, false);
+            // New connections start out idle; ConnectionInputStream switches to the extended
+            // timeout once a request arrives so large video transfers (500MB+) don't time out
+            start(config.getKeepAliveTimeout(), false);
             logger.info(getTag(), "✅ " + config.getServerName() + 
                        " started successfully on port " + getListeningPort());
             logger.info(getTag(), "⏱️ Socket timeout set to " + EXTENDED_SOCKET_TIMEOUT + "ms (" + 
-                       (EXTENDED_SOCKET_TIMEOUT / 60000) + " minutes) for large file support");
+                       (EXTENDED_SOCKET_TIMEOUT / 60000) + " minutes) per request for large file support, " +
+                       config.getKeepAliveTimeout() + "ms between keep-alive requests");
             logger.info(getTag(), "📱 Access from mobile app: http://[GLASSES_IP]:" + getListeningPort());
             
             // Log server URL
@@ -121,12 +136,43 @@ public abstract class AsgServer extends NanoHTTPD {
         }
     }
 
+    /**
+     * Wrap each accepted socket so its timeouts follow the keep-alive state.
+     */
+    @Override
+    protected ClientHandler createClientHandler(Socket socket, InputStream inputStream) {
+        ConnectionInputStream connection = new ConnectionInputStream(inputStream, socket,
+                config.getKeepAliveTimeout(), EXTENDED_SOCKET_TIMEOUT, workerPool);
+        return new ConnectionHandler(connection, socket);
+    }
+
     /**
      * Handle incoming requests with enhanced routing and security.
-     * Follows Single Responsibility Principle by delegating to specific handlers.
+     * Records per-route latency and, once the response is ready, puts the connection back into
+     * its keep-alive idle state.
      */
     @Override
     public Response serve(IHTTPSession session) {
+        long startNanos = System.nanoTime();
+        Response response = null;
+        try {
+            response = dispatch(session);
+            return response;
+        } finally {
+            int status = response != null ? response.getStatus().getRequestStatus() : 500;
+            routeMetrics.record(getRouteName(session.getUri()), System.nanoTime() - startNanos, status);
+            ConnectionInputStream connection = currentConnection.get();
+            if (connection != null) {
+                connection.awaitNextRequest();
+            }
+        }
+    }
+
+    /**
+     * Rate limit, CORS and routing for one request.
+     * Follows Single Responsibility Principle by delegating to specific handlers.
+     */
+    private Response dispatch(IHTTPSession session) {
         String uri = session.getUri();
         Method method = session.getMethod();
         String clientIp = session.getRemoteIpAddress();
@@ -186,6 +232,30 @@ public abstract class AsgServer extends NanoHTTPD {
      */
     protected abstract Response handleRequest(IHTTPSession session);
 
+    /**
+     * Route key used for latency metrics. Static files share one key.
+     */
+    protected String getRouteName(String uri) {
+        if (uri == null) {
+            return RouteMetrics.OTHER_ROUTE;
+        }
+        return uri.startsWith("/static/") ? "/static/*" : uri;
+    }
+
+    /**
+     * Worker pool serving this server's connections.
+     */
+    public BoundedAsyncRunner getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Per-route request counters and latencies.
+     */
+    public RouteMetrics getRouteMetrics() {
+        return routeMetrics;
+    }
+
     /**
      * Get MIME type for file extension.
      */
@@ -277,6 +347,36 @@ public abstract class AsgServer extends NanoHTTPD {
         );
     }
 
+    /**
+     * NanoHTTPD connection handler that runs on a pool worker and exposes its socket so the pool
+     * can answer it with a 503 when full.
+     */
+    private class ConnectionHandler extends ClientHandler implements BoundedAsyncRunner.SocketClientHandler {
+        private final ConnectionInputStream connection;
+        private final Socket socket;
+
+        ConnectionHandler(ConnectionInputStream connection, Socket socket) {
+            super(connection, socket);
+            this.connection = connection;
+            this.socket = socket;
+        }
+
+        @Override
+        public Socket getSocket() {
+            return socket;
+        }
+
+        @Override
+        public void run() {
+            currentConnection.set(connection);
+            try {
+                super.run();
+            } finally {
+                currentConnection.remove();
+            }
+        }
+    }
+
     /**
      * Get server start time for uptime calculation.
      */
@@ -0,0 +1,295 @@
+package com.mentra.asg_client.io.server.core;
+
+import com.mentra.asg_client.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * NanoHTTPD {@link NanoHTTPD.AsyncRunner} backed by a fixed pool of worker threads instead of a
+ * new thread per connection.
+ * <p>
+ * Accepted connections wait in a bounded queue for a worker. When the queue is full the
+ * connection is answered with a 503 and closed on a separate thread, so the accept loop never
+ * blocks. NanoHTTPD keeps a connection on its worker for as long as it stays open, so keep-alive
+ * connections waiting for their next request register as idle, and each connection that has to
+ * queue ends the longest idle one to free its worker.
+ */
+public class BoundedAsyncRunner implements NanoHTTPD.AsyncRunner {
+    private static final String TAG = "BoundedAsyncRunner";
+
+    private static final long IDLE_WORKER_KEEP_ALIVE_MS = 30_000;
+    private static final int MAX_PENDING_REJECTIONS = 16;
+    private static final int REJECT_READ_TIMEOUT_MS = 1000;
+    private static final int MAX_REJECTED_HEADER_BYTES = 8 * 1024;
+    private static final byte[] BUSY_RESPONSE = busyResponse();
+
+    /**
+     * Client handler that exposes its socket so a rejected connection can still get a 503
+     */
+    public interface SocketClientHandler {
+        Socket getSocket();
+    }
+
+    /**
+     * Keep-alive connection waiting for its next request that can be ended to free its worker
+     */
+    interface IdleConnection {
+        void release();
+    }
+
+    private final int maxWorkers;
+    private final int maxQueued;
+    private final ThreadPoolExecutor workers;
+    private final ThreadPoolExecutor rejecter;
+    private final Set<NanoHTTPD.ClientHandler> running = ConcurrentHashMap.newKeySet();
+    // Longest idle first
+    private final ConcurrentLinkedQueue<IdleConnection> idleConnections = new ConcurrentLinkedQueue<>();
+    private final Logger logger;
+
+    private final AtomicLong acceptedConnections = new AtomicLong();
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicLong idleConnectionsReleased = new AtomicLong();
+    private final AtomicLong totalQueueWaitMs = new AtomicLong();
+    private final AtomicLong maxQueueWaitMs = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /**
+     * @param maxWorkers Connections served at once
+     * @param maxQueued Connections that may wait for a worker before new ones are rejected
+     */
+    public BoundedAsyncRunner(int maxWorkers, int maxQueued, Logger logger) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.logger = logger;
+        this.workers = new ThreadPoolExecutor(this.maxWorkers, this.maxWorkers,
+                IDLE_WORKER_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.maxQueued), threadFactory("AsgServer worker"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.rejecter = new ThreadPoolExecutor(1, 1,
+                IDLE_WORKER_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_REJECTIONS), threadFactory("AsgServer reject"));
+        this.rejecter.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler clientHandler) {
+        acceptedConnections.incrementAndGet();
+        running.add(clientHandler);
+        try {
+            workers.execute(new QueuedConnection(clientHandler));
+        } catch (RejectedExecutionException e) {
+            running.remove(clientHandler);
+            reject(clientHandler);
+            return;
+        }
+        int depth = workers.getQueue().size();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+        if (depth > 0) {
+            releaseIdleConnection();
+        }
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler clientHandler) {
+        running.remove(clientHandler);
+    }
+
+    @Override
+    public void closeAll() {
+        // Closing the sockets ends the running connections and makes queued ones finish at once
+        for (NanoHTTPD.ClientHandler clientHandler : new ArrayList<>(running)) {
+            clientHandler.close();
+        }
+    }
+
+    /**
+     * True while accepted connections are waiting for a worker
+     */
+    public boolean hasWaitingConnections() {
+        return !workers.getQueue().isEmpty();
+    }
+
+    /**
+     * A keep-alive connection started waiting for its next request; ended at once if others are
+     * already queued
+     */
+    void onConnectionIdle(IdleConnection connection) {
+        idleConnections.add(connection);
+        if (hasWaitingConnections()) {
+            releaseIdleConnection();
+        }
+    }
+
+    /**
+     * The connection's next request arrived, or it ended
+     */
+    void onConnectionBusy(IdleConnection connection) {
+        idleConnections.remove(connection);
+    }
+
+    private void releaseIdleConnection() {
+        IdleConnection connection = idleConnections.poll();
+        if (connection != null) {
+            idleConnectionsReleased.incrementAndGet();
+            connection.release();
+        }
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public int getActiveWorkers() {
+        return workers.getActiveCount();
+    }
+
+    /**
+     * Most worker threads that were alive at once
+     */
+    public int getPeakWorkers() {
+        return workers.getLargestPoolSize();
+    }
+
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    public long getIdleConnectionsReleased() {
+        return idleConnectionsReleased.get();
+    }
+
+    /**
+     * Average time an accepted connection waited for a worker, in milliseconds
+     */
+    public long getAverageQueueWaitMs() {
+        long started = workers.getCompletedTaskCount() + workers.getActiveCount();
+        return started == 0 ? 0 : totalQueueWaitMs.get() / started;
+    }
+
+    public long getMaxQueueWaitMs() {
+        return maxQueueWaitMs.get();
+    }
+
+    private void reject(NanoHTTPD.ClientHandler clientHandler) {
+        long rejected = rejectedConnections.incrementAndGet();
+        if (rejected == 1 || rejected % 100 == 0) {
+            logger.warn(TAG, "🚫 All " + maxWorkers + " workers busy and " + maxQueued +
+                             " connections queued; rejected " + rejected + " so far");
+        }
+        if (!(clientHandler instanceof SocketClientHandler)) {
+            clientHandler.close();
+            return;
+        }
+        Socket socket = ((SocketClientHandler) clientHandler).getSocket();
+        try {
+            rejecter.execute(() -> sendBusy(socket));
+        } catch (RejectedExecutionException e) {
+            // Too many to even answer; just hang up
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Read the request head so closing doesn't reset the connection, then answer 503
+     */
+    private static void sendBusy(Socket socket) {
+        try {
+            socket.setSoTimeout(REJECT_READ_TIMEOUT_MS);
+            InputStream in = socket.getInputStream();
+            int matched = 0;
+            for (int read = 0; read < MAX_REJECTED_HEADER_BYTES && matched < 4; read++) {
+                int b = in.read();
+                if (b < 0) {
+                    break;
+                }
+                // Looking for the blank line: \r\n\r\n
+                matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(BUSY_RESPONSE);
+            out.flush();
+        } catch (IOException e) {
+            // The client gave up first
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private static byte[] busyResponse() {
+        String body = "{\"status\":\"error\",\"message\":\"Server busy, retry shortly\"}";
+        String response = "HTTP/1.1 503 Service Unavailable\r\n" +
+                "Content-Type: application/json\r\n" +
+                "Content-Length: " + body.length() + "\r\n" +
+                "Retry-After: 1\r\n" +
+                "Connection: close\r\n" +
+                "\r\n" + body;
+        return response.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private final class QueuedConnection implements Runnable {
+        private final NanoHTTPD.ClientHandler clientHandler;
+        private final long queuedAt = System.currentTimeMillis();
+
+        QueuedConnection(NanoHTTPD.ClientHandler clientHandler) {
+            this.clientHandler = clientHandler;
+        }
+
+        @Override
+        public void run() {
+            long waited = System.currentTimeMillis() - queuedAt;
+            totalQueueWaitMs.addAndGet(waited);
+            maxQueueWaitMs.accumulateAndGet(waited, Math::max);
+            clientHandler.run();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.mentra.asg_client.io.server.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+/**
+ * Socket input for one server connection that applies a short timeout while the connection sits
+ * idle between keep-alive requests and the long request timeout once a request is coming in.
+ * <p>
+ * Once a request has been served, the connection parks itself with the runner while it waits for
+ * the next one; if other connections are queued the runner ends it to free the worker, so idle
+ * keep-alive sockets don't hold workers others need. Clients retry an idempotent request on a
+ * closed keep-alive connection. Reads only happen on the connection's own thread.
+ */
+class ConnectionInputStream extends FilterInputStream implements BoundedAsyncRunner.IdleConnection {
+    private final Socket socket;
+    private final int idleTimeoutMs;
+    private final int requestTimeoutMs;
+    private final BoundedAsyncRunner runner;
+    private boolean betweenRequests = true;
+    private boolean servedRequest;
+
+    ConnectionInputStream(InputStream in, Socket socket, int idleTimeoutMs, int requestTimeoutMs,
+                          BoundedAsyncRunner runner) {
+        super(in);
+        this.socket = socket;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.runner = runner;
+    }
+
+    /**
+     * The response is done; the next read waits for a new request
+     */
+    void awaitNextRequest() {
+        betweenRequests = true;
+        servedRequest = true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n <= 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (!betweenRequests) {
+            return super.read(b, off, len);
+        }
+        socket.setSoTimeout(idleTimeoutMs);
+        int n;
+        // A fresh connection still gets to send its first request
+        if (servedRequest && runner != null) {
+            runner.onConnectionIdle(this);
+            try {
+                n = super.read(b, off, len);
+            } finally {
+                runner.onConnectionBusy(this);
+            }
+        } else {
+            n = super.read(b, off, len);
+        }
+        // A request is arriving; its body may legitimately take long
+        betweenRequests = false;
+        socket.setSoTimeout(requestTimeoutMs);
+        return n;
+    }
+
+    @Override
+    public void release() {
+        try {
+            // Wakes the blocked read with end of stream, which ends the connection
+            socket.shutdownInput();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
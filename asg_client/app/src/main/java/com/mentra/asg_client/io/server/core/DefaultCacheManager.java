@@ -3,109 +3,217 @@ package com.mentra.asg_client.io.server.core;
 import com.mentra.asg_client.io.server.interfaces.CacheManager;
 import com.mentra.asg_client.logging.Logger;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Default implementation of CacheManager with TTL support.
+ * Default implementation of CacheManager with TTL support and a byte budget.
  * Follows Single Responsibility Principle by handling only caching.
+ * <p>
+ * Entries are kept in least-recently-used order and weighed by their estimated size in memory.
+ * When a put takes the cache over its budget, the least recently used entries are evicted, so
+ * several phones browsing the gallery can't grow the cache without bound.
  */
 public class DefaultCacheManager implements CacheManager {
-    private final ConcurrentHashMap<String, CacheEntry> cache;
+    // Default memory budget for all cached values together
+    public static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+    // Rough per-entry bookkeeping cost (entry, map node, key object)
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    // Estimate for values whose size we can't tell
+    private static final int UNKNOWN_VALUE_BYTES = 256;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, CacheEntry> cache;
     private final ScheduledExecutorService cleanupExecutor;
     private final Logger logger;
-    private final AtomicLong hits;
-    private final AtomicLong misses;
-    
+
+    // Guarded by this
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
     public DefaultCacheManager(Logger logger) {
-        this.cache = new ConcurrentHashMap<>();
+        this(DEFAULT_MAX_BYTES, logger);
+    }
+
+    public DefaultCacheManager(long maxBytes, Logger logger) {
+        this.maxBytes = maxBytes;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
         this.logger = logger;
-        this.hits = new AtomicLong(0);
-        this.misses = new AtomicLong(0);
-        
+
         // Schedule cleanup of expired entries
         this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
-        this.cleanupExecutor.scheduleAtFixedRate(this::cleanupExpiredEntries, 
+        this.cleanupExecutor.scheduleAtFixedRate(this::cleanupExpiredEntries,
                                                1, 1, TimeUnit.MINUTES);
     }
-    
+
     @Override
     public void put(String key, Object value, long ttlMs) {
-        long expiryTime = System.currentTimeMillis() + ttlMs;
-        CacheEntry entry = new CacheEntry(value, expiryTime);
-        cache.put(key, entry);
-        logger.debug("CacheManager", String.format("Cached key: %s (TTL: %dms)", key, ttlMs));
+        put(key, value, ttlMs, System.currentTimeMillis());
     }
-    
+
+    synchronized void put(String key, Object value, long ttlMs, long now) {
+        long weight = ENTRY_OVERHEAD_BYTES + 2L * key.length() + estimateSize(value);
+        CacheEntry previous = cache.remove(key);
+        if (previous != null) {
+            currentBytes -= previous.weight;
+        }
+        if (weight > maxBytes) {
+            logger.debug("CacheManager", "Not caching " + key + ": " + weight + " bytes exceeds cache budget");
+            return;
+        }
+
+        cache.put(key, new CacheEntry(value, now + ttlMs, weight));
+        currentBytes += weight;
+        evictToBudget();
+    }
+
     @Override
     public Object get(String key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    synchronized Object get(String key, long now) {
         CacheEntry entry = cache.get(key);
         if (entry == null) {
-            misses.incrementAndGet();
-            logger.debug("CacheManager", String.format("Cache MISS for key: %s", key));
+            misses++;
             return null;
         }
-        
-        if (entry.isExpired()) {
-            cache.remove(key);
-            misses.incrementAndGet();
-            logger.debug("CacheManager", String.format("Cache EXPIRED for key: %s", key));
+
+        if (entry.isExpired(now)) {
+            removeEntry(key, entry);
+            expirations++;
+            misses++;
             return null;
         }
-        
-        hits.incrementAndGet();
-        logger.debug("CacheManager", String.format("Cache HIT for key: %s", key));
-        return entry.getValue();
+
+        hits++;
+        return entry.value;
     }
-    
+
     @Override
-    public void remove(String key) {
+    public synchronized void remove(String key) {
         CacheEntry removed = cache.remove(key);
         if (removed != null) {
-            logger.debug("CacheManager", String.format("Removed key: %s", key));
+            currentBytes -= removed.weight;
         }
     }
-    
+
     @Override
     public void clear() {
-        int size = cache.size();
-        cache.clear();
-        logger.info("CacheManager", String.format("Cleared cache (%d entries)", size));
+        int size;
+        synchronized (this) {
+            size = cache.size();
+            cache.clear();
+            currentBytes = 0;
+        }
+        logger.info("CacheManager", "Cleared cache (" + size + " entries)");
     }
-    
+
     @Override
-    public String getStats() {
-        long totalRequests = hits.get() + misses.get();
-        double hitRate = totalRequests > 0 ? (double) hits.get() / totalRequests * 100 : 0;
-        
-        return String.format("Cache Stats - Size: %d, Hits: %d, Misses: %d, Hit Rate: %.2f%%", 
-                           cache.size(), hits.get(), misses.get(), hitRate);
-    }
-    
+    public synchronized String getStats() {
+        long totalRequests = hits + misses;
+        double hitRate = totalRequests > 0 ? (double) hits / totalRequests * 100 : 0;
+
+        return String.format(Locale.US,
+                "Cache Stats - Size: %d, Bytes: %d/%d, Hits: %d, Misses: %d, Hit Rate: %.2f%%, Evictions: %d, Expirations: %d",
+                cache.size(), currentBytes, maxBytes, hits, misses, hitRate, evictions, expirations);
+    }
+
     @Override
-    public int size() {
+    public synchronized int size() {
         return cache.size();
     }
-    
+
+    @Override
+    public synchronized long getSizeBytes() {
+        return currentBytes;
+    }
+
+    @Override
+    public long getMaxSizeBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    @Override
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    private void evictToBudget() {
+        Iterator<CacheEntry> it = cache.values().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            CacheEntry eldest = it.next();
+            it.remove();
+            currentBytes -= eldest.weight;
+            evictions++;
+        }
+    }
+
+    private void removeEntry(String key, CacheEntry entry) {
+        cache.remove(key);
+        currentBytes -= entry.weight;
+    }
+
     private void cleanupExpiredEntries() {
-        long currentTime = System.currentTimeMillis();
+        int removed = cleanupExpiredEntries(System.currentTimeMillis());
+        if (removed > 0) {
+            logger.debug("CacheManager", "Cleaned up " + removed + " expired entries");
+        }
+    }
+
+    synchronized int cleanupExpiredEntries(long now) {
         int removed = 0;
-        
-        for (java.util.Map.Entry<String, CacheEntry> entry : cache.entrySet()) {
-            if (entry.getValue().isExpired(currentTime)) {
-                cache.remove(entry.getKey());
+        Iterator<CacheEntry> it = cache.values().iterator();
+        while (it.hasNext()) {
+            CacheEntry entry = it.next();
+            if (entry.isExpired(now)) {
+                it.remove();
+                currentBytes -= entry.weight;
+                expirations++;
                 removed++;
             }
         }
-        
-        if (removed > 0) {
-            logger.debug("CacheManager", String.format("Cleaned up %d expired entries", removed));
+        return removed;
+    }
+
+    /**
+     * Estimate how much memory a cached value holds on to.
+     */
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
         }
+        if (value instanceof CharSequence) {
+            return 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof ByteBuffer) {
+            return ((ByteBuffer) value).capacity();
+        }
+        return UNKNOWN_VALUE_BYTES;
     }
-    
+
     public void shutdown() {
         cleanupExecutor.shutdown();
         try {
@@ -117,29 +225,23 @@ public class DefaultCacheManager implements CacheManager {
             Thread.currentThread().interrupt();
         }
     }
-    
+
     /**
-     * Internal class to store cache entries with expiry time
+     * Internal class to store cache entries with expiry time and estimated size
      */
     private static class CacheEntry {
         private final Object value;
         private final long expiryTime;
-        
-        public CacheEntry(Object value, long expiryTime) {
+        private final long weight;
+
+        CacheEntry(Object value, long expiryTime, long weight) {
             this.value = value;
             this.expiryTime = expiryTime;
+            this.weight = weight;
         }
-        
-        public Object getValue() {
-            return value;
-        }
-        
-        public boolean isExpired() {
-            return isExpired(System.currentTimeMillis());
-        }
-        
-        public boolean isExpired(long currentTime) {
+
+        boolean isExpired(long currentTime) {
             return currentTime > expiryTime;
         }
     }
-} 
\ No newline at end of file
+}
@@ -3,79 +3,107 @@ package com.mentra.asg_client.io.server.core;
 import com.mentra.asg_client.io.server.interfaces.RateLimiter;
 import com.mentra.asg_client.logging.Logger;
 
-import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Default implementation of RateLimiter using sliding window approach.
+ * Default implementation of RateLimiter using a token bucket per client.
  * Follows Single Responsibility Principle by handling only rate limiting.
+ * <p>
+ * Each client may burst up to {@code maxRequests} and then gets tokens back at
+ * {@code maxRequests} per {@code timeWindow}. Checking and recording are O(1): a bucket is just a
+ * token count and the time it was last refilled, topped up lazily when the client next calls.
  */
 public class DefaultRateLimiter implements RateLimiter {
     private final int maxRequests;
     private final long timeWindow;
-    private final ConcurrentHashMap<String, RequestWindow> clientWindows;
+    private final double tokensPerMs;
+    private final ConcurrentHashMap<String, TokenBucket> clientBuckets;
     private final ScheduledExecutorService cleanupExecutor;
     private final Logger logger;
-    
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
     public DefaultRateLimiter(int maxRequests, long timeWindow, Logger logger) {
         this.maxRequests = maxRequests;
         this.timeWindow = timeWindow;
-        this.clientWindows = new ConcurrentHashMap<>();
+        this.tokensPerMs = (double) maxRequests / timeWindow;
+        this.clientBuckets = new ConcurrentHashMap<>();
         this.logger = logger;
-        
-        // Schedule cleanup of expired windows
+
+        // Schedule cleanup of idle buckets
         this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
-        this.cleanupExecutor.scheduleWithFixedDelay(this::cleanupExpiredWindows,
+        this.cleanupExecutor.scheduleWithFixedDelay(this::cleanupIdleBuckets,
                                                timeWindow, timeWindow, TimeUnit.MILLISECONDS);
     }
-    
+
     @Override
     public boolean isAllowed(String clientId) {
-        RequestWindow window = clientWindows.get(clientId);
-        if (window == null) {
+        return isAllowed(clientId, System.currentTimeMillis());
+    }
+
+    boolean isAllowed(String clientId, long now) {
+        TokenBucket bucket = clientBuckets.get(clientId);
+        if (bucket == null) {
             return true;
         }
-        
-        long currentTime = System.currentTimeMillis();
-        window.removeExpiredRequests(currentTime);
-        
-        boolean allowed = window.getRequestCount() < maxRequests;
-        logger.debug("RateLimiter", String.format(Locale.getDefault(),"Client %s: %s (count: %d/%d)", clientId, allowed ? "ALLOWED" : "RATE_LIMITED", window.getRequestCount(), maxRequests));
+
+        // No per-request logging here; the server logs the requests it rejects
+        boolean allowed = bucket.hasToken(now, maxRequests, tokensPerMs);
+        if (!allowed) {
+            rejectedRequests.incrementAndGet();
+        }
         return allowed;
     }
-    
+
     @Override
     public void recordRequest(String clientId) {
-        long currentTime = System.currentTimeMillis();
-        RequestWindow window = clientWindows.computeIfAbsent(clientId, 
-                                                            k -> new RequestWindow());
-        window.addRequest(currentTime);
-        logger.debug("RateLimiter", String.format("Recorded request for client %s", clientId));
+        recordRequest(clientId, System.currentTimeMillis());
     }
-    
+
+    void recordRequest(String clientId, long now) {
+        TokenBucket bucket = clientBuckets.computeIfAbsent(clientId, k -> new TokenBucket(maxRequests, now));
+        bucket.take(now, maxRequests, tokensPerMs);
+    }
+
     @Override
     public int getMaxRequests() {
         return maxRequests;
     }
-    
+
     @Override
     public long getTimeWindow() {
         return timeWindow;
     }
-    
-    private void cleanupExpiredWindows() {
-        long currentTime = System.currentTimeMillis();
-        clientWindows.entrySet().removeIf(entry -> {
-            RequestWindow window = entry.getValue();
-            window.removeExpiredRequests(currentTime);
-            return window.getRequestCount() == 0;
-        });
-        logger.debug("RateLimiter", "Cleaned up expired rate limit windows");
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedRequests.get();
     }
-    
+
+    /**
+     * @return Number of clients currently tracked
+     */
+    public int getClientCount() {
+        return clientBuckets.size();
+    }
+
+    private void cleanupIdleBuckets() {
+        cleanupIdleBuckets(System.currentTimeMillis());
+    }
+
+    void cleanupIdleBuckets(long now) {
+        // A bucket that has refilled completely is the same as no bucket
+        int before = clientBuckets.size();
+        clientBuckets.values().removeIf(bucket -> bucket.isFull(now, maxRequests, tokensPerMs));
+        int removed = before - clientBuckets.size();
+        if (removed > 0) {
+            logger.debug("RateLimiter", "Cleaned up " + removed + " idle rate limit buckets");
+        }
+    }
+
     public void shutdown() {
         cleanupExecutor.shutdown();
         try {
@@ -87,23 +115,40 @@ public class DefaultRateLimiter implements RateLimiter {
             Thread.currentThread().interrupt();
         }
     }
-    
+
     /**
-     * Internal class to track request timestamps for a client
+     * Internal class tracking the tokens a client has left
      */
-    private static class RequestWindow {
-        private final java.util.List<Long> requestTimes = new java.util.ArrayList<>();
-        
-        public synchronized void addRequest(long timestamp) {
-            requestTimes.add(timestamp);
+    private static class TokenBucket {
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int capacity, long now) {
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        synchronized boolean hasToken(long now, int capacity, double tokensPerMs) {
+            refill(now, capacity, tokensPerMs);
+            return tokens >= 1;
+        }
+
+        synchronized void take(long now, int capacity, double tokensPerMs) {
+            refill(now, capacity, tokensPerMs);
+            // Requests that get through anyway (e.g. recorded without a check) can go into debt
+            tokens -= 1;
         }
-        
-        public synchronized void removeExpiredRequests(long currentTime) {
-            requestTimes.removeIf(time -> currentTime - time > 60000); // 1 minute window
+
+        synchronized boolean isFull(long now, int capacity, double tokensPerMs) {
+            refill(now, capacity, tokensPerMs);
+            return tokens >= capacity;
         }
-        
-        public synchronized int getRequestCount() {
-            return requestTimes.size();
+
+        private void refill(long now, int capacity, double tokensPerMs) {
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMs);
+                lastRefill = now;
+            }
         }
     }
-} 
\ No newline at end of file
+}
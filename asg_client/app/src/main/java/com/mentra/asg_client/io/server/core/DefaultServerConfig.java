@@ -12,16 +12,30 @@ public class DefaultServerConfig implements ServerConfig {
     private final String serverName;
     private final int maxRequestSize;
     private final int requestTimeout;
+    private final int maxWorkerThreads;
+    private final int maxQueuedConnections;
+    private final int keepAliveTimeout;
     private final boolean corsEnabled;
     private final String[] allowedOrigins;
     private final Context context;
     
     public DefaultServerConfig(int port, String serverName, int maxRequestSize, 
                               int requestTimeout, boolean corsEnabled, String[] allowedOrigins, Context context) {
+        this(port, serverName, maxRequestSize, requestTimeout, Builder.DEFAULT_MAX_WORKER_THREADS,
+             Builder.DEFAULT_MAX_QUEUED_CONNECTIONS, Builder.DEFAULT_KEEP_ALIVE_TIMEOUT,
+             corsEnabled, allowedOrigins, context);
+    }
+
+    public DefaultServerConfig(int port, String serverName, int maxRequestSize, int requestTimeout,
+                              int maxWorkerThreads, int maxQueuedConnections, int keepAliveTimeout,
+                              boolean corsEnabled, String[] allowedOrigins, Context context) {
         this.port = port;
         this.serverName = serverName;
         this.maxRequestSize = maxRequestSize;
         this.requestTimeout = requestTimeout;
+        this.maxWorkerThreads = maxWorkerThreads;
+        this.maxQueuedConnections = maxQueuedConnections;
+        this.keepAliveTimeout = keepAliveTimeout;
         this.corsEnabled = corsEnabled;
         this.allowedOrigins = allowedOrigins != null ? allowedOrigins.clone() : new String[0];
         this.context = context;
@@ -47,6 +61,21 @@ public class DefaultServerConfig implements ServerConfig {
         return requestTimeout;
     }
     
+    @Override
+    public int getMaxWorkerThreads() {
+        return maxWorkerThreads;
+    }
+    
+    @Override
+    public int getMaxQueuedConnections() {
+        return maxQueuedConnections;
+    }
+    
+    @Override
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+    
     @Override
     public boolean isCorsEnabled() {
         return corsEnabled;
@@ -66,10 +95,18 @@ public class DefaultServerConfig implements ServerConfig {
      * Builder for creating DefaultServerConfig instances
      */
     public static class Builder {
+        // A handful of phones plus a desktop sync tool; requests are mostly file streaming
+        static final int DEFAULT_MAX_WORKER_THREADS = 8;
+        static final int DEFAULT_MAX_QUEUED_CONNECTIONS = 32;
+        static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 15000; // 15 seconds
+
         private int port = 8089;
         private String serverName = "ASG Server";
         private int maxRequestSize = 1024 * 1024; // 1MB
         private int requestTimeout = 600000; // 10 minutes for large video transfers (was 30 seconds)
+        private int maxWorkerThreads = DEFAULT_MAX_WORKER_THREADS;
+        private int maxQueuedConnections = DEFAULT_MAX_QUEUED_CONNECTIONS;
+        private int keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
         private boolean corsEnabled = true;
         private String[] allowedOrigins = {"*"};
         private Context context;
@@ -94,6 +131,21 @@ public class DefaultServerConfig implements ServerConfig {
             return this;
         }
         
+        public Builder maxWorkerThreads(int maxWorkerThreads) {
+            this.maxWorkerThreads = maxWorkerThreads;
+            return this;
+        }
+        
+        public Builder maxQueuedConnections(int maxQueuedConnections) {
+            this.maxQueuedConnections = maxQueuedConnections;
+            return this;
+        }
+        
+        public Builder keepAliveTimeout(int keepAliveTimeout) {
+            this.keepAliveTimeout = keepAliveTimeout;
+            return this;
+        }
+        
         public Builder corsEnabled(boolean corsEnabled) {
             this.corsEnabled = corsEnabled;
             return this;
@@ -110,8 +162,9 @@ public class DefaultServerConfig implements ServerConfig {
         }
         
         public DefaultServerConfig build() {
-            return new DefaultServerConfig(port, serverName, maxRequestSize, 
-                                         requestTimeout, corsEnabled, allowedOrigins, context);
+            return new DefaultServerConfig(port, serverName, maxRequestSize, requestTimeout,
+                                         maxWorkerThreads, maxQueuedConnections, keepAliveTimeout,
+                                         corsEnabled, allowedOrigins, context);
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,125 @@
+package com.mentra.asg_client.io.server.core;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-route request counters and latency histograms for an {@link AsgServer}.
+ * <p>
+ * Latency is the time to produce the response, not to stream its body. Recording is lock free;
+ * routes beyond {@link #MAX_ROUTES} are counted under {@link #OTHER_ROUTE} so a client probing
+ * random paths can't grow the map.
+ */
+public class RouteMetrics {
+    public static final String OTHER_ROUTE = "other";
+    static final int MAX_ROUTES = 32;
+
+    // Upper bound of each latency bucket in ms; the last bucket is everything slower
+    private static final long[] BUCKET_LIMITS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Snapshot of one route's counters
+     */
+    public static class RouteStats {
+        public final long count;
+        public final long errors;
+        public final long averageMs;
+        public final long maxMs;
+        /** Upper bound of the latency bucket holding the 95th percentile */
+        public final long p95Ms;
+
+        RouteStats(long count, long errors, long averageMs, long maxMs, long p95Ms) {
+            this.count = count;
+            this.errors = errors;
+            this.averageMs = averageMs;
+            this.maxMs = maxMs;
+            this.p95Ms = p95Ms;
+        }
+    }
+
+    /**
+     * Record one request
+     * @param route Route key, e.g. the request path
+     * @param elapsedNanos Time taken to produce the response
+     * @param status HTTP status code; 5xx counts as an error
+     */
+    public void record(String route, long elapsedNanos, int status) {
+        Route stats = routes.get(route);
+        if (stats == null) {
+            stats = routes.size() < MAX_ROUTES
+                    ? routes.computeIfAbsent(route, k -> new Route())
+                    : routes.computeIfAbsent(OTHER_ROUTE, k -> new Route());
+        }
+        stats.record(elapsedNanos, status >= 500);
+    }
+
+    /**
+     * Counters for one route, or null if it has seen no requests
+     */
+    public RouteStats get(String route) {
+        Route stats = routes.get(route);
+        return stats != null ? stats.snapshot() : null;
+    }
+
+    /**
+     * All routes as nested maps, ready to be put in a JSON response
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new TreeMap<>();
+        for (Map.Entry<String, Route> entry : routes.entrySet()) {
+            RouteStats stats = entry.getValue().snapshot();
+            Map<String, Object> route = new TreeMap<>();
+            route.put("count", stats.count);
+            route.put("errors", stats.errors);
+            route.put("avg_ms", stats.averageMs);
+            route.put("max_ms", stats.maxMs);
+            route.put("p95_ms", stats.p95Ms);
+            result.put(entry.getKey(), route);
+        }
+        return result;
+    }
+
+    private static final class Route {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_LIMITS_MS.length + 1);
+
+        void record(long elapsedNanos, boolean error) {
+            count.incrementAndGet();
+            if (error) {
+                errors.incrementAndGet();
+            }
+            totalNanos.addAndGet(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+            long elapsedMs = elapsedNanos / 1_000_000;
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_MS.length && elapsedMs > BUCKET_LIMITS_MS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+
+        RouteStats snapshot() {
+            long n = count.get();
+            long maxMs = maxNanos.get() / 1_000_000;
+            long p95 = maxMs;
+            long threshold = (long) Math.ceil(n * 0.95);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_LIMITS_MS.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= threshold) {
+                    p95 = Math.min(BUCKET_LIMITS_MS[i], maxMs);
+                    break;
+                }
+            }
+            return new RouteStats(n, errors.get(), n == 0 ? 0 : totalNanos.get() / n / 1_000_000, maxMs, p95);
+        }
+    }
+}
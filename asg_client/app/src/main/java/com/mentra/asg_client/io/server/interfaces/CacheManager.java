@@ -42,4 +42,31 @@ public interface CacheManager {
      * @return Number of cached items
      */
     int size();
+    
+    /**
+     * Get the estimated memory held by cached items
+     * @return Cached bytes
+     */
+    long getSizeBytes();
+    
+    /**
+     * Get the memory budget the cache evicts down to
+     * @return Maximum cached bytes
+     */
+    long getMaxSizeBytes();
+    
+    /**
+     * @return Number of lookups that found a live entry
+     */
+    long getHitCount();
+    
+    /**
+     * @return Number of lookups that found nothing or an expired entry
+     */
+    long getMissCount();
+    
+    /**
+     * @return Number of entries evicted to stay within the memory budget
+     */
+    long getEvictionCount();
 } 
\ No newline at end of file
@@ -27,4 +27,9 @@ public interface RateLimiter {
      * Get the time window in milliseconds
      */
     long getTimeWindow();
+    
+    /**
+     * Get the number of requests rejected so far
+     */
+    long getRejectedCount();
 } 
\ No newline at end of file
@@ -26,6 +26,21 @@ public interface ServerConfig {
      * Get the request timeout in milliseconds
      */
     int getRequestTimeout();
+
+    /**
+     * Get the number of worker threads serving connections
+     */
+    int getMaxWorkerThreads();
+
+    /**
+     * Get how many connections may wait for a worker before new ones are turned away with a 503
+     */
+    int getMaxQueuedConnections();
+
+    /**
+     * Get how long an idle keep-alive connection may wait for its next request in milliseconds
+     */
+    int getKeepAliveTimeout();
     
     /**
      * Check if CORS is enabled
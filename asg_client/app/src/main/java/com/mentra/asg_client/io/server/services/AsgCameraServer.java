@@ -1,6 +1,5 @@
 package com.mentra.asg_client.io.server.services;
 
-import android.media.MediaMetadataRetriever;
 import android.os.Build;
 
 import com.mentra.asg_client.io.server.core.AsgServer;
@@ -9,9 +8,11 @@ import com.mentra.asg_client.logging.Logger;
 import com.mentra.asg_client.io.file.core.FileManager;
 import com.mentra.asg_client.io.file.core.FileManager.FileMetadata;
 import com.mentra.asg_client.io.file.core.FileManager.FileOperationResult;
+import com.mentra.asg_client.io.file.managers.MediaCatalogManager;
+import com.mentra.asg_client.io.file.managers.MediaSidecarStore;
+import com.mentra.asg_client.sensors.ImuSidecarFile;
 import com.mentra.asg_client.utils.GallerySyncFilter;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
@@ -21,6 +22,11 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // JSON parsing imports
 import org.json.JSONArray;
@@ -41,6 +47,9 @@ public class AsgCameraServer extends AsgServer {
     private static final int DEFAULT_PORT = 8089;
     /** If phone last_sync_time is this far ahead of glasses clock, treat as full sync. */
     private static final long CLOCK_SKEW_TOLERANCE_MS = 60_000L;
+    /** Default and maximum number of entries per delta-sync page. */
+    private static final int DEFAULT_SYNC_PAGE_SIZE = 200;
+    private static final int MAX_SYNC_PAGE_SIZE = 1000;
 
     /**
      * Provider that returns the capture ID (directory name, e.g. "VID_xxx") of an
@@ -67,6 +76,9 @@ public class AsgCameraServer extends AsgServer {
     // Cache for latest photo metadata
     private FileMetadata latestPhotoMetadata;
 
+    // Computes the next archive entry's checksum while the current one streams
+    private final ExecutorService archiveChecksumExecutor = newArchiveChecksumExecutor();
+
     /**
      * Callback interface for handling "take-picture" requests.
      */
@@ -127,7 +139,7 @@ public class AsgCameraServer extends AsgServer {
                 return handleTakePicture();
             case "/api/latest-photo":
                 logger.debug(TAG, "🖼️ Serving latest photo");
-                return serveLatestPhoto();
+                return serveLatestPhoto(session);
             case "/api/gallery":
                 logger.debug(TAG, "📚 Serving photo gallery");
                 return serveGallery(session);
@@ -155,6 +167,9 @@ public class AsgCameraServer extends AsgServer {
             case "/api/sync-batch":
                 logger.debug(TAG, "📦 Serving batch sync request");
                 return serveBatchSync(session);
+            case "/api/sync-archive":
+                logger.debug(TAG, "📦 Serving archive sync request");
+                return serveArchiveSync(session);
             case "/api/sync-status":
                 logger.debug(TAG, "📊 Serving sync status request");
                 return serveSyncStatus(session);
@@ -196,7 +211,7 @@ public class AsgCameraServer extends AsgServer {
     /**
      * Serve the latest photo using the file management system.
      */
-    private Response serveLatestPhoto() {
+    private Response serveLatestPhoto(IHTTPSession session) {
         logger.debug(TAG, "🖼️ =========================================");
         logger.debug(TAG, "🖼️ LATEST PHOTO REQUEST HANDLER");
         logger.debug(TAG, "🖼️ =========================================");
@@ -216,42 +231,10 @@ public class AsgCameraServer extends AsgServer {
                 return createErrorResponse(Response.Status.NOT_FOUND, "Photo file not found");
             }
 
-            // Check cache first
-            String cacheKey = "latest_" + latestPhoto.getLastModified();
-            Object cachedData = cacheManager.get(cacheKey);
-
-            if (cachedData != null) {
-                byte[] cachedBytes = (byte[]) cachedData;
-                logger.debug(TAG, "🖼️ ✅ Serving latest photo from cache (" + cachedBytes.length + " bytes)");
-                return newChunkedResponse(Response.Status.OK, "image/jpeg", new java.io.ByteArrayInputStream(cachedBytes));
-            }
-
-            // For small files, read into memory and cache; for large files, stream directly
-            long fileLength = photoFile.length();
-            if (fileLength <= MAX_FILE_SIZE) {
-                logger.debug(TAG, "🖼️ 📖 Reading photo file from disk for caching...");
-                try (FileInputStream fis = new FileInputStream(photoFile)) {
-                    byte[] fileData;
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                        fileData = fis.readAllBytes();
-                    } else {
-                        fileData = new byte[(int) fileLength];
-                        new DataInputStream(fis).readFully(fileData);
-                    }
-                    logger.debug(TAG, "🖼️ 📖 File read successfully: " + fileData.length + " bytes");
-
-                    logger.debug(TAG, "🖼️ 💾 Caching photo data...");
-                    cacheManager.put(cacheKey, fileData, 300000); // Cache for 5 minutes
-
-                    logger.debug(TAG, "🖼️ ✅ Serving latest photo: " + latestPhoto.getFileName() + " (" + fileData.length + " bytes)");
-                    return newChunkedResponse(Response.Status.OK, "image/jpeg", new java.io.ByteArrayInputStream(fileData));
-                }
-            } else {
-                // Stream large files directly without loading into memory
-                logger.debug(TAG, "🖼️ 📖 Streaming large photo file: " + fileLength + " bytes");
-                BufferedInputStream bis = new BufferedInputStream(new FileInputStream(photoFile), 65536);
-                return newChunkedResponse(Response.Status.OK, "image/jpeg", bis);
-            }
+            // Stream straight from the file; the kernel page cache already keeps the
+            // latest JPEG hot, and ETag lets pollers get 304s instead of the body
+            logger.debug(TAG, "🖼️ ✅ Serving latest photo: " + latestPhoto.getFileName() + " (" + photoFile.length() + " bytes)");
+            return serveFileWithRanges(session, photoFile, "image/jpeg", null);
         } catch (Exception e) {
             logger.error(TAG, "🖼️ 💥 Error reading latest photo: " + e.getMessage(), e);
             return createErrorResponse(Response.Status.INTERNAL_ERROR, "Error reading photo file");
@@ -451,23 +434,29 @@ public class AsgCameraServer extends AsgServer {
 
         try {
             // Get file using FileManager (security validation is handled automatically)
-            File mediaFile = fileManager.getFile(fileManager.getDefaultPackageName(), filename);
+            String storedName = resolveStoredFileName(filename);
+            File mediaFile = fileManager.getFile(fileManager.getDefaultPackageName(), storedName);
             if (mediaFile == null || !mediaFile.exists()) {
                 logger.warn(TAG, "🖼️ Media file not found: " + filename);
                 return createErrorResponse(Response.Status.NOT_FOUND, "Media file not found");
             }
 
             // Get metadata for MIME type
-            FileMetadata metadata = fileManager.getFileMetadata(fileManager.getDefaultPackageName(), filename);
+            FileMetadata metadata = fileManager.getFileMetadata(fileManager.getDefaultPackageName(), storedName);
             String mimeType = metadata != null ? metadata.getMimeType() : "image/jpeg";
 
+            // Binary IMU sidecars are served as imu.json, exported on first request
+            if (!storedName.equals(filename)) {
+                return serveImageFile(session, ImuSidecarFile.exportJson(mediaFile), filename, "application/json");
+            }
+
             // Check if it's a video file - serve thumbnail instead of full video
             if (isVideoFile(filename)) {
                 logger.debug(TAG, "🎥 Video file detected: " + filename);
-                return serveVideoThumbnail(mediaFile, filename);
+                return serveVideoThumbnail(session, mediaFile, filename);
             } else {
                 logger.debug(TAG, "🖼️ Image file detected: " + filename);
-                return serveImageFile(mediaFile, filename, mimeType);
+                return serveImageFile(session, mediaFile, filename, mimeType);
             }
         } catch (Exception e) {
             logger.error(TAG, "🖼️ Error reading media file " + filename + ": " + e.getMessage(), e);
@@ -478,7 +467,7 @@ public class AsgCameraServer extends AsgServer {
     /**
      * Serve video thumbnail
      */
-    private Response serveVideoThumbnail(File videoFile, String filename) {
+    private Response serveVideoThumbnail(IHTTPSession session, File videoFile, String filename) {
         logger.debug(TAG, "🎥 Generating/serving thumbnail for video: " + filename);
         
         try {
@@ -491,12 +480,8 @@ public class AsgCameraServer extends AsgServer {
             }
             
             // Use fixed-length response so clients can validate download integrity
-            long thumbSize = thumbnailFile.length();
-            logger.debug(TAG, "🎥 Streaming video thumbnail: " + filename + " (" + thumbSize + " bytes)");
-            BufferedInputStream bis = new BufferedInputStream(new FileInputStream(thumbnailFile), 65536);
-            Response response = newFixedLengthResponse(Response.Status.OK, "image/jpeg", bis, thumbSize);
-            response.addHeader("Content-Length", String.valueOf(thumbSize));
-            return response;
+            logger.debug(TAG, "🎥 Streaming video thumbnail: " + filename + " (" + thumbnailFile.length() + " bytes)");
+            return serveFileWithRanges(session, thumbnailFile, "image/jpeg", null);
         } catch (Exception e) {
             logger.error(TAG, "🎥 Error serving video thumbnail " + filename + ": " + e.getMessage(), e);
             return createErrorResponse(Response.Status.INTERNAL_ERROR, "Error serving video thumbnail");
@@ -506,7 +491,7 @@ public class AsgCameraServer extends AsgServer {
     /**
      * Serve image file
      */
-    private Response serveImageFile(File imageFile, String filename, String mimeType) {
+    private Response serveImageFile(IHTTPSession session, File imageFile, String filename, String mimeType) {
         logger.debug(TAG, "🖼️ Streaming image file: " + filename + " (" + imageFile.length() + " bytes)");
 
         try {
@@ -514,17 +499,77 @@ public class AsgCameraServer extends AsgServer {
             // integrity after download. Chunked responses lack Content-Length, which
             // means a graceful TCP close mid-transfer looks identical to a completed
             // download on Android (HttpURLConnection treats EOF as success).
-            long fileSize = imageFile.length();
-            BufferedInputStream bis = new BufferedInputStream(new FileInputStream(imageFile), 65536);
-            Response response = newFixedLengthResponse(Response.Status.OK, mimeType, bis, fileSize);
-            response.addHeader("Content-Length", String.valueOf(fileSize));
-            return response;
+            return serveFileWithRanges(session, imageFile, mimeType, null);
         } catch (Exception e) {
             logger.error(TAG, "🖼️ Error reading image file " + filename + ": " + e.getMessage(), e);
             return createErrorResponse(Response.Status.INTERNAL_ERROR, "Error reading image file");
         }
     }
     
+    /**
+     * Serve a file as a fixed-length response with ETag / Last-Modified validators and
+     * single byte-range support (Range, If-Range, If-None-Match).
+     * The body is read from a FileChannel window straight into NanoHTTPD's send buffer,
+     * so full and partial responses need no per-request heap buffer.
+     *
+     * @param session      HTTP session carrying the request headers (may be null)
+     * @param file         File to serve
+     * @param mimeType     Content type of the file
+     * @param extraHeaders Additional response headers, or null
+     */
+    private Response serveFileWithRanges(IHTTPSession session, File file, String mimeType,
+                                         Map<String, String> extraHeaders) throws IOException {
+        long totalLength = file.length();
+        long lastModified = file.lastModified();
+        String etag = HttpRange.etagFor(totalLength, lastModified);
+        Map<String, String> requestHeaders = session != null ? session.getHeaders() : Collections.emptyMap();
+
+        Response response;
+        HttpRange range = null;
+        if (HttpRange.notModified(requestHeaders.get("if-none-match"), etag)) {
+            response = newFixedLengthResponse(Response.Status.NOT_MODIFIED, mimeType, "");
+        } else {
+            if (HttpRange.ifRangeMatches(requestHeaders.get("if-range"), etag, lastModified)) {
+                range = HttpRange.parse(requestHeaders.get("range"), totalLength);
+            }
+
+            if (range == HttpRange.UNSATISFIABLE) {
+                logger.warn(TAG, "⬇️ Unsatisfiable range " + requestHeaders.get("range") + " for " + file.getName() + " (" + totalLength + " bytes)");
+                response = newFixedLengthResponse(Response.Status.RANGE_NOT_SATISFIABLE, "text/plain", "");
+                response.addHeader("Content-Range", "bytes */" + totalLength);
+            } else {
+                long start = range != null ? range.getStart() : 0;
+                long length = range != null ? range.getLength() : totalLength;
+                InputStream body = new FileChannelInputStream(file, start, length);
+
+                // For very large bodies (>100MB), use a keep-alive wrapper so the
+                // connection doesn't time out during slow transfers
+                if (length > 100 * 1024 * 1024) {
+                    logger.debug(TAG, "⬇️ 🔄 Large body detected, using keep-alive stream wrapper");
+                    body = new KeepAliveInputStream(body);
+                }
+
+                Response.Status status = range != null ? Response.Status.PARTIAL_CONTENT : Response.Status.OK;
+                response = newFixedLengthResponse(status, mimeType, body, length);
+                response.addHeader("Content-Length", String.valueOf(length));
+                if (range != null) {
+                    response.addHeader("Content-Range", range.toContentRange(totalLength));
+                    logger.debug(TAG, "⬇️ Serving range " + range.toContentRange(totalLength) + " of " + file.getName());
+                }
+            }
+        }
+
+        response.addHeader("Accept-Ranges", "bytes");
+        response.addHeader("ETag", etag);
+        response.addHeader("Last-Modified", HttpRange.formatHttpDate(lastModified));
+        if (extraHeaders != null) {
+            for (Map.Entry<String, String> header : extraHeaders.entrySet()) {
+                response.addHeader(header.getKey(), header.getValue());
+            }
+        }
+        return response;
+    }
+
     /**
      * Check if a file is a video file
      */
@@ -595,7 +640,7 @@ public class AsgCameraServer extends AsgServer {
         String lower = leaf.toLowerCase();
 
         // Sidecar files
-        if (lower.equals("imu.json")) return "sidecar";
+        if (lower.equals(ImuSidecarFile.JSON_NAME) || lower.equals(ImuSidecarFile.BINARY_NAME)) return "sidecar";
 
         // Bracket files (ev-2.jpg, ev0.jpg, ev2.jpg)
         if (lower.matches("ev-?\\d+\\.jpe?g")) return "bracket";
@@ -616,7 +661,41 @@ public class AsgCameraServer extends AsgServer {
     private boolean isImuSidecar(String filename) {
         if (filename == null) return false;
         String leaf = filename.contains("/") ? filename.substring(filename.lastIndexOf('/') + 1) : filename;
-        return leaf.equalsIgnoreCase("imu.json");
+        return leaf.equalsIgnoreCase(ImuSidecarFile.JSON_NAME) || leaf.equalsIgnoreCase(ImuSidecarFile.BINARY_NAME);
+    }
+
+    /**
+     * Check if a file is a binary IMU sidecar (imu.bin). Clients only know the JSON sidecar, so these
+     * are advertised as imu.json and exported when first requested.
+     */
+    private boolean isBinaryImuSidecar(String filename) {
+        if (filename == null) return false;
+        String leaf = filename.contains("/") ? filename.substring(filename.lastIndexOf('/') + 1) : filename;
+        return leaf.equalsIgnoreCase(ImuSidecarFile.BINARY_NAME);
+    }
+
+    /** Name a stored file is advertised under: imu.bin is listed as imu.json in the same folder. */
+    private String advertisedFileName(String fileName) {
+        if (!isBinaryImuSidecar(fileName)) return fileName;
+        return fileName.substring(0, fileName.length() - ImuSidecarFile.BINARY_NAME.length())
+                + ImuSidecarFile.JSON_NAME;
+    }
+
+    /**
+     * Map a requested name to the file on disk. An imu.json request resolves to the capture's imu.bin
+     * when no JSON sidecar was written; callers export it with {@link ImuSidecarFile#exportJson}.
+     */
+    private String resolveStoredFileName(String fileName) {
+        if (fileName == null || !fileName.toLowerCase().endsWith("/" + ImuSidecarFile.JSON_NAME)) {
+            return fileName;
+        }
+        String packageName = fileManager.getDefaultPackageName();
+        File json = fileManager.getFile(packageName, fileName);
+        if (json != null && json.exists()) return fileName;
+        String binaryName = fileName.substring(0, fileName.length() - ImuSidecarFile.JSON_NAME.length())
+                + ImuSidecarFile.BINARY_NAME;
+        File binary = fileManager.getFile(packageName, binaryName);
+        return binary != null && binary.exists() ? binaryName : fileName;
     }
 
     /**
@@ -748,14 +827,15 @@ public class AsgCameraServer extends AsgServer {
 
         try {
             // Get file using FileManager (security validation is handled automatically)
-            File photoFile = fileManager.getFile(fileManager.getDefaultPackageName(), filename);
+            String storedName = resolveStoredFileName(filename);
+            File photoFile = fileManager.getFile(fileManager.getDefaultPackageName(), storedName);
             if (photoFile == null || !photoFile.exists()) {
                 logger.warn(TAG, "⬇️ ❌ Photo file not found: " + filename);
                 return createErrorResponse(Response.Status.NOT_FOUND, "Photo not found");
             }
 
             FileMetadata downloadMetadata =
-                    fileManager.getFileMetadata(fileManager.getDefaultPackageName(), filename);
+                    fileManager.getFileMetadata(fileManager.getDefaultPackageName(), storedName);
             if (downloadMetadata != null && !shouldExposeServableFile(downloadMetadata)) {
                 logger.warn(TAG, "⬇️ ❌ Blocked download of unservable file: " + filename);
                 return createErrorResponse(Response.Status.CONFLICT, "File is not ready for download");
@@ -766,43 +846,29 @@ public class AsgCameraServer extends AsgServer {
             }
 
             // Get metadata for MIME type
-            FileMetadata metadata = fileManager.getFileMetadata(fileManager.getDefaultPackageName(), filename);
+            FileMetadata metadata = fileManager.getFileMetadata(fileManager.getDefaultPackageName(), storedName);
             String mimeType = metadata != null ? metadata.getMimeType() : "image/jpeg";
 
+            // Binary IMU sidecars are downloaded as imu.json, exported on first request
+            if (!storedName.equals(filename)) {
+                photoFile = ImuSidecarFile.exportJson(photoFile);
+                mimeType = "application/json";
+            }
+
             Map<String, String> headers = new HashMap<>();
             headers.put("Content-Disposition", "attachment; filename=\"" + filename + "\"");
-            headers.put("Content-Type", mimeType);
-            headers.put("Content-Length", String.valueOf(photoFile.length()));
 
             // Add keep-alive headers to prevent timeout on long downloads
             headers.put("Connection", "keep-alive");
             headers.put("Keep-Alive", "timeout=300, max=100"); // 5 minute timeout, max 100 requests
-            
+
             logger.debug(TAG, "⬇️ 📋 Response headers: " + headers);
-            logger.debug(TAG, "⬇️ ✅ Starting download: " + filename + " (" + photoFile.length() + " bytes)");
-            
-            // Use BufferedInputStream with 64KB buffer for better performance and memory usage
-            // This prevents memory issues with large files and improves streaming performance
-            FileInputStream fileStream = new FileInputStream(photoFile);
-            java.io.BufferedInputStream bufferedStream = new java.io.BufferedInputStream(fileStream, 65536); // 64KB buffer
-            
-            // For very large files (>100MB), use a keep-alive wrapper to send periodic data
-            // This prevents the connection from timing out during slow transfers
-            java.io.InputStream finalStream = bufferedStream;
-            if (photoFile.length() > 100 * 1024 * 1024) { // 100MB threshold
-                logger.debug(TAG, "⬇️ 🔄 Large file detected, using keep-alive stream wrapper");
-                finalStream = new KeepAliveInputStream(bufferedStream);
-            }
-            
-            logger.debug(TAG, "⬇️ 📦 Using 64KB buffered stream for efficient transfer");
-            Response response = newChunkedResponse(Response.Status.OK, mimeType, finalStream);
-            
-            // Add the keep-alive headers to the response
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                response.addHeader(header.getKey(), header.getValue());
-            }
-            
-            return response;
+            logger.debug(TAG, "⬇️ ✅ Starting download: " + filename + " (" + photoFile.length() + " bytes)"
+                    + (session.getHeaders().containsKey("range") ? " range=" + session.getHeaders().get("range") : ""));
+
+            // Fixed-length, range-capable response: interrupted video syncs resume with
+            // Range/If-Range instead of restarting, and Content-Length lets clients detect truncation
+            return serveFileWithRanges(session, photoFile, mimeType, headers);
         } catch (Exception e) {
             logger.error(TAG, "⬇️ 💥 Error downloading photo " + filename + ": " + e.getMessage(), e);
             return createErrorResponse(Response.Status.INTERNAL_ERROR, "Error downloading photo file");
@@ -972,6 +1038,7 @@ public class AsgCameraServer extends AsgServer {
                         deleteSuccess = deletedCount > 0;
                         logger.debug(TAG, "🗑️ Deleted " + deletedCount + " flat files for capture: " + fileName);
                     }
+                    fileManager.notifyFileChanged(fileManager.getDefaultPackageName(), fileName);
 
                     Map<String, Object> result = new HashMap<>();
                     result.put("file", fileName);
@@ -989,8 +1056,9 @@ public class AsgCameraServer extends AsgServer {
                     results.add(result);
                 } else {
                     // Individual file deletion (backwards compat)
+                    String storedName = resolveStoredFileName(fileName);
                     // Get file metadata before deletion for size calculation
-                    FileMetadata metadata = fileManager.getFileMetadata(fileManager.getDefaultPackageName(), fileName);
+                    FileMetadata metadata = fileManager.getFileMetadata(fileManager.getDefaultPackageName(), storedName);
                     long fileSize = metadata != null ? metadata.getFileSize() : 0;
 
                     // If it's a video file, get the file reference before deletion for thumbnail cleanup
@@ -1000,7 +1068,7 @@ public class AsgCameraServer extends AsgServer {
                     }
 
                     // Delete the file
-                    FileOperationResult deleteResult = fileManager.deleteFile(fileManager.getDefaultPackageName(), fileName);
+                    FileOperationResult deleteResult = fileManager.deleteFile(fileManager.getDefaultPackageName(), storedName);
 
                     Map<String, Object> result = new HashMap<>();
                     result.put("file", fileName);
@@ -1071,11 +1139,30 @@ public class AsgCameraServer extends AsgServer {
             status.put("port", getListeningPort());
             status.put("uptime", System.currentTimeMillis() - getStartTime());
             status.put("cache_size", cacheManager.size());
+            status.put("cache_bytes", cacheManager.getSizeBytes());
+            status.put("cache_max_bytes", cacheManager.getMaxSizeBytes());
+            status.put("cache_hits", cacheManager.getHitCount());
+            status.put("cache_misses", cacheManager.getMissCount());
+            status.put("cache_evictions", cacheManager.getEvictionCount());
+            status.put("rate_limit_rejected", rateLimiter.getRejectedCount());
             status.put("server_url", getServerUrl());
 
+            // Worker pool and per-route metrics
+            status.put("workers_max", workerPool.getMaxWorkers());
+            status.put("workers_active", workerPool.getActiveWorkers());
+            status.put("workers_peak", workerPool.getPeakWorkers());
+            status.put("queue_depth", workerPool.getQueueDepth());
+            status.put("queue_depth_max", workerPool.getMaxQueueDepth());
+            status.put("queue_wait_avg_ms", workerPool.getAverageQueueWaitMs());
+            status.put("queue_wait_max_ms", workerPool.getMaxQueueWaitMs());
+            status.put("connections_accepted", workerPool.getAcceptedConnections());
+            status.put("connections_rejected", workerPool.getRejectedConnections());
+            status.put("idle_connections_released", workerPool.getIdleConnectionsReleased());
+            status.put("routes", routeMetrics.toMap());
+
             // File management metrics
             status.put("package_name", fileManager.getDefaultPackageName());
-            status.put("total_photos", fileManager.listFiles(fileManager.getDefaultPackageName()).size());
+            status.put("total_photos", fileManager.getCatalogStats(fileManager.getDefaultPackageName()).fileCount);
             status.put("package_size", fileManager.getPackageSize(fileManager.getDefaultPackageName()));
             status.put("available_space", fileManager.getAvailableSpace());
             status.put("total_space", fileManager.getTotalSpace());
@@ -1083,6 +1170,11 @@ public class AsgCameraServer extends AsgServer {
             // Thumbnail metrics
             status.put("thumbnail_count", fileManager.getThumbnailManager().getThumbnailCount());
             status.put("thumbnail_directory_size", fileManager.getThumbnailManager().getThumbnailDirectorySize());
+            MediaSidecarStore sidecarStore = fileManager.getThumbnailManager().getSidecarStore();
+            status.put("media_sidecar_cache_entries", sidecarStore.getCachedCount());
+            status.put("media_sidecar_cache_bytes", sidecarStore.getCachedBytes());
+            status.put("media_sidecar_cache_hits", sidecarStore.getHitCount());
+            status.put("media_sidecar_cache_misses", sidecarStore.getMissCount());
 
             // Performance metrics from file manager
             var performanceStats = fileManager.getOperationLogger().getPerformanceStats();
@@ -1247,7 +1339,17 @@ public class AsgCameraServer extends AsgServer {
 
     /**
      * Serve sync request for efficient client-side synchronization.
-     * Returns only files that have changed since the last sync.
+     * <p>
+     * Two modes are supported:
+     * <ul>
+     *   <li>Delta mode ({@code cursor} parameter present, empty for the first sync): returns one
+     *       page of changes and tombstones after the cursor from the media catalog's change
+     *       log, plus {@code next_cursor}/{@code has_more} for pagination. A client moving over
+     *       from legacy mode also sends {@code last_sync_time} while it walks from an empty
+     *       cursor, so files it already has are skipped.</li>
+     *   <li>Legacy mode ({@code last_sync_time}): returns files modified after that time and
+     *       the names of files deleted after that time.</li>
+     * </ul>
      */
     private Response serveSync(IHTTPSession session) {
         logger.debug(TAG, "🔄 =========================================");
@@ -1262,6 +1364,8 @@ public class AsgCameraServer extends AsgServer {
         }
         String clientId = params.get("client_id");
         String includeThumbnails = params.get("include_thumbnails");
+        String cursor = params.get("cursor");
+        boolean deltaMode = cursor != null;
 
         // Validate client ID
         if (clientId == null || clientId.trim().isEmpty()) {
@@ -1279,6 +1383,17 @@ public class AsgCameraServer extends AsgServer {
             }
         }
 
+        int limit = DEFAULT_SYNC_PAGE_SIZE;
+        String limitParam = params.get("limit");
+        if (deltaMode && limitParam != null && !limitParam.isEmpty()) {
+            try {
+                limit = Math.max(1, Math.min(Integer.parseInt(limitParam), MAX_SYNC_PAGE_SIZE));
+            } catch (NumberFormatException e) {
+                logger.warn(TAG, "🔄 ❌ Invalid limit parameter: " + limitParam);
+                return createErrorResponse(Response.Status.BAD_REQUEST, "Invalid limit parameter");
+            }
+        }
+
         long glassesNow = System.currentTimeMillis();
         if (lastSyncTime > glassesNow + CLOCK_SKEW_TOLERANCE_MS) {
             logger.warn(TAG, "🔄 ⏰ last_sync_time is in the future vs glasses clock (last_sync="
@@ -1288,128 +1403,51 @@ public class AsgCameraServer extends AsgServer {
         }
 
         boolean includeThumbnailsFlag = "true".equalsIgnoreCase(includeThumbnails);
+        String packageName = fileManager.getDefaultPackageName();
 
         try {
-            logger.debug(TAG, "🔄 📊 Processing sync request for client: " + clientId);
-            logger.debug(TAG, "🔄 📊 Last sync time: " + lastSyncTime + " (" + new Date(lastSyncTime) + ")");
-
-            // Get all files
-            List<FileMetadata> allFiles = fileManager.listFiles(fileManager.getDefaultPackageName());
+            logger.debug(TAG, "🔄 📊 Processing " + (deltaMode ? "delta" : "legacy") + " sync request for client: " + clientId);
+
+            List<FileMetadata> candidateFiles;
+            // Tombstone objects in delta mode; legacy clients expect plain file names
+            List<Object> deletedFiles = new ArrayList<>();
+            MediaCatalogManager.ChangeSet changeSet = null;
+
+            if (deltaMode) {
+                logger.debug(TAG, "🔄 📊 Cursor: " + (cursor.isEmpty() ? "(initial)" : cursor) + ", limit: " + limit);
+                int released = fileManager.releaseDeferredSyncFiles(packageName, this::isActiveRecording);
+                if (released > 0) {
+                    logger.debug(TAG, "🔄 Re-announcing " + released + " previously deferred file(s)");
+                }
+                changeSet = fileManager.getChangesSince(packageName, cursor, limit);
+                candidateFiles = changeSet.changed;
+                for (MediaCatalogManager.Tombstone tombstone : changeSet.deleted) {
+                    deletedFiles.add(buildDeletedFileInfo(tombstone));
+                }
+            } else {
+                logger.debug(TAG, "🔄 📊 Last sync time: " + lastSyncTime + " (" + new Date(lastSyncTime) + ")");
+                // Only files modified after last sync, answered from the media catalog
+                candidateFiles = fileManager.listFilesModifiedSince(packageName, lastSyncTime);
+                for (MediaCatalogManager.Tombstone tombstone : fileManager.getDeletionsSince(packageName, lastSyncTime)) {
+                    deletedFiles.add(advertisedFileName(tombstone.relativePath));
+                }
+            }
 
             // Filter files that have changed since last sync
             List<Map<String, Object>> changedFiles = new ArrayList<>();
-            List<Map<String, Object>> deletedFiles = new ArrayList<>();
-
-            // For now, we'll return all files since we don't track deletions
-            // In a more sophisticated implementation, you'd track deletions separately
-            for (FileMetadata fileMetadata : allFiles) {
-                if (fileMetadata.getLastModified() > lastSyncTime) {
-                    // Skip files that are actively being recorded or not yet servable
-                    if (!shouldExposeServableFile(fileMetadata)) {
-                        if (isActiveRecording(fileMetadata.getFileName())) {
-                            logger.debug(TAG, "🔄 Skipping active recording: " + fileMetadata.getFileName());
-                        }
-                        continue;
-                    }
-
-                    // Skip and delete AVIF transfer artifacts - these should not be synced to mobile
-                    if (isAvifTransferArtifact(fileMetadata.getFileName())) {
-                        logger.debug(TAG, "🔄 Found AVIF transfer artifact, deleting: " + fileMetadata.getFileName());
-
-                        // Delete the AVIF file to clean up storage
-                        try {
-                            FileOperationResult deleteResult = fileManager.deleteFile(fileManager.getDefaultPackageName(), fileMetadata.getFileName());
-                            if (deleteResult.isSuccess()) {
-                                logger.info(TAG, "🗑️ Successfully deleted AVIF transfer artifact: " + fileMetadata.getFileName() + " (" + fileMetadata.getFileSize() + " bytes)");
-                            } else {
-                                logger.warn(TAG, "⚠️ Failed to delete AVIF transfer artifact: " + fileMetadata.getFileName() + " - " + deleteResult.getMessage());
-                            }
-                        } catch (Exception e) {
-                            logger.error(TAG, "💥 Error deleting AVIF transfer artifact: " + fileMetadata.getFileName(), e);
-                        }
-                        continue;
-                    }
-
-                    Map<String, Object> fileInfo = new HashMap<>();
-                    fileInfo.put("name", fileMetadata.getFileName());
-                    fileInfo.put("size", fileMetadata.getFileSize());
-                    fileInfo.put("modified", fileMetadata.getLastModified());
-                    fileInfo.put("mime_type", fileMetadata.getMimeType());
-                    fileInfo.put("url", "/api/photo?file=" + fileMetadata.getFileName());
-                    fileInfo.put("download", "/api/download?file=" + fileMetadata.getFileName());
-
-                    // Add media type, thumbnail, and duration information
-                    if (isVideoFile(fileMetadata.getFileName())) {
-                        fileInfo.put("is_video", true);
-                        if (includeThumbnailsFlag) {
-                            // Include base64 thumbnail data for immediate display
-                            try {
-                                File videoFile = fileManager.getFile(fileManager.getDefaultPackageName(), fileMetadata.getFileName());
-                                if (videoFile != null && videoFile.exists()) {
-                                    File thumbnailFile = fileManager.getThumbnailManager().getOrCreateThumbnail(videoFile);
-                                    if (thumbnailFile != null && thumbnailFile.exists()) {
-                                        try (FileInputStream fis = new FileInputStream(thumbnailFile)) {
-                                            byte[] thumbnailData;
-                                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                                                thumbnailData = fis.readAllBytes();
-                                            } else {
-                                                thumbnailData = new byte[(int) thumbnailFile.length()];
-                                                new DataInputStream(fis).readFully(thumbnailData);
-                                            }
-                                            String thumbnailBase64 = android.util.Base64.encodeToString(thumbnailData, android.util.Base64.DEFAULT);
-                                            fileInfo.put("thumbnail_data", thumbnailBase64);
-                                        }
-                                    }
-
-                                    // Extract video duration
-                                    try {
-                                        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-                                        retriever.setDataSource(videoFile.getAbsolutePath());
-                                        String durationStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-                                        retriever.release();
-                                        if (durationStr != null) {
-                                            fileInfo.put("duration", Long.parseLong(durationStr));
-                                        }
-                                    } catch (Exception e) {
-                                        logger.warn(TAG, "Failed to extract duration for " + fileMetadata.getFileName() + ": " + e.getMessage());
-                                    }
-                                }
-                            } catch (Exception e) {
-                                logger.warn(TAG, "Failed to include thumbnail for " + fileMetadata.getFileName() + ": " + e.getMessage());
-                            }
-                            fileInfo.put("thumbnail_url", "/api/photo?file=" + fileMetadata.getFileName());
-                        }
-                    } else {
-                        fileInfo.put("is_video", false);
-                        if (includeThumbnailsFlag) {
-                            // Include base64 thumbnail data for photos too
-                            try {
-                                File imageFile = fileManager.getFile(fileManager.getDefaultPackageName(), fileMetadata.getFileName());
-                                if (imageFile != null && imageFile.exists()) {
-                                    File thumbnailFile = fileManager.getThumbnailManager().getOrCreateImageThumbnail(imageFile);
-                                    if (thumbnailFile != null && thumbnailFile.exists()) {
-                                        try (FileInputStream fis = new FileInputStream(thumbnailFile)) {
-                                            byte[] thumbnailData;
-                                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                                                thumbnailData = fis.readAllBytes();
-                                            } else {
-                                                thumbnailData = new byte[(int) thumbnailFile.length()];
-                                                new DataInputStream(fis).readFully(thumbnailData);
-                                            }
-                                            String thumbnailBase64 = android.util.Base64.encodeToString(thumbnailData, android.util.Base64.DEFAULT);
-                                            fileInfo.put("thumbnail_data", thumbnailBase64);
-                                        }
-                                    }
-                                }
-                            } catch (Exception e) {
-                                logger.warn(TAG, "Failed to include photo thumbnail for " + fileMetadata.getFileName() + ": " + e.getMessage());
-                            }
-                        }
-                    }
-
+            List<String> deferredFiles = deltaMode ? new ArrayList<>() : null;
+            for (FileMetadata fileMetadata : candidateFiles) {
+                if (fileMetadata.getLastModified() <= lastSyncTime) {
+                    continue;
+                }
+                Map<String, Object> fileInfo = buildSyncFileInfo(fileMetadata, includeThumbnailsFlag, deferredFiles);
+                if (fileInfo != null) {
                     changedFiles.add(fileInfo);
                 }
             }
+            if (deferredFiles != null && !deferredFiles.isEmpty()) {
+                fileManager.deferSyncFiles(packageName, deferredFiles);
+            }
 
             // Sort files by modification time (oldest first) for chronological sync
             // This ensures older captures are synced first, building gallery chronologically
@@ -1421,71 +1459,7 @@ public class AsgCameraServer extends AsgServer {
                 return Long.compare(modified1, modified2);  // Oldest first
             });
 
-            // Group files into captures
-            Map<String, List<Map<String, Object>>> captureGroups = new LinkedHashMap<>();
-            for (Map<String, Object> fileInfo : changedFiles) {
-                String name = (String) fileInfo.get("name");
-                String captureId = deriveCaptureId(name);
-                captureGroups.computeIfAbsent(captureId, k -> new ArrayList<>()).add(fileInfo);
-            }
-
-            // Build captures array
-            List<Map<String, Object>> captures = new ArrayList<>();
-            for (Map.Entry<String, List<Map<String, Object>>> entry : captureGroups.entrySet()) {
-                String captureId = entry.getKey();
-                List<Map<String, Object>> captureFiles = entry.getValue();
-
-                Map<String, Object> capture = new HashMap<>();
-                capture.put("capture_id", captureId);
-
-                // Determine type from primary file
-                boolean isVideo = captureId.startsWith("VID_") || captureId.startsWith("BUFFER_");
-                capture.put("type", isVideo ? "video" : "photo");
-
-                // Calculate total size and find timestamp
-                long captureTotalSize = 0;
-                long captureTimestamp = 0;
-                String thumbnailData = null;
-                Long duration = null;
-
-                List<Map<String, Object>> fileList = new ArrayList<>();
-                for (Map<String, Object> file : captureFiles) {
-                    String fileName = (String) file.get("name");
-                    long fileSize = (Long) file.get("size");
-                    captureTotalSize += fileSize;
-
-                    long modified = (Long) file.get("modified");
-                    if (modified > captureTimestamp) captureTimestamp = modified;
-
-                    // Assign role based on filename
-                    String role = assignFileRole(fileName);
-
-                    Map<String, Object> captureFile = new HashMap<>();
-                    captureFile.put("name", fileName);
-                    captureFile.put("size", fileSize);
-                    captureFile.put("role", role);
-                    fileList.add(captureFile);
-
-                    // Grab thumbnail from primary file
-                    if ("primary".equals(role) && file.containsKey("thumbnail_data")) {
-                        thumbnailData = (String) file.get("thumbnail_data");
-                    }
-                    if ("primary".equals(role) && file.containsKey("duration")) {
-                        duration = (Long) file.get("duration");
-                    }
-                }
-
-                capture.put("timestamp", captureTimestamp);
-                capture.put("total_size", captureTotalSize);
-                capture.put("files", fileList);
-                if (thumbnailData != null) {
-                    capture.put("thumbnail_data", thumbnailData);
-                }
-                if (duration != null) {
-                    capture.put("duration", duration);
-                }
-                captures.add(capture);
-            }
+            List<Map<String, Object>> captures = buildSyncCaptures(changedFiles);
 
             // Calculate sync statistics
             long currentTime = System.currentTimeMillis();
@@ -1505,10 +1479,17 @@ public class AsgCameraServer extends AsgServer {
             syncData.put("total_deleted", deletedFiles.size());
             syncData.put("total_size", totalSize);
             syncData.put("server_time", currentTime);
+            if (changeSet != null) {
+                syncData.put("sync_mode", "delta");
+                syncData.put("next_cursor", changeSet.nextCursor);
+                syncData.put("has_more", changeSet.hasMore);
+                syncData.put("full_resync", changeSet.fullResync);
+            }
 
             logger.debug(TAG, "🔄 ✅ Sync completed: " + captures.size() + " captures, " +
                            changedFiles.size() + " changed files, " +
-                           deletedFiles.size() + " deleted files, " + totalSize + " bytes");
+                           deletedFiles.size() + " deleted files, " + totalSize + " bytes" +
+                           (changeSet != null ? ", next_cursor=" + changeSet.nextCursor + ", has_more=" + changeSet.hasMore : ""));
 
             return createSuccessResponse(syncData);
         } catch (Exception e) {
@@ -1517,9 +1498,189 @@ public class AsgCameraServer extends AsgServer {
         }
     }
 
+    /**
+     * Build the per-file sync entry, or return null if the file must not be synced.
+     * AVIF transfer artifacts found here are deleted.
+     *
+     * @param deferredFiles In delta mode, collects files skipped only because they are still
+     *                      recording; they are re-announced once servable, since the cursor
+     *                      moves past them. Null in legacy mode.
+     */
+    private Map<String, Object> buildSyncFileInfo(FileMetadata fileMetadata, boolean includeThumbnailsFlag,
+                                                  List<String> deferredFiles) {
+        // Skip files that are actively being recorded or not yet servable
+        if (!shouldExposeServableFile(fileMetadata)) {
+            if (isActiveRecording(fileMetadata.getFileName())) {
+                logger.debug(TAG, "🔄 Skipping active recording: " + fileMetadata.getFileName());
+                if (deferredFiles != null) {
+                    deferredFiles.add(fileMetadata.getFileName());
+                }
+            }
+            return null;
+        }
+
+        // Skip and delete AVIF transfer artifacts - these should not be synced to mobile
+        if (isAvifTransferArtifact(fileMetadata.getFileName())) {
+            logger.debug(TAG, "🔄 Found AVIF transfer artifact, deleting: " + fileMetadata.getFileName());
+
+            // Delete the AVIF file to clean up storage
+            try {
+                FileOperationResult deleteResult = fileManager.deleteFile(fileManager.getDefaultPackageName(), fileMetadata.getFileName());
+                if (deleteResult.isSuccess()) {
+                    logger.info(TAG, "🗑️ Successfully deleted AVIF transfer artifact: " + fileMetadata.getFileName() + " (" + fileMetadata.getFileSize() + " bytes)");
+                } else {
+                    logger.warn(TAG, "⚠️ Failed to delete AVIF transfer artifact: " + fileMetadata.getFileName() + " - " + deleteResult.getMessage());
+                }
+            } catch (Exception e) {
+                logger.error(TAG, "💥 Error deleting AVIF transfer artifact: " + fileMetadata.getFileName(), e);
+            }
+            return null;
+        }
+
+        Map<String, Object> fileInfo = new HashMap<>();
+        if (isBinaryImuSidecar(fileMetadata.getFileName())) {
+            // Listed under the name clients download. The JSON size is only known once exported;
+            // 0 leaves size validation to the download's Content-Length.
+            String jsonName = advertisedFileName(fileMetadata.getFileName());
+            File binary = fileManager.getFile(fileManager.getDefaultPackageName(), fileMetadata.getFileName());
+            File export = binary != null ? new File(binary.getParentFile(), ImuSidecarFile.JSON_EXPORT_NAME) : null;
+            fileInfo.put("name", jsonName);
+            fileInfo.put("size", export != null && export.isFile() ? export.length() : 0L);
+            fileInfo.put("modified", fileMetadata.getLastModified());
+            fileInfo.put("mime_type", "application/json");
+            fileInfo.put("url", "/api/photo?file=" + jsonName);
+            fileInfo.put("download", "/api/download?file=" + jsonName);
+            fileInfo.put("is_video", false);
+            return fileInfo;
+        }
+        fileInfo.put("name", fileMetadata.getFileName());
+        fileInfo.put("size", fileMetadata.getFileSize());
+        fileInfo.put("modified", fileMetadata.getLastModified());
+        fileInfo.put("mime_type", fileMetadata.getMimeType());
+        fileInfo.put("url", "/api/photo?file=" + fileMetadata.getFileName());
+        fileInfo.put("download", "/api/download?file=" + fileMetadata.getFileName());
+
+        // Add media type, thumbnail, and duration information.
+        // Thumbnail base64, duration and dimensions come from the precomputed media sidecar,
+        // so repeated syncs are memory copies instead of decode work on the request thread.
+        boolean isVideo = isVideoFile(fileMetadata.getFileName());
+        fileInfo.put("is_video", isVideo);
+        if (includeThumbnailsFlag) {
+            try {
+                File mediaFile = fileManager.getFile(fileManager.getDefaultPackageName(), fileMetadata.getFileName());
+                MediaSidecarStore.Sidecar sidecar = fileManager.getThumbnailManager().getMediaSidecar(mediaFile);
+                if (sidecar != null) {
+                    if (sidecar.getThumbnailBase64() != null) {
+                        fileInfo.put("thumbnail_data", sidecar.getThumbnailBase64());
+                    }
+                    if (isVideo && sidecar.getDurationMs() >= 0) {
+                        fileInfo.put("duration", sidecar.getDurationMs());
+                    }
+                    if (sidecar.getWidth() > 0 && sidecar.getHeight() > 0) {
+                        fileInfo.put("width", sidecar.getWidth());
+                        fileInfo.put("height", sidecar.getHeight());
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn(TAG, "Failed to include thumbnail for " + fileMetadata.getFileName() + ": " + e.getMessage());
+            }
+            if (isVideo) {
+                fileInfo.put("thumbnail_url", "/api/photo?file=" + fileMetadata.getFileName());
+            }
+        }
+
+        return fileInfo;
+    }
+
+    /**
+     * Group sync file entries into captures (primary + brackets + sidecars).
+     */
+    private List<Map<String, Object>> buildSyncCaptures(List<Map<String, Object>> changedFiles) {
+        // Group files into captures
+        Map<String, List<Map<String, Object>>> captureGroups = new LinkedHashMap<>();
+        for (Map<String, Object> fileInfo : changedFiles) {
+            String name = (String) fileInfo.get("name");
+            String captureId = deriveCaptureId(name);
+            captureGroups.computeIfAbsent(captureId, k -> new ArrayList<>()).add(fileInfo);
+        }
+
+        // Build captures array
+        List<Map<String, Object>> captures = new ArrayList<>();
+        for (Map.Entry<String, List<Map<String, Object>>> entry : captureGroups.entrySet()) {
+            String captureId = entry.getKey();
+            List<Map<String, Object>> captureFiles = entry.getValue();
+
+            Map<String, Object> capture = new HashMap<>();
+            capture.put("capture_id", captureId);
+
+            // Determine type from primary file
+            boolean isVideo = captureId.startsWith("VID_") || captureId.startsWith("BUFFER_");
+            capture.put("type", isVideo ? "video" : "photo");
+
+            // Calculate total size and find timestamp
+            long captureTotalSize = 0;
+            long captureTimestamp = 0;
+            String thumbnailData = null;
+            Long duration = null;
+
+            List<Map<String, Object>> fileList = new ArrayList<>();
+            for (Map<String, Object> file : captureFiles) {
+                String fileName = (String) file.get("name");
+                long fileSize = (Long) file.get("size");
+                captureTotalSize += fileSize;
+
+                long modified = (Long) file.get("modified");
+                if (modified > captureTimestamp) captureTimestamp = modified;
+
+                // Assign role based on filename
+                String role = assignFileRole(fileName);
+
+                Map<String, Object> captureFile = new HashMap<>();
+                captureFile.put("name", fileName);
+                captureFile.put("size", fileSize);
+                captureFile.put("role", role);
+                fileList.add(captureFile);
+
+                // Grab thumbnail from primary file
+                if ("primary".equals(role) && file.containsKey("thumbnail_data")) {
+                    thumbnailData = (String) file.get("thumbnail_data");
+                }
+                if ("primary".equals(role) && file.containsKey("duration")) {
+                    duration = (Long) file.get("duration");
+                }
+            }
+
+            capture.put("timestamp", captureTimestamp);
+            capture.put("total_size", captureTotalSize);
+            capture.put("files", fileList);
+            if (thumbnailData != null) {
+                capture.put("thumbnail_data", thumbnailData);
+            }
+            if (duration != null) {
+                capture.put("duration", duration);
+            }
+            captures.add(capture);
+        }
+        return captures;
+    }
+
+    private Map<String, Object> buildDeletedFileInfo(MediaCatalogManager.Tombstone tombstone) {
+        Map<String, Object> deleted = new HashMap<>();
+        deleted.put("name", advertisedFileName(tombstone.relativePath));
+        deleted.put("capture_id", deriveCaptureId(tombstone.relativePath));
+        deleted.put("deleted_at", tombstone.deletedAt);
+        deleted.put("sequence", tombstone.sequence);
+        return deleted;
+    }
+
     /**
      * Serve batch sync request for downloading multiple files efficiently.
      * Accepts POST request with JSON body containing file list.
+     * <p>
+     * In delta mode the body carries a {@code cursor} (empty for the first sync) instead of a
+     * file list: the batch is the next page of the media catalog's change log after it, and the
+     * response adds that page's {@code deleted_files} tombstones plus {@code next_cursor},
+     * {@code has_more} and {@code full_resync}, like {@code /api/sync} in delta mode.
      */
     private Response serveBatchSync(IHTTPSession session) {
         logger.debug(TAG, "📦 =========================================");
@@ -1545,7 +1706,7 @@ public class AsgCameraServer extends AsgServer {
             // Read JSON body
             byte[] body = new byte[contentLength];
             InputStream inputStream = session.getInputStream();
-            int bytesRead = inputStream.read(body);
+            int bytesRead = readFully(inputStream, body);
 
             if (bytesRead != contentLength) {
                 logger.warn(TAG, "📦 Incomplete request body: expected " + contentLength + " bytes, got " + bytesRead);
@@ -1557,21 +1718,55 @@ public class AsgCameraServer extends AsgServer {
 
             // Parse JSON
             JSONObject jsonObject = new JSONObject(jsonBody);
-            JSONArray filesArray = jsonObject.getJSONArray("files");
             String clientId = jsonObject.optString("client_id", "unknown");
             boolean includeThumbnails = jsonObject.optBoolean("include_thumbnails", false);
-
-            if (filesArray.length() == 0) {
-                logger.warn(TAG, "📦 Empty files array");
-                return createErrorResponse(Response.Status.BAD_REQUEST, "Files array cannot be empty");
-            }
+            String cursor = jsonObject.has("cursor") ? jsonObject.getString("cursor") : null;
 
             // OOM protection: limit the number of files in a single batch
             int MAX_BATCH_FILES = 5;
-            if (filesArray.length() > MAX_BATCH_FILES) {
-                logger.warn(TAG, "📦 Too many files in batch: " + filesArray.length() + " (max: " + MAX_BATCH_FILES + ")");
-                return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
-                    "{\"status\":\"error\",\"error\":\"Too many files in batch. Maximum: " + MAX_BATCH_FILES + "\"}");
+            List<String> fileNames = new ArrayList<>();
+            List<Map<String, Object>> deletedFiles = null;
+            MediaCatalogManager.ChangeSet changeSet = null;
+
+            if (cursor != null) {
+                if (jsonObject.has("files")) {
+                    logger.warn(TAG, "📦 Both files and cursor given");
+                    return createErrorResponse(Response.Status.BAD_REQUEST, "Send either files or cursor, not both");
+                }
+                logger.debug(TAG, "📦 Delta batch after cursor: " + (cursor.isEmpty() ? "(initial)" : cursor));
+                String packageName = fileManager.getDefaultPackageName();
+                fileManager.releaseDeferredSyncFiles(packageName, this::isActiveRecording);
+                changeSet = fileManager.getChangesSince(packageName, cursor, MAX_BATCH_FILES);
+                List<String> deferredFiles = new ArrayList<>();
+                for (FileMetadata fileMetadata : changeSet.changed) {
+                    Map<String, Object> fileInfo = buildSyncFileInfo(fileMetadata, false, deferredFiles);
+                    if (fileInfo != null) {
+                        fileNames.add((String) fileInfo.get("name"));
+                    }
+                }
+                if (!deferredFiles.isEmpty()) {
+                    fileManager.deferSyncFiles(packageName, deferredFiles);
+                }
+                deletedFiles = new ArrayList<>();
+                for (MediaCatalogManager.Tombstone tombstone : changeSet.deleted) {
+                    deletedFiles.add(buildDeletedFileInfo(tombstone));
+                }
+            } else {
+                JSONArray filesArray = jsonObject.getJSONArray("files");
+
+                if (filesArray.length() == 0) {
+                    logger.warn(TAG, "📦 Empty files array");
+                    return createErrorResponse(Response.Status.BAD_REQUEST, "Files array cannot be empty");
+                }
+
+                if (filesArray.length() > MAX_BATCH_FILES) {
+                    logger.warn(TAG, "📦 Too many files in batch: " + filesArray.length() + " (max: " + MAX_BATCH_FILES + ")");
+                    return newFixedLengthResponse(Response.Status.BAD_REQUEST, "application/json",
+                        "{\"status\":\"error\",\"error\":\"Too many files in batch. Maximum: " + MAX_BATCH_FILES + "\"}");
+                }
+                for (int i = 0; i < filesArray.length(); i++) {
+                    fileNames.add(filesArray.getString(i));
+                }
             }
 
             // Process batch download
@@ -1580,8 +1775,8 @@ public class AsgCameraServer extends AsgServer {
             int failureCount = 0;
             long totalDownloadedSize = 0;
 
-            for (int i = 0; i < filesArray.length(); i++) {
-                String fileName = filesArray.getString(i);
+            for (int i = 0; i < fileNames.size(); i++) {
+                String fileName = fileNames.get(i);
 
                 if (fileName == null || fileName.trim().isEmpty()) {
                     logger.warn(TAG, "📦 Skipping empty filename at index " + i);
@@ -1609,7 +1804,8 @@ public class AsgCameraServer extends AsgServer {
 
                 try {
                     // Get file metadata
-                    FileMetadata metadata = fileManager.getFileMetadata(fileManager.getDefaultPackageName(), fileName);
+                    String storedName = resolveStoredFileName(fileName);
+                    FileMetadata metadata = fileManager.getFileMetadata(fileManager.getDefaultPackageName(), storedName);
                     if (metadata == null) {
                         Map<String, Object> result = new HashMap<>();
                         result.put("file", fileName);
@@ -1631,7 +1827,10 @@ public class AsgCameraServer extends AsgServer {
                     }
 
                     // Get file
-                    File file = fileManager.getFile(fileManager.getDefaultPackageName(), fileName);
+                    File file = fileManager.getFile(fileManager.getDefaultPackageName(), storedName);
+                    if (file != null && file.exists() && !storedName.equals(fileName)) {
+                        file = ImuSidecarFile.exportJson(file);
+                    }
                     if (file == null || !file.exists()) {
                         Map<String, Object> result = new HashMap<>();
                         result.put("file", fileName);
@@ -1661,25 +1860,15 @@ public class AsgCameraServer extends AsgServer {
                     result.put("success", true);
                     result.put("size", fileData.length);
                     result.put("modified", metadata.getLastModified());
-                    result.put("mime_type", metadata.getMimeType());
+                    result.put("mime_type", storedName.equals(fileName) ? metadata.getMimeType() : "application/json");
                     result.put("data", base64Data);
                     result.put("is_video", isVideoFile(fileName));
 
                     // Include thumbnail if requested and it's a video
                     if (includeThumbnails && isVideoFile(fileName)) {
-                        File thumbnailFile = fileManager.getThumbnailManager().getOrCreateThumbnail(file);
-                        if (thumbnailFile != null && thumbnailFile.exists()) {
-                            try (FileInputStream fis = new FileInputStream(thumbnailFile)) {
-                                byte[] thumbnailData;
-                                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                                    thumbnailData = fis.readAllBytes();
-                                } else {
-                                    thumbnailData = new byte[(int) thumbnailFile.length()];
-                                    new DataInputStream(fis).readFully(thumbnailData);
-                                }
-                                String thumbnailBase64 = android.util.Base64.encodeToString(thumbnailData, android.util.Base64.DEFAULT);
-                                result.put("thumbnail_data", thumbnailBase64);
-                            }
+                        MediaSidecarStore.Sidecar sidecar = fileManager.getThumbnailManager().getMediaSidecar(file);
+                        if (sidecar != null && sidecar.getThumbnailBase64() != null) {
+                            result.put("thumbnail_data", sidecar.getThumbnailBase64());
                         }
                     }
 
@@ -1704,11 +1893,18 @@ public class AsgCameraServer extends AsgServer {
             Map<String, Object> responseData = new HashMap<>();
             responseData.put("client_id", clientId);
             responseData.put("batch_timestamp", System.currentTimeMillis());
-            responseData.put("total_files", filesArray.length());
+            responseData.put("total_files", fileNames.size());
             responseData.put("successful_downloads", successCount);
             responseData.put("failed_downloads", failureCount);
             responseData.put("total_downloaded_size", totalDownloadedSize);
             responseData.put("results", results);
+            if (changeSet != null) {
+                responseData.put("sync_mode", "delta");
+                responseData.put("deleted_files", deletedFiles);
+                responseData.put("next_cursor", changeSet.nextCursor);
+                responseData.put("has_more", changeSet.hasMore);
+                responseData.put("full_resync", changeSet.fullResync);
+            }
 
             logger.info(TAG, "📦 Batch sync completed: " + successCount + " successful, " + failureCount + " failed, " + totalDownloadedSize + " bytes transferred");
             return createSuccessResponse(responseData);
@@ -1725,6 +1921,150 @@ public class AsgCameraServer extends AsgServer {
         }
     }
 
+    /**
+     * Serve any number of files as one streamed tar archive.
+     * <p>
+     * The body is {@code {"files": [...], "start_index": n, "client_id": "..."}}. Files are sent
+     * from {@code start_index} on, straight from disk with chunked transfer encoding; each entry's
+     * pax header carries its index in {@code files} and its CRC32, and a trailing
+     * {@code manifest.json} lists every entry's outcome. Files that can't be sent are left out of
+     * the archive and reported in the manifest. A client that loses the connection resumes with
+     * {@code start_index} set to the first index it didn't receive intact.
+     */
+    private Response serveArchiveSync(IHTTPSession session) {
+        if (!"POST".equals(session.getMethod().name())) {
+            logger.warn(TAG, "📦 Invalid method: " + session.getMethod().name() + " (expected POST)");
+            return createErrorResponse(Response.Status.METHOD_NOT_ALLOWED, "Only POST method is allowed");
+        }
+
+        try {
+            Map<String, String> headers = session.getHeaders();
+            int contentLength = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+            if (contentLength <= 0) {
+                logger.warn(TAG, "📦 Empty request body");
+                return createErrorResponse(Response.Status.BAD_REQUEST, "Request body is required");
+            }
+            if (contentLength > config.getMaxRequestSize()) {
+                logger.warn(TAG, "📦 Request body too large: " + contentLength + " bytes");
+                return createErrorResponse(Response.Status.PAYLOAD_TOO_LARGE, "Request body too large");
+            }
+
+            byte[] body = new byte[contentLength];
+            int bytesRead = readFully(session.getInputStream(), body);
+            if (bytesRead != contentLength) {
+                logger.warn(TAG, "📦 Incomplete request body: expected " + contentLength + " bytes, got " + bytesRead);
+                return createErrorResponse(Response.Status.BAD_REQUEST, "Incomplete request body");
+            }
+
+            JSONObject jsonObject = new JSONObject(new String(body, StandardCharsets.UTF_8));
+            JSONArray filesArray = jsonObject.getJSONArray("files");
+            String clientId = jsonObject.optString("client_id", "unknown");
+            int startIndex = jsonObject.optInt("start_index", 0);
+
+            if (filesArray.length() == 0) {
+                logger.warn(TAG, "📦 Empty files array");
+                return createErrorResponse(Response.Status.BAD_REQUEST, "Files array cannot be empty");
+            }
+            if (startIndex < 0 || startIndex >= filesArray.length()) {
+                logger.warn(TAG, "📦 Invalid start_index " + startIndex + " for " + filesArray.length() + " files");
+                return createErrorResponse(Response.Status.BAD_REQUEST, "start_index out of range");
+            }
+
+            List<TarArchiveStream.Entry> entries = new ArrayList<>(filesArray.length() - startIndex);
+            for (int i = startIndex; i < filesArray.length(); i++) {
+                entries.add(resolveArchiveEntry(i, filesArray.optString(i, null)));
+            }
+
+            logger.info(TAG, "📦 Streaming archive of " + entries.size() + " files from index " + startIndex +
+                             " to client " + clientId);
+
+            Response response = newChunkedResponse(Response.Status.OK, "application/x-tar",
+                    new TarArchiveStream(entries, archiveChecksumExecutor));
+            response.addHeader("Content-Disposition", "attachment; filename=\"sync.tar\"");
+            response.addHeader("X-Archive-Start-Index", String.valueOf(startIndex));
+            response.addHeader("X-Archive-Entries", String.valueOf(entries.size()));
+            return response;
+
+        } catch (JSONException e) {
+            logger.error(TAG, "📦 JSON parsing error: " + e.getMessage(), e);
+            return createErrorResponse(Response.Status.BAD_REQUEST, "Invalid JSON format: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            return createErrorResponse(Response.Status.BAD_REQUEST, "Invalid content-length");
+        } catch (IOException e) {
+            logger.error(TAG, "📦 IO error reading request body: " + e.getMessage(), e);
+            return createErrorResponse(Response.Status.INTERNAL_ERROR, "Error reading request body");
+        } catch (Exception e) {
+            logger.error(TAG, "📦 Unexpected error during archive sync: " + e.getMessage(), e);
+            return createErrorResponse(Response.Status.INTERNAL_ERROR, "Unexpected error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply the same checks as a single download to one requested archive file
+     */
+    private TarArchiveStream.Entry resolveArchiveEntry(int index, String fileName) {
+        if (fileName == null || fileName.trim().isEmpty()) {
+            return TarArchiveStream.Entry.failed(index, fileName, "Empty filename");
+        }
+        if (isActiveRecording(fileName)) {
+            return TarArchiveStream.Entry.failed(index, fileName, "File is not ready for download");
+        }
+        try {
+            String packageName = fileManager.getDefaultPackageName();
+            String storedName = resolveStoredFileName(fileName);
+            FileMetadata metadata = fileManager.getFileMetadata(packageName, storedName);
+            if (metadata == null) {
+                return TarArchiveStream.Entry.failed(index, fileName, "File not found");
+            }
+            if (!shouldExposeServableFile(metadata)) {
+                return TarArchiveStream.Entry.failed(index, fileName, "File is not ready for download");
+            }
+            File file = fileManager.getFile(packageName, storedName);
+            String mimeType = metadata.getMimeType();
+            // Binary IMU sidecars are sent as imu.json, exported on first request
+            if (file != null && file.exists() && !storedName.equals(fileName)) {
+                file = ImuSidecarFile.exportJson(file);
+                mimeType = "application/json";
+            }
+            if (file == null || !file.exists()) {
+                return TarArchiveStream.Entry.failed(index, fileName, "File not accessible");
+            }
+            return TarArchiveStream.Entry.of(index, fileName, file, mimeType, metadata.getLastModified());
+        } catch (Exception e) {
+            logger.error(TAG, "📦 Error resolving archive file " + fileName + ": " + e.getMessage(), e);
+            return TarArchiveStream.Entry.failed(index, fileName, "Error processing file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read until {@code buffer} is full or the stream ends; one read() may return only part of a
+     * request body.
+     * @return Bytes read
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int n = in.read(buffer, total, buffer.length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static ExecutorService newArchiveChecksumExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "AsgServer checksum #" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Serve sync status for monitoring sync operations.
      */
@@ -1784,6 +2124,7 @@ public class AsgCameraServer extends AsgServer {
             recommendations.put("max_batch_size", 10); // Max files per batch
             recommendations.put("include_thumbnails", true); // Include thumbnails for videos
             recommendations.put("compression_enabled", false); // Base64 encoding used
+            recommendations.put("delta_sync_supported", true); // cursor on /api/sync and /api/sync-batch, with tombstones
             status.put("sync_recommendations", recommendations);
 
             logger.debug(TAG, "📊 ✅ Sync status served successfully");
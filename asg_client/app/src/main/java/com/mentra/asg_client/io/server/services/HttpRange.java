@@ -0,0 +1,180 @@
+package com.mentra.asg_client.io.server.services;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Single byte range of a file resolved from an HTTP Range header (RFC 7233),
+ * plus the validator helpers (ETag, Last-Modified, If-Range, If-None-Match)
+ * needed to serve resumable downloads.
+ *
+ * Only single ranges are honoured. Multi-range requests fall back to a full
+ * response, which RFC 7233 permits and which every download client handles.
+ */
+public final class HttpRange {
+
+    /** Returned by {@link #parse} when the range can't be satisfied for the file length. */
+    public static final HttpRange UNSATISFIABLE = new HttpRange(-1, -1);
+
+    private static final String BYTES_UNIT = "bytes=";
+    private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss 'GMT'";
+
+    private final long start;
+    private final long end;
+
+    private HttpRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /** @return First byte offset (inclusive) */
+    public long getStart() {
+        return start;
+    }
+
+    /** @return Last byte offset (inclusive) */
+    public long getEnd() {
+        return end;
+    }
+
+    /** @return Number of bytes covered by the range */
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * @param totalLength Full file length
+     * @return Content-Range header value for this range
+     */
+    public String toContentRange(long totalLength) {
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+
+    /**
+     * Parse a Range header against a file length.
+     * @param header Range header value (may be null)
+     * @param totalLength Full file length
+     * @return The resolved range, {@link #UNSATISFIABLE}, or null to serve the full file
+     *         (no header, unsupported unit, malformed or multi-range)
+     */
+    public static HttpRange parse(String header, long totalLength) {
+        if (header == null) {
+            return null;
+        }
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        String spec = value.substring(BYTES_UNIT.length()).trim();
+        if (spec.isEmpty() || spec.indexOf(',') >= 0) {
+            return null;
+        }
+
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+
+        try {
+            if (first.isEmpty()) {
+                // Suffix range: last N bytes
+                if (last.isEmpty()) {
+                    return null;
+                }
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || totalLength == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new HttpRange(Math.max(0, totalLength - suffix), totalLength - 1);
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                return null;
+            }
+            if (start >= totalLength) {
+                return UNSATISFIABLE;
+            }
+            return new HttpRange(start, Math.min(end, totalLength - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Build a strong entity tag from the file's size and modification time.
+     * Media files are written once and never edited in place, so size+mtime identifies content.
+     */
+    public static String etagFor(long length, long lastModified) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    /**
+     * @param timeMs Epoch milliseconds
+     * @return IMF-fixdate string for Last-Modified headers
+     */
+    public static String formatHttpDate(long timeMs) {
+        return newHttpDateFormat().format(new Date(timeMs));
+    }
+
+    /**
+     * Decide whether a Range request may be honoured given its If-Range precondition.
+     * @param ifRange If-Range header value (may be null)
+     * @param etag Current ETag of the file
+     * @param lastModified Current modification time of the file
+     * @return true if there is no If-Range or it still matches the file
+     */
+    public static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            // Weak validators never match for If-Range (RFC 7233 §3.2)
+            return value.equals(etag);
+        }
+        try {
+            Date date = newHttpDateFormat().parse(value);
+            // HTTP dates have second resolution
+            return date != null && date.getTime() / 1000 == lastModified / 1000;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param ifNoneMatch If-None-Match header value (may be null)
+     * @param etag Current ETag of the file
+     * @return true if the client's cached copy is current and 304 can be returned
+     */
+    public static boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static SimpleDateFormat newHttpDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_PATTERN, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+}
@@ -0,0 +1,475 @@
+package com.mentra.asg_client.io.server.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * InputStream that generates an uncompressed POSIX (pax) tar archive of a list of files as it is
+ * read, so any number of files can be sent as one chunked response without buffering them.
+ * <p>
+ * Each file is preceded by a pax extended header carrying its request index and CRC32
+ * ({@link #PAX_INDEX}, {@link #PAX_CRC32}, {@link #PAX_MIME_TYPE}), so a client can verify every
+ * entry as it arrives and resume an interrupted sync from the first index it didn't get. The CRC
+ * is computed before the entry's header goes out; with a checksum executor the next file's CRC is
+ * computed while the current one streams. Entries that can't be sent are left out of the archive.
+ * The last member, {@link #MANIFEST_NAME}, lists every entry's outcome.
+ */
+public class TarArchiveStream extends InputStream {
+    public static final String MANIFEST_NAME = "manifest.json";
+    public static final String PAX_INDEX = "MENTRA.index";
+    public static final String PAX_CRC32 = "MENTRA.crc32";
+    public static final String PAX_MIME_TYPE = "MENTRA.mime_type";
+
+    static final int BLOCK_SIZE = 512;
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * One requested file and, once the archive has been read past it, its outcome
+     */
+    public static class Entry {
+        private final int index;
+        private final String name;
+        private final File file;
+        private final String mimeType;
+        private final long lastModified;
+        private volatile long size = -1;
+        private volatile long crc32 = -1;
+        private volatile String error;
+
+        private Entry(int index, String name, File file, String mimeType, long lastModified, String error) {
+            this.index = index;
+            this.name = name;
+            this.file = file;
+            this.mimeType = mimeType;
+            this.lastModified = lastModified;
+            this.error = error;
+        }
+
+        /**
+         * @param index Position of the file in the client's request
+         * @param name Path the file is stored under in the archive
+         */
+        public static Entry of(int index, String name, File file, String mimeType, long lastModified) {
+            return new Entry(index, name, file, mimeType, lastModified, null);
+        }
+
+        /**
+         * A requested file that won't be sent; it only appears in the manifest
+         */
+        public static Entry failed(int index, String name, String error) {
+            return new Entry(index, name, null, null, 0, error);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Bytes sent for the entry, or -1 if it hasn't been reached or was left out */
+        public long getSize() {
+            return size;
+        }
+
+        /** CRC32 of the entry's bytes, or -1 if it hasn't been reached or was left out */
+        public long getCrc32() {
+            return crc32;
+        }
+
+        /** Why the entry wasn't sent intact, or null */
+        public String getError() {
+            return error;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final ExecutorService checksumExecutor;
+    // Used by one checksum at a time: the one being waited for, or the one prefetched after it
+    private final ByteBuffer checksumBuffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+    private final ArrayDeque<InputStream> pending = new ArrayDeque<>();
+    private InputStream segment;
+    private int nextEntry;
+    private Entry prefetched;
+    private Future<?> prefetchTask;
+    private boolean finished;
+    private boolean closed;
+    private long bytesRead;
+
+    /**
+     * @param entries Files in archive order
+     * @param checksumExecutor Runs the next entry's checksum while the current one streams; null
+     *                         computes each checksum just before its entry
+     */
+    public TarArchiveStream(List<Entry> entries, ExecutorService checksumExecutor) {
+        this.entries = entries;
+        this.checksumExecutor = checksumExecutor;
+    }
+
+    /**
+     * Archive bytes produced so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (segment != null) {
+                int n = segment.read(b, off, len);
+                if (n > 0) {
+                    bytesRead += n;
+                    return n;
+                }
+                segment.close();
+            }
+            segment = nextSegment();
+            if (segment == null) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (prefetchTask != null) {
+            prefetchTask.cancel(false);
+        }
+        if (segment != null) {
+            segment.close();
+        }
+        for (InputStream queued : pending) {
+            queued.close();
+        }
+        pending.clear();
+    }
+
+    private InputStream nextSegment() throws IOException {
+        if (!pending.isEmpty()) {
+            return pending.poll();
+        }
+        while (nextEntry < entries.size()) {
+            Entry entry = entries.get(nextEntry++);
+            if (entry.error == null) {
+                awaitChecksum(entry);
+            }
+            prefetchChecksum();
+            if (entry.error != null) {
+                continue;
+            }
+            pending.add(new EntryDataStream(entry));
+            pending.add(padding(entry.size));
+            return new ByteArrayInputStream(fileHeader(entry));
+        }
+        if (finished) {
+            return null;
+        }
+        finished = true;
+        byte[] manifest = manifest().getBytes(StandardCharsets.UTF_8);
+        pending.add(new ByteArrayInputStream(manifest));
+        pending.add(padding(manifest.length));
+        // End of archive: two zero blocks
+        pending.add(new ByteArrayInputStream(new byte[BLOCK_SIZE * 2]));
+        return new ByteArrayInputStream(ustarHeader(MANIFEST_NAME, manifest.length,
+                System.currentTimeMillis() / 1000, (byte) '0'));
+    }
+
+    private void awaitChecksum(Entry entry) {
+        if (entry == prefetched) {
+            prefetched = null;
+            try {
+                prefetchTask.get();
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                entry.error = "Interrupted";
+                return;
+            } catch (ExecutionException e) {
+                entry.error = "Checksum failed: " + e.getCause();
+                return;
+            }
+        }
+        computeChecksum(entry);
+    }
+
+    private void prefetchChecksum() {
+        if (checksumExecutor == null || prefetched != null) {
+            return;
+        }
+        for (int i = nextEntry; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.error == null) {
+                try {
+                    prefetchTask = checksumExecutor.submit(() -> computeChecksum(entry));
+                    prefetched = entry;
+                } catch (RejectedExecutionException e) {
+                    // Computed inline when the entry is reached
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fix the entry's size and CRC32, or mark it failed if the file can't be read in full
+     */
+    private void computeChecksum(Entry entry) {
+        long size = entry.file.length();
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(entry.file.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < size) {
+                checksumBuffer.clear();
+                if (size - position < checksumBuffer.capacity()) {
+                    checksumBuffer.limit((int) (size - position));
+                }
+                int n = channel.read(checksumBuffer, position);
+                if (n < 0) {
+                    entry.error = "File changed while syncing";
+                    return;
+                }
+                checksumBuffer.flip();
+                crc.update(checksumBuffer);
+                position += n;
+            }
+        } catch (IOException e) {
+            entry.error = "File not accessible";
+            return;
+        }
+        entry.size = size;
+        entry.crc32 = crc.getValue();
+    }
+
+    private String manifest() {
+        StringBuilder json = new StringBuilder(64 + entries.size() * 96);
+        json.append("{\"entries\":[");
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"index\":").append(entry.index);
+            json.append(",\"file\":");
+            appendJsonString(json, entry.name);
+            if (entry.error != null) {
+                json.append(",\"success\":false,\"message\":");
+                appendJsonString(json, entry.error);
+            } else {
+                json.append(",\"success\":true,\"size\":").append(entry.size);
+                json.append(",\"crc32\":\"").append(crcHex(entry.crc32)).append('"');
+            }
+            json.append('}');
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    static String crcHex(long crc) {
+        return String.format(Locale.US, "%08x", crc);
+    }
+
+    /**
+     * Pax extended header followed by the entry's ustar header
+     */
+    private static byte[] fileHeader(Entry entry) {
+        long mtimeSeconds = entry.lastModified / 1000;
+        ByteArrayOutputStream records = new ByteArrayOutputStream(256);
+        byte[] nameBytes = entry.name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100 || nameBytes.length != entry.name.length()) {
+            writePaxRecord(records, "path", entry.name);
+        }
+        if (entry.size > MAX_USTAR_SIZE) {
+            writePaxRecord(records, "size", Long.toString(entry.size));
+        }
+        writePaxRecord(records, "mtime", String.format(Locale.US, "%d.%03d",
+                mtimeSeconds, entry.lastModified % 1000));
+        writePaxRecord(records, PAX_INDEX, Integer.toString(entry.index));
+        writePaxRecord(records, PAX_CRC32, crcHex(entry.crc32));
+        if (entry.mimeType != null) {
+            writePaxRecord(records, PAX_MIME_TYPE, entry.mimeType);
+        }
+        byte[] pax = records.toByteArray();
+        int paxBlocks = (pax.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        byte[] header = new byte[BLOCK_SIZE * (2 + paxBlocks)];
+        System.arraycopy(ustarHeader("PaxHeaders/" + leafName(entry.name), pax.length, mtimeSeconds, (byte) 'x'),
+                0, header, 0, BLOCK_SIZE);
+        System.arraycopy(pax, 0, header, BLOCK_SIZE, pax.length);
+        System.arraycopy(ustarHeader(entry.name, entry.size, mtimeSeconds, (byte) '0'),
+                0, header, BLOCK_SIZE * (1 + paxBlocks), BLOCK_SIZE);
+        return header;
+    }
+
+    /**
+     * "<length> <key>=<value>\n", where length counts the whole record including its own digits
+     */
+    private static void writePaxRecord(ByteArrayOutputStream out, String key, String value) {
+        byte[] body = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+        int length = body.length + Integer.toString(body.length).length();
+        if (Integer.toString(length).length() != Integer.toString(body.length).length()) {
+            length++;
+        }
+        byte[] prefix = Integer.toString(length).getBytes(StandardCharsets.US_ASCII);
+        out.write(prefix, 0, prefix.length);
+        out.write(body, 0, body.length);
+    }
+
+    private static byte[] ustarHeader(String name, long size, long mtimeSeconds, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        // Names that don't fit are carried by the pax "path" record; this is only a fallback
+        byte[] ascii = name.replaceAll("[^\\x20-\\x7e]", "_").getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(ascii, 0, header, 0, Math.min(ascii.length, 100));
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, Math.min(size, MAX_USTAR_SIZE));
+        putOctal(header, 136, 12, mtimeSeconds);
+        header[156] = type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+        // Checksum is computed with its own field read as spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        putOctal(header, 148, 7, sum);
+        return header;
+    }
+
+    /**
+     * Zero-padded octal digits followed by a NUL, filling {@code length} bytes
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int pad = length - 1 - digits.length();
+        for (int i = 0; i < length - 1; i++) {
+            header[offset + i] = (byte) (i < pad ? '0' : digits.charAt(i - pad));
+        }
+        header[offset + length - 1] = 0;
+    }
+
+    private static String leafName(String name) {
+        String leaf = name.substring(name.lastIndexOf('/') + 1);
+        return leaf.length() > 80 ? leaf.substring(leaf.length() - 80) : leaf;
+    }
+
+    private static InputStream padding(long size) {
+        int remainder = (int) (size % BLOCK_SIZE);
+        return new ByteArrayInputStream(remainder == 0 ? EMPTY : new byte[BLOCK_SIZE - remainder]);
+    }
+
+    /**
+     * Exactly {@code size} bytes of the entry's file. The header has already promised that many,
+     * so if the file shrinks or fails to read the rest is zero filled and the entry is marked
+     * failed; its CRC no longer matches and the manifest says why.
+     */
+    private static final class EntryDataStream extends InputStream {
+        private final Entry entry;
+        private FileChannelInputStream file;
+        private long remaining;
+
+        EntryDataStream(Entry entry) {
+            this.entry = entry;
+            this.remaining = entry.size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int want = (int) Math.min(len, remaining);
+            int n = -1;
+            if (entry.error == null) {
+                try {
+                    if (file == null) {
+                        file = new FileChannelInputStream(entry.file, 0, entry.size);
+                    }
+                    n = file.read(b, off, want);
+                } catch (IOException e) {
+                    n = -1;
+                }
+                if (n < 0) {
+                    entry.error = "File changed while syncing";
+                }
+            }
+            if (n < 0) {
+                Arrays.fill(b, off, off + want, (byte) 0);
+                n = want;
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+}
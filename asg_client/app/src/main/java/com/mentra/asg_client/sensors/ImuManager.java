@@ -37,6 +37,13 @@ public class ImuManager implements SensorEventListener {
     private static final int STREAM_TIMEOUT_MS = 60000; // 60 second auto-timeout
     private static final int GESTURE_TIMEOUT_MS = 30000; // 30 second auto-timeout
     
+    // Streaming limits. Binary frames are ~10x smaller than JSON, so they can run faster.
+    private static final int MAX_JSON_STREAM_RATE_HZ = 100;
+    private static final int MAX_BINARY_STREAM_RATE_HZ = 200;
+    private static final int MAX_STREAM_BATCH_MS = 1000;
+    // One full batch at the highest rate
+    private static final int STREAM_BUFFER_SAMPLES = MAX_BINARY_STREAM_RATE_HZ * MAX_STREAM_BATCH_MS / 1000;
+    
     // Gesture detection thresholds (using accelerometer only)
     private static final float HEAD_UP_PITCH_THRESHOLD = 30.0f;
     private static final float HEAD_DOWN_PITCH_THRESHOLD = -30.0f;
@@ -70,8 +77,10 @@ public class ImuManager implements SensorEventListener {
     // Streaming configuration
     private int streamRateHz = 50;
     private long streamBatchMs = 0;
-    private final List<JSONObject> streamBuffer = new ArrayList<>();
+    private boolean binaryStream = false;
+    private final ImuSampleBuffer streamBuffer = new ImuSampleBuffer(STREAM_BUFFER_SAMPLES);
     private Runnable streamTimeoutRunnable;
+    private Runnable batchSendRunnable;
     
     // Gesture detection
     private final Set<String> subscribedGestures = new HashSet<>();
@@ -84,6 +93,8 @@ public class ImuManager implements SensorEventListener {
     public interface ImuDataCallback {
         void onSingleReading(JSONObject data);
         void onStreamData(JSONObject data);
+        /** Binary stream frame (K900 packet, see ImuStreamFrame), sent when binary streaming was requested */
+        void onStreamFrame(byte[] frame);
         void onGestureDetected(String gesture);
     }
     
@@ -136,16 +147,28 @@ public class ImuManager implements SensorEventListener {
     }
     
     /**
-     * Start IMU streaming with auto-timeout
+     * Start IMU streaming with auto-timeout, sending imu_stream_response JSON
      */
     public void startStreaming(int rateHz, long batchMs) {
-        Log.d(TAG, "Starting IMU stream at " + rateHz + "Hz, batch: " + batchMs + "ms");
+        startStreaming(rateHz, batchMs, false);
+    }
+    
+    /**
+     * Start IMU streaming with auto-timeout
+     * @param binary Send binary ImuStreamFrame packets instead of JSON
+     */
+    public void startStreaming(int rateHz, long batchMs, boolean binary) {
+        Log.d(TAG, "Starting IMU stream at " + rateHz + "Hz, batch: " + batchMs + "ms, "
+                + (binary ? "binary" : "JSON"));
         
         stopStreaming(); // Stop any existing stream
         
-        this.streamRateHz = Math.min(100, Math.max(1, rateHz)); // Clamp 1-100Hz
-        this.streamBatchMs = Math.min(1000, Math.max(0, batchMs)); // Max 1 second batching
+        int maxRateHz = binary ? MAX_BINARY_STREAM_RATE_HZ : MAX_JSON_STREAM_RATE_HZ;
+        this.streamRateHz = Math.min(maxRateHz, Math.max(1, rateHz)); // Clamp 1-100Hz (200Hz binary)
+        this.streamBatchMs = Math.min(MAX_STREAM_BATCH_MS, Math.max(0, batchMs)); // Max 1 second batching
+        this.binaryStream = binary;
         this.isStreaming = true;
+        streamBuffer.clear();
         
         activateSensorsForStreaming();
         
@@ -174,6 +197,11 @@ public class ImuManager implements SensorEventListener {
             handler.removeCallbacks(streamTimeoutRunnable);
             streamTimeoutRunnable = null;
         }
+        if (batchSendRunnable != null) {
+            handler.removeCallbacks(batchSendRunnable);
+            batchSendRunnable = null;
+        }
+        streamBuffer.clear();
         
         if (!gestureDetectionActive) {
             deactivateSensors();
@@ -290,6 +318,12 @@ public class ImuManager implements SensorEventListener {
                 if (gestureDetectionActive) {
                     gestureDetector.processAccelerometer(accelValues);
                 }
+                
+                // One stream sample per accelerometer event, carrying the latest values of the
+                // other sensors, rather than one per event of every sensor
+                if (isStreaming) {
+                    sendStreamData();
+                }
                 break;
                 
             case Sensor.TYPE_GYROSCOPE:
@@ -309,12 +343,6 @@ public class ImuManager implements SensorEventListener {
                 SensorManager.getOrientation(rotationMatrix, orientationAngles);
                 break;
         }
-        
-        // Handle streaming if active
-        if (isStreaming && streamBatchMs == 0) {
-            // Send immediately if no batching
-            sendStreamData();
-        }
     }
     
     @Override
@@ -347,18 +375,27 @@ public class ImuManager implements SensorEventListener {
     }
     
     private void sendStreamData() {
+        if (binaryStream) {
+            streamBuffer.add(System.currentTimeMillis(), accelValues, gyroValues, magValues,
+                    quaternion, orientationAngles);
+            if (streamBatchMs == 0) {
+                // Send immediately
+                sendBinaryFrames();
+            }
+            return;
+        }
+        
         try {
-            JSONObject reading = createImuReading();
-            
             if (streamBatchMs > 0) {
                 // Add to buffer for batching
-                streamBuffer.add(reading);
+                streamBuffer.add(System.currentTimeMillis(), accelValues, gyroValues, magValues,
+                        quaternion, orientationAngles);
             } else {
                 // Send immediately
                 JSONObject data = new JSONObject();
                 data.put("type", "imu_stream_response");
                 JSONArray readings = new JSONArray();
-                readings.put(reading);
+                readings.put(createImuReading());
                 data.put("readings", readings);
                 
                 if (dataCallback != null) {
@@ -371,7 +408,7 @@ public class ImuManager implements SensorEventListener {
     }
     
     private void startBatchSending() {
-        handler.postDelayed(new Runnable() {
+        batchSendRunnable = new Runnable() {
             @Override
             public void run() {
                 if (isStreaming) {
@@ -379,27 +416,51 @@ public class ImuManager implements SensorEventListener {
                     handler.postDelayed(this, streamBatchMs);
                 }
             }
-        }, streamBatchMs);
+        };
+        handler.postDelayed(batchSendRunnable, streamBatchMs);
     }
     
     private void sendBatchedData() {
-        if (streamBuffer.isEmpty()) {
+        if (streamBuffer.size() == 0) {
+            return;
+        }
+        
+        if (binaryStream) {
+            sendBinaryFrames();
             return;
         }
         
         try {
+            JSONArray readings = new JSONArray();
+            for (int i = 0; i < streamBuffer.size(); i++) {
+                readings.put(createImuReading(i));
+            }
             JSONObject data = new JSONObject();
             data.put("type", "imu_stream_response");
-            data.put("readings", new JSONArray(streamBuffer));
+            data.put("readings", readings);
             
             if (dataCallback != null) {
                 dataCallback.onStreamData(data);
             }
-            
-            streamBuffer.clear();
         } catch (JSONException e) {
             Log.e(TAG, "Error sending batched data", e);
         }
+        streamBuffer.clear();
+    }
+    
+    /**
+     * Send everything in the stream buffer as binary frames of up to
+     * ImuStreamFrame.MAX_SAMPLES_PER_FRAME samples each
+     */
+    private void sendBinaryFrames() {
+        while (streamBuffer.size() > 0) {
+            int count = Math.min(streamBuffer.size(), ImuStreamFrame.MAX_SAMPLES_PER_FRAME);
+            byte[] frame = ImuStreamFrame.encode(streamBuffer, count);
+            streamBuffer.removeFirst(count);
+            if (dataCallback != null) {
+                dataCallback.onStreamFrame(frame);
+            }
+        }
     }
     
     private JSONObject createImuReading() throws JSONException {
@@ -418,6 +479,33 @@ public class ImuManager implements SensorEventListener {
         return reading;
     }
     
+    /**
+     * Build a JSON reading from a buffered sample
+     */
+    private JSONObject createImuReading(int index) throws JSONException {
+        JSONObject reading = new JSONObject();
+        reading.put("accel", bufferedValues(index, ImuSampleBuffer.ACCEL, 3));
+        reading.put("gyro", bufferedValues(index, ImuSampleBuffer.GYRO, 3));
+        reading.put("mag", bufferedValues(index, ImuSampleBuffer.MAG, 3));
+        reading.put("quat", bufferedValues(index, ImuSampleBuffer.QUAT, 4));
+        
+        JSONArray euler = new JSONArray();
+        for (int c = 0; c < 3; c++) {
+            euler.put((double) streamBuffer.getValue(index, ImuSampleBuffer.EULER + c));
+        }
+        reading.put("euler", euler);
+        
+        return reading;
+    }
+    
+    private JSONArray bufferedValues(int index, int field, int components) throws JSONException {
+        float[] values = new float[components];
+        for (int c = 0; c < components; c++) {
+            values[c] = streamBuffer.getValue(index, field + c);
+        }
+        return new JSONArray(values);
+    }
+    
     /**
      * Inner class for gesture detection using accelerometer only (power optimized)
      */
@@ -10,20 +10,12 @@ import android.os.HandlerThread;
 import android.os.SystemClock;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 
 /**
  * Records IMU (accelerometer + gyroscope) data during photo/video capture.
- * Writes a sidecar JSON file alongside the media file for phone-side
+ * Writes a sidecar file alongside the media file for phone-side
  * post-processing (e.g., gyro-based video stabilization).
  *
  * <p>Sampling at ~100Hz, captures timestamp + accel[3] + gyro[3] per sample.
@@ -38,10 +30,13 @@ import java.io.IOException;
  * registration succeeded but no {@code onSensorChanged} ever fired).
  *
  * <h3>Streaming</h3>
- * Samples are streamed to a {@code imu.jsonl.partial} file as they arrive rather than buffered in
- * memory, bounding memory use on long recordings. At graceful stop the partial is assembled into the
- * canonical {@code imu.json} object and removed. If assembly fails on an otherwise-successful stop
- * the partial is retained (it is the only copy of the IMU data and the media file survives), so it
+ * Samples are streamed to a binary {@code imu.bin.partial} file as they arrive rather than buffered
+ * in memory, bounding memory use on long recordings (see {@link ImuSidecarFile} for the layout).
+ * Recording a sample allocates nothing; samples are gathered into primitive columns and written a
+ * block at a time. At graceful stop the last block and the header are written and the partial is
+ * renamed to {@code imu.bin}, so stopping costs the same for a 2s photo as for a 30min video. Clients
+ * still download {@code imu.json}: the camera server exports it from the binary file on first
+ * request. If finishing fails on an otherwise-successful stop the partial is retained (it is the only copy of the IMU data and the media file survives), so it
  * can be recovered/retried; {@code .partial} files are excluded from gallery/Wi-Fi sync. On a
  * capture failure or {@link #cancel()} the partial is deleted — there the camera pipeline wipes the
  * whole capture directory, so there is no surviving media for a sidecar to belong to.
@@ -49,8 +44,7 @@ import java.io.IOException;
 public class ImuRecorder implements SensorEventListener {
   private static final String TAG = "ImuRecorder";
   private static final int SAMPLING_PERIOD_US = 10000; // 100Hz
-  private static final String PARTIAL_NAME = "imu.jsonl.partial";
-  private static final String SIDECAR_NAME = "imu.json";
+  private static final int SAMPLING_RATE_HZ = 1_000_000 / SAMPLING_PERIOD_US;
 
   private final SensorManager mSensorManager;
   private final Sensor mAccelerometer;
@@ -61,7 +55,7 @@ public class ImuRecorder implements SensorEventListener {
   private final Handler mSensorHandler;
 
   private volatile boolean mRecording = false;
-  // Baseline for the zero-based relative sample times in the JSON. Set lazily from the FIRST sensor
+  // Baseline for the zero-based relative sample times in the sidecar. Set lazily from the FIRST sensor
   // event's timestamp so the math stays within a single clock domain — SensorEvent.timestamp is
   // elapsedRealtimeNanos (time since boot), NOT System.nanoTime(); mixing them previously produced a
   // bogus multi-hundred-second durationMs and a large constant per-sample offset. -1 = unset.
@@ -85,8 +79,12 @@ public class ImuRecorder implements SensorEventListener {
   private final float[] mLatestGyro = new float[3];
 
   // Streaming sink for the in-progress capture. Touched only on the sensor thread.
-  private BufferedWriter mStreamWriter;
+  private ImuSidecarFile.SidecarWriter mStreamWriter;
   private File mPartialFile;
+  // Set on the sensor thread when the stream is closed: whether the sidecar was finished cleanly,
+  // and how many samples it holds.
+  private boolean mStreamFinished;
+  private int mStreamSampleCount;
 
   public ImuRecorder(Context context) {
     mSensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
@@ -123,17 +121,19 @@ public class ImuRecorder implements SensorEventListener {
       return;
     }
 
-    mPartialFile = new File(parentDir, PARTIAL_NAME);
+    mPartialFile = new File(parentDir, ImuSidecarFile.PARTIAL_NAME);
     mBaseTimestampNs = -1; // baselined off the first event below
     mStartElapsedRealtimeNs = SystemClock.elapsedRealtimeNanos();
     mVideoStartElapsedRealtimeNs = 0; // set by the video pipeline via setVideoStartAnchor()
+    mStreamFinished = false;
+    mStreamSampleCount = 0;
 
     try {
-      mStreamWriter = new BufferedWriter(new FileWriter(mPartialFile, false));
+      mStreamWriter = new ImuSidecarFile.SidecarWriter(mPartialFile, SAMPLING_RATE_HZ);
     } catch (IOException e) {
       Log.e(TAG, "Failed to open IMU stream file", e);
       mStreamWriter = null;
-      // FileWriter may have created a zero-byte file before failing; don't leave it behind.
+      // The writer may have created a zero-byte file before failing; don't leave it behind.
       if (mPartialFile.exists()) {
         mPartialFile.delete();
       }
@@ -165,17 +165,17 @@ public class ImuRecorder implements SensorEventListener {
   }
 
   /**
-   * Stop recording and assemble the sidecar JSON file from the streamed samples.
+   * Stop recording and finish the sidecar file from the streamed samples.
    *
    * @param mediaFilePath Path to the media file (e.g., IMG_xxx.jpg or VID_xxx.mp4)
-   * @return Path to the sidecar JSON file, or null on failure
+   * @return Path to the {@code imu.bin} sidecar file, or null on failure
    */
   public String stopRecordingAndSave(String mediaFilePath) {
     mRecording = false;
     mSensorManager.unregisterListener(this);
 
-    // Flush + close the stream on the sensor thread so it can't race with a late onSensorChanged,
-    // then continue assembly on the caller's thread once the sink is quiesced.
+    // Finish + close the stream on the sensor thread so it can't race with a late onSensorChanged,
+    // then publish it from the caller's thread once the sink is quiesced.
     flushAndCloseStreamSync();
 
     File partial = mPartialFile;
@@ -184,30 +184,28 @@ public class ImuRecorder implements SensorEventListener {
       return null;
     }
 
+    if (mStreamFinished && mStreamSampleCount == 0) {
+      Log.w(TAG, "No IMU samples captured");
+      partial.delete();
+      return null;
+    }
+
     // Sidecar lands next to the media file; the partial lives in the same dir but use the stored
     // reference for it so stop and cancel always agree on the path.
     File parentDir = new File(mediaFilePath).getParentFile();
-    String sidecarPath = new File(parentDir, SIDECAR_NAME).getAbsolutePath();
-    try {
-      int written = assembleSidecar(partial, new File(sidecarPath));
-      if (written == 0) {
-        Log.w(TAG, "No IMU samples captured");
-        partial.delete();
-        return null;
-      }
-      partial.delete();
-      Log.d(TAG, "IMU sidecar written: " + sidecarPath + " (" + written + " samples)");
-      return sidecarPath;
-    } catch (JSONException | IOException e) {
-      // Retain the partial. On a graceful stop the media file survives even when sidecar
-      // assembly fails (this method swallows the error rather than propagating it, so the camera
+    File sidecar = new File(parentDir, ImuSidecarFile.BINARY_NAME);
+    if (!mStreamFinished || !partial.renameTo(sidecar)) {
+      // Retain the partial. On a graceful stop the media file survives even when the sidecar
+      // can't be finished (this method swallows the error rather than propagating it, so the camera
       // pipeline does NOT wipe the directory), so the partial is the only copy of the IMU data —
       // keep it for recovery/retry. It is excluded from gallery/Wi-Fi sync by the .partial filter
-      // in FileManagerImpl, so retaining it can't leak a bogus capture file. The cancel() path
+      // in MediaCatalogManager, so retaining it can't leak a bogus capture file. The cancel() path
       // (used on capture failure, where the directory IS wiped) still deletes it.
-      Log.e(TAG, "Failed to assemble IMU sidecar; retaining partial at " + partial.getAbsolutePath(), e);
+      Log.e(TAG, "Failed to finish IMU sidecar; retaining partial at " + partial.getAbsolutePath());
       return null;
     }
+    Log.d(TAG, "IMU sidecar written: " + sidecar.getAbsolutePath() + " (" + mStreamSampleCount + " samples)");
+    return sidecar.getAbsolutePath();
   }
 
   /** Stop sensor delivery and close the stream, leaving the partial file untouched. */
@@ -227,7 +225,7 @@ public class ImuRecorder implements SensorEventListener {
 
   /**
    * Release the sensor thread. Call when the recorder is no longer needed. Stops sensor delivery but
-   * does NOT delete a retained partial: a graceful stop whose imu.json assembly failed keeps the
+   * does NOT delete a retained partial: a graceful stop whose sidecar could not be finished keeps the
    * partial as the only copy of the IMU data, and the camera service calls release() on teardown
    * shortly after every recording — deleting here would destroy that recovery copy.
    */
@@ -245,7 +243,7 @@ public class ImuRecorder implements SensorEventListener {
       case Sensor.TYPE_ACCELEROMETER:
         System.arraycopy(event.values, 0, mLatestAccel, 0, 3);
         // Accel drives the sampling rate: emit one combined sample per accel event.
-        writeSampleLine(event.timestamp);
+        writeSample(event.timestamp);
         break;
       case Sensor.TYPE_GYROSCOPE:
         System.arraycopy(event.values, 0, mLatestGyro, 0, 3);
@@ -260,26 +258,17 @@ public class ImuRecorder implements SensorEventListener {
     // Not needed
   }
 
-  /** Append one compact sample line: [relativeTimeMs, ax, ay, az, gx, gy, gz]. Sensor thread only. */
-  private void writeSampleLine(long timestampNs) {
+  /** Append one sample: relative time + the latest accel and gyro values. Sensor thread only. */
+  private void writeSample(long timestampNs) {
     if (mStreamWriter == null) return;
     if (mBaseTimestampNs < 0) {
       // First event seen: this becomes t=0 so relative times start at ~0 within the event clock.
       mBaseTimestampNs = timestampNs;
     }
     try {
-      JSONArray sample = new JSONArray();
-      sample.put(Math.round((timestampNs - mBaseTimestampNs) / 1_000_000.0));
-      sample.put(round4(mLatestAccel[0]));
-      sample.put(round4(mLatestAccel[1]));
-      sample.put(round4(mLatestAccel[2]));
-      sample.put(round4(mLatestGyro[0]));
-      sample.put(round4(mLatestGyro[1]));
-      sample.put(round4(mLatestGyro[2]));
-      mStreamWriter.write(sample.toString());
-      mStreamWriter.write('\n');
-    } catch (IOException | JSONException e) {
-      Log.e(TAG, "Failed to write IMU sample", e);
+      mStreamWriter.add(timestampNs - mBaseTimestampNs, mLatestAccel, mLatestGyro);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to write IMU samples", e);
     }
   }
 
@@ -313,70 +302,21 @@ public class ImuRecorder implements SensorEventListener {
 
   private void closeStreamOnSensorThread() {
     if (mStreamWriter == null) return;
+    mStreamFinished = false;
+    mStreamSampleCount = mStreamWriter.getSampleCount();
+    try {
+      mStreamWriter.finish(mBaseTimestampNs, mStartElapsedRealtimeNs, mVideoStartElapsedRealtimeNs);
+      mStreamFinished = true;
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to finish IMU stream", e);
+    }
     try {
-      mStreamWriter.flush();
       mStreamWriter.close();
     } catch (IOException e) {
       Log.e(TAG, "Failed to close IMU stream", e);
+      mStreamFinished = false;
     } finally {
       mStreamWriter = null;
     }
   }
-
-  /**
-   * Read the streamed JSONL partial and write the canonical {@code imu.json} object. Keeps the
-   * exact same on-disk schema the previous in-memory implementation produced.
-   *
-   * @return number of samples written.
-   */
-  private int assembleSidecar(File partial, File sidecar) throws IOException, JSONException {
-    JSONArray samples = new JSONArray();
-    long lastRelMs = 0;
-    try (BufferedReader reader = new BufferedReader(new FileReader(partial))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        if (line.isEmpty()) continue;
-        JSONArray sample = new JSONArray(line);
-        lastRelMs = sample.getLong(0);
-        samples.put(sample);
-      }
-    }
-
-    if (samples.length() == 0) {
-      return 0;
-    }
-
-    JSONObject root = new JSONObject();
-    root.put("version", 2);
-    root.put("sampleCount", samples.length());
-    root.put("samplingRateHz", 100);
-    // clockSource documents the time base of the absolute timestamps below: Android's
-    // elapsedRealtimeNanos (boot-monotonic). This is the clock camera2 SENSOR_TIMESTAMP uses when
-    // the camera advertises SENSOR_INFO_TIMESTAMP_SOURCE = REALTIME, enabling IMU↔video correlation.
-    root.put("clockSource", "elapsedRealtimeNanos");
-    // Absolute elapsedRealtimeNanos of each sample's relative t=0 (the first sensor event).
-    // sampleAbsoluteNs = startTimeNs + relativeMs * 1_000_000.
-    root.put("startTimeNs", mBaseTimestampNs);
-    // Absolute elapsedRealtimeNanos captured at startRecording() (≈ MediaRecorder.start()), before
-    // the first sensor event arrived. Lets the consumer bound the IMU window against video start.
-    root.put("recordingStartElapsedRealtimeNs", mStartElapsedRealtimeNs);
-    // Absolute elapsedRealtimeNanos anchor for the video timeline (recorder start). Present only for
-    // video captures. Frame N's absolute time ≈ videoStartElapsedRealtimeNs + framePtsNs; align that
-    // against the IMU samples (same clock) to remove the fixed camera/IMU startup offset. Omitted
-    // when 0 (e.g. photo captures, or if the video pipeline did not set it).
-    if (mVideoStartElapsedRealtimeNs > 0) {
-      root.put("videoStartElapsedRealtimeNs", mVideoStartElapsedRealtimeNs);
-    }
-    root.put("durationMs", lastRelMs);
-    root.put("samples", samples);
-
-    try (FileWriter writer = new FileWriter(sidecar)) {
-      writer.write(root.toString());
-    }
-    return samples.length();
-  }
-
-  private static double round4(float v) {
-    return Math.round(v * 10000.0) / 10000.0;
-  }
 }
@@ -0,0 +1,102 @@
+package com.mentra.asg_client.sensors;
+
+/**
+ * Fixed-size ring of IMU samples for batched streaming.
+ * Samples are stored in pre-sized primitive arrays, so recording one is a handful of array stores
+ * no matter how fast the sensors run. When the ring is full the oldest sample is overwritten.
+ * <p>
+ * Not thread-safe: ImuManager records and drains it on the main looper.
+ */
+public class ImuSampleBuffer {
+    // Per-sample layout in the values array
+    public static final int ACCEL = 0;   // x, y, z in m/s^2
+    public static final int GYRO = 3;    // x, y, z in rad/s
+    public static final int MAG = 6;     // x, y, z in uT
+    public static final int QUAT = 9;    // w, x, y, z
+    public static final int EULER = 13;  // roll, pitch, yaw in degrees
+    public static final int STRIDE = 16;
+
+    private final long[] timestampsMs;
+    private final float[] values;
+    private int first;
+    private int size;
+    private long dropped;
+
+    /**
+     * @param capacity Maximum number of samples held before the oldest are overwritten
+     */
+    public ImuSampleBuffer(int capacity) {
+        timestampsMs = new long[capacity];
+        values = new float[capacity * STRIDE];
+    }
+
+    /**
+     * Record the latest sensor values as one sample.
+     * @param eulerRadians Orientation angles as returned by SensorManager.getOrientation()
+     */
+    public void add(long timestampMs, float[] accel, float[] gyro, float[] mag, float[] quat, float[] eulerRadians) {
+        int slot;
+        if (size == timestampsMs.length) {
+            slot = first;
+            first = (first + 1) % timestampsMs.length;
+            dropped++;
+        } else {
+            slot = (first + size) % timestampsMs.length;
+            size++;
+        }
+
+        timestampsMs[slot] = timestampMs;
+        int base = slot * STRIDE;
+        System.arraycopy(accel, 0, values, base + ACCEL, 3);
+        System.arraycopy(gyro, 0, values, base + GYRO, 3);
+        System.arraycopy(mag, 0, values, base + MAG, 3);
+        System.arraycopy(quat, 0, values, base + QUAT, 4);
+        values[base + EULER] = (float) Math.toDegrees(eulerRadians[0]);
+        values[base + EULER + 1] = (float) Math.toDegrees(eulerRadians[1]);
+        values[base + EULER + 2] = (float) Math.toDegrees(eulerRadians[2]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return timestampsMs.length;
+    }
+
+    /**
+     * @param index Sample index, 0 being the oldest
+     */
+    public long getTimestampMs(int index) {
+        return timestampsMs[(first + index) % timestampsMs.length];
+    }
+
+    /**
+     * @param index Sample index, 0 being the oldest
+     * @param field Field offset (ACCEL, GYRO, ... plus the component)
+     */
+    public float getValue(int index, int field) {
+        return values[((first + index) % timestampsMs.length) * STRIDE + field];
+    }
+
+    /**
+     * Drop the oldest samples, once they have been sent
+     */
+    public void removeFirst(int count) {
+        count = Math.min(count, size);
+        first = (first + count) % timestampsMs.length;
+        size -= count;
+    }
+
+    public void clear() {
+        first = 0;
+        size = 0;
+    }
+
+    /**
+     * @return Samples overwritten because the ring was full
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+}
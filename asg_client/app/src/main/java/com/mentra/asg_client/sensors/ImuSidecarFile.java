@@ -0,0 +1,361 @@
+package com.mentra.asg_client.sensors;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary, columnar IMU capture sidecar ({@code imu.bin}) and its on-demand JSON export.
+ *
+ * <p>{@link ImuRecorder} streams samples into this format on the sensor thread with no per-sample
+ * allocation, and finishing a recording only flushes the last block and patches the header, so stop
+ * time does not grow with the recording length. Clients still see {@code imu.json}: the camera
+ * server advertises the binary sidecar under that name and calls {@link #exportJson(File)} the
+ * first time it is downloaded.
+ *
+ * <h3>Layout (little-endian)</h3>
+ * <pre>
+ * header, HEADER_SIZE bytes:
+ *    0  magic                            int   "IMUB"
+ *    4  version                          short FORMAT_VERSION
+ *    6  header size                      short HEADER_SIZE
+ *    8  samples per block                short BLOCK_SAMPLES
+ *   10  channels                         short CHANNELS (ax, ay, az, gx, gy, gz)
+ *   12  sampling rate                    int   Hz
+ *   16  sample count                     int   written at finish, 0 while recording
+ *   20  reserved                         int
+ *   24  startTimeNs                      long  elapsedRealtimeNanos of relative t=0
+ *   32  recordingStartElapsedRealtimeNs  long
+ *   40  videoStartElapsedRealtimeNs      long  0 when not a video capture
+ *   48  durationMs                       long  relative time of the last sample
+ *   56  reserved                         long
+ * then blocks of up to BLOCK_SAMPLES samples, one column after another:
+ *   count                                int   n
+ *   relative time                        long[n]  ns since startTimeNs
+ *   ax, ay, az                           float[n] each, m/s^2
+ *   gx, gy, gz                           float[n] each, rad/s
+ * </pre>
+ * Only the last block may be short. Every block carries its own count, so the blocks of a partial
+ * file left behind by a failed stop are still readable up to the last one written.
+ */
+public final class ImuSidecarFile {
+  public static final String BINARY_NAME = "imu.bin";
+  public static final String PARTIAL_NAME = "imu.bin.partial";
+  /** Name clients know the sidecar by; served from the binary file via {@link #exportJson(File)}. */
+  public static final String JSON_NAME = "imu.json";
+  /** Cached JSON export. The .partial suffix keeps it out of gallery listings and sync. */
+  public static final String JSON_EXPORT_NAME = "imu.json.partial";
+
+  public static final int FORMAT_VERSION = 1;
+  public static final int HEADER_SIZE = 64;
+  public static final int BLOCK_SAMPLES = 128;
+  public static final int CHANNELS = 6;
+
+  private static final int MAGIC = 0x494D5542; // "IMUB"
+  private static final int SAMPLE_COUNT_OFFSET = 16;
+  private static final int BLOCK_BYTES = 4 + BLOCK_SAMPLES * (8 + CHANNELS * 4);
+  private static final int JSON_VERSION = 2;
+
+  private ImuSidecarFile() {
+  }
+
+  /** Fixed header fields of a sidecar. */
+  public static final class Header {
+    public final int samplingRateHz;
+    public final int sampleCount;
+    public final long startTimeNs;
+    public final long recordingStartElapsedRealtimeNs;
+    public final long videoStartElapsedRealtimeNs;
+    public final long durationMs;
+
+    Header(int samplingRateHz, int sampleCount, long startTimeNs, long recordingStartElapsedRealtimeNs,
+        long videoStartElapsedRealtimeNs, long durationMs) {
+      this.samplingRateHz = samplingRateHz;
+      this.sampleCount = sampleCount;
+      this.startTimeNs = startTimeNs;
+      this.recordingStartElapsedRealtimeNs = recordingStartElapsedRealtimeNs;
+      this.videoStartElapsedRealtimeNs = videoStartElapsedRealtimeNs;
+      this.durationMs = durationMs;
+    }
+  }
+
+  /**
+   * Streams samples into a sidecar file. Samples are gathered into primitive columns and written a
+   * block at a time through one reusable buffer. Not thread-safe: ImuRecorder only touches it on its
+   * sensor thread.
+   */
+  public static final class SidecarWriter implements Closeable {
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer =
+        ByteBuffer.allocateDirect(Math.max(BLOCK_BYTES, HEADER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+    private final int mSamplingRateHz;
+
+    private final long[] mTimes = new long[BLOCK_SAMPLES];
+    private final float[] mValues = new float[CHANNELS * BLOCK_SAMPLES]; // column-major
+    private int mPending;
+    private int mSampleCount;
+    private long mLastRelativeNs;
+
+    /** Create (or truncate) the file and reserve its header. */
+    public SidecarWriter(File file, int samplingRateHz) throws IOException {
+      mFile = new RandomAccessFile(file, "rw");
+      mChannel = mFile.getChannel();
+      mSamplingRateHz = samplingRateHz;
+      try {
+        mFile.setLength(0);
+        writeHeader(0, 0, 0, 0);
+        mChannel.position(HEADER_SIZE);
+      } catch (IOException e) {
+        mFile.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Append one sample.
+     *
+     * @param relativeNs Time since the first sample, on the sensor event clock
+     */
+    public void add(long relativeNs, float[] accel, float[] gyro) throws IOException {
+      int i = mPending;
+      mTimes[i] = relativeNs;
+      mValues[i] = accel[0];
+      mValues[BLOCK_SAMPLES + i] = accel[1];
+      mValues[2 * BLOCK_SAMPLES + i] = accel[2];
+      mValues[3 * BLOCK_SAMPLES + i] = gyro[0];
+      mValues[4 * BLOCK_SAMPLES + i] = gyro[1];
+      mValues[5 * BLOCK_SAMPLES + i] = gyro[2];
+      mPending++;
+      mSampleCount++;
+      mLastRelativeNs = relativeNs;
+      if (mPending == BLOCK_SAMPLES) {
+        writeBlock();
+      }
+    }
+
+    public int getSampleCount() {
+      return mSampleCount;
+    }
+
+    /**
+     * Write the last partial block and fill in the header. Cost is bounded by one block no matter
+     * how long the recording was.
+     */
+    public void finish(long startTimeNs, long recordingStartElapsedRealtimeNs,
+        long videoStartElapsedRealtimeNs) throws IOException {
+      if (mPending > 0) {
+        writeBlock();
+      }
+      writeHeader(startTimeNs, recordingStartElapsedRealtimeNs, videoStartElapsedRealtimeNs,
+          mSampleCount > 0 ? Math.round(mLastRelativeNs / 1_000_000.0) : 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+      mFile.close();
+    }
+
+    private void writeBlock() throws IOException {
+      ByteBuffer buffer = mBuffer;
+      buffer.clear();
+      int n = mPending;
+      buffer.putInt(n);
+      for (int i = 0; i < n; i++) {
+        buffer.putLong(mTimes[i]);
+      }
+      for (int c = 0; c < CHANNELS; c++) {
+        int base = c * BLOCK_SAMPLES;
+        for (int i = 0; i < n; i++) {
+          buffer.putFloat(mValues[base + i]);
+        }
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        mChannel.write(buffer);
+      }
+      mPending = 0;
+    }
+
+    private void writeHeader(long startTimeNs, long recordingStartElapsedRealtimeNs,
+        long videoStartElapsedRealtimeNs, long durationMs) throws IOException {
+      ByteBuffer buffer = mBuffer;
+      buffer.clear();
+      buffer.putInt(MAGIC);
+      buffer.putShort((short) FORMAT_VERSION);
+      buffer.putShort((short) HEADER_SIZE);
+      buffer.putShort((short) BLOCK_SAMPLES);
+      buffer.putShort((short) CHANNELS);
+      buffer.putInt(mSamplingRateHz);
+      buffer.putInt(mSampleCount);
+      buffer.putInt(0);
+      buffer.putLong(startTimeNs);
+      buffer.putLong(recordingStartElapsedRealtimeNs);
+      buffer.putLong(videoStartElapsedRealtimeNs);
+      buffer.putLong(durationMs);
+      buffer.putLong(0);
+      buffer.flip();
+      // Positional write: leaves the channel position at the end of the sample blocks
+      long position = 0;
+      while (buffer.hasRemaining()) {
+        position += mChannel.write(buffer, position);
+      }
+    }
+  }
+
+  /** Read and validate the header of a sidecar file. */
+  public static Header readHeader(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      return readHeader(raf.getChannel(), ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+    }
+  }
+
+  /**
+   * Export a sidecar as {@code imu.json}, the schema the recorder used to write directly, caching the
+   * result next to it as {@link #JSON_EXPORT_NAME}. A cached export is reused while it is at least as
+   * new as the binary file.
+   *
+   * @return The JSON export
+   */
+  public static File exportJson(File binary) throws IOException {
+    File dir = binary.getParentFile();
+    File export = new File(dir, JSON_EXPORT_NAME);
+    if (export.isFile() && export.lastModified() >= binary.lastModified()) {
+      return export;
+    }
+    // Export under a unique name and rename, so concurrent downloads never serve a half-written file
+    File temp = File.createTempFile("imu", ".json.partial", dir);
+    try {
+      try (Writer out = new BufferedWriter(
+          new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8), 16 * 1024)) {
+        writeJson(binary, out);
+      }
+      if (!temp.renameTo(export)) {
+        throw new IOException("Failed to move IMU export to " + export);
+      }
+    } finally {
+      if (temp.exists()) {
+        temp.delete();
+      }
+    }
+    return export;
+  }
+
+  /**
+   * Stream a sidecar out as imu.json: header fields in the original key order, then samples as
+   * {@code [relativeMs, ax, ay, az, gx, gy, gz]} rounded to 4 decimals.
+   *
+   * @return Number of samples written
+   */
+  public static int writeJson(File binary, Writer out) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(binary, "r")) {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate(BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      Header header = readHeader(channel, buffer);
+
+      out.write("{\"version\":" + JSON_VERSION);
+      out.write(",\"sampleCount\":" + header.sampleCount);
+      out.write(",\"samplingRateHz\":" + header.samplingRateHz);
+      out.write(",\"clockSource\":\"elapsedRealtimeNanos\"");
+      out.write(",\"startTimeNs\":" + header.startTimeNs);
+      out.write(",\"recordingStartElapsedRealtimeNs\":" + header.recordingStartElapsedRealtimeNs);
+      if (header.videoStartElapsedRealtimeNs > 0) {
+        out.write(",\"videoStartElapsedRealtimeNs\":" + header.videoStartElapsedRealtimeNs);
+      }
+      out.write(",\"durationMs\":" + header.durationMs);
+      out.write(",\"samples\":[");
+
+      StringBuilder line = new StringBuilder(128);
+      int written = 0;
+      long position = HEADER_SIZE;
+      while (written < header.sampleCount) {
+        buffer.clear();
+        buffer.limit(4);
+        if (!readFully(channel, buffer, position)) {
+          throw new IOException("Truncated IMU sidecar: " + written + " of " + header.sampleCount + " samples");
+        }
+        int n = buffer.getInt(0);
+        if (n <= 0 || n > BLOCK_SAMPLES) {
+          throw new IOException("Corrupt IMU sidecar block of " + n + " samples");
+        }
+        buffer.clear();
+        buffer.limit(n * (8 + CHANNELS * 4));
+        if (!readFully(channel, buffer, position + 4)) {
+          throw new IOException("Truncated IMU sidecar: " + written + " of " + header.sampleCount + " samples");
+        }
+        position += 4 + buffer.limit();
+
+        for (int i = 0; i < n; i++) {
+          line.setLength(0);
+          if (written > 0) {
+            line.append(',');
+          }
+          line.append('[').append(Math.round(buffer.getLong(i * 8) / 1_000_000.0));
+          int valuesBase = n * 8;
+          for (int c = 0; c < CHANNELS; c++) {
+            line.append(',');
+            appendNumber(line, round4(buffer.getFloat(valuesBase + (c * n + i) * 4)));
+          }
+          line.append(']');
+          out.append(line);
+          written++;
+        }
+      }
+      out.write("]}");
+      return written;
+    }
+  }
+
+  private static Header readHeader(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.clear();
+    buffer.limit(HEADER_SIZE);
+    if (!readFully(channel, buffer, 0) || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not an IMU sidecar");
+    }
+    int version = buffer.getShort(4);
+    int headerSize = buffer.getShort(6);
+    if (version != FORMAT_VERSION || headerSize != HEADER_SIZE
+        || buffer.getShort(8) != BLOCK_SAMPLES || buffer.getShort(10) != CHANNELS) {
+      throw new IOException("Unsupported IMU sidecar version " + version);
+    }
+    return new Header(buffer.getInt(12), buffer.getInt(SAMPLE_COUNT_OFFSET), buffer.getLong(24),
+        buffer.getLong(32), buffer.getLong(40), buffer.getLong(48));
+  }
+
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        return false;
+      }
+      position += read;
+    }
+    return true;
+  }
+
+  private static double round4(float v) {
+    return Math.round(v * 10000.0) / 10000.0;
+  }
+
+  /** Same number formatting as org.json, so exports match the files written by older firmware. */
+  private static void appendNumber(StringBuilder out, double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      out.append("null");
+    } else if (Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(-0.0d)) {
+      out.append("-0");
+    } else if (value == (long) value) {
+      out.append((long) value);
+    } else {
+      out.append(value);
+    }
+  }
+}
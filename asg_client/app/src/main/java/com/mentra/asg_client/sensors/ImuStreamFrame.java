@@ -0,0 +1,100 @@
+package com.mentra.asg_client.sensors;
+
+import com.mentra.asg_client.utils.smartglasses.K900ProtocolUtils;
+
+/**
+ * Compact binary encoding for streamed IMU samples, used instead of imu_stream_response JSON when
+ * the phone asks for it in imu_stream_start ("format": "binary").
+ * <p>
+ * Each frame is a K900 packet of type {@link K900ProtocolUtils#CMD_TYPE_IMU}:
+ * <pre>
+ * ## | 0x36 | length (2, big-endian) | payload | $$
+ *
+ * payload (big-endian):
+ *   version        1   FORMAT_VERSION
+ *   count          1   samples in this frame, 1..MAX_SAMPLES_PER_FRAME
+ *   timestamp      8   ms since epoch of the first sample
+ *   count x 34 bytes:
+ *     dt           2   ms since the previous sample (unsigned, 0 for the first)
+ *     accel x,y,z  6   int16, ACCEL_SCALE LSB per m/s^2
+ *     gyro x,y,z   6   int16, GYRO_SCALE LSB per rad/s
+ *     mag x,y,z    6   int16, MAG_SCALE LSB per uT
+ *     quat w,x,y,z 8   int16, QUAT_SCALE LSB per unit
+ *     euler r,p,y  6   int16, EULER_SCALE LSB per degree
+ * </pre>
+ * Values outside the int16 range saturate. A sample is 34 bytes against roughly 300 as JSON, and a
+ * full frame fits in a single BLE notification.
+ */
+public final class ImuStreamFrame {
+    public static final int FORMAT_VERSION = 1;
+
+    public static final float ACCEL_SCALE = 200f;  // 0.005 m/s^2, +-163 m/s^2 (16g)
+    public static final float GYRO_SCALE = 1000f;  // 0.001 rad/s, +-32 rad/s
+    public static final float MAG_SCALE = 10f;     // 0.1 uT, +-3276 uT
+    public static final float QUAT_SCALE = 32767f; // Q15
+    public static final float EULER_SCALE = 100f;  // 0.01 degree
+
+    public static final int HEADER_SIZE = 10;
+    public static final int SAMPLE_SIZE = 34;
+    public static final int MAX_SAMPLES_PER_FRAME = 6;
+
+    private static final int K900_HEADER_SIZE = 5;
+    private static final int K900_OVERHEAD = 7;
+
+    private ImuStreamFrame() {
+    }
+
+    /**
+     * Encode the oldest samples of a buffer as one K900 frame. The samples stay in the buffer.
+     * @param count Samples to encode, at most {@link #MAX_SAMPLES_PER_FRAME}
+     * @return The complete frame, ready to send
+     */
+    public static byte[] encode(ImuSampleBuffer buffer, int count) {
+        count = Math.min(Math.min(count, buffer.size()), MAX_SAMPLES_PER_FRAME);
+        int payloadLength = HEADER_SIZE + count * SAMPLE_SIZE;
+        byte[] frame = new byte[payloadLength + K900_OVERHEAD];
+
+        frame[0] = K900ProtocolUtils.CMD_START_CODE[0];
+        frame[1] = K900ProtocolUtils.CMD_START_CODE[1];
+        frame[2] = K900ProtocolUtils.CMD_TYPE_IMU;
+        frame[3] = (byte) (payloadLength >> 8);
+        frame[4] = (byte) payloadLength;
+
+        int pos = K900_HEADER_SIZE;
+        frame[pos++] = FORMAT_VERSION;
+        frame[pos++] = (byte) count;
+        long previous = count > 0 ? buffer.getTimestampMs(0) : 0;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            frame[pos++] = (byte) (previous >> shift);
+        }
+
+        for (int i = 0; i < count; i++) {
+            long timestamp = buffer.getTimestampMs(i);
+            long dt = Math.max(0, Math.min(0xFFFF, timestamp - previous));
+            previous = timestamp;
+            frame[pos++] = (byte) (dt >> 8);
+            frame[pos++] = (byte) dt;
+
+            pos = putScaled(frame, pos, buffer, i, ImuSampleBuffer.ACCEL, 3, ACCEL_SCALE);
+            pos = putScaled(frame, pos, buffer, i, ImuSampleBuffer.GYRO, 3, GYRO_SCALE);
+            pos = putScaled(frame, pos, buffer, i, ImuSampleBuffer.MAG, 3, MAG_SCALE);
+            pos = putScaled(frame, pos, buffer, i, ImuSampleBuffer.QUAT, 4, QUAT_SCALE);
+            pos = putScaled(frame, pos, buffer, i, ImuSampleBuffer.EULER, 3, EULER_SCALE);
+        }
+
+        frame[pos++] = K900ProtocolUtils.CMD_END_CODE[0];
+        frame[pos] = K900ProtocolUtils.CMD_END_CODE[1];
+        return frame;
+    }
+
+    private static int putScaled(byte[] frame, int pos, ImuSampleBuffer buffer, int index,
+                                 int field, int components, float scale) {
+        for (int c = 0; c < components; c++) {
+            int value = Math.round(buffer.getValue(index, field + c) * scale);
+            value = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+            frame[pos++] = (byte) (value >> 8);
+            frame[pos++] = (byte) value;
+        }
+        return pos;
+    }
+}
@@ -3,6 +3,8 @@ package com.mentra.asg_client.service.communication.managers;
 import android.util.Log;
 
 import com.mentra.asg_client.service.communication.interfaces.IResponseBuilder;
+import com.mentra.asg_client.utils.smartglasses.CompactWireCodec;
+import com.mentra.asg_client.utils.smartglasses.K900ProtocolUtils;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -143,6 +145,11 @@ public class ResponseBuilder implements IResponseBuilder {
             JSONObject response = new JSONObject();
             response.put("type", "glasses_ready");
             response.put("timestamp", System.currentTimeMillis());
+            // Largest file transfer window we support; phones that know it answer in set_ble_mtu
+            response.put("fileWindow", K900ProtocolUtils.FILE_TRANSFER_WINDOW_MAX);
+            // Compact wire format we can read and write (CompactWireCodec); also answered in set_ble_mtu.
+            // Neither side uses it until the link check shows the BES relays it (BleConfigCommandHandler).
+            response.put("wireFormat", CompactWireCodec.VERSION);
             return response;
         } catch (JSONException e) {
             Log.e(TAG, "Error creating glasses_ready response", e);
@@ -930,9 +930,10 @@ public class AsgClientService extends Service implements NetworkStateListener, B
         }
 
         Log.i(TAG, "📥 Received " + data.length + " bytes from Bluetooth");
-        String incomingPayload = new String(data, StandardCharsets.UTF_8);
-        Log.d(TAG, "📋 Data preview: " + incomingPayload.substring(0, Math.min(incomingPayload.length(), 100)) +
-                  (incomingPayload.length() > 100 ? "..." : ""));
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            String preview = new String(data, 0, Math.min(data.length, 100), StandardCharsets.UTF_8);
+            Log.d(TAG, "📋 Data preview: " + preview + (data.length > 100 ? "..." : ""));
+        }
 
         // BLE/serial can deliver data before getInterfaceReferences() runs (e.g. right after
         // MY_PACKAGE_REPLACED when the service is still in onCreate). Guard to avoid NPE.
@@ -1203,6 +1204,24 @@ public class AsgClientService extends Service implements NetworkStateListener, B
                 }
             }
             
+            @Override
+            public boolean sendImageDataViaBluetooth(String fileName, byte[] data) {
+                Log.d(TAG, "📁 sendImageDataViaBluetooth() called - " + fileName + " (" + data.length + " bytes)");
+
+                if (serviceContainer.getServiceManager().getBluetoothManager() != null) {
+                    boolean started = serviceContainer.getServiceManager().getBluetoothManager().sendImageData(fileName, data);
+                    if (started) {
+                        Log.i(TAG, "✅ BLE file transfer started successfully for: " + fileName);
+                    } else {
+                        Log.e(TAG, "❌ Failed to start BLE file transfer for: " + fileName);
+                    }
+                    return started;
+                } else {
+                    Log.w(TAG, "⚠️ Bluetooth manager is null - cannot send image");
+                    return false;
+                }
+            }
+
             @Override
             public boolean isBleTransferInProgress() {
                 Log.d(TAG, "📊 isBleTransferInProgress() called");
@@ -1,23 +1,51 @@
 package com.mentra.asg_client.service.core.handlers;
 
 import android.util.Log;
+import com.mentra.asg_client.service.core.processors.ResponseSender;
 import com.mentra.asg_client.service.legacy.interfaces.ICommandHandler;
+import com.mentra.asg_client.utils.smartglasses.CompactWireCodec;
 import com.mentra.asg_client.utils.smartglasses.K900ProtocolUtils;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Set;
 
 /**
  * Handler for BLE configuration commands from the phone.
- * Handles MTU configuration to adjust file packet sizes.
+ * Handles MTU configuration to adjust file packet sizes, the file transfer window, and the
+ * link check for the compact wire format.
+ * <p>
+ * Agreeing on a wire format in set_ble_mtu isn't enough to use it: compact frames are a K900
+ * type (0x37) that older BES firmware may not relay. So each side only switches once a compact
+ * frame has made it across the BES in its direction:
+ * <ol>
+ *   <li>the phone sends wire_format_probe as a compact frame;</li>
+ *   <li>we answer with wire_format_echo, also compact - the phone now knows both directions
+ *       work and starts sending compact frames;</li>
+ *   <li>the phone sends wire_format_ready (compact), and we switch too.</li>
+ * </ol>
+ * If a step is lost both sides simply stay on C-wrapped JSON.
  */
 public class BleConfigCommandHandler implements ICommandHandler {
     private static final String TAG = "BleConfigCommandHandler";
 
+    private static final String CMD_SET_BLE_MTU = "set_ble_mtu";
+    private static final String CMD_WIRE_FORMAT_PROBE = "wire_format_probe";
+    private static final String CMD_WIRE_FORMAT_READY = "wire_format_ready";
+    private static final String WIRE_FORMAT_ECHO = "wire_format_echo";
+
+    private final ResponseSender responseSender;
+
+    public BleConfigCommandHandler(ResponseSender responseSender) {
+        this.responseSender = responseSender;
+    }
+
     @Override
     public Set<String> getSupportedCommandTypes() {
-        return Set.of("set_ble_mtu");
+        return Set.of(CMD_SET_BLE_MTU, CMD_WIRE_FORMAT_PROBE, CMD_WIRE_FORMAT_READY);
     }
 
     @Override
@@ -29,9 +57,15 @@ public class BleConfigCommandHandler implements ICommandHandler {
         Log.i(TAG, "📦 Data: " + (data != null ? data.toString() : "null"));
 
         try {
-            if ("set_ble_mtu".equals(commandType)) {
+            if (CMD_SET_BLE_MTU.equals(commandType)) {
                 return handleSetBleMtu(data);
             }
+            if (CMD_WIRE_FORMAT_PROBE.equals(commandType)) {
+                return handleWireFormatProbe();
+            }
+            if (CMD_WIRE_FORMAT_READY.equals(commandType)) {
+                return K900ProtocolUtils.confirmWireFormat();
+            }
             Log.e(TAG, "Unsupported BLE config command: " + commandType);
             return false;
         } catch (Exception e) {
@@ -70,6 +104,40 @@ public class BleConfigCommandHandler implements ICommandHandler {
         Log.i(TAG, "📦 MTU effective: " + (mtu - 3));
         Log.i(TAG, "📦 =========================================");
 
+        // Phones that can reassemble out-of-order packets also send the window they agreed to.
+        // Older phones leave it out and keep stop-and-wait transfers.
+        K900ProtocolUtils.setFileTransferWindow(data.optInt("fileWindow", 1));
+
+        // Likewise, phones that read compact frames answer with the wire format version they agreed to.
+        // It is put to use once the link check (wire_format_probe) shows the BES relays compact frames.
+        K900ProtocolUtils.setWireFormat(data.optInt("wireFormat", 0), mtu);
+
+        return true;
+    }
+
+    /**
+     * The phone's compact probe reached us: answer in a compact frame, so the phone learns our
+     * compact frames reach it too. The echo bypasses the normal send path, which keeps using
+     * C-wrapped JSON until wire_format_ready.
+     */
+    private boolean handleWireFormatProbe() throws JSONException {
+        int version = K900ProtocolUtils.getOfferedWireFormat();
+        if (version == 0) {
+            Log.w(TAG, "📦 Wire format probe without an agreed wire format - ignoring");
+            return false;
+        }
+        JSONObject echo = new JSONObject();
+        echo.put("type", WIRE_FORMAT_ECHO);
+        echo.put("wireFormat", version);
+        List<byte[]> frames = CompactWireCodec.encode(echo.toString().getBytes(StandardCharsets.UTF_8),
+                K900ProtocolUtils.getMessageFrameSize(), 0);
+        if (frames == null) {
+            return false;
+        }
+        for (byte[] frame : frames) {
+            responseSender.sendBinaryData(frame);
+        }
+        Log.i(TAG, "📦 Answered wire format probe with a compact echo (version " + version + ")");
         return true;
     }
 }
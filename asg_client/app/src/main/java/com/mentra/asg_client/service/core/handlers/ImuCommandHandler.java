@@ -6,6 +6,7 @@ import android.util.Log;
 import com.mentra.asg_client.sensors.ImuManager;
 import com.mentra.asg_client.service.core.processors.ResponseSender;
 import com.mentra.asg_client.service.legacy.interfaces.ICommandHandler;
+import com.mentra.asg_client.utils.smartglasses.K900ProtocolUtils;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -31,6 +32,10 @@ public class ImuCommandHandler implements ICommandHandler {
     private static final String CMD_IMU_SUBSCRIBE_GESTURE = "imu_subscribe_gesture";
     private static final String CMD_IMU_UNSUBSCRIBE_GESTURE = "imu_unsubscribe_gesture";
     
+    // Stream formats the phone can ask for in imu_stream_start
+    private static final String STREAM_FORMAT_JSON = "json";
+    private static final String STREAM_FORMAT_BINARY = "binary";
+    
     private final Context context;
     private final ResponseSender responseSender;
     private ImuManager imuManager;
@@ -58,6 +63,11 @@ public class ImuCommandHandler implements ICommandHandler {
                     sendResponse(data);
                 }
                 
+                @Override
+                public void onStreamFrame(byte[] frame) {
+                    responseSender.sendBinaryData(frame);
+                }
+                
                 @Override
                 public void onGestureDetected(String gesture) {
                     sendGestureResponse(gesture);
@@ -146,18 +156,29 @@ public class ImuCommandHandler implements ICommandHandler {
             // Parse streaming parameters with defaults
             int rateHz = data.optInt("rate_hz", 50);
             long batchMs = data.optLong("batch_ms", 0);
+            // Phones that know the binary frame format ask for it; everyone else gets JSON. Binary
+            // frames are a K900 type older BES firmware may not relay, so they also wait for the
+            // compact wire format's link check to show the BES passes new frame types through.
+            boolean binary = STREAM_FORMAT_BINARY.equals(data.optString("format", STREAM_FORMAT_JSON))
+                    && K900ProtocolUtils.getWireFormat() > 0;
             
             // Validate and clamp parameters
-            rateHz = Math.min(100, Math.max(1, rateHz)); // 1-100 Hz
+            rateHz = Math.min(binary ? 200 : 100, Math.max(1, rateHz)); // 1-100 Hz, 200 Hz binary
             batchMs = Math.min(1000, Math.max(0, batchMs)); // 0-1000ms
             
-            Log.d(TAG, "Starting IMU stream: " + rateHz + "Hz, batch: " + batchMs + "ms");
+            Log.d(TAG, "Starting IMU stream: " + rateHz + "Hz, batch: " + batchMs + "ms, binary: " + binary);
             
             // Start streaming with auto-timeout
-            imuManager.startStreaming(rateHz, batchMs);
+            imuManager.startStreaming(rateHz, batchMs, binary);
             
-            // Send acknowledgment
-            sendAckResponse("IMU streaming started");
+            // Send acknowledgment, telling the phone which format to expect
+            JSONObject response = new JSONObject();
+            response.put("type", "imu_ack");
+            response.put("status", "success");
+            response.put("message", "IMU streaming started");
+            response.put("format", binary ? STREAM_FORMAT_BINARY : STREAM_FORMAT_JSON);
+            response.put("rate_hz", rateHz);
+            sendResponse(response);
             
         } catch (Exception e) {
             Log.e(TAG, "Error parsing stream parameters", e);
@@ -72,6 +72,10 @@ public class PhoneReadyCommandHandler implements ICommandHandler {
             // Reset file pack size to default on new connection.
             // Phone will send set_ble_mtu command after glasses_ready to set the correct size.
             K900ProtocolUtils.resetFilePackSize();
+            // Same for the file transfer window: stop-and-wait until the phone negotiates one.
+            K900ProtocolUtils.resetFileTransferWindow();
+            // And legacy JSON framing until the phone agrees to a compact wire format.
+            K900ProtocolUtils.resetWireFormat();
 
             Log.d(TAG, "📱 📱 Received phone_ready message - sending glasses_ready response");
             
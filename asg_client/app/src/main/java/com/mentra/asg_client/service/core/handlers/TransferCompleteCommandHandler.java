@@ -6,13 +6,17 @@ import com.mentra.asg_client.io.bluetooth.managers.K900BluetoothManager;
 import com.mentra.asg_client.service.legacy.managers.AsgClientServiceManager;
 import com.mentra.asg_client.service.legacy.interfaces.ICommandHandler;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 /**
  * Handler for transfer_complete commands from phone.
- * This handler processes phone confirmations about file transfer completion.
+ * This handler processes phone confirmations about file transfer completion, and requests
+ * to resend individual packets during windowed transfers.
  */
 public class TransferCompleteCommandHandler implements ICommandHandler {
     private static final String TAG = "TransferCompleteHandler";
@@ -25,7 +29,7 @@ public class TransferCompleteCommandHandler implements ICommandHandler {
 
     @Override
     public Set<String> getSupportedCommandTypes() {
-        return Set.of("transfer_complete");
+        return Set.of("transfer_complete", "request_missing_packets");
     }
 
     @Override
@@ -34,6 +38,8 @@ public class TransferCompleteCommandHandler implements ICommandHandler {
             switch (commandType) {
                 case "transfer_complete":
                     return handleTransferComplete(data);
+                case "request_missing_packets":
+                    return handleRequestMissingPackets(data);
                 default:
                     Log.e(TAG, "Unsupported command: " + commandType);
                     return false;
@@ -77,4 +83,36 @@ public class TransferCompleteCommandHandler implements ICommandHandler {
             return false;
         }
     }
+
+    /**
+     * Handle request_missing_packets command from phone
+     */
+    private boolean handleRequestMissingPackets(JSONObject data) {
+        String fileName = data.optString("fileName", "");
+        JSONArray missingArray = data.optJSONArray("missingPackets");
+
+        if (fileName.isEmpty() || missingArray == null) {
+            Log.e(TAG, "❌ request_missing_packets missing fileName or missingPackets");
+            return false;
+        }
+
+        List<Integer> missingPackets = new ArrayList<>(missingArray.length());
+        for (int i = 0; i < missingArray.length(); i++) {
+            int index = missingArray.optInt(i, -1);
+            if (index >= 0) {
+                missingPackets.add(index);
+            }
+        }
+
+        Log.d(TAG, "📱 Phone requested " + missingPackets.size() + " missing packets for " + fileName);
+
+        if (serviceManager != null && serviceManager.getBluetoothManager() instanceof K900BluetoothManager) {
+            K900BluetoothManager bluetoothManager = (K900BluetoothManager) serviceManager.getBluetoothManager();
+            bluetoothManager.handleMissingPacketsRequest(fileName, missingPackets);
+            return true;
+        }
+
+        Log.e(TAG, "❌ K900 BluetoothManager not available");
+        return false;
+    }
 }
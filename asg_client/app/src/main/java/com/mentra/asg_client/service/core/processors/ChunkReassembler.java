@@ -2,218 +2,442 @@ package com.mentra.asg_client.service.core.processors;
 
 import android.util.Log;
 
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages accumulation and reassembly of chunked messages.
  * Handles timeout and cleanup of incomplete chunk sets.
+ * <p>
+ * Chunk data is copied into fixed-size pages taken from a shared pool, so the chunks of a
+ * session cost no per-chunk objects and the pages are reused by the next session. All sessions
+ * together stay within a memory budget; when it runs out the oldest sessions are dropped.
+ * Timeouts are tracked on a timer wheel, so expiring sessions costs nothing per chunk beyond
+ * visiting the wheel slots that elapsed since the previous chunk.
  */
 public class ChunkReassembler {
     private static final String TAG = "ChunkReassembler";
-    
+
     // Timeout for incomplete chunk sets (30 seconds)
     private static final long CHUNK_TIMEOUT_MS = 30000;
-    
+
     // Maximum concurrent chunk sessions to prevent memory issues
     private static final int MAX_CONCURRENT_SESSIONS = 10;
-    
-    // Active chunk sessions
-    private final Map<String, ChunkSession> activeSessions = new ConcurrentHashMap<>();
-    
+
+    // Chunk data buffered across all sessions (phone chunks carry ~80 bytes each)
+    private static final int MEMORY_BUDGET_BYTES = 512 * 1024;
+
+    // Pool page size, and how many free pages are kept for reuse once sessions complete
+    private static final int PAGE_SIZE = 4096;
+    private static final int MAX_IDLE_PAGES = 16;
+
+    // Upper bound on a session's chunk count, so a bad header can't allocate a huge index
+    private static final int MAX_CHUNKS_PER_SESSION = 16384;
+
+    // Expiry granularity: sessions time out between CHUNK_TIMEOUT_MS and one tick later
+    private static final long WHEEL_TICK_MS = 1000;
+
+    private final long timeoutMs;
+    private final int maxSessions;
+    private final PagePool pagePool;
+
+    // Active chunk sessions, oldest first
+    private final LinkedHashMap<String, ChunkSession> activeSessions = new LinkedHashMap<>();
+
+    // Timer wheel: each slot heads a list of sessions expiring on a tick that maps to it
+    private final ChunkSession[] wheel;
+    private long wheelTick = Long.MIN_VALUE;
+
+    public ChunkReassembler() {
+        this(CHUNK_TIMEOUT_MS, MAX_CONCURRENT_SESSIONS, MEMORY_BUDGET_BYTES);
+    }
+
+    ChunkReassembler(long timeoutMs, int maxSessions, int memoryBudgetBytes) {
+        this.timeoutMs = timeoutMs;
+        this.maxSessions = maxSessions;
+        this.pagePool = new PagePool(Math.max(1, memoryBudgetBytes / PAGE_SIZE), MAX_IDLE_PAGES);
+        this.wheel = new ChunkSession[(int) (timeoutMs / WHEEL_TICK_MS) + 2];
+    }
+
     /**
      * Add a chunk to the reassembler
      * @param chunkId Unique identifier for this chunk set
      * @param chunkIndex Index of this chunk (0-based)
      * @param totalChunks Total number of chunks expected
-     * @param data The chunk data
-     * @return The reassembled message if complete, null otherwise
+     * @param data Buffer holding the chunk data (UTF-8); copied, so it may be reused afterwards
+     * @param offset Start of the chunk data in {@code data}
+     * @param length Length of the chunk data
+     * @return The reassembled message bytes if complete, null otherwise
      */
-    public String addChunk(String chunkId, int chunkIndex, int totalChunks, String data) {
-        // Clean up old sessions first
-        cleanupTimedOutSessions();
-        
-        // Check if we're at capacity
-        if (activeSessions.size() >= MAX_CONCURRENT_SESSIONS && !activeSessions.containsKey(chunkId)) {
-            Log.w(TAG, "Maximum concurrent chunk sessions reached, dropping oldest");
-            removeOldestSession();
-        }
-        
+    public byte[] addChunk(String chunkId, int chunkIndex, int totalChunks, byte[] data, int offset, int length) {
+        return addChunk(chunkId, chunkIndex, totalChunks, data, offset, length, System.currentTimeMillis());
+    }
+
+    synchronized byte[] addChunk(String chunkId, int chunkIndex, int totalChunks,
+                                 byte[] data, int offset, int length, long nowMs) {
+        // Expire sessions whose wheel slots have come round
+        advanceWheel(nowMs);
+
         // Get or create session
-        ChunkSession session = activeSessions.computeIfAbsent(chunkId, 
-            k -> new ChunkSession(chunkId, totalChunks));
-        
+        ChunkSession session = activeSessions.get(chunkId);
+        if (session == null) {
+            if (totalChunks <= 0 || totalChunks > MAX_CHUNKS_PER_SESSION) {
+                Log.e(TAG, "Invalid chunk count " + totalChunks + " for session " + chunkId);
+                return null;
+            }
+            // Check if we're at capacity
+            if (activeSessions.size() >= maxSessions) {
+                Log.w(TAG, "Maximum concurrent chunk sessions reached, dropping oldest");
+                removeOldestSession(null);
+            }
+            session = new ChunkSession(chunkId, totalChunks, nowMs, expiryTick(nowMs));
+            activeSessions.put(chunkId, session);
+            scheduleExpiry(session);
+        }
+
         // Add the chunk
-        boolean added = session.addChunk(chunkIndex, data);
-        if (!added) {
+        if (!session.isValidIndex(chunkIndex)) {
             Log.w(TAG, "Failed to add chunk " + chunkIndex + " to session " + chunkId);
             return null;
         }
-        
-        Log.d(TAG, "Added chunk " + chunkIndex + "/" + (totalChunks - 1) + " for session " + chunkId);
-        
+        if (session.hasChunk(chunkIndex)) {
+            Log.w(TAG, "Duplicate chunk " + chunkIndex + " for session " + chunkId);
+            return null;
+        }
+        if (!reservePages(session, length)) {
+            Log.w(TAG, "Chunk memory budget exhausted, dropping session " + chunkId +
+                " (received " + session.received + "/" + session.totalChunks + " chunks)");
+            removeSession(session);
+            return null;
+        }
+        session.append(chunkIndex, data, offset, length);
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Added chunk " + chunkIndex + "/" + (totalChunks - 1) + " for session " + chunkId);
+        }
+
         // Check if complete
         if (session.isComplete()) {
             Log.d(TAG, "Chunk session " + chunkId + " complete, reassembling");
-            String reassembled = session.reassemble();
-            
+            byte[] reassembled = session.reassemble();
+
             // Remove completed session
-            activeSessions.remove(chunkId);
-            
+            removeSession(session);
+
             return reassembled;
         }
-        
+
         return null;
     }
-    
+
     /**
      * Check if a chunk session is complete
      */
-    public boolean isComplete(String chunkId) {
+    public synchronized boolean isComplete(String chunkId) {
         ChunkSession session = activeSessions.get(chunkId);
         return session != null && session.isComplete();
     }
-    
+
     /**
      * Manually reassemble a chunk session (if complete)
      */
-    public String reassemble(String chunkId) {
+    public synchronized byte[] reassemble(String chunkId) {
         ChunkSession session = activeSessions.get(chunkId);
         if (session != null && session.isComplete()) {
-            String reassembled = session.reassemble();
-            activeSessions.remove(chunkId);
+            byte[] reassembled = session.reassemble();
+            removeSession(session);
             return reassembled;
         }
         return null;
     }
-    
+
     /**
-     * Clean up sessions that have timed out
+     * Expire sessions in the wheel slots passed since the last call.
+     * After a gap longer than the wheel, every slot is visited once.
      */
-    private void cleanupTimedOutSessions() {
-        long now = System.currentTimeMillis();
-        
-        activeSessions.entrySet().removeIf(entry -> {
-            ChunkSession session = entry.getValue();
-            if (now - session.createdTime > CHUNK_TIMEOUT_MS) {
-                Log.w(TAG, "Chunk session " + entry.getKey() + " timed out after " + 
-                    CHUNK_TIMEOUT_MS + "ms, received " + session.getReceivedCount() + 
-                    "/" + session.totalChunks + " chunks");
-                return true;
+    private void advanceWheel(long nowMs) {
+        long nowTick = Math.floorDiv(nowMs, WHEEL_TICK_MS);
+        if (wheelTick == Long.MIN_VALUE || nowTick <= wheelTick) {
+            wheelTick = Math.max(wheelTick, nowTick);
+            return;
+        }
+        long firstTick = Math.max(wheelTick + 1, nowTick - wheel.length + 1);
+        for (long tick = firstTick; tick <= nowTick; tick++) {
+            ChunkSession session = wheel[slotFor(tick)];
+            while (session != null) {
+                ChunkSession next = session.wheelNext;
+                if (session.expiryTick <= nowTick) {
+                    Log.w(TAG, "Chunk session " + session.chunkId + " timed out after " +
+                        timeoutMs + "ms, received " + session.received +
+                        "/" + session.totalChunks + " chunks");
+                    removeSession(session);
+                }
+                session = next;
             }
-            return false;
-        });
+        }
+        wheelTick = nowTick;
     }
-    
+
     /**
-     * Remove the oldest session to make room for new ones
+     * First tick at which the session has been open for longer than the timeout.
      */
-    private void removeOldestSession() {
-        String oldestId = null;
-        long oldestTime = Long.MAX_VALUE;
-        
-        for (Map.Entry<String, ChunkSession> entry : activeSessions.entrySet()) {
-            if (entry.getValue().createdTime < oldestTime) {
-                oldestTime = entry.getValue().createdTime;
-                oldestId = entry.getKey();
+    private long expiryTick(long createdMs) {
+        return Math.floorDiv(createdMs + timeoutMs, WHEEL_TICK_MS) + 1;
+    }
+
+    private int slotFor(long tick) {
+        return (int) Math.floorMod(tick, (long) wheel.length);
+    }
+
+    private void scheduleExpiry(ChunkSession session) {
+        int slot = slotFor(session.expiryTick);
+        session.wheelNext = wheel[slot];
+        if (wheel[slot] != null) {
+            wheel[slot].wheelPrev = session;
+        }
+        wheel[slot] = session;
+    }
+
+    private void cancelExpiry(ChunkSession session) {
+        if (session.wheelPrev != null) {
+            session.wheelPrev.wheelNext = session.wheelNext;
+        } else {
+            int slot = slotFor(session.expiryTick);
+            if (wheel[slot] == session) {
+                wheel[slot] = session.wheelNext;
+            }
+        }
+        if (session.wheelNext != null) {
+            session.wheelNext.wheelPrev = session.wheelPrev;
+        }
+        session.wheelPrev = null;
+        session.wheelNext = null;
+    }
+
+    /**
+     * Take the pages this chunk needs from the pool, dropping the oldest other sessions
+     * if the memory budget is exhausted.
+     */
+    private boolean reservePages(ChunkSession session, int length) {
+        int needed = session.pagesNeeded(length);
+        while (pagePool.available() < needed) {
+            if (!removeOldestSession(session)) {
+                return false;
             }
         }
-        
-        if (oldestId != null) {
-            ChunkSession removed = activeSessions.remove(oldestId);
-            if (removed != null) {
-                Log.w(TAG, "Removed oldest chunk session " + oldestId + 
-                    " (received " + removed.getReceivedCount() + "/" + removed.totalChunks + " chunks)");
+        for (int i = 0; i < needed; i++) {
+            session.pages.add(pagePool.acquire());
+        }
+        return true;
+    }
+
+    /**
+     * Remove the oldest session to make room for new ones
+     * @param keep Session that must not be removed, or null
+     * @return false if there was no other session to remove
+     */
+    private boolean removeOldestSession(ChunkSession keep) {
+        for (ChunkSession session : activeSessions.values()) {
+            if (session != keep) {
+                removeSession(session);
+                Log.w(TAG, "Removed oldest chunk session " + session.chunkId +
+                    " (received " + session.received + "/" + session.totalChunks + " chunks)");
+                return true;
             }
         }
+        return false;
+    }
+
+    private void removeSession(ChunkSession session) {
+        activeSessions.remove(session.chunkId);
+        cancelExpiry(session);
+        session.release(pagePool);
     }
-    
+
     /**
      * Get statistics about active chunk sessions
      */
-    public String getStats() {
+    public synchronized String getStats() {
         StringBuilder stats = new StringBuilder();
         stats.append("Active chunk sessions: ").append(activeSessions.size()).append("\n");
-        
+        stats.append("Chunk buffer pages: ").append(pagePool.inUse).append("/").append(pagePool.maxPages)
+            .append(" in use, ").append(pagePool.idle.size()).append(" idle\n");
+
+        long now = System.currentTimeMillis();
         for (Map.Entry<String, ChunkSession> entry : activeSessions.entrySet()) {
             ChunkSession session = entry.getValue();
-            long age = System.currentTimeMillis() - session.createdTime;
+            long age = now - session.createdTime;
             stats.append("  - ").append(entry.getKey())
-                .append(": ").append(session.getReceivedCount())
+                .append(": ").append(session.received)
                 .append("/").append(session.totalChunks)
-                .append(" chunks, age: ").append(age).append("ms\n");
+                .append(" chunks, ").append(session.writePosition)
+                .append(" bytes, age: ").append(age).append("ms\n");
         }
-        
+
         return stats.toString();
     }
-    
+
+    /**
+     * @return Number of incomplete chunk sessions
+     */
+    synchronized int getActiveSessionCount() {
+        return activeSessions.size();
+    }
+
+    /**
+     * @return Bytes of pool memory currently held by sessions
+     */
+    synchronized int getBufferedBytes() {
+        return pagePool.inUse * PAGE_SIZE;
+    }
+
     /**
      * Clear all active sessions
      */
-    public void clear() {
+    public synchronized void clear() {
         int count = activeSessions.size();
-        activeSessions.clear();
+        Iterator<ChunkSession> it = activeSessions.values().iterator();
+        while (it.hasNext()) {
+            ChunkSession session = it.next();
+            it.remove();
+            cancelExpiry(session);
+            session.release(pagePool);
+        }
         Log.d(TAG, "Cleared " + count + " active chunk sessions");
     }
-    
+
     /**
-     * Inner class representing a chunk session
+     * Fixed-size byte pages shared by all sessions, bounded by the memory budget.
+     */
+    private static class PagePool {
+        final int maxPages;
+        final int maxIdle;
+        final ArrayDeque<byte[]> idle = new ArrayDeque<>();
+        int inUse;
+
+        PagePool(int maxPages, int maxIdle) {
+            this.maxPages = maxPages;
+            this.maxIdle = maxIdle;
+        }
+
+        int available() {
+            return maxPages - inUse;
+        }
+
+        byte[] acquire() {
+            inUse++;
+            byte[] page = idle.poll();
+            return page != null ? page : new byte[PAGE_SIZE];
+        }
+
+        void release(byte[] page) {
+            inUse--;
+            if (idle.size() < maxIdle) {
+                idle.push(page);
+            }
+        }
+    }
+
+    /**
+     * Inner class representing a chunk session.
+     * Chunks are appended to the session's pages in arrival order and indexed by position,
+     * so out-of-order chunks need no reordering until the message is reassembled.
      */
     private static class ChunkSession {
         final String chunkId;
         final int totalChunks;
         final long createdTime;
-        final Map<Integer, String> chunks;
-        
-        ChunkSession(String chunkId, int totalChunks) {
+        final long expiryTick;
+        final int[] chunkOffsets;
+        final int[] chunkLengths;
+        final List<byte[]> pages = new ArrayList<>();
+        int writePosition;
+        int received;
+
+        // Timer wheel slot list
+        ChunkSession wheelPrev;
+        ChunkSession wheelNext;
+
+        ChunkSession(String chunkId, int totalChunks, long createdTime, long expiryTick) {
             this.chunkId = chunkId;
             this.totalChunks = totalChunks;
-            this.createdTime = System.currentTimeMillis();
-            this.chunks = new HashMap<>();
+            this.createdTime = createdTime;
+            this.expiryTick = expiryTick;
+            this.chunkOffsets = new int[totalChunks];
+            this.chunkLengths = new int[totalChunks];
+            Arrays.fill(chunkOffsets, -1);
         }
-        
-        boolean addChunk(int index, String data) {
+
+        boolean isValidIndex(int index) {
             if (index < 0 || index >= totalChunks) {
                 Log.e(TAG, "Invalid chunk index " + index + " for session with " + totalChunks + " chunks");
                 return false;
             }
-            
-            if (chunks.containsKey(index)) {
-                Log.w(TAG, "Duplicate chunk " + index + " for session " + chunkId);
-            }
-            
-            chunks.put(index, data);
             return true;
         }
-        
-        boolean isComplete() {
-            return chunks.size() == totalChunks;
+
+        boolean hasChunk(int index) {
+            return chunkOffsets[index] >= 0;
         }
-        
-        int getReceivedCount() {
-            return chunks.size();
+
+        int pagesNeeded(int length) {
+            int pagesAfter = (writePosition + length + PAGE_SIZE - 1) / PAGE_SIZE;
+            return Math.max(0, pagesAfter - pages.size());
         }
-        
-        String reassemble() {
-            if (!isComplete()) {
-                Log.e(TAG, "Cannot reassemble incomplete session " + chunkId);
-                return null;
+
+        /**
+         * Copy chunk data into the session's pages. Pages must have been reserved.
+         */
+        void append(int index, byte[] data, int offset, int length) {
+            chunkOffsets[index] = writePosition;
+            chunkLengths[index] = length;
+            received++;
+            while (length > 0) {
+                int inPage = writePosition % PAGE_SIZE;
+                int n = Math.min(length, PAGE_SIZE - inPage);
+                System.arraycopy(data, offset, pages.get(writePosition / PAGE_SIZE), inPage, n);
+                writePosition += n;
+                offset += n;
+                length -= n;
             }
-            
-            StringBuilder reassembled = new StringBuilder();
+        }
+
+        boolean isComplete() {
+            return received == totalChunks;
+        }
+
+        /**
+         * Copy the chunks, in index order, into one array sized to the message.
+         */
+        byte[] reassemble() {
+            byte[] result = new byte[writePosition];
+            int out = 0;
             for (int i = 0; i < totalChunks; i++) {
-                String chunk = chunks.get(i);
-                if (chunk == null) {
-                    Log.e(TAG, "Missing chunk " + i + " in session " + chunkId);
-                    return null;
+                int position = chunkOffsets[i];
+                int remaining = chunkLengths[i];
+                while (remaining > 0) {
+                    int inPage = position % PAGE_SIZE;
+                    int n = Math.min(remaining, PAGE_SIZE - inPage);
+                    System.arraycopy(pages.get(position / PAGE_SIZE), inPage, result, out, n);
+                    position += n;
+                    out += n;
+                    remaining -= n;
                 }
-                reassembled.append(chunk);
             }
-            
-            String result = reassembled.toString();
-            Log.d(TAG, "Reassembled message of " + result.length() + " bytes from " + totalChunks + " chunks");
+            Log.d(TAG, "Reassembled message of " + result.length + " bytes from " + totalChunks + " chunks");
             return result;
         }
+
+        void release(PagePool pool) {
+            for (byte[] page : pages) {
+                pool.release(page);
+            }
+            pages.clear();
+        }
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,8 @@ import android.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Protocol detection strategy for chunked messages.
  * Detects and handles reassembly of messages split across multiple chunks.
@@ -76,11 +78,14 @@ public class ChunkedMessageProtocolStrategy implements CommandProtocolDetector.P
                       (messageId != -1 ? " (mId: " + messageId + ")" : ""));
             
             // Add chunk to reassembler
-            String reassembled = chunkReassembler.addChunk(chunkId, chunkIndex, totalChunks, data);
+            byte[] chunkData = data.getBytes(StandardCharsets.UTF_8);
+            byte[] reassembledBytes = chunkReassembler.addChunk(chunkId, chunkIndex, totalChunks,
+                    chunkData, 0, chunkData.length);
             
-            if (reassembled != null) {
+            if (reassembledBytes != null) {
                 // Message complete - parse and return the reassembled message
                 Log.d(TAG, "Chunk session " + chunkId + " complete, processing reassembled message");
+                String reassembled = new String(reassembledBytes, StandardCharsets.UTF_8);
                 
                 try {
                     JSONObject reassembledJson = new JSONObject(reassembled);
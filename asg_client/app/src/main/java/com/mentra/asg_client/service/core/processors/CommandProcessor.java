@@ -32,11 +32,14 @@ import com.mentra.asg_client.service.core.handlers.I2SAudioCommandHandler;
 import com.mentra.asg_client.service.core.handlers.UserEmailCommandHandler;
 import com.mentra.asg_client.service.core.handlers.UploadIncidentLogsCommandHandler;
 import com.mentra.asg_client.reporting.core.ReportManager;
+import com.mentra.asg_client.utils.smartglasses.CompactWireCodec;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
 
 /**
  * CommandProcessor - Orchestrates command processing following SOLID principles.
@@ -50,9 +53,15 @@ import java.util.concurrent.TimeUnit;
 public class CommandProcessor {
     private static final String TAG = "CommandProcessor";
     
-    // Duplicate detection
+    // Duplicate detection (1s buckets, up to 256 commands/s remembered)
     private static final long DUPLICATE_WINDOW_MS = TimeUnit.SECONDS.toMillis(10);
-    private final ConcurrentHashMap<Long, Long> processedMessageIds = new ConcurrentHashMap<>();
+    private static final long DUPLICATE_BUCKET_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final int DUPLICATE_IDS_PER_BUCKET = 256;
+    private final MessageIdDeduplicator processedMessageIds =
+            new MessageIdDeduplicator(DUPLICATE_WINDOW_MS, DUPLICATE_BUCKET_MS, DUPLICATE_IDS_PER_BUCKET);
+
+    // Compact chunk sets share the reassembler with JSON chunks; their IDs can't collide
+    private static final String COMPACT_CHUNK_ID_PREFIX = "compact:";
 
     // Core dependencies (Dependency Inversion Principle)
     private final Context context;
@@ -68,6 +77,7 @@ public class CommandProcessor {
     private final CommandHandlerRegistry commandHandlerRegistry;
     private final CommandParser commandParser;
     private final CommandProtocolDetector protocolDetector;
+    private final StreamingCommandDecoder commandDecoder = new StreamingCommandDecoder();
     private final K900CommandHandler k900CommandHandler;
     private final ResponseSender responseSender;
     private final ChunkReassembler chunkReassembler;
@@ -119,7 +129,17 @@ public class CommandProcessor {
             return;
         }
 
+        if (CompactWireCodec.isCompactPayload(data)) {
+            processCompactMessage(data);
+            return;
+        }
+
         try {
+            // Fast path: ACKs, duplicates and common commands decoded straight from the bytes
+            if (processDecodedCommand(data)) {
+                return;
+            }
+
             // Parsing JSON from byte data
             // Parse JSON from byte data
             JSONObject jsonObject = commandParser.parseToJson(data);
@@ -138,6 +158,41 @@ public class CommandProcessor {
         // processCommand() completed
     }
 
+    /**
+     * Handle a compact frame from a phone that negotiated the compact wire format.
+     * Chunks go to the reassembler; the completed message is the bare JSON a legacy frame carries
+     * inside "C", so it takes the normal path from there.
+     */
+    private void processCompactMessage(byte[] data) {
+        CompactWireCodec.Header header = new CompactWireCodec.Header();
+        if (!CompactWireCodec.parseHeader(data, 0, data.length, header)) {
+            Log.w(TAG, "❌ Unsupported or truncated compact frame (" + data.length + " bytes)");
+            return;
+        }
+
+        byte[] body = data;
+        int offset = header.bodyOffset;
+        int length = header.bodyLength;
+        if (header.isChunked()) {
+            body = chunkReassembler.addChunk(COMPACT_CHUNK_ID_PREFIX + header.messageId + "/" + header.count,
+                    header.index, header.count, data, offset, length);
+            if (body == null) {
+                return;
+            }
+            offset = 0;
+            length = body.length;
+        }
+
+        byte[] message;
+        try {
+            message = CompactWireCodec.decodeBody(body, offset, length, header.isDeflated());
+        } catch (DataFormatException e) {
+            Log.w(TAG, "❌ Failed to inflate compact message: " + e.getMessage());
+            return;
+        }
+        processCommand(message);
+    }
+
     /**
      * Process JSON command by delegating to appropriate handlers.
      * Follows Open/Closed Principle by using registry pattern.
@@ -145,7 +200,9 @@ public class CommandProcessor {
     public void processJsonCommand(JSONObject json) {
         // processJsonCommand() started
 
-        Log.d(TAG, "📊 processJsonCommand() started" + json.toString());
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "📊 processJsonCommand() started" + json.toString());
+        }
         try {
             // Check for ACK first (from phone acknowledging our sent messages)
             String type = json.optString("type", "");
@@ -163,11 +220,11 @@ public class CommandProcessor {
             // Extracting command data from JSON
             CommandData commandData = extractCommandData(json);
             if (commandData == null) {
-                Log.w(TAG, "⚠️ No command data extracted - processing complete" + json.toString());
+                Log.w(TAG, "⚠️ No command data extracted - processing complete");
                 return;
             }
 
-            Log.d(TAG, "📊 Command data extracted - Type: " + commandData.type() + ", MessageID: " + commandData.messageId() + ", Data: " + commandData.data());
+            logCommandData(commandData);
 
             // Check for duplicate message ID
             if (isDuplicateMessage(commandData.messageId())) {
@@ -189,6 +246,130 @@ public class CommandProcessor {
         // processJsonCommand() completed
     }
 
+    /**
+     * Handle a message from its envelope decoded straight off the bytes.
+     * ACKs and duplicates need no JSONObject at all; other commands build only their payload,
+     * skipping the parse-to-string and protocol-detection round-trips of {@link #processJsonCommand}.
+     * Chunks go to the reassembler as bytes and the completed message is decoded the same way.
+     *
+     * @return false if the message needs the full parsing path (K900 system commands, unusual JSON)
+     */
+    private boolean processDecodedCommand(byte[] data) {
+        CommandData commandData;
+        synchronized (commandDecoder) {
+            StreamingCommandDecoder.Result result = commandDecoder.decode(data);
+            if (result == StreamingCommandDecoder.Result.FALLBACK) {
+                return false;
+            }
+
+            if (result == StreamingCommandDecoder.Result.ACK) {
+                long messageId = commandDecoder.getMessageId();
+                // Handle ACK for our sent message
+                responseSender.getReliableManager().handleAck(messageId);
+                Log.d(TAG, "✅ Received ACK for message: " + messageId);
+                return true;
+            }
+
+            if (result == StreamingCommandDecoder.Result.CHUNK) {
+                commandData = addDecodedChunk();
+            } else {
+                commandData = buildDecodedCommand(-1);
+            }
+        }
+
+        if (commandData == null) {
+            // Waiting for more chunks, duplicate, or malformed payload
+            return true;
+        }
+
+        logCommandData(commandData);
+
+        // Send acknowledgment if required
+        sendAcknowledgment(commandData);
+
+        // Route to appropriate handler
+        routeCommand(commandData);
+        return true;
+    }
+
+    /**
+     * Build CommandData for the command the decoder just decoded. Caller holds the decoder lock.
+     *
+     * @param defaultMessageId Message ID to use if the command carries none
+     * @return null if the command is a duplicate or its payload is malformed
+     */
+    private CommandData buildDecodedCommand(long defaultMessageId) {
+        String type = commandDecoder.getType();
+        long messageId = commandDecoder.getMessageId() != -1 ? commandDecoder.getMessageId() : defaultMessageId;
+        if (isDuplicateCommand(type, messageId)) {
+            return null;
+        }
+
+        try {
+            return new CommandData(type, commandDecoder.buildPayload(), messageId);
+        } catch (JSONException e) {
+            // Already recorded as seen; the phone's retry will be ACKed as a duplicate
+            Log.w(TAG, "❌ Malformed command payload (type: " + type + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Hand the chunk the decoder just decoded to the reassembler. Caller holds the decoder lock.
+     * Like {@link ChunkedMessageProtocolStrategy}, the reassembled message is the command itself
+     * and falls back to the chunk's message ID.
+     *
+     * @return The reassembled command, or null if the set is incomplete, a duplicate or malformed
+     */
+    private CommandData addDecodedChunk() {
+        long chunkMessageId = commandDecoder.getMessageId();
+        byte[] message = chunkReassembler.addChunk(commandDecoder.getChunkId(), commandDecoder.getChunkIndex(),
+                commandDecoder.getTotalChunks(), commandDecoder.getChunkData(),
+                commandDecoder.getChunkDataOffset(), commandDecoder.getChunkDataLength());
+        if (message == null) {
+            return null;
+        }
+
+        if (commandDecoder.decodeReassembled(message) == StreamingCommandDecoder.Result.COMMAND) {
+            return buildDecodedCommand(chunkMessageId);
+        }
+
+        // Unusual JSON: read it the way the chunked message strategy does
+        try {
+            JSONObject json = new JSONObject(new String(message, StandardCharsets.UTF_8));
+            String type = json.optString("type", "");
+            long messageId = json.optLong("mId", chunkMessageId);
+            return isDuplicateCommand(type, messageId) ? null : new CommandData(type, json, messageId);
+        } catch (JSONException e) {
+            Log.e(TAG, "❌ Failed to parse reassembled message (" + message.length + " bytes)", e);
+            return null;
+        }
+    }
+
+    /**
+     * Check for a duplicate message ID, ACKing the duplicate so the phone stops retrying.
+     */
+    private boolean isDuplicateCommand(String type, long messageId) {
+        if (!isDuplicateMessage(messageId)) {
+            return false;
+        }
+        Log.i(TAG, "🔄 Duplicate message detected (ID: " + messageId + "), sending ACK but skipping processing");
+        // Still send ACK so phone stops retrying
+        sendAcknowledgment(new CommandData(type, null, messageId));
+        return true;
+    }
+
+    /**
+     * Debug-log extracted command data; the payload is only serialized when debug logging is on.
+     */
+    private void logCommandData(CommandData commandData) {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "📊 Command data extracted - Type: " + commandData.type() + ", MessageID: " + commandData.messageId() + ", Data: " + commandData.data());
+        } else {
+            Log.d(TAG, "📊 Command data extracted - Type: " + commandData.type() + ", MessageID: " + commandData.messageId());
+        }
+    }
+
     /**
      * Extract and validate command data from JSON using improved protocol detector.
      */
@@ -358,7 +539,7 @@ public class CommandProcessor {
             commandHandlerRegistry.registerHandler(new com.mentra.asg_client.service.core.handlers.ServiceHeartbeatCommandHandler(serviceManager));
             Log.d(TAG, "✅ Registered ServiceHeartbeatCommandHandler");
 
-            commandHandlerRegistry.registerHandler(new BleConfigCommandHandler());
+            commandHandlerRegistry.registerHandler(new BleConfigCommandHandler(responseSender));
             Log.d(TAG, "✅ Registered BleConfigCommandHandler");
 
             commandHandlerRegistry.registerHandler(new com.mentra.asg_client.service.core.handlers.PowerCommandHandler(context, serviceManager));
@@ -482,7 +663,7 @@ public class CommandProcessor {
 
     /**
      * Check if a message ID has been recently processed (duplicate detection).
-     * Also cleans up old entries to prevent memory growth.
+     * Old entries expire by bucket rotation, so this is O(1) per message.
      */
     private boolean isDuplicateMessage(long messageId) {
         if (messageId == -1) {
@@ -490,21 +671,6 @@ public class CommandProcessor {
             return false;
         }
 
-        long now = System.currentTimeMillis();
-        
-        // Clean up old entries periodically (entries older than duplicate window)
-        processedMessageIds.entrySet().removeIf(entry -> 
-            now - entry.getValue() > DUPLICATE_WINDOW_MS
-        );
-
-        // Check if we've seen this message ID recently
-        Long previousTime = processedMessageIds.put(messageId, now);
-        
-        if (previousTime != null && (now - previousTime) < DUPLICATE_WINDOW_MS) {
-            // We've seen this message ID within the duplicate window
-            return true;
-        }
-        
-        return false;
+        return processedMessageIds.checkAndRecord(messageId, System.currentTimeMillis());
     }
 }
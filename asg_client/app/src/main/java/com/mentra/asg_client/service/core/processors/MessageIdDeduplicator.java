@@ -0,0 +1,145 @@
+package com.mentra.asg_client.service.core.processors;
+
+import java.util.Arrays;
+
+/**
+ * Remembers recently processed message IDs so retried commands can be acknowledged without being
+ * processed twice.
+ *
+ * IDs are stored as primitive longs in a ring of time buckets, each an open-addressed hash set.
+ * A lookup probes every live bucket and an insert goes into the current one, so both cost O(1)
+ * regardless of traffic. Expiry happens by clearing the oldest bucket when the ring rotates
+ * instead of sweeping individual entries. Nothing is allocated after construction.
+ *
+ * An ID is remembered for at least the configured window and at most one bucket longer.
+ * If a bucket fills up, further IDs in that bucket are not remembered (see {@link #getOverflowCount()}).
+ */
+public class MessageIdDeduplicator {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    /** Keep each bucket's hash table at most half full so probe sequences stay short. */
+    private static final int LOAD_FACTOR_INVERSE = 2;
+
+    private final long bucketMs;
+    private final int bucketCount;
+    private final int slotsPerBucket;
+    private final int slotMask;
+    private final int maxIdsPerBucket;
+
+    private final long[] slots;
+    private final long[] bucketEpochs;
+    private final int[] bucketSizes;
+    private long overflowCount;
+
+    /**
+     * @param windowMs        How long an ID counts as a duplicate after it was last seen
+     * @param bucketMs        Expiry granularity
+     * @param maxIdsPerBucket Most IDs remembered per bucket (i.e. per {@code bucketMs} of traffic)
+     */
+    public MessageIdDeduplicator(long windowMs, long bucketMs, int maxIdsPerBucket) {
+        if (windowMs <= 0 || bucketMs <= 0 || maxIdsPerBucket <= 0) {
+            throw new IllegalArgumentException("windowMs, bucketMs and maxIdsPerBucket must be positive");
+        }
+        this.bucketMs = bucketMs;
+        // One extra bucket so the oldest still covers a full window while the current one fills
+        this.bucketCount = (int) ((windowMs + bucketMs - 1) / bucketMs) + 1;
+        this.maxIdsPerBucket = maxIdsPerBucket;
+        this.slotsPerBucket = Integer.highestOneBit(maxIdsPerBucket * LOAD_FACTOR_INVERSE - 1) << 1;
+        this.slotMask = slotsPerBucket - 1;
+
+        this.slots = new long[bucketCount * slotsPerBucket];
+        this.bucketEpochs = new long[bucketCount];
+        this.bucketSizes = new int[bucketCount];
+        Arrays.fill(slots, EMPTY);
+        Arrays.fill(bucketEpochs, Long.MIN_VALUE);
+    }
+
+    /**
+     * Record a message ID and report whether it was already seen within the window.
+     * A duplicate refreshes the ID, so a message that keeps being retried stays suppressed.
+     *
+     * @param messageId Message ID ({@link Long#MIN_VALUE} is reserved and never matches)
+     * @param nowMs     Current time in milliseconds
+     * @return true if the ID was seen within the window
+     */
+    public synchronized boolean checkAndRecord(long messageId, long nowMs) {
+        if (messageId == EMPTY) {
+            return false;
+        }
+        long epoch = Math.floorDiv(nowMs, bucketMs);
+        int current = (int) Math.floorMod(epoch, (long) bucketCount);
+        if (bucketEpochs[current] != epoch) {
+            // Rotate: the bucket being reused only holds IDs older than the window
+            Arrays.fill(slots, current * slotsPerBucket, (current + 1) * slotsPerBucket, EMPTY);
+            bucketEpochs[current] = epoch;
+            bucketSizes[current] = 0;
+        }
+
+        int home = mix(messageId) & slotMask;
+        boolean seen = false;
+        for (int b = 0; b < bucketCount; b++) {
+            long bucketEpoch = bucketEpochs[b];
+            if (b != current && (bucketEpoch <= epoch - bucketCount || bucketEpoch > epoch)) {
+                // Not rotated for a while (or clock went back); its contents are expired
+                continue;
+            }
+            if (findSlot(b, messageId, home) >= 0) {
+                seen = true;
+                if (b == current) {
+                    return true;
+                }
+                break;
+            }
+        }
+
+        insert(current, messageId, home);
+        return seen;
+    }
+
+    /**
+     * @return Number of IDs that could not be remembered because their bucket was full
+     */
+    public synchronized long getOverflowCount() {
+        return overflowCount;
+    }
+
+    private int findSlot(int bucket, long messageId, int home) {
+        int base = bucket * slotsPerBucket;
+        for (int i = 0; i < slotsPerBucket; i++) {
+            long value = slots[base + ((home + i) & slotMask)];
+            if (value == messageId) {
+                return (home + i) & slotMask;
+            }
+            if (value == EMPTY) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int bucket, long messageId, int home) {
+        if (bucketSizes[bucket] >= maxIdsPerBucket) {
+            overflowCount++;
+            return;
+        }
+        int base = bucket * slotsPerBucket;
+        for (int i = 0; ; i++) {
+            int index = base + ((home + i) & slotMask);
+            if (slots[index] == EMPTY) {
+                slots[index] = messageId;
+                bucketSizes[bucket]++;
+                return;
+            }
+        }
+    }
+
+    /** 64-bit finalizer from MurmurHash3; message IDs are often sequential or timestamps. */
+    private static int mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
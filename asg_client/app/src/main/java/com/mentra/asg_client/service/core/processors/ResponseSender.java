@@ -207,6 +207,21 @@ public class ResponseSender {
         }
     }
 
+    /**
+     * Send an already framed binary packet over BLE, without reliability: used for streams where
+     * a newer packet supersedes a lost one.
+     *
+     * @param data The complete packet
+     */
+    public void sendBinaryData(byte[] data) {
+        if (!isBluetoothConnected()) {
+            Log.d(TAG, "Cannot send binary data - not connected to BLE device");
+            return;
+        }
+
+        sendDataOverBluetooth(data);
+    }
+
     /**
      * Send error response over BLE with reliability.
      *
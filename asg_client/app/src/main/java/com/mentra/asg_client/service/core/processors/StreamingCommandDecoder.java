@@ -0,0 +1,682 @@
+package com.mentra.asg_client.service.core.processors;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single-pass decoder for the command envelope of inbound BLE messages.
+ * <p>
+ * Reads {@code type}, {@code t} and {@code mId} straight from the raw bytes, unwrapping the
+ * K900 frame ({@code ##...$$}) and the {@code "C"} string the phone wraps commands in, without
+ * building a JSONObject. That is enough to dispatch ACKs and drop duplicates with no tree at all;
+ * other commands get exactly one JSONObject, for their payload. Chunks of a split message are
+ * decoded to their raw data bytes so they can go to the {@link ChunkReassembler} as-is.
+ * <p>
+ * Anything outside the common shapes (K900 system commands, malformed or unusual JSON) is
+ * reported as {@link Result#FALLBACK} so the caller can use the full
+ * {@link CommandParser} / {@link CommandProtocolDetector} path, which keeps behaviour identical.
+ * <p>
+ * Not thread-safe: the decoded fields and the scratch buffers are reused between calls.
+ */
+public class StreamingCommandDecoder {
+
+    /**
+     * Outcome of {@link #decode(byte[])}.
+     */
+    public enum Result {
+        /** Top-level {@code msg_ack} with a message ID; see {@link #getMessageId()}. */
+        ACK,
+        /** Regular command; see {@link #getType()}, {@link #getMessageId()} and {@link #buildPayload()}. */
+        COMMAND,
+        /** One chunk of a split message; see {@link #getChunkId()} and friends, and {@link #getMessageId()}. */
+        CHUNK,
+        /** Not handled here; use the full parsing path. */
+        FALLBACK
+    }
+
+    private static final int K900_HEADER_LENGTH = 5;
+    private static final int NO_VALUE = -1;
+
+    // Keys tracked by the scanner, by field index. Chunks accept the verbose and the compact key.
+    private static final int F_TYPE = 0;
+    private static final int F_T = 1;
+    private static final int F_MID = 2;
+    private static final int F_C = 3;
+    private static final int F_CHUNK_ID = 4;
+    private static final int F_ID = 5;
+    private static final int F_CHUNK = 6;
+    private static final int F_CHUNK_COMPACT = 7;
+    private static final int F_TOTAL = 8;
+    private static final int F_N = 9;
+    private static final int F_DATA = 10;
+    private static final int F_D = 11;
+    private static final byte[][] KEYS = {
+            ascii("type"), ascii("t"), ascii("mId"), ascii("C"),
+            ascii("chunkId"), ascii("id"), ascii("chunk"), ascii("c"),
+            ascii("total"), ascii("n"), ascii("data"), ascii("d"),
+    };
+
+    private static final byte KIND_STRING = 1;
+    private static final byte KIND_NUMBER = 2;
+    private static final byte KIND_OTHER = 3;
+
+    private static final byte[] MSG_ACK = ascii("msg_ack");
+    private static final byte[] CHUNKED_MSG = ascii("chunked_msg");
+    private static final byte[] CHUNK_COMPACT = ascii("ck");
+
+    // Value spans found by the last scan (start/end offsets into the scanned buffer, quotes excluded)
+    private final int[] valueStart = new int[KEYS.length];
+    private final int[] valueEnd = new int[KEYS.length];
+    private final byte[] valueKind = new byte[KEYS.length];
+    private final boolean[] valueEscaped = new boolean[KEYS.length];
+
+    // Decoded result
+    private byte[] payloadBuffer;
+    private int payloadOffset;
+    private int payloadLength;
+    private String type;
+    private long messageId;
+
+    private String chunkId;
+    private int chunkIndex;
+    private int totalChunks;
+    private byte[] chunkData;
+    private int chunkDataOffset;
+    private int chunkDataLength;
+
+    private final UnescapeBuffer wrapperScratch = new UnescapeBuffer();
+    private final UnescapeBuffer chunkScratch = new UnescapeBuffer();
+
+    /**
+     * Decode the envelope of one inbound message.
+     *
+     * @param data Raw bytes as received (K900 framed or bare JSON)
+     * @return What kind of message this is
+     */
+    public Result decode(byte[] data) {
+        reset();
+        if (data == null || data.length == 0) {
+            return Result.FALLBACK;
+        }
+
+        int start;
+        int end;
+        if (data.length > 4 && data[0] == '#' && data[1] == '#') {
+            start = K900_HEADER_LENGTH;
+            end = findEndMarker(data);
+            if (end <= start || data[start] != '{') {
+                return Result.FALLBACK;
+            }
+        } else if (data[0] == '{') {
+            start = 0;
+            end = data.length;
+        } else {
+            return Result.FALLBACK;
+        }
+
+        if (!scanObject(data, start, end)) {
+            return Result.FALLBACK;
+        }
+
+        // ACKs are recognised on the outer object only, as processJsonCommand does
+        if (isPlainString(F_TYPE) && spanEquals(data, F_TYPE, MSG_ACK)
+                && valueKind[F_MID] == KIND_NUMBER && parseMessageId(data) && messageId != -1) {
+            return Result.ACK;
+        }
+        messageId = -1;
+
+        if (valueStart[F_C] == NO_VALUE) {
+            // Direct format: {"type": ..., "mId": ...}
+            if (isChunk(data)) {
+                return finishChunk(data);
+            }
+            if (valueStart[F_TYPE] == NO_VALUE && valueStart[F_MID] == NO_VALUE) {
+                return Result.FALLBACK;
+            }
+            return finishCommand(data, start, end);
+        }
+
+        // Wrapped format: {"C": "{\"type\": ..., \"mId\": ...}"}
+        if (valueKind[F_C] != KIND_STRING) {
+            return Result.FALLBACK;
+        }
+
+        byte[] inner;
+        int innerStart;
+        int innerEnd;
+        if (valueEscaped[F_C]) {
+            if (!wrapperScratch.unescape(data, valueStart[F_C], valueEnd[F_C])) {
+                return Result.FALLBACK;
+            }
+            inner = wrapperScratch.bytes;
+            innerStart = 0;
+            innerEnd = wrapperScratch.length;
+        } else {
+            inner = data;
+            innerStart = valueStart[F_C];
+            innerEnd = valueEnd[F_C];
+        }
+        innerStart = skipWhitespace(inner, innerStart, innerEnd);
+        if (innerStart >= innerEnd || inner[innerStart] != '{') {
+            // K900 system command such as {"C":"cs_batv"}
+            return Result.FALLBACK;
+        }
+        if (!scanObject(inner, innerStart, innerEnd)) {
+            return Result.FALLBACK;
+        }
+        if (isChunk(inner)) {
+            return finishChunk(inner);
+        }
+        return finishCommand(inner, innerStart, innerEnd);
+    }
+
+    /**
+     * Decode a message put back together by the {@link ChunkReassembler}.
+     * The whole message is the command, as in {@link ChunkedMessageProtocolStrategy}: no ACK check
+     * and no {@code "C"} unwrapping.
+     *
+     * @param message Reassembled message bytes
+     * @return {@link Result#COMMAND}, or {@link Result#FALLBACK} if the JSON needs the full parser
+     */
+    public Result decodeReassembled(byte[] message) {
+        reset();
+        if (message == null) {
+            return Result.FALLBACK;
+        }
+        int start = skipWhitespace(message, 0, message.length);
+        int end = message.length;
+        while (end > start && isWhitespace(message[end - 1])) {
+            end--;
+        }
+        if (!scanObject(message, start, end)) {
+            return Result.FALLBACK;
+        }
+        return finishCommand(message, start, end);
+    }
+
+    /**
+     * @return Command type ("" if the command has none), valid after {@link Result#COMMAND}
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return Message ID or -1, valid after {@link Result#ACK}, {@link Result#COMMAND} or {@link Result#CHUNK}
+     */
+    public long getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Build the command payload handed to handlers. Valid after {@link Result#COMMAND}.
+     *
+     * @return The command JSON
+     * @throws JSONException if the payload turns out not to be valid JSON
+     */
+    public JSONObject buildPayload() throws JSONException {
+        if (payloadBuffer == null) {
+            throw new JSONException("No command decoded");
+        }
+        return new JSONObject(new String(payloadBuffer, payloadOffset, payloadLength, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Chunk session ID, valid after {@link Result#CHUNK}
+     */
+    public String getChunkId() {
+        return chunkId;
+    }
+
+    /**
+     * @return 0-based chunk index, valid after {@link Result#CHUNK}
+     */
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    /**
+     * @return Number of chunks in the set, valid after {@link Result#CHUNK}
+     */
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    /**
+     * Unescaped chunk data as UTF-8. The array is shared with the decoder and only valid
+     * until the next call; see {@link #getChunkDataOffset()} and {@link #getChunkDataLength()}.
+     */
+    public byte[] getChunkData() {
+        return chunkData;
+    }
+
+    public int getChunkDataOffset() {
+        return chunkDataOffset;
+    }
+
+    public int getChunkDataLength() {
+        return chunkDataLength;
+    }
+
+    private void reset() {
+        type = null;
+        messageId = -1;
+        payloadBuffer = null;
+        chunkId = null;
+        chunkData = null;
+    }
+
+    private Result finishCommand(byte[] buf, int start, int end) {
+        // Mirrors optString("type", "") / optLong("mId", -1) on the payload
+        if (valueStart[F_TYPE] != NO_VALUE && !isPlainString(F_TYPE)) {
+            return Result.FALLBACK;
+        }
+        if (!decodeMessageId(buf)) {
+            return Result.FALLBACK;
+        }
+        type = valueStart[F_TYPE] == NO_VALUE ? "" : spanString(buf, F_TYPE);
+        payloadBuffer = buf;
+        payloadOffset = start;
+        payloadLength = end - start;
+        return Result.COMMAND;
+    }
+
+    private Result finishChunk(byte[] buf) {
+        // Same key precedence as ChunkedMessageProtocolStrategy: verbose key first, then compact
+        int idField = present(F_CHUNK_ID, F_ID);
+        int indexField = present(F_CHUNK, F_CHUNK_COMPACT);
+        int totalField = present(F_TOTAL, F_N);
+        int dataField = present(F_DATA, F_D);
+        if (!isPlainString(idField) || valueKind[dataField] != KIND_STRING
+                || valueKind[indexField] != KIND_NUMBER || valueKind[totalField] != KIND_NUMBER) {
+            return Result.FALLBACK;
+        }
+        chunkIndex = parseInt(buf, indexField);
+        totalChunks = parseInt(buf, totalField);
+        if (chunkIndex < 0 || totalChunks < 0 || !decodeMessageId(buf)) {
+            return Result.FALLBACK;
+        }
+
+        if (valueEscaped[dataField]) {
+            if (!chunkScratch.unescape(buf, valueStart[dataField], valueEnd[dataField])) {
+                return Result.FALLBACK;
+            }
+            chunkData = chunkScratch.bytes;
+            chunkDataOffset = 0;
+            chunkDataLength = chunkScratch.length;
+        } else {
+            chunkData = buf;
+            chunkDataOffset = valueStart[dataField];
+            chunkDataLength = valueEnd[dataField] - valueStart[dataField];
+        }
+        chunkId = spanString(buf, idField);
+        return Result.CHUNK;
+    }
+
+    private boolean isChunk(byte[] buf) {
+        // Same precedence as optString("type", optString("t", ""))
+        if (valueStart[F_TYPE] != NO_VALUE) {
+            return valueKind[F_TYPE] == KIND_STRING
+                    && (spanEquals(buf, F_TYPE, CHUNKED_MSG) || spanEquals(buf, F_TYPE, CHUNK_COMPACT));
+        }
+        return valueStart[F_T] != NO_VALUE && valueKind[F_T] == KIND_STRING
+                && (spanEquals(buf, F_T, CHUNKED_MSG) || spanEquals(buf, F_T, CHUNK_COMPACT));
+    }
+
+    /**
+     * Decode an optional {@code mId} into {@link #messageId}.
+     *
+     * @return false if it is present but not a plain integer
+     */
+    private boolean decodeMessageId(byte[] buf) {
+        if (valueStart[F_MID] == NO_VALUE) {
+            messageId = -1;
+            return true;
+        }
+        return valueKind[F_MID] == KIND_NUMBER && parseMessageId(buf);
+    }
+
+    private boolean parseMessageId(byte[] buf) {
+        long value = parseLong(buf, F_MID);
+        if (value == Long.MIN_VALUE) {
+            return false;
+        }
+        messageId = value;
+        return true;
+    }
+
+    /**
+     * @return The integer value, or -1 if it is not a plain non-negative int
+     */
+    private int parseInt(byte[] buf, int field) {
+        long value = parseLong(buf, field);
+        return value >= 0 && value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+
+    /**
+     * @return The integer value, or {@link Long#MIN_VALUE} for fractions, exponents and overlong numbers
+     */
+    private long parseLong(byte[] buf, int field) {
+        int i = valueStart[field];
+        int end = valueEnd[field];
+        boolean negative = buf[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i >= end || end - i > 18) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = buf[i];
+            if (b < '0' || b > '9') {
+                // Fractions/exponents: leave to org.json
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return The verbose field if present, otherwise the compact one
+     */
+    private int present(int verboseField, int compactField) {
+        return valueStart[verboseField] != NO_VALUE ? verboseField : compactField;
+    }
+
+    private boolean isPlainString(int field) {
+        return valueKind[field] == KIND_STRING && !valueEscaped[field];
+    }
+
+    private String spanString(byte[] buf, int field) {
+        return new String(buf, valueStart[field], valueEnd[field] - valueStart[field], StandardCharsets.UTF_8);
+    }
+
+    private boolean spanEquals(byte[] buf, int field, byte[] expected) {
+        return regionEquals(buf, valueStart[field], valueEnd[field], expected);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Scanning
+
+    /**
+     * Walk one JSON object, recording the value spans of the keys we care about at its top level.
+     *
+     * @return false if the object is malformed
+     */
+    private boolean scanObject(byte[] buf, int start, int end) {
+        for (int f = 0; f < KEYS.length; f++) {
+            valueStart[f] = valueEnd[f] = NO_VALUE;
+            valueKind[f] = 0;
+            valueEscaped[f] = false;
+        }
+
+        int i = skipWhitespace(buf, start, end);
+        if (i >= end || buf[i] != '{') {
+            return false;
+        }
+        i = skipWhitespace(buf, i + 1, end);
+        if (i < end && buf[i] == '}') {
+            return true;
+        }
+        while (i < end) {
+            if (buf[i] != '"') {
+                return false;
+            }
+            int keyStart = i + 1;
+            int keyEnd = skipString(buf, i, end);
+            if (keyEnd < 0) {
+                return false;
+            }
+            i = skipWhitespace(buf, keyEnd + 1, end);
+            if (i >= end || buf[i] != ':') {
+                return false;
+            }
+            i = skipWhitespace(buf, i + 1, end);
+            if (i >= end) {
+                return false;
+            }
+
+            int valueBegin = i;
+            int valueFinish = skipValue(buf, i, end);
+            if (valueFinish < 0) {
+                return false;
+            }
+
+            // Later duplicates win, like org.json
+            int field = fieldFor(buf, keyStart, keyEnd);
+            if (field != NO_VALUE) {
+                byte first = buf[valueBegin];
+                if (first == '"') {
+                    valueStart[field] = valueBegin + 1;
+                    valueEnd[field] = valueFinish - 1;
+                    valueKind[field] = KIND_STRING;
+                    valueEscaped[field] = indexOf(buf, valueBegin + 1, valueFinish - 1, (byte) '\\') >= 0;
+                } else {
+                    valueStart[field] = valueBegin;
+                    valueEnd[field] = valueFinish;
+                    valueKind[field] = first == '-' || (first >= '0' && first <= '9') ? KIND_NUMBER : KIND_OTHER;
+                    valueEscaped[field] = false;
+                }
+            }
+
+            i = skipWhitespace(buf, valueFinish, end);
+            if (i >= end) {
+                return false;
+            }
+            if (buf[i] == '}') {
+                return true;
+            }
+            if (buf[i] != ',') {
+                return false;
+            }
+            i = skipWhitespace(buf, i + 1, end);
+        }
+        return false;
+    }
+
+    private static int fieldFor(byte[] buf, int keyStart, int keyEnd) {
+        for (int f = 0; f < KEYS.length; f++) {
+            if (regionEquals(buf, keyStart, keyEnd, KEYS[f])) {
+                return f;
+            }
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * @return Offset just past the value starting at {@code i}, or -1 if malformed
+     */
+    private static int skipValue(byte[] buf, int i, int end) {
+        byte b = buf[i];
+        if (b == '"') {
+            int close = skipString(buf, i, end);
+            return close < 0 ? -1 : close + 1;
+        }
+        if (b == '{' || b == '[') {
+            int depth = 0;
+            for (; i < end; i++) {
+                byte c = buf[i];
+                if (c == '"') {
+                    i = skipString(buf, i, end);
+                    if (i < 0) {
+                        return -1;
+                    }
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        return i + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+        // Number or literal
+        int start = i;
+        while (i < end && buf[i] != ',' && buf[i] != '}' && buf[i] != ']' && !isWhitespace(buf[i])) {
+            i++;
+        }
+        return i > start ? i : -1;
+    }
+
+    /**
+     * @param i Offset of the opening quote
+     * @return Offset of the closing quote, or -1 if unterminated
+     */
+    private static int skipString(byte[] buf, int i, int end) {
+        for (i = i + 1; i < end; i++) {
+            byte b = buf[i];
+            if (b == '\\') {
+                i++;
+            } else if (b == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int findEndMarker(byte[] data) {
+        for (int i = 4; i < data.length - 1; i++) {
+            if (data[i] == '$' && data[i + 1] == '$') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionEquals(byte[] buf, int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int k = 0; k < expected.length; k++) {
+            if (buf[start + k] != expected[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] buf, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (buf[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] buf, int i, int end) {
+        while (i < end && isWhitespace(buf[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reusable buffer holding a JSON string value with its escapes decoded, as UTF-8.
+     */
+    private static final class UnescapeBuffer {
+        byte[] bytes = new byte[512];
+        int length;
+
+        /**
+         * Decode JSON string escapes in {@code buf[start, end)} into {@link #bytes}.
+         *
+         * @return false on a malformed escape
+         */
+        boolean unescape(byte[] buf, int start, int end) {
+            // Decoding never grows: every escape is at least as long as its UTF-8 output
+            if (bytes.length < end - start) {
+                bytes = new byte[Math.max(end - start, bytes.length * 2)];
+            }
+            int out = 0;
+            for (int i = start; i < end; i++) {
+                byte b = buf[i];
+                if (b != '\\') {
+                    bytes[out++] = b;
+                    continue;
+                }
+                if (++i >= end) {
+                    return false;
+                }
+                switch (buf[i]) {
+                    case '"': bytes[out++] = '"'; break;
+                    case '\\': bytes[out++] = '\\'; break;
+                    case '/': bytes[out++] = '/'; break;
+                    case 'b': bytes[out++] = '\b'; break;
+                    case 'f': bytes[out++] = '\f'; break;
+                    case 'n': bytes[out++] = '\n'; break;
+                    case 'r': bytes[out++] = '\r'; break;
+                    case 't': bytes[out++] = '\t'; break;
+                    case 'u': {
+                        int cp = parseHex4(buf, i + 1, end);
+                        if (cp < 0) {
+                            return false;
+                        }
+                        i += 4;
+                        if (Character.isHighSurrogate((char) cp) && i + 6 < end
+                                && buf[i + 1] == '\\' && buf[i + 2] == 'u') {
+                            int low = parseHex4(buf, i + 3, end);
+                            if (low >= 0 && Character.isLowSurrogate((char) low)) {
+                                cp = Character.toCodePoint((char) cp, (char) low);
+                                i += 6;
+                            }
+                        }
+                        out = writeUtf8(cp, out);
+                        break;
+                    }
+                    default:
+                        return false;
+                }
+            }
+            length = out;
+            return true;
+        }
+
+        private int writeUtf8(int cp, int out) {
+            if (cp < 0x80) {
+                bytes[out++] = (byte) cp;
+            } else if (cp < 0x800) {
+                bytes[out++] = (byte) (0xC0 | (cp >> 6));
+                bytes[out++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (cp < 0x10000) {
+                bytes[out++] = (byte) (0xE0 | (cp >> 12));
+                bytes[out++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[out++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                bytes[out++] = (byte) (0xF0 | (cp >> 18));
+                bytes[out++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[out++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[out++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            return out;
+        }
+
+        private static int parseHex4(byte[] buf, int i, int end) {
+            if (i + 4 > end) {
+                return -1;
+            }
+            int value = 0;
+            for (int k = i; k < i + 4; k++) {
+                int digit = Character.digit(buf[k], 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+    }
+}
@@ -108,8 +108,8 @@ public class GalleryStatusHelper {
         // Get leaf filename for folder-based paths
         String leaf = lower.contains("/") ? lower.substring(lower.lastIndexOf('/') + 1) : lower;
 
-        // IMU sidecar files (imu.json inside capture folder)
-        if (leaf.equals("imu.json")) return true;
+        // IMU sidecar files (imu.json or binary imu.bin inside capture folder)
+        if (leaf.equals("imu.json") || leaf.equals("imu.bin")) return true;
         // HDR bracket files (ev-2.jpg, ev0.jpg, ev2.jpg)
         if (leaf.matches("ev-?\\d+\\.jpe?g$")) return true;
         return false;
@@ -0,0 +1,236 @@
+package com.mentra.asg_client.utils.smartglasses;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact framing for JSON messages between the phone and the glasses.
+ *
+ * The legacy framing C-wraps every message ({"C":"&lt;escaped json&gt;","V":1,"B":{}}), and the phone
+ * splits anything over 200 bytes into 80-byte JSON chunks, so most of each BLE packet is envelope.
+ * Compact frames carry the message bytes as they are:
+ *
+ *   ## 0x37 len(2) | magic(1) version(1) flags(1) [messageId(1) index(1) count(1)] body | $$
+ *
+ * FLAG_DEFLATE - the body is the raw-deflated message (only used when that is smaller)
+ * FLAG_CHUNKED - one of count frames; the bodies in index order make up the message
+ *
+ * Messages are only split when they don't fit one frame, and frames are sized to the negotiated
+ * MTU. A side only sends compact frames once the other has advertised the format version
+ * (glasses_ready "wireFormat", answered in set_ble_mtu) and a link check has shown the BES relays
+ * them (see BleConfigCommandHandler); receiving them is always supported.
+ * The magic byte can never start a JSON payload, so compact payloads are recognised even after
+ * the frame header has been stripped.
+ *
+ * Glasses to phone frames use the big-endian length, like {@link K900ProtocolUtils#packDataCommand}.
+ */
+public final class CompactWireCodec {
+    public static final int VERSION = 1;
+    public static final byte MAGIC = (byte) 0xC1; // Never valid in UTF-8, so never the start of JSON
+
+    public static final int FLAG_CHUNKED = 0x01;
+    public static final int FLAG_DEFLATE = 0x02;
+
+    public static final int HEADER_SIZE = 3;
+    public static final int CHUNK_HEADER_SIZE = 3;
+    public static final int FRAME_OVERHEAD = 7; // ## + type + length(2) + $$
+    public static final int MAX_CHUNKS = 255;
+
+    // Messages shorter than this rarely deflate to fewer bytes
+    static final int MIN_DEFLATE_SIZE = 96;
+    // Upper bound on an inflated message, so a bad frame can't allocate without limit
+    static final int MAX_MESSAGE_SIZE = 64 * 1024;
+
+    private CompactWireCodec() {
+    }
+
+    /**
+     * Header of a compact payload, filled in by {@link #parseHeader}
+     */
+    public static final class Header {
+        public int flags;
+        public int messageId;
+        public int index;
+        public int count;
+        public int bodyOffset;
+        public int bodyLength;
+
+        public boolean isChunked() {
+            return (flags & FLAG_CHUNKED) != 0;
+        }
+
+        public boolean isDeflated() {
+            return (flags & FLAG_DEFLATE) != 0;
+        }
+    }
+
+    /**
+     * Encode a message into one or more compact frames
+     *
+     * @param message UTF-8 JSON message
+     * @param maxFrameSize Largest frame the link carries in one packet (MTU less the ATT header)
+     * @param messageId Identifies the chunks of this message; only the low 8 bits are used
+     * @return The frames in send order, or null if the message needs more than {@link #MAX_CHUNKS}
+     *         frames (the caller falls back to the legacy framing)
+     */
+    public static List<byte[]> encode(byte[] message, int maxFrameSize, int messageId) {
+        int flags = 0;
+        byte[] body = message;
+        if (message.length >= MIN_DEFLATE_SIZE) {
+            byte[] deflated = deflate(message);
+            if (deflated != null) {
+                body = deflated;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+
+        int maxPayload = maxFrameSize - FRAME_OVERHEAD;
+        if (HEADER_SIZE + body.length <= maxPayload) {
+            List<byte[]> frames = new ArrayList<>(1);
+            byte[] frame = newFrame(HEADER_SIZE + body.length);
+            writeHeader(frame, flags);
+            System.arraycopy(body, 0, frame, 5 + HEADER_SIZE, body.length);
+            frames.add(frame);
+            return frames;
+        }
+
+        int chunkSize = maxPayload - HEADER_SIZE - CHUNK_HEADER_SIZE;
+        if (chunkSize <= 0) {
+            return null;
+        }
+        int count = (body.length + chunkSize - 1) / chunkSize;
+        if (count > MAX_CHUNKS) {
+            return null;
+        }
+
+        flags |= FLAG_CHUNKED;
+        List<byte[]> frames = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            int offset = index * chunkSize;
+            int length = Math.min(chunkSize, body.length - offset);
+            byte[] frame = newFrame(HEADER_SIZE + CHUNK_HEADER_SIZE + length);
+            writeHeader(frame, flags);
+            frame[5 + HEADER_SIZE] = (byte) messageId;
+            frame[5 + HEADER_SIZE + 1] = (byte) index;
+            frame[5 + HEADER_SIZE + 2] = (byte) count;
+            System.arraycopy(body, offset, frame, 5 + HEADER_SIZE + CHUNK_HEADER_SIZE, length);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * @return true if the K900 payload (frame header already stripped) is a compact message
+     */
+    public static boolean isCompactPayload(byte[] payload) {
+        return payload != null && payload.length >= HEADER_SIZE && payload[0] == MAGIC;
+    }
+
+    /**
+     * Read the header of a compact payload
+     *
+     * @return false if the payload is truncated or uses a version this side can't read
+     */
+    public static boolean parseHeader(byte[] payload, int offset, int length, Header out) {
+        if (length < HEADER_SIZE || payload[offset] != MAGIC || (payload[offset + 1] & 0xFF) != VERSION) {
+            return false;
+        }
+        out.flags = payload[offset + 2] & 0xFF;
+        int bodyOffset = offset + HEADER_SIZE;
+        if (out.isChunked()) {
+            if (length < HEADER_SIZE + CHUNK_HEADER_SIZE) {
+                return false;
+            }
+            out.messageId = payload[bodyOffset] & 0xFF;
+            out.index = payload[bodyOffset + 1] & 0xFF;
+            out.count = payload[bodyOffset + 2] & 0xFF;
+            if (out.count == 0 || out.index >= out.count) {
+                return false;
+            }
+            bodyOffset += CHUNK_HEADER_SIZE;
+        } else {
+            out.messageId = 0;
+            out.index = 0;
+            out.count = 1;
+        }
+        out.bodyOffset = bodyOffset;
+        out.bodyLength = offset + length - bodyOffset;
+        return true;
+    }
+
+    /**
+     * Turn a complete body (a single frame's, or all chunks' joined) back into the message
+     *
+     * @param deflated Whether the frames carried {@link #FLAG_DEFLATE}
+     */
+    public static byte[] decodeBody(byte[] body, int offset, int length, boolean deflated)
+            throws DataFormatException {
+        if (!deflated) {
+            return Arrays.copyOfRange(body, offset, offset + length);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(body, offset, length);
+            byte[] out = new byte[Math.min(MAX_MESSAGE_SIZE, Math.max(256, length * 4))];
+            int size = 0;
+            while (!inflater.finished()) {
+                if (size == out.length) {
+                    if (out.length == MAX_MESSAGE_SIZE) {
+                        throw new DataFormatException("Compact message exceeds " + MAX_MESSAGE_SIZE + " bytes");
+                    }
+                    out = Arrays.copyOf(out, Math.min(MAX_MESSAGE_SIZE, out.length * 2));
+                }
+                int n = inflater.inflate(out, size, out.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated compact message");
+                }
+                size += n;
+            }
+            return size == out.length ? out : Arrays.copyOf(out, size);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return The raw-deflated message, or null if deflating doesn't make it smaller
+     */
+    private static byte[] deflate(byte[] message) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(message);
+            deflater.finish();
+            byte[] out = new byte[message.length];
+            int size = deflater.deflate(out);
+            if (!deflater.finished() || size >= message.length) {
+                return null;
+            }
+            return Arrays.copyOf(out, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] newFrame(int payloadLength) {
+        byte[] frame = new byte[payloadLength + FRAME_OVERHEAD];
+        frame[0] = K900ProtocolUtils.CMD_START_CODE[0];
+        frame[1] = K900ProtocolUtils.CMD_START_CODE[1];
+        frame[2] = K900ProtocolUtils.CMD_TYPE_COMPACT;
+        frame[3] = (byte) ((payloadLength >> 8) & 0xFF); // Big-endian, as in packDataCommand
+        frame[4] = (byte) (payloadLength & 0xFF);
+        frame[frame.length - 2] = K900ProtocolUtils.CMD_END_CODE[0];
+        frame[frame.length - 1] = K900ProtocolUtils.CMD_END_CODE[1];
+        return frame;
+    }
+
+    private static void writeHeader(byte[] frame, int flags) {
+        frame[5] = MAGIC;
+        frame[6] = (byte) VERSION;
+        frame[7] = (byte) flags;
+    }
+}
@@ -27,7 +27,9 @@ public class K900ProtocolUtils {
     public static final byte CMD_TYPE_MUSIC = 0x33; // Music file type
     public static final byte CMD_TYPE_AUDIO = 0x34; // Audio file type
     public static final byte CMD_TYPE_DATA = 0x35; // Generic data type
-    
+    public static final byte CMD_TYPE_IMU = 0x36; // Binary IMU stream frame (see ImuStreamFrame)
+    public static final byte CMD_TYPE_COMPACT = 0x37; // Compact JSON message frame (see CompactWireCodec)
+
     // File transfer constants
     public static final int FILE_PACK_SIZE_DEFAULT = 400; // Default max data size per packet
     public static final int FILE_PACK_SIZE_MIN = 100; // Minimum safe packet size
@@ -70,6 +72,96 @@ public class K900ProtocolUtils {
         filePackSize = FILE_PACK_SIZE_DEFAULT;
         Log.i("K900ProtocolUtils", "📦 File pack size reset to default: " + filePackSize + " bytes");
     }
+
+    // File transfer window: packets in flight before waiting for BES ACKs.
+    // Stays at 1 (stop-and-wait) unless the phone says it can take windowed transfers.
+    public static final int FILE_TRANSFER_WINDOW_MAX = 8;
+    private static int fileTransferWindow = 1;
+
+    /**
+     * Get the negotiated file transfer window (1 = stop-and-wait)
+     */
+    public static int getFileTransferWindow() {
+        return fileTransferWindow;
+    }
+
+    /**
+     * Set the file transfer window the phone agreed to, clamped to [1, FILE_TRANSFER_WINDOW_MAX]
+     */
+    public static void setFileTransferWindow(int window) {
+        fileTransferWindow = Math.max(1, Math.min(FILE_TRANSFER_WINDOW_MAX, window));
+        Log.i("K900ProtocolUtils", "📦 File transfer window set to " + fileTransferWindow);
+    }
+
+    /**
+     * Reset file transfer window to stop-and-wait
+     */
+    public static void resetFileTransferWindow() {
+        fileTransferWindow = 1;
+    }
+
+    // Compact message framing (CompactWireCodec). Stays off (0) until the phone agreed to a version
+    // AND a compact frame has crossed the BES both ways: BES firmware that predates the 0x36/0x37
+    // frame types may not relay them, so agreeing alone isn't enough (see BleConfigCommandHandler).
+    private static volatile int offeredWireFormat = 0;
+    private static volatile int wireFormat = 0;
+    private static volatile int messageFrameSize = 0;
+
+    /**
+     * Get the compact wire format version in use (0 = legacy C-wrapped JSON). Non-zero also means
+     * the BES relays K900 frame types newer than {@link #CMD_TYPE_DATA}, such as {@link #CMD_TYPE_IMU}.
+     */
+    public static int getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * Get the compact wire format version the phone agreed to, which may not be confirmed yet
+     */
+    public static int getOfferedWireFormat() {
+        return offeredWireFormat;
+    }
+
+    /**
+     * Largest message frame the phone receives in one notification (MTU - 3 ATT header)
+     */
+    public static int getMessageFrameSize() {
+        return messageFrameSize;
+    }
+
+    /**
+     * Record the compact wire format the phone agreed to. Versions we can't write are ignored.
+     * It is only used once {@link #confirmWireFormat()} is called.
+     * @param version Version from set_ble_mtu, 0 if the phone left it out
+     * @param mtu The negotiated BLE MTU from the phone
+     */
+    public static void setWireFormat(int version, int mtu) {
+        messageFrameSize = mtu - 3;
+        boolean framesFit = messageFrameSize > CompactWireCodec.FRAME_OVERHEAD + CompactWireCodec.HEADER_SIZE
+                + CompactWireCodec.CHUNK_HEADER_SIZE;
+        offeredWireFormat = (version == CompactWireCodec.VERSION && framesFit) ? version : 0;
+        wireFormat = 0;
+        Log.i("K900ProtocolUtils", "📦 Wire format " + offeredWireFormat + " agreed, pending link check (frame size "
+                + messageFrameSize + ")");
+    }
+
+    /**
+     * Start using the agreed wire format: the phone has confirmed our compact frames reach it
+     * @return true if a wire format is now in use
+     */
+    public static boolean confirmWireFormat() {
+        wireFormat = offeredWireFormat;
+        Log.i("K900ProtocolUtils", "📦 Wire format set to " + wireFormat);
+        return wireFormat > 0;
+    }
+
+    /**
+     * Reset to legacy C-wrapped JSON until the phone negotiates again
+     */
+    public static void resetWireFormat() {
+        offeredWireFormat = 0;
+        wireFormat = 0;
+    }
     public static final int LENGTH_FILE_TYPE = 1;
     public static final int LENGTH_FILE_PACKSIZE = 2;
     public static final int LENGTH_FILE_PACKINDEX = 2;
@@ -390,6 +482,36 @@ public class K900ProtocolUtils {
         return payload;
     }
 
+    /**
+     * Locate the payload of a K900 frame in place, without copying it.
+     * The payload starts at {@code offset + 5}. Like {@link #extractPayload(byte[])} followed by
+     * {@link #extractPayloadFromK900(byte[])}, the length is read big-endian first and
+     * little-endian if that does not fit the frame.
+     *
+     * @param frame Array holding the frame
+     * @param offset Offset of the ## start marker
+     * @param length Frame length including markers
+     * @return Payload length, or -1 if this is not a valid K900 frame
+     */
+    public static int getPayloadLength(byte[] frame, int offset, int length) {
+        if (frame == null || length < 7
+                || frame[offset] != CMD_START_CODE[0] || frame[offset + 1] != CMD_START_CODE[1]) {
+            return -1;
+        }
+
+        int high = frame[offset + 3] & 0xFF;
+        int low = frame[offset + 4] & 0xFF;
+        int bigEndian = (high << 8) | low;
+        if (bigEndian + 7 <= length) {
+            return bigEndian;
+        }
+        int littleEndian = (low << 8) | high;
+        if (littleEndian + 7 <= length) {
+            return littleEndian;
+        }
+        return -1;
+    }
+
     /**
      * Process received bytes from Bluetooth into a JSON object
      * Handles K900 protocol format detection, payload extraction, and C-field unwrapping
@@ -0,0 +1,320 @@
+package com.mentra.asg_client.io.bes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.mentra.asg_client.io.bes.protocol.BesBaseCommand;
+import com.mentra.asg_client.io.bes.protocol.BesCmd_SegmentVerify;
+import com.mentra.asg_client.io.bes.protocol.BesCmd_SendData;
+import com.mentra.asg_client.io.bes.protocol.BesProtocolConstants;
+import com.mentra.asg_client.io.bes.util.BesFirmwareImage;
+import com.mentra.asg_client.io.bes.util.BesOtaUtil;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+public class BesSegmentTransferTest {
+
+    private static final long ACK_TIMEOUT_MS = 200;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void stopAndWaitSendsTheSameFramesAsBefore() {
+        byte[] firmware = randomBytes(3 * BesOtaUtil.SEGMENT_SIZE + 1234, 1);
+        SimulatedBesPeer peer = new SimulatedBesPeer(0);
+
+        BesSegmentTransfer transfer = new BesSegmentTransfer(BesFirmwareImage.wrap(firmware), peer, 1, 2, ACK_TIMEOUT_MS);
+        assertEquals(BesSegmentTransfer.Status.COMPLETE, peer.run(transfer));
+
+        List<byte[]> expected = legacyFrames(firmware);
+        assertEquals(expected.size(), peer.frames.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("frame " + i, expected.get(i), peer.frames.get(i));
+        }
+        assertEquals(1, peer.maxOutstanding);
+        assertArrayEquals(firmware, peer.flash.toByteArray());
+    }
+
+    @Test
+    public void keepsTheConfiguredPacketsInFlight() {
+        byte[] firmware = randomBytes(2 * BesOtaUtil.SEGMENT_SIZE, 2);
+        SimulatedBesPeer peer = new SimulatedBesPeer(0);
+
+        BesSegmentTransfer transfer = new BesSegmentTransfer(BesFirmwareImage.wrap(firmware), peer, 4, 2, ACK_TIMEOUT_MS);
+        assertEquals(BesSegmentTransfer.Status.COMPLETE, peer.run(transfer));
+
+        assertEquals(4, peer.maxOutstanding);
+        assertArrayEquals(firmware, peer.flash.toByteArray());
+        assertEquals(BesOtaUtil.crc32(firmware, 0, firmware.length), transfer.getConfirmedCrc32());
+    }
+
+    @Test
+    public void dropsResumeFromTheLastConfirmedSegment() {
+        byte[] firmware = randomBytes(20 * BesOtaUtil.SEGMENT_SIZE + 777, 3);
+        SimulatedBesPeer peer = new SimulatedBesPeer(42);
+        peer.dropData = 0.002;
+        peer.corruptData = 0.002;
+        peer.dropAcks = 0.01;
+        peer.dropVerifyReplies = 0.05;
+
+        BesSegmentTransfer transfer = new BesSegmentTransfer(BesFirmwareImage.wrap(firmware), peer, 4, 10, ACK_TIMEOUT_MS);
+        assertEquals(BesSegmentTransfer.Status.COMPLETE, peer.run(transfer));
+
+        assertArrayEquals(firmware, peer.flash.toByteArray());
+        assertEquals(BesOtaUtil.crc32(firmware, 0, firmware.length), transfer.getConfirmedCrc32());
+        assertTrue("the drops should have cost some segments", transfer.getSegmentsResent() > 0);
+        assertTrue(transfer.getAckTimeouts() > 0);
+        // Every resend started over at a segment boundary the peer had already committed
+        assertEquals(transfer.getSegmentsResent(), peer.resendOffsets.size());
+        for (int offset : peer.resendOffsets) {
+            assertEquals(0, offset % BesOtaUtil.SEGMENT_SIZE);
+        }
+    }
+
+    @Test
+    public void givesUpOnASegmentThatNeverVerifies() {
+        byte[] firmware = randomBytes(4 * BesOtaUtil.SEGMENT_SIZE, 4);
+        SimulatedBesPeer peer = new SimulatedBesPeer(0);
+        peer.corruptFrom = BesOtaUtil.SEGMENT_SIZE;
+
+        BesSegmentTransfer transfer = new BesSegmentTransfer(BesFirmwareImage.wrap(firmware), peer, 2, 2, ACK_TIMEOUT_MS);
+        assertEquals(BesSegmentTransfer.Status.FAILED, peer.run(transfer));
+
+        assertEquals("Segment verification failed", transfer.getFailureReason());
+        assertEquals(BesOtaUtil.SEGMENT_SIZE, transfer.getConfirmedLength());
+        assertEquals(2, transfer.getSegmentsResent());
+    }
+
+    @Test
+    public void givesUpOnASegmentVerifyThatIsNeverAnswered() {
+        byte[] firmware = randomBytes(4 * BesOtaUtil.SEGMENT_SIZE, 5);
+        SimulatedBesPeer peer = new SimulatedBesPeer(0);
+        peer.dropVerifyReplies = 1.0;
+
+        BesSegmentTransfer transfer = new BesSegmentTransfer(BesFirmwareImage.wrap(firmware), peer, 2, 10, ACK_TIMEOUT_MS);
+        assertEquals(BesSegmentTransfer.Status.FAILED, peer.run(transfer));
+
+        assertEquals("Segment verification timed out", transfer.getFailureReason());
+        assertEquals(0, transfer.getConfirmedLength());
+        // The first SegmentVerify plus MAX_VERIFY_REPEATS repeats, however many segment retries are allowed
+        assertEquals(BesSegmentTransfer.MAX_VERIFY_REPEATS, transfer.getVerifyRepeats());
+        long verifies = peer.frames.stream().filter(f -> f[0] == BesProtocolConstants.SCMD_SEGMENT_VERIFY).count();
+        assertEquals(1 + BesSegmentTransfer.MAX_VERIFY_REPEATS, verifies);
+    }
+
+    @Test
+    public void crc32CombineMatchesTheConcatenation() {
+        Random random = new Random(5);
+        for (int i = 0; i < 50; i++) {
+            byte[] data = randomBytes(1 + random.nextInt(100_000), i);
+            int split = random.nextInt(data.length + 1);
+            long first = BesOtaUtil.crc32(data, 0, split);
+            long second = BesOtaUtil.crc32(data, split, data.length - split);
+            assertEquals(BesOtaUtil.crc32(data, 0, data.length),
+                    BesOtaUtil.crc32Combine(first, second, data.length - split));
+        }
+    }
+
+    @Test
+    public void mappedImageMatchesTheFile() throws Exception {
+        byte[] firmware = randomBytes(BesOtaUtil.SEGMENT_SIZE * 2 + 99, 6);
+        File file = tmp.newFile("bes.bin");
+        Files.write(file.toPath(), firmware);
+
+        BesFirmwareImage image = BesFirmwareImage.open(file);
+        assertEquals(firmware.length, image.size());
+        assertEquals(BesOtaUtil.crc32(firmware, 0, firmware.length), image.crc32());
+        assertArrayEquals(Arrays.copyOfRange(firmware, firmware.length - 4, firmware.length), image.tail(4));
+        byte[] middle = new byte[BesOtaUtil.PACKET_SIZE];
+        image.read(BesOtaUtil.SEGMENT_SIZE, middle, 0, middle.length);
+        assertArrayEquals(Arrays.copyOfRange(firmware, BesOtaUtil.SEGMENT_SIZE,
+                BesOtaUtil.SEGMENT_SIZE + BesOtaUtil.PACKET_SIZE), middle);
+    }
+
+    @Test
+    public void fourPacketsInFlightHideMostOfTheAckTurnaround() {
+        byte[] firmware = randomBytes(8 * BesOtaUtil.SEGMENT_SIZE, 7);
+
+        long stopAndWait = simulatedTransferMs(firmware, 1);
+        long windowed = simulatedTransferMs(firmware, 4);
+
+        assertTrue("4 packets in flight should hide most of the ack turnaround", windowed * 3 < stopAndWait * 2);
+    }
+
+    /**
+     * Simulated UART time for a 1MB image by packets in flight.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkTransferTimeByPacketsInFlight() {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        byte[] firmware = randomBytes(BesOtaUtil.MAX_FILE_SIZE / 2, 7);
+        StringBuilder report = new StringBuilder("BesSegmentTransfer " + firmware.length + " bytes over simulated UART:");
+        for (int window : new int[]{1, 2, 4, 8}) {
+            report.append(String.format(Locale.US, " window %d %.1fs", window, simulatedTransferMs(firmware, window) / 1000.0));
+        }
+        System.out.println(report);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Simulated time a loss-free transfer of the image takes with the given packets in flight */
+    private static long simulatedTransferMs(byte[] firmware, int window) {
+        SimulatedBesPeer peer = new SimulatedBesPeer(0);
+        BesSegmentTransfer transfer = new BesSegmentTransfer(BesFirmwareImage.wrap(firmware), peer, window, 2, ACK_TIMEOUT_MS);
+        assertEquals(BesSegmentTransfer.Status.COMPLETE, peer.run(transfer));
+        assertArrayEquals(firmware, peer.flash.toByteArray());
+        return peer.now;
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /** The frames the original stop-and-wait BesOtaManager sent for an image */
+    private static List<byte[]> legacyFrames(byte[] firmware) {
+        List<byte[]> frames = new ArrayList<>();
+        int sentPos = 0;
+        int confirmTimes = 0;
+        while (sentPos < firmware.length) {
+            int segmentEnd = Math.min(BesOtaUtil.SEGMENT_SIZE * (confirmTimes + 1), firmware.length);
+            int segmentStart = sentPos;
+            while (sentPos < segmentEnd) {
+                int len = sentPos + BesOtaUtil.PACKET_SIZE >= segmentEnd ? segmentEnd - sentPos : BesOtaUtil.PACKET_SIZE;
+                BesCmd_SendData cmd = new BesCmd_SendData();
+                cmd.setFileData(Arrays.copyOfRange(firmware, sentPos, sentPos + len));
+                frames.add(cmd.getSendData());
+                sentPos += len;
+            }
+            BesCmd_SegmentVerify verify = new BesCmd_SegmentVerify();
+            verify.setSegmentCrc32(BesOtaUtil.long2Bytes(BesOtaUtil.crc32(firmware, segmentStart, sentPos - segmentStart)));
+            frames.add(verify.getSendData());
+            confirmTimes++;
+        }
+        return frames;
+    }
+
+    /**
+     * BES2700 side of the data phase over a simulated UART: buffers the current segment, commits it
+     * to "flash" when its SegmentVerify CRC matches and discards it when it doesn't, so the sender
+     * has to start the segment over. Can drop or corrupt data packets and drop replies.
+     */
+    private static final class SimulatedBesPeer implements BesSegmentTransfer.FrameSender {
+        // 921600 baud is about 92 bytes per ms; the chip takes a few ms to write and answer
+        private static final double BYTES_PER_MS = 92.0;
+        private static final long TURNAROUND_MS = 6;
+
+        final List<byte[]> frames = new ArrayList<>();
+        final ByteArrayOutputStream flash = new ByteArrayOutputStream();
+        final List<Integer> resendOffsets = new ArrayList<>();
+        double dropData;
+        double corruptData;
+        double dropAcks;
+        double dropVerifyReplies;
+        int corruptFrom = Integer.MAX_VALUE;
+        int maxOutstanding;
+        long now;
+
+        private final Random random;
+        private final ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        private final PriorityQueue<long[]> replies = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        private long lineFreeAt;
+        private long lastCommittedCrc = -1;
+        private boolean segmentFailed;
+        private int outstanding;
+
+        SimulatedBesPeer(long seed) {
+            random = new Random(seed);
+        }
+
+        /** Drive the transfer until it completes or fails, advancing simulated time */
+        BesSegmentTransfer.Status run(BesSegmentTransfer transfer) {
+            BesSegmentTransfer.Status status = transfer.start(now);
+            for (int steps = 0; status == BesSegmentTransfer.Status.SENDING; steps++) {
+                assertTrue("transfer stalled", steps < 1_000_000);
+                long[] reply = replies.poll();
+                if (reply == null) {
+                    now += ACK_TIMEOUT_MS;
+                    outstanding = 0;
+                    status = transfer.onTick(now);
+                    continue;
+                }
+                now = Math.max(now, reply[0]);
+                if (reply[1] == BesProtocolConstants.RCMD_SEND_DATA) {
+                    outstanding--;
+                    status = transfer.onDataAck(now);
+                } else {
+                    status = transfer.onSegmentVerified(reply[2] == 1, now);
+                }
+            }
+            return status;
+        }
+
+        @Override
+        public boolean send(byte[] frame) {
+            frames.add(frame.clone());
+            // Frames go out back to back on the line
+            long arrival = (long) Math.ceil(Math.max(now, lineFreeAt) + frame.length / BYTES_PER_MS);
+            lineFreeAt = arrival;
+            int length = BesOtaUtil.bytes2Int(frame, 1, 4);
+
+            if (frame[0] == BesProtocolConstants.SCMD_SEND_DATA) {
+                outstanding++;
+                maxOutstanding = Math.max(maxOutstanding, outstanding);
+                if (random.nextDouble() < dropData) {
+                    return true;
+                }
+                if (segment.size() == 0 && segmentFailed) {
+                    resendOffsets.add(flash.size());
+                    segmentFailed = false;
+                }
+                byte[] payload = Arrays.copyOfRange(frame, BesBaseCommand.MIN_LENGTH, BesBaseCommand.MIN_LENGTH + length);
+                if (random.nextDouble() < corruptData || flash.size() >= corruptFrom) {
+                    payload[random.nextInt(payload.length)] ^= 0x5A;
+                }
+                segment.write(payload, 0, payload.length);
+                if (random.nextDouble() >= dropAcks) {
+                    replies.add(new long[]{arrival + TURNAROUND_MS, BesProtocolConstants.RCMD_SEND_DATA, 1});
+                }
+            } else if (frame[0] == BesProtocolConstants.SCMD_SEGMENT_VERIFY) {
+                long crc = BesOtaUtil.bytes2Int(frame, BesBaseCommand.MIN_LENGTH + 4, 4) & 0xFFFFFFFFL;
+                boolean ok;
+                if (segment.size() == 0 && !segmentFailed && crc == lastCommittedCrc) {
+                    // Repeated verify whose answer got lost: same answer again
+                    ok = true;
+                } else {
+                    byte[] received = segment.toByteArray();
+                    ok = crc == BesOtaUtil.crc32(received, 0, received.length);
+                    if (ok) {
+                        flash.write(received, 0, received.length);
+                        lastCommittedCrc = crc;
+                    } else {
+                        segmentFailed = true;
+                    }
+                    segment.reset();
+                }
+                if (random.nextDouble() >= dropVerifyReplies) {
+                    replies.add(new long[]{arrival + TURNAROUND_MS, BesProtocolConstants.RCMD_SEGMENT_VERIFY, ok ? 1 : 0});
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.mentra.asg_client.io.bluetooth.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.mentra.asg_client.io.bluetooth.utils.LatencyRecorder;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class UartReceiveThreadTest {
+
+    @Test
+    public void deliversEveryByteInOrder() throws Exception {
+        Pipe pipe = Pipe.open();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        LatencyRecorder turnaround = new LatencyRecorder(64);
+        UartReceiveThread thread = new UartReceiveThread(Channels.newInputStream(pipe.source()),
+                (buffer, size) -> {
+                    synchronized (received) {
+                        received.write(buffer, 0, size);
+                    }
+                }, turnaround);
+        thread.start();
+
+        byte[] data = new byte[20_000];
+        new Random(1).nextBytes(data);
+        OutputStream out = Channels.newOutputStream(pipe.sink());
+        for (int i = 0; i < data.length; i += 700) {
+            out.write(data, i, Math.min(700, data.length - i));
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (size(received) < data.length && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        thread.setStop();
+        pipe.sink().close();
+        thread.join(1_000);
+
+        assertArrayEquals(data, received.toByteArray());
+        assertTrue(turnaround.getCount() > 0);
+    }
+
+    @Test
+    public void replayedFramesAreAllDelivered() throws Exception {
+        final int frames = 50;
+
+        LatencyRecorder blocking = replay(frames, (in, receiver) ->
+                new UartReceiveThread(in, receiver, new LatencyRecorder(16)));
+
+        assertEquals(frames, blocking.getCount());
+    }
+
+    /**
+     * Replays BES traffic through a pipe: frames at irregular 2-20ms gaps, each carrying the
+     * time it was written, so the receiver can measure end-to-end inbound latency.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void replayLatencyAgainstSleepPolling() throws Exception {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        final int frames = 150;
+
+        LatencyRecorder polling = replay(frames, (in, receiver) -> new PollingReceiveThread(in, receiver));
+        LatencyRecorder blocking = replay(frames, (in, receiver) ->
+                new UartReceiveThread(in, receiver, new LatencyRecorder(16)));
+
+        System.out.println("UART replay, sleep-polling (50ms): " + polling.getSummary());
+        System.out.println("UART replay, blocking reader:      " + blocking.getSummary());
+
+        assertEquals(frames, polling.getCount());
+        assertEquals(frames, blocking.getCount());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private interface ReaderFactory {
+        Thread create(InputStream in, UartReceiveThread.Receiver receiver);
+    }
+
+    private static LatencyRecorder replay(int frames, ReaderFactory factory) throws Exception {
+        Pipe pipe = Pipe.open();
+        LatencyRecorder latency = new LatencyRecorder(frames);
+        ByteBuffer pending = ByteBuffer.allocate(4096);
+
+        Thread reader = factory.create(Channels.newInputStream(pipe.source()), (buffer, size) -> {
+            long now = System.nanoTime();
+            // Reads can split or merge frames; each frame is one 8-byte timestamp
+            pending.put(buffer, 0, size);
+            pending.flip();
+            while (pending.remaining() >= 8) {
+                latency.recordNanos(now - pending.getLong());
+            }
+            pending.compact();
+        });
+        reader.start();
+
+        Random random = new Random(11);
+        ByteBuffer frame = ByteBuffer.allocate(8);
+        for (int i = 0; i < frames; i++) {
+            Thread.sleep(2 + random.nextInt(19));
+            frame.clear();
+            frame.putLong(System.nanoTime());
+            frame.flip();
+            while (frame.hasRemaining()) {
+                pipe.sink().write(frame);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (latency.getCount() < frames && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        if (reader instanceof UartReceiveThread) {
+            ((UartReceiveThread) reader).setStop();
+        } else {
+            ((PollingReceiveThread) reader).setStop();
+        }
+        pipe.sink().close();
+        reader.join(1_000);
+        return latency;
+    }
+
+    private static int size(ByteArrayOutputStream out) {
+        synchronized (out) {
+            return out.size();
+        }
+    }
+
+    /** The previous read-then-sleep receive loop (normal mode), kept as the replay baseline. */
+    private static class PollingReceiveThread extends Thread {
+        private final InputStream in;
+        private final UartReceiveThread.Receiver receiver;
+        private final byte[] readBuf = new byte[1024];
+        private volatile boolean stopped;
+
+        PollingReceiveThread(InputStream in, UartReceiveThread.Receiver receiver) {
+            this.in = in;
+            this.receiver = receiver;
+        }
+
+        void setStop() {
+            stopped = true;
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                try {
+                    // Like the UART driver, a pipe read hands back whatever is buffered
+                    int readSize = in.read(readBuf);
+                    if (readSize < 0) {
+                        return;
+                    }
+                    if (readSize > 0) {
+                        receiver.onReceive(readBuf, readSize);
+                    }
+                    Thread.sleep(50);
+                } catch (IOException | InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
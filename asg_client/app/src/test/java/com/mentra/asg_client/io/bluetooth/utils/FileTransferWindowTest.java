@@ -0,0 +1,226 @@
+package com.mentra.asg_client.io.bluetooth.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+public class FileTransferWindowTest {
+
+    @Test
+    public void sendsUpToTheWindowThenWaitsForAcks() {
+        FileTransferWindow window = new FileTransferWindow(10, 8, 5);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, window.nextPacket(0));
+        }
+        assertEquals(-1, window.nextPacket(0));
+        assertEquals(4, window.getInFlightCount());
+
+        assertTrue(window.onAck(0, 50));
+        assertFalse(window.onAck(0, 51));
+        assertEquals(4, window.nextPacket(51));
+    }
+
+    @Test
+    public void windowOfOneIsStopAndWait() {
+        FileTransferWindow window = new FileTransferWindow(3, 1, 5);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, window.nextPacket(i * 100));
+            assertEquals(-1, window.nextPacket(i * 100));
+            window.onAck(i, i * 100 + 60);
+        }
+        assertTrue(window.isComplete());
+        assertEquals(1, window.getWindowSize());
+    }
+
+    @Test
+    public void rejectedPacketIsResentBeforeNewOnes() {
+        FileTransferWindow window = new FileTransferWindow(10, 8, 5);
+        for (int i = 0; i < 4; i++) {
+            window.nextPacket(0);
+        }
+
+        assertTrue(window.onNack(1));
+        assertEquals(2, window.getWindowSize());
+        window.onAck(0, 40);
+        window.onAck(2, 41);
+        assertEquals(1, window.getAckedPrefix());
+
+        // Only packet 1 goes out again, ahead of packet 4, and the halved window is now full
+        assertEquals(1, window.nextPacket(42));
+        assertEquals(-1, window.nextPacket(42));
+        assertEquals(1, window.getRetransmissionCount());
+
+        window.onAck(1, 90);
+        assertEquals(3, window.getAckedPrefix());
+        assertEquals(4, window.nextPacket(90));
+    }
+
+    @Test
+    public void timeoutsRequeueOverduePacketsAndEventuallyFail() {
+        FileTransferWindow window = new FileTransferWindow(10, 8, 2);
+        window.nextPacket(0);
+        window.nextPacket(0);
+        window.onAck(1, 100);
+        window.nextPacket(100);
+        window.nextPacket(100);
+
+        // Packet 0 is overdue, packets 2 and 3 are not
+        long timeout = window.getRetransmitTimeoutMs();
+        assertEquals(-1, window.checkTimeouts(timeout));
+        assertEquals(1, window.getWindowSize());
+        assertEquals(2, window.getInFlightCount());
+
+        // A late ACK for a packet we gave up on still counts
+        assertTrue(window.onAck(0, timeout + 1));
+        assertEquals(2, window.getAckedPrefix());
+
+        // Packet 2 times out twice in a row: give up
+        assertEquals(-1, window.checkTimeouts(100 + timeout));
+        assertEquals(2, window.nextPacket(100 + timeout));
+        assertEquals(2, window.checkTimeouts(100 + 2 * timeout));
+    }
+
+    @Test
+    public void missingPacketsReportedByPhoneAreResent() {
+        FileTransferWindow window = new FileTransferWindow(3, 8, 5);
+        for (int i = 0; i < 3; i++) {
+            window.nextPacket(0);
+        }
+        for (int i = 0; i < 3; i++) {
+            window.onAck(i, 50);
+        }
+        assertTrue(window.isComplete());
+
+        assertTrue(window.requeue(1));
+        assertFalse(window.requeue(1));
+        assertFalse(window.isComplete());
+        assertEquals(1, window.getAckedPrefix());
+        assertEquals(1, window.nextPacket(60));
+        assertEquals(-1, window.nextPacket(60));
+
+        window.onAck(1, 100);
+        assertTrue(window.isComplete());
+    }
+
+    @Test
+    public void windowShrinksWhenRoundTripClimbs() {
+        FileTransferWindow window = new FileTransferWindow(100, 8, 5);
+        long now = 0;
+        int next = 0;
+        // Fast ACKs open the window up
+        for (int i = 0; i < 20; i++, now += 10) {
+            window.nextPacket(now);
+            window.onAck(next++, now + 50);
+        }
+        int opened = window.getWindowSize();
+        assertTrue(opened > 4);
+
+        // ACKs taking four times as long mean BES is buffering our packets
+        for (int i = 0; i < 20; i++, now += 10) {
+            window.nextPacket(now);
+            window.onAck(next++, now + 200);
+        }
+        assertTrue(window.getWindowSize() < opened);
+    }
+
+    @Test
+    public void windowedTransferIsAtLeastThreeTimesFasterOnTheSimulatedLink() {
+        // The benchmark's 30KB photo; simulated time, so this is deterministic
+        int packets = (30 * 1024 + 217) / 218;
+
+        long stopAndWait = simulateTransfer(packets, 1, 0.01, 7);
+        long windowed = simulateTransfer(packets, 8, 0.01, 7);
+
+        assertTrue("windowed transfer should be at least 3x faster", stopAndWait >= 3 * windowed);
+    }
+
+    /**
+     * Simulated transfer time, stop-and-wait versus windowed, for a medium AVIF photo (~30KB) in
+     * 218-byte packets, as sent with a 253-byte BES MTU.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkWindowedAgainstStopAndWait() {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        int packets = (30 * 1024 + 217) / 218;
+
+        long stopAndWait = simulateTransfer(packets, 1, 0.01, 7);
+        long windowed = simulateTransfer(packets, 8, 0.01, 7);
+
+        System.out.println(String.format(Locale.US, "FileTransferWindow: %d packets, stop-and-wait %d ms, windowed %d ms (%.1fx)",
+                packets, stopAndWait, windowed, (double) stopAndWait / windowed));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    // Link model: UART hop each way, BES sends one packet per BLE connection event, the ACK comes
+    // back once the phone has it, and BES can only buffer a few packets before rejecting them.
+    private static final int UART_MS = 3;
+    private static final int AIR_MS = 10;
+    private static final int ACK_MS = 45;
+    private static final int BES_BUFFER_PACKETS = 4;
+
+    private static final int ARRIVE = 0;
+    private static final int ACK = 1;
+    private static final int NACK = 2;
+
+    /** @return Simulated milliseconds until every packet has been acknowledged */
+    private static long simulateTransfer(int packets, int maxWindow, double ackLoss, long seed) {
+        FileTransferWindow window = new FileTransferWindow(packets, maxWindow, 5);
+        Random random = new Random(seed);
+        PriorityQueue<long[]> events = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        ArrayDeque<Integer> besQueue = new ArrayDeque<>();
+        long besBusyUntil = 0;
+
+        long now = 0;
+        while (!window.isComplete()) {
+            while (!events.isEmpty() && events.peek()[0] <= now) {
+                long[] event = events.poll();
+                int index = (int) event[2];
+                if (event[1] == ARRIVE) {
+                    if (besQueue.size() >= BES_BUFFER_PACKETS) {
+                        events.add(new long[]{now + UART_MS, NACK, index});
+                    } else {
+                        besQueue.add(index);
+                    }
+                } else if (event[1] == ACK) {
+                    window.onAck(index, now);
+                } else {
+                    window.onNack(index);
+                }
+            }
+
+            if (now >= besBusyUntil && !besQueue.isEmpty()) {
+                int index = besQueue.poll();
+                besBusyUntil = now + AIR_MS;
+                if (random.nextDouble() >= ackLoss) {
+                    events.add(new long[]{now + AIR_MS + ACK_MS, ACK, index});
+                }
+            }
+
+            if (window.checkTimeouts(now) >= 0) {
+                fail("packet timed out too often");
+            }
+            int index;
+            while ((index = window.nextPacket(now)) >= 0) {
+                events.add(new long[]{now + UART_MS, ARRIVE, index});
+            }
+
+            if (++now > 10 * 60_000) {
+                fail("transfer did not finish");
+            }
+        }
+        return now;
+    }
+}
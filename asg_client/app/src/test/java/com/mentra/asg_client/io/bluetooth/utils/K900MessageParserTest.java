@@ -0,0 +1,410 @@
+package com.mentra.asg_client.io.bluetooth.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.mentra.asg_client.utils.smartglasses.K900ProtocolUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class K900MessageParserTest {
+
+    private final K900MessageParser parser = new K900MessageParser();
+    private final K900MessageParser.Frame frame = new K900MessageParser.Frame();
+
+    @Test
+    public void frameSplitAcrossReadsIsReassembled() {
+        byte[] message = frame("{\"C\":\"sr_batv\",\"B\":{\"vt\":4120,\"pt\":87}}");
+
+        for (int split = 1; split < message.length; split++) {
+            add(message, 0, split);
+            assertFalse(parser.nextFrame(frame));
+            add(message, split, message.length - split);
+            assertTrue(parser.nextFrame(frame));
+            assertArrayEquals(message, frame.toByteArray());
+            assertEquals(0, parser.getBufferSize());
+        }
+    }
+
+    @Test
+    public void garbageAndShortFramesAreSkipped() {
+        byte[] message = frame("{\"C\":\"hs_syvr\"}");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(bytes("noise#"), 0, 6);
+        stream.write(bytes("##ab$$"), 0, 6);
+        stream.write(message, 0, message.length);
+        stream.write(bytes("tail#"), 0, 5);
+        byte[] data = stream.toByteArray();
+
+        add(data, 0, data.length);
+        assertTrue(parser.nextFrame(frame));
+        assertArrayEquals(message, frame.toByteArray());
+        assertFalse(parser.nextFrame(frame));
+
+        // The trailing # is kept: it may be half of the next start marker
+        assertEquals(1, parser.getBufferSize());
+        add(message, 1, message.length - 1);
+        assertTrue(parser.nextFrame(frame));
+        assertArrayEquals(message, frame.toByteArray());
+    }
+
+    @Test
+    public void framesWrappingTheRingAreContiguous() {
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            // Under 256 bytes the little-endian length can't be mistaken for a big-endian one
+            byte[] message = frame(randomPayload(random, 1 + random.nextInt(255)));
+            add(message, 0, message.length);
+            assertTrue(parser.nextFrame(frame));
+            assertArrayEquals(message, frame.toByteArray());
+            assertEquals(message.length - 7, K900ProtocolUtils.getPayloadLength(
+                    frame.getArray(), frame.getOffset(), frame.getLength()));
+        }
+    }
+
+    @Test
+    public void unterminatedFrameIsDroppedAndParserResyncs() {
+        byte[] message = frame("{\"C\":\"sr_tpevt\"}");
+        byte[] stale = new byte[600];
+        stale[0] = '#';
+        stale[1] = '#';
+
+        add(stale, 0, stale.length);
+        assertFalse(parser.nextFrame(frame));
+        assertEquals(0, parser.getBufferSize());
+
+        add(message, 0, message.length);
+        assertTrue(parser.nextFrame(frame));
+        assertArrayEquals(message, frame.toByteArray());
+    }
+
+    @Test
+    public void payloadLengthReadsEitherByteOrder() {
+        byte[] payload = bytes("{\"C\":\"cs_pho\"}");
+        byte[] bigEndian = frame(payload);
+        bigEndian[3] = 0;
+        bigEndian[4] = (byte) payload.length;
+
+        assertEquals(payload.length, K900ProtocolUtils.getPayloadLength(frame(payload), 0, payload.length + 7));
+        assertEquals(payload.length, K900ProtocolUtils.getPayloadLength(bigEndian, 0, bigEndian.length));
+        assertEquals(-1, K900ProtocolUtils.getPayloadLength(bigEndian, 0, bigEndian.length - 1));
+        assertEquals(-1, K900ProtocolUtils.getPayloadLength(bytes("xx012345$$"), 0, 10));
+    }
+
+    @Test
+    public void matchesLegacyParserOnCapturedTrace() {
+        byte[] trace = captureTrace(new Random(5), 300);
+        LegacyK900MessageParser legacy = new LegacyK900MessageParser();
+        List<byte[]> expected = new ArrayList<>();
+        List<byte[]> actual = new ArrayList<>();
+
+        Random reads = new Random(9);
+        int pos = 0;
+        while (pos < trace.length) {
+            int size = Math.min(trace.length - pos, 1 + reads.nextInt(256));
+            byte[] read = new byte[size];
+            System.arraycopy(trace, pos, read, 0, size);
+            pos += size;
+
+            legacy.addData(read, size);
+            List<byte[]> messages = legacy.parseMessages();
+            if (messages != null) {
+                expected.addAll(messages);
+            }
+            parser.addData(read, size);
+            while (parser.nextFrame(frame)) {
+                actual.add(frame.toByteArray());
+            }
+        }
+
+        assertEquals(300, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+        assertNull(new K900MessageParser().parseMessages());
+    }
+
+    @Test
+    public void parserFindsEveryFrameInRandomReadSizes() {
+        final int frames = 2_000;
+        byte[] trace = captureTrace(new Random(21), frames);
+        int[] readSizes = new int[4096];
+        Random reads = new Random(23);
+        for (int i = 0; i < readSizes.length; i++) {
+            readSizes[i] = 1 + reads.nextInt(256);
+        }
+        byte[] readBuffer = new byte[4096];
+        final int rounds = 3;
+
+        long parserFrames = runParser(trace, readSizes, readBuffer, rounds);
+
+        assertEquals((long) frames * rounds, parserFrames);
+        assertEquals(runLegacy(trace, readSizes, readBuffer, rounds), parserFrames);
+    }
+
+    /**
+     * Throughput and allocations per frame against the legacy parser, on the captured trace
+     * delivered in random read sizes. Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkThroughputAndAllocationsPerFrame() {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        final int frames = 2_000;
+        byte[] trace = captureTrace(new Random(21), frames);
+        int[] readSizes = new int[4096];
+        Random reads = new Random(23);
+        for (int i = 0; i < readSizes.length; i++) {
+            readSizes[i] = 1 + reads.nextInt(256);
+        }
+        byte[] readBuffer = new byte[4096];
+        final int rounds = 50;
+
+        // Warm up both paths
+        runLegacy(trace, readSizes, readBuffer, 5);
+        runParser(trace, readSizes, readBuffer, 5);
+
+        long legacyBytes = allocatedBytes();
+        long legacyStart = System.nanoTime();
+        long legacyFrames = runLegacy(trace, readSizes, readBuffer, rounds);
+        long legacyNanos = System.nanoTime() - legacyStart;
+        legacyBytes = allocatedBytes() - legacyBytes;
+
+        long parserBytes = allocatedBytes();
+        long parserStart = System.nanoTime();
+        long parserFrames = runParser(trace, readSizes, readBuffer, rounds);
+        long parserNanos = System.nanoTime() - parserStart;
+        parserBytes = allocatedBytes() - parserBytes;
+
+        double megabytes = (double) trace.length * rounds / (1024 * 1024);
+        System.out.println(String.format(Locale.US, "K900MessageParser: legacy %.1f MB/s %d B/frame, in-place %.1f MB/s %d B/frame",
+                megabytes / (legacyNanos / 1e9), legacyBytes / legacyFrames,
+                megabytes / (parserNanos / 1e9), parserBytes / parserFrames));
+        // Once compiled; the interpreter may still box along the way
+        if (legacyBytes > 0) {
+            assertEquals("in-place parser should not allocate per frame", 0, parserBytes / parserFrames);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void add(byte[] data, int offset, int length) {
+        byte[] read = new byte[length];
+        System.arraycopy(data, offset, read, 0, length);
+        assertTrue(parser.addData(read, length));
+    }
+
+    /** Legacy receive path: parse into a list of copies, copy each payload out, build a log preview. */
+    private static long runLegacy(byte[] trace, int[] readSizes, byte[] readBuffer, int rounds) {
+        LegacyK900MessageParser legacy = new LegacyK900MessageParser();
+        long frames = 0;
+        int checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            int pos = 0;
+            int read = 0;
+            while (pos < trace.length) {
+                int size = Math.min(trace.length - pos, readSizes[read++ % readSizes.length]);
+                System.arraycopy(trace, pos, readBuffer, 0, size);
+                pos += size;
+                legacy.addData(readBuffer, size);
+                List<byte[]> messages = legacy.parseMessages();
+                if (messages == null) {
+                    continue;
+                }
+                for (byte[] message : messages) {
+                    byte[] payload = legacyExtractPayload(message);
+                    String preview = new String(payload, 0, Math.min(payload.length, 200));
+                    checksum += preview.length();
+                    frames++;
+                }
+            }
+        }
+        return checksum > 0 ? frames : -1;
+    }
+
+    /** New receive path: frame views and in-place payload lookup. */
+    private static long runParser(byte[] trace, int[] readSizes, byte[] readBuffer, int rounds) {
+        K900MessageParser parser = new K900MessageParser();
+        K900MessageParser.Frame frame = new K900MessageParser.Frame();
+        long frames = 0;
+        int checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            int pos = 0;
+            int read = 0;
+            while (pos < trace.length) {
+                int size = Math.min(trace.length - pos, readSizes[read++ % readSizes.length]);
+                System.arraycopy(trace, pos, readBuffer, 0, size);
+                pos += size;
+                parser.addData(readBuffer, size);
+                while (parser.nextFrame(frame)) {
+                    checksum += K900ProtocolUtils.getPayloadLength(
+                            frame.getArray(), frame.getOffset(), frame.getLength());
+                    frames++;
+                }
+            }
+        }
+        return checksum > 0 ? frames : -1;
+    }
+
+    /**
+     * BES to glasses traffic as seen on the UART: battery and touch events, version replies and
+     * wrapped phone commands with little-endian lengths, with the odd burst of line noise between
+     * frames.
+     */
+    private static byte[] captureTrace(Random random, int frames) {
+        String[] payloads = {
+                "{\"C\":\"sr_batv\",\"B\":{\"vt\":4120,\"pt\":87}}",
+                "{\"C\":\"sr_tpevt\",\"B\":{\"type\":1}}",
+                "{\"C\":\"sr_syvr\",\"B\":{\"version\":\"17.26.1.14\",\"dpj\":\"bes2700\"}}",
+                "{\"C\":\"{\\\"type\\\":\\\"msg_ack\\\",\\\"mId\\\":1700000012345}\",\"V\":1,\"B\":\"\"}",
+        };
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        for (int i = 0; i < frames; i++) {
+            if (random.nextInt(20) == 0) {
+                trace.write(bytes("\r\n"), 0, 2);
+            }
+            byte[] message;
+            if (random.nextInt(4) == 0) {
+                // Wrapped phone command with a longer body
+                message = frame("{\"C\":\"{\\\"type\\\":\\\"display_text\\\",\\\"mId\\\":" + i
+                        + ",\\\"text\\\":\\\"" + randomPayload(random, 50 + random.nextInt(150))
+                        + "\\\"}\",\"V\":1,\"B\":\"\"}");
+            } else {
+                message = frame(payloads[random.nextInt(payloads.length)]);
+            }
+            trace.write(message, 0, message.length);
+        }
+        return trace.toByteArray();
+    }
+
+    private static String randomPayload(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+
+    private static byte[] frame(String json) {
+        return frame(bytes(json));
+    }
+
+    /** ## + type + little-endian length + payload + $$, as BES sends it */
+    private static byte[] frame(byte[] payload) {
+        byte[] message = new byte[payload.length + 7];
+        message[0] = '#';
+        message[1] = '#';
+        message[2] = K900ProtocolUtils.CMD_TYPE_STRING;
+        message[3] = (byte) payload.length;
+        message[4] = (byte) (payload.length >> 8);
+        System.arraycopy(payload, 0, message, 5, payload.length);
+        message[message.length - 2] = '$';
+        message[message.length - 1] = '$';
+        return message;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Bytes allocated by this thread so far, or 0 where the JVM can't report it. */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /** The previous payload extraction: big-endian length, then little-endian, copied out. */
+    private static byte[] legacyExtractPayload(byte[] message) {
+        int length = ((message[3] & 0xFF) << 8) | (message[4] & 0xFF);
+        if (length + 7 > message.length) {
+            length = (message[3] & 0xFF) | ((message[4] & 0xFF) << 8);
+        }
+        byte[] payload = new byte[length];
+        System.arraycopy(message, 5, payload, 0, length);
+        return payload;
+    }
+
+    /** The previous copy-and-rescan parser, kept as the comparison baseline. */
+    private static class LegacyK900MessageParser {
+        private final CircleBuffer circleBuffer = new CircleBuffer(8192);
+        private final byte[] tempBuffer = new byte[8192];
+
+        void addData(byte[] data, int size) {
+            circleBuffer.add(data, 0, size);
+        }
+
+        List<byte[]> parseMessages() {
+            int fetchSize = circleBuffer.fetch(tempBuffer, 0, circleBuffer.getDataLen());
+            if (fetchSize == 0) {
+                return null;
+            }
+            List<byte[]> messages = new ArrayList<>();
+            int currentPos = 0;
+            boolean found = false;
+            while (currentPos < fetchSize) {
+                int start = findMarker(currentPos, fetchSize, (byte) '#');
+                if (start == -1) {
+                    if (!found) {
+                        circleBuffer.clear();
+                        return null;
+                    }
+                    break;
+                }
+                currentPos = start;
+                int end = findMarker(currentPos + 2, fetchSize, (byte) '$');
+                if (end == -1) {
+                    if (found) {
+                        break;
+                    }
+                    if (fetchSize > 512) {
+                        circleBuffer.clear();
+                    }
+                    return null;
+                }
+                if (end - currentPos < 6) {
+                    currentPos = end + 2;
+                    continue;
+                }
+                byte[] message = new byte[end + 2 - currentPos];
+                ByteUtil.copyBytes(tempBuffer, currentPos, message.length, message, 0);
+                messages.add(message);
+                found = true;
+                currentPos = end + 2;
+            }
+            if (currentPos > 0) {
+                circleBuffer.removeHead(currentPos);
+            }
+            return messages.isEmpty() ? null : messages;
+        }
+
+        private int findMarker(int offset, int limit, byte marker) {
+            for (int i = offset; i < limit - 1; i++) {
+                if (tempBuffer[i] == marker && tempBuffer[i + 1] == marker) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.mentra.asg_client.io.bluetooth.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+
+    @Test
+    public void percentilesOverRecordedSamples() {
+        LatencyRecorder recorder = new LatencyRecorder(100);
+        for (int i = 100; i >= 1; i--) {
+            recorder.recordNanos(i * 1000L);
+        }
+
+        assertEquals(100, recorder.getCount());
+        assertEquals(50, recorder.getPercentileMicros(50));
+        assertEquals(99, recorder.getPercentileMicros(99));
+        assertEquals(100, recorder.getPercentileMicros(100));
+        assertEquals(100, recorder.getMaxMicros());
+    }
+
+    @Test
+    public void keepsOnlyTheMostRecentSamples() {
+        LatencyRecorder recorder = new LatencyRecorder(4);
+        recorder.recordNanos(1_000_000);
+        for (int i = 0; i < 4; i++) {
+            recorder.recordNanos(2_000);
+        }
+
+        assertEquals(2, recorder.getPercentileMicros(99));
+        // The max covers everything since the last reset
+        assertEquals(1_000, recorder.getMaxMicros());
+    }
+
+    @Test
+    public void emptyAndResetRecorderReportsZero() {
+        LatencyRecorder recorder = new LatencyRecorder(4);
+        assertEquals(0, recorder.getPercentileMicros(50));
+
+        recorder.recordNanos(5_000);
+        recorder.reset();
+        assertEquals(0, recorder.getCount());
+        assertEquals(0, recorder.getPercentileMicros(99));
+        assertEquals("n=0 p50=0us p99=0us max=0us", recorder.getSummary());
+    }
+}
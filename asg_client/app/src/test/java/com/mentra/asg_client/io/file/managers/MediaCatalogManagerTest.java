@@ -0,0 +1,425 @@
+package com.mentra.asg_client.io.file.managers;
+
+import com.mentra.asg_client.io.file.core.FileManager;
+import com.mentra.asg_client.io.file.core.FileManager.FileMetadata;
+import com.mentra.asg_client.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class MediaCatalogManagerTest {
+
+    private static final String PACKAGE = "com.mentra.asg_client.camera";
+    private static final long OLD_TIME = System.currentTimeMillis() - 24 * 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File baseDir;
+    private File packageDir;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDir = tmp.newFolder("media");
+        packageDir = new File(baseDir, PACKAGE);
+        assertTrue(packageDir.mkdirs());
+    }
+
+    @Test
+    public void listFiles_excludesPartialFilesAndSdkPendingDir() throws IOException {
+        writeFile("IMG_1/base.jpg", 10, OLD_TIME);
+        writeFile("IMG_1/imu.jsonl.partial", 5, OLD_TIME);
+        writeFile("IMG_1/imu.json.partial", 6, OLD_TIME);
+        writeFile(FileManager.SDK_PENDING_DIR_NAME + "/IMG_2/base.jpg", 7, OLD_TIME);
+
+        List<FileMetadata> files = newCatalog().listFiles(PACKAGE, packageDir);
+
+        assertEquals(1, files.size());
+        assertEquals("IMG_1/base.jpg", files.get(0).getFileName());
+        assertEquals("image/jpeg", files.get(0).getMimeType());
+        assertEquals(10, files.get(0).getFileSize());
+    }
+
+    @Test
+    public void listFiles_picksUpNewAndDeletedCaptureFolders() throws IOException {
+        MediaCatalogManager catalog = newCatalog();
+        writeFile("IMG_1/base.jpg", 10, OLD_TIME);
+        assertEquals(1, catalog.listFiles(PACKAGE, packageDir).size());
+
+        writeFile("VID_2/base.mp4", 20, OLD_TIME + 1000);
+        assertEquals(names("IMG_1/base.jpg", "VID_2/base.mp4"), namesOf(catalog.listFiles(PACKAGE, packageDir)));
+
+        deleteTree(new File(packageDir, "IMG_1"));
+        catalog.invalidatePath(PACKAGE, "IMG_1");
+        assertEquals(names("VID_2/base.mp4"), namesOf(catalog.listFiles(PACKAGE, packageDir)));
+
+        MediaCatalogManager.CatalogStats stats = catalog.getStats(PACKAGE, packageDir);
+        assertEquals(1, stats.fileCount);
+        assertEquals(20, stats.totalBytes);
+    }
+
+    @Test
+    public void quietCaptureFolders_areOnlyRelistedWhenInvalidated() throws IOException {
+        writeFile("IMG_1/base.jpg", 10, OLD_TIME);
+        writeFile("IMG_2/base.jpg", 10, OLD_TIME);
+        ageDirectories(packageDir);
+        MediaCatalogManager catalog = newCatalog();
+        assertEquals(2, catalog.listFiles(PACKAGE, packageDir).size());
+
+        // A write into a quiet folder is not picked up by a stat of every folder per query...
+        writeFile("IMG_1/imu.json", 5, OLD_TIME);
+        assertEquals(names("IMG_1/base.jpg", "IMG_2/base.jpg"), namesOf(catalog.listFiles(PACKAGE, packageDir)));
+
+        // ...but by the writer's hook, while a new capture folder shows up through the root mtime
+        catalog.invalidatePath(PACKAGE, "IMG_1/imu.json");
+        writeFile("IMG_3/base.jpg", 10, OLD_TIME);
+        assertEquals(names("IMG_1/base.jpg", "IMG_1/imu.json", "IMG_2/base.jpg", "IMG_3/base.jpg"),
+                namesOf(catalog.listFiles(PACKAGE, packageDir)));
+    }
+
+    @Test
+    public void listFilesModifiedSince_isExclusiveAndOrderedOldestFirst() throws IOException {
+        writeFile("IMG_a/base.jpg", 1, OLD_TIME);
+        writeFile("IMG_b/base.jpg", 1, OLD_TIME + 2000);
+        writeFile("IMG_c/base.jpg", 1, OLD_TIME + 4000);
+
+        List<FileMetadata> since = newCatalog().listFilesModifiedSince(PACKAGE, packageDir, OLD_TIME + 2000);
+
+        assertEquals(1, since.size());
+        assertEquals("IMG_c/base.jpg", since.get(0).getFileName());
+    }
+
+    @Test
+    public void listFiles_tracksHotFileGrowthWithoutDirectoryChange() throws IOException {
+        MediaCatalogManager catalog = newCatalog();
+        File video = writeFile("VID_1/base.mp4", 100, System.currentTimeMillis());
+        assertEquals(100, catalog.listFiles(PACKAGE, packageDir).get(0).getFileSize());
+
+        // Appending in place does not touch the directory mtime
+        long dirMtime = video.getParentFile().lastModified();
+        try (FileOutputStream out = new FileOutputStream(video, true)) {
+            out.write(new byte[50]);
+        }
+        video.getParentFile().setLastModified(dirMtime);
+
+        assertEquals(150, catalog.listFiles(PACKAGE, packageDir).get(0).getFileSize());
+    }
+
+    @Test
+    public void persistedIndex_isReloadedByNewInstance() throws IOException {
+        writeFile("IMG_1/base.jpg", 10, OLD_TIME);
+        writeFile("IMG_2/base.jpg", 11, OLD_TIME);
+        ageDirectories(packageDir);
+        newCatalog().listFiles(PACKAGE, packageDir);
+
+        File[] indexFiles = baseDir.listFiles((dir, name) -> name.startsWith(".media_catalog_"));
+        assertTrue(indexFiles != null && indexFiles.length == 1);
+
+        // A fresh instance must serve the same view and notice a capture removed while it was down
+        deleteTree(new File(packageDir, "IMG_2"));
+        List<FileMetadata> reloaded = newCatalog().listFiles(PACKAGE, packageDir);
+        assertEquals(names("IMG_1/base.jpg"), namesOf(reloaded));
+    }
+
+    @Test
+    public void invalidatePackage_forcesRescanOfInPlaceRewrite() throws IOException {
+        MediaCatalogManager catalog = newCatalog();
+        File photo = writeFile("IMG_1/base.jpg", 10, OLD_TIME);
+        ageDirectories(packageDir);
+        catalog.listFiles(PACKAGE, packageDir);
+
+        writeBytes(photo, 30, OLD_TIME);
+        ageDirectories(packageDir);
+        assertEquals(10, catalog.listFiles(PACKAGE, packageDir).get(0).getFileSize());
+
+        catalog.invalidatePackage(PACKAGE);
+        assertEquals(30, catalog.listFiles(PACKAGE, packageDir).get(0).getFileSize());
+    }
+
+    @Test
+    public void changesSince_reportsAdditionsAndTombstonesAfterCursor() throws IOException {
+        MediaCatalogManager catalog = newCatalog();
+        writeFile("IMG_1/base.jpg", 10, OLD_TIME);
+        writeFile("IMG_2/base.jpg", 10, OLD_TIME + 1000);
+
+        MediaCatalogManager.ChangeSet initial = catalog.getChangesSince(PACKAGE, packageDir, null, 0);
+        assertTrue(initial.fullResync);
+        assertFalse(initial.hasMore);
+        assertEquals(names("IMG_1/base.jpg", "IMG_2/base.jpg"), namesOf(initial.changed));
+
+        // Nothing changed: empty page, cursor stays put
+        MediaCatalogManager.ChangeSet idle = catalog.getChangesSince(PACKAGE, packageDir, initial.nextCursor, 0);
+        assertFalse(idle.fullResync);
+        assertTrue(idle.changed.isEmpty() && idle.deleted.isEmpty());
+        assertEquals(initial.nextCursor, idle.nextCursor);
+
+        deleteTree(new File(packageDir, "IMG_1"));
+        catalog.invalidatePath(PACKAGE, "IMG_1");
+        writeFile("VID_3/base.mp4", 30, OLD_TIME + 2000);
+
+        MediaCatalogManager.ChangeSet delta = catalog.getChangesSince(PACKAGE, packageDir, idle.nextCursor, 0);
+        assertEquals(names("VID_3/base.mp4"), namesOf(delta.changed));
+        assertEquals(1, delta.deleted.size());
+        assertEquals("IMG_1/base.jpg", delta.deleted.get(0).relativePath);
+
+        List<MediaCatalogManager.Tombstone> deletions = catalog.getDeletionsSince(PACKAGE, packageDir, OLD_TIME);
+        assertEquals(1, deletions.size());
+    }
+
+    @Test
+    public void changesSince_paginatesAndRejectsForeignCursor() throws IOException {
+        MediaCatalogManager catalog = newCatalog();
+        for (int i = 0; i < 5; i++) {
+            writeFile("IMG_" + i + "/base.jpg", 1, OLD_TIME + i);
+        }
+
+        Set<String> seen = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        MediaCatalogManager.ChangeSet page;
+        do {
+            page = catalog.getChangesSince(PACKAGE, packageDir, cursor, 2);
+            seen.addAll(namesOf(page.changed));
+            cursor = page.nextCursor;
+            pages++;
+        } while (page.hasMore);
+        assertEquals(3, pages);
+        assertEquals(5, seen.size());
+
+        MediaCatalogManager.ChangeSet foreign = catalog.getChangesSince(PACKAGE, packageDir, "deadbeef:3", 0);
+        assertTrue(foreign.fullResync);
+        assertEquals(5, foreign.changed.size());
+    }
+
+    @Test
+    public void invalidatePath_reannouncesUnchangedFiles() throws IOException {
+        MediaCatalogManager catalog = newCatalog();
+        writeFile("VID_1/base.mp4", 10, OLD_TIME);
+        writeFile("IMG_2/base.jpg", 10, OLD_TIME);
+        String cursor = catalog.getChangesSince(PACKAGE, packageDir, null, 0).nextCursor;
+
+        catalog.invalidatePath(PACKAGE, "VID_1");
+        MediaCatalogManager.ChangeSet delta = catalog.getChangesSince(PACKAGE, packageDir, cursor, 0);
+        assertEquals(names("VID_1/base.mp4"), namesOf(delta.changed));
+    }
+
+    @Test
+    public void invalidatePath_isHonouredByBackToBackRefreshes() throws IOException {
+        MediaCatalogManager catalog = newCatalog();
+        writeFile("IMG_0/base.jpg", 10, OLD_TIME);
+        ageDirectories(packageDir);
+        catalog.listFiles(PACKAGE, packageDir);
+        File dir = new File(packageDir, "IMG_0");
+
+        // Refreshes in the same millisecond must still re-list what a hook marked dirty
+        for (int i = 1; i <= 50; i++) {
+            catalog.listFiles(PACKAGE, packageDir);
+            writeBytes(new File(dir, "extra_" + i + ".json"), 4, OLD_TIME);
+            dir.setLastModified(OLD_TIME);
+            catalog.invalidatePath(PACKAGE, "IMG_0/extra_" + i + ".json");
+            assertEquals(1 + i, catalog.listFiles(PACKAGE, packageDir).size());
+        }
+    }
+
+    @Test
+    public void changeLog_survivesReloadWithoutReusingSequences() throws IOException {
+        writeFile("IMG_1/base.jpg", 10, OLD_TIME);
+        ageDirectories(packageDir);
+        String cursor = newCatalog().getChangesSince(PACKAGE, packageDir, null, 0).nextCursor;
+
+        writeFile("IMG_2/base.jpg", 10, OLD_TIME);
+        MediaCatalogManager.ChangeSet delta = newCatalog().getChangesSince(PACKAGE, packageDir, cursor, 0);
+        assertFalse(delta.fullResync);
+        assertEquals(names("IMG_2/base.jpg"), namesOf(delta.changed));
+    }
+
+    @Test
+    public void deferredPaths_surviveReloadAndAreReannouncedOnRelease() throws IOException {
+        writeFile("VID_1/base.mp4", 10, OLD_TIME);
+        writeFile("IMG_2/base.jpg", 10, OLD_TIME);
+        ageDirectories(packageDir);
+        MediaCatalogManager catalog = newCatalog();
+        String cursor = catalog.getChangesSince(PACKAGE, packageDir, null, 0).nextCursor;
+        List<String> recording = new ArrayList<>();
+        recording.add("VID_1/base.mp4");
+        catalog.deferPaths(PACKAGE, packageDir, recording);
+        assertEquals(0, catalog.releaseDeferredPaths(PACKAGE, packageDir, recording::contains));
+
+        // A restart forgets which files were recording, but not that they are still owed
+        MediaCatalogManager restarted = newCatalog();
+        assertEquals(1, restarted.releaseDeferredPaths(PACKAGE, packageDir, path -> false));
+        MediaCatalogManager.ChangeSet delta = restarted.getChangesSince(PACKAGE, packageDir, cursor, 0);
+        assertEquals(names("VID_1/base.mp4"), namesOf(delta.changed));
+        assertEquals(0, restarted.releaseDeferredPaths(PACKAGE, packageDir, path -> false));
+    }
+
+    /**
+     * List latency benchmark: full recursive walk (the previous listFiles behaviour) versus
+     * building the catalog with no index (first boot), loading it from the persisted index
+     * (restart), a warm catalog refresh and a delta query, at 100, 1k and 10k files.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmark_listLatencyAt100_1k_10kFiles() throws IOException {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        int[] sizes = {100, 1_000, 10_000};
+        for (int size : sizes) {
+            File pkg = new File(tmp.newFolder("bench_" + size), PACKAGE);
+            assertTrue(pkg.mkdirs());
+            // Two files per capture folder, like base.jpg + imu.json
+            for (int i = 0; i < size / 2; i++) {
+                File dir = new File(pkg, "IMG_" + i);
+                dir.mkdirs();
+                writeBytes(new File(dir, "base.jpg"), 16, OLD_TIME + i);
+                writeBytes(new File(dir, "imu.json"), 8, OLD_TIME + i);
+            }
+            ageDirectories(pkg);
+
+            // Best of a few runs each, so JIT warm-up is not charged to whichever path runs first
+            int runs = 3;
+            long walkNs = Long.MAX_VALUE;
+            List<File> walked = new ArrayList<>();
+            for (int r = 0; r < runs; r++) {
+                walked.clear();
+                long t0 = System.nanoTime();
+                walk(pkg, walked);
+                walkNs = Math.min(walkNs, System.nanoTime() - t0);
+            }
+
+            // First boot: no index yet, so every file is stat'ed once and the index is written
+            MediaCatalogManager catalog = new MediaCatalogManager(pkg.getParentFile(), new SilentLogger());
+            long t0 = System.nanoTime();
+            int cold = catalog.listFiles(PACKAGE, pkg).size();
+            long coldNs = System.nanoTime() - t0;
+
+            // Restart: files come from the index; only the package and hot directories are checked
+            int restart = 0;
+            long restartNs = Long.MAX_VALUE;
+            for (int r = 0; r < runs; r++) {
+                catalog = new MediaCatalogManager(pkg.getParentFile(), new SilentLogger());
+                t0 = System.nanoTime();
+                restart = catalog.listFiles(PACKAGE, pkg).size();
+                restartNs = Math.min(restartNs, System.nanoTime() - t0);
+            }
+
+            int warm = 0;
+            int rounds = 5;
+            t0 = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                warm = catalog.listFiles(PACKAGE, pkg).size();
+            }
+            long warmNs = (System.nanoTime() - t0) / rounds;
+
+            t0 = System.nanoTime();
+            int delta = catalog.listFilesModifiedSince(PACKAGE, pkg, OLD_TIME + size / 2 - 10).size();
+            long deltaNs = System.nanoTime() - t0;
+
+            assertEquals(size, walked.size());
+            assertEquals(size, cold);
+            assertEquals(size, restart);
+            assertEquals(size, warm);
+            assertEquals(18, delta);
+            System.out.println(String.format(Locale.US,
+                    "catalog %5d files: walk=%.2fms first-boot=%.2fms restart=%.2fms warm=%.2fms delta=%.2fms",
+                    size, walkNs / 1e6, coldNs / 1e6, restartNs / 1e6, warmNs / 1e6, deltaNs / 1e6));
+        }
+    }
+
+    private MediaCatalogManager newCatalog() {
+        return new MediaCatalogManager(baseDir, new SilentLogger());
+    }
+
+    private File writeFile(String relativePath, int size, long mtime) throws IOException {
+        File file = new File(packageDir, relativePath);
+        file.getParentFile().mkdirs();
+        writeBytes(file, size, mtime);
+        return file;
+    }
+
+    private static void writeBytes(File file, int size, long mtime) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        file.setLastModified(mtime);
+    }
+
+    /** Push directory mtimes outside the settle window so the catalog treats them as quiet. */
+    private static void ageDirectories(File dir) {
+        File[] items = dir.listFiles();
+        if (items != null) {
+            for (File item : items) {
+                if (item.isDirectory()) {
+                    ageDirectories(item);
+                }
+            }
+        }
+        dir.setLastModified(OLD_TIME);
+    }
+
+    private static void walk(File dir, List<File> out) {
+        File[] items = dir.listFiles();
+        if (items == null) {
+            return;
+        }
+        for (File item : items) {
+            if (item.isFile()) {
+                item.length();
+                item.lastModified();
+                out.add(item);
+            } else if (item.isDirectory()) {
+                walk(item, out);
+            }
+        }
+    }
+
+    private static void deleteTree(File file) {
+        File[] items = file.listFiles();
+        if (items != null) {
+            for (File item : items) {
+                deleteTree(item);
+            }
+        }
+        file.delete();
+    }
+
+    private static Set<String> names(String... names) {
+        Set<String> set = new HashSet<>();
+        for (String name : names) {
+            set.add(name);
+        }
+        return set;
+    }
+
+    private static Set<String> namesOf(List<FileMetadata> files) {
+        Set<String> set = new HashSet<>();
+        for (FileMetadata file : files) {
+            set.add(file.getFileName());
+        }
+        assertFalse(set.size() != files.size());
+        return set;
+    }
+
+    private static final class SilentLogger implements Logger {
+        @Override public void debug(String tag, String message) {}
+        @Override public void info(String tag, String message) {}
+        @Override public void warn(String tag, String message) {}
+        @Override public void error(String tag, String message) {}
+        @Override public void error(String tag, String message, Throwable throwable) {}
+    }
+}
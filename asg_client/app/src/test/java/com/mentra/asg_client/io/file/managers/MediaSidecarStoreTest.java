@@ -0,0 +1,168 @@
+package com.mentra.asg_client.io.file.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.mentra.asg_client.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class MediaSidecarStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File sidecarDir;
+    private File mediaDir;
+
+    @Before
+    public void setUp() throws IOException {
+        sidecarDir = tmp.newFolder("thumbnails");
+        mediaDir = tmp.newFolder("media");
+    }
+
+    @Test
+    public void putThenGet_servesCachedInstanceWithEncodedThumbnail() throws IOException {
+        MediaSidecarStore store = new MediaSidecarStore(sidecarDir, 1024 * 1024, new SilentLogger());
+        File video = writeFile(new File(mediaDir, "VID_1.mp4"), 4096);
+        File thumb = writeFile(new File(sidecarDir, "abc.jpg"), 200);
+
+        MediaSidecarStore.Sidecar stored = store.put("abc", video, thumb, 12_345, 1280, 720);
+        MediaSidecarStore.Sidecar fetched = store.get("abc", video);
+
+        assertSame(stored, fetched);
+        assertEquals(12_345, fetched.getDurationMs());
+        assertEquals(1280, fetched.getWidth());
+        assertEquals(720, fetched.getHeight());
+        assertEquals(200, fetched.getThumbnailSize());
+        assertEquals(1, store.getHitCount());
+    }
+
+    @Test
+    public void encodeBase64_matchesAndroidDefaultLayout() {
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        String encoded = MediaSidecarStore.encodeBase64(data);
+
+        // 100 bytes -> 136 chars, wrapped at 76 with a trailing newline on every line
+        String[] lines = encoded.split("\n", -1);
+        assertEquals(3, lines.length);
+        assertEquals(76, lines[0].length());
+        assertEquals(60, lines[1].length());
+        assertEquals("", lines[2]);
+        assertEquals("", MediaSidecarStore.encodeBase64(new byte[0]));
+    }
+
+    @Test
+    public void sidecarSurvivesRestart() throws IOException {
+        File photo = writeFile(new File(mediaDir, "IMG_1.jpg"), 8192);
+        File thumb = writeFile(new File(sidecarDir, "def.jpg"), 300);
+        MediaSidecarStore first = new MediaSidecarStore(sidecarDir, 1024 * 1024, new SilentLogger());
+        MediaSidecarStore.Sidecar stored = first.put("def", photo, thumb, -1, 4032, 3024);
+
+        MediaSidecarStore second = new MediaSidecarStore(sidecarDir, 1024 * 1024, new SilentLogger());
+        MediaSidecarStore.Sidecar loaded = second.get("def", photo);
+
+        assertNotNull(loaded);
+        assertEquals(stored.getThumbnailBase64(), loaded.getThumbnailBase64());
+        assertEquals(-1, loaded.getDurationMs());
+        assertEquals(4032, loaded.getWidth());
+        assertEquals(3024, loaded.getHeight());
+    }
+
+    @Test
+    public void changedSourceInvalidatesSidecar() throws IOException {
+        MediaSidecarStore store = new MediaSidecarStore(sidecarDir, 1024 * 1024, new SilentLogger());
+        File video = writeFile(new File(mediaDir, "VID_2.mp4"), 1000);
+        File thumb = writeFile(new File(sidecarDir, "ghi.jpg"), 100);
+        store.put("ghi", video, thumb, 5000, 640, 480);
+
+        writeFile(video, 2000);
+
+        assertNull(store.get("ghi", video));
+        assertNull(new MediaSidecarStore(sidecarDir, 1024 * 1024, new SilentLogger()).get("ghi", video));
+    }
+
+    @Test
+    public void missingThumbnailOnDiskForcesRecompute() throws IOException {
+        File photo = writeFile(new File(mediaDir, "IMG_2.jpg"), 1000);
+        File thumb = writeFile(new File(sidecarDir, "jkl.jpg"), 100);
+        new MediaSidecarStore(sidecarDir, 1024 * 1024, new SilentLogger()).put("jkl", photo, thumb, -1, 10, 10);
+
+        assertTrue(thumb.delete());
+
+        assertNull(new MediaSidecarStore(sidecarDir, 1024 * 1024, new SilentLogger()).get("jkl", photo));
+    }
+
+    @Test
+    public void memoryBudgetEvictsLeastRecentlyUsed() throws IOException {
+        // Each entry costs ~1.5KB (1KB thumbnail base64-encoded + overhead); budget fits two
+        MediaSidecarStore store = new MediaSidecarStore(sidecarDir, 3500, new SilentLogger());
+        File[] media = new File[3];
+        for (int i = 0; i < media.length; i++) {
+            media[i] = writeFile(new File(mediaDir, "IMG_" + i + ".jpg"), 500);
+            File thumb = writeFile(new File(sidecarDir, "k" + i + ".jpg"), 1024);
+            store.put("k" + i, media[i], thumb, -1, 1, 1);
+            if (i == 1) {
+                // Touch k0 so k1 becomes the eldest
+                store.get("k0", media[0]);
+            }
+        }
+
+        assertEquals(2, store.getCachedCount());
+        assertTrue(store.getCachedBytes() <= 3500);
+        long hitsBefore = store.getHitCount();
+        store.get("k0", media[0]);
+        store.get("k2", media[2]);
+        assertEquals(hitsBefore + 2, store.getHitCount());
+
+        // Evicted entry still loads from its sidecar on disk
+        assertNotNull(store.get("k1", media[1]));
+    }
+
+    @Test
+    public void removeDropsMemoryAndDisk() throws IOException {
+        MediaSidecarStore store = new MediaSidecarStore(sidecarDir, 1024 * 1024, new SilentLogger());
+        File video = writeFile(new File(mediaDir, "VID_3.mp4"), 1000);
+        store.put("mno", video, null, 1000, 0, 0);
+        assertTrue(new File(sidecarDir, "mno.meta").exists());
+
+        store.remove("mno");
+
+        assertEquals(0, store.getCachedCount());
+        assertTrue(!new File(sidecarDir, "mno.meta").exists());
+        assertNull(store.get("mno", video));
+    }
+
+    private static File writeFile(File file, int size) throws IOException {
+        long previous = file.exists() ? file.lastModified() : 0;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        if (previous != 0 && file.lastModified() == previous) {
+            file.setLastModified(previous + 1000);
+        }
+        return file;
+    }
+
+    private static class SilentLogger implements Logger {
+        @Override public void debug(String tag, String message) {}
+        @Override public void info(String tag, String message) {}
+        @Override public void warn(String tag, String message) {}
+        @Override public void error(String tag, String message) {}
+        @Override public void error(String tag, String message, Throwable throwable) {}
+    }
+}
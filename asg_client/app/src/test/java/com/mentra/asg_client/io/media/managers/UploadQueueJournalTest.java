@@ -0,0 +1,248 @@
+package com.mentra.asg_client.io.media.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+
+public class UploadQueueJournalTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File manifest;
+    private File journal;
+
+    @Before
+    public void setUp() throws IOException {
+        File dir = tmp.newFolder("queue");
+        manifest = new File(dir, "queue_manifest.json");
+        journal = new File(dir, "queue_manifest.json.journal");
+    }
+
+    @Test
+    public void mutationsReplayAfterReopen() throws Exception {
+        UploadQueueJournal first = new UploadQueueJournal(manifest, "photos", false);
+        first.put(entry("a", "queued"));
+        first.put(entry("b", "queued"));
+        first.put(entry("c", "queued"));
+        first.update("b", new JSONObject().put("status", "failed").put("retryCount", 1));
+        first.remove("c");
+        first.close();
+
+        UploadQueueJournal second = new UploadQueueJournal(manifest, "photos", false);
+
+        assertEquals(2, second.size());
+        assertEquals("failed", second.get("b").getString("status"));
+        assertEquals(1, second.get("b").getInt("retryCount"));
+        assertNull(second.get("c"));
+        assertFalse(second.wasRecovered());
+    }
+
+    @Test
+    public void snapshotKeepsManifestLayout() throws Exception {
+        UploadQueueJournal queue = new UploadQueueJournal(manifest, "mediaItems", false);
+        queue.put(entry("a", "queued"));
+        queue.compact();
+
+        JSONObject snapshot = new JSONObject(read(manifest));
+        JSONArray items = snapshot.getJSONArray("mediaItems");
+        assertEquals(1, items.length());
+        assertEquals("a", items.getJSONObject(0).getString("queuedPath"));
+        assertTrue(snapshot.has("lastUpdated"));
+    }
+
+    @Test
+    public void legacyManifestWithoutJournalLoads() throws Exception {
+        JSONObject legacy = new JSONObject()
+                .put("photos", new JSONArray().put(entry("a", "queued")).put(entry("b", "completed")))
+                .put("lastUpdated", 42L);
+        write(manifest, legacy.toString());
+
+        UploadQueueJournal queue = new UploadQueueJournal(manifest, "photos", false);
+
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.countWithStatus("completed"));
+        assertTrue(journal.exists());
+    }
+
+    @Test
+    public void tornTailIsDropped() throws Exception {
+        UploadQueueJournal first = new UploadQueueJournal(manifest, "photos", false);
+        first.put(entry("a", "queued"));
+        first.put(entry("b", "queued"));
+        first.close();
+
+        // Cut the last record in half, as a crash mid-write would
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        UploadQueueJournal second = new UploadQueueJournal(manifest, "photos", false);
+
+        assertTrue(second.wasRecovered());
+        assertEquals(1, second.size());
+        assertNotNull(second.get("a"));
+
+        // The repaired journal accepts new records again
+        second.put(entry("c", "queued"));
+        second.close();
+        assertEquals(2, new UploadQueueJournal(manifest, "photos", false).size());
+    }
+
+    @Test
+    public void staleJournalFromInterruptedCompactionIsIgnored() throws Exception {
+        UploadQueueJournal first = new UploadQueueJournal(manifest, "photos", false);
+        first.put(entry("a", "queued"));
+        first.remove("a");
+        first.put(entry("b", "queued"));
+        first.close();
+        byte[] staleJournal = Files.readAllBytes(journal.toPath());
+
+        // Compaction writes the snapshot, then the crash happens before the journal is truncated
+        new UploadQueueJournal(manifest, "photos", false).close();
+        write(journal, new String(staleJournal, StandardCharsets.UTF_8));
+
+        UploadQueueJournal reopened = new UploadQueueJournal(manifest, "photos", false);
+
+        assertEquals(1, reopened.size());
+        assertNotNull(reopened.get("b"));
+    }
+
+    @Test
+    public void statusIndexTracksUpdates() throws Exception {
+        UploadQueueJournal queue = new UploadQueueJournal(manifest, "photos", false);
+        for (int i = 0; i < 5; i++) {
+            queue.put(entry("p" + i, "queued"));
+        }
+        queue.update("p1", new JSONObject().put("status", "completed"));
+        queue.update("p3", new JSONObject().put("status", "completed"));
+
+        List<JSONObject> queued = queue.getWithStatus("queued");
+        assertEquals(3, queued.size());
+        assertEquals("p0", queued.get(0).getString("queuedPath"));
+        assertEquals("p4", queued.get(2).getString("queuedPath"));
+
+        assertEquals(2, queue.removeWithStatus("completed").size());
+        assertEquals(0, queue.countWithStatus("completed"));
+        assertEquals(3, queue.size());
+        assertNull(queue.update("p1", new JSONObject().put("status", "failed")));
+    }
+
+    @Test
+    public void returnedEntriesAreCopies() throws Exception {
+        UploadQueueJournal queue = new UploadQueueJournal(manifest, "photos", false);
+        queue.put(entry("a", "queued"));
+
+        queue.get("a").put("status", "completed");
+
+        assertEquals(1, queue.countWithStatus("queued"));
+        assertEquals("queued", queue.get("a").getString("status"));
+    }
+
+    @Test
+    public void journalIsCompactedAsItGrows() throws Exception {
+        UploadQueueJournal queue = new UploadQueueJournal(manifest, "photos", false);
+        queue.put(entry("a", "queued"));
+        for (int i = 0; i < 1000; i++) {
+            queue.update("a", new JSONObject().put("retryCount", i));
+        }
+
+        assertTrue(queue.getJournalRecordCount() < 256);
+        queue.close();
+        assertEquals(999, new UploadQueueJournal(manifest, "photos", false).get("a").getInt("retryCount"));
+    }
+
+    @Test
+    public void statusUpdatesAtScaleSurviveReopen() throws Exception {
+        final int count = 1000;
+        UploadQueueJournal queue = new UploadQueueJournal(manifest, "photos", false);
+        for (int i = 0; i < count; i++) {
+            queue.put(entry("p" + i, "queued"));
+        }
+        for (int i = 0; i < count; i++) {
+            queue.update("p" + i, new JSONObject().put("status", "uploading"));
+        }
+
+        assertEquals(count, queue.countWithStatus("uploading"));
+        queue.close();
+        assertEquals(count, new UploadQueueJournal(manifest, "photos", false).countWithStatus("uploading"));
+    }
+
+    /**
+     * Status update cost with 1000 queued items: the previous full manifest rewrite versus a
+     * journal append. Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmark_journalAgainstFullRewrite() throws Exception {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        final int count = 1000;
+        final int rewriteSamples = 50;
+
+        // Old behaviour: read, modify and rewrite the whole manifest for every status change
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            items.put(entry("p" + i, "queued"));
+        }
+        File rewriteManifest = tmp.newFile("rewrite_manifest.json");
+        write(rewriteManifest, new JSONObject().put("photos", items).toString());
+        long rewriteStart = System.nanoTime();
+        for (int i = 0; i < rewriteSamples; i++) {
+            JSONObject m = new JSONObject(read(rewriteManifest));
+            m.getJSONArray("photos").getJSONObject(i).put("status", "uploading");
+            write(rewriteManifest, m.toString());
+        }
+        double rewritePerOp = (System.nanoTime() - rewriteStart) / (double) rewriteSamples;
+
+        UploadQueueJournal queue = new UploadQueueJournal(manifest, "photos", false);
+        for (int i = 0; i < count; i++) {
+            queue.put(entry("p" + i, "queued"));
+        }
+        long journalStart = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            queue.update("p" + i, new JSONObject().put("status", "uploading"));
+        }
+        double journalPerOp = (System.nanoTime() - journalStart) / (double) count;
+
+        System.out.println(String.format(Locale.US, "UploadQueueJournal: status update with %d queued items, "
+                + "full rewrite %.1f us/op, journal %.1f us/op", count, rewritePerOp / 1000, journalPerOp / 1000));
+    }
+
+    private static JSONObject entry(String path, String status) throws JSONException {
+        return new JSONObject()
+                .put("requestId", "req-" + path)
+                .put("queuedPath", path)
+                .put("status", status)
+                .put("retryCount", 0)
+                .put("queuedTime", 1L);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.mentra.asg_client.io.media.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class UploadSchedulerTest {
+
+    private ScheduledThreadPoolExecutor executor;
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+    private final List<Runnable> completions = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean streaming;
+
+    @Before
+    public void setUp() {
+        executor = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sdkRequestsThenSmallFilesGoFirst() throws Exception {
+        UploadScheduler scheduler = newScheduler(1);
+        CountDownLatch hold = holdExecutor();
+
+        scheduler.submit(new UploadScheduler.UploadTask("video", 50_000_000, false, 0));
+        scheduler.submit(new UploadScheduler.UploadTask("photo", 300_000, false, 0));
+        scheduler.submit(new UploadScheduler.UploadTask("sdk-video", 20_000_000, true, 0));
+        hold.countDown();
+        drain();
+
+        assertEquals(Collections.singletonList("sdk-video"), started);
+        completeNext();
+        completeNext();
+
+        assertEquals(3, started.size());
+        assertEquals("photo", started.get(1));
+        assertEquals("video", started.get(2));
+    }
+
+    @Test
+    public void runsUpToMaxConcurrentInParallel() throws Exception {
+        UploadScheduler scheduler = newScheduler(3);
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(new UploadScheduler.UploadTask("p" + i, 1000, false, 0));
+        }
+        drain();
+
+        assertEquals(3, started.size());
+        assertEquals(3, scheduler.getInFlightCount());
+        assertEquals(2, scheduler.getPendingCount());
+
+        completeNext();
+        assertEquals(4, started.size());
+    }
+
+    @Test
+    public void duplicateKeysAreIgnoredUntilComplete() throws Exception {
+        UploadScheduler scheduler = newScheduler(2);
+
+        assertTrue(scheduler.submit(new UploadScheduler.UploadTask("a", 10, false, 0)));
+        assertFalse(scheduler.submit(new UploadScheduler.UploadTask("a", 10, false, 0)));
+        drain();
+        completeNext();
+
+        assertTrue(scheduler.submit(new UploadScheduler.UploadTask("a", 10, false, 0)));
+    }
+
+    @Test
+    public void liveStreamThrottlesAndHoldsLargeFiles() throws Exception {
+        streaming = true;
+        UploadScheduler scheduler = newScheduler(3);
+        CountDownLatch hold = holdExecutor();
+        scheduler.submit(new UploadScheduler.UploadTask("video", 10_000_000, false, 0));
+        scheduler.submit(new UploadScheduler.UploadTask("photo1", 200_000, false, 0));
+        scheduler.submit(new UploadScheduler.UploadTask("photo2", 250_000, false, 0));
+        hold.countDown();
+        drain();
+
+        assertEquals(Collections.singletonList("photo1"), started);
+        assertTrue(scheduler.isThrottled());
+        completeNext();
+        completeNext();
+        assertEquals(2, started.size());
+        assertFalse(started.contains("video"));
+
+        streaming = false;
+        scheduler.kick();
+        drain();
+
+        assertEquals("video", started.get(2));
+        assertFalse(scheduler.isThrottled());
+    }
+
+    @Test
+    public void backoffDelaysStartUntilNotBefore() throws Exception {
+        UploadScheduler scheduler = newScheduler(2);
+        scheduler.submit(new UploadScheduler.UploadTask("retry", 10, false, System.currentTimeMillis() + 150));
+        scheduler.submit(new UploadScheduler.UploadTask("fresh", 20, false, 0));
+        drain();
+
+        assertEquals(Collections.singletonList("fresh"), started);
+
+        Thread.sleep(250);
+        drain();
+        assertEquals(2, started.size());
+        assertEquals("retry", started.get(1));
+    }
+
+    @Test
+    public void retryDelayDoublesUpToCap() {
+        UploadScheduler scheduler = new UploadScheduler.Builder((task, done) -> done.run())
+                .setRetryBackoff(1000, 10_000)
+                .setExecutor(executor)
+                .build();
+
+        assertEquals(0, scheduler.getRetryDelayMs(0));
+        assertEquals(1000, scheduler.getRetryDelayMs(1));
+        assertEquals(2000, scheduler.getRetryDelayMs(2));
+        assertEquals(8000, scheduler.getRetryDelayMs(4));
+        assertEquals(10_000, scheduler.getRetryDelayMs(5));
+        assertEquals(10_000, scheduler.getRetryDelayMs(64));
+    }
+
+    @Test
+    public void failingUploaderReleasesItsSlot() throws Exception {
+        UploadScheduler scheduler = new UploadScheduler.Builder((task, done) -> {
+            started.add(task.getKey());
+            throw new IllegalStateException("boom");
+        }).setMaxConcurrent(1).setExecutor(executor).build();
+
+        scheduler.submit(new UploadScheduler.UploadTask("a", 1, false, 0));
+        scheduler.submit(new UploadScheduler.UploadTask("b", 2, false, 0));
+        drain();
+        drain();
+
+        assertEquals(2, started.size());
+        assertEquals(0, scheduler.getInFlightCount());
+    }
+
+    private UploadScheduler newScheduler(int maxConcurrent) {
+        return new UploadScheduler.Builder((task, done) -> {
+            started.add(task.getKey());
+            completions.add(done);
+        })
+                .setStreamingProbe(() -> streaming)
+                .setMaxConcurrent(maxConcurrent)
+                .setMaxBytesWhileStreaming(1_000_000)
+                .setStreamRecheckMs(60_000)
+                .setExecutor(executor)
+                .build();
+    }
+
+    /** Block the scheduler thread so several submissions are dispatched together. */
+    private CountDownLatch holdExecutor() {
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return latch;
+    }
+
+    private void completeNext() throws Exception {
+        completions.remove(0).run();
+        drain();
+    }
+
+    private void drain() throws Exception {
+        executor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+}
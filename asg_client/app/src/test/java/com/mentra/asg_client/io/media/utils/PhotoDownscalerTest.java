@@ -0,0 +1,303 @@
+package com.mentra.asg_client.io.media.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowBitmapRegionDecoder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33, shadows = PhotoDownscalerTest.CroppingRegionDecoderShadow.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class PhotoDownscalerTest {
+
+    // Camera frame size on the glasses
+    private static final int CAMERA_WIDTH = 4032;
+    private static final int CAMERA_HEIGHT = 3024;
+    private static final int COLOR_TOLERANCE = 12;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void sampleSizeStaysAtOrAboveTarget() {
+        assertEquals(4, PhotoDownscaler.sampleSizeFor(4032, 3024, 640, 480));
+        assertEquals(1, PhotoDownscaler.sampleSizeFor(4032, 3024, 3024, 2268));
+        assertEquals(2, PhotoDownscaler.sampleSizeFor(4032, 3024, 2016, 1512));
+        assertEquals(1, PhotoDownscaler.sampleSizeFor(100, 100, 100, 100));
+        // Portrait: the short side decides
+        assertEquals(8, PhotoDownscaler.sampleSizeFor(3024, 4032, 360, 480));
+    }
+
+    @Test
+    public void fitWithinKeepsAspectRatio() {
+        assertArrayEquals(new int[]{640, 480}, PhotoDownscaler.fitWithin(4032, 3024, 640, 640));
+        assertArrayEquals(new int[]{480, 640}, PhotoDownscaler.fitWithin(3024, 4032, 640, 640));
+        assertArrayEquals(new int[]{360, 480}, PhotoDownscaler.fitWithin(3024, 4032, 640, 480));
+        assertArrayEquals(new int[]{1, 1}, PhotoDownscaler.fitWithin(10000, 1, 1, 1));
+    }
+
+    @Test
+    public void scaleByMatchesUploadSizes() {
+        assertArrayEquals(legacyUploadSize(4032, 3024, 0.75f), PhotoDownscaler.scaleBy(4032, 3024, 0.75f));
+        assertArrayEquals(legacyUploadSize(4032, 3024, 0.5f), PhotoDownscaler.scaleBy(4032, 3024, 0.5f));
+        assertArrayEquals(legacyUploadSize(3024, 4032, 0.75f), PhotoDownscaler.scaleBy(3024, 4032, 0.75f));
+    }
+
+    @Test
+    public void unreadableFileDecodesToNull() throws Exception {
+        File file = tmp.newFile("broken.jpg");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3, 4});
+        }
+        assertNull(new PhotoDownscaler().decode(file.getAbsolutePath(), (w, h) -> new int[]{w, h}));
+    }
+
+    @Test
+    public void subsampledDecodeMatchesSource() throws Exception {
+        File jpeg = writeGradientJpeg(2016, 1512);
+        PhotoDownscaler downscaler = new PhotoDownscaler();
+
+        Bitmap out = downscaler.decode(jpeg.getAbsolutePath(), (w, h) -> PhotoDownscaler.fitWithin(w, h, 640, 640));
+
+        assertNotNull(out);
+        assertEquals(640, out.getWidth());
+        assertEquals(480, out.getHeight());
+        assertMatchesGradient(out);
+        // 1008x756 subsampled decode plus the 640x480 output, not the 2016x1512 frame
+        assertTrue(downscaler.getPeakBitmapBytes() < 2016L * 1512 * 4 / 2);
+        downscaler.release(out);
+    }
+
+    @Test
+    public void stripDecodeMatchesSourceWithoutSeams() throws Exception {
+        File jpeg = writeGradientJpeg(2016, 1512);
+        PhotoDownscaler downscaler = new PhotoDownscaler();
+
+        // inSampleSize 1, so the frame is too large to decode whole
+        Bitmap out = downscaler.decode(jpeg.getAbsolutePath(), (w, h) -> PhotoDownscaler.scaleBy(w, h, 0.75f));
+
+        assertNotNull(out);
+        int[] expected = PhotoDownscaler.scaleBy(2016, 1512, 0.75f);
+        assertEquals(expected[0], out.getWidth());
+        assertEquals(expected[1], out.getHeight());
+        assertMatchesGradient(out);
+        // Every row was drawn: a missed strip would leave black rows
+        for (int y = 0; y < out.getHeight(); y++) {
+            assertGradientPixel(out, out.getWidth() / 2, y);
+        }
+        long outputBytes = (long) out.getWidth() * out.getHeight() * 4;
+        assertTrue(downscaler.getPeakBitmapBytes() < outputBytes + 2 * PhotoDownscaler.STRIP_BYTES);
+        downscaler.release(out);
+    }
+
+    @Test
+    public void reusesBitmapsForSameSizedPhotos() throws Exception {
+        File jpeg = writeGradientJpeg(2016, 1512);
+        PhotoDownscaler downscaler = new PhotoDownscaler();
+        PhotoDownscaler.SizePolicy ble = (w, h) -> PhotoDownscaler.fitWithin(w, h, 640, 640);
+
+        downscaler.release(downscaler.decode(jpeg.getAbsolutePath(), ble));
+        long firstPeak = downscaler.getPeakBitmapBytes();
+        downscaler.resetPeakBitmapBytes();
+        Bitmap second = downscaler.decode(jpeg.getAbsolutePath(), ble);
+
+        assertMatchesGradient(second);
+        assertEquals(firstPeak, downscaler.getPeakBitmapBytes());
+        downscaler.release(second);
+
+        downscaler.trim();
+        downscaler.resetPeakBitmapBytes();
+        assertEquals(0, downscaler.getPeakBitmapBytes());
+    }
+
+    /**
+     * Peak bitmap bytes and time per photo against decoding the full frame and scaling it.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkAgainstFullDecodeAndScale() throws Exception {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        File jpeg = writeGradientJpeg(CAMERA_WIDTH, CAMERA_HEIGHT);
+        String path = jpeg.getAbsolutePath();
+        final int rounds = 5;
+
+        benchmark("BLE medium", path, rounds, (w, h) -> PhotoDownscaler.fitWithin(w, h, 640, 640));
+        benchmark("upload heavy", path, rounds, (w, h) -> PhotoDownscaler.scaleBy(w, h, 0.5f));
+        benchmark("upload medium", path, rounds, (w, h) -> PhotoDownscaler.scaleBy(w, h, 0.75f));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Robolectric's region decoder returns blank bitmaps; this one really decodes the region and,
+     * like the platform, draws it into the top-left of a reused bitmap without resizing it. The
+     * subsampled file is decoded once per decoder, so strip timings include one full decode.
+     */
+    @Implements(BitmapRegionDecoder.class)
+    public static class CroppingRegionDecoderShadow extends ShadowBitmapRegionDecoder {
+        private String path;
+        private Bitmap sampled;
+
+        @Implementation
+        protected static BitmapRegionDecoder newInstance(String pathName, boolean isShareable) throws IOException {
+            BitmapRegionDecoder decoder = ShadowBitmapRegionDecoder.newInstance(pathName, isShareable);
+            CroppingRegionDecoderShadow shadow = Shadow.extract(decoder);
+            shadow.path = pathName;
+            return decoder;
+        }
+
+        @Implementation
+        @Override
+        protected Bitmap decodeRegion(Rect rect, BitmapFactory.Options options) {
+            int sampleSize = Math.max(1, options.inSampleSize);
+            if (sampled == null) {
+                BitmapFactory.Options whole = new BitmapFactory.Options();
+                whole.inSampleSize = sampleSize;
+                sampled = BitmapFactory.decodeFile(path, whole);
+            }
+            Rect source = new Rect(rect.left / sampleSize, rect.top / sampleSize,
+                    Math.min(sampled.getWidth(), (rect.right + sampleSize - 1) / sampleSize),
+                    Math.min(sampled.getHeight(), (rect.bottom + sampleSize - 1) / sampleSize));
+            Bitmap target = options.inBitmap;
+            if (target == null) {
+                target = Bitmap.createBitmap(source.width(), source.height(), Bitmap.Config.ARGB_8888);
+            } else if (target.getWidth() < source.width() || target.getHeight() < source.height()) {
+                throw new IllegalArgumentException("inBitmap smaller than the region");
+            }
+            new Canvas(target).drawBitmap(sampled, source, new Rect(0, 0, source.width(), source.height()), null);
+            return target;
+        }
+
+        @Implementation
+        protected void recycle() {
+            if (sampled != null) {
+                sampled.recycle();
+                sampled = null;
+            }
+        }
+    }
+
+    private static void benchmark(String label, String path, int rounds, PhotoDownscaler.SizePolicy policy)
+            throws IOException {
+        // Warm up both paths
+        legacyDecode(path, policy).recycle();
+        PhotoDownscaler downscaler = new PhotoDownscaler();
+        downscaler.release(downscaler.decode(path, policy));
+
+        long legacyPeak = 0;
+        long legacyStart = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            Bitmap original = BitmapFactory.decodeFile(path);
+            int[] size = policy.outputSize(original.getWidth(), original.getHeight());
+            Bitmap scaled = Bitmap.createScaledBitmap(original, size[0], size[1], true);
+            // Previously the full frame and the scaled copy were both alive here
+            legacyPeak = Math.max(legacyPeak, (long) original.getAllocationByteCount() + scaled.getAllocationByteCount());
+            original.recycle();
+            scaled.recycle();
+        }
+        long legacyNanos = System.nanoTime() - legacyStart;
+
+        downscaler.resetPeakBitmapBytes();
+        long pooledStart = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            downscaler.release(downscaler.decode(path, policy));
+        }
+        long pooledNanos = System.nanoTime() - pooledStart;
+
+        System.out.println(String.format(Locale.US,
+                "PhotoDownscaler %s %dx%d: legacy %d KB peak %.1f ms, downscaler %d KB peak %.1f ms per photo",
+                label, CAMERA_WIDTH, CAMERA_HEIGHT, legacyPeak / 1024, legacyNanos / 1e6 / rounds,
+                downscaler.getPeakBitmapBytes() / 1024, pooledNanos / 1e6 / rounds));
+    }
+
+    private static Bitmap legacyDecode(String path, PhotoDownscaler.SizePolicy policy) {
+        Bitmap original = BitmapFactory.decodeFile(path);
+        int[] size = policy.outputSize(original.getWidth(), original.getHeight());
+        Bitmap scaled = Bitmap.createScaledBitmap(original, size[0], size[1], true);
+        original.recycle();
+        return scaled;
+    }
+
+    /**
+     * The sizing compressImageForUpload used before it moved to PhotoDownscaler
+     */
+    private static int[] legacyUploadSize(int originalWidth, int originalHeight, float compressionRatio) {
+        int compressedWidth = (int) (originalWidth * compressionRatio);
+        int compressedHeight = (int) (originalHeight * compressionRatio);
+        float aspectRatio = (float) originalWidth / originalHeight;
+        if (aspectRatio > 1) {
+            compressedHeight = (int) (compressedWidth / aspectRatio);
+        } else {
+            compressedWidth = (int) (compressedHeight * aspectRatio);
+        }
+        return new int[]{compressedWidth, compressedHeight};
+    }
+
+    /**
+     * Red follows x and green follows y, so any misplaced or missing rows show up as wrong colors
+     */
+    private File writeGradientJpeg(int width, int height) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = Color.rgb(x * 255 / (width - 1), y * 255 / (height - 1), 96);
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+        File file = tmp.newFile("fixture_" + width + "x" + height + ".jpg");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
+        }
+        bitmap.recycle();
+        return file;
+    }
+
+    private static void assertMatchesGradient(Bitmap bitmap) {
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        for (int y : new int[]{1, h / 4, h / 2, 3 * h / 4, h - 2}) {
+            for (int x : new int[]{1, w / 4, w / 2, 3 * w / 4, w - 2}) {
+                assertGradientPixel(bitmap, x, y);
+            }
+        }
+    }
+
+    private static void assertGradientPixel(Bitmap bitmap, int x, int y) {
+        int pixel = bitmap.getPixel(x, y);
+        int expectedRed = x * 255 / (bitmap.getWidth() - 1);
+        int expectedGreen = y * 255 / (bitmap.getHeight() - 1);
+        String where = " at " + x + "," + y + " of " + bitmap.getWidth() + "x" + bitmap.getHeight();
+        assertTrue("red " + Color.red(pixel) + " vs " + expectedRed + where,
+                Math.abs(Color.red(pixel) - expectedRed) <= COLOR_TOLERANCE);
+        assertTrue("green " + Color.green(pixel) + " vs " + expectedGreen + where,
+                Math.abs(Color.green(pixel) - expectedGreen) <= COLOR_TOLERANCE);
+        assertTrue("blue " + Color.blue(pixel) + where, Math.abs(Color.blue(pixel) - 96) <= COLOR_TOLERANCE);
+    }
+}
@@ -0,0 +1,420 @@
+package com.mentra.asg_client.io.ota.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class OtaDownloaderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private DroppingServer server;
+    private File target;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new DroppingServer();
+        target = new File(tmp.newFolder("ota"), "firmware.bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void resumesAfterDropsWithoutStartingOver() throws Exception {
+        byte[] data = randomBytes(3 * 1024 * 1024, 1);
+        server.serve(data, "\"v1\"");
+        server.dropRandomly(6, 11);
+
+        OtaDownloader.Result result = downloader()
+                .setExpectedSha256(sha256(data))
+                .build()
+                .download();
+
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertEquals(sha256(data), result.sha256);
+        assertEquals(data.length, result.size);
+        assertEquals(7, result.requests);
+        // Every reconnect picked up where the previous response stopped
+        List<Long> starts = server.rangeStarts();
+        assertEquals(0L, (long) starts.get(0));
+        for (int i = 1; i < starts.size(); i++) {
+            assertTrue("range went backwards: " + starts, starts.get(i) > starts.get(i - 1));
+        }
+        assertEquals(data.length, server.bytesServed());
+        assertFalse(new File(target.getPath() + OtaDownloader.PART_SUFFIX).exists());
+        assertFalse(new File(target.getPath() + OtaDownloader.STATE_SUFFIX).exists());
+    }
+
+    @Test
+    public void resumesFromSidecarInANewDownloader() throws Exception {
+        byte[] data = randomBytes(2 * 1024 * 1024, 2);
+        server.serve(data, "\"v1\"");
+        server.dropAfterTotal(1_300_000);
+
+        try {
+            downloader().setMaxStalledAttempts(2).build().download();
+            fail("expected the download to give up");
+        } catch (IOException expected) {
+            // the server stopped sending
+        }
+        File part = new File(target.getPath() + OtaDownloader.PART_SUFFIX);
+        assertTrue(part.exists());
+        assertTrue(new File(target.getPath() + OtaDownloader.STATE_SUFFIX).exists());
+
+        // As if the service restarted: a fresh instance picks up the sidecar
+        server.dropAfterTotal(Long.MAX_VALUE);
+        int requestsBefore = server.rangeStarts().size();
+        OtaDownloader.Result result = downloader().setExpectedSha256(sha256(data)).build().download();
+
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertEquals(sha256(data), result.sha256);
+        assertEquals(1_300_000L, (long) server.rangeStarts().get(requestsBefore));
+        assertEquals("\"v1\"", server.lastIfRange());
+        assertEquals(data.length, server.bytesServed());
+    }
+
+    @Test
+    public void parallelRangesProduceTheSameFile() throws Exception {
+        byte[] data = randomBytes(4 * 1024 * 1024 + 17, 3);
+        server.serve(data, "\"v1\"");
+        server.dropRandomly(8, 12);
+
+        OtaDownloader.Result result = downloader()
+                .setParallelRanges(4, 1024 * 1024)
+                .setExpectedSha256(sha256(data))
+                .build()
+                .download();
+
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertEquals(sha256(data), result.sha256);
+        // Only the first request starts at zero; the other ranges start at the split points
+        List<Long> starts = server.rangeStarts();
+        assertEquals(1, Collections.frequency(starts, 0L));
+        long rangeSize = (data.length + 3) / 4;
+        for (int i = 1; i < 4; i++) {
+            assertTrue("no request for range " + i + ": " + starts, starts.contains(i * rangeSize));
+        }
+        assertEquals(starts.size(), result.requests);
+    }
+
+    @Test
+    public void serverIgnoringRangesStillYieldsTheFile() throws Exception {
+        byte[] data = randomBytes(1024 * 1024, 4);
+        server.serve(data, "\"v1\"");
+        server.ignoreRanges();
+        server.dropRandomly(3, 13);
+
+        OtaDownloader.Result result = downloader()
+                .setParallelRanges(4, 1024)
+                .setExpectedSha256(sha256(data))
+                .build()
+                .download();
+
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertEquals(sha256(data), result.sha256);
+    }
+
+    @Test
+    public void changedFileOnServerRestartsFromZero() throws Exception {
+        byte[] oldData = randomBytes(1024 * 1024, 5);
+        server.serve(oldData, "\"v1\"");
+        server.dropAfterTotal(400_000);
+        try {
+            downloader().setMaxStalledAttempts(1).build().download();
+            fail("expected the download to give up");
+        } catch (IOException expected) {
+            // partial download left behind
+        }
+
+        byte[] newData = randomBytes(1024 * 1024 + 5, 6);
+        server.serve(newData, "\"v2\"");
+        server.dropAfterTotal(Long.MAX_VALUE);
+        OtaDownloader.Result result = downloader().setExpectedSha256(sha256(newData)).build().download();
+
+        assertArrayEquals(newData, Files.readAllBytes(target.toPath()));
+        assertEquals(sha256(newData), result.sha256);
+    }
+
+    @Test
+    public void oversizedArtifactFailsAndCleansUp() throws Exception {
+        server.serve(randomBytes(300_000, 7), "\"v1\"");
+
+        try {
+            downloader().setMaxBytes(200_000).build().download();
+            fail("expected the size cap to trip");
+        } catch (FirmwareDownloadException e) {
+            assertEquals(FirmwareDownloadException.CODE_FILE_TOO_LARGE, e.getErrorCode());
+        }
+        assertFalse(target.exists());
+        assertFalse(new File(target.getPath() + OtaDownloader.PART_SUFFIX).exists());
+        assertFalse(new File(target.getPath() + OtaDownloader.STATE_SUFFIX).exists());
+    }
+
+    @Test
+    public void hashMismatchFailsAndCleansUp() throws Exception {
+        byte[] data = randomBytes(500_000, 8);
+        server.serve(data, "\"v1\"");
+        server.dropRandomly(2, 14);
+
+        try {
+            downloader().setExpectedSha256(sha256(randomBytes(16, 9))).build().download();
+            fail("expected verification to fail");
+        } catch (FirmwareDownloadException e) {
+            assertEquals(FirmwareDownloadException.CODE_VERIFY_FAILED, e.getErrorCode());
+        }
+        assertFalse(target.exists());
+        assertFalse(new File(target.getPath() + OtaDownloader.PART_SUFFIX).exists());
+        assertFalse(new File(target.getPath() + OtaDownloader.STATE_SUFFIX).exists());
+    }
+
+    @Test
+    public void flakyLinkTransfersEachByteOnce() throws Exception {
+        byte[] data = randomBytes(1024 * 1024, 10);
+        server.serve(data, "\"v1\"");
+        server.dropRandomly(5, 15);
+
+        OtaDownloader.Result result = downloader().setExpectedSha256(sha256(data)).build().download();
+
+        assertEquals(data.length, server.bytesServed());
+        assertEquals(sha256(data), result.sha256);
+    }
+
+    /**
+     * Bytes served and wall time for an 8MB artifact with ten dropped connections, against the
+     * estimate for restarting from zero. Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkBytesTransferredOverAFlakyLink() throws Exception {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        byte[] data = randomBytes(8 * 1024 * 1024, 10);
+        server.serve(data, "\"v1\"");
+        int drops = 10;
+        server.dropRandomly(drops, 15);
+
+        long started = System.nanoTime();
+        OtaDownloader.Result result = downloader().setExpectedSha256(sha256(data)).build().download();
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        // Restarting from zero after each drop costs on average half the file per drop
+        long restartEstimate = data.length + (long) drops * data.length / 2;
+        System.out.println(String.format(Locale.US, "OtaDownloader %d bytes, %d drops: %d bytes served in %d requests,"
+                        + " %d ms (restart-from-zero would transfer ~%d bytes)",
+                data.length, drops, server.bytesServed(), result.requests, elapsedMs, restartEstimate));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private OtaDownloader.Builder downloader() {
+        return new OtaDownloader.Builder(server.url(), target)
+                .setRetryBackoff(1, 5)
+                .setTimeouts(5000, 5000);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return OtaDownloader.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    /**
+     * Minimal HTTP/1.1 file server with Range / If-Range support that can cut responses short
+     * at random offsets, like a phone hotspot going out of range
+     */
+    private static final class DroppingServer implements AutoCloseable {
+        private final ServerSocket socket;
+        private final Thread acceptor;
+        private final List<Long> rangeStarts = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicLong bytesServed = new AtomicLong();
+
+        private volatile byte[] data = new byte[0];
+        private volatile String etag;
+        private volatile boolean honorRanges = true;
+        private volatile String lastIfRange;
+        // Drop state, guarded by this
+        private Random dropRandom = new Random(0);
+        private int dropsLeft;
+        private long totalBudget = Long.MAX_VALUE;
+
+        DroppingServer() throws IOException {
+            socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            acceptor = new Thread(this::acceptLoop, "DroppingServer");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + socket.getLocalPort() + "/firmware.bin";
+        }
+
+        void serve(byte[] data, String etag) {
+            this.data = data;
+            this.etag = etag;
+        }
+
+        void ignoreRanges() {
+            honorRanges = false;
+        }
+
+        /** Cut the next {@code drops} responses short, each at a random point */
+        synchronized void dropRandomly(int drops, long seed) {
+            dropsLeft = drops;
+            dropRandom = new Random(seed);
+        }
+
+        /** Stop sending once this many body bytes have been served in total */
+        synchronized void dropAfterTotal(long bytes) {
+            totalBudget = bytes;
+        }
+
+        List<Long> rangeStarts() {
+            synchronized (rangeStarts) {
+                return new ArrayList<>(rangeStarts);
+            }
+        }
+
+        long bytesServed() {
+            return bytesServed.get();
+        }
+
+        String lastIfRange() {
+            return lastIfRange;
+        }
+
+        private void acceptLoop() {
+            while (!socket.isClosed()) {
+                try {
+                    Socket client = socket.accept();
+                    Thread handler = new Thread(() -> handle(client), "DroppingServer-conn");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void handle(Socket client) {
+            try (Socket s = client) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.ISO_8859_1));
+                String requestLine = in.readLine();
+                if (requestLine == null) {
+                    return;
+                }
+                String range = null;
+                String ifRange = null;
+                String line;
+                while ((line = in.readLine()) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    String name = line.substring(0, colon).trim();
+                    String value = line.substring(colon + 1).trim();
+                    if (name.equalsIgnoreCase("Range")) {
+                        range = value;
+                    } else if (name.equalsIgnoreCase("If-Range")) {
+                        ifRange = value;
+                    }
+                }
+                if (ifRange != null) {
+                    lastIfRange = ifRange;
+                }
+
+                byte[] body = data;
+                long from = 0;
+                long to = body.length - 1;
+                boolean partial = honorRanges && range != null && (ifRange == null || ifRange.equals(etag));
+                if (partial) {
+                    String spec = range.substring("bytes=".length());
+                    int dash = spec.indexOf('-');
+                    from = Long.parseLong(spec.substring(0, dash));
+                    if (dash < spec.length() - 1) {
+                        to = Math.min(to, Long.parseLong(spec.substring(dash + 1)));
+                    }
+                }
+                rangeStarts.add(from);
+
+                StringBuilder head = new StringBuilder();
+                head.append(partial ? "HTTP/1.1 206 Partial Content\r\n" : "HTTP/1.1 200 OK\r\n");
+                head.append("Content-Length: ").append(to - from + 1).append("\r\n");
+                if (partial) {
+                    head.append("Content-Range: bytes ").append(from).append('-').append(to)
+                            .append('/').append(body.length).append("\r\n");
+                }
+                if (honorRanges) {
+                    head.append("Accept-Ranges: bytes\r\n");
+                }
+                head.append("ETag: ").append(etag).append("\r\n");
+                head.append("Connection: close\r\n\r\n");
+                OutputStream out = s.getOutputStream();
+                out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+                long length = to - from + 1;
+                long send = allowance(length);
+                int offset = (int) from;
+                while (send > 0) {
+                    int n = (int) Math.min(16 * 1024, send);
+                    out.write(body, offset, n);
+                    offset += n;
+                    send -= n;
+                    bytesServed.addAndGet(n);
+                }
+                out.flush();
+            } catch (IOException e) {
+                // client went away
+            }
+        }
+
+        /** How much of a response of this length to send before dropping the connection */
+        private synchronized long allowance(long length) {
+            long send = Math.min(length, totalBudget - bytesServed.get());
+            if (dropsLeft > 0 && send > 1) {
+                dropsLeft--;
+                send = 1 + (long) (dropRandom.nextDouble() * (send - 1));
+            }
+            return Math.max(0, send);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mentra.asg_client.io.server.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.mentra.asg_client.logging.ConsoleLogger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DefaultCacheManagerTest {
+
+    private static final long TTL_MS = 60_000;
+
+    private final DefaultCacheManager cache = new DefaultCacheManager(10_000, new ConsoleLogger());
+
+    @After
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    public void hitsMissesAndExpiry() {
+        byte[] value = new byte[100];
+        cache.put("a", value, TTL_MS, 0);
+
+        assertSame(value, cache.get("a", 1_000));
+        assertNull(cache.get("b", 1_000));
+        assertNull(cache.get("a", TTL_MS + 1));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedToStayWithinBudget() {
+        cache.put("a", new byte[3_000], TTL_MS, 0);
+        cache.put("b", new byte[3_000], TTL_MS, 0);
+        cache.put("c", new byte[3_000], TTL_MS, 0);
+        // Touch "a" so "b" is the least recently used
+        assertNotNull(cache.get("a", 1));
+
+        cache.put("d", new byte[3_000], TTL_MS, 2);
+
+        assertNull(cache.get("b", 3));
+        assertNotNull(cache.get("a", 3));
+        assertNotNull(cache.get("d", 3));
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.getSizeBytes() <= cache.getMaxSizeBytes());
+    }
+
+    @Test
+    public void replacingAnEntryUpdatesItsWeight() {
+        cache.put("a", new byte[5_000], TTL_MS, 0);
+        long before = cache.getSizeBytes();
+
+        cache.put("a", "short", TTL_MS, 0);
+
+        assertEquals(1, cache.size());
+        assertEquals(before - 5_000 + 10, cache.getSizeBytes());
+    }
+
+    @Test
+    public void valuesLargerThanTheBudgetAreNotCached() {
+        cache.put("small", new byte[10], TTL_MS, 0);
+        cache.put("huge", new byte[20_000], TTL_MS, 0);
+
+        assertNull(cache.get("huge", 0));
+        assertNotNull(cache.get("small", 0));
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void cleanupDropsExpiredEntries() {
+        cache.put("a", "x", 1_000, 0);
+        cache.put("b", "y", TTL_MS, 0);
+
+        assertEquals(1, cache.cleanupExpiredEntries(5_000));
+        assertEquals(1, cache.size());
+        assertTrue(cache.getStats().contains("Expirations: 1"));
+    }
+}
@@ -0,0 +1,57 @@
+package com.mentra.asg_client.io.server.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.mentra.asg_client.logging.ConsoleLogger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DefaultRateLimiterTest {
+
+    private final DefaultRateLimiter limiter = new DefaultRateLimiter(3, 60_000, new ConsoleLogger());
+
+    @After
+    public void tearDown() {
+        limiter.shutdown();
+    }
+
+    @Test
+    public void allowsBurstUpToLimitThenRejects() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.isAllowed("phone", 0));
+            limiter.recordRequest("phone", 0);
+        }
+
+        assertFalse(limiter.isAllowed("phone", 0));
+        assertTrue(limiter.isAllowed("other-phone", 0));
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void tokensRefillOverTheWindow() {
+        for (int i = 0; i < 3; i++) {
+            limiter.recordRequest("phone", 0);
+        }
+
+        // One token every 20s at 3 per minute
+        assertFalse(limiter.isAllowed("phone", 19_999));
+        assertTrue(limiter.isAllowed("phone", 20_000));
+        limiter.recordRequest("phone", 20_000);
+        assertFalse(limiter.isAllowed("phone", 20_000));
+        assertTrue(limiter.isAllowed("phone", 80_000));
+    }
+
+    @Test
+    public void idleBucketsAreCleanedUp() {
+        limiter.recordRequest("a", 0);
+        limiter.recordRequest("b", 50_000);
+
+        limiter.cleanupIdleBuckets(60_000);
+
+        assertEquals(1, limiter.getClientCount());
+        assertTrue(limiter.isAllowed("a", 60_000));
+    }
+}
@@ -0,0 +1,439 @@
+package com.mentra.asg_client.io.server.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.mentra.asg_client.io.file.core.FileManagerImpl;
+import com.mentra.asg_client.io.server.core.BoundedAsyncRunner;
+import com.mentra.asg_client.io.server.core.DefaultCacheManager;
+import com.mentra.asg_client.io.server.core.DefaultNetworkProvider;
+import com.mentra.asg_client.io.server.core.DefaultRateLimiter;
+import com.mentra.asg_client.io.server.core.DefaultServerConfig;
+import com.mentra.asg_client.io.server.core.RouteMetrics;
+import com.mentra.asg_client.logging.Logger;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Drives a real AsgCameraServer over loopback sockets with many concurrent connections.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class AsgCameraServerLoadTest {
+
+    private static final int CLIENT_TIMEOUT_MS = 15_000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Logger logger = new QuietLogger();
+    private final List<Socket> sockets = new ArrayList<>();
+    private AsgCameraServer server;
+    private DefaultRateLimiter rateLimiter;
+
+    @After
+    public void tearDown() {
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+        if (rateLimiter != null) {
+            rateLimiter.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectsWith503OnceWorkersAndQueueAreFull() throws Exception {
+        startServer(2, 2, 10_000);
+
+        // Two connections that never send a request hold both workers
+        Socket silent1 = connect();
+        Socket silent2 = connect();
+        awaitPool(2, 0);
+        Socket queued1 = connect();
+        Socket queued2 = connect();
+        sendGet(queued1, "/api/health", false);
+        sendGet(queued2, "/api/health", false);
+        awaitPool(2, 2);
+
+        Socket rejected = connect();
+        HttpReply busy = get(rejected, "/api/health", false);
+        assertEquals(503, busy.status);
+        assertEquals("1", busy.headers.get("retry-after"));
+        assertTrue(busy.body.contains("\"status\":\"error\""));
+        assertEquals(1, server.getWorkerPool().getRejectedConnections());
+
+        // Once the silent ones go away the queued requests are served
+        silent1.close();
+        silent2.close();
+        assertEquals(200, readReply(queued1).status);
+        assertEquals(200, readReply(queued2).status);
+    }
+
+    @Test
+    public void idleKeepAliveConnectionsYieldToQueuedOnes() throws Exception {
+        int keepAliveTimeout = 10_000;
+        startServer(2, 16, keepAliveTimeout);
+
+        Socket idle1 = connect();
+        Socket idle2 = connect();
+        assertEquals(200, get(idle1, "/api/health", true).status);
+        assertEquals(200, get(idle2, "/api/health", true).status);
+        awaitPool(2, 0);
+
+        long start = System.currentTimeMillis();
+        List<Socket> others = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Socket socket = connect();
+            sendGet(socket, "/api/health", false);
+            others.add(socket);
+        }
+        for (Socket socket : others) {
+            assertEquals(200, readReply(socket).status);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("queued clients waited " + elapsed + "ms", elapsed < keepAliveTimeout / 2);
+        assertEquals(-1, idle1.getInputStream().read());
+        assertEquals(-1, idle2.getInputStream().read());
+        assertEquals(2, server.getWorkerPool().getIdleConnectionsReleased());
+    }
+
+    @Test
+    public void keepAliveConnectionServesSeveralRequests() throws Exception {
+        startServer(2, 4, 10_000);
+
+        Socket socket = connect();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, get(socket, "/api/health", true).status);
+        }
+        assertEquals(1, server.getWorkerPool().getAcceptedConnections());
+    }
+
+    @Test
+    public void hundredsOfConcurrentConnectionsStayWithinThePool() throws Exception {
+        startServer(8, 32, 10_000);
+
+        LoadResult result = runLoad(300, 0);
+
+        assertEquals(300, result.ok + result.busy + result.dropped);
+        assertTrue(result.ok > 0);
+        BoundedAsyncRunner pool = server.getWorkerPool();
+        assertTrue("peak workers " + pool.getPeakWorkers(), pool.getPeakWorkers() <= 8);
+        assertEquals(300, pool.getAcceptedConnections());
+        assertEquals(result.busy + result.dropped, pool.getRejectedConnections());
+        assertTrue(pool.getMaxQueueDepth() <= 32);
+        assertEquals(result.ok, server.getRouteMetrics().get("/api/health").count);
+    }
+
+    @Test
+    public void statusReportsRouteLatencyAndPoolCounters() throws Exception {
+        startServer(4, 8, 10_000);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, get(connect(), "/api/health", false).status);
+        }
+        HttpReply status = get(connect(), "/api/status", false);
+        assertEquals(200, status.status);
+
+        JSONObject data = new JSONObject(status.body).getJSONObject("data");
+        assertEquals(4, data.getInt("workers_max"));
+        assertEquals(6, data.getLong("connections_accepted"));
+        assertEquals(0, data.getLong("connections_rejected"));
+        JSONObject health = data.getJSONObject("routes").getJSONObject("/api/health");
+        assertEquals(5, health.getLong("count"));
+        assertEquals(0, health.getLong("errors"));
+        RouteMetrics.RouteStats stats = server.getRouteMetrics().get("/api/health");
+        assertTrue(stats.p95Ms <= stats.maxMs);
+    }
+
+    /**
+     * 400 keep-alive clients holding their connection for 1s, against the bounded pool and
+     * NanoHTTPD's thread-per-connection runner. Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkBoundedPoolAgainstThreadPerConnection() throws Exception {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        // Browsers and sync tools keep their connections open after a request
+        StringBuilder report = new StringBuilder("AsgCameraServer 400 concurrent keep-alive clients holding 1s:");
+        for (boolean bounded : new boolean[]{false, true}) {
+            createServer(8, 32, 10_000);
+            if (!bounded) {
+                server.setAsyncRunner(new NanoHTTPD.DefaultAsyncRunner());
+            }
+            server.startServer();
+            LoadResult result = runLoad(400, 1000);
+            int peakThreads = bounded ? server.getWorkerPool().getPeakWorkers() : result.peakServerThreads;
+            report.append(String.format(Locale.US,
+                    " %s: peak server threads %d, ok %d, 503 %d, dropped %d, p50 %dms, p95 %dms, %dms total;",
+                    bounded ? "bounded pool" : "thread per connection", peakThreads,
+                    result.ok, result.busy, result.dropped, result.p50Ms, result.p95Ms, result.elapsedMs));
+            if (bounded) {
+                BoundedAsyncRunner pool = server.getWorkerPool();
+                report.append(String.format(Locale.US, " queue wait avg %dms max %dms, idle connections released %d;",
+                        pool.getAverageQueueWaitMs(), pool.getMaxQueueWaitMs(), pool.getIdleConnectionsReleased()));
+            }
+            server.stopServer();
+            server = null;
+            rateLimiter.shutdown();
+            rateLimiter = null;
+        }
+        System.out.println(report);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void startServer(int workers, int queued, int keepAliveTimeout) throws IOException {
+        createServer(workers, queued, keepAliveTimeout);
+        server.startServer();
+        assertTrue(server.wasStarted());
+    }
+
+    private void createServer(int workers, int queued, int keepAliveTimeout) throws IOException {
+        DefaultServerConfig config = new DefaultServerConfig.Builder()
+                .port(0)
+                .serverName("Load test server")
+                .maxWorkerThreads(workers)
+                .maxQueuedConnections(queued)
+                .keepAliveTimeout(keepAliveTimeout)
+                .build();
+        rateLimiter = new DefaultRateLimiter(1_000_000, 60_000, logger);
+        server = new AsgCameraServer(config, new DefaultNetworkProvider(logger), new DefaultCacheManager(logger),
+                rateLimiter, logger, new FileManagerImpl(tmp.newFolder(), logger));
+    }
+
+    /**
+     * Fire one GET /api/health per client at once
+     * @param holdMs If positive, clients ask for keep-alive and hold the connection open this long
+     */
+    private LoadResult runLoad(int clients, long holdMs) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        CountDownLatch ready = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            results.add(pool.submit(() -> {
+                ready.countDown();
+                go.await();
+                long start = System.nanoTime();
+                try (Socket socket = new Socket("127.0.0.1", server.getListeningPort())) {
+                    socket.setSoTimeout(CLIENT_TIMEOUT_MS);
+                    int status = get(socket, "/api/health", holdMs > 0).status;
+                    long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                    if (status == 200 && holdMs > 0) {
+                        Thread.sleep(holdMs);
+                    }
+                    // Encode the status with the latency so one Future carries both
+                    return status * 1_000_000L + elapsedMs;
+                } catch (IOException e) {
+                    return -1L;
+                }
+            }));
+        }
+        ready.await();
+        ServerThreadSampler sampler = new ServerThreadSampler();
+        sampler.start();
+        long start = System.currentTimeMillis();
+        go.countDown();
+
+        LoadResult result = new LoadResult();
+        List<Long> latencies = new ArrayList<>();
+        for (Future<Long> future : results) {
+            long value = future.get(60, TimeUnit.SECONDS);
+            if (value < 0) {
+                result.dropped++;
+            } else if (value / 1_000_000 == 200) {
+                result.ok++;
+                latencies.add(value % 1_000_000);
+            } else if (value / 1_000_000 == 503) {
+                result.busy++;
+            } else {
+                throw new AssertionError("Unexpected status " + value / 1_000_000);
+            }
+        }
+        result.elapsedMs = System.currentTimeMillis() - start;
+        sampler.interrupt();
+        sampler.join();
+        pool.shutdown();
+
+        result.peakServerThreads = sampler.peak;
+        Long[] sorted = latencies.toArray(new Long[0]);
+        Arrays.sort(sorted);
+        if (sorted.length > 0) {
+            result.p50Ms = sorted[sorted.length / 2];
+            result.p95Ms = sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.95))];
+        }
+        return result;
+    }
+
+    private void awaitPool(int activeWorkers, int queued) throws InterruptedException {
+        BoundedAsyncRunner pool = server.getWorkerPool();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getActiveWorkers() != activeWorkers || pool.getQueueDepth() != queued) {
+            assertTrue("pool never reached " + activeWorkers + " active, " + queued + " queued",
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getListeningPort());
+        socket.setSoTimeout(CLIENT_TIMEOUT_MS);
+        sockets.add(socket);
+        return socket;
+    }
+
+    private static HttpReply get(Socket socket, String path, boolean keepAlive) throws IOException {
+        sendGet(socket, path, keepAlive);
+        return readReply(socket);
+    }
+
+    private static void sendGet(Socket socket, String path, boolean keepAlive) throws IOException {
+        String request = "GET " + path + " HTTP/1.1\r\n" +
+                "Host: glasses\r\n" +
+                "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n" +
+                "\r\n";
+        OutputStream out = socket.getOutputStream();
+        out.write(request.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static HttpReply readReply(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed before the response head");
+            }
+            head.write(b);
+            byte[] bytes = head.toByteArray();
+            int n = bytes.length;
+            if (n >= 4 && bytes[n - 4] == '\r' && bytes[n - 3] == '\n' && bytes[n - 2] == '\r' && bytes[n - 1] == '\n') {
+                break;
+            }
+        }
+        String[] lines = head.toString("US-ASCII").split("\r\n");
+        HttpReply reply = new HttpReply();
+        reply.status = Integer.parseInt(lines[0].split(" ")[1]);
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                reply.headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.US),
+                        lines[i].substring(colon + 1).trim());
+            }
+        }
+        int length = Integer.parseInt(reply.headers.getOrDefault("content-length", "0"));
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) {
+                throw new IOException("Connection closed mid-body");
+            }
+            read += n;
+        }
+        reply.body = new String(body, StandardCharsets.UTF_8);
+        return reply;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    private static final class HttpReply {
+        int status;
+        final Map<String, String> headers = new HashMap<>();
+        String body;
+    }
+
+    private static final class LoadResult {
+        int ok;
+        int busy;
+        int dropped;
+        int peakServerThreads;
+        long p50Ms;
+        long p95Ms;
+        long elapsedMs;
+    }
+
+    /** Samples how many thread-per-connection request threads NanoHTTPD's default runner has */
+    private static final class ServerThreadSampler extends Thread {
+        volatile int peak;
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                int count = 0;
+                for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                    String name = thread.getName();
+                    if (name.startsWith("NanoHttpd Request Processor")) {
+                        count++;
+                    }
+                }
+                peak = Math.max(peak, count);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class QuietLogger implements Logger {
+        @Override
+        public void debug(String tag, String message) {
+        }
+
+        @Override
+        public void info(String tag, String message) {
+        }
+
+        @Override
+        public void warn(String tag, String message) {
+        }
+
+        @Override
+        public void error(String tag, String message) {
+        }
+
+        @Override
+        public void error(String tag, String message, Throwable throwable) {
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.mentra.asg_client.io.server.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class FileChannelInputStreamTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void readsOnlyTheRequestedWindow() throws IOException {
+        byte[] content = sampleContent(100_000);
+        File file = writeFile(content);
+
+        try (InputStream in = new FileChannelInputStream(file, 40_000, 25_000)) {
+            assertEquals(25_000, in.available());
+            assertArrayEquals(Arrays.copyOfRange(content, 40_000, 65_000), readAll(in));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void fullFileAndSingleByteReads() throws IOException {
+        byte[] content = sampleContent(10);
+        File file = writeFile(content);
+
+        try (InputStream in = new FileChannelInputStream(file, 0, content.length)) {
+            assertEquals(content[0] & 0xff, in.read());
+            assertEquals(3, in.skip(3));
+            assertArrayEquals(Arrays.copyOfRange(content, 4, 10), readAll(in));
+        }
+    }
+
+    private File writeFile(byte[] content) throws IOException {
+        File file = tmp.newFile("media.bin");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    private static byte[] sampleContent(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 + 7);
+        }
+        return content;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
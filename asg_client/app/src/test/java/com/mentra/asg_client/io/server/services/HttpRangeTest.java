@@ -0,0 +1,95 @@
+package com.mentra.asg_client.io.server.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HttpRangeTest {
+
+    private static final long LENGTH = 1000;
+
+    @Test
+    public void parse_noHeaderServesFullFile() {
+        assertNull(HttpRange.parse(null, LENGTH));
+    }
+
+    @Test
+    public void parse_closedRange() {
+        HttpRange range = HttpRange.parse("bytes=100-199", LENGTH);
+        assertEquals(100, range.getStart());
+        assertEquals(199, range.getEnd());
+        assertEquals(100, range.getLength());
+        assertEquals("bytes 100-199/1000", range.toContentRange(LENGTH));
+    }
+
+    @Test
+    public void parse_openEndedRangeForResume() {
+        HttpRange range = HttpRange.parse("bytes=600-", LENGTH);
+        assertEquals(600, range.getStart());
+        assertEquals(999, range.getEnd());
+    }
+
+    @Test
+    public void parse_endBeyondFileIsClamped() {
+        HttpRange range = HttpRange.parse("bytes=900-5000", LENGTH);
+        assertEquals(999, range.getEnd());
+        assertEquals(100, range.getLength());
+    }
+
+    @Test
+    public void parse_suffixRange() {
+        HttpRange range = HttpRange.parse("bytes=-100", LENGTH);
+        assertEquals(900, range.getStart());
+        assertEquals(999, range.getEnd());
+
+        HttpRange whole = HttpRange.parse("bytes=-5000", LENGTH);
+        assertEquals(0, whole.getStart());
+    }
+
+    @Test
+    public void parse_unsatisfiable() {
+        assertSame(HttpRange.UNSATISFIABLE, HttpRange.parse("bytes=1000-", LENGTH));
+        assertSame(HttpRange.UNSATISFIABLE, HttpRange.parse("bytes=-0", LENGTH));
+        assertSame(HttpRange.UNSATISFIABLE, HttpRange.parse("bytes=0-", 0));
+    }
+
+    @Test
+    public void parse_malformedOrMultiRangeFallsBackToFullFile() {
+        assertNull(HttpRange.parse("items=0-10", LENGTH));
+        assertNull(HttpRange.parse("bytes=abc-", LENGTH));
+        assertNull(HttpRange.parse("bytes=20-10", LENGTH));
+        assertNull(HttpRange.parse("bytes=0-10,20-30", LENGTH));
+        assertNull(HttpRange.parse("bytes=-", LENGTH));
+    }
+
+    @Test
+    public void ifRange_matchesCurrentEtagOrDate() {
+        long modified = 1_700_000_000_123L;
+        String etag = HttpRange.etagFor(LENGTH, modified);
+
+        assertTrue(HttpRange.ifRangeMatches(null, etag, modified));
+        assertTrue(HttpRange.ifRangeMatches(etag, etag, modified));
+        assertFalse(HttpRange.ifRangeMatches(HttpRange.etagFor(LENGTH + 1, modified), etag, modified));
+        assertFalse(HttpRange.ifRangeMatches("W/" + etag, etag, modified));
+
+        String date = HttpRange.formatHttpDate(modified);
+        assertTrue(HttpRange.ifRangeMatches(date, etag, modified));
+        assertFalse(HttpRange.ifRangeMatches(HttpRange.formatHttpDate(modified + 5000), etag, modified));
+        assertFalse(HttpRange.ifRangeMatches("garbage", etag, modified));
+    }
+
+    @Test
+    public void notModified_comparesEtagList() {
+        String etag = HttpRange.etagFor(LENGTH, 42);
+
+        assertFalse(HttpRange.notModified(null, etag));
+        assertTrue(HttpRange.notModified(etag, etag));
+        assertTrue(HttpRange.notModified("\"other\", W/" + etag, etag));
+        assertTrue(HttpRange.notModified("*", etag));
+        assertFalse(HttpRange.notModified("\"other\"", etag));
+    }
+}
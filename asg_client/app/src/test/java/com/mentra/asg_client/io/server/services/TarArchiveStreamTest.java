@@ -0,0 +1,389 @@
+package com.mentra.asg_client.io.server.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+public class TarArchiveStreamTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void archivesFilesWithIndexAndChecksum() throws IOException {
+        int[] sizes = {0, 1, 511, 512, 513, 70_000};
+        List<TarArchiveStream.Entry> entries = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] content = sampleContent(sizes[i], i);
+            contents.add(content);
+            entries.add(TarArchiveStream.Entry.of(i, "IMG_" + i + "/base.jpg", writeFile(content), "image/jpeg",
+                    1_700_000_000_123L));
+        }
+
+        byte[] archive = readAll(new TarArchiveStream(entries, null));
+        List<Member> members = parse(archive);
+
+        assertEquals(sizes.length + 1, members.size());
+        for (int i = 0; i < sizes.length; i++) {
+            Member member = members.get(i);
+            assertEquals("IMG_" + i + "/base.jpg", member.name);
+            assertArrayEquals(contents.get(i), member.data);
+            assertEquals(String.valueOf(i), member.pax.get(TarArchiveStream.PAX_INDEX));
+            assertEquals(TarArchiveStream.crcHex(crc(contents.get(i))), member.pax.get(TarArchiveStream.PAX_CRC32));
+            assertEquals("image/jpeg", member.pax.get(TarArchiveStream.PAX_MIME_TYPE));
+            assertEquals("1700000000.123", member.pax.get("mtime"));
+            assertEquals(crc(contents.get(i)), entries.get(i).getCrc32());
+        }
+        Member manifest = members.get(sizes.length);
+        assertEquals(TarArchiveStream.MANIFEST_NAME, manifest.name);
+        String json = new String(manifest.data, StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("{\"index\":5,\"file\":\"IMG_5/base.jpg\",\"success\":true,\"size\":70000,\"crc32\":\""
+                + TarArchiveStream.crcHex(crc(contents.get(5))) + "\"}"));
+        assertEquals(0, archive.length % TarArchiveStream.BLOCK_SIZE);
+    }
+
+    @Test
+    public void unsendableFilesAreOnlyInTheManifest() throws IOException {
+        byte[] content = sampleContent(1000, 1);
+        List<TarArchiveStream.Entry> entries = Arrays.asList(
+                TarArchiveStream.Entry.failed(7, "VID_1/base.mp4", "File is not ready for download"),
+                TarArchiveStream.Entry.of(8, "IMG_1/base.jpg", writeFile(content), "image/jpeg", 0),
+                TarArchiveStream.Entry.of(9, "IMG_2/base.jpg", new File(tmp.getRoot(), "missing.jpg"), "image/jpeg", 0));
+
+        List<Member> members = parse(readAll(new TarArchiveStream(entries, null)));
+
+        assertEquals(2, members.size());
+        assertEquals("IMG_1/base.jpg", members.get(0).name);
+        assertEquals("8", members.get(0).pax.get(TarArchiveStream.PAX_INDEX));
+        String json = new String(members.get(1).data, StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("{\"index\":7,\"file\":\"VID_1/base.mp4\",\"success\":false,"
+                + "\"message\":\"File is not ready for download\"}"));
+        assertTrue(json, json.contains("{\"index\":9,\"file\":\"IMG_2/base.jpg\",\"success\":false,"
+                + "\"message\":\"File not accessible\"}"));
+        assertEquals("File not accessible", entries.get(2).getError());
+    }
+
+    @Test
+    public void longAndNonAsciiNamesUsePaxPath() throws IOException {
+        String longName = "VID_1/" + repeat("segment_", 20) + "base.mp4";
+        String unicodeName = "IMG_1/café \"quoted\".jpg";
+        List<TarArchiveStream.Entry> entries = Arrays.asList(
+                TarArchiveStream.Entry.of(0, longName, writeFile(sampleContent(10, 0)), "video/mp4", 0),
+                TarArchiveStream.Entry.of(1, unicodeName, writeFile(sampleContent(10, 1)), "image/jpeg", 0));
+
+        List<Member> members = parse(readAll(new TarArchiveStream(entries, null)));
+
+        assertEquals(longName, members.get(0).name);
+        assertEquals(unicodeName, members.get(1).name);
+        String json = new String(members.get(2).data, StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"file\":\"IMG_1/café \\\"quoted\\\".jpg\""));
+    }
+
+    @Test
+    public void fileShrinkingMidStreamKeepsTheArchiveReadable() throws IOException {
+        byte[] content = sampleContent(50_000, 3);
+        File file = writeFile(content);
+        byte[] other = sampleContent(2000, 4);
+        List<TarArchiveStream.Entry> entries = Arrays.asList(
+                TarArchiveStream.Entry.of(0, "VID_1/base.mp4", file, "video/mp4", 0),
+                TarArchiveStream.Entry.of(1, "IMG_1/base.jpg", writeFile(other), "image/jpeg", 0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarArchiveStream in = new TarArchiveStream(entries, null)) {
+            byte[] buffer = new byte[8192];
+            // Headers and the first chunk of data
+            int n = in.read(buffer);
+            out.write(buffer, 0, n);
+            n = in.read(buffer);
+            out.write(buffer, 0, n);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(20_000);
+            }
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+
+        List<Member> members = parse(out.toByteArray());
+        assertEquals(3, members.size());
+        assertEquals(50_000, members.get(0).data.length);
+        assertNotEquals(members.get(0).pax.get(TarArchiveStream.PAX_CRC32),
+                TarArchiveStream.crcHex(crc(members.get(0).data)));
+        assertArrayEquals(other, members.get(1).data);
+        String json = new String(members.get(2).data, StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"message\":\"File changed while syncing\""));
+    }
+
+    @Test
+    public void prefetchedChecksumsProduceTheSameArchive() throws Exception {
+        List<TarArchiveStream.Entry> plain = new ArrayList<>();
+        List<TarArchiveStream.Entry> prefetched = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            File file = writeFile(sampleContent(10_000 + i * 997, i));
+            plain.add(TarArchiveStream.Entry.of(i, "IMG_" + i + "/base.jpg", file, "image/jpeg", 1000L * i));
+            prefetched.add(TarArchiveStream.Entry.of(i, "IMG_" + i + "/base.jpg", file, "image/jpeg", 1000L * i));
+        }
+        plain.set(5, TarArchiveStream.Entry.failed(5, "IMG_5/base.jpg", "File not found"));
+        prefetched.set(5, TarArchiveStream.Entry.failed(5, "IMG_5/base.jpg", "File not found"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            byte[] expected = readAll(new TarArchiveStream(plain, null));
+            byte[] actual = readAll(new TarArchiveStream(prefetched, executor));
+            // Only the manifest's mtime may differ
+            List<Member> expectedMembers = parse(expected);
+            List<Member> actualMembers = parse(actual);
+            assertEquals(expectedMembers.size(), actualMembers.size());
+            for (int i = 0; i < expectedMembers.size(); i++) {
+                assertEquals(expectedMembers.get(i).name, actualMembers.get(i).name);
+                assertEquals(expectedMembers.get(i).pax, actualMembers.get(i).pax);
+                assertArrayEquals(expectedMembers.get(i).data, actualMembers.get(i).data);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void closeStopsEarly() throws IOException {
+        List<TarArchiveStream.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            entries.add(TarArchiveStream.Entry.of(i, "IMG_" + i + "/base.jpg", writeFile(sampleContent(5000, i)),
+                    "image/jpeg", 0));
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            TarArchiveStream in = new TarArchiveStream(entries, executor);
+            assertTrue(in.read(new byte[1024]) > 0);
+            in.close();
+            assertEquals(-1, entries.get(2).getSize());
+            assertNull(entries.get(0).getError());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void photoSizedFilesCostUnderTwoPercentOverhead() throws IOException {
+        List<TarArchiveStream.Entry> entries = new ArrayList<>();
+        long payload = 0;
+        for (int i = 0; i < 20; i++) {
+            byte[] content = sampleContent(200_000 + i, i);
+            payload += content.length;
+            entries.add(TarArchiveStream.Entry.of(i, "IMG_" + i + "/base.jpg", writeFile(content), "image/jpeg", 0));
+        }
+
+        long archiveBytes = readAll(new TarArchiveStream(entries, null)).length;
+
+        assertTrue(archiveBytes + " bytes for " + payload, archiveBytes < payload * 102 / 100);
+    }
+
+    /**
+     * Archive vs. the base64 JSON batch for a typical sync of 300 photos; the batch endpoint also
+     * capped requests at 5 files, so it needed 60 round trips and held each batch in memory.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkArchiveAgainstBase64Batch() throws Exception {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        int files = 300;
+        int size = 200_000;
+        List<TarArchiveStream.Entry> entries = new ArrayList<>();
+        long payload = 0;
+        for (int i = 0; i < files; i++) {
+            byte[] content = sampleContent(size + i, i);
+            payload += content.length;
+            entries.add(TarArchiveStream.Entry.of(i, "IMG_" + i + "/base.jpg", writeFile(content), "image/jpeg", 0));
+        }
+
+        long base64Bytes = 0;
+        long start = System.nanoTime();
+        for (TarArchiveStream.Entry entry : entries) {
+            base64Bytes += Base64.getMimeEncoder().encode(readAll(new FileChannelInputStream(
+                    new File(tmp.getRoot(), "f" + entry.getIndex()), 0, size + entry.getIndex()))).length;
+        }
+        long base64Ms = (System.nanoTime() - start) / 1_000_000;
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        long archiveBytes = 0;
+        byte[] buffer = new byte[16 * 1024];
+        start = System.nanoTime();
+        try (TarArchiveStream in = new TarArchiveStream(entries, executor)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                archiveBytes += n;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long archiveMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Sync of " + files + " files, " + payload + " payload bytes:");
+        System.out.println("  base64 batch: " + base64Bytes + " bytes (+" + percent(base64Bytes, payload)
+                + "%), encode " + base64Ms + " ms, " + (files + 4) / 5 + " requests");
+        System.out.println("  tar archive:  " + archiveBytes + " bytes (+" + percent(archiveBytes, payload)
+                + "%), stream incl. CRC32 " + archiveMs + " ms, 1 request");
+    }
+
+    private static String percent(long bytes, long payload) {
+        return String.format(java.util.Locale.US, "%.1f", (bytes - payload) * 100.0 / payload);
+    }
+
+    private static final class Member {
+        final String name;
+        final Map<String, String> pax;
+        final byte[] data;
+
+        Member(String name, Map<String, String> pax, byte[] data) {
+            this.name = name;
+            this.pax = pax;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Minimal pax tar reader: checks each header checksum and applies "path" and "size" records
+     */
+    private static List<Member> parse(byte[] archive) {
+        List<Member> members = new ArrayList<>();
+        Map<String, String> pax = new HashMap<>();
+        int offset = 0;
+        while (true) {
+            byte[] header = Arrays.copyOfRange(archive, offset, offset + 512);
+            offset += 512;
+            if (isZero(header)) {
+                assertTrue(isZero(Arrays.copyOfRange(archive, offset, offset + 512)));
+                assertEquals(archive.length, offset + 512);
+                return members;
+            }
+            assertEquals("ustar\0", new String(header, 257, 6, StandardCharsets.US_ASCII));
+            long expectedSum = octal(header, 148, 8);
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            long sum = 0;
+            for (byte b : header) {
+                sum += b & 0xff;
+            }
+            assertEquals(expectedSum, sum);
+
+            long size = pax.containsKey("size") ? Long.parseLong(pax.get("size")) : octal(header, 124, 12);
+            byte[] data = Arrays.copyOfRange(archive, offset, offset + (int) size);
+            offset += (int) ((size + 511) / 512 * 512);
+            if (header[156] == 'x') {
+                pax = parsePax(data);
+                continue;
+            }
+            assertEquals('0', header[156]);
+            String name = pax.containsKey("path") ? pax.get("path") : cString(header, 0, 100);
+            members.add(new Member(name, pax, data));
+            pax = new HashMap<>();
+        }
+    }
+
+    private static Map<String, String> parsePax(byte[] data) {
+        Map<String, String> records = new HashMap<>();
+        int offset = 0;
+        while (offset < data.length) {
+            int space = offset;
+            while (data[space] != ' ') {
+                space++;
+            }
+            int length = Integer.parseInt(new String(data, offset, space - offset, StandardCharsets.US_ASCII));
+            assertEquals('\n', data[offset + length - 1]);
+            String record = new String(data, space + 1, offset + length - space - 2, StandardCharsets.UTF_8);
+            int equals = record.indexOf('=');
+            records.put(record.substring(0, equals), record.substring(equals + 1));
+            offset += length;
+        }
+        return records;
+    }
+
+    private static long octal(byte[] header, int offset, int length) {
+        return Long.parseLong(cString(header, offset, length).trim(), 8);
+    }
+
+    private static String cString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+
+    private int fileCount;
+
+    private File writeFile(byte[] content) throws IOException {
+        File file = new File(tmp.getRoot(), "f" + fileCount++);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    private static byte[] sampleContent(int size, int seed) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 + seed * 7 + (i >> 8));
+        }
+        return content;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.mentra.asg_client.sensors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ImuSidecarFileTest {
+
+    private static final long START_NS = 123_456_789_000L;
+    private static final long RECORDING_START_NS = 123_400_000_000L;
+    private static final long VIDEO_START_NS = 123_500_000_000L;
+    private static final long PERIOD_NS = 10_000_000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void exportMatchesLegacyJsonSchema() throws Exception {
+        int samples = ImuSidecarFile.BLOCK_SAMPLES * 2 + 17;
+        float[][] trace = trace(samples);
+        File binary = record(trace, VIDEO_START_NS);
+
+        StringWriter out = new StringWriter();
+        assertEquals(samples, ImuSidecarFile.writeJson(binary, out));
+        JSONObject exported = new JSONObject(out.toString());
+        JSONObject legacy = legacyJson(trace, VIDEO_START_NS);
+
+        for (String key : new String[]{"version", "sampleCount", "samplingRateHz", "clockSource", "startTimeNs",
+                "recordingStartElapsedRealtimeNs", "videoStartElapsedRealtimeNs", "durationMs"}) {
+            assertEquals(key, legacy.get(key).toString(), exported.get(key).toString());
+        }
+        assertEquals(legacy.getJSONArray("samples").toString(), exported.getJSONArray("samples").toString());
+    }
+
+    @Test
+    public void headerIsFilledInAtFinish() throws Exception {
+        float[][] trace = trace(ImuSidecarFile.BLOCK_SAMPLES + 1);
+        File binary = record(trace, 0);
+
+        ImuSidecarFile.Header header = ImuSidecarFile.readHeader(binary);
+        assertEquals(trace.length, header.sampleCount);
+        assertEquals(100, header.samplingRateHz);
+        assertEquals(START_NS, header.startTimeNs);
+        assertEquals(RECORDING_START_NS, header.recordingStartElapsedRealtimeNs);
+        assertEquals(0, header.videoStartElapsedRealtimeNs);
+        assertEquals(trace.length * PERIOD_NS / 1_000_000 - 10, header.durationMs);
+        // One full block plus a single-sample tail block
+        assertEquals(ImuSidecarFile.HEADER_SIZE + 2 * 4 + trace.length * (8 + ImuSidecarFile.CHANNELS * 4),
+                binary.length());
+    }
+
+    @Test
+    public void photoExportOmitsVideoAnchor() throws Exception {
+        File binary = record(trace(3), 0);
+        StringWriter out = new StringWriter();
+        ImuSidecarFile.writeJson(binary, out);
+        assertFalse(new JSONObject(out.toString()).has("videoStartElapsedRealtimeNs"));
+    }
+
+    @Test
+    public void exportIsCachedOutOfSyncListings() throws Exception {
+        File binary = record(trace(10), 0);
+
+        File export = ImuSidecarFile.exportJson(binary);
+        assertEquals(ImuSidecarFile.JSON_EXPORT_NAME, export.getName());
+        assertTrue(export.getName().endsWith(".partial"));
+        assertEquals(10, new JSONObject(read(export)).getJSONArray("samples").length());
+
+        long exportedAt = export.lastModified();
+        assertEquals(export, ImuSidecarFile.exportJson(binary));
+        assertEquals(exportedAt, export.lastModified());
+        // Only the binary sidecar and the export remain; the temporary file was renamed
+        assertEquals(2, binary.getParentFile().list().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesThatAreNotSidecars() throws Exception {
+        File bogus = tmp.newFile("imu.bin");
+        try (FileWriter writer = new FileWriter(bogus)) {
+            writer.write("[0,1,2,3,4,5,6]\n");
+        }
+        ImuSidecarFile.readHeader(bogus);
+    }
+
+    @Test
+    public void longRecordingExportsEverySample() throws Exception {
+        // One minute at 100Hz, many blocks
+        int samples = 100 * 60;
+        File binary = record(trace(samples), 0);
+
+        assertEquals(samples, ImuSidecarFile.readHeader(binary).sampleCount);
+        assertEquals(samples, ImuSidecarFile.writeJson(binary, new StringWriter()));
+    }
+
+    /**
+     * Ten minutes at 100Hz: allocations while recording and the cost of stopping, against the
+     * previous JSON lines partial that was re-parsed at stop.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkRecordingAndStopAgainstJsonLines() throws Exception {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        // Ten minutes at 100Hz
+        int samples = 100 * 60 * 10;
+        float[][] trace = trace(samples);
+        float[] accel = new float[3];
+        float[] gyro = new float[3];
+
+        // Legacy: one JSONArray + String per sample, then re-parse everything at stop
+        File jsonl = tmp.newFile("imu.jsonl.partial");
+        long before = allocatedBytes();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(jsonl))) {
+            for (int i = 0; i < samples; i++) {
+                JSONArray sample = new JSONArray();
+                sample.put(Math.round(i * PERIOD_NS / 1_000_000.0));
+                for (int c = 0; c < 6; c++) {
+                    sample.put(round4(trace[i][c]));
+                }
+                writer.write(sample.toString());
+                writer.write('\n');
+            }
+        }
+        long legacyRecordAllocated = allocatedBytes() - before;
+        long stopStart = System.nanoTime();
+        before = allocatedBytes();
+        assembleLegacy(jsonl, new File(tmp.getRoot(), "imu.json"));
+        long legacyStopAllocated = allocatedBytes() - before;
+        long legacyStopUs = (System.nanoTime() - stopStart) / 1000;
+
+        // Binary: primitive columns written a block at a time, header patched at stop
+        File partial = tmp.newFile(ImuSidecarFile.PARTIAL_NAME);
+        ImuSidecarFile.SidecarWriter writer = new ImuSidecarFile.SidecarWriter(partial, 100);
+        before = allocatedBytes();
+        for (int i = 0; i < samples; i++) {
+            System.arraycopy(trace[i], 0, accel, 0, 3);
+            System.arraycopy(trace[i], 3, gyro, 0, 3);
+            writer.add(i * PERIOD_NS, accel, gyro);
+        }
+        long binaryRecordAllocated = allocatedBytes() - before;
+        stopStart = System.nanoTime();
+        before = allocatedBytes();
+        writer.finish(START_NS, RECORDING_START_NS, 0);
+        writer.close();
+        assertTrue(partial.renameTo(new File(tmp.getRoot(), ImuSidecarFile.BINARY_NAME)));
+        long binaryStopAllocated = allocatedBytes() - before;
+        long binaryStopUs = (System.nanoTime() - stopStart) / 1000;
+
+        System.out.println(String.format(Locale.US, "ImuSidecarFile %d samples: JSONL %d B alloc/sample, stop %d us %d KB alloc;"
+                        + " binary %d B alloc/sample, stop %d us %d KB alloc; %d vs %d bytes on disk",
+                samples, legacyRecordAllocated / samples, legacyStopUs, legacyStopAllocated / 1024,
+                binaryRecordAllocated / samples, binaryStopUs, binaryStopAllocated / 1024,
+                jsonl.length(), new File(tmp.getRoot(), ImuSidecarFile.BINARY_NAME).length()));
+        assertTrue("recording should not allocate per sample", binaryRecordAllocated < samples);
+        assertTrue("stop should not scale with the recording", binaryStopAllocated < legacyStopAllocated / 100);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Per sample {ax, ay, az, gx, gy, gz} */
+    private static float[][] trace(int samples) {
+        float[][] trace = new float[samples][6];
+        Random random = new Random(11);
+        for (float[] values : trace) {
+            for (int c = 0; c < values.length; c++) {
+                values[c] = (random.nextFloat() * 2 - 1) * (c < 3 ? 12f : 3f);
+            }
+        }
+        return trace;
+    }
+
+    private File record(float[][] trace, long videoStartNs) throws IOException {
+        File dir = tmp.newFolder();
+        File binary = new File(dir, ImuSidecarFile.BINARY_NAME);
+        float[] accel = new float[3];
+        float[] gyro = new float[3];
+        try (ImuSidecarFile.SidecarWriter writer = new ImuSidecarFile.SidecarWriter(binary, 100)) {
+            for (int i = 0; i < trace.length; i++) {
+                System.arraycopy(trace[i], 0, accel, 0, 3);
+                System.arraycopy(trace[i], 3, gyro, 0, 3);
+                writer.add(i * PERIOD_NS, accel, gyro);
+            }
+            writer.finish(START_NS, RECORDING_START_NS, videoStartNs);
+        }
+        return binary;
+    }
+
+    /** imu.json as ImuRecorder used to build it in memory */
+    private static JSONObject legacyJson(float[][] trace, long videoStartNs) throws Exception {
+        JSONArray samples = new JSONArray();
+        for (int i = 0; i < trace.length; i++) {
+            JSONArray sample = new JSONArray();
+            sample.put(Math.round(i * PERIOD_NS / 1_000_000.0));
+            for (int c = 0; c < 6; c++) {
+                sample.put(round4(trace[i][c]));
+            }
+            samples.put(sample);
+        }
+        JSONObject root = new JSONObject();
+        root.put("version", 2);
+        root.put("sampleCount", samples.length());
+        root.put("samplingRateHz", 100);
+        root.put("clockSource", "elapsedRealtimeNanos");
+        root.put("startTimeNs", START_NS);
+        root.put("recordingStartElapsedRealtimeNs", RECORDING_START_NS);
+        if (videoStartNs > 0) {
+            root.put("videoStartElapsedRealtimeNs", videoStartNs);
+        }
+        root.put("durationMs", samples.getJSONArray(samples.length() - 1).getLong(0));
+        root.put("samples", samples);
+        return root;
+    }
+
+    /** The stop-time assembly ImuRecorder used to do over its JSONL partial */
+    private static void assembleLegacy(File partial, File sidecar) throws Exception {
+        JSONArray samples = new JSONArray();
+        try (BufferedReader reader = new BufferedReader(new FileReader(partial))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                samples.put(new JSONArray(line));
+            }
+        }
+        JSONObject root = new JSONObject();
+        root.put("sampleCount", samples.length());
+        root.put("samples", samples);
+        try (FileWriter writer = new FileWriter(sidecar)) {
+            writer.write(root.toString());
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.append(line);
+            }
+        }
+        return text.toString();
+    }
+
+    private static double round4(float v) {
+        return Math.round(v * 10000.0) / 10000.0;
+    }
+
+    /** Bytes allocated by this thread so far, or 0 where the JVM can't report it. */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,259 @@
+package com.mentra.asg_client.sensors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.mentra.asg_client.utils.smartglasses.K900ProtocolUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ImuStreamFrameTest {
+
+    private static final float[] ACCEL = {0.12f, -9.81f, 0.45f};
+    private static final float[] GYRO = {0.003f, -1.25f, 0.5f};
+    private static final float[] MAG = {22.4f, -5.1f, -41.7f};
+    private static final float[] QUAT = {0.7071f, 0.0f, -0.7071f, 0.001f};
+    private static final float[] EULER_RADIANS = {0.1f, -0.5f, 3.1f};
+
+    // Streaming rate for the byte count comparison
+    private static final int RATE_HZ = 100;
+
+    @Test
+    public void samplesRoundTripWithinOneStep() {
+        ImuSampleBuffer buffer = new ImuSampleBuffer(16);
+        buffer.add(1_700_000_000_000L, ACCEL, GYRO, MAG, QUAT, EULER_RADIANS);
+        buffer.add(1_700_000_000_020L, ACCEL, GYRO, MAG, QUAT, EULER_RADIANS);
+
+        byte[] frame = ImuStreamFrame.encode(buffer, 2);
+        assertEquals(ImuStreamFrame.HEADER_SIZE + 2 * ImuStreamFrame.SAMPLE_SIZE + 7, frame.length);
+        assertEquals(K900ProtocolUtils.CMD_TYPE_IMU, frame[2]);
+        assertEquals('$', frame[frame.length - 1]);
+
+        double[][] samples = decode(frame);
+        assertEquals(2, samples.length);
+        assertEquals(1_700_000_000_000L, (long) samples[0][0]);
+        assertEquals(1_700_000_000_020L, (long) samples[1][0]);
+        for (double[] sample : samples) {
+            assertClose(ACCEL, sample, 1, ImuStreamFrame.ACCEL_SCALE);
+            assertClose(GYRO, sample, 4, ImuStreamFrame.GYRO_SCALE);
+            assertClose(MAG, sample, 7, ImuStreamFrame.MAG_SCALE);
+            assertClose(QUAT, sample, 10, ImuStreamFrame.QUAT_SCALE);
+            for (int c = 0; c < 3; c++) {
+                assertEquals(Math.toDegrees(EULER_RADIANS[c]), sample[14 + c], 1 / ImuStreamFrame.EULER_SCALE);
+            }
+        }
+        // Encoding leaves the samples for the caller to remove once sent
+        assertEquals(2, buffer.size());
+    }
+
+    @Test
+    public void outOfRangeValuesSaturate() {
+        ImuSampleBuffer buffer = new ImuSampleBuffer(4);
+        buffer.add(0, new float[]{500f, -500f, 0f}, GYRO, MAG, QUAT, EULER_RADIANS);
+
+        double[] sample = decode(ImuStreamFrame.encode(buffer, 1))[0];
+        assertEquals(Short.MAX_VALUE / ImuStreamFrame.ACCEL_SCALE, sample[1], 1e-6);
+        assertEquals(Short.MIN_VALUE / ImuStreamFrame.ACCEL_SCALE, sample[2], 1e-6);
+    }
+
+    @Test
+    public void fullRingOverwritesOldestSamples() {
+        ImuSampleBuffer buffer = new ImuSampleBuffer(4);
+        for (int i = 0; i < 6; i++) {
+            buffer.add(i * 10L, ACCEL, GYRO, MAG, QUAT, EULER_RADIANS);
+        }
+        assertEquals(4, buffer.size());
+        assertEquals(2, buffer.getDroppedCount());
+        assertEquals(20L, buffer.getTimestampMs(0));
+
+        buffer.removeFirst(3);
+        assertEquals(1, buffer.size());
+        assertEquals(50L, buffer.getTimestampMs(0));
+    }
+
+    @Test
+    public void frameIsCappedToOneNotification() {
+        ImuSampleBuffer buffer = new ImuSampleBuffer(32);
+        for (int i = 0; i < 20; i++) {
+            buffer.add(i * 5L, ACCEL, GYRO, MAG, QUAT, EULER_RADIANS);
+        }
+        byte[] frame = ImuStreamFrame.encode(buffer, buffer.size());
+        assertEquals(ImuStreamFrame.MAX_SAMPLES_PER_FRAME, decode(frame).length);
+        // Fits a BES notification (253-byte MTU less the 3-byte ATT header)
+        assertTrue(frame.length <= 250);
+    }
+
+    @Test
+    public void binaryIsAtLeastFiveTimesSmallerOnAirThanJson() throws Exception {
+        float[][] trace = randomTrace(RATE_HZ * 10);
+
+        long jsonBytes = jsonBytesOnAir(trace);
+        long binaryBytes = binaryBytesOnAir(trace);
+
+        assertTrue("binary should be at least 5x smaller on air", jsonBytes >= 5 * binaryBytes);
+    }
+
+    /**
+     * Bytes on air and allocations per sample at 100Hz, JSON batches versus binary frames.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkBytesAndAllocationsAgainstJson() throws Exception {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        final int samples = RATE_HZ * 10;
+        float[][] trace = randomTrace(samples);
+
+        long before = allocatedBytes();
+        long jsonBytes = jsonBytesOnAir(trace);
+        long jsonAllocated = allocatedBytes() - before;
+
+        before = allocatedBytes();
+        long binaryBytes = binaryBytesOnAir(trace);
+        long binaryAllocated = allocatedBytes() - before;
+
+        System.out.println(String.format(Locale.US, "ImuStreamFrame @%dHz: JSON %d B/sample %d B alloc/sample, binary %d B/sample %d B alloc/sample (%.1fx fewer bytes on air)",
+                RATE_HZ, jsonBytes / samples, jsonAllocated / samples, binaryBytes / samples,
+                binaryAllocated / samples, (double) jsonBytes / binaryBytes));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static float[][] randomTrace(int samples) {
+        float[][] trace = new float[samples][16];
+        Random random = new Random(7);
+        for (float[] values : trace) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (random.nextFloat() * 2 - 1) * (i < 3 ? 10f : i < 6 ? 2f : i < 9 ? 50f : i < 13 ? 1f : 3f);
+            }
+        }
+        return trace;
+    }
+
+    /** One second of 100Hz samples per JSON batch, as with batch_ms=1000 */
+    private static long jsonBytesOnAir(float[][] trace) throws Exception {
+        float[] accel = new float[3];
+        float[] gyro = new float[3];
+        float[] mag = new float[3];
+        float[] quat = new float[4];
+        float[] euler = new float[3];
+        long jsonBytes = 0;
+        JSONArray readings = new JSONArray();
+        for (float[] values : trace) {
+            split(values, accel, gyro, mag, quat, euler);
+            readings.put(jsonReading(accel, gyro, mag, quat, euler));
+            if (readings.length() == RATE_HZ) {
+                JSONObject data = new JSONObject();
+                data.put("type", "imu_stream_response");
+                data.put("readings", readings);
+                jsonBytes += data.toString().getBytes(StandardCharsets.UTF_8).length;
+                readings = new JSONArray();
+            }
+        }
+        return jsonBytes;
+    }
+
+    /** The same batches as binary frames */
+    private static long binaryBytesOnAir(float[][] trace) {
+        float[] accel = new float[3];
+        float[] gyro = new float[3];
+        float[] mag = new float[3];
+        float[] quat = new float[4];
+        float[] euler = new float[3];
+        ImuSampleBuffer buffer = new ImuSampleBuffer(RATE_HZ);
+        long binaryBytes = 0;
+        long sampleTime = 0;
+        for (float[] values : trace) {
+            split(values, accel, gyro, mag, quat, euler);
+            buffer.add(sampleTime += 10, accel, gyro, mag, quat, euler);
+            if (buffer.size() == RATE_HZ) {
+                while (buffer.size() > 0) {
+                    int count = Math.min(buffer.size(), ImuStreamFrame.MAX_SAMPLES_PER_FRAME);
+                    binaryBytes += ImuStreamFrame.encode(buffer, count).length;
+                    buffer.removeFirst(count);
+                }
+            }
+        }
+        return binaryBytes;
+    }
+
+    /** Decodes a frame the way the phone does: per sample {timestamp, accel.., gyro.., mag.., quat.., euler..} */
+    private static double[][] decode(byte[] frame) {
+        int payloadLength = ((frame[3] & 0xFF) << 8) | (frame[4] & 0xFF);
+        assertEquals(frame.length - 7, payloadLength);
+        ByteBuffer payload = ByteBuffer.wrap(frame, 5, payloadLength);
+        assertEquals(ImuStreamFrame.FORMAT_VERSION, payload.get());
+        int count = payload.get() & 0xFF;
+        long timestamp = payload.getLong();
+
+        double[][] samples = new double[count][17];
+        float[] scales = {ImuStreamFrame.ACCEL_SCALE, ImuStreamFrame.GYRO_SCALE, ImuStreamFrame.MAG_SCALE,
+                ImuStreamFrame.QUAT_SCALE, ImuStreamFrame.EULER_SCALE};
+        int[] components = {3, 3, 3, 4, 3};
+        for (int i = 0; i < count; i++) {
+            timestamp += payload.getShort() & 0xFFFF;
+            samples[i][0] = timestamp;
+            int field = 1;
+            for (int f = 0; f < scales.length; f++) {
+                for (int c = 0; c < components[f]; c++) {
+                    samples[i][field++] = payload.getShort() / scales[f];
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static void assertClose(float[] expected, double[] sample, int offset, float scale) {
+        for (int c = 0; c < expected.length; c++) {
+            assertEquals(expected[c], sample[offset + c], 1 / scale);
+        }
+    }
+
+    /** The reading ImuManager builds for JSON streaming */
+    private static JSONObject jsonReading(float[] accel, float[] gyro, float[] mag, float[] quat,
+                                          float[] euler) throws Exception {
+        JSONObject reading = new JSONObject();
+        reading.put("accel", new JSONArray(accel));
+        reading.put("gyro", new JSONArray(gyro));
+        reading.put("mag", new JSONArray(mag));
+        reading.put("quat", new JSONArray(quat));
+        JSONArray angles = new JSONArray();
+        angles.put(Math.toDegrees(euler[0]));
+        angles.put(Math.toDegrees(euler[1]));
+        angles.put(Math.toDegrees(euler[2]));
+        reading.put("euler", angles);
+        return reading;
+    }
+
+    private static void split(float[] values, float[] accel, float[] gyro, float[] mag, float[] quat,
+                              float[] euler) {
+        System.arraycopy(values, 0, accel, 0, 3);
+        System.arraycopy(values, 3, gyro, 0, 3);
+        System.arraycopy(values, 6, mag, 0, 3);
+        System.arraycopy(values, 9, quat, 0, 4);
+        System.arraycopy(values, 13, euler, 0, 3);
+    }
+
+    /** Bytes allocated by this thread so far, or 0 where the JVM can't report it. */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
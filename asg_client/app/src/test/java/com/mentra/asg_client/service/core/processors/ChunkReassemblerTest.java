@@ -0,0 +1,281 @@
+package com.mentra.asg_client.service.core.processors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ChunkReassemblerTest {
+
+    private static final long TIMEOUT_MS = 30_000;
+
+    @Test
+    public void reassemblesOutOfOrderChunksByteForByte() {
+        ChunkReassembler reassembler = new ChunkReassembler(TIMEOUT_MS, 10, 64 * 1024);
+        // Multi-byte characters split across chunk boundaries must come back intact
+        byte[] message = "{\"type\":\"display_text\",\"text\":\"héllo wörld ☃ 😀\"}".getBytes(StandardCharsets.UTF_8);
+        int[] order = {2, 0, 3, 1};
+        int chunkSize = (message.length + 3) / 4;
+
+        byte[] result = null;
+        for (int i : order) {
+            assertNull(result);
+            int from = i * chunkSize;
+            result = reassembler.addChunk("s", i, 4, message, from, Math.min(chunkSize, message.length - from), 0);
+        }
+
+        assertArrayEquals(message, result);
+        assertEquals(0, reassembler.getActiveSessionCount());
+        assertEquals(0, reassembler.getBufferedBytes());
+    }
+
+    @Test
+    public void chunksSpanningPagesAreCopiedCorrectly() {
+        ChunkReassembler reassembler = new ChunkReassembler(TIMEOUT_MS, 10, 64 * 1024);
+        byte[] message = new byte[10_000];
+        new Random(3).nextBytes(message);
+
+        assertNull(reassembler.addChunk("big", 1, 3, message, 3_000, 5_000, 0));
+        assertNull(reassembler.addChunk("big", 2, 3, message, 8_000, 2_000, 0));
+        byte[] result = reassembler.addChunk("big", 0, 3, message, 0, 3_000, 0);
+
+        assertArrayEquals(message, result);
+    }
+
+    @Test
+    public void duplicateAndInvalidChunksAreIgnored() {
+        ChunkReassembler reassembler = new ChunkReassembler(TIMEOUT_MS, 10, 64 * 1024);
+        byte[] a = bytes("ab");
+        byte[] b = bytes("cd");
+
+        assertNull(reassembler.addChunk("s", 0, 2, a, 0, 2, 0));
+        assertNull(reassembler.addChunk("s", 0, 2, b, 0, 2, 0));
+        assertNull(reassembler.addChunk("s", 5, 2, b, 0, 2, 0));
+        assertNull(reassembler.addChunk("bad", 0, 0, b, 0, 2, 0));
+
+        assertArrayEquals(bytes("abcd"), reassembler.addChunk("s", 1, 2, b, 0, 2, 0));
+    }
+
+    @Test
+    public void incompleteSessionTimesOut() {
+        ChunkReassembler reassembler = new ChunkReassembler(TIMEOUT_MS, 10, 64 * 1024);
+        byte[] data = bytes("xy");
+
+        reassembler.addChunk("s", 0, 2, data, 0, 2, 1_000);
+        reassembler.addChunk("other", 0, 2, data, 0, 2, 29_000);
+        assertEquals(2, reassembler.getActiveSessionCount());
+
+        // 30s after creation plus at most one wheel tick
+        reassembler.addChunk("other", 0, 2, data, 0, 2, 1_000 + TIMEOUT_MS + 1_000);
+        assertEquals(1, reassembler.getActiveSessionCount());
+        // A late chunk starts a fresh session instead of completing the expired one
+        assertNull(reassembler.addChunk("s", 1, 2, data, 0, 2, 1_000 + TIMEOUT_MS + 1_000));
+    }
+
+    @Test
+    public void expiryWorksAfterLongIdleGap() {
+        ChunkReassembler reassembler = new ChunkReassembler(TIMEOUT_MS, 10, 64 * 1024);
+        byte[] data = bytes("xy");
+
+        reassembler.addChunk("a", 0, 2, data, 0, 2, 0);
+        reassembler.addChunk("b", 0, 2, data, 0, 2, 10_000);
+        reassembler.addChunk("c", 0, 2, data, 0, 2, 10 * 60_000);
+
+        assertEquals(1, reassembler.getActiveSessionCount());
+        assertEquals(4096, reassembler.getBufferedBytes());
+    }
+
+    @Test
+    public void sessionLimitDropsOldest() {
+        ChunkReassembler reassembler = new ChunkReassembler(TIMEOUT_MS, 3, 64 * 1024);
+        byte[] data = bytes("xy");
+
+        for (int i = 0; i < 4; i++) {
+            reassembler.addChunk("s" + i, 0, 2, data, 0, 2, i);
+        }
+
+        assertEquals(3, reassembler.getActiveSessionCount());
+        assertTrue(reassembler.getStats().contains("s3"));
+        assertTrue(!reassembler.getStats().contains("s0:"));
+    }
+
+    @Test
+    public void memoryBudgetDropsOldestSessions() {
+        // Two 4KB pages in total
+        ChunkReassembler reassembler = new ChunkReassembler(TIMEOUT_MS, 10, 8 * 1024);
+        byte[] page = new byte[4096];
+
+        assertNull(reassembler.addChunk("old", 0, 2, page, 0, 4096, 0));
+        assertNull(reassembler.addChunk("new", 0, 3, page, 0, 4096, 1));
+        assertEquals(8 * 1024, reassembler.getBufferedBytes());
+
+        // "new" needs a third page: "old" is dropped to make room
+        assertNull(reassembler.addChunk("new", 1, 3, page, 0, 100, 2));
+        assertEquals(1, reassembler.getActiveSessionCount());
+        assertNotNull(reassembler.addChunk("new", 2, 3, page, 0, 100, 3));
+        assertEquals(0, reassembler.getBufferedBytes());
+
+        // A single message larger than the budget is dropped outright
+        assertNull(reassembler.addChunk("huge", 0, 2, new byte[9000], 0, 9000, 4));
+        assertEquals(0, reassembler.getActiveSessionCount());
+        assertEquals(0, reassembler.getBufferedBytes());
+    }
+
+    @Test
+    public void clearReleasesAllSessions() {
+        ChunkReassembler reassembler = new ChunkReassembler(TIMEOUT_MS, 10, 64 * 1024);
+        reassembler.addChunk("a", 0, 2, bytes("x"), 0, 1, 0);
+        reassembler.addChunk("b", 0, 2, bytes("y"), 0, 1, 0);
+
+        reassembler.clear();
+
+        assertEquals(0, reassembler.getActiveSessionCount());
+        assertEquals(0, reassembler.getBufferedBytes());
+        assertNull(reassembler.addChunk("a", 1, 2, bytes("z"), 0, 1, 0));
+    }
+
+    @Test
+    public void chunkedMessageRoundTripsThroughReassembler() throws JSONException {
+        JSONObject command = new JSONObject().put("type", "set_wifi_credentials").put("ssid", "Home \"5G\"")
+                .put("password", "p\\ss/word").put("mId", 4242);
+        String original = command.toString();
+        ChunkReassembler reassembler = new ChunkReassembler();
+        StreamingCommandDecoder decoder = new StreamingCommandDecoder();
+
+        byte[] message = null;
+        int total = (original.length() + 79) / 80;
+        for (int i = total - 1; i >= 0; i--) {
+            JSONObject chunk = new JSONObject().put("t", "ck").put("id", "4242_1").put("c", i).put("n", total)
+                    .put("d", original.substring(i * 80, Math.min(original.length(), (i + 1) * 80)));
+
+            byte[] data = StreamingCommandDecoderTest.frame(StreamingCommandDecoderTest.wrap(chunk));
+            assertEquals(StreamingCommandDecoder.Result.CHUNK, decoder.decode(data));
+            message = reassembler.addChunk(decoder.getChunkId(), decoder.getChunkIndex(), decoder.getTotalChunks(),
+                    decoder.getChunkData(), decoder.getChunkDataOffset(), decoder.getChunkDataLength());
+        }
+
+        assertNotNull(message);
+        assertEquals(StreamingCommandDecoder.Result.COMMAND, decoder.decodeReassembled(message));
+        assertEquals("set_wifi_credentials", decoder.getType());
+        assertEquals(4242, decoder.getMessageId());
+        assertEquals(original, decoder.buildPayload().toString());
+    }
+
+    /**
+     * Per-message allocations and time against the previous String-per-chunk sessions.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkAgainstLegacyStringSessions() {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        // A 6KB settings blob in 80-byte chunks, as MessageChunker sends it
+        byte[] message = new byte[6 * 1024];
+        new Random(5).nextBytes(message);
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) ('a' + (message[i] & 15));
+        }
+        final int chunkSize = 80;
+        final int total = (message.length + chunkSize - 1) / chunkSize;
+        final int rounds = 300;
+
+        LegacyReassembler legacy = new LegacyReassembler();
+        ChunkReassembler reassembler = new ChunkReassembler();
+        for (int r = 0; r < 20; r++) {
+            runLegacy(legacy, message, chunkSize, total, r);
+            runPooled(reassembler, message, chunkSize, total, r);
+        }
+
+        long legacyBytes = allocatedBytes();
+        long legacyStart = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            runLegacy(legacy, message, chunkSize, total, r);
+        }
+        long legacyNanos = System.nanoTime() - legacyStart;
+        legacyBytes = allocatedBytes() - legacyBytes;
+
+        long pooledBytes = allocatedBytes();
+        long pooledStart = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            runPooled(reassembler, message, chunkSize, total, r);
+        }
+        long pooledNanos = System.nanoTime() - pooledStart;
+        pooledBytes = allocatedBytes() - pooledBytes;
+
+        System.out.println(String.format(Locale.US, "ChunkReassembler: %d-byte message in %d chunks, legacy %d B %.1f us, pooled %d B %.1f us per message",
+                message.length, total, legacyBytes / rounds, legacyNanos / 1000.0 / rounds,
+                pooledBytes / rounds, pooledNanos / 1000.0 / rounds));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void runLegacy(LegacyReassembler legacy, byte[] message, int chunkSize, int total, int round) {
+        String result = null;
+        for (int i = 0; i < total; i++) {
+            int from = i * chunkSize;
+            // Previously each chunk arrived as a String and the result went through new String -> bytes
+            String data = new String(message, from, Math.min(chunkSize, message.length - from), StandardCharsets.UTF_8);
+            result = legacy.addChunk("s" + round, i, total, data);
+        }
+        assertNotNull(result);
+    }
+
+    private static void runPooled(ChunkReassembler reassembler, byte[] message, int chunkSize, int total, int round) {
+        byte[] result = null;
+        for (int i = 0; i < total; i++) {
+            int from = i * chunkSize;
+            result = reassembler.addChunk("s" + round, i, total, message, from, Math.min(chunkSize, message.length - from));
+        }
+        assertNotNull(result);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Bytes allocated by this thread so far, or 0 where the JVM can't report it. */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /** The previous String-per-chunk session storage, kept here as the benchmark baseline. */
+    private static class LegacyReassembler {
+        private final Map<String, Map<Integer, String>> sessions = new HashMap<>();
+
+        String addChunk(String chunkId, int chunkIndex, int totalChunks, String data) {
+            Map<Integer, String> chunks = sessions.computeIfAbsent(chunkId, k -> new HashMap<>());
+            chunks.put(chunkIndex, data);
+            if (chunks.size() < totalChunks) {
+                return null;
+            }
+            StringBuilder reassembled = new StringBuilder();
+            for (int i = 0; i < totalChunks; i++) {
+                reassembled.append(chunks.get(i));
+            }
+            sessions.remove(chunkId);
+            return reassembled.toString();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.mentra.asg_client.service.core.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class MessageIdDeduplicatorTest {
+
+    private static final long WINDOW_MS = 10_000;
+    private static final long BUCKET_MS = 1_000;
+
+    @Test
+    public void repeatWithinWindowIsDuplicate() {
+        MessageIdDeduplicator dedup = new MessageIdDeduplicator(WINDOW_MS, BUCKET_MS, 64);
+
+        assertFalse(dedup.checkAndRecord(42, 0));
+        assertTrue(dedup.checkAndRecord(42, 500));
+        assertTrue(dedup.checkAndRecord(42, 9_999));
+        assertFalse(dedup.checkAndRecord(43, 9_999));
+    }
+
+    @Test
+    public void idExpiresAfterWindow() {
+        MessageIdDeduplicator dedup = new MessageIdDeduplicator(WINDOW_MS, BUCKET_MS, 64);
+
+        assertFalse(dedup.checkAndRecord(7, 1_000));
+        // Remembered for at least the window and at most one bucket longer
+        assertFalse(dedup.checkAndRecord(7, 1_000 + WINDOW_MS + BUCKET_MS));
+    }
+
+    @Test
+    public void expiryWorksWithoutIntermediateTraffic() {
+        MessageIdDeduplicator dedup = new MessageIdDeduplicator(WINDOW_MS, BUCKET_MS, 64);
+
+        assertFalse(dedup.checkAndRecord(7, 0));
+        // Long idle gap: the ring never rotated through the old bucket
+        assertFalse(dedup.checkAndRecord(7, 60_000));
+        assertFalse(dedup.checkAndRecord(8, 3 * 11_000));
+        assertFalse(dedup.checkAndRecord(8, 3 * 11_000 + 11_000 * 11));
+    }
+
+    @Test
+    public void retriesKeepRefreshingTheId() {
+        MessageIdDeduplicator dedup = new MessageIdDeduplicator(WINDOW_MS, BUCKET_MS, 64);
+
+        assertFalse(dedup.checkAndRecord(99, 0));
+        for (long t = 5_000; t <= 60_000; t += 5_000) {
+            assertTrue("retry at " + t, dedup.checkAndRecord(99, t));
+        }
+    }
+
+    @Test
+    public void fullBucketStopsRememberingAndCountsOverflow() {
+        MessageIdDeduplicator dedup = new MessageIdDeduplicator(WINDOW_MS, BUCKET_MS, 4);
+
+        for (long id = 0; id < 6; id++) {
+            assertFalse(dedup.checkAndRecord(id, 100));
+        }
+
+        assertEquals(2, dedup.getOverflowCount());
+        assertTrue(dedup.checkAndRecord(3, 200));
+        assertFalse(dedup.checkAndRecord(5, 200));
+        // Next bucket has room again
+        assertFalse(dedup.checkAndRecord(5, 1_100));
+        assertTrue(dedup.checkAndRecord(5, 1_200));
+    }
+
+    @Test
+    public void matchesLegacyMapOnRandomTraffic() {
+        MessageIdDeduplicator dedup = new MessageIdDeduplicator(WINDOW_MS, BUCKET_MS, 512);
+        LegacyDedup legacy = new LegacyDedup();
+        Random random = new Random(1);
+
+        long now = 0;
+        for (int i = 0; i < 20_000; i++) {
+            now += random.nextInt(20);
+            long id = random.nextInt(3_000);
+            boolean expected = legacy.isDuplicate(id, now);
+            boolean actual = dedup.checkAndRecord(id, now);
+            if (expected) {
+                // Never lets a duplicate inside the window through
+                assertTrue("id " + id + " at " + now, actual);
+            }
+        }
+    }
+
+    @Test
+    public void sameHitsAsLegacyMapOnSteadyRetryTraffic() {
+        // Every ID sent twice, 5 ms apart: each second copy is a duplicate for both
+        final int messages = 50_000;
+        assertEquals(messages / 2, runLegacy(new LegacyDedup(), messages, 5));
+        assertEquals(messages / 2, runRing(new MessageIdDeduplicator(WINDOW_MS, BUCKET_MS, 512), messages, 5));
+    }
+
+    /**
+     * Per-message cost against the legacy map sweep, best of 5 runs.
+     * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkAgainstLegacySweep() {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        // ~200 commands/s (IMU streaming plus phone traffic), 10s window => ~2000 live IDs
+        final int messages = 50_000;
+        final long intervalMs = 5;
+
+        long legacyBest = Long.MAX_VALUE;
+        long ringBest = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            runLegacy(new LegacyDedup(), messages, intervalMs);
+            legacyBest = Math.min(legacyBest, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            runRing(new MessageIdDeduplicator(WINDOW_MS, BUCKET_MS, 512), messages, intervalMs);
+            ringBest = Math.min(ringBest, System.nanoTime() - start);
+        }
+
+        System.out.println(String.format(Locale.US, "MessageIdDeduplicator: %d msgs at %d/s, legacy %.0f ns/msg, ring %.0f ns/msg",
+                messages, 1000 / intervalMs, legacyBest / (double) messages, ringBest / (double) messages));
+    }
+
+    private static long runLegacy(LegacyDedup legacy, int messages, long intervalMs) {
+        long hits = 0;
+        for (int i = 0; i < messages; i++) {
+            if (legacy.isDuplicate(i / 2, i * intervalMs)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static long runRing(MessageIdDeduplicator dedup, int messages, long intervalMs) {
+        long hits = 0;
+        for (int i = 0; i < messages; i++) {
+            if (dedup.checkAndRecord(i / 2, i * intervalMs)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    /** The previous CommandProcessor implementation, kept here as the benchmark baseline. */
+    private static class LegacyDedup {
+        private final ConcurrentHashMap<Long, Long> processedMessageIds = new ConcurrentHashMap<>();
+
+        boolean isDuplicate(long messageId, long now) {
+            processedMessageIds.entrySet().removeIf(entry -> now - entry.getValue() > WINDOW_MS);
+            Long previousTime = processedMessageIds.put(messageId, now);
+            return previousTime != null && (now - previousTime) < WINDOW_MS;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.mentra.asg_client.service.core.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class StreamingCommandDecoderTest {
+
+    private final StreamingCommandDecoder decoder = new StreamingCommandDecoder();
+
+    @Test
+    public void directAckNeedsNoTree() {
+        byte[] data = bytes("{\"type\":\"msg_ack\",\"mId\":12345,\"timestamp\":1700000000000}");
+
+        assertEquals(StreamingCommandDecoder.Result.ACK, decoder.decode(data));
+        assertEquals(12345, decoder.getMessageId());
+    }
+
+    @Test
+    public void wrappedCommandIsUnwrapped() throws JSONException {
+        JSONObject command = new JSONObject()
+                .put("type", "take_photo")
+                .put("requestId", "req-1")
+                .put("appId", "com.example \"quoted\" \\ app")
+                .put("mId", 987654321L);
+
+        assertEquals(StreamingCommandDecoder.Result.COMMAND, decoder.decode(frame(wrap(command))));
+        assertEquals("take_photo", decoder.getType());
+        assertEquals(987654321L, decoder.getMessageId());
+        JSONObject payload = decoder.buildPayload();
+        assertEquals("com.example \"quoted\" \\ app", payload.getString("appId"));
+        assertEquals("req-1", payload.getString("requestId"));
+    }
+
+    @Test
+    public void unicodeEscapesSurviveUnwrapping() throws JSONException {
+        String text = "café ☃ 😀 tab\tnewline\n";
+        String inner = "{\"type\":\"display_text\",\"text\":\"" + escapeAllNonAscii(text) + "\"}";
+        JSONObject outer = new JSONObject().put("C", inner);
+
+        assertEquals(StreamingCommandDecoder.Result.COMMAND, decoder.decode(frame(outer.toString())));
+        assertEquals(text, decoder.buildPayload().getString("text"));
+        assertEquals(-1, decoder.getMessageId());
+    }
+
+    @Test
+    public void directCommandWithoutMessageId() throws JSONException {
+        assertEquals(StreamingCommandDecoder.Result.COMMAND,
+                decoder.decode(bytes("{ \"type\" : \"ping\" , \"nested\": {\"type\": \"x\", \"mId\": 5} }")));
+        assertEquals("ping", decoder.getType());
+        assertEquals(-1, decoder.getMessageId());
+        assertEquals("x", decoder.buildPayload().getJSONObject("nested").getString("type"));
+    }
+
+    @Test
+    public void unusualShapesFallBack() throws JSONException {
+        // K900 system command
+        assertFallback(frame("{\"C\":\"cs_batv\",\"V\":1,\"B\":\"\"}"));
+        // Chunks with missing or coerced fields
+        assertFallback(frame(wrap(new JSONObject().put("type", "chunked_msg").put("chunkId", "a"))));
+        assertFallback(bytes("{\"t\":\"ck\",\"id\":\"a\",\"c\":\"0\",\"n\":2,\"d\":\"xx\"}"));
+        assertFallback(bytes("{\"t\":\"ck\",\"id\":7,\"c\":0,\"n\":2,\"d\":\"xx\"}"));
+        // Values org.json would coerce
+        assertFallback(bytes("{\"type\":\"ping\",\"mId\":\"42\"}"));
+        assertFallback(bytes("{\"type\":\"ping\",\"mId\":4.2}"));
+        assertFallback(bytes("{\"type\":7}"));
+        // Neither type nor mId
+        assertFallback(bytes("{\"foo\":\"bar\"}"));
+        // Malformed
+        assertFallback(bytes("{\"type\":\"ping\""));
+        assertFallback(bytes("{\"type\" \"ping\"}"));
+        assertFallback(bytes("not json"));
+    }
+
+    @Test
+    public void wrappedChunkYieldsUnescapedData() throws JSONException {
+        String original = "{\"type\":\"display_text\",\"text\":\"a \\\"quoted\\\" caf\u00e9\"}";
+        JSONObject chunk = new JSONObject().put("t", "ck").put("id", "77_123").put("c", 1).put("n", 3)
+                .put("d", original).put("mId", 77);
+
+        assertEquals(StreamingCommandDecoder.Result.CHUNK, decoder.decode(frame(wrap(chunk))));
+        assertEquals("77_123", decoder.getChunkId());
+        assertEquals(1, decoder.getChunkIndex());
+        assertEquals(3, decoder.getTotalChunks());
+        assertEquals(77, decoder.getMessageId());
+        assertEquals(original, new String(decoder.getChunkData(), decoder.getChunkDataOffset(),
+                decoder.getChunkDataLength(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void verboseChunkKeysTakePrecedence() {
+        byte[] data = bytes("{\"type\":\"chunked_msg\",\"chunkId\":\"v\",\"id\":\"x\",\"chunk\":2,"
+                + "\"total\":4,\"data\":\"abc\"}");
+
+        assertEquals(StreamingCommandDecoder.Result.CHUNK, decoder.decode(data));
+        assertEquals("v", decoder.getChunkId());
+        assertEquals(2, decoder.getChunkIndex());
+        assertEquals(4, decoder.getTotalChunks());
+        assertEquals(-1, decoder.getMessageId());
+        assertEquals(3, decoder.getChunkDataLength());
+    }
+
+    @Test
+    public void wrappedAckIsNotTreatedAsTopLevelAck() throws JSONException {
+        byte[] data = frame(wrap(new JSONObject().put("type", "msg_ack").put("mId", 3)));
+
+        assertEquals(StreamingCommandDecoder.Result.COMMAND, decoder.decode(data));
+        assertEquals("msg_ack", decoder.getType());
+    }
+
+    @Test
+    public void matchesLegacyExtractionOnTrace() throws JSONException {
+        for (byte[] message : captureTrace()) {
+            StreamingCommandDecoder.Result result = decoder.decode(message);
+            if (result != StreamingCommandDecoder.Result.COMMAND) {
+                continue;
+            }
+            JSONObject legacy = legacyExtract(message);
+            assertNotNull(legacy);
+            assertEquals(legacy.optString("type", ""), decoder.getType());
+            assertEquals(legacy.optLong("mId", -1), decoder.getMessageId());
+            assertEquals(legacy.toString(), decoder.buildPayload().toString());
+        }
+    }
+
+    /**
+     * Per-message allocations and time on the capture trace against the legacy
+     * String -> JSONObject path. Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+     */
+    @Test
+    public void benchmarkAllocationsPerMessage() throws Exception {
+        assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        List<byte[]> trace = captureTrace();
+        final int rounds = 2_000;
+
+        // Warm up both paths
+        runLegacy(trace, 200);
+        runDecoder(trace, 200);
+
+        long legacyBytes = allocatedBytes();
+        long legacyStart = System.nanoTime();
+        runLegacy(trace, rounds);
+        long legacyNanos = System.nanoTime() - legacyStart;
+        legacyBytes = allocatedBytes() - legacyBytes;
+
+        long decoderBytes = allocatedBytes();
+        long decoderStart = System.nanoTime();
+        runDecoder(trace, rounds);
+        long decoderNanos = System.nanoTime() - decoderStart;
+        decoderBytes = allocatedBytes() - decoderBytes;
+
+        int messages = rounds * trace.size();
+        if (legacyBytes > 0) {
+            System.out.println(String.format(Locale.US, "StreamingCommandDecoder: legacy %d B/msg %.0f ns/msg, decoder %d B/msg %.0f ns/msg",
+                    legacyBytes / messages, legacyNanos / (double) messages,
+                    decoderBytes / messages, decoderNanos / (double) messages));
+        } else {
+            System.out.println(String.format(Locale.US, "StreamingCommandDecoder: legacy %.0f ns/msg, decoder %.0f ns/msg",
+                    legacyNanos / (double) messages, decoderNanos / (double) messages));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void assertFallback(byte[] data) {
+        assertEquals(new String(data, StandardCharsets.UTF_8),
+                StreamingCommandDecoder.Result.FALLBACK, decoder.decode(data));
+    }
+
+    private void runDecoder(List<byte[]> trace, int rounds) throws JSONException {
+        for (int r = 0; r < rounds; r++) {
+            for (byte[] message : trace) {
+                if (decoder.decode(message) == StreamingCommandDecoder.Result.COMMAND
+                        && decoder.getMessageId() % 2 == 0) {
+                    // Half the commands are fresh (payload built), half are retried duplicates
+                    decoder.buildPayload();
+                }
+            }
+        }
+    }
+
+    private static void runLegacy(List<byte[]> trace, int rounds) throws JSONException {
+        for (int r = 0; r < rounds; r++) {
+            for (byte[] message : trace) {
+                legacyExtract(message);
+            }
+        }
+    }
+
+    /**
+     * What CommandParser + CommandProtocolDetector + processJsonCommand logging did per message:
+     * bytes to String to JSONObject, the C field parsed in canHandle and again in detect,
+     * and the whole message serialized for debug logging.
+     */
+    private static JSONObject legacyExtract(byte[] data) throws JSONException {
+        int start = data[0] == '#' ? 5 : 0;
+        int end = data[0] == '#' ? data.length - 2 : data.length;
+        JSONObject json = new JSONObject(new String(data, start, end - start, StandardCharsets.UTF_8));
+        json.toString();
+        if ("msg_ack".equals(json.optString("type", ""))) {
+            return null;
+        }
+        if (json.has("C")) {
+            new JSONObject(json.optString("C", ""));
+            return new JSONObject(json.optString("C", ""));
+        }
+        return json;
+    }
+
+    /** Representative phone to glasses traffic: ACKs, hot commands wrapped in C, and direct JSON. */
+    private static List<byte[]> captureTrace() throws JSONException {
+        List<byte[]> trace = new ArrayList<>();
+        long mId = 1_700_000_000_000L;
+        trace.add(bytes("{\"type\":\"msg_ack\",\"mId\":" + (mId++) + "}"));
+        trace.add(frame(wrap(new JSONObject().put("type", "take_photo").put("requestId", "photo_abc123")
+                .put("appId", "com.mentra.camera").put("webhookUrl", "https://example.com/hook?x=1&y=2")
+                .put("size", "medium").put("save", false).put("mId", mId++))));
+        trace.add(frame(wrap(new JSONObject().put("type", "ping").put("timestamp", 1700000000123L).put("mId", mId++))));
+        trace.add(frame(wrap(new JSONObject().put("type", "phone_ready").put("timestamp", 1700000000456L))));
+        trace.add(frame(wrap(new JSONObject().put("type", "request_battery_state").put("mId", mId++))));
+        trace.add(frame(wrap(new JSONObject().put("type", "set_imu_stream").put("enabled", true)
+                .put("rate_hz", 100).put("sensors", new org.json.JSONArray().put("accel").put("gyro")).put("mId", mId++))));
+        trace.add(bytes("{\"type\":\"keep_rtmp_stream_alive\",\"streamId\":\"s-42\",\"ackId\":\"a-7\",\"mId\":" + (mId++) + "}"));
+        trace.add(bytes("{\"type\":\"msg_ack\",\"mId\":" + (mId++) + "}"));
+        return trace;
+    }
+
+    static String wrap(JSONObject command) throws JSONException {
+        return new JSONObject().put("C", command.toString()).put("V", 1).put("B", new JSONObject()).toString();
+    }
+
+    static byte[] frame(String json) {
+        byte[] payload = bytes(json);
+        byte[] framed = new byte[payload.length + 7];
+        framed[0] = '#';
+        framed[1] = '#';
+        framed[2] = 0x30;
+        framed[3] = (byte) (payload.length >> 8);
+        framed[4] = (byte) payload.length;
+        System.arraycopy(payload, 0, framed, 5, payload.length);
+        framed[framed.length - 2] = '$';
+        framed[framed.length - 1] = '$';
+        return framed;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String escapeAllNonAscii(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '\t') {
+                sb.append("\\t");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c > 0x7e) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Bytes allocated by this thread so far, or 0 where the JVM can't report it. */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,255 @@
+package com.mentra.asg_client.utils.smartglasses;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class CompactWireCodecTest {
+
+    // BES2700 BLE write limit, which MentraLive caps writes at
+    private static final int FRAME_SIZE = 253;
+
+    // Golden frames, shared with bluetooth-sdk's CompactWireCodecTest: the phone's link check probe as
+    // its codec encodes it, and our echo, chunked into 32-byte frames
+    private static final String PROBE = "{\"type\":\"wire_format_probe\"}";
+    private static final String PROBE_FRAME =
+            "2323371F00C101007B2274797065223A22776972655F666F726D61745F70726F6265227D2424";
+    private static final String ECHO = "{\"type\":\"wire_format_echo\",\"wireFormat\":1}";
+    private static final String[] ECHO_FRAMES = {
+            "2323370019C101010700037B2274797065223A22776972655F666F726D612424",
+            "2323370019C10101070103745F6563686F222C2277697265466F726D61742424",
+            "232337000AC10101070203223A317D2424",
+    };
+
+    private static final String[] COMMANDS = {
+            "{\"type\":\"ping\",\"mId\":1734034000101}",
+            "{\"type\":\"button_photo_setting\",\"size\":\"large\",\"mId\":1734034000102}",
+            "{\"type\":\"set_wifi_credentials\",\"ssid\":\"Office-5G\",\"password\":\"correct horse battery staple\","
+                    + "\"mId\":1734034000103}",
+            "{\"type\":\"take_photo\",\"requestId\":\"photo_1734034000000_ab12cd\",\"appId\":\"com.mentra.camera\","
+                    + "\"webhookUrl\":\"https://api.mentra.glass/apps/com.mentra.camera/webhook/photo?session=8f0a2c1e\","
+                    + "\"authToken\":\"eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.eyJzdWIiOiJ1c2VyQG1lbnRyYS5nbGFzcyJ9\","
+                    + "\"size\":\"medium\",\"compress\":\"medium\",\"transferMethod\":\"auto\",\"bleImgId\":\"I123456\","
+                    + "\"save\":false,\"mId\":1734034000104}",
+            "{\"type\":\"start_rtmp_stream\",\"rtmpUrl\":\"rtmp://live.mentra.glass/live/abcdef0123456789abcdef01\","
+                    + "\"streamId\":\"stream_1734034000000\",\"video\":{\"width\":1280,\"height\":720,"
+                    + "\"bitrate\":2000000,\"frameRate\":30},\"audio\":{\"bitrate\":64000,\"sampleRate\":48000,"
+                    + "\"echoCancellation\":true,\"noiseSuppression\":true},\"mId\":1734034000105}",
+    };
+
+    @Test
+    public void echoMatchesGoldenFrames() {
+        List<byte[]> frames = CompactWireCodec.encode(ECHO.getBytes(StandardCharsets.UTF_8), 32, 7);
+
+        assertEquals(ECHO_FRAMES.length, frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertArrayEquals(hex(ECHO_FRAMES[i]), frames.get(i));
+        }
+    }
+
+    @Test
+    public void phoneProbeIsDecodedFromGoldenFrame() throws Exception {
+        byte[] frame = hex(PROBE_FRAME);
+        byte[] payload = new byte[frame.length - 7];
+        System.arraycopy(frame, 5, payload, 0, payload.length);
+
+        assertTrue(CompactWireCodec.isCompactPayload(payload));
+        assertArrayEquals(PROBE.getBytes(StandardCharsets.UTF_8), decode(Collections.singletonList(frame)));
+    }
+
+    @Test
+    public void smallMessageIsOneFrameWithoutEnvelope() throws Exception {
+        byte[] message = COMMANDS[1].getBytes(StandardCharsets.UTF_8);
+        List<byte[]> frames = CompactWireCodec.encode(message, FRAME_SIZE, 0);
+
+        assertEquals(1, frames.size());
+        byte[] frame = frames.get(0);
+        assertEquals(message.length + CompactWireCodec.HEADER_SIZE + CompactWireCodec.FRAME_OVERHEAD, frame.length);
+        assertEquals(K900ProtocolUtils.CMD_TYPE_COMPACT, frame[2]);
+        assertEquals(frame.length - 7, ((frame[3] & 0xFF) << 8) | (frame[4] & 0xFF));
+        assertEquals('$', frame[frame.length - 1]);
+        assertArrayEquals(message, decode(frames));
+    }
+
+    @Test
+    public void largeMessageIsChunkedToFrameSize() throws Exception {
+        byte[] message = randomJson(2000, 3);
+        List<byte[]> frames = CompactWireCodec.encode(message, FRAME_SIZE, 300);
+
+        assertTrue(frames.size() > 1);
+        CompactWireCodec.Header header = new CompactWireCodec.Header();
+        for (int i = 0; i < frames.size(); i++) {
+            byte[] frame = frames.get(i);
+            assertTrue(frame.length <= FRAME_SIZE);
+            assertTrue(CompactWireCodec.parseHeader(frame, 5, frame.length - 7, header));
+            assertTrue(header.isChunked());
+            assertEquals(300 & 0xFF, header.messageId);
+            assertEquals(i, header.index);
+            assertEquals(frames.size(), header.count);
+        }
+        assertArrayEquals(message, decode(frames));
+    }
+
+    @Test
+    public void deflatesOnlyWhenSmaller() throws Exception {
+        CompactWireCodec.Header header = new CompactWireCodec.Header();
+
+        StringBuilder repetitive = new StringBuilder("{\"type\":\"settings\",\"values\":[");
+        for (int i = 0; i < 40; i++) {
+            repetitive.append("{\"key\":\"setting\",\"enabled\":true},");
+        }
+        repetitive.append("{}]}");
+        byte[] compressible = repetitive.toString().getBytes(StandardCharsets.UTF_8);
+        List<byte[]> frames = CompactWireCodec.encode(compressible, FRAME_SIZE, 1);
+        assertEquals(1, frames.size());
+        assertTrue(CompactWireCodec.parseHeader(frames.get(0), 5, frames.get(0).length - 7, header));
+        assertTrue(header.isDeflated());
+        assertArrayEquals(compressible, decode(frames));
+
+        // The codec doesn't look inside messages, so random bytes stand in for data that won't deflate
+        byte[] random = new byte[200];
+        new Random(5).nextBytes(random);
+        frames = CompactWireCodec.encode(random, FRAME_SIZE, 2);
+        assertTrue(CompactWireCodec.parseHeader(frames.get(0), 5, frames.get(0).length - 7, header));
+        assertFalse(header.isDeflated());
+        assertArrayEquals(random, decode(frames));
+    }
+
+    @Test
+    public void payloadsAreRecognisedWithoutTheFrameHeader() {
+        byte[] frame = CompactWireCodec.encode(COMMANDS[0].getBytes(StandardCharsets.UTF_8), FRAME_SIZE, 0).get(0);
+        byte[] payload = new byte[frame.length - 7];
+        System.arraycopy(frame, 5, payload, 0, payload.length);
+
+        assertTrue(CompactWireCodec.isCompactPayload(payload));
+        assertFalse(CompactWireCodec.isCompactPayload(COMMANDS[0].getBytes(StandardCharsets.UTF_8)));
+        assertFalse(CompactWireCodec.isCompactPayload("{\"C\":\"cs_batv\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void rejectsUnknownVersions() {
+        byte[] frame = CompactWireCodec.encode(COMMANDS[0].getBytes(StandardCharsets.UTF_8), FRAME_SIZE, 0).get(0);
+        frame[6] = (byte) (CompactWireCodec.VERSION + 1);
+        assertFalse(CompactWireCodec.parseHeader(frame, 5, frame.length - 7, new CompactWireCodec.Header()));
+    }
+
+    @Test
+    public void messagesNeedingTooManyFramesFallBack() {
+        assertNull(CompactWireCodec.encode(randomJson(40_000, 9), 64, 0));
+    }
+
+    @Test
+    public void needsFewerBytesAndWritesThanCWrappedJson() throws Exception {
+        long legacyBytes = 0;
+        long legacyWrites = 0;
+        long compactBytes = 0;
+        long compactWrites = 0;
+        for (int i = 0; i < COMMANDS.length; i++) {
+            for (byte[] write : legacyWrites(COMMANDS[i])) {
+                legacyBytes += write.length;
+                legacyWrites++;
+            }
+            List<byte[]> frames = CompactWireCodec.encode(COMMANDS[i].getBytes(StandardCharsets.UTF_8), FRAME_SIZE, i);
+            for (byte[] frame : frames) {
+                compactBytes += frame.length;
+                compactWrites++;
+            }
+            assertArrayEquals(COMMANDS[i].getBytes(StandardCharsets.UTF_8), decode(frames));
+        }
+
+        // Each write waits for the previous one's completion, roughly a connection interval
+        assertTrue("compact framing should save at least a third of the bytes", compactBytes * 3 < legacyBytes * 2);
+        assertTrue("compact framing should not need more writes", compactWrites < legacyWrites);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Reassemble and decode frames the way the receiving side does */
+    private static byte[] decode(List<byte[]> frames) throws Exception {
+        CompactWireCodec.Header header = new CompactWireCodec.Header();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        boolean deflated = false;
+        for (byte[] frame : frames) {
+            assertTrue(CompactWireCodec.parseHeader(frame, 5, frame.length - 7, header));
+            body.write(frame, header.bodyOffset, header.bodyLength);
+            deflated = header.isDeflated();
+        }
+        byte[] bytes = body.toByteArray();
+        return CompactWireCodec.decodeBody(bytes, 0, bytes.length, deflated);
+    }
+
+    /** The writes MentraLive sends for a command today: C-wrapped, or MessageChunker chunks over 200 bytes */
+    private static List<byte[]> legacyWrites(String command) throws Exception {
+        List<byte[]> writes = new ArrayList<>();
+        String wrapped = new JSONObject().put("C", command).toString();
+        if (wrapped.getBytes(StandardCharsets.UTF_8).length <= 200) {
+            writes.add(pack(wrapped));
+            return writes;
+        }
+        long messageId = new JSONObject(command).optLong("mId", -1);
+        byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+        int total = (bytes.length + 79) / 80;
+        for (int i = 0; i < total; i++) {
+            JSONObject chunk = new JSONObject();
+            chunk.put("t", "ck");
+            chunk.put("id", messageId + "_1734034000000");
+            chunk.put("c", i);
+            chunk.put("n", total);
+            chunk.put("d", new String(bytes, i * 80, Math.min(80, bytes.length - i * 80), StandardCharsets.UTF_8));
+            if (i == total - 1) {
+                chunk.put("mId", messageId);
+            }
+            writes.add(pack(new JSONObject().put("C", chunk.toString()).toString()));
+        }
+        return writes;
+    }
+
+    private static byte[] pack(String json) {
+        byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[payload.length + 7];
+        frame[0] = '#';
+        frame[1] = '#';
+        frame[2] = K900ProtocolUtils.CMD_TYPE_STRING;
+        frame[3] = (byte) (payload.length & 0xFF);
+        frame[4] = (byte) (payload.length >> 8);
+        System.arraycopy(payload, 0, frame, 5, payload.length);
+        frame[frame.length - 2] = '$';
+        frame[frame.length - 1] = '$';
+        return frame;
+    }
+
+    private static byte[] hex(String hex) {
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return out;
+    }
+
+    /** A JSON string value of random letters, which deflates poorly */
+    private static byte[] randomJson(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder("{\"d\":\"");
+        while (json.length() < length - 2) {
+            json.append((char) ('a' + random.nextInt(26)));
+        }
+        return json.append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -157,3 +157,39 @@ extern "C" JNIEXPORT jbyteArray JNICALL
 Java_com_mentra_lc3Lib_Lc3Cpp_decodeLC3(JNIEnv *env, jclass clazz, jlong decPtr, jbyteArray lc3Data, jint frameSize) {
     return decodeLC3WithFrameSize(env, decPtr, lc3Data, (uint16_t)frameSize);
 }
+
+// Packet loss concealment: synthesize frameCount frames from the decoder's history
+// (lc3_decode with no input runs the codec's PLC and keeps the decoder state in step)
+extern "C" JNIEXPORT jbyteArray JNICALL
+Java_com_mentra_lc3Lib_Lc3Cpp_concealLC3(JNIEnv *env, jclass clazz, jlong decPtr, jint frameCount) {
+    int dtUs = 10000;
+    int srHz = 16000;
+
+    uint16_t samplesPerFrame = lc3_frame_samples(dtUs, srHz);
+    uint16_t bytesPerFrame = samplesPerFrame * 2;
+
+    int outSize = frameCount > 0 ? frameCount * bytesPerFrame : 0;
+    if (outSize == 0) {
+        return env->NewByteArray(0);
+    }
+
+    int16_t* outBuf = (int16_t*)malloc(outSize);
+    if (outBuf == nullptr) {
+        return env->NewByteArray(0);
+    }
+    jbyteArray resultArray = env->NewByteArray(outSize);
+    if (resultArray == nullptr) {
+        free(outBuf);
+        return nullptr;
+    }
+
+    lc3_decoder_t decoder = (lc3_decoder_t)reinterpret_cast<void*>(decPtr);
+
+    for (int i = 0; i < frameCount; i++) {
+        lc3_decode(decoder, nullptr, 0, LC3_PCM_FORMAT_S16, outBuf + i * samplesPerFrame, 1);
+    }
+
+    env->SetByteArrayRegion(resultArray, 0, outSize, (jbyte*)outBuf);
+    free(outBuf);
+    return resultArray;
+}
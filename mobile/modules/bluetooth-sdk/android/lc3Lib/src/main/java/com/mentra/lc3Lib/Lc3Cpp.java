@@ -35,4 +35,7 @@ public class Lc3Cpp {
     public static byte[] decodeLC3(long decoderPtr, byte[] lc3Data) {
         return decodeLC3(decoderPtr, lc3Data, 20);
     }
+
+    // Packet loss concealment: PCM for frameCount missing frames, continuing from the decoder's state
+    public static native byte[] concealLC3(long decoderPtr, int frameCount);
 }
@@ -652,6 +652,31 @@ class DeviceManager {
         }
     }
 
+    /**
+     * Conceal glasses mic frames that were lost on the link, so the decoder and downstream consumers
+     * see a continuous stream
+     */
+    fun handleGlassesMicLoss(frameCount: Int) {
+        lastLc3Event = System.currentTimeMillis()
+        val pcmData: ByteArray?
+        synchronized(lc3Lock) {
+            if (lc3DecoderPtr == 0L) {
+                return
+            }
+
+            try {
+                // A decode without input runs the LC3 packet loss concealment
+                pcmData = Lc3Cpp.concealLC3(lc3DecoderPtr, frameCount)
+            } catch (e: Exception) {
+                Bridge.log("MAN: Failed to conceal lost glasses LC3: ${e.message}")
+                return
+            }
+        }
+        if (pcmData != null && pcmData.isNotEmpty()) {
+            handlePcm(pcmData)
+        }
+    }
+
     fun handlePcm(pcmData: ByteArray) {
         handleSendingPcm(pcmData)
 
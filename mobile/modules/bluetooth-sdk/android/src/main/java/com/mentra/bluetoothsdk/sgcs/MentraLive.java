@@ -25,6 +25,7 @@ import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.util.Log;
 
@@ -41,6 +42,9 @@ import com.mentra.bluetoothsdk.utils.BitmapJavaUtils;
 import com.mentra.bluetoothsdk.utils.SmartGlassesConnectionState;
 import com.mentra.bluetoothsdk.utils.K900ProtocolUtils;
 import com.mentra.bluetoothsdk.utils.MessageChunker;
+import com.mentra.bluetoothsdk.utils.BleSendScheduler;
+import com.mentra.bluetoothsdk.utils.CompactWireCodec;
+import com.mentra.bluetoothsdk.utils.audio.Lc3JitterBuffer;
 import com.mentra.bluetoothsdk.utils.audio.Lc3Player;
 import com.mentra.bluetoothsdk.utils.BlePhotoUploadService;
 import com.mentra.bluetoothsdk.utils.IncidentLogBleRelayNaming;
@@ -61,7 +65,9 @@ import org.json.JSONObject;
 
 import java.util.Set;
 import java.util.HashSet;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -75,6 +81,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.Random;
@@ -194,7 +202,7 @@ public class MentraLive extends SGCManager {
     private BluetoothA2dp a2dpProfile = null;
     private boolean isA2dpProxyRegistered = false;
 
-    private ConcurrentLinkedQueue<byte[]> sendQueue = new ConcurrentLinkedQueue<>();
+    private final BleSendScheduler sendScheduler = new BleSendScheduler();
     // Queue for serializing BLE descriptor writes (only one GATT operation at a time)
     private final ConcurrentLinkedQueue<BluetoothGattDescriptor> pendingDescriptorWrites = new ConcurrentLinkedQueue<>();
     private boolean isDescriptorWriteInProgress = false;
@@ -207,6 +215,17 @@ public class MentraLive extends SGCManager {
     private static final long CORE_TOKEN_RETRY_DELAY_MS = 250;
     // Current MTU size
     private int currentMtu = 23; // Default BLE MTU
+    // File transfer window agreed with the glasses (1 = stop-and-wait, for older glasses)
+    private static final int MAX_FILE_TRANSFER_WINDOW = 8;
+    private static final int MAX_MISSING_PACKET_REQUESTS = 3;
+    private int fileTransferWindow = 1;
+    // Compact wire format agreed with the glasses (CompactWireCodec); 0 = C-wrapped JSON, for older
+    // glasses and until the link check has shown the BES relays compact frames on this connection
+    private volatile int compactWireVersion = 0;
+    // Compact wire format the glasses advertised in glasses_ready, pending the link check
+    private volatile int offeredWireVersion = 0;
+    private final AtomicInteger compactMessageId = new AtomicInteger();
+    private final CompactWireCodec.Decoder compactDecoder = new CompactWireCodec.Decoder();
 
     // Audio microphone state tracking
     private boolean shouldUseGlassesMic = false; // Whether to use glasses microphone for audio input
@@ -221,9 +240,26 @@ public class MentraLive extends SGCManager {
     private int micOnCount = 0;
     private int micOffCount = 0;
 
-    // Rate limiting - minimum delay between BLE characteristic writes
-    private static final long MIN_SEND_DELAY_MS = 160; // 160ms minimum delay (increased from 100ms)
-    private long lastSendTimeMs = 0; // Timestamp of last send
+    // BLE writes are paced by write completion (onCharacteristicWrite), not a fixed delay
+    private static final int BES_MAX_WRITE_SIZE = 253; // BES2700 BLE write limit (see MessageChunker)
+    private static final long WRITE_TIMEOUT_MS = 1000; // Give up on a write whose callback never came
+    private static final long WRITE_FAILED_RETRY_DELAY_MS = 500;
+    private static final long WRITE_BUSY_RETRY_DELAY_MS = 20;
+    private static final long SEND_METRICS_LOG_INTERVAL_MS = 30000;
+    // Phone -> glasses messages the glasses are blocked on; sent ahead of other commands
+    private static final Set<String> ACK_LANE_MESSAGE_TYPES = new HashSet<>(Arrays.asList(
+            "transfer_complete", "request_missing_packets", "file_received", "ble_photo_transfer_complete", "ping"));
+
+    // Binary IMU stream frames (asg_client ImuStreamFrame): layout and fixed-point scales
+    private static final int IMU_FRAME_VERSION = 1;
+    private static final int IMU_FRAME_HEADER_SIZE = 10;
+    private static final int IMU_FRAME_SAMPLE_SIZE = 34;
+    private static final double IMU_ACCEL_SCALE = 200.0;  // LSB per m/s^2
+    private static final double IMU_GYRO_SCALE = 1000.0;  // LSB per rad/s
+    private static final double IMU_MAG_SCALE = 10.0;     // LSB per uT
+    private static final double IMU_QUAT_SCALE = 32767.0; // Q15
+    private static final double IMU_EULER_SCALE = 100.0;  // LSB per degree
+    private long lastSendMetricsLogMs = 0;
 
     // Local state tracking (not in parent SGCManager)
     private boolean isCharging = false;  // Charging status (batteryLevel is in parent)
@@ -318,6 +354,7 @@ public class MentraLive extends SGCManager {
         long startTime;
         boolean isComplete;
         boolean isAnnounced;
+        int missingPacketRequests; // Selective retransmit rounds asked for (windowed transfers)
 
         // BES2700 firmware hardcodes FILE_PACK_SIZE=400 when calculating totalPack.
         // We "lie" about fileSize to make BES expect correct packet count.
@@ -493,7 +530,37 @@ public class MentraLive extends SGCManager {
     private final SecureRandom secureRandom = new SecureRandom();
     private final long deviceId = System.currentTimeMillis() ^ new Random().nextLong();
 
-    private byte lastReceivedLc3Sequence = -1;
+    // Reorders incoming mic packets and conceals lost ones before they reach the decoders
+    private final Lc3JitterBuffer lc3JitterBuffer = new Lc3JitterBuffer(LC3_FRAME_SIZE, new Lc3JitterBuffer.Listener() {
+        @Override
+        public void onFrames(int sequence, byte[] frames) {
+            deliverLc3Frames(sequence, frames);
+        }
+
+        @Override
+        public void onLoss(int frameCount) {
+            DeviceManager.getInstance().handleGlassesMicLoss(frameCount);
+            if (audioPlaybackEnabled && lc3AudioPlayer != null) {
+                lc3AudioPlayer.writeLoss(frameCount);
+            }
+        }
+    });
+    // Conceals a gap the jitter buffer is still holding packets behind once they've waited too long,
+    // so held audio plays out even when no further packet arrives. Off the main thread, since the
+    // flush delivers audio into the decode and forwarding path
+    private final HandlerThread lc3FlushThread = new HandlerThread("Lc3JitterFlush");
+    private final Handler lc3FlushHandler;
+    private final AtomicBoolean lc3FlushScheduled = new AtomicBoolean(false);
+    private final Runnable lc3FlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            lc3FlushScheduled.set(false);
+            lc3JitterBuffer.flushStale(System.currentTimeMillis());
+            scheduleLc3Flush();
+        }
+    };
+    private static final long LC3_METRICS_LOG_INTERVAL_MS = 30000;
+    private long lastLc3MetricsLogTime = 0;
     private byte lc3SequenceNumber = 0;
     private long lc3DecoderPtr = 0;
     private Lc3Player lc3AudioPlayer;
@@ -513,12 +580,14 @@ public class MentraLive extends SGCManager {
     // Pending message data structure
     private static class PendingMessage {
         final String messageData;
+        final int sendLane;
         final long timestamp;
         final int retryCount;
         final Runnable retryRunnable;
 
-        PendingMessage(String messageData, long timestamp, int retryCount, Runnable retryRunnable) {
+        PendingMessage(String messageData, int sendLane, long timestamp, int retryCount, Runnable retryRunnable) {
             this.messageData = messageData;
+            this.sendLane = sendLane;
             this.timestamp = timestamp;
             this.retryCount = retryCount;
             this.retryRunnable = retryRunnable;
@@ -553,6 +622,9 @@ public class MentraLive extends SGCManager {
         // Initialize connection state
         DeviceStore.INSTANCE.apply("glasses", "connectionState", ConnTypes.DISCONNECTED);
 
+        lc3FlushThread.start();
+        lc3FlushHandler = new Handler(lc3FlushThread.getLooper());
+
         // Initialize CTKD bonding receiver
         initializeBondingReceiver();
 
@@ -1213,6 +1285,10 @@ public class MentraLive extends SGCManager {
 
                     connectedDevice = null;
                     glassesReady = false; // Reset ready state on disconnect
+                    compactWireVersion = 0;
+                    offeredWireVersion = 0;
+                    sendScheduler.setCoalescingEnabled(false);
+                    compactDecoder.clear();
 
                     // Reset audio pairing flags
                     glassesReadyReceived = false;
@@ -1248,6 +1324,10 @@ public class MentraLive extends SGCManager {
 
                     // Close LC3 audio logging
                     closeLc3Logging();
+                    Bridge.log("LIVE: LC3 jitter buffer: " + lc3JitterBuffer.metricsSummary());
+                    lc3FlushHandler.removeCallbacks(lc3FlushRunnable);
+                    lc3FlushScheduled.set(false);
+                    lc3JitterBuffer.reset();
 
                     //stop LC3 player
                     if (lc3AudioPlayer != null) {
@@ -1392,26 +1472,17 @@ public class MentraLive extends SGCManager {
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 //Bridge.log("LIVE: Characteristic write successful");
 
-                // Calculate time since last send to enforce rate limiting
-                long currentTimeMs = System.currentTimeMillis();
-                long timeSinceLastSendMs = currentTimeMs - lastSendTimeMs;
-                long nextProcessDelayMs;
-
-                if (timeSinceLastSendMs < MIN_SEND_DELAY_MS) {
-                    // Not enough time has elapsed, enforce minimum delay
-                    nextProcessDelayMs = MIN_SEND_DELAY_MS - timeSinceLastSendMs;
-                    //Bridge.log("LIVE: Rate limiting: Next queue processing in " + nextProcessDelayMs + "ms");
-                } else {
-                    // Enough time has already passed
-                    nextProcessDelayMs = 0;
-                }
-
-                // Schedule the next queue processing with appropriate delay
-                handler.postDelayed(processSendQueueRunnable, nextProcessDelayMs);
+                // The link took the write: send the next one right away
+                sendScheduler.onWriteComplete();
+                handler.removeCallbacks(processSendQueueRunnable);
+                handler.post(processSendQueueRunnable);
             } else {
-                Log.e(TAG, "Characteristic write failed with status: " + status);
-                // If write fails, try again with a longer delay
-                handler.postDelayed(processSendQueueRunnable, 500);
+                // The frames go back on their lanes; back off before writing them again
+                int dropped = sendScheduler.onWriteFailed();
+                Log.e(TAG, "Characteristic write failed with status: " + status
+                        + (dropped > 0 ? ", dropped " + dropped + " frame(s) after repeated failures" : ", will retry"));
+                handler.removeCallbacks(processSendQueueRunnable);
+                handler.postDelayed(processSendQueueRunnable, WRITE_FAILED_RETRY_DELAY_MS);
             }
         }
 
@@ -1683,74 +1754,95 @@ public class MentraLive extends SGCManager {
     }
 
     /**
-     * Process the send queue with rate limiting
+     * Send the next write from the send scheduler, if the previous one has completed.
+     * Runs on the handler; re-triggered by onCharacteristicWrite and by queueData.
      */
     private void processSendQueue() {
         if (!isConnected || bluetoothGatt == null || txCharacteristic == null) {
             return;
         }
 
-        // Check if we need to enforce rate limiting
-        long currentTimeMs = System.currentTimeMillis();
-        long timeSinceLastSendMs = currentTimeMs - lastSendTimeMs;
+        if (sendScheduler.isWriteInFlight()) {
+            long inFlightMs = sendScheduler.getInFlightMillis();
+            if (inFlightMs < WRITE_TIMEOUT_MS) {
+                // onCharacteristicWrite will trigger the next send
+                return;
+            }
+            Log.w(TAG, "BLE write not confirmed after " + inFlightMs + "ms, sending next");
+            sendScheduler.onWriteComplete();
+        }
 
-        if (timeSinceLastSendMs < MIN_SEND_DELAY_MS) {
-            // Not enough time has elapsed since last send
-            // Reschedule processing after the remaining delay
-            long remainingDelayMs = MIN_SEND_DELAY_MS - timeSinceLastSendMs;
-            Bridge.log("LIVE: Rate limiting: Waiting " + remainingDelayMs + "ms before next BLE send");
-            handler.postDelayed(processSendQueueRunnable, remainingDelayMs);
+        byte[] data = sendScheduler.nextWrite(Math.min(currentMtu - 3, BES_MAX_WRITE_SIZE));
+        if (data == null) {
             return;
         }
 
-        // Send the next item from the queue
-        byte[] data = sendQueue.poll();
-        if (data != null) {
-            // Update last send time before sending
-            lastSendTimeMs = currentTimeMs;
-            Bridge.log("LIVE: 📤 Sending queued data - Queue size: " + sendQueue.size() +
-                  ", Time since last send: " + timeSinceLastSendMs + "ms");
-            sendDataInternal(data);
+        if (sendDataInternal(data)) {
+            // Watchdog in case the write callback never arrives
+            handler.postDelayed(processSendQueueRunnable, WRITE_TIMEOUT_MS);
+        } else {
+            // Stack busy (e.g. another GATT operation in progress): keep the data and retry shortly
+            sendScheduler.onWriteRejected();
+            handler.postDelayed(processSendQueueRunnable, WRITE_BUSY_RETRY_DELAY_MS);
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastSendMetricsLogMs >= SEND_METRICS_LOG_INTERVAL_MS) {
+            lastSendMetricsLogMs = now;
+            Bridge.log("LIVE: 📤 BLE send lanes: " + sendScheduler.metricsSummary());
         }
     }
 
     /**
      * Send data through BLE
+     * @return true if the write was started
      */
-    private void sendDataInternal(byte[] data) {
+    private boolean sendDataInternal(byte[] data) {
         if (!isConnected || bluetoothGatt == null || txCharacteristic == null || data == null) {
-            return;
+            return false;
         }
 
         try {
             txCharacteristic.setValue(data);
-            bluetoothGatt.writeCharacteristic(txCharacteristic);
+            return bluetoothGatt.writeCharacteristic(txCharacteristic);
         } catch (Exception e) {
             Log.e(TAG, "Error sending data via BLE", e);
+            return false;
         }
     }
 
     /**
-     * Queue data to be sent
+     * Queue data to be sent on the command lane
      */
     private void queueData(byte[] data) {
+        queueData(data, BleSendScheduler.LANE_COMMAND);
+    }
+
+    /**
+     * Queue data to be sent
+     * @param lane BleSendScheduler lane: audio, ACK, command or bulk
+     */
+    private void queueData(byte[] data, int lane) {
         if (data != null) {
-            sendQueue.add(data);
-            // Bridge.log("LIVE: 📋 Added " + data.length + " to send queue - New queue size: " + sendQueue.size());
+            sendScheduler.enqueue(lane, data);
 
-            // Log all outgoing bytes for testing
-            StringBuilder hexBytes = new StringBuilder();
-            for (byte b : data) {
-                hexBytes.append(String.format("%02X ", b));
+            // Trigger queue processing if no write is outstanding
+            if (!sendScheduler.isWriteInFlight()) {
+                handler.removeCallbacks(processSendQueueRunnable);
+                handler.post(processSendQueueRunnable);
             }
-            // Bridge.log("LIVE: 🔍 Outgoing bytes: " + hexBytes.toString().trim());
-
-            // Trigger queue processing if not already running
-            handler.removeCallbacks(processSendQueueRunnable);
-            handler.post(processSendQueueRunnable);
         }
     }
 
+    /**
+     * Send lane for an outgoing JSON message: replies the glasses are waiting on go ahead of
+     * ordinary commands.
+     */
+    private static int sendLaneFor(JSONObject json) {
+        return ACK_LANE_MESSAGE_TYPES.contains(json.optString("type", ""))
+                ? BleSendScheduler.LANE_ACK : BleSendScheduler.LANE_COMMAND;
+    }
+
     /**
      * Generate an esoteric message ID using timestamp, device ID, and random values
      * @return A unique, unpredictable message ID
@@ -1774,6 +1866,7 @@ public class MentraLive extends SGCManager {
      */
     private void sendJson(JSONObject json, boolean wakeup) {
         if (json != null) {
+            int lane = sendLaneFor(json);
             try {
                 if (buildNumberInt < 5) {
                     String jsonStr = json.toString();
@@ -1781,7 +1874,7 @@ public class MentraLive extends SGCManager {
                     if ("take_photo".equals(json.optString("type", ""))) {
                         Bridge.log("LIVE: PHOTO PIPELINE [4/4] sendJson(build<5) -> sendDataToGlasses — " + summarizeOutgoingMessage(jsonStr));
                     }
-                    sendDataToGlasses(jsonStr, wakeup);
+                    sendDataToGlasses(jsonStr, wakeup, lane);
                 } else {
                     // Add esoteric message ID to the JSON
                     long messageId = generateEsotericMessageId();
@@ -1813,13 +1906,13 @@ public class MentraLive extends SGCManager {
                     }
 
                     // Track the message for ACK with appropriate timeout
-                    trackMessageForAck(messageId, jsonStr, ackTimeout);
+                    trackMessageForAck(messageId, jsonStr, lane, ackTimeout);
 
                     // Send the data
                     if ("take_photo".equals(json.optString("type", ""))) {
                         Bridge.log("LIVE: PHOTO PIPELINE [4/4] sendJson -> sendDataToGlasses (mId=" + messageId + ", ackTimeoutMs=" + ackTimeout + ") — " + summarizeOutgoingMessage(jsonStr));
                     }
-                    sendDataToGlasses(jsonStr, wakeup);
+                    sendDataToGlasses(jsonStr, wakeup, lane);
                 }
             } catch (JSONException e) {
                 Log.e(TAG, "Error adding message ID to JSON", e);
@@ -1846,13 +1939,14 @@ public class MentraLive extends SGCManager {
      * Track a message for ACK response
      */
     private void trackMessageForAck(long messageId, String messageData) {
-        trackMessageForAck(messageId, messageData, ACK_TIMEOUT_MS);
+        trackMessageForAck(messageId, messageData, BleSendScheduler.LANE_COMMAND, ACK_TIMEOUT_MS);
     }
 
     /**
      * Track a message for ACK response with custom timeout
+     * @param sendLane BleSendScheduler lane the message (and any retry) is sent on
      */
-    private void trackMessageForAck(long messageId, String messageData, long timeoutMs) {
+    private void trackMessageForAck(long messageId, String messageData, int sendLane, long timeoutMs) {
         if (!isConnected) {
             Bridge.log("LIVE: Not connected, skipping ACK tracking for message " + messageId);
             return;
@@ -1873,7 +1967,7 @@ public class MentraLive extends SGCManager {
         };
 
         // Create pending message
-        PendingMessage pendingMessage = new PendingMessage(messageData, System.currentTimeMillis(), 0, retryRunnable);
+        PendingMessage pendingMessage = new PendingMessage(messageData, sendLane, System.currentTimeMillis(), 0, retryRunnable);
         pendingMessages.put(messageId, pendingMessage);
 
         // Schedule ACK timeout with custom timeout
@@ -1926,6 +2020,7 @@ public class MentraLive extends SGCManager {
         // Create new pending message with incremented retry count
         PendingMessage retryMessage = new PendingMessage(
             pendingMessage.messageData,
+            pendingMessage.sendLane,
             System.currentTimeMillis(),
             pendingMessage.retryCount + 1,
             pendingMessage.retryRunnable
@@ -1936,7 +2031,7 @@ public class MentraLive extends SGCManager {
 
         // Send the message again
         Bridge.log("LIVE: 📤 Retrying message " + messageId + " (attempt " + retryMessage.retryCount + ")");
-        sendDataToGlasses(pendingMessage.messageData, false);
+        sendDataToGlasses(pendingMessage.messageData, false, pendingMessage.sendLane);
 
         // Schedule next ACK check
         handler.postDelayed(new Runnable() {
@@ -2160,6 +2255,18 @@ public class MentraLive extends SGCManager {
         // Get thread ID for consistent logging
         long threadId = Thread.currentThread().getId();
 
+        // Binary IMU stream frames arrive at up to 200Hz: decode them before any per-packet logging
+        if (size >= 7 && data[0] == 0x23 && data[1] == 0x23 && data[2] == K900ProtocolUtils.CMD_TYPE_IMU) {
+            handleBinaryImuFrame(data, size);
+            return;
+        }
+
+        // Compact JSON frames from glasses that negotiated the wire format
+        if (CompactWireCodec.isCompactFrame(data, size)) {
+            handleCompactFrame(data, size);
+            return;
+        }
+
         // First check if this looks like a K900 protocol formatted message (starts with ##)
         if (size >= 7 && data[0] == 0x23 && data[1] == 0x23) {
             Bridge.log("LIVE: Thread-" + threadId + ": 🔍 DETECTED K900 PROTOCOL FORMAT (## prefix)");
@@ -2664,6 +2771,17 @@ public class MentraLive extends SGCManager {
                 // Stop the readiness check loop since we got confirmation
                 stopReadinessCheckLoop();
 
+                // Newer glasses advertise windowed file transfers; older ones stay stop-and-wait.
+                // The agreed window goes back to them with the MTU config below.
+                fileTransferWindow = Math.max(1, Math.min(MAX_FILE_TRANSFER_WINDOW, json.optInt("fileWindow", 1)));
+                // Several K900 frames per GATT write only once the glasses say they reach their parser intact
+                sendScheduler.setCoalescingEnabled(json.optInt("multiFrameWrites", 0) == 1);
+                // Same for the compact wire format, but older BES firmware may not relay its frame type:
+                // the MTU config below starts a link check, and compact frames are used once it passes
+                compactWireVersion = 0;
+                offeredWireVersion = json.optInt("wireFormat", 0) == CompactWireCodec.VERSION
+                        ? CompactWireCodec.VERSION : 0;
+
                 // Send BLE MTU config to glasses so they can adjust file packet sizes.
                 // Use the minimum of negotiated MTU and BES2700's known limit (256).
                 // BES2700 chip often ignores higher negotiated MTUs and truncates to 253 bytes,
@@ -2752,6 +2870,22 @@ public class MentraLive extends SGCManager {
                 }
                 break;
 
+            case "wire_format_echo":
+                // Our compact probe reached the glasses and their compact answer reached us: the BES
+                // relays compact frames both ways. Switch, and tell the glasses (compactly) to do the same.
+                if (offeredWireVersion > 0 && json.optInt("wireFormat", 0) == offeredWireVersion) {
+                    compactWireVersion = offeredWireVersion;
+                    Bridge.log("LIVE: 📦 Compact wire format " + compactWireVersion + " confirmed");
+                    try {
+                        JSONObject ready = new JSONObject();
+                        ready.put("type", "wire_format_ready");
+                        sendJson(ready, false);
+                    } catch (JSONException e) {
+                        Log.e(TAG, "Error creating wire_format_ready message", e);
+                    }
+                }
+                break;
+
             case "keep_alive_ack":
                 // Process keep-alive ACK from ASG client
                 Bridge.log("LIVE: Received keep-alive ACK from glasses: " + json.toString());
@@ -3260,6 +3394,10 @@ public class MentraLive extends SGCManager {
                 updateConnectionState(ConnTypes.DISCONNECTED);
                 glassesReady = false;
                 glassesReadyReceived = false;
+                // The SoC may come back with other firmware: C-wrapped JSON until it says otherwise
+                compactWireVersion = 0;
+                offeredWireVersion = 0;
+                sendScheduler.setCoalescingEnabled(false);
                 break;
 
             case "sr_adota":
@@ -4338,6 +4476,10 @@ public class MentraLive extends SGCManager {
         // Reset counter and ready flag
         readinessCheckCounter = 0;
         glassesReady = false;
+        // phone_ready must reach glasses of any version, so fall back to C-wrapped JSON, one frame per write
+        compactWireVersion = 0;
+        offeredWireVersion = 0;
+        sendScheduler.setCoalescingEnabled(false);
 
         Bridge.log("LIVE: 🔄 Starting glasses SOC readiness check loop");
 
@@ -4772,6 +4914,8 @@ public class MentraLive extends SGCManager {
         micBeatHandler.removeCallbacksAndMessages(null);
         connectionTimeoutHandler.removeCallbacksAndMessages(null);
         testMessageHandler.removeCallbacksAndMessages(null);
+        lc3FlushHandler.removeCallbacksAndMessages(null);
+        lc3FlushThread.quitSafely();
 
         // Clean up message tracking
         pendingMessages.clear();
@@ -4790,7 +4934,8 @@ public class MentraLive extends SGCManager {
         isConnecting = false;
 
         // Clear the send queue
-        sendQueue.clear();
+        Bridge.log("LIVE: 📤 BLE send lanes at disconnect: " + sendScheduler.metricsSummary());
+        sendScheduler.clear();
 
         // Clear file packet reassembly buffer
         clearFilePacketBuffer();
@@ -5494,6 +5639,8 @@ public class MentraLive extends SGCManager {
             json.put("type", "imu_stream_start");
             json.put("rate_hz", rateHz);
             json.put("batch_ms", batchMs);
+            // Ask for compact binary frames; glasses that don't know them keep sending JSON
+            json.put("format", "binary");
             sendJson(json, false);
         } catch (JSONException e) {
             Log.e(TAG, "Error creating IMU stream start request", e);
@@ -5630,6 +5777,65 @@ public class MentraLive extends SGCManager {
         }
     }
 
+    /**
+     * Handle a compact JSON frame from the glasses (see CompactWireCodec). The message inside is the
+     * JSON a legacy frame carries in "C", so it goes straight to processJsonMessage once complete.
+     */
+    private void handleCompactFrame(byte[] data, int size) {
+        try {
+            byte[] message = compactDecoder.addFrame(data, size);
+            if (message != null) {
+                processJsonMessage(new JSONObject(new String(message, StandardCharsets.UTF_8)));
+            }
+        } catch (DataFormatException | JSONException e) {
+            Log.w(TAG, "Dropping compact frame from glasses: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decode a binary IMU stream frame from the glasses:
+     * ## | 0x36 | length (2, big-endian) | version (1) | count (1) | first timestamp ms (8) |
+     * count x [dt ms (2) | accel (3x int16) | gyro (3x int16) | mag (3x int16) | quat w,x,y,z (4x int16) |
+     * euler (3x int16)] | $$, all big-endian and fixed-point scaled as below.
+     */
+    private void handleBinaryImuFrame(byte[] data, int size) {
+        int payloadLength = ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+        if (payloadLength + 7 > size || payloadLength < IMU_FRAME_HEADER_SIZE) {
+            Log.w(TAG, "Truncated binary IMU frame: " + size + " bytes, payload " + payloadLength);
+            return;
+        }
+        ByteBuffer frame = ByteBuffer.wrap(data, 5, payloadLength);
+        int version = frame.get() & 0xFF;
+        if (version != IMU_FRAME_VERSION) {
+            Log.w(TAG, "Unsupported binary IMU frame version: " + version);
+            return;
+        }
+        int count = frame.get() & 0xFF;
+        if (IMU_FRAME_HEADER_SIZE + count * IMU_FRAME_SAMPLE_SIZE > payloadLength) {
+            Log.w(TAG, "Binary IMU frame too short for " + count + " samples");
+            return;
+        }
+
+        long timestamp = frame.getLong();
+        for (int i = 0; i < count; i++) {
+            timestamp += frame.getShort() & 0xFFFF;
+            double[] accel = readImuValues(frame, 3, IMU_ACCEL_SCALE);
+            double[] gyro = readImuValues(frame, 3, IMU_GYRO_SCALE);
+            double[] mag = readImuValues(frame, 3, IMU_MAG_SCALE);
+            double[] quat = readImuValues(frame, 4, IMU_QUAT_SCALE);
+            double[] euler = readImuValues(frame, 3, IMU_EULER_SCALE);
+            Bridge.sendImuDataEvent(accel, gyro, mag, quat, euler, timestamp);
+        }
+    }
+
+    private static double[] readImuValues(ByteBuffer frame, int count, double scale) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = frame.getShort() / scale;
+        }
+        return values;
+    }
+
     private void handleImuGesture(JSONObject json) {
         try {
             String gesture = json.getString("gesture");
@@ -5652,6 +5858,14 @@ public class MentraLive extends SGCManager {
      * @param data The string data to be sent to the glasses
      */
     public void sendDataToGlasses(String data, boolean wakeup) {
+        sendDataToGlasses(data, wakeup, BleSendScheduler.LANE_COMMAND);
+    }
+
+    /**
+     * @param lane BleSendScheduler lane for a message that goes out in one write; chunked
+     *             messages always use the bulk lane
+     */
+    private void sendDataToGlasses(String data, boolean wakeup, int lane) {
         if (data == null || data.isEmpty()) {
             Log.e(TAG, "Cannot send empty data to glasses");
             return;
@@ -5664,6 +5878,12 @@ public class MentraLive extends SGCManager {
                 Bridge.log("LIVE: PHOTO PIPELINE BLE handoff — sendDataToGlasses() start, wakeup=" + wakeup + ", " + outgoingSummary);
             }
 
+            // Glasses that negotiated the compact wire format take the JSON as-is, in writes sized to
+            // the MTU. Wakeup messages stay C-wrapped: the BES reads "W" to wake the SoC.
+            if (compactWireVersion > 0 && !wakeup && queueCompact(data, lane, outgoingSummary)) {
+                return;
+            }
+
             // First check if the message needs chunking
             // Create a test C-wrapped version to check size
             JSONObject testWrapper = new JSONObject();
@@ -5704,17 +5924,8 @@ public class MentraLive extends SGCManager {
                     // Pack each chunk using the normal K900 protocol
                     byte[] packedData = K900ProtocolUtils.packJsonToK900(chunkStr, wakeup && i == 0); // Only wakeup on first chunk
 
-                    // Queue the chunk for sending
-                    queueData(packedData);
-
-                    // Add small delay between chunks to avoid overwhelming the connection
-                    if (i < chunks.size() - 1) {
-                        try {
-                            Thread.sleep(50); // 50ms delay between chunks
-                        } catch (InterruptedException e) {
-                            Log.w(TAG, "Interrupted during chunk delay");
-                        }
-                    }
+                    // Queue the chunk for sending; chunks are paced by write completion
+                    queueData(packedData, BleSendScheduler.LANE_BULK);
                 }
 
                 Bridge.log("LIVE: All chunks queued for transmission");
@@ -5729,7 +5940,7 @@ public class MentraLive extends SGCManager {
                 byte[] packedData = K900ProtocolUtils.packJsonToK900(data, wakeup);
 
                 // Queue the data for sending
-                queueData(packedData);
+                queueData(packedData, lane);
                 if (isPhotoRequest) {
                     Bridge.log("LIVE: PHOTO PIPELINE BLE handoff — packedLen=" + packedData.length + " bytes queued");
                 }
@@ -5933,7 +6144,7 @@ public class MentraLive extends SGCManager {
         if (json != null) {
             String jsonStr = json.toString();
             Bridge.log("LIVE: 📤 Sending JSON without ACK tracking: " + jsonStr);
-            sendDataToGlasses(jsonStr, wakeup);
+            sendDataToGlasses(jsonStr, wakeup, sendLaneFor(json));
         } else {
             Bridge.log("LIVE: Cannot send JSON to ASG, JSON is null");
         }
@@ -6118,7 +6329,7 @@ public class MentraLive extends SGCManager {
                         // Keep relay entry so glasses can retry after transfer_complete:false.
                         incidentRelay.session = null;
                     }
-                } else {
+                } else if (!requestMissingPacketsIfWindowed(incidentRelay.session)) {
                     List<Integer> missingPackets = incidentRelay.session.getMissingPackets();
                     Log.e(TAG, "❌ BLE incident log transfer incomplete. Missing " + missingPackets.size()
                             + " packets: " + missingPackets);
@@ -6178,7 +6389,7 @@ public class MentraLive extends SGCManager {
 
                     // Clean up - use the bleImgId without extension
                     blePhotoTransfers.remove(bleImgId);
-                } else {
+                } else if (!requestMissingPacketsIfWindowed(photoTransfer.session)) {
                     // Final packet received but transfer incomplete - tell glasses to retry
                     List<Integer> missingPackets = photoTransfer.session.getMissingPackets();
                     Log.e(TAG, "❌ BLE photo transfer incomplete after final packet. Missing " + missingPackets.size() + " packets: " + missingPackets);
@@ -6230,7 +6441,7 @@ public class MentraLive extends SGCManager {
 
                         // Remove from active transfers
                         activeFileTransfers.remove(packetInfo.fileName);
-                    } else {
+                    } else if (!requestMissingPacketsIfWindowed(session)) {
                         // Final packet received but transfer incomplete - tell glasses to retry
                         List<Integer> missingPackets = session.getMissingPackets();
                         Log.e(TAG, "❌ File transfer incomplete after final packet. Missing " + missingPackets.size() + " packets: " + missingPackets);
@@ -6249,6 +6460,28 @@ public class MentraLive extends SGCManager {
             }
     }
 
+    /**
+     * With windowed transfers a retransmitted packet can arrive after the final one, so an
+     * incomplete transfer at the final packet asks for just the missing packets instead of
+     * failing outright (a few rounds at most, and not when most of the file is missing).
+     *
+     * @return true if missing packets were requested and the session should be kept
+     */
+    private boolean requestMissingPacketsIfWindowed(FileTransferSession session) {
+        if (fileTransferWindow <= 1 || session.missingPacketRequests >= MAX_MISSING_PACKET_REQUESTS) {
+            return false;
+        }
+
+        List<Integer> missingPackets = session.getMissingPackets();
+        if (missingPackets.isEmpty() || missingPackets.size() > session.totalPackets / 2) {
+            return false;
+        }
+
+        session.missingPacketRequests++;
+        requestMissingPackets(session.fileName, missingPackets);
+        return true;
+    }
+
     /**
      * Request missing packets from glasses
      */
@@ -6545,6 +6778,42 @@ public class MentraLive extends SGCManager {
         }
     }
 
+    /**
+     * Queue a message as compact wire frames, sized to the MTU.
+     *
+     * @return false if the message is too large for the compact format
+     */
+    private boolean queueCompact(String data, int lane, String summary) {
+        List<byte[]> frames = CompactWireCodec.encode(data.getBytes(StandardCharsets.UTF_8),
+                Math.min(currentMtu - 3, BES_MAX_WRITE_SIZE), compactMessageId.getAndIncrement());
+        if (frames == null) {
+            return false;
+        }
+        int frameLane = frames.size() == 1 ? lane : BleSendScheduler.LANE_BULK;
+        int bytes = 0;
+        for (byte[] frame : frames) {
+            queueData(frame, frameLane);
+            bytes += frame.length;
+        }
+        Bridge.log("LIVE: Sending data to glasses as " + frames.size() + " compact frame(s), "
+                + bytes + " bytes: " + summary);
+        return true;
+    }
+
+    /**
+     * Start the compact wire format link check: the probe always goes out as a compact frame, and
+     * the glasses only see it if the BES relays that frame type. They answer with wire_format_echo.
+     */
+    private void sendWireFormatProbe() {
+        try {
+            JSONObject probe = new JSONObject();
+            probe.put("type", "wire_format_probe");
+            queueCompact(probe.toString(), BleSendScheduler.LANE_COMMAND, "type=wire_format_probe");
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creating wire_format_probe message", e);
+        }
+    }
+
     /**
      * Send BLE MTU config to glasses so they can adjust file packet sizes.
      * The BES2700 chip on the glasses truncates packets to 253 bytes (256 MTU - 3 ATT header)
@@ -6556,9 +6825,23 @@ public class MentraLive extends SGCManager {
             JSONObject json = new JSONObject();
             json.put("type", "set_ble_mtu");
             json.put("mtu", mtu);
+            if (fileTransferWindow > 1) {
+                json.put("fileWindow", fileTransferWindow);
+            }
+            if (offeredWireVersion > 0) {
+                json.put("wireFormat", offeredWireVersion);
+            }
+            if (sendScheduler.isCoalescingEnabled()) {
+                json.put("multiFrameWrites", 1);
+            }
 
             sendJson(json, false);
-            Bridge.log("LIVE: 📦 Sent BLE MTU config to glasses: " + mtu);
+            Bridge.log("LIVE: 📦 Sent BLE MTU config to glasses: " + mtu + ", file window: " + fileTransferWindow
+                    + ", wire format: " + offeredWireVersion + ", multi-frame writes: "
+                    + sendScheduler.isCoalescingEnabled());
+            if (offeredWireVersion > 0) {
+                sendWireFormatProbe();
+            }
         } catch (JSONException e) {
             Log.e(TAG, "Error creating BLE MTU config message", e);
         }
@@ -6830,47 +7113,51 @@ public class MentraLive extends SGCManager {
             byte sequenceNumber = data[1];
             long receiveTime = System.currentTimeMillis();
 
-            // Basic sequence validation
-            if (lastReceivedLc3Sequence != -1 && (byte)(lastReceivedLc3Sequence + 1) != sequenceNumber) {
-                Log.w(TAG, "LC3 packet sequence mismatch. Expected: " + (lastReceivedLc3Sequence + 1) + ", Got: " + sequenceNumber);
-            }
-            lastReceivedLc3Sequence = sequenceNumber;
+            // Reorder, and conceal packets that don't arrive in time; frames come back in order
+            // through deliverLc3Frames
+            lc3JitterBuffer.push(sequenceNumber, data, 2, data.length - 2, receiveTime);
+            scheduleLc3Flush();
 
-            byte[] lc3Data = Arrays.copyOfRange(data, 2, data.length);
+            if (receiveTime - lastLc3MetricsLogTime >= LC3_METRICS_LOG_INTERVAL_MS) {
+                lastLc3MetricsLogTime = receiveTime;
+                Bridge.log("LIVE: LC3 jitter buffer: " + lc3JitterBuffer.metricsSummary());
+            }
 
-            // Enhanced LC3 packet logging and saving
-            logLc3PacketDetails(lc3Data, sequenceNumber, receiveTime);
-            // saveLc3AudioPacket(lc3Data, sequenceNumber);
+        } else {
+            Bridge.log("LIVE: ⚠️ Received non-audio packet on LC3 characteristic.");
+        }
+    }
 
-            // Bridge.log("LIVE: Received LC3 audio packet seq=" + sequenceNumber + ", size=" + lc3Data.length);
+    /** Arm the jitter buffer's flush timer if it is holding packets and no flush is pending */
+    private void scheduleLc3Flush() {
+        long deadline = lc3JitterBuffer.flushDeadlineMs();
+        if (deadline >= 0 && lc3FlushScheduled.compareAndSet(false, true)) {
+            lc3FlushHandler.postDelayed(lc3FlushRunnable, Math.max(0, deadline - System.currentTimeMillis()));
+        }
+    }
 
-            // Forward raw LC3 to DeviceManager (matches iOS behavior)
-            // MentraLive uses 40-byte LC3 frames
-            DeviceManager.getInstance().handleGlassesMicData(lc3Data, LC3_FRAME_SIZE);
+    /**
+     * Forward one mic packet's LC3 frames, released in sequence order by the jitter buffer
+     * @param frames Owned by the jitter buffer; anything that keeps them past this call copies them
+     */
+    private void deliverLc3Frames(int sequence, byte[] frames) {
+        // Enhanced LC3 packet logging and saving
+        logLc3PacketDetails(frames, (byte) sequence, System.currentTimeMillis());
+        // saveLc3AudioPacket(frames, (byte) sequence);
 
-            // Bridge.log("LIVE: 🔊 Audio playback enabled: " + audioPlaybackEnabled);
-        // } else {
-            // Log.w(TAG, "No audio processing callback registered - audio data will not be processed");
-        // }
+        // Forward raw LC3 to DeviceManager (matches iOS behavior)
+        // MentraLive uses 40-byte LC3 frames
+        DeviceManager.getInstance().handleGlassesMicData(frames, LC3_FRAME_SIZE);
 
-            // Play LC3 audio directly through LC3 player if enabled
-            // This allows monitoring of the glasses microphone in real-time
-            if (audioPlaybackEnabled && lc3AudioPlayer != null) {
-                // log 1/50th of the time:
-                if (Math.random() < 0.02) {
-                    Bridge.log("LIVE: 🔊 Playing LC3 audio through phone speakers: " + data.length + " bytes");
-                }
-                // The data array already contains the full packet with F1 header and sequence
-                // Just pass it directly to the LC3 player
-                lc3AudioPlayer.write(data, 0, data.length);
-                // Bridge.log("LIVE: 🔊 Playing LC3 audio through phone speakers: " + data.length + " bytes");
-            } else if (!audioPlaybackEnabled) {
-                // Audio playback is disabled - only processing for PCM conversion
-                // Bridge.log("LIVE: 🔇 Audio playback disabled - processing for PCM only");
+        // Play LC3 audio directly through LC3 player if enabled
+        // This allows monitoring of the glasses microphone in real-time
+        if (audioPlaybackEnabled && lc3AudioPlayer != null) {
+            // log 1/50th of the time:
+            if (Math.random() < 0.02) {
+                Bridge.log("LIVE: 🔊 Playing LC3 audio through phone speakers: " + (frames.length + 2) + " bytes");
             }
-
-        } else {
-            Bridge.log("LIVE: ⚠️ Received non-audio packet on LC3 characteristic.");
+            // Copied into one of the player's reused packet buffers
+            lc3AudioPlayer.write(sequence, frames);
         }
     }
 
@@ -6895,8 +7182,8 @@ public class MentraLive extends SGCManager {
 
         System.arraycopy(lc3Data, 0, packet, 2, lc3Data.length);
 
-        // We use queueData to handle rate-limiting and sending
-        queueData(packet);
+        // Real-time lane: sent ahead of everything else, stale packets dropped when backed up
+        queueData(packet, BleSendScheduler.LANE_AUDIO);
     }
 
     /**
@@ -0,0 +1,308 @@
+package com.mentra.bluetoothsdk.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Outbound BLE write scheduler with priority lanes.
+ *
+ * Only one GATT write can be outstanding at a time, so instead of pacing writes with a fixed
+ * delay the caller asks for the next write once the previous one completes (onCharacteristicWrite).
+ * Each write is taken from the highest-priority lane that has data:
+ *   AUDIO   - real-time LC3 packets. Bounded; when full the oldest packet is dropped, since late
+ *             audio is worse than missing audio.
+ *   ACK     - acknowledgements the glasses are waiting on (transfer_complete, missing packets, ...)
+ *   COMMAND - interactive JSON commands
+ *   BULK    - chunked messages and other traffic that can wait
+ *
+ * When the glasses advertise that several K900 frames ("##" ... "$$") in one GATT write reach
+ * their parser intact ({@link #setCoalescingEnabled(boolean)}), small frames from the non-audio
+ * lanes are coalesced into a single write, in priority order, up to the write size the link
+ * allows. It is off by default: the BES2700 isn't known to forward multi-frame writes. Audio
+ * packets are never coalesced because the glasses identify them by their first byte.
+ *
+ * A write the link reports as failed is retried: its frames go back to the head of their lanes,
+ * up to {@link #MAX_WRITE_ATTEMPTS} times, after which they are dropped and counted as failed.
+ * Audio frames are dropped on the first failure; a retried packet would only arrive late.
+ *
+ * Per-lane queue depth, drops, failures and enqueue-to-write latency are kept for
+ * {@link #metricsSummary()}. A frame is counted once its write completes, so a rejected and
+ * retried write isn't counted twice.
+ *
+ * Thread-safe: data is queued from any thread, writes are driven from the BLE handler.
+ */
+public class BleSendScheduler {
+    public static final int LANE_AUDIO = 0;
+    public static final int LANE_ACK = 1;
+    public static final int LANE_COMMAND = 2;
+    public static final int LANE_BULK = 3;
+    private static final int LANE_COUNT = 4;
+    private static final String[] LANE_NAMES = {"audio", "ack", "command", "bulk"};
+
+    private static final int DEFAULT_AUDIO_LANE_CAPACITY = 8;
+
+    /** Writes a frame gets when the link keeps reporting failure, before it is given up on */
+    public static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private static final class Entry {
+        final int lane;
+        final byte[] data;
+        final long enqueuedNanos;
+        int failedWrites;
+
+        Entry(int lane, byte[] data, long enqueuedNanos) {
+            this.lane = lane;
+            this.data = data;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private static final class Lane {
+        final ArrayDeque<Entry> queue = new ArrayDeque<>();
+        long sent;
+        long dropped;
+        long failed;
+        int maxDepth;
+        long totalLatencyNanos;
+        long maxLatencyNanos;
+    }
+
+    private final Lane[] lanes = new Lane[LANE_COUNT];
+    private final int audioLaneCapacity;
+
+    // The write handed out by nextWrite() and not yet completed, and the frames it was built from
+    private byte[] inFlight;
+    private final ArrayList<Entry> inFlightEntries = new ArrayList<>();
+    private long inFlightSinceNanos;
+    private long coalescedWrites;
+    private boolean coalescingEnabled;
+
+    public BleSendScheduler() {
+        this(DEFAULT_AUDIO_LANE_CAPACITY);
+    }
+
+    /**
+     * @param audioLaneCapacity Audio packets held before the oldest is dropped
+     */
+    public BleSendScheduler(int audioLaneCapacity) {
+        this.audioLaneCapacity = audioLaneCapacity;
+        for (int i = 0; i < LANE_COUNT; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Allow several K900 frames in one write. Only enable this when the glasses advertise that
+     * multi-frame writes reach their parser; until then every frame is its own write.
+     */
+    public synchronized void setCoalescingEnabled(boolean enabled) {
+        coalescingEnabled = enabled;
+    }
+
+    public synchronized boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    /**
+     * Queue data for sending
+     * @param lane One of the LANE_ constants
+     */
+    public synchronized void enqueue(int lane, byte[] data) {
+        if (data == null || lane < 0 || lane >= LANE_COUNT) {
+            return;
+        }
+        Lane l = lanes[lane];
+        if (lane == LANE_AUDIO && l.queue.size() >= audioLaneCapacity) {
+            l.queue.pollFirst();
+            l.dropped++;
+        }
+        l.queue.addLast(new Entry(lane, data, System.nanoTime()));
+        l.maxDepth = Math.max(l.maxDepth, l.queue.size());
+    }
+
+    /**
+     * Take the next write, or null when a write is already in flight or nothing is queued.
+     * The write stays in flight until {@link #onWriteComplete()}, {@link #onWriteFailed()} or
+     * {@link #onWriteRejected()}.
+     * @param maxWriteSize Largest write the link accepts; frames are only coalesced up to this size
+     */
+    public synchronized byte[] nextWrite(int maxWriteSize) {
+        if (inFlight != null) {
+            return null;
+        }
+        int lane = firstNonEmptyLane(0);
+        if (lane < 0) {
+            return null;
+        }
+
+        Entry first = lanes[lane].queue.pollFirst();
+        inFlightEntries.add(first);
+        byte[] write = first.data;
+        if (coalescingEnabled && lane != LANE_AUDIO && isK900Frame(write) && write.length < maxWriteSize) {
+            write = coalesce(first.data, lane, maxWriteSize);
+        }
+
+        inFlight = write;
+        inFlightSinceNanos = System.nanoTime();
+        return write;
+    }
+
+    /** The in-flight write finished (or was never confirmed); the next write may go out */
+    public synchronized void onWriteComplete() {
+        if (inFlight == null) {
+            return;
+        }
+        for (int i = 0; i < inFlightEntries.size(); i++) {
+            Entry entry = inFlightEntries.get(i);
+            Lane l = lanes[entry.lane];
+            long latency = inFlightSinceNanos - entry.enqueuedNanos;
+            l.sent++;
+            l.totalLatencyNanos += latency;
+            l.maxLatencyNanos = Math.max(l.maxLatencyNanos, latency);
+        }
+        if (inFlightEntries.size() > 1) {
+            coalescedWrites++;
+        }
+        inFlightEntries.clear();
+        inFlight = null;
+    }
+
+    /**
+     * The stack refused the in-flight write (e.g. busy). Each frame it was built from is put back
+     * at the head of its own lane, in the original order, so they go out first on the next attempt.
+     */
+    public synchronized void onWriteRejected() {
+        if (inFlight == null) {
+            return;
+        }
+        for (int i = inFlightEntries.size() - 1; i >= 0; i--) {
+            Entry entry = inFlightEntries.get(i);
+            lanes[entry.lane].queue.addFirst(entry);
+        }
+        inFlightEntries.clear();
+        inFlight = null;
+    }
+
+    /**
+     * The link reported the in-flight write as failed. Its frames are put back at the head of
+     * their lanes to be written again, except audio frames and frames that already failed
+     * {@link #MAX_WRITE_ATTEMPTS} times, which are dropped.
+     * @return Number of frames dropped
+     */
+    public synchronized int onWriteFailed() {
+        if (inFlight == null) {
+            return 0;
+        }
+        int dropped = 0;
+        for (int i = inFlightEntries.size() - 1; i >= 0; i--) {
+            Entry entry = inFlightEntries.get(i);
+            entry.failedWrites++;
+            if (entry.lane == LANE_AUDIO || entry.failedWrites >= MAX_WRITE_ATTEMPTS) {
+                lanes[entry.lane].failed++;
+                dropped++;
+            } else {
+                lanes[entry.lane].queue.addFirst(entry);
+            }
+        }
+        inFlightEntries.clear();
+        inFlight = null;
+        return dropped;
+    }
+
+    public synchronized boolean isWriteInFlight() {
+        return inFlight != null;
+    }
+
+    /**
+     * @return How long the current write has been in flight, or 0 if none is
+     */
+    public synchronized long getInFlightMillis() {
+        return inFlight != null ? (System.nanoTime() - inFlightSinceNanos) / 1_000_000 : 0;
+    }
+
+    public synchronized boolean hasPending() {
+        return firstNonEmptyLane(0) >= 0;
+    }
+
+    public synchronized int getQueueDepth(int lane) {
+        return lanes[lane].queue.size();
+    }
+
+    /** Drop everything queued and in flight; metrics are kept */
+    public synchronized void clear() {
+        for (Lane lane : lanes) {
+            lane.queue.clear();
+        }
+        inFlightEntries.clear();
+        inFlight = null;
+    }
+
+    /**
+     * One-line summary of each lane: depth now / max, sent, dropped, failed, average and max
+     * latency (ms)
+     */
+    public synchronized String metricsSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LANE_COUNT; i++) {
+            Lane l = lanes[i];
+            if (i > 0) {
+                sb.append(", ");
+            }
+            long avgMs = l.sent > 0 ? l.totalLatencyNanos / l.sent / 1_000_000 : 0;
+            sb.append(String.format(Locale.US, "%s[depth=%d/%d sent=%d dropped=%d failed=%d lat=%d/%dms]",
+                    LANE_NAMES[i], l.queue.size(), l.maxDepth, l.sent, l.dropped, l.failed, avgMs,
+                    l.maxLatencyNanos / 1_000_000));
+        }
+        sb.append(", coalesced=").append(coalescedWrites);
+        return sb.toString();
+    }
+
+    /**
+     * Append the following K900 frames, in the order they would otherwise be sent, while they fit
+     * in one write. Stops at the first frame that doesn't fit so nothing overtakes it.
+     */
+    private byte[] coalesce(byte[] head, int lane, int maxWriteSize) {
+        // Size the write first so only one array is allocated
+        int size = head.length;
+        int frames = 0;
+        sizing:
+        for (int i = lane; i < LANE_COUNT; i++) {
+            for (Entry entry : lanes[i].queue) {
+                if (!isK900Frame(entry.data) || size + entry.data.length > maxWriteSize) {
+                    break sizing;
+                }
+                size += entry.data.length;
+                frames++;
+            }
+        }
+        if (frames == 0) {
+            return head;
+        }
+
+        byte[] write = new byte[size];
+        System.arraycopy(head, 0, write, 0, head.length);
+        int pos = head.length;
+        for (int taken = 0; taken < frames; taken++) {
+            Entry entry = lanes[firstNonEmptyLane(lane)].queue.pollFirst();
+            inFlightEntries.add(entry);
+            System.arraycopy(entry.data, 0, write, pos, entry.data.length);
+            pos += entry.data.length;
+        }
+        return write;
+    }
+
+    private int firstNonEmptyLane(int from) {
+        for (int i = from; i < LANE_COUNT; i++) {
+            if (!lanes[i].queue.isEmpty()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isK900Frame(byte[] data) {
+        return data.length >= 7 && data[0] == '#' && data[1] == '#'
+                && data[data.length - 2] == '$' && data[data.length - 1] == '$';
+    }
+}
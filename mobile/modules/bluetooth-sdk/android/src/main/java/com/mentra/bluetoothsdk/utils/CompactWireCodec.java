@@ -0,0 +1,260 @@
+package com.mentra.bluetoothsdk.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact framing for JSON messages between the phone and Mentra Live (asg_client CompactWireCodec).
+ *
+ * The legacy framing C-wraps every message ({"C":"&lt;escaped json&gt;","V":1,"B":{}}), and anything over
+ * 200 bytes is split by {@link MessageChunker} into 80-byte JSON chunks, so most of each BLE write is
+ * envelope. Compact frames carry the message bytes as they are:
+ *
+ *   ## 0x37 len(2) | magic(1) version(1) flags(1) [messageId(1) index(1) count(1)] body | $$
+ *
+ * FLAG_DEFLATE - the body is the raw-deflated message (only used when that is smaller)
+ * FLAG_CHUNKED - one of count frames; the bodies in index order make up the message
+ *
+ * Messages are only split when they don't fit one write, and writes are sized to the negotiated
+ * MTU. The phone only sends compact frames once the glasses advertised the version in glasses_ready,
+ * it was echoed in set_ble_mtu, and the wire_format_probe / wire_format_echo link check has shown the
+ * BES relays compact frames both ways; compact frames from the glasses are always accepted.
+ *
+ * Phone to glasses frames use the little-endian length, like {@link K900ProtocolUtils#packDataToK900}.
+ */
+public final class CompactWireCodec {
+    public static final int VERSION = 1;
+    public static final byte MAGIC = (byte) 0xC1; // Never valid in UTF-8, so never the start of JSON
+
+    public static final int FLAG_CHUNKED = 0x01;
+    public static final int FLAG_DEFLATE = 0x02;
+
+    public static final int HEADER_SIZE = 3;
+    public static final int CHUNK_HEADER_SIZE = 3;
+    public static final int FRAME_OVERHEAD = 7; // ## + type + length(2) + $$
+    public static final int MAX_CHUNKS = 255;
+
+    // Messages shorter than this rarely deflate to fewer bytes
+    static final int MIN_DEFLATE_SIZE = 96;
+    // Upper bound on an inflated message, so a bad frame can't allocate without limit
+    static final int MAX_MESSAGE_SIZE = 64 * 1024;
+
+    private CompactWireCodec() {
+    }
+
+    /**
+     * Encode a message into one or more compact frames
+     *
+     * @param message UTF-8 JSON message
+     * @param maxFrameSize Largest single BLE write the link accepts
+     * @param messageId Identifies the chunks of this message; only the low 8 bits are used
+     * @return The frames in send order, or null if the message needs more than {@link #MAX_CHUNKS}
+     *         frames (the caller falls back to the legacy framing)
+     */
+    public static List<byte[]> encode(byte[] message, int maxFrameSize, int messageId) {
+        int flags = 0;
+        byte[] body = message;
+        if (message.length >= MIN_DEFLATE_SIZE) {
+            byte[] deflated = deflate(message);
+            if (deflated != null) {
+                body = deflated;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+
+        int maxPayload = maxFrameSize - FRAME_OVERHEAD;
+        if (HEADER_SIZE + body.length <= maxPayload) {
+            List<byte[]> frames = new ArrayList<>(1);
+            byte[] frame = newFrame(HEADER_SIZE + body.length);
+            writeHeader(frame, flags);
+            System.arraycopy(body, 0, frame, 5 + HEADER_SIZE, body.length);
+            frames.add(frame);
+            return frames;
+        }
+
+        int chunkSize = maxPayload - HEADER_SIZE - CHUNK_HEADER_SIZE;
+        if (chunkSize <= 0) {
+            return null;
+        }
+        int count = (body.length + chunkSize - 1) / chunkSize;
+        if (count > MAX_CHUNKS) {
+            return null;
+        }
+
+        flags |= FLAG_CHUNKED;
+        List<byte[]> frames = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            int offset = index * chunkSize;
+            int length = Math.min(chunkSize, body.length - offset);
+            byte[] frame = newFrame(HEADER_SIZE + CHUNK_HEADER_SIZE + length);
+            writeHeader(frame, flags);
+            frame[5 + HEADER_SIZE] = (byte) messageId;
+            frame[5 + HEADER_SIZE + 1] = (byte) index;
+            frame[5 + HEADER_SIZE + 2] = (byte) count;
+            System.arraycopy(body, offset, frame, 5 + HEADER_SIZE + CHUNK_HEADER_SIZE, length);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * @return true if this received K900 frame is a compact message frame
+     */
+    public static boolean isCompactFrame(byte[] data, int size) {
+        return size >= FRAME_OVERHEAD + HEADER_SIZE && data[0] == 0x23 && data[1] == 0x23
+                && data[2] == K900ProtocolUtils.CMD_TYPE_COMPACT && data[5] == MAGIC;
+    }
+
+    /**
+     * Reassembles the compact frames the glasses send. Frames of a chunked message arrive in order
+     * but may be interleaved with other messages', so a partial message is kept per message ID;
+     * one that stops arriving is replaced when its ID comes round again.
+     */
+    public static final class Decoder {
+        private final byte[][][] partials = new byte[256][][];
+        private final int[] received = new int[256];
+
+        /**
+         * @param frame A complete received frame (see {@link #isCompactFrame})
+         * @return The message once complete, null while chunks are outstanding
+         * @throws DataFormatException if the frame is malformed or uses an unknown version
+         */
+        public synchronized byte[] addFrame(byte[] frame, int size) throws DataFormatException {
+            // Glasses to phone lengths are big-endian
+            int payloadLength = ((frame[3] & 0xFF) << 8) | (frame[4] & 0xFF);
+            if (payloadLength < HEADER_SIZE || payloadLength + FRAME_OVERHEAD > size) {
+                throw new DataFormatException("Bad compact frame length " + payloadLength);
+            }
+            if ((frame[6] & 0xFF) != VERSION) {
+                throw new DataFormatException("Unsupported compact wire version " + (frame[6] & 0xFF));
+            }
+            int flags = frame[7] & 0xFF;
+            boolean deflated = (flags & FLAG_DEFLATE) != 0;
+            int bodyOffset = 5 + HEADER_SIZE;
+            int bodyEnd = 5 + payloadLength;
+            if ((flags & FLAG_CHUNKED) == 0) {
+                return decodeBody(frame, bodyOffset, bodyEnd - bodyOffset, deflated);
+            }
+
+            if (payloadLength < HEADER_SIZE + CHUNK_HEADER_SIZE) {
+                throw new DataFormatException("Truncated compact chunk header");
+            }
+            int messageId = frame[bodyOffset] & 0xFF;
+            int index = frame[bodyOffset + 1] & 0xFF;
+            int count = frame[bodyOffset + 2] & 0xFF;
+            if (count == 0 || index >= count) {
+                throw new DataFormatException("Bad compact chunk " + index + "/" + count);
+            }
+            bodyOffset += CHUNK_HEADER_SIZE;
+
+            byte[][] parts = partials[messageId];
+            if (parts == null || parts.length != count || index == 0) {
+                // A new message under this ID (the previous one, if any, never completed)
+                parts = new byte[count][];
+                partials[messageId] = parts;
+                received[messageId] = 0;
+            }
+            if (parts[index] == null) {
+                received[messageId]++;
+            }
+            parts[index] = Arrays.copyOfRange(frame, bodyOffset, bodyEnd);
+            if (received[messageId] < count) {
+                return null;
+            }
+
+            partials[messageId] = null;
+            int total = 0;
+            for (byte[] part : parts) {
+                total += part.length;
+            }
+            byte[] body = new byte[total];
+            int pos = 0;
+            for (byte[] part : parts) {
+                System.arraycopy(part, 0, body, pos, part.length);
+                pos += part.length;
+            }
+            return decodeBody(body, 0, total, deflated);
+        }
+
+        /** Drop partial messages, e.g. on disconnect */
+        public synchronized void clear() {
+            Arrays.fill(partials, null);
+        }
+    }
+
+    /**
+     * Turn a complete body (a single frame's, or all chunks' joined) back into the message
+     *
+     * @param deflated Whether the frames carried {@link #FLAG_DEFLATE}
+     */
+    public static byte[] decodeBody(byte[] body, int offset, int length, boolean deflated)
+            throws DataFormatException {
+        if (!deflated) {
+            return Arrays.copyOfRange(body, offset, offset + length);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(body, offset, length);
+            byte[] out = new byte[Math.min(MAX_MESSAGE_SIZE, Math.max(256, length * 4))];
+            int size = 0;
+            while (!inflater.finished()) {
+                if (size == out.length) {
+                    if (out.length == MAX_MESSAGE_SIZE) {
+                        throw new DataFormatException("Compact message exceeds " + MAX_MESSAGE_SIZE + " bytes");
+                    }
+                    out = Arrays.copyOf(out, Math.min(MAX_MESSAGE_SIZE, out.length * 2));
+                }
+                int n = inflater.inflate(out, size, out.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated compact message");
+                }
+                size += n;
+            }
+            return size == out.length ? out : Arrays.copyOf(out, size);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return The raw-deflated message, or null if deflating doesn't make it smaller
+     */
+    private static byte[] deflate(byte[] message) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(message);
+            deflater.finish();
+            byte[] out = new byte[message.length];
+            int size = deflater.deflate(out);
+            if (!deflater.finished() || size >= message.length) {
+                return null;
+            }
+            return Arrays.copyOf(out, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] newFrame(int payloadLength) {
+        byte[] frame = new byte[payloadLength + FRAME_OVERHEAD];
+        frame[0] = K900ProtocolUtils.CMD_START_CODE[0];
+        frame[1] = K900ProtocolUtils.CMD_START_CODE[1];
+        frame[2] = K900ProtocolUtils.CMD_TYPE_COMPACT;
+        frame[3] = (byte) (payloadLength & 0xFF); // Little-endian, as in packDataToK900
+        frame[4] = (byte) ((payloadLength >> 8) & 0xFF);
+        frame[frame.length - 2] = K900ProtocolUtils.CMD_END_CODE[0];
+        frame[frame.length - 1] = K900ProtocolUtils.CMD_END_CODE[1];
+        return frame;
+    }
+
+    private static void writeHeader(byte[] frame, int flags) {
+        frame[5] = MAGIC;
+        frame[6] = (byte) VERSION;
+        frame[7] = (byte) flags;
+    }
+}
@@ -27,6 +27,8 @@ public class K900ProtocolUtils {
     public static final byte CMD_TYPE_MUSIC = 0x33; // Music file type
     public static final byte CMD_TYPE_AUDIO = 0x34; // Audio file type
     public static final byte CMD_TYPE_DATA = 0x35; // Generic data type
+    public static final byte CMD_TYPE_IMU = 0x36; // Binary IMU stream frame
+    public static final byte CMD_TYPE_COMPACT = 0x37; // Compact JSON message frame (see CompactWireCodec)
 
     // File transfer constants
     public static final int FILE_PACK_SIZE = 400; // Max data size per packet
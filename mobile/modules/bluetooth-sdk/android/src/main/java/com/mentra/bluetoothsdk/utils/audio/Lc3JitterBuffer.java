@@ -0,0 +1,315 @@
+package com.mentra.bluetoothsdk.utils.audio;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reorder buffer with packet-loss concealment for the glasses' LC3 microphone packets
+ * (0xF1 | sequence | LC3 frames).
+ *
+ * Packets are released to the listener in sequence order. A packet that arrives while an earlier
+ * one is still missing is held; once more than {@code depth} packets are held behind the gap, the
+ * missing packet is declared lost and the listener is asked to conceal it (LC3 PLC), so the
+ * decoder sees one continuous stream either way.
+ *
+ * The depth adapts: it starts at {@link #INITIAL_DEPTH}, grows by one each time a packet arrives
+ * after it was already concealed, and shrinks by one after {@link #DEPTH_DECAY_PACKETS} packets
+ * without one. On a clean link it settles at 0 and adds no latency.
+ *
+ * A gap is also closed by time: {@link #flushStale} conceals it once the oldest packet held behind
+ * it has waited {@code max(1, depth)} packet durations, so packets held when the glasses pause or
+ * stop streaming still play out. The caller drives it from a timer, due at {@link #flushDeadlineMs}.
+ *
+ * Packets are copied into buffers owned by the slots, which are reused for every packet of the
+ * same size. Long gaps (the glasses stopped streaming, or a burst bigger than the buffer) resync
+ * on the new sequence and conceal at most {@link #MAX_CONCEALED_PACKETS} packets; so does a run of
+ * packets that are all behind the stream (the sender restarted its sequence numbering).
+ *
+ * Thread-safe; the listener is called with the buffer's lock held.
+ */
+public class Lc3JitterBuffer {
+
+    public interface Listener {
+        /**
+         * The next packet's LC3 frames, in sequence order
+         * @param frames Exactly the packet's frames; owned by the buffer and only valid during the call
+         */
+        void onFrames(int sequence, byte[] frames);
+
+        /**
+         * frameCount frames are missing at this point in the stream and should be concealed
+         */
+        void onLoss(int frameCount);
+    }
+
+    private static final int SEQUENCE_MASK = 0xFF;
+    private static final int HALF_SEQUENCE_SPACE = 128;
+    // Packets held while waiting on a gap; a power of two that divides the sequence space
+    private static final int CAPACITY = 8;
+    private static final int SLOT_MASK = CAPACITY - 1;
+    static final int INITIAL_DEPTH = 1;
+    static final int MAX_DEPTH = CAPACITY - 1;
+    static final int DEPTH_DECAY_PACKETS = 500;
+    static final int MAX_CONCEALED_PACKETS = 2;
+    // A pause this long means the glasses restarted the stream; don't conceal across it
+    static final long RESYNC_IDLE_MS = 1000;
+    // LC3 frame duration used by the glasses (10 ms frames)
+    static final int FRAME_DURATION_MS = 10;
+
+    private final int frameSize;
+    private final Listener listener;
+
+    private final byte[][] slots = new byte[CAPACITY][];
+    private final boolean[] filled = new boolean[CAPACITY];
+    private final long[] arrivalMs = new long[CAPACITY];
+    private int held;
+    private int expected = -1;
+    private long lastArrivalMs;
+    private int framesPerPacket;
+    private int depth = INITIAL_DEPTH;
+    private int packetsSinceLate;
+    private int consecutiveBehind;
+    // Sequences concealed within the last half of the sequence space, to tell late packets from
+    // duplicates; cleared as the stream moves past them
+    private final boolean[] concealed = new boolean[SEQUENCE_MASK + 1];
+
+    // Metrics
+    private long received;
+    private long lost;
+    private long late;
+    private long reordered;
+    private long duplicates;
+    private long concealedFrames;
+    private long resyncs;
+    private long timedOut;
+    private int maxDepth = INITIAL_DEPTH;
+
+    /**
+     * @param frameSize Bytes per LC3 frame, to count the frames a lost packet held
+     */
+    public Lc3JitterBuffer(int frameSize, Listener listener) {
+        this.frameSize = frameSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Add a received packet
+     * @param packet Buffer holding the packet; only read during the call
+     * @param offset Start of the LC3 frames (after the 0xF1 and sequence bytes)
+     * @param length Length of the LC3 frames
+     */
+    public synchronized void push(int sequence, byte[] packet, int offset, int length, long nowMs) {
+        if (length < frameSize) {
+            return;
+        }
+        received++;
+        sequence &= SEQUENCE_MASK;
+
+        if (expected < 0 || nowMs - lastArrivalMs > RESYNC_IDLE_MS) {
+            if (expected >= 0) {
+                drainHeld();
+                resyncs++;
+            }
+            resyncTo(sequence);
+        }
+        lastArrivalMs = nowMs;
+        framesPerPacket = length / frameSize;
+
+        int ahead = (sequence - expected) & SEQUENCE_MASK;
+        if (ahead >= HALF_SEQUENCE_SPACE) {
+            if (++consecutiveBehind < CAPACITY) {
+                onBehind(sequence);
+                return;
+            }
+            // A run of stale packets means the sender restarted its sequence; follow it
+            drainHeld();
+            resyncs++;
+            resyncTo(sequence);
+            ahead = 0;
+        }
+        consecutiveBehind = 0;
+        if (ahead >= CAPACITY) {
+            // More missing than the buffer spans: play out what we have and pick up from here
+            drainHeld();
+            int gap = (sequence - expected) & SEQUENCE_MASK;
+            lost += gap;
+            int conceal = Math.min(gap, MAX_CONCEALED_PACKETS);
+            for (int i = 0; i < gap; i++) {
+                if (i < conceal) {
+                    conceal(expected);
+                }
+                advance();
+            }
+            resyncs++;
+            ahead = 0;
+        }
+
+        int slot = sequence & SLOT_MASK;
+        if (filled[slot]) {
+            duplicates++;
+            return;
+        }
+        if (ahead == 0 && held > 0) {
+            // Filled the gap the held packets were waiting on
+            reordered++;
+        }
+        byte[] buffer = slots[slot];
+        if (buffer == null || buffer.length != length) {
+            buffer = new byte[length];
+            slots[slot] = buffer;
+        }
+        System.arraycopy(packet, offset, buffer, 0, length);
+        filled[slot] = true;
+        arrivalMs[slot] = nowMs;
+        held++;
+
+        release();
+        if (++packetsSinceLate >= DEPTH_DECAY_PACKETS && depth > 0) {
+            depth--;
+            packetsSinceLate = 0;
+        }
+    }
+
+    /**
+     * Conceal the gap at the head if the packets held behind it have waited too long, then release
+     * as usual. Call at (or after) {@link #flushDeadlineMs}; does nothing before it.
+     */
+    public synchronized void flushStale(long nowMs) {
+        if (held == 0 || nowMs < deadlineMs()) {
+            return;
+        }
+        while (!filled[expected & SLOT_MASK]) {
+            lost++;
+            timedOut++;
+            conceal(expected);
+            advance();
+        }
+        release();
+    }
+
+    /** When {@link #flushStale} should next run, or -1 while nothing is held */
+    public synchronized long flushDeadlineMs() {
+        return held == 0 ? -1 : deadlineMs();
+    }
+
+    /** Forget the stream position and held packets (e.g. on disconnect); metrics are kept */
+    public synchronized void reset() {
+        for (int i = 0; i < CAPACITY; i++) {
+            filled[i] = false;
+        }
+        held = 0;
+        expected = -1;
+        Arrays.fill(concealed, false);
+        depth = INITIAL_DEPTH;
+        packetsSinceLate = 0;
+        consecutiveBehind = 0;
+    }
+
+    public synchronized int getDepth() {
+        return depth;
+    }
+
+    public synchronized long getLostCount() {
+        return lost;
+    }
+
+    public synchronized long getLateCount() {
+        return late;
+    }
+
+    public synchronized long getConcealedFrameCount() {
+        return concealedFrames;
+    }
+
+    /**
+     * One-line summary: packets received / lost / late / reordered / duplicate, frames concealed,
+     * resyncs, gaps concealed by timeout, and the current and largest depth
+     */
+    public synchronized String metricsSummary() {
+        return String.format(Locale.US,
+                "received=%d lost=%d late=%d reordered=%d duplicate=%d concealedFrames=%d resyncs=%d timedOut=%d depth=%d/%d",
+                received, lost, late, reordered, duplicates, concealedFrames, resyncs, timedOut, depth, maxDepth);
+    }
+
+    /** Deliver every packet that is next in line, concealing the head once enough are held behind it */
+    private void release() {
+        while (held > 0) {
+            int slot = expected & SLOT_MASK;
+            if (filled[slot]) {
+                deliver(slot);
+            } else if (held > depth) {
+                lost++;
+                conceal(expected);
+                advance();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /** Arrival of the oldest held packet plus max(1, depth) packet durations */
+    private long deadlineMs() {
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < CAPACITY; i++) {
+            if (filled[i]) {
+                oldest = Math.min(oldest, arrivalMs[i]);
+            }
+        }
+        return oldest + (long) Math.max(1, depth) * framesPerPacket * FRAME_DURATION_MS;
+    }
+
+    /** Deliver everything held, concealing the holes between */
+    private void drainHeld() {
+        while (held > 0) {
+            int slot = expected & SLOT_MASK;
+            if (filled[slot]) {
+                deliver(slot);
+            } else {
+                lost++;
+                conceal(expected);
+                advance();
+            }
+        }
+    }
+
+    /** Step past the expected packet. A sequence leaving the behind window forgets it was concealed */
+    private void advance() {
+        expected = (expected + 1) & SEQUENCE_MASK;
+        concealed[(expected + HALF_SEQUENCE_SPACE - 1) & SEQUENCE_MASK] = false;
+    }
+
+    /** Pick the stream up at sequence; flags from before the jump mean nothing now */
+    private void resyncTo(int sequence) {
+        expected = sequence;
+        Arrays.fill(concealed, false);
+    }
+
+    private void deliver(int slot) {
+        filled[slot] = false;
+        held--;
+        concealed[expected] = false;
+        listener.onFrames(expected, slots[slot]);
+        advance();
+    }
+
+    private void conceal(int sequence) {
+        concealed[sequence] = true;
+        concealedFrames += framesPerPacket;
+        listener.onLoss(framesPerPacket);
+    }
+
+    private void onBehind(int sequence) {
+        if (!concealed[sequence]) {
+            duplicates++;
+            return;
+        }
+        // It was concealed because we didn't wait long enough for it
+        concealed[sequence] = false;
+        late++;
+        packetsSinceLate = 0;
+        if (depth < MAX_DEPTH) {
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+    }
+}
@@ -43,7 +43,11 @@ public class Lc3Player extends Thread{
     private final int mEncoding = AudioFormat.ENCODING_PCM_16BIT;
     private long mDecorderHandle = -1;
     private ArrayBlockingQueue<byte[]> mQueue;
+    // Packet buffers for write(sequence, frames), handed back once the player thread has copied them out
+    private final ArrayBlockingQueue<byte[]> mFreePackets = new ArrayBlockingQueue<>(104);
     private int mFrameSize; // LC3 frame size for this player instance
+    // Queued in place of a packet by writeLoss: {LOSS_MARKER, frameCount}. No glasses use this header
+    private static final byte LOSS_MARKER = (byte) 0xEE;
     
     // Rolling audio recording - saves last 20 seconds every 20 seconds
     private static final int ROLLING_DURATION_SECONDS = 20;
@@ -97,13 +101,70 @@ public class Lc3Player extends Thread{
     private byte[] mRecvBuffer = new byte[200*10];  // 5 frames × 40 bytes = 200
     private byte[]mBuffer = new byte[200];          // 5 frames × 40 bytes = 200
     private byte[]mTestBuffer = new byte[40];       // Single frame buffer (40 bytes)
+    // Queues data itself, not a copy; the player reuses it afterwards (see write(sequence, frames))
     public void write(byte[] data, int offset, int size)
     {
         // if(size != 102)  // 20 bytes × 5 frames + 2 header bytes
         //     return;
-        if(!mQueue.offer(data))
+        enqueue(data);
+    }
+
+    /**
+     * Queue one packet's LC3 frames; the 0xF1 header and sequence are added here, in a buffer that
+     * is reused once the packet has been decoded
+     * @param frames Only read during the call
+     */
+    public void write(int sequence, byte[] frames)
+    {
+        byte[] packet = mFreePackets.poll();
+        if(packet == null || packet.length != frames.length + 2)
+        {
+            packet = new byte[frames.length + 2];
+        }
+        packet[0] = (byte) 0xF1;
+        packet[1] = (byte) sequence;
+        System.arraycopy(frames, 0, packet, 2, frames.length);
+        enqueue(packet);
+    }
+
+    /**
+     * Conceal frames missing from the stream (see Lc3JitterBuffer), in order with the packets
+     * written around it
+     */
+    public void writeLoss(int frameCount)
+    {
+        enqueue(new byte[]{LOSS_MARKER, (byte) frameCount});
+    }
+
+    private int mDroppedPackets = 0;
+    private void enqueue(byte[] data)
+    {
+        // When playback falls behind, drop the oldest audio rather than the newest so it catches up
+        while(!mQueue.offer(data))
+        {
+            byte[] dropped = mQueue.poll();
+            if(dropped != null)
+            {
+                recycle(dropped);
+                if(++mDroppedPackets % 50 == 1)
+                {
+                    Log.e("_test_","+++++++++ queue full, dropped "+mDroppedPackets+" packets");
+                }
+            }
+        }
+    }
+
+    private static boolean isLossMarker(byte[] data)
+    {
+        return data.length == 2 && data[0] == LOSS_MARKER;
+    }
+
+    /** Hand an audio packet (not a loss marker) back for reuse by write(sequence, frames) */
+    private void recycle(byte[] data)
+    {
+        if(data[0] == (byte) 0xF1)
         {
-            Log.e("_test_","+++++++++ addFrame fail");
+            mFreePackets.offer(data);
         }
     }
     public void write1(byte[] data, int offset, int size)
@@ -196,6 +257,25 @@ public class Lc3Player extends Thread{
                             }
                         }
                     }
+                    else if(isLossMarker(data))
+                    {
+                        // Loss marker: let the decoder conceal the missing frames so playback stays continuous
+                        mLastSeq = (mLastSeq + 1) % 256;
+                        byte []plcData = Lc3Cpp.concealLC3(mDecorderHandle, ByteUtilAudioPlayer.byte2Int(data[1]));
+                        if(plcData != null) {
+                            addToRollingBuffer(plcData);
+                            synchronized (this) {
+                                if (mTrack != null && isPlaying) {
+                                    try {
+                                        mTrack.write(plcData, 0, plcData.length);
+                                    } catch (IllegalStateException e) {
+                                        Log.e("_test_", "AudioTrack write failed - track released", e);
+                                        break;
+                                    }
+                                }
+                            }
+                        }
+                    }
                     else
                     {
                         System.arraycopy(data, 2, mBuffer, 0, 200);  // Copy 200 bytes (5 × 40)
@@ -209,6 +289,7 @@ public class Lc3Player extends Thread{
                         }
                         mLastSeq = ByteUtilAudioPlayer.byte2Int(data[1]);
                         mLastSeq = (mLastSeq + 1) % 256;
+                        recycle(data);
                         byte []decData = Lc3Cpp.decodeLC3(mDecorderHandle, mBuffer, mFrameSize);
                         if(decData != null) {
                             // Add to rolling buffer for periodic saving
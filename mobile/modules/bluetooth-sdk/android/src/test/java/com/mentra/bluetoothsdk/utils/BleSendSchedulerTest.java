@@ -0,0 +1,221 @@
+package com.mentra.bluetoothsdk.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BleSendSchedulerTest {
+
+    private static final int MAX_WRITE = 244;
+
+    @Test
+    public void higherPriorityLaneIsWrittenFirst() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.enqueue(BleSendScheduler.LANE_BULK, frame("bulk"));
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("cmd"));
+        scheduler.enqueue(BleSendScheduler.LANE_ACK, frame("ack"));
+        scheduler.enqueue(BleSendScheduler.LANE_AUDIO, audio(1));
+
+        assertArrayEquals(audio(1), writeAndComplete(scheduler));
+        assertArrayEquals(frame("ack"), writeAndComplete(scheduler));
+        assertArrayEquals(frame("cmd"), writeAndComplete(scheduler));
+        assertArrayEquals(frame("bulk"), writeAndComplete(scheduler));
+        assertFalse(scheduler.hasPending());
+    }
+
+    @Test
+    public void onlyOneWriteIsInFlight() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("a"));
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("b"));
+
+        assertArrayEquals(frame("a"), scheduler.nextWrite(MAX_WRITE));
+        assertNull(scheduler.nextWrite(MAX_WRITE));
+        assertTrue(scheduler.isWriteInFlight());
+
+        scheduler.onWriteComplete();
+        assertArrayEquals(frame("b"), scheduler.nextWrite(MAX_WRITE));
+    }
+
+    @Test
+    public void fullAudioLaneDropsTheOldestPacket() {
+        BleSendScheduler scheduler = new BleSendScheduler(2);
+        scheduler.enqueue(BleSendScheduler.LANE_AUDIO, audio(1));
+        scheduler.enqueue(BleSendScheduler.LANE_AUDIO, audio(2));
+        scheduler.enqueue(BleSendScheduler.LANE_AUDIO, audio(3));
+
+        assertEquals(2, scheduler.getQueueDepth(BleSendScheduler.LANE_AUDIO));
+        assertArrayEquals(audio(2), writeAndComplete(scheduler));
+        assertArrayEquals(audio(3), writeAndComplete(scheduler));
+        assertTrue(scheduler.metricsSummary().contains("audio[depth=0/2 sent=2 dropped=1"));
+    }
+
+    @Test
+    public void framesAreNotCoalescedUnlessEnabled() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("a"));
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("b"));
+
+        assertArrayEquals(frame("a"), writeAndComplete(scheduler));
+        assertArrayEquals(frame("b"), writeAndComplete(scheduler));
+    }
+
+    @Test
+    public void coalescedWriteTakesFramesInPriorityOrderUpToTheWriteSize() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.setCoalescingEnabled(true);
+        scheduler.enqueue(BleSendScheduler.LANE_BULK, frame("bulk"));
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("cmd"));
+        scheduler.enqueue(BleSendScheduler.LANE_ACK, frame("ack"));
+        scheduler.enqueue(BleSendScheduler.LANE_AUDIO, audio(1));
+
+        // Audio always goes out alone
+        assertArrayEquals(audio(1), writeAndComplete(scheduler));
+        assertArrayEquals(concat(frame("ack"), frame("cmd"), frame("bulk")), writeAndComplete(scheduler));
+        assertTrue(scheduler.metricsSummary().endsWith("coalesced=1"));
+    }
+
+    @Test
+    public void coalescingStopsAtTheFirstFrameThatDoesNotFit() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.setCoalescingEnabled(true);
+        byte[] small = frame("a");
+        byte[] large = frame(repeat('x', MAX_WRITE));
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, small);
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("b"));
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, large);
+        scheduler.enqueue(BleSendScheduler.LANE_BULK, frame("c"));
+
+        // "c" would fit, but must not overtake the large frame
+        assertArrayEquals(concat(small, frame("b")), writeAndComplete(scheduler));
+        assertArrayEquals(large, writeAndComplete(scheduler));
+        assertArrayEquals(frame("c"), writeAndComplete(scheduler));
+    }
+
+    @Test
+    public void rejectedCoalescedWriteIsRebuiltInTheSameOrder() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.setCoalescingEnabled(true);
+        scheduler.enqueue(BleSendScheduler.LANE_ACK, frame("ack"));
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("cmd"));
+
+        byte[] first = scheduler.nextWrite(MAX_WRITE);
+        scheduler.onWriteRejected();
+        assertFalse(scheduler.isWriteInFlight());
+
+        assertArrayEquals(first, writeAndComplete(scheduler));
+        assertTrue(scheduler.metricsSummary().contains("ack[depth=0/1 sent=1 "));
+    }
+
+    @Test
+    public void failedWriteIsRetriedAndThenDropped() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("cmd"));
+        scheduler.enqueue(BleSendScheduler.LANE_BULK, frame("bulk"));
+
+        for (int attempt = 1; attempt < BleSendScheduler.MAX_WRITE_ATTEMPTS; attempt++) {
+            assertArrayEquals(frame("cmd"), scheduler.nextWrite(MAX_WRITE));
+            assertEquals(0, scheduler.onWriteFailed());
+        }
+        assertArrayEquals(frame("cmd"), scheduler.nextWrite(MAX_WRITE));
+        assertEquals(1, scheduler.onWriteFailed());
+
+        // The frame behind it is unaffected
+        assertArrayEquals(frame("bulk"), writeAndComplete(scheduler));
+        assertFalse(scheduler.hasPending());
+        assertTrue(scheduler.metricsSummary().contains("command[depth=0/1 sent=0 dropped=0 failed=1"));
+    }
+
+    @Test
+    public void failedAudioIsDroppedRatherThanRetried() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.enqueue(BleSendScheduler.LANE_AUDIO, audio(1));
+        scheduler.enqueue(BleSendScheduler.LANE_AUDIO, audio(2));
+
+        scheduler.nextWrite(MAX_WRITE);
+        assertEquals(1, scheduler.onWriteFailed());
+        assertArrayEquals(audio(2), writeAndComplete(scheduler));
+    }
+
+    @Test
+    public void failedCoalescedWriteRequeuesEveryFrame() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.setCoalescingEnabled(true);
+        scheduler.enqueue(BleSendScheduler.LANE_ACK, frame("ack"));
+        scheduler.enqueue(BleSendScheduler.LANE_BULK, frame("bulk"));
+
+        byte[] first = scheduler.nextWrite(MAX_WRITE);
+        assertEquals(0, scheduler.onWriteFailed());
+        assertEquals(1, scheduler.getQueueDepth(BleSendScheduler.LANE_ACK));
+        assertEquals(1, scheduler.getQueueDepth(BleSendScheduler.LANE_BULK));
+        assertArrayEquals(first, writeAndComplete(scheduler));
+    }
+
+    @Test
+    public void clearDropsQueuedAndInFlightData() {
+        BleSendScheduler scheduler = new BleSendScheduler();
+        scheduler.enqueue(BleSendScheduler.LANE_COMMAND, frame("a"));
+        scheduler.enqueue(BleSendScheduler.LANE_BULK, frame("b"));
+        scheduler.nextWrite(MAX_WRITE);
+
+        scheduler.clear();
+
+        assertFalse(scheduler.isWriteInFlight());
+        assertFalse(scheduler.hasPending());
+        assertEquals(0, scheduler.onWriteFailed());
+    }
+
+    private static byte[] writeAndComplete(BleSendScheduler scheduler) {
+        byte[] write = scheduler.nextWrite(MAX_WRITE);
+        scheduler.onWriteComplete();
+        return write;
+    }
+
+    /** A K900 frame ("##", command, length, payload, "$$") carrying the given text */
+    private static byte[] frame(String text) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[payload.length + 7];
+        frame[0] = '#';
+        frame[1] = '#';
+        frame[2] = 0x30;
+        frame[3] = (byte) (payload.length & 0xFF);
+        frame[4] = (byte) (payload.length >> 8);
+        System.arraycopy(payload, 0, frame, 5, payload.length);
+        frame[frame.length - 2] = '$';
+        frame[frame.length - 1] = '$';
+        return frame;
+    }
+
+    /** An LC3 packet: 0xF1 header, sequence, payload */
+    private static byte[] audio(int sequence) {
+        return new byte[]{(byte) 0xF1, (byte) sequence, 1, 2, 3};
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] out = new byte[length];
+        int pos = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, pos, part.length);
+            pos += part.length;
+        }
+        return out;
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
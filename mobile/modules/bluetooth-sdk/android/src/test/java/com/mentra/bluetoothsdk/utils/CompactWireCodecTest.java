@@ -0,0 +1,204 @@
+package com.mentra.bluetoothsdk.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactWireCodecTest {
+
+    // BES2700 BLE write limit, which MentraLive caps writes at
+    private static final int FRAME_SIZE = 253;
+
+    // Golden frames, shared with asg_client's CompactWireCodecTest: the phone's link check probe as
+    // this codec encodes it, and the glasses' echo as theirs does, chunked into 32-byte frames
+    private static final String PROBE = "{\"type\":\"wire_format_probe\"}";
+    private static final String PROBE_FRAME =
+            "2323371F00C101007B2274797065223A22776972655F666F726D61745F70726F6265227D2424";
+    private static final String ECHO = "{\"type\":\"wire_format_echo\",\"wireFormat\":1}";
+    private static final String[] ECHO_FRAMES = {
+            "2323370019C101010700037B2274797065223A22776972655F666F726D612424",
+            "2323370019C10101070103745F6563686F222C2277697265466F726D61742424",
+            "232337000AC10101070203223A317D2424",
+    };
+
+    @Test
+    public void probeMatchesGoldenFrame() {
+        List<byte[]> frames = CompactWireCodec.encode(bytes(PROBE), FRAME_SIZE, 0);
+
+        assertEquals(1, frames.size());
+        assertArrayEquals(hex(PROBE_FRAME), frames.get(0));
+    }
+
+    @Test
+    public void glassesEchoIsReassembledFromGoldenFrames() throws Exception {
+        CompactWireCodec.Decoder decoder = new CompactWireCodec.Decoder();
+        byte[] message = null;
+        for (String frame : ECHO_FRAMES) {
+            assertNull(message);
+            byte[] data = hex(frame);
+            assertTrue(CompactWireCodec.isCompactFrame(data, data.length));
+            message = decoder.addFrame(data, data.length);
+        }
+
+        assertArrayEquals(bytes(ECHO), message);
+    }
+
+    @Test
+    public void phoneFramesUseLittleEndianLength() {
+        byte[] message = randomBytes(600, 1);
+        byte[] frame = CompactWireCodec.encode(message, 1024, 0).get(0);
+
+        assertEquals(K900ProtocolUtils.CMD_TYPE_COMPACT, frame[2]);
+        assertEquals(frame.length - CompactWireCodec.FRAME_OVERHEAD, (frame[3] & 0xFF) | ((frame[4] & 0xFF) << 8));
+        assertEquals(message.length + CompactWireCodec.HEADER_SIZE + CompactWireCodec.FRAME_OVERHEAD, frame.length);
+    }
+
+    @Test
+    public void largeMessageIsChunkedToFrameSize() throws Exception {
+        byte[] message = randomBytes(2000, 3);
+        List<byte[]> frames = CompactWireCodec.encode(message, FRAME_SIZE, 300);
+
+        assertTrue(frames.size() > 1);
+        for (byte[] frame : frames) {
+            assertTrue(frame.length <= FRAME_SIZE);
+        }
+        assertArrayEquals(message, decode(new CompactWireCodec.Decoder(), glassesFrames(frames)));
+    }
+
+    @Test
+    public void deflatedMessageRoundTrips() throws Exception {
+        StringBuilder repetitive = new StringBuilder("{\"type\":\"settings\",\"values\":[");
+        for (int i = 0; i < 40; i++) {
+            repetitive.append("{\"key\":\"setting\",\"enabled\":true},");
+        }
+        repetitive.append("{}]}");
+        byte[] message = bytes(repetitive.toString());
+        List<byte[]> frames = CompactWireCodec.encode(message, FRAME_SIZE, 1);
+
+        assertEquals(1, frames.size());
+        assertTrue((frames.get(0)[7] & CompactWireCodec.FLAG_DEFLATE) != 0);
+        assertArrayEquals(message, decode(new CompactWireCodec.Decoder(), glassesFrames(frames)));
+    }
+
+    @Test
+    public void interleavedChunkedMessagesAreKeptApart() throws Exception {
+        byte[] first = randomBytes(500, 4);
+        byte[] second = randomBytes(400, 5);
+        List<byte[]> a = glassesFrames(CompactWireCodec.encode(first, FRAME_SIZE, 10));
+        List<byte[]> b = glassesFrames(CompactWireCodec.encode(second, FRAME_SIZE, 11));
+        CompactWireCodec.Decoder decoder = new CompactWireCodec.Decoder();
+
+        assertNull(decoder.addFrame(a.get(0), a.get(0).length));
+        assertNull(decoder.addFrame(b.get(0), b.get(0).length));
+        assertNull(decoder.addFrame(a.get(1), a.get(1).length));
+        assertArrayEquals(second, decoder.addFrame(b.get(1), b.get(1).length));
+        assertArrayEquals(first, decoder.addFrame(a.get(2), a.get(2).length));
+    }
+
+    @Test
+    public void restartedMessageReplacesTheIncompleteOne() throws Exception {
+        List<byte[]> stale = glassesFrames(CompactWireCodec.encode(randomBytes(500, 6), FRAME_SIZE, 20));
+        byte[] message = randomBytes(500, 7);
+        List<byte[]> frames = glassesFrames(CompactWireCodec.encode(message, FRAME_SIZE, 20));
+        CompactWireCodec.Decoder decoder = new CompactWireCodec.Decoder();
+
+        decoder.addFrame(stale.get(0), stale.get(0).length);
+        decoder.addFrame(stale.get(1), stale.get(1).length);
+
+        assertArrayEquals(message, decode(decoder, frames));
+    }
+
+    @Test
+    public void rejectsUnknownVersions() {
+        byte[] frame = hex(ECHO_FRAMES[2]);
+        frame[6] = (byte) (CompactWireCodec.VERSION + 1);
+        try {
+            new CompactWireCodec.Decoder().addFrame(frame, frame.length);
+            fail("Expected an unknown version to be rejected");
+        } catch (DataFormatException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void onlyCompactFramesAreRecognised() {
+        byte[] wrapped = wrappedFrame(bytes("{\"C\":\"cs_batv\"}"));
+        byte[] imu = hex(PROBE_FRAME);
+        imu[2] = K900ProtocolUtils.CMD_TYPE_IMU;
+
+        assertTrue(CompactWireCodec.isCompactFrame(hex(PROBE_FRAME), PROBE_FRAME.length() / 2));
+        assertFalse(CompactWireCodec.isCompactFrame(wrapped, wrapped.length));
+        assertFalse(CompactWireCodec.isCompactFrame(imu, imu.length));
+    }
+
+    @Test
+    public void messagesNeedingTooManyFramesFallBack() {
+        assertNull(CompactWireCodec.encode(randomBytes(40_000, 9), 64, 0));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Feed frames from the glasses to a decoder; only the last may complete the message */
+    private static byte[] decode(CompactWireCodec.Decoder decoder, List<byte[]> frames) throws Exception {
+        for (int i = 0; i < frames.size() - 1; i++) {
+            assertNull(decoder.addFrame(frames.get(i), frames.get(i).length));
+        }
+        byte[] last = frames.get(frames.size() - 1);
+        return decoder.addFrame(last, last.length);
+    }
+
+    /** The same frames as the glasses send them: the length is big-endian in that direction */
+    private static List<byte[]> glassesFrames(List<byte[]> phoneFrames) {
+        List<byte[]> frames = new ArrayList<>(phoneFrames.size());
+        for (byte[] frame : phoneFrames) {
+            byte[] copy = frame.clone();
+            copy[3] = frame[4];
+            copy[4] = frame[3];
+            frames.add(copy);
+        }
+        return frames;
+    }
+
+    private static byte[] wrappedFrame(byte[] payload) {
+        byte[] frame = new byte[payload.length + CompactWireCodec.FRAME_OVERHEAD];
+        frame[0] = '#';
+        frame[1] = '#';
+        frame[2] = K900ProtocolUtils.CMD_TYPE_STRING;
+        frame[3] = (byte) (payload.length & 0xFF);
+        frame[4] = (byte) (payload.length >> 8);
+        System.arraycopy(payload, 0, frame, 5, payload.length);
+        frame[frame.length - 2] = '$';
+        frame[frame.length - 1] = '$';
+        return frame;
+    }
+
+    /** Random bytes, which don't deflate; the codec doesn't look inside messages */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] hex(String hex) {
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,176 @@
+package com.mentra.bluetoothsdk.utils.audio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class Lc3JitterBufferTest {
+
+    private static final int FRAME_SIZE = 40;
+    private static final int FRAMES_PER_PACKET = 5;
+    private static final long PACKET_MS = FRAMES_PER_PACKET * Lc3JitterBuffer.FRAME_DURATION_MS;
+
+    // "F<sequence>" for each delivered packet, "L<frames>" for each concealment
+    private final List<String> events = new ArrayList<>();
+    private Lc3JitterBuffer buffer;
+    private long now;
+
+    @Before
+    public void setUp() {
+        buffer = new Lc3JitterBuffer(FRAME_SIZE, new Lc3JitterBuffer.Listener() {
+            @Override
+            public void onFrames(int sequence, byte[] frames) {
+                assertEquals(FRAME_SIZE * FRAMES_PER_PACKET, frames.length);
+                assertEquals("payload of " + sequence, (byte) sequence, frames[0]);
+                events.add("F" + sequence);
+            }
+
+            @Override
+            public void onLoss(int frameCount) {
+                events.add("L" + frameCount);
+            }
+        });
+    }
+
+    @Test
+    public void inOrderPacketsAreDeliveredAtOnce() {
+        push(0, 1, 2);
+        assertEvents("F0", "F1", "F2");
+        assertEquals(0, buffer.getLostCount());
+        assertEquals(-1, buffer.flushDeadlineMs());
+    }
+
+    @Test
+    public void reorderedPacketIsPutBackInSequence() {
+        push(0, 2, 1, 3);
+        assertEvents("F0", "F1", "F2", "F3");
+        assertEquals(0, buffer.getLostCount());
+        assertEquals(0, buffer.getConcealedFrameCount());
+    }
+
+    @Test
+    public void sequenceWrapsFrom255To0() {
+        push(253, 254, 0, 255, 1, 2);
+        assertEvents("F253", "F254", "F255", "F0", "F1", "F2");
+        assertEquals(0, buffer.getLostCount());
+    }
+
+    @Test
+    public void gapIsConcealedOnceMoreThanDepthPacketsWaitBehindIt() {
+        push(0, 2, 3);
+        assertEvents("F0", "L5", "F2", "F3");
+        assertEquals(1, buffer.getLostCount());
+        assertEquals(FRAMES_PER_PACKET, buffer.getConcealedFrameCount());
+    }
+
+    @Test
+    public void packetArrivingAfterItsConcealmentDeepensTheBuffer() {
+        push(0, 2, 3, 1);
+        assertEvents("F0", "L5", "F2", "F3");
+        assertEquals(1, buffer.getLateCount());
+        assertEquals(Lc3JitterBuffer.INITIAL_DEPTH + 1, buffer.getDepth());
+
+        // The same packet again is a duplicate, not another late one
+        push(1);
+        assertEquals(1, buffer.getLateCount());
+    }
+
+    @Test
+    public void longPauseResyncsWithoutConcealing() {
+        push(0, 1);
+        now += Lc3JitterBuffer.RESYNC_IDLE_MS + 1;
+        push(90, 91);
+        assertEvents("F0", "F1", "F90", "F91");
+        assertEquals(0, buffer.getLostCount());
+    }
+
+    @Test
+    public void burstLongerThanTheBufferConcealsOnlyAFewPackets() {
+        push(0, 20);
+        assertEvents("F0", "L5", "L5", "F20");
+        assertEquals(19, buffer.getLostCount());
+    }
+
+    @Test
+    public void restartedSenderIsFollowedAfterARunOfStalePackets() {
+        push(100, 101);
+        push(10, 11, 12, 13, 14, 15, 16, 17, 18);
+        assertEvents("F100", "F101", "F17", "F18");
+    }
+
+    @Test
+    public void flushConcealsTheGapOnceTheHeldPacketHasWaitedTooLong() {
+        push(0, 2);
+        assertEvents("F0");
+        long deadline = buffer.flushDeadlineMs();
+        assertEquals(now + PACKET_MS, deadline);
+
+        buffer.flushStale(deadline - 1);
+        assertEvents("F0");
+
+        buffer.flushStale(deadline);
+        assertEvents("F0", "L5", "F2");
+        assertEquals(-1, buffer.flushDeadlineMs());
+        assertEquals(1, buffer.getLostCount());
+    }
+
+    @Test
+    public void flushAcrossTheWrap() {
+        push(254, 0, 1);
+        // Depth 1: the second held packet already released the gap
+        assertEvents("F254", "L5", "F0", "F1");
+
+        push(3);
+        buffer.flushStale(buffer.flushDeadlineMs());
+        assertEvents("F254", "L5", "F0", "F1", "L5", "F3");
+    }
+
+    @Test
+    public void concealedFlagIsForgottenOnceTheStreamMovesPastIt() {
+        push(0, 2, 3);
+        assertEquals(1, buffer.getLostCount());
+        for (int sequence = 4; sequence <= 250; sequence++) {
+            push(sequence);
+        }
+        // Next time around, a burst skips sequence 1 without concealing it
+        push(10);
+        int delivered = events.size();
+
+        // A stray copy of sequence 1 now is a duplicate; the concealment was a whole cycle ago
+        push(1);
+        assertEquals(0, buffer.getLateCount());
+        assertEquals(Lc3JitterBuffer.INITIAL_DEPTH, buffer.getDepth());
+        assertEquals(delivered, events.size());
+    }
+
+    @Test
+    public void resetForgetsHeldPackets() {
+        push(0, 2);
+        buffer.reset();
+        assertEquals(-1, buffer.flushDeadlineMs());
+        push(50, 51);
+        assertEvents("F0", "F50", "F51");
+        assertEquals(0, buffer.getLostCount());
+    }
+
+    /** Packets arrive 10 ms apart, each carrying its sequence in the first payload byte */
+    private void push(int... sequences) {
+        byte[] packet = new byte[2 + FRAME_SIZE * FRAMES_PER_PACKET];
+        for (int sequence : sequences) {
+            now += 10;
+            packet[0] = (byte) 0xF1;
+            packet[1] = (byte) sequence;
+            packet[2] = (byte) sequence;
+            buffer.push(sequence, packet, 2, packet.length - 2, now);
+        }
+    }
+
+    private void assertEvents(String... expected) {
+        assertEquals(Arrays.asList(expected), events);
+    }
+}
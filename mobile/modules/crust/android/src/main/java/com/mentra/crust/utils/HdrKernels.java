@@ -0,0 +1,316 @@
+package com.mentra.crust.utils;
+
+/**
+ * Pixel kernels behind {@link ImageProcessor#mergeHdr}: exposure fusion of bracketed
+ * frames, one strip of rows at a time, and global translation alignment between the
+ * brackets.
+ *
+ * Plain Java with no Android dependencies (like {@link ImageKernels}), so the merge can
+ * be benchmarked and checked on a desktop JVM.
+ */
+public final class HdrKernels {
+
+  private HdrKernels() {
+  }
+
+  // Multi-scale weights: exposure weights are averaged over CELL x CELL blocks and
+  // box-blurred over SMOOTH_RADIUS cells, then blended with the per-pixel weight.
+  static final int CELL = 8;
+  static final int SMOOTH_RADIUS = 2;
+  /** Extra bracket rows a strip needs above and below it when smoothing weights. */
+  public static final int SMOOTH_HALO_ROWS = (SMOOTH_RADIUS + 1) * CELL;
+
+  // Median threshold bitmap alignment ignores pixels this close to the median, where
+  // sensor noise flips the threshold bit
+  private static final int MTB_NOISE = 4;
+
+  /**
+   * Rows of one bracket decoded for a strip, and where they sit relative to the
+   * reference frame. Output pixel (x, y) takes this bracket's pixel (x + dx, y + dy);
+   * pixels outside the decoded rows or the frame don't contribute.
+   */
+  public static final class BracketRows {
+    public int[] pixels;
+    public int width;    // Row stride of pixels
+    public int firstRow; // Bracket row held in pixels[0]
+    public int rows;
+    public int dx;
+    public int dy;
+  }
+
+  /** Well-exposedness weight: peaks at mid-gray, never zero. */
+  static float exposureWeight(int argb) {
+    int r = (argb >> 16) & 0xFF;
+    int g = (argb >> 8) & 0xFF;
+    int b = argb & 0xFF;
+    float lum = (r + g + b) / 3.0f / 255.0f;
+    return 4.0f * lum * (1.0f - lum) + 0.01f; // Gaussian-ish around 0.5
+  }
+
+  /** The bracket's pixel for output (x, y), or 0 (alpha 0) if it has none. */
+  private static int sample(BracketRows b, int x, int y) {
+    int sx = x + b.dx;
+    int sy = y + b.dy - b.firstRow;
+    if (sx < 0 || sx >= b.width || sy < 0 || sy >= b.rows) {
+      return 0;
+    }
+    return b.pixels[sy * b.width + sx];
+  }
+
+  /**
+   * Fuse output rows [y0, y1) of the brackets: each pixel is the average of the brackets'
+   * pixels weighted by how well exposed each is. Recovers highlights from the short
+   * exposure and shadows from the long one.
+   *
+   * @param out Output, row y0 at index 0 (stride width)
+   */
+  public static void mergeRows(BracketRows[] brackets, int width, int y0, int y1, int[] out) {
+    int i = 0;
+    for (int y = y0; y < y1; y++) {
+      for (int x = 0; x < width; x++, i++) {
+        float total = 0f;
+        float r = 0f;
+        float g = 0f;
+        float b = 0f;
+        for (BracketRows bracket : brackets) {
+          int p = sample(bracket, x, y);
+          if ((p >>> 24) == 0) {
+            continue;
+          }
+          float weight = exposureWeight(p);
+          total += weight;
+          r += ((p >> 16) & 0xFF) * weight;
+          g += ((p >> 8) & 0xFF) * weight;
+          b += (p & 0xFF) * weight;
+        }
+        out[i] = blend(r, g, b, total);
+      }
+    }
+  }
+
+  /**
+   * Like {@link #mergeRows}, but each pixel's weight is the mean of its own exposure
+   * weight and a smooth, coarse-scale one (averaged over {@link #CELL}-pixel blocks and
+   * blurred). That keeps the blend from switching brackets pixel by pixel in textured
+   * areas, which shows as noise and seams. The brackets must hold
+   * {@link #SMOOTH_HALO_ROWS} rows beyond the strip (where the frame has them).
+   *
+   * @param height Frame height, to clamp the halo
+   */
+  public static void mergeRowsSmoothed(BracketRows[] brackets, int width, int height,
+                                       int y0, int y1, int[] out) {
+    int n = brackets.length;
+    int cols = (width + CELL - 1) / CELL;
+    int cellRow0 = Math.max(0, y0 / CELL - SMOOTH_RADIUS - 1);
+    int cellRow1 = Math.min((height + CELL - 1) / CELL, (y1 + CELL - 1) / CELL + SMOOTH_RADIUS + 1);
+    int cellRows = cellRow1 - cellRow0;
+
+    // Coarse weight per bracket and cell, then blurred
+    float[][] coarse = new float[n][cols * cellRows];
+    float[] scratch = new float[cols * cellRows];
+    for (int k = 0; k < n; k++) {
+      float[] cells = coarse[k];
+      for (int cy = 0; cy < cellRows; cy++) {
+        int py0 = (cellRow0 + cy) * CELL;
+        int py1 = Math.min(height, py0 + CELL);
+        for (int cx = 0; cx < cols; cx++) {
+          int px0 = cx * CELL;
+          int px1 = Math.min(width, px0 + CELL);
+          float sum = 0f;
+          for (int py = py0; py < py1; py++) {
+            for (int px = px0; px < px1; px++) {
+              int p = sample(brackets[k], px, py);
+              if ((p >>> 24) != 0) {
+                sum += exposureWeight(p);
+              }
+            }
+          }
+          cells[cy * cols + cx] = sum / ((py1 - py0) * (px1 - px0));
+        }
+      }
+      boxBlur(cells, scratch, cols, cellRows, SMOOTH_RADIUS);
+    }
+
+    int i = 0;
+    for (int y = y0; y < y1; y++) {
+      // Bilinear position among cell centers
+      float fy = Math.max(0f, Math.min(cellRows - 1, (y + 0.5f) / CELL - 0.5f - cellRow0));
+      int cy0 = (int) fy;
+      int cy1 = Math.min(cellRows - 1, cy0 + 1);
+      float ty = fy - cy0;
+      for (int x = 0; x < width; x++, i++) {
+        float fx = Math.max(0f, Math.min(cols - 1, (x + 0.5f) / CELL - 0.5f));
+        int cx0 = (int) fx;
+        int cx1 = Math.min(cols - 1, cx0 + 1);
+        float tx = fx - cx0;
+
+        float total = 0f;
+        float r = 0f;
+        float g = 0f;
+        float b = 0f;
+        for (int k = 0; k < n; k++) {
+          int p = sample(brackets[k], x, y);
+          if ((p >>> 24) == 0) {
+            continue;
+          }
+          float[] cells = coarse[k];
+          float top = cells[cy0 * cols + cx0] + (cells[cy0 * cols + cx1] - cells[cy0 * cols + cx0]) * tx;
+          float bottom = cells[cy1 * cols + cx0] + (cells[cy1 * cols + cx1] - cells[cy1 * cols + cx0]) * tx;
+          float weight = 0.5f * (exposureWeight(p) + top + (bottom - top) * ty);
+          total += weight;
+          r += ((p >> 16) & 0xFF) * weight;
+          g += ((p >> 8) & 0xFF) * weight;
+          b += (p & 0xFF) * weight;
+        }
+        out[i] = blend(r, g, b, total);
+      }
+    }
+  }
+
+  private static int blend(float r, float g, float b, float total) {
+    if (total <= 0f) {
+      return 0xFF000000;
+    }
+    int rOut = Math.min(255, Math.round(r / total));
+    int gOut = Math.min(255, Math.round(g / total));
+    int bOut = Math.min(255, Math.round(b / total));
+    return 0xFF000000 | (rOut << 16) | (gOut << 8) | bOut;
+  }
+
+  /** Separable box blur in place, averaging over the part of the window inside the grid. */
+  private static void boxBlur(float[] grid, float[] scratch, int cols, int rows, int radius) {
+    for (int y = 0; y < rows; y++) {
+      for (int x = 0; x < cols; x++) {
+        float sum = 0f;
+        int count = 0;
+        for (int k = Math.max(0, x - radius); k <= Math.min(cols - 1, x + radius); k++) {
+          sum += grid[y * cols + k];
+          count++;
+        }
+        scratch[y * cols + x] = sum / count;
+      }
+    }
+    for (int y = 0; y < rows; y++) {
+      for (int x = 0; x < cols; x++) {
+        float sum = 0f;
+        int count = 0;
+        for (int k = Math.max(0, y - radius); k <= Math.min(rows - 1, y + radius); k++) {
+          sum += scratch[k * cols + x];
+          count++;
+        }
+        grid[y * cols + x] = sum / count;
+      }
+    }
+  }
+
+  // --- Alignment ---
+
+  /** 8-bit luma of packed ARGB pixels. */
+  public static byte[] toGray(int[] argb) {
+    byte[] gray = new byte[argb.length];
+    for (int i = 0; i < argb.length; i++) {
+      int p = argb[i];
+      gray[i] = (byte) ((((p >> 16) & 0xFF) * 54 + ((p >> 8) & 0xFF) * 183 + (p & 0xFF) * 19) >> 8);
+    }
+    return gray;
+  }
+
+  /**
+   * Global translation that aligns img to ref, using median threshold bitmaps (Ward,
+   * 2003): each image is thresholded at its own median, which makes the comparison
+   * insensitive to the exposure difference between brackets. The shift is searched
+   * coarse to fine over an image pyramid, +/-1 pixel per level, so it finds shifts up to
+   * 2^levels - 1 pixels.
+   *
+   * @param ref Gray reference frame
+   * @param img Gray frame to align, same size
+   * @return {dx, dy} such that img(x + dx, y + dy) matches ref(x, y)
+   */
+  public static int[] alignTranslation(byte[] ref, byte[] img, int width, int height, int levels) {
+    if (levels <= 0 || width < 16 || height < 16) {
+      return new int[]{0, 0};
+    }
+    int halfWidth = width / 2;
+    int halfHeight = height / 2;
+    int[] coarse = alignTranslation(halve(ref, width, height), halve(img, width, height),
+        halfWidth, halfHeight, levels - 1);
+    int baseX = coarse[0] * 2;
+    int baseY = coarse[1] * 2;
+
+    boolean[] refBits = new boolean[ref.length];
+    boolean[] refMask = new boolean[ref.length];
+    thresholdBitmaps(ref, refBits, refMask);
+    boolean[] imgBits = new boolean[img.length];
+    boolean[] imgMask = new boolean[img.length];
+    thresholdBitmaps(img, imgBits, imgMask);
+
+    long bestError = Long.MAX_VALUE;
+    int bestX = baseX;
+    int bestY = baseY;
+    for (int sy = baseY - 1; sy <= baseY + 1; sy++) {
+      for (int sx = baseX - 1; sx <= baseX + 1; sx++) {
+        long error = shiftError(refBits, refMask, imgBits, imgMask, width, height, sx, sy);
+        if (error < bestError) {
+          bestError = error;
+          bestX = sx;
+          bestY = sy;
+        }
+      }
+    }
+    return new int[]{bestX, bestY};
+  }
+
+  /** Pixels where the threshold bits disagree under the shift, ignoring near-median pixels. */
+  private static long shiftError(boolean[] refBits, boolean[] refMask, boolean[] imgBits,
+                                 boolean[] imgMask, int width, int height, int sx, int sy) {
+    long error = 0;
+    int x0 = Math.max(0, -sx);
+    int x1 = Math.min(width, width - sx);
+    int y0 = Math.max(0, -sy);
+    int y1 = Math.min(height, height - sy);
+    for (int y = y0; y < y1; y++) {
+      int r = y * width;
+      int s = (y + sy) * width + sx;
+      for (int x = x0; x < x1; x++) {
+        if (refMask[r + x] && imgMask[s + x] && refBits[r + x] != imgBits[s + x]) {
+          error++;
+        }
+      }
+    }
+    return error;
+  }
+
+  private static void thresholdBitmaps(byte[] gray, boolean[] bits, boolean[] mask) {
+    int[] histogram = new int[256];
+    for (byte v : gray) {
+      histogram[v & 0xFF]++;
+    }
+    int median = 0;
+    int seen = 0;
+    while (median < 255 && (seen += histogram[median]) < gray.length / 2) {
+      median++;
+    }
+    for (int i = 0; i < gray.length; i++) {
+      int v = gray[i] & 0xFF;
+      bits[i] = v > median;
+      mask[i] = Math.abs(v - median) > MTB_NOISE;
+    }
+  }
+
+  /** 2x2 box downsample. */
+  private static byte[] halve(byte[] gray, int width, int height) {
+    int w = width / 2;
+    int h = height / 2;
+    byte[] out = new byte[w * h];
+    for (int y = 0; y < h; y++) {
+      int row0 = 2 * y * width;
+      int row1 = row0 + width;
+      for (int x = 0; x < w; x++) {
+        int sum = (gray[row0 + 2 * x] & 0xFF) + (gray[row0 + 2 * x + 1] & 0xFF)
+            + (gray[row1 + 2 * x] & 0xFF) + (gray[row1 + 2 * x + 1] & 0xFF);
+        out[y * w + x] = (byte) ((sum + 2) >> 2);
+      }
+    }
+    return out;
+  }
+}
@@ -0,0 +1,322 @@
+package com.mentra.crust.utils;
+
+/**
+ * Pixel kernels behind {@link ImageProcessor}: lens distortion correction and the
+ * linear-light color pipeline, working on rows of packed ARGB ints.
+ *
+ * Plain Java with no Android dependencies, so the kernels can be benchmarked and
+ * checked on a desktop JVM. Every kernel works on a band of rows and only touches
+ * the arrays it is given, so bands can run in parallel.
+ */
+public final class ImageKernels {
+
+  private ImageKernels() {
+  }
+
+  // Brown-Conrady distortion coefficients for the Mentra Live camera
+  // (Sony sensor, 118-degree FOV fisheye lens)
+  // Calibrated from chessboard photos at 3264x2448 native sensor resolution.
+  // Brown-Conrady lens distortion coefficients
+  static final double K1 = -0.10;   // Radial distortion (barrel)
+  static final double K2 = 0.02;    // Radial distortion (higher order)
+  static final double P1 = 0.0;     // Tangential distortion
+  static final double P2 = 0.0;     // Tangential distortion
+
+  // --- Color pipeline tuning parameters ---
+
+  // Tone curve anchor points (X values fixed at 0.0, 0.25, 0.50, 0.75, 1.0)
+  // Y values control the S-curve shape in linear space.
+  // Slight shadow lift (0.02) for low-light camera, full whites, punchy midtone contrast.
+  private static final double[] TONE_CURVE_Y = {0.02, 0.20, 0.52, 0.82, 1.0};
+
+  // Vibrance: selective saturation boost for desaturated colors (0.0 = off, 1.0 = max)
+  private static final float VIBRANCE_AMOUNT = 0.45f;
+
+  // Color correction matrix (3x4: RGB coefficients + bias per channel)
+  // Adjusts warmth/white balance to compensate for the glasses camera's color cast.
+  private static final float CM_RR = 1.06f, CM_RG = 0.02f, CM_RB = -0.01f, CM_R_BIAS = 5.0f / 255.0f;
+  private static final float CM_GR = 0.01f, CM_GG = 1.04f, CM_GB = -0.01f, CM_G_BIAS = 3.0f / 255.0f;
+  private static final float CM_BR = -0.02f, CM_BG = 0.01f, CM_BB = 1.02f, CM_B_BIAS = 0.0f;
+
+  // sRGB gamma decode LUT: sRGB byte (0-255) -> linear float (0.0-1.0)
+  // iOS CIFilters operate in linear space internally; this matches that behavior.
+  private static final float[] LINEARIZE_LUT = buildLinearizeLut();
+
+  // sRGB gamma encode LUT: linear value (0-4095, Q12 fixed-point) -> sRGB byte (0-255)
+  private static final int DELIN_LUT_SIZE = 4096;
+  private static final int[] DELINEARIZE_LUT = buildDelinearizeLut();
+
+  private static float[] buildLinearizeLut() {
+    float[] lut = new float[256];
+    for (int i = 0; i < 256; i++) {
+      double v = i / 255.0;
+      if (v <= 0.04045) {
+        lut[i] = (float) (v / 12.92);
+      } else {
+        lut[i] = (float) Math.pow((v + 0.055) / 1.055, 2.4);
+      }
+    }
+    return lut;
+  }
+
+  private static int[] buildDelinearizeLut() {
+    int[] lut = new int[DELIN_LUT_SIZE];
+    for (int i = 0; i < DELIN_LUT_SIZE; i++) {
+      double v = (double) i / (DELIN_LUT_SIZE - 1);
+      double s;
+      if (v <= 0.0031308) {
+        s = v * 12.92;
+      } else {
+        s = 1.055 * Math.pow(v, 1.0 / 2.4) - 0.055;
+      }
+      lut[i] = Math.max(0, Math.min(255, (int) (s * 255 + 0.5)));
+    }
+    return lut;
+  }
+
+  // Tone-curve LUT operating in linear space [0.0-1.0] -> [0.0-1.0]
+  // Piecewise-linear matching iOS CIToneCurve anchor points.
+  // Input/output are linear-light values, not gamma-encoded.
+  private static final float[] TONE_LUT_LINEAR = buildToneLutLinear();
+
+  private static float[] buildToneLutLinear() {
+    float[] lut = new float[DELIN_LUT_SIZE];
+    double[] ax = {0.0, 0.25, 0.50, 0.75, 1.0};
+    double[] ay = TONE_CURVE_Y;
+    for (int i = 0; i < DELIN_LUT_SIZE; i++) {
+      double x = (double) i / (DELIN_LUT_SIZE - 1);
+      double y;
+      if (x <= ax[1]) {
+        y = ay[0] + (ay[1] - ay[0]) * (x - ax[0]) / (ax[1] - ax[0]);
+      } else if (x <= ax[2]) {
+        y = ay[1] + (ay[2] - ay[1]) * (x - ax[1]) / (ax[2] - ax[1]);
+      } else if (x <= ax[3]) {
+        y = ay[2] + (ay[3] - ay[2]) * (x - ax[2]) / (ax[3] - ax[2]);
+      } else {
+        y = ay[3] + (ay[4] - ay[3]) * (x - ax[3]) / (ax[4] - ax[3]);
+      }
+      lut[i] = (float) Math.max(0.0, Math.min(1.0, y));
+    }
+    return lut;
+  }
+
+  /** Look up a tone-curve value for a linear float input. */
+  private static float toneCurveLookup(float linearVal) {
+    int idx = Math.max(0, Math.min(DELIN_LUT_SIZE - 1, (int) (linearVal * (DELIN_LUT_SIZE - 1) + 0.5f)));
+    return TONE_LUT_LINEAR[idx];
+  }
+
+  /** Convert a linear [0,1] float back to sRGB byte via LUT. */
+  private static int toSrgbByte(float linear) {
+    int idx = Math.max(0, Math.min(DELIN_LUT_SIZE - 1, (int) (linear * (DELIN_LUT_SIZE - 1) + 0.5f)));
+    return DELINEARIZE_LUT[idx];
+  }
+
+  /**
+   * Lens correction mapping for one image size.
+   *
+   * The Brown-Conrady model only depends on each pixel's normalized offset from the
+   * center, so instead of a full-frame remap LUT (8 bytes per pixel) this keeps the
+   * normalized offset of every column and every row (O(w + h)) and evaluates the
+   * polynomial per pixel from those.
+   */
+  public static final class LensMap {
+    final int width;
+    final int height;
+    final double cx;
+    final double cy;
+    final double norm;
+    final double[] colNorm; // (x - cx) / norm
+    final double[] rowNorm; // (y - cy) / norm
+
+    private LensMap(int width, int height) {
+      this.width = width;
+      this.height = height;
+      cx = width / 2.0;
+      cy = height / 2.0;
+      norm = Math.sqrt(cx * cx + cy * cy);
+      colNorm = new double[width];
+      for (int x = 0; x < width; x++) {
+        colNorm[x] = (x - cx) / norm;
+      }
+      rowNorm = new double[height];
+      for (int y = 0; y < height; y++) {
+        rowNorm[y] = (y - cy) / norm;
+      }
+    }
+
+    public static LensMap forSize(int width, int height) {
+      return new LensMap(width, height);
+    }
+
+    public boolean matches(int w, int h) {
+      return width == w && height == h;
+    }
+
+    /** Source y (Q8 fixed-point) for output pixel (x, y). */
+    int sourceYQ8(int x, int y) {
+      double xn = colNorm[x];
+      double yn = rowNorm[y];
+      double r2 = xn * xn + yn * yn;
+      double radial = 1.0 + K1 * r2 + K2 * (r2 * r2);
+      double yd = yn * radial + P1 * (r2 + 2 * yn * yn) + 2 * P2 * xn * yn;
+      return (int) ((yd * norm + cy) * 256);
+    }
+
+    /**
+     * Source rows that output rows [y0, y1) sample from, as {first, last} clamped to the
+     * image. For a fixed column the source y only grows with y: with no tangential terms
+     * its derivative, 1 + K1 (r2 + 2 yn^2) + K2 r2 (r2 + 4 yn^2), stays above 1 + 3 K1 > 0
+     * for r2 <= 1, so the extremes lie on the band's first and last rows. Every column of those two rows
+     * is evaluated, which makes the bound exact: no pixel in the band reads outside it.
+     */
+    public int[] sourceRows(int y0, int y1) {
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int x = 0; x < width; x++) {
+        int top = sourceYQ8(x, y0) >> 8;
+        int bottom = sourceYQ8(x, y1 - 1) >> 8;
+        min = Math.min(min, Math.min(top, bottom));
+        max = Math.max(max, Math.max(top, bottom));
+      }
+      // Plus the bilinear neighbor below
+      int first = Math.max(0, min);
+      int last = Math.min(height - 1, max + 1);
+      if (first > last) {
+        // The whole band maps outside the image
+        first = last = Math.min(Math.max(0, min), height - 1);
+      }
+      return new int[]{first, last};
+    }
+  }
+
+  /**
+   * Lens-correct output rows [y0, y1) with bilinear interpolation, optionally running
+   * the color pipeline on each pixel as it is produced.
+   *
+   * @param src      Source rows [srcFirstRow, srcFirstRow + srcRows), width map.width
+   * @param dst      Output, row y0 at index 0
+   * @param color    Also apply {@link #colorPixel} (fused into the same pass)
+   */
+  public static void lensCorrectRows(LensMap map, int[] src, int srcFirstRow, int srcRows,
+                                     int[] dst, int y0, int y1, boolean color) {
+    int w = map.width;
+    int maxX = w - 1;
+    int maxY = map.height - 1;
+    int srcLastRow = srcFirstRow + srcRows - 1;
+    int i = 0;
+
+    double[] colNorm = map.colNorm;
+    double norm = map.norm;
+    double cx = map.cx;
+    double cy = map.cy;
+
+    for (int y = y0; y < y1; y++) {
+      double yn = map.rowNorm[y];
+      double yn2 = yn * yn;
+      for (int x = 0; x < w; x++, i++) {
+        // Same mapping as LensMap.sourceYQ8, plus the x coordinate, sharing r2 and the radial term
+        double xn = colNorm[x];
+        double r2 = xn * xn + yn2;
+        double radial = 1.0 + K1 * r2 + K2 * (r2 * r2);
+        double xd = xn * radial + 2 * P1 * xn * yn + P2 * (r2 + 2 * xn * xn);
+        double yd = yn * radial + P1 * (r2 + 2 * yn2) + 2 * P2 * xn * yn;
+        int sxQ8 = (int) ((xd * norm + cx) * 256);
+        int syQ8 = (int) ((yd * norm + cy) * 256);
+
+        // Integer part (floor)
+        int x0 = sxQ8 >> 8;
+        int sy0 = syQ8 >> 8;
+
+        if (x0 < 0 || x0 >= maxX || sy0 < 0 || sy0 >= maxY
+            || sy0 < srcFirstRow || sy0 + 1 > srcLastRow) {
+          // Out of bounds — black pixel
+          dst[i] = 0xFF000000;
+          continue;
+        }
+
+        // Fractional part (0-255)
+        int fx = sxQ8 & 0xFF;
+        int fy = syQ8 & 0xFF;
+        int ifx = 256 - fx;
+        int ify = 256 - fy;
+
+        // Four source pixels
+        int idx00 = (sy0 - srcFirstRow) * w + x0;
+        int p00 = src[idx00];
+        int p10 = src[idx00 + 1];
+        int p01 = src[idx00 + w];
+        int p11 = src[idx00 + w + 1];
+
+        // Bilinear blend per channel
+        int r = (ifx * ify * ((p00 >> 16) & 0xFF) + fx * ify * ((p10 >> 16) & 0xFF)
+               + ifx * fy * ((p01 >> 16) & 0xFF) + fx * fy * ((p11 >> 16) & 0xFF)) >> 16;
+        int g = (ifx * ify * ((p00 >> 8) & 0xFF) + fx * ify * ((p10 >> 8) & 0xFF)
+               + ifx * fy * ((p01 >> 8) & 0xFF) + fx * fy * ((p11 >> 8) & 0xFF)) >> 16;
+        int b = (ifx * ify * (p00 & 0xFF) + fx * ify * (p10 & 0xFF)
+               + ifx * fy * (p01 & 0xFF) + fx * fy * (p11 & 0xFF)) >> 16;
+
+        int pixel = 0xFF000000 | (r << 16) | (g << 8) | b;
+        dst[i] = color ? colorPixel(pixel) : pixel;
+      }
+    }
+  }
+
+  /** Run the color pipeline over pixels[offset, offset + length) in place. */
+  public static void colorRows(int[] pixels, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++) {
+      pixels[i] = colorPixel(pixels[i]);
+    }
+  }
+
+  /**
+   * Tone mapping + vibrance + color correction for one pixel, all in linear light
+   * space to match iOS CIFilter behavior.
+   *
+   * Pipeline per pixel:
+   *   1. sRGB gamma decode (byte → linear float via LUT)
+   *   2. Tone curve (piecewise-linear S-curve in linear space)
+   *   3. Vibrance (luminance-based selective saturation boost)
+   *   4. Color correction matrix (warmth/white balance)
+   *   5. sRGB gamma encode (linear float → byte via LUT)
+   */
+  public static int colorPixel(int argb) {
+    // 1. Linearize sRGB → linear
+    float lr = LINEARIZE_LUT[(argb >> 16) & 0xFF];
+    float lg = LINEARIZE_LUT[(argb >> 8) & 0xFF];
+    float lb = LINEARIZE_LUT[argb & 0xFF];
+
+    // 2a. Tone curve in linear space
+    lr = toneCurveLookup(lr);
+    lg = toneCurveLookup(lg);
+    lb = toneCurveLookup(lb);
+
+    // 2b. Vibrance — luminance-based, stays in linear space (no HSV round-trip)
+    // Matches CIVibrance behavior: selectively boosts desaturated colors
+    float lum = 0.2126f * lr + 0.7152f * lg + 0.0722f * lb;
+    float maxC = Math.max(lr, Math.max(lg, lb));
+    float minC = Math.min(lr, Math.min(lg, lb));
+    float sat = (maxC > 0.0001f) ? (maxC - minC) / maxC : 0f;
+    float amount = VIBRANCE_AMOUNT * (1.0f - sat); // boost desaturated more
+    lr = lr + (lr - lum) * amount;
+    lg = lg + (lg - lum) * amount;
+    lb = lb + (lb - lum) * amount;
+
+    // 2c. Color correction matrix in linear space
+    float cr = CM_RR * lr + CM_RG * lg + CM_RB * lb + CM_R_BIAS;
+    float cg = CM_GR * lr + CM_GG * lg + CM_GB * lb + CM_G_BIAS;
+    float cb = CM_BR * lr + CM_BG * lg + CM_BB * lb + CM_B_BIAS;
+
+    // Clamp to [0, 1]
+    cr = Math.max(0f, Math.min(1f, cr));
+    cg = Math.max(0f, Math.min(1f, cg));
+    cb = Math.max(0f, Math.min(1f, cb));
+
+    // 5. Encode linear → sRGB
+    int outR = toSrgbByte(cr);
+    int outG = toSrgbByte(cg);
+    int outB = toSrgbByte(cb);
+
+    return 0xFF000000 | (outR << 16) | (outG << 8) | outB;
+  }
+}
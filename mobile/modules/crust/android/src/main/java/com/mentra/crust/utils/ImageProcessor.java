@@ -2,11 +2,15 @@ package com.mentra.crust.utils;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
 import android.util.Log;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Image processor for gallery photos synced from Mentra glasses.
@@ -16,111 +20,23 @@ import java.io.IOException;
 public class ImageProcessor {
   private static final String TAG = "ImageProcessor";
 
-  // Brown-Conrady distortion coefficients for the Mentra Live camera
-  // (Sony sensor, 118-degree FOV fisheye lens)
-  // Calibrated from chessboard photos at 3264x2448 native sensor resolution.
-  // Brown-Conrady lens distortion coefficients
-  private static final double K1 = -0.10;   // Radial distortion (barrel)
-  private static final double K2 = 0.02;    // Radial distortion (higher order)
-  private static final double P1 = 0.0;     // Tangential distortion
-  private static final double P2 = 0.0;     // Tangential distortion
-
-  // --- Color pipeline tuning parameters ---
-
-  // Tone curve anchor points (X values fixed at 0.0, 0.25, 0.50, 0.75, 1.0)
-  // Y values control the S-curve shape in linear space.
-  // Slight shadow lift (0.02) for low-light camera, full whites, punchy midtone contrast.
-  private static final double[] TONE_CURVE_Y = {0.02, 0.20, 0.52, 0.82, 1.0};
-
-  // Vibrance: selective saturation boost for desaturated colors (0.0 = off, 1.0 = max)
-  private static final float VIBRANCE_AMOUNT = 0.45f;
-
-  // Color correction matrix (3x4: RGB coefficients + bias per channel)
-  // Adjusts warmth/white balance to compensate for the glasses camera's color cast.
-  private static final float CM_RR = 1.06f, CM_RG = 0.02f, CM_RB = -0.01f, CM_R_BIAS = 5.0f / 255.0f;
-  private static final float CM_GR = 0.01f, CM_GG = 1.04f, CM_GB = -0.01f, CM_G_BIAS = 3.0f / 255.0f;
-  private static final float CM_BR = -0.02f, CM_BG = 0.01f, CM_BB = 1.02f, CM_B_BIAS = 0.0f;
-
-  // sRGB gamma decode LUT: sRGB byte (0-255) -> linear float (0.0-1.0)
-  // iOS CIFilters operate in linear space internally; this matches that behavior.
-  private static final float[] LINEARIZE_LUT = buildLinearizeLut();
-
-  // sRGB gamma encode LUT: linear value (0-4095, Q12 fixed-point) -> sRGB byte (0-255)
-  private static final int[] DELINEARIZE_LUT = buildDelinearizeLut();
-  private static final int DELIN_LUT_SIZE = 4096;
-
-  private static float[] buildLinearizeLut() {
-    float[] lut = new float[256];
-    for (int i = 0; i < 256; i++) {
-      double v = i / 255.0;
-      if (v <= 0.04045) {
-        lut[i] = (float) (v / 12.92);
-      } else {
-        lut[i] = (float) Math.pow((v + 0.055) / 1.055, 2.4);
-      }
-    }
-    return lut;
-  }
-
-  private static int[] buildDelinearizeLut() {
-    int[] lut = new int[DELIN_LUT_SIZE];
-    for (int i = 0; i < DELIN_LUT_SIZE; i++) {
-      double v = (double) i / (DELIN_LUT_SIZE - 1);
-      double s;
-      if (v <= 0.0031308) {
-        s = v * 12.92;
-      } else {
-        s = 1.055 * Math.pow(v, 1.0 / 2.4) - 0.055;
-      }
-      lut[i] = Math.max(0, Math.min(255, (int) (s * 255 + 0.5)));
-    }
-    return lut;
-  }
+  // Output rows per band. Each band task reads the source rows its output rows map to
+  // and writes its output rows, so transient memory is a few bands per worker rather
+  // than several full-frame int[] copies.
+  private static final int BAND_ROWS = 64;
 
-  // Tone-curve LUT operating in linear space [0.0-1.0] -> [0.0-1.0]
-  // Piecewise-linear matching iOS CIToneCurve anchor points.
-  // Input/output are linear-light values, not gamma-encoded.
-  private static final float[] TONE_LUT_LINEAR = buildToneLutLinear();
-
-  private static float[] buildToneLutLinear() {
-    float[] lut = new float[DELIN_LUT_SIZE];
-    double[] ax = {0.0, 0.25, 0.50, 0.75, 1.0};
-    double[] ay = TONE_CURVE_Y;
-    for (int i = 0; i < DELIN_LUT_SIZE; i++) {
-      double x = (double) i / (DELIN_LUT_SIZE - 1);
-      double y;
-      if (x <= ax[1]) {
-        y = ay[0] + (ay[1] - ay[0]) * (x - ax[0]) / (ax[1] - ax[0]);
-      } else if (x <= ax[2]) {
-        y = ay[1] + (ay[2] - ay[1]) * (x - ax[1]) / (ax[2] - ax[1]);
-      } else if (x <= ax[3]) {
-        y = ay[2] + (ay[3] - ay[2]) * (x - ax[2]) / (ax[3] - ax[2]);
-      } else {
-        y = ay[3] + (ay[4] - ay[3]) * (x - ax[3]) / (ax[4] - ax[3]);
-      }
-      lut[i] = (float) Math.max(0.0, Math.min(1.0, y));
-    }
-    return lut;
-  }
+  // Lens mapping for the last image size (cheap to build; kept because every photo from
+  // the glasses has the same size)
+  private static volatile ImageKernels.LensMap sLensMap;
 
-  /** Look up a tone-curve value for a linear float input. */
-  private static float toneCurveLookup(float linearVal) {
-    int idx = Math.max(0, Math.min(DELIN_LUT_SIZE - 1, (int) (linearVal * (DELIN_LUT_SIZE - 1) + 0.5f)));
-    return TONE_LUT_LINEAR[idx];
-  }
-
-  /** Convert a linear [0,1] float back to sRGB byte via LUT. */
-  private static int toSrgbByte(float linear) {
-    int idx = Math.max(0, Math.min(DELIN_LUT_SIZE - 1, (int) (linear * (DELIN_LUT_SIZE - 1) + 0.5f)));
-    return DELINEARIZE_LUT[idx];
-  }
-
-  // Precomputed LUT for lens correction (lazily initialized).
-  // Stored as fixed-point Q8 (multiply by 256) for sub-pixel bilinear interpolation.
-  private static int[] sRemapXQ8;
-  private static int[] sRemapYQ8;
-  private static int sLutWidth;
-  private static int sLutHeight;
+  // HDR merge: brackets are in under/normal/over order and aligned to the normal exposure
+  private static final int HDR_REFERENCE = 1;
+  // Rows fused per strip; a multiple of HdrKernels.CELL so smoothed weights line up
+  private static final int HDR_STRIP_ROWS = 128;
+  // Longest side of the downscaled decodes alignment is estimated on
+  private static final int HDR_ALIGN_MAX_SIDE = 1024;
+  // Pyramid levels for alignment: finds shifts up to 31 downscaled pixels
+  private static final int HDR_ALIGN_LEVELS = 5;
 
   /**
    * Process a gallery image with the specified corrections.
@@ -152,25 +68,15 @@ public class ImageProcessor {
       Log.d(TAG, "Processing image: " + w + "x" + h
               + " lens=" + lensCorrection + " color=" + colorCorrection);
 
+      // Lens correction and the color pipeline run fused, band by band, in parallel
       Bitmap result = src;
-
-      // Step 1: Lens distortion correction
-      if (lensCorrection) {
-        result = applyLensCorrection(src, w, h);
+      if (lensCorrection || colorCorrection) {
+        result = applyCorrections(src, lensCorrection, colorCorrection);
         if (result != src) {
           src.recycle();
         }
       }
 
-      // Step 2: Tone mapping + vibrance + color correction in linear space
-      if (colorCorrection) {
-        Bitmap colorCorrected = applyColorPipeline(result);
-        if (colorCorrected != result) {
-          result.recycle();
-          result = colorCorrected;
-        }
-      }
-
       // Write output JPEG
       File outFile = new File(outputPath);
       try (FileOutputStream fos = new FileOutputStream(outFile)) {
@@ -190,168 +96,101 @@ public class ImageProcessor {
   }
 
   /**
-   * Apply Brown-Conrady lens distortion correction using a precomputed LUT
-   * with bilinear interpolation for sub-pixel accuracy.
+   * Apply lens correction and/or the color pipeline (see {@link ImageKernels}) in bands
+   * of {@link #BAND_ROWS} rows on the common fork-join pool. With both enabled each
+   * output pixel is remapped and color corrected in the same pass.
+   *
+   * @return a new bitmap, or src itself when only color correction was requested and
+   *         src is mutable (corrected in place)
    */
-  private static Bitmap applyLensCorrection(Bitmap src, int w, int h) {
-    // Build or reuse the remapping LUT
-    if (sRemapXQ8 == null || sLutWidth != w || sLutHeight != h) {
-      buildRemapLut(w, h);
-    }
-
-    // Read source pixels
-    int[] srcPixels = new int[w * h];
-    src.getPixels(srcPixels, 0, w, 0, 0, w, h);
-
-    // Apply remapping with bilinear interpolation
-    int[] dstPixels = new int[w * h];
-    int maxX = w - 1;
-    int maxY = h - 1;
-
-    for (int i = 0; i < w * h; i++) {
-      int sxQ8 = sRemapXQ8[i];
-      int syQ8 = sRemapYQ8[i];
-
-      // Integer part (floor)
-      int x0 = sxQ8 >> 8;
-      int y0 = syQ8 >> 8;
-
-      if (x0 < 0 || x0 >= maxX || y0 < 0 || y0 >= maxY) {
-        // Out of bounds — black pixel
-        dstPixels[i] = 0xFF000000;
-        continue;
+  private static Bitmap applyCorrections(Bitmap src, boolean lens, boolean color) {
+    int w = src.getWidth();
+    int h = src.getHeight();
+
+    ImageKernels.LensMap map = null;
+    if (lens) {
+      map = sLensMap;
+      if (map == null || !map.matches(w, h)) {
+        map = ImageKernels.LensMap.forSize(w, h);
+        sLensMap = map;
       }
-
-      // Fractional part (0-255)
-      int fx = sxQ8 & 0xFF;
-      int fy = syQ8 & 0xFF;
-      int ifx = 256 - fx;
-      int ify = 256 - fy;
-
-      // Four source pixels
-      int idx00 = y0 * w + x0;
-      int p00 = srcPixels[idx00];
-      int p10 = srcPixels[idx00 + 1];
-      int p01 = srcPixels[idx00 + w];
-      int p11 = srcPixels[idx00 + w + 1];
-
-      // Bilinear blend per channel
-      int r = (ifx * ify * ((p00 >> 16) & 0xFF) + fx * ify * ((p10 >> 16) & 0xFF)
-             + ifx * fy * ((p01 >> 16) & 0xFF) + fx * fy * ((p11 >> 16) & 0xFF)) >> 16;
-      int g = (ifx * ify * ((p00 >> 8) & 0xFF) + fx * ify * ((p10 >> 8) & 0xFF)
-             + ifx * fy * ((p01 >> 8) & 0xFF) + fx * fy * ((p11 >> 8) & 0xFF)) >> 16;
-      int b = (ifx * ify * (p00 & 0xFF) + fx * ify * (p10 & 0xFF)
-             + ifx * fy * (p01 & 0xFF) + fx * fy * (p11 & 0xFF)) >> 16;
-
-      dstPixels[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
     }
 
-    Bitmap dst = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-    dst.setPixels(dstPixels, 0, w, 0, 0, w, h);
+    Bitmap dst = (lens || !src.isMutable())
+        ? Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888)
+        : src;
+
+    int bands = (h + BAND_ROWS - 1) / BAND_ROWS;
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    // A few tasks per worker so an uneven band (edge rows sample more source rows) doesn't
+    // leave the others idle
+    int bandsPerTask = Math.max(1, bands / (pool.getParallelism() * 4));
+    pool.invoke(new BandTask(src, dst, map, color, 0, bands, bandsPerTask));
     return dst;
   }
 
-  /**
-   * Build the remapping LUT for lens distortion correction.
-   * Coordinates are stored as Q8 fixed-point (value * 256) to support
-   * sub-pixel bilinear interpolation without floating point per-pixel.
-   */
-  private static synchronized void buildRemapLut(int w, int h) {
-    Log.d(TAG, "Building lens correction LUT for " + w + "x" + h);
-    long t0 = System.currentTimeMillis();
-
-    int[] remapXQ8 = new int[w * h];
-    int[] remapYQ8 = new int[w * h];
-
-    double cx = w / 2.0;
-    double cy = h / 2.0;
-    double norm = Math.sqrt(cx * cx + cy * cy);
-
-    for (int y = 0; y < h; y++) {
-      for (int x = 0; x < w; x++) {
-        double xn = (x - cx) / norm;
-        double yn = (y - cy) / norm;
-        double r2 = xn * xn + yn * yn;
-        double r4 = r2 * r2;
-
-        double radial = 1.0 + K1 * r2 + K2 * r4;
-        double xd = xn * radial + 2 * P1 * xn * yn + P2 * (r2 + 2 * xn * xn);
-        double yd = yn * radial + P1 * (r2 + 2 * yn * yn) + 2 * P2 * xn * yn;
-
-        // Store as Q8 fixed-point for bilinear interpolation
-        int idx = y * w + x;
-        remapXQ8[idx] = (int) ((xd * norm + cx) * 256);
-        remapYQ8[idx] = (int) ((yd * norm + cy) * 256);
-      }
+  /** Corrects bands [firstBand, endBand), splitting until a task has at most grain bands. */
+  private static final class BandTask extends RecursiveAction {
+    private final Bitmap src;
+    private final Bitmap dst;
+    private final ImageKernels.LensMap map;
+    private final boolean color;
+    private final int firstBand;
+    private final int endBand;
+    private final int grain;
+
+    BandTask(Bitmap src, Bitmap dst, ImageKernels.LensMap map, boolean color,
+             int firstBand, int endBand, int grain) {
+      this.src = src;
+      this.dst = dst;
+      this.map = map;
+      this.color = color;
+      this.firstBand = firstBand;
+      this.endBand = endBand;
+      this.grain = grain;
     }
 
-    sRemapXQ8 = remapXQ8;
-    sRemapYQ8 = remapYQ8;
-    sLutWidth = w;
-    sLutHeight = h;
+    @Override
+    protected void compute() {
+      if (endBand - firstBand > grain) {
+        int mid = (firstBand + endBand) >>> 1;
+        invokeAll(new BandTask(src, dst, map, color, firstBand, mid, grain),
+            new BandTask(src, dst, map, color, mid, endBand, grain));
+        return;
+      }
 
-    Log.d(TAG, "LUT built in " + (System.currentTimeMillis() - t0) + "ms");
-  }
+      int w = src.getWidth();
+      int h = src.getHeight();
+      // Reused across this task's bands
+      int[] in = null;
+      int[] out = null;
+      for (int band = firstBand; band < endBand; band++) {
+        int y0 = band * BAND_ROWS;
+        int y1 = Math.min(h, y0 + BAND_ROWS);
+        int rows = y1 - y0;
+        out = ensureCapacity(out, w * rows);
+
+        if (map != null) {
+          int[] sourceRows = map.sourceRows(y0, y1);
+          int srcRows = sourceRows[1] - sourceRows[0] + 1;
+          in = ensureCapacity(in, w * srcRows);
+          src.getPixels(in, 0, w, 0, sourceRows[0], w, srcRows);
+          ImageKernels.lensCorrectRows(map, in, sourceRows[0], srcRows, out, y0, y1, color);
+        } else {
+          src.getPixels(out, 0, w, 0, y0, w, rows);
+          ImageKernels.colorRows(out, 0, w * rows);
+        }
 
-  /**
-   * Apply tone mapping + vibrance + color correction in a single pass,
-   * all in linear light space to match iOS CIFilter behavior.
-   *
-   * Pipeline per pixel:
-   *   1. sRGB gamma decode (byte → linear float via LUT)
-   *   2. Tone curve (piecewise-linear S-curve in linear space)
-   *   3. Vibrance (luminance-based selective saturation boost)
-   *   4. Color correction matrix (warmth/white balance)
-   *   5. sRGB gamma encode (linear float → byte via LUT)
-   */
-  private static Bitmap applyColorPipeline(Bitmap src) {
-    int w = src.getWidth(), h = src.getHeight();
-    int[] pixels = new int[w * h];
-    src.getPixels(pixels, 0, w, 0, 0, w, h);
-
-    for (int i = 0; i < pixels.length; i++) {
-      // 1. Linearize sRGB → linear
-      float lr = LINEARIZE_LUT[(pixels[i] >> 16) & 0xFF];
-      float lg = LINEARIZE_LUT[(pixels[i] >> 8) & 0xFF];
-      float lb = LINEARIZE_LUT[pixels[i] & 0xFF];
-
-      // 2a. Tone curve in linear space
-      lr = toneCurveLookup(lr);
-      lg = toneCurveLookup(lg);
-      lb = toneCurveLookup(lb);
-
-      // 2b. Vibrance — luminance-based, stays in linear space (no HSV round-trip)
-      // Matches CIVibrance behavior: selectively boosts desaturated colors
-      float lum = 0.2126f * lr + 0.7152f * lg + 0.0722f * lb;
-      float maxC = Math.max(lr, Math.max(lg, lb));
-      float minC = Math.min(lr, Math.min(lg, lb));
-      float sat = (maxC > 0.0001f) ? (maxC - minC) / maxC : 0f;
-      float amount = VIBRANCE_AMOUNT * (1.0f - sat); // boost desaturated more
-      lr = lr + (lr - lum) * amount;
-      lg = lg + (lg - lum) * amount;
-      lb = lb + (lb - lum) * amount;
-
-      // 2c. Color correction matrix in linear space
-      float cr = CM_RR * lr + CM_RG * lg + CM_RB * lb + CM_R_BIAS;
-      float cg = CM_GR * lr + CM_GG * lg + CM_GB * lb + CM_G_BIAS;
-      float cb = CM_BR * lr + CM_BG * lg + CM_BB * lb + CM_B_BIAS;
-
-      // Clamp to [0, 1]
-      cr = Math.max(0f, Math.min(1f, cr));
-      cg = Math.max(0f, Math.min(1f, cg));
-      cb = Math.max(0f, Math.min(1f, cb));
-
-      // 5. Encode linear → sRGB
-      int outR = toSrgbByte(cr);
-      int outG = toSrgbByte(cg);
-      int outB = toSrgbByte(cb);
-
-      pixels[i] = 0xFF000000 | (outR << 16) | (outG << 8) | outB;
+        // Bands never overlap; the lock only serializes the bitmap bookkeeping
+        synchronized (dst) {
+          dst.setPixels(out, 0, w, 0, y0, w, rows);
+        }
+      }
     }
 
-    Bitmap dst = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-    dst.setPixels(pixels, 0, w, 0, 0, w, h);
-    return dst;
+    private static int[] ensureCapacity(int[] buffer, int size) {
+      return (buffer == null || buffer.length < size) ? new int[size] : buffer;
+    }
   }
 
   /**
@@ -367,73 +206,48 @@ public class ImageProcessor {
    */
   public static long mergeHdr(String underPath, String normalPath, String overPath,
                                String outputPath, int jpegQuality) {
+    return mergeHdr(underPath, normalPath, overPath, outputPath, jpegQuality, false);
+  }
+
+  /**
+   * Merge 3 exposure-bracketed images into a single HDR result using exposure fusion.
+   *
+   * The brackets are never decoded whole: the under and over exposures are first
+   * aligned to the normal one (global translation, estimated on downscaled decodes, so
+   * handheld bursts don't ghost), then all three are decoded and fused in strips of
+   * {@link #HDR_STRIP_ROWS} rows in parallel. Only the output bitmap is full size.
+   *
+   * @param multiScaleWeights Blend per-pixel exposure weights with smoothed coarse-scale
+   *                          ones (see {@link HdrKernels#mergeRowsSmoothed}); a little
+   *                          slower, cleaner in textured areas
+   * @return processing time in ms, or -1 on failure
+   */
+  public static long mergeHdr(String underPath, String normalPath, String overPath,
+                               String outputPath, int jpegQuality, boolean multiScaleWeights) {
     long startTime = System.currentTimeMillis();
+    String[] paths = {underPath, normalPath, overPath};
+    BitmapRegionDecoder[] decoders = new BitmapRegionDecoder[paths.length];
 
     try {
-      Bitmap under = BitmapFactory.decodeFile(underPath);
-      Bitmap normal = BitmapFactory.decodeFile(normalPath);
-      Bitmap over = BitmapFactory.decodeFile(overPath);
-
-      if (under == null || normal == null || over == null) {
-        Log.e(TAG, "Failed to decode one or more HDR bracket images");
-        return -1;
-      }
-
-      int w = normal.getWidth();
-      int h = normal.getHeight();
-
-      // Ensure all images are the same size
-      if (under.getWidth() != w || under.getHeight() != h
-          || over.getWidth() != w || over.getHeight() != h) {
-        Log.w(TAG, "HDR bracket images have different sizes, resizing");
-        under = Bitmap.createScaledBitmap(under, w, h, true);
-        over = Bitmap.createScaledBitmap(over, w, h, true);
-      }
-
-      int[] underPixels = new int[w * h];
-      int[] normalPixels = new int[w * h];
-      int[] overPixels = new int[w * h];
-      under.getPixels(underPixels, 0, w, 0, 0, w, h);
-      normal.getPixels(normalPixels, 0, w, 0, 0, w, h);
-      over.getPixels(overPixels, 0, w, 0, 0, w, h);
-
-      int[] resultPixels = new int[w * h];
-
-      // Simple exposure fusion: weight each pixel by how well-exposed it is
-      // Well-exposed = closer to mid-gray (128). Clip recovery from under/over.
-      for (int i = 0; i < w * h; i++) {
-        int uR = (underPixels[i] >> 16) & 0xFF;
-        int uG = (underPixels[i] >> 8) & 0xFF;
-        int uB = underPixels[i] & 0xFF;
-        float uLum = (uR + uG + uB) / 3.0f / 255.0f;
-        float uWeight = 4.0f * uLum * (1.0f - uLum) + 0.01f; // Gaussian-ish around 0.5
-
-        int nR = (normalPixels[i] >> 16) & 0xFF;
-        int nG = (normalPixels[i] >> 8) & 0xFF;
-        int nB = normalPixels[i] & 0xFF;
-        float nLum = (nR + nG + nB) / 3.0f / 255.0f;
-        float nWeight = 4.0f * nLum * (1.0f - nLum) + 0.01f;
-
-        int oR = (overPixels[i] >> 16) & 0xFF;
-        int oG = (overPixels[i] >> 8) & 0xFF;
-        int oB = overPixels[i] & 0xFF;
-        float oLum = (oR + oG + oB) / 3.0f / 255.0f;
-        float oWeight = 4.0f * oLum * (1.0f - oLum) + 0.01f;
-
-        float total = uWeight + nWeight + oWeight;
-        int rOut = Math.min(255, Math.round((uR * uWeight + nR * nWeight + oR * oWeight) / total));
-        int gOut = Math.min(255, Math.round((uG * uWeight + nG * nWeight + oG * oWeight) / total));
-        int bOut = Math.min(255, Math.round((uB * uWeight + nB * nWeight + oB * oWeight) / total));
-
-        resultPixels[i] = 0xFF000000 | (rOut << 16) | (gOut << 8) | bOut;
+      for (int i = 0; i < paths.length; i++) {
+        decoders[i] = BitmapRegionDecoder.newInstance(paths[i], false);
+        if (decoders[i] == null) {
+          Log.e(TAG, "Failed to decode one or more HDR bracket images");
+          return -1;
+        }
       }
 
-      under.recycle();
-      normal.recycle();
-      over.recycle();
+      int w = decoders[HDR_REFERENCE].getWidth();
+      int h = decoders[HDR_REFERENCE].getHeight();
+      int[][] shifts = estimateBracketShifts(paths, decoders, w, h);
+      Log.d(TAG, "HDR merge " + w + "x" + h + " shifts under=(" + shifts[0][0] + "," + shifts[0][1]
+              + ") over=(" + shifts[2][0] + "," + shifts[2][1] + ") multiScale=" + multiScaleWeights);
 
       Bitmap result = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-      result.setPixels(resultPixels, 0, w, 0, 0, w, h);
+      int strips = (h + HDR_STRIP_ROWS - 1) / HDR_STRIP_ROWS;
+      ForkJoinPool pool = ForkJoinPool.commonPool();
+      int stripsPerTask = Math.max(1, strips / (pool.getParallelism() * 4));
+      pool.invoke(new HdrStripTask(decoders, shifts, result, multiScaleWeights, 0, strips, stripsPerTask));
 
       try (FileOutputStream fos = new FileOutputStream(new File(outputPath))) {
         result.compress(Bitmap.CompressFormat.JPEG, jpegQuality, fos);
@@ -447,6 +261,174 @@ public class ImageProcessor {
     } catch (Exception e) {
       Log.e(TAG, "HDR merge failed", e);
       return -1;
+    } finally {
+      for (BitmapRegionDecoder decoder : decoders) {
+        if (decoder != null) {
+          decoder.recycle();
+        }
+      }
+    }
+  }
+
+  /**
+   * Translation of each bracket relative to the reference, {dx, dy} in full-resolution
+   * pixels, estimated on decodes downscaled to at most {@link #HDR_ALIGN_MAX_SIDE}.
+   * Brackets of a different size than the reference (scaled instead) and implausibly
+   * large shifts get no translation.
+   */
+  private static int[][] estimateBracketShifts(String[] paths, BitmapRegionDecoder[] decoders,
+                                               int w, int h) {
+    int[][] shifts = new int[paths.length][2];
+    int sampleSize = 1;
+    while (Math.max(w, h) / sampleSize > HDR_ALIGN_MAX_SIDE) {
+      sampleSize *= 2;
+    }
+    BitmapFactory.Options opts = new BitmapFactory.Options();
+    opts.inSampleSize = sampleSize;
+
+    Bitmap reference = BitmapFactory.decodeFile(paths[HDR_REFERENCE], opts);
+    if (reference == null) {
+      return shifts;
+    }
+    int sw = reference.getWidth();
+    int sh = reference.getHeight();
+    byte[] referenceGray = grayPixels(reference);
+    reference.recycle();
+
+    for (int i = 0; i < paths.length; i++) {
+      if (i == HDR_REFERENCE || decoders[i].getWidth() != w || decoders[i].getHeight() != h) {
+        continue;
+      }
+      Bitmap bracket = BitmapFactory.decodeFile(paths[i], opts);
+      if (bracket == null) {
+        continue;
+      }
+      if (bracket.getWidth() == sw && bracket.getHeight() == sh) {
+        int[] shift = HdrKernels.alignTranslation(referenceGray, grayPixels(bracket), sw, sh, HDR_ALIGN_LEVELS);
+        if (Math.abs(shift[0]) * 16 < sw && Math.abs(shift[1]) * 16 < sh) {
+          shifts[i][0] = shift[0] * sampleSize;
+          shifts[i][1] = shift[1] * sampleSize;
+        }
+      }
+      bracket.recycle();
+    }
+    return shifts;
+  }
+
+  private static byte[] grayPixels(Bitmap bitmap) {
+    int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+    bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    return HdrKernels.toGray(pixels);
+  }
+
+  /** Fuses strips [firstStrip, endStrip), splitting until a task has at most grain strips. */
+  private static final class HdrStripTask extends RecursiveAction {
+    private final BitmapRegionDecoder[] decoders;
+    private final int[][] shifts;
+    private final Bitmap dst;
+    private final boolean multiScale;
+    private final int firstStrip;
+    private final int endStrip;
+    private final int grain;
+
+    HdrStripTask(BitmapRegionDecoder[] decoders, int[][] shifts, Bitmap dst, boolean multiScale,
+                 int firstStrip, int endStrip, int grain) {
+      this.decoders = decoders;
+      this.shifts = shifts;
+      this.dst = dst;
+      this.multiScale = multiScale;
+      this.firstStrip = firstStrip;
+      this.endStrip = endStrip;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if (endStrip - firstStrip > grain) {
+        int mid = (firstStrip + endStrip) >>> 1;
+        invokeAll(new HdrStripTask(decoders, shifts, dst, multiScale, firstStrip, mid, grain),
+            new HdrStripTask(decoders, shifts, dst, multiScale, mid, endStrip, grain));
+        return;
+      }
+
+      int w = dst.getWidth();
+      int h = dst.getHeight();
+      int halo = multiScale ? HdrKernels.SMOOTH_HALO_ROWS : 0;
+      HdrKernels.BracketRows[] brackets = new HdrKernels.BracketRows[decoders.length];
+      for (int i = 0; i < brackets.length; i++) {
+        brackets[i] = new HdrKernels.BracketRows();
+        brackets[i].dx = shifts[i][0];
+        brackets[i].dy = shifts[i][1];
+      }
+      int[] out = null;
+
+      for (int strip = firstStrip; strip < endStrip; strip++) {
+        int y0 = strip * HDR_STRIP_ROWS;
+        int y1 = Math.min(h, y0 + HDR_STRIP_ROWS);
+        for (int i = 0; i < brackets.length; i++) {
+          decodeBracketRows(decoders[i], w, h, y0 - halo + brackets[i].dy, y1 + halo + brackets[i].dy,
+              brackets[i]);
+        }
+
+        out = (out == null || out.length < w * (y1 - y0)) ? new int[w * (y1 - y0)] : out;
+        if (multiScale) {
+          HdrKernels.mergeRowsSmoothed(brackets, w, h, y0, y1, out);
+        } else {
+          HdrKernels.mergeRows(brackets, w, y0, y1, out);
+        }
+
+        // Strips never overlap; the lock only serializes the bitmap bookkeeping
+        synchronized (dst) {
+          dst.setPixels(out, 0, w, 0, y0, w, y1 - y0);
+        }
+      }
+    }
+
+    /**
+     * Decode a bracket's rows [first, end) (clamped to the frame) into out. A bracket of
+     * a different size than the reference is decoded from the proportional rows and
+     * scaled to the reference width.
+     */
+    private static void decodeBracketRows(BitmapRegionDecoder decoder, int w, int h,
+                                          int first, int end, HdrKernels.BracketRows out) {
+      first = Math.max(0, first);
+      end = Math.min(h, end);
+      out.firstRow = first;
+      out.width = w;
+      out.rows = 0;
+      if (first >= end) {
+        return;
+      }
+
+      int bw = decoder.getWidth();
+      int bh = decoder.getHeight();
+      Rect rect;
+      if (bw == w && bh == h) {
+        rect = new Rect(0, first, w, end);
+      } else {
+        int top = (int) ((long) first * bh / h);
+        int bottom = Math.max(top + 1, (int) ((long) end * bh / h));
+        rect = new Rect(0, top, bw, Math.min(bh, bottom));
+      }
+
+      BitmapFactory.Options opts = new BitmapFactory.Options();
+      opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
+      Bitmap strip = decoder.decodeRegion(rect, opts);
+      if (strip == null) {
+        return;
+      }
+      int rows = end - first;
+      if (strip.getWidth() != w || strip.getHeight() != rows) {
+        Bitmap scaled = Bitmap.createScaledBitmap(strip, w, rows, true);
+        strip.recycle();
+        strip = scaled;
+      }
+      if (out.pixels == null || out.pixels.length < w * rows) {
+        out.pixels = new int[w * rows];
+      }
+      strip.getPixels(out.pixels, 0, w, 0, 0, w, rows);
+      strip.recycle();
+      out.rows = rows;
     }
   }
 }
@@ -0,0 +1,214 @@
+package com.mentra.crust.utils;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class HdrKernelsTest {
+
+  // Same strip height and alignment depth as ImageProcessor
+  private static final int STRIP_ROWS = 128;
+  private static final int ALIGN_LEVELS = 5;
+
+  private static final int[][] SIZES = {{816, 612}, {479, 361}, {1512, 2016}};
+
+  @Test
+  public void mergeRows_stripsMatchFullFrameMerge() {
+    for (int[] size : SIZES) {
+      int w = size[0];
+      int h = size[1];
+      int[][] frames = brackets(w, h);
+      assertArrayEquals(w + "x" + h, referenceMerge(frames[0], frames[1], frames[2]),
+          strips(frames, w, h, new int[3][2], false));
+    }
+  }
+
+  @Test
+  public void mergeRowsSmoothed_stripsMatchOneFullFrameCall() {
+    for (int[] size : SIZES) {
+      int w = size[0];
+      int h = size[1];
+      int[][] frames = brackets(w, h);
+      int[][] shifts = {{3, -2}, {0, 0}, {-1, 4}};
+      HdrKernels.BracketRows[] whole = new HdrKernels.BracketRows[frames.length];
+      for (int i = 0; i < frames.length; i++) {
+        whole[i] = rows(frames[i], w, h, 0, h, shifts[i]);
+      }
+      int[] expected = new int[w * h];
+      HdrKernels.mergeRowsSmoothed(whole, w, h, 0, h, expected);
+      assertArrayEquals(w + "x" + h, expected, strips(frames, w, h, shifts, true));
+    }
+  }
+
+  @Test
+  public void alignTranslation_recoversKnownShift() {
+    int w = 816;
+    int h = 612;
+    int[] reference = blocks(w, h, 13);
+    int[][] shifts = {{5, -3}, {-12, 7}, {0, 0}, {20, 18}};
+    for (int[] shift : shifts) {
+      // img(x + dx, y + dy) = ref(x, y), darkened like a short exposure
+      int[] shifted = new int[w * h];
+      for (int y = 0; y < h; y++) {
+        for (int x = 0; x < w; x++) {
+          int sx = Math.max(0, Math.min(w - 1, x - shift[0]));
+          int sy = Math.max(0, Math.min(h - 1, y - shift[1]));
+          shifted[y * w + x] = scale(reference[sy * w + sx], 0.5f);
+        }
+      }
+      int[] found = HdrKernels.alignTranslation(HdrKernels.toGray(reference), HdrKernels.toGray(shifted),
+          w, h, ALIGN_LEVELS);
+      assertArrayEquals(shift[0] + "," + shift[1], shift, found);
+    }
+  }
+
+  /**
+   * Merge benchmark at 2016x1512: the previous full-frame loop over three decoded
+   * brackets versus the strip kernels on one thread. Transient memory is what each path
+   * holds besides the output frame.
+   * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+   */
+  @Test
+  public void benchmark_merge() {
+    assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+    int w = 2016;
+    int h = 1512;
+    int[][] frames = brackets(w, h);
+    int[][] noShift = new int[3][2];
+    int runs = 5;
+
+    long fullBest = Long.MAX_VALUE;
+    long stripBest = Long.MAX_VALUE;
+    long smoothBest = Long.MAX_VALUE;
+    for (int run = 0; run < runs; run++) {
+      long start = System.nanoTime();
+      referenceMerge(frames[0], frames[1], frames[2]);
+      fullBest = Math.min(fullBest, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      strips(frames, w, h, noShift, false);
+      stripBest = Math.min(stripBest, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      strips(frames, w, h, noShift, true);
+      smoothBest = Math.min(smoothBest, System.nanoTime() - start);
+    }
+
+    // Three decoded brackets, versus three brackets' strip plus halo and one output strip
+    long fullBytes = 4L * w * h * 3;
+    long stripBytes = 4L * w * (3 * (STRIP_ROWS + 2 * HdrKernels.SMOOTH_HALO_ROWS) + STRIP_ROWS);
+    System.out.println(String.format(Locale.US,
+        "hdr merge %dx%d: full-frame=%.1fms (%.1f MB transient) strips=%.1fms strips-smoothed=%.1fms (%.2f MB per strip)",
+        w, h, fullBest / 1e6, fullBytes / 1e6, stripBest / 1e6, smoothBest / 1e6, stripBytes / 1e6));
+  }
+
+  /** The strip path as ImageProcessor runs it: each bracket holds only the strip's rows plus halo. */
+  private static int[] strips(int[][] frames, int w, int h, int[][] shifts, boolean smoothed) {
+    int halo = smoothed ? HdrKernels.SMOOTH_HALO_ROWS : 0;
+    int[] dst = new int[w * h];
+    int[] out = new int[w * STRIP_ROWS];
+    HdrKernels.BracketRows[] brackets = new HdrKernels.BracketRows[frames.length];
+    for (int y0 = 0; y0 < h; y0 += STRIP_ROWS) {
+      int y1 = Math.min(h, y0 + STRIP_ROWS);
+      for (int i = 0; i < frames.length; i++) {
+        brackets[i] = rows(frames[i], w, h, y0 - halo + shifts[i][1], y1 + halo + shifts[i][1], shifts[i]);
+      }
+      if (smoothed) {
+        HdrKernels.mergeRowsSmoothed(brackets, w, h, y0, y1, out);
+      } else {
+        HdrKernels.mergeRows(brackets, w, y0, y1, out);
+      }
+      System.arraycopy(out, 0, dst, y0 * w, (y1 - y0) * w);
+    }
+    return dst;
+  }
+
+  /** Bracket rows [first, end) clamped to the frame, like ImageProcessor's region decode. */
+  private static HdrKernels.BracketRows rows(int[] frame, int w, int h, int first, int end, int[] shift) {
+    first = Math.max(0, first);
+    end = Math.min(h, end);
+    HdrKernels.BracketRows rows = new HdrKernels.BracketRows();
+    rows.width = w;
+    rows.firstRow = first;
+    rows.rows = Math.max(0, end - first);
+    rows.pixels = new int[w * rows.rows];
+    System.arraycopy(frame, first * w, rows.pixels, 0, rows.pixels.length);
+    rows.dx = shift[0];
+    rows.dy = shift[1];
+    return rows;
+  }
+
+  /** The previous merge: one pass over three full frames, under/normal/over. */
+  private static int[] referenceMerge(int[] underPixels, int[] normalPixels, int[] overPixels) {
+    int[] resultPixels = new int[normalPixels.length];
+    for (int i = 0; i < resultPixels.length; i++) {
+      int uR = (underPixels[i] >> 16) & 0xFF;
+      int uG = (underPixels[i] >> 8) & 0xFF;
+      int uB = underPixels[i] & 0xFF;
+      float uLum = (uR + uG + uB) / 3.0f / 255.0f;
+      float uWeight = 4.0f * uLum * (1.0f - uLum) + 0.01f;
+
+      int nR = (normalPixels[i] >> 16) & 0xFF;
+      int nG = (normalPixels[i] >> 8) & 0xFF;
+      int nB = normalPixels[i] & 0xFF;
+      float nLum = (nR + nG + nB) / 3.0f / 255.0f;
+      float nWeight = 4.0f * nLum * (1.0f - nLum) + 0.01f;
+
+      int oR = (overPixels[i] >> 16) & 0xFF;
+      int oG = (overPixels[i] >> 8) & 0xFF;
+      int oB = overPixels[i] & 0xFF;
+      float oLum = (oR + oG + oB) / 3.0f / 255.0f;
+      float oWeight = 4.0f * oLum * (1.0f - oLum) + 0.01f;
+
+      float total = uWeight + nWeight + oWeight;
+      int rOut = Math.min(255, Math.round((uR * uWeight + nR * nWeight + oR * oWeight) / total));
+      int gOut = Math.min(255, Math.round((uG * uWeight + nG * nWeight + oG * oWeight) / total));
+      int bOut = Math.min(255, Math.round((uB * uWeight + nB * nWeight + oB * oWeight) / total));
+
+      resultPixels[i] = 0xFF000000 | (rOut << 16) | (gOut << 8) | bOut;
+    }
+    return resultPixels;
+  }
+
+  /** Under, normal and over exposures of one scene. */
+  private static int[][] brackets(int w, int h) {
+    int[] normal = ImageKernelsTest.testImage(w, h, 17);
+    int[] under = new int[normal.length];
+    int[] over = new int[normal.length];
+    for (int i = 0; i < normal.length; i++) {
+      under[i] = scale(normal[i], 0.4f);
+      over[i] = scale(normal[i], 2.5f);
+    }
+    return new int[][]{under, normal, over};
+  }
+
+  /** Random gray blocks: texture at every pyramid level, unlike a smooth gradient. */
+  private static int[] blocks(int w, int h, long seed) {
+    Random random = new Random(seed);
+    int block = 12;
+    int cols = (w + block - 1) / block;
+    int[] levels = new int[cols * ((h + block - 1) / block)];
+    for (int i = 0; i < levels.length; i++) {
+      levels[i] = 32 + random.nextInt(192);
+    }
+    int[] pixels = new int[w * h];
+    for (int y = 0; y < h; y++) {
+      for (int x = 0; x < w; x++) {
+        int v = levels[(y / block) * cols + x / block];
+        pixels[y * w + x] = 0xFF000000 | (v << 16) | (v << 8) | v;
+      }
+    }
+    return pixels;
+  }
+
+  private static int scale(int argb, float gain) {
+    int r = Math.min(255, (int) (((argb >> 16) & 0xFF) * gain));
+    int g = Math.min(255, (int) (((argb >> 8) & 0xFF) * gain));
+    int b = Math.min(255, (int) ((argb & 0xFF) * gain));
+    return 0xFF000000 | (r << 16) | (g << 8) | b;
+  }
+}
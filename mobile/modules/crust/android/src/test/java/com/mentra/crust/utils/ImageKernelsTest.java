@@ -0,0 +1,218 @@
+package com.mentra.crust.utils;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ImageKernelsTest {
+
+  // Same band height as ImageProcessor
+  private static final int BAND_ROWS = 64;
+
+  private static final int[][] SIZES = {{816, 612}, {640, 480}, {479, 361}, {1512, 2016}};
+
+  @Test
+  public void sourceRows_coverEverySampledRow() {
+    for (int[] size : SIZES) {
+      int w = size[0];
+      int h = size[1];
+      ImageKernels.LensMap map = ImageKernels.LensMap.forSize(w, h);
+      for (int y0 = 0; y0 < h; y0 += BAND_ROWS) {
+        int y1 = Math.min(h, y0 + BAND_ROWS);
+        int[] rows = map.sourceRows(y0, y1);
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int y = y0; y < y1; y++) {
+          for (int x = 0; x < w; x++) {
+            int sy0 = map.sourceYQ8(x, y) >> 8;
+            if (sy0 >= 0 && sy0 < h - 1) {
+              min = Math.min(min, sy0);
+              max = Math.max(max, sy0 + 1);
+            }
+          }
+        }
+        if (min <= max) {
+          assertTrue(w + "x" + h + " band " + y0 + " starts at " + rows[0] + " > " + min, rows[0] <= min);
+          assertTrue(w + "x" + h + " band " + y0 + " ends at " + rows[1] + " < " + max, rows[1] >= max);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void bandedLensCorrection_matchesFullFrameLut() {
+    for (int[] size : SIZES) {
+      int w = size[0];
+      int h = size[1];
+      int[] src = testImage(w, h, 7);
+      assertArrayEquals(w + "x" + h, referenceLensCorrection(src, w, h), banded(src, w, h, false));
+    }
+  }
+
+  @Test
+  public void fusedLensAndColor_matchesTwoPass() {
+    for (int[] size : SIZES) {
+      int w = size[0];
+      int h = size[1];
+      int[] src = testImage(w, h, 11);
+      int[] twoPass = referenceLensCorrection(src, w, h);
+      referenceColorPass(twoPass);
+      assertArrayEquals(w + "x" + h, twoPass, banded(src, w, h, true));
+    }
+  }
+
+  @Test
+  public void colorRows_matchesFullFramePass() {
+    int w = 640;
+    int h = 480;
+    int[] frame = testImage(w, h, 3);
+    int[] expected = frame.clone();
+    referenceColorPass(expected);
+    for (int y0 = 0; y0 < h; y0 += BAND_ROWS) {
+      int rows = Math.min(BAND_ROWS, h - y0);
+      ImageKernels.colorRows(frame, y0 * w, rows * w);
+    }
+    assertArrayEquals(expected, frame);
+  }
+
+  /**
+   * Lens + color benchmark at 2016x1512: the previous path (full-frame remap LUT, then a
+   * full-frame color pass) versus the banded fused kernel on one thread. Transient memory
+   * is what each path allocates besides the source frame.
+   * Opt-in: {@code ./gradlew testDebugUnitTest -Pbenchmarks}.
+   */
+  @Test
+  public void benchmark_lensAndColor() {
+    assumeTrue("benchmark; run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+    int w = 2016;
+    int h = 1512;
+    int[] src = testImage(w, h, 5);
+    int runs = 5;
+
+    long twoPassBest = Long.MAX_VALUE;
+    long fusedBest = Long.MAX_VALUE;
+    for (int run = 0; run < runs; run++) {
+      long start = System.nanoTime();
+      int[] out = referenceLensCorrection(src, w, h);
+      referenceColorPass(out);
+      twoPassBest = Math.min(twoPassBest, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      banded(src, w, h, true);
+      fusedBest = Math.min(fusedBest, System.nanoTime() - start);
+    }
+
+    ImageKernels.LensMap map = ImageKernels.LensMap.forSize(w, h);
+    int maxSourceRows = 0;
+    for (int y0 = 0; y0 < h; y0 += BAND_ROWS) {
+      int[] rows = map.sourceRows(y0, Math.min(h, y0 + BAND_ROWS));
+      maxSourceRows = Math.max(maxSourceRows, rows[1] - rows[0] + 1);
+    }
+    // LUT (2 ints) + output frame + color copy, versus one band of source and output rows
+    long twoPassBytes = 4L * w * h * 4;
+    long fusedBytes = 4L * w * (maxSourceRows + BAND_ROWS);
+    System.out.println(String.format(Locale.US,
+        "lens+color %dx%d: two-pass=%.1fms (%.1f MB transient) banded-fused=%.1fms (%.2f MB per band, %d source rows max)",
+        w, h, twoPassBest / 1e6, twoPassBytes / 1e6, fusedBest / 1e6, fusedBytes / 1e6, maxSourceRows));
+  }
+
+  /** The banded path as ImageProcessor runs it, one band after another. */
+  private static int[] banded(int[] src, int w, int h, boolean color) {
+    ImageKernels.LensMap map = ImageKernels.LensMap.forSize(w, h);
+    int[] dst = new int[w * h];
+    int[] out = new int[w * BAND_ROWS];
+    for (int y0 = 0; y0 < h; y0 += BAND_ROWS) {
+      int y1 = Math.min(h, y0 + BAND_ROWS);
+      int[] rows = map.sourceRows(y0, y1);
+      int srcRows = rows[1] - rows[0] + 1;
+      int[] in = new int[w * srcRows];
+      System.arraycopy(src, rows[0] * w, in, 0, in.length);
+      ImageKernels.lensCorrectRows(map, in, rows[0], srcRows, out, y0, y1, color);
+      System.arraycopy(out, 0, dst, y0 * w, (y1 - y0) * w);
+    }
+    return dst;
+  }
+
+  /** The previous lens correction: full-frame Q8 remap LUT, then a bilinear remap. */
+  private static int[] referenceLensCorrection(int[] srcPixels, int w, int h) {
+    int[] remapXQ8 = new int[w * h];
+    int[] remapYQ8 = new int[w * h];
+    double cx = w / 2.0;
+    double cy = h / 2.0;
+    double norm = Math.sqrt(cx * cx + cy * cy);
+    for (int y = 0; y < h; y++) {
+      for (int x = 0; x < w; x++) {
+        double xn = (x - cx) / norm;
+        double yn = (y - cy) / norm;
+        double r2 = xn * xn + yn * yn;
+        double r4 = r2 * r2;
+        double radial = 1.0 + ImageKernels.K1 * r2 + ImageKernels.K2 * r4;
+        double xd = xn * radial + 2 * ImageKernels.P1 * xn * yn + ImageKernels.P2 * (r2 + 2 * xn * xn);
+        double yd = yn * radial + ImageKernels.P1 * (r2 + 2 * yn * yn) + 2 * ImageKernels.P2 * xn * yn;
+        int idx = y * w + x;
+        remapXQ8[idx] = (int) ((xd * norm + cx) * 256);
+        remapYQ8[idx] = (int) ((yd * norm + cy) * 256);
+      }
+    }
+
+    int[] dstPixels = new int[w * h];
+    int maxX = w - 1;
+    int maxY = h - 1;
+    for (int i = 0; i < w * h; i++) {
+      int sxQ8 = remapXQ8[i];
+      int syQ8 = remapYQ8[i];
+      int x0 = sxQ8 >> 8;
+      int y0 = syQ8 >> 8;
+      if (x0 < 0 || x0 >= maxX || y0 < 0 || y0 >= maxY) {
+        dstPixels[i] = 0xFF000000;
+        continue;
+      }
+      int fx = sxQ8 & 0xFF;
+      int fy = syQ8 & 0xFF;
+      int ifx = 256 - fx;
+      int ify = 256 - fy;
+      int idx00 = y0 * w + x0;
+      int p00 = srcPixels[idx00];
+      int p10 = srcPixels[idx00 + 1];
+      int p01 = srcPixels[idx00 + w];
+      int p11 = srcPixels[idx00 + w + 1];
+      int r = (ifx * ify * ((p00 >> 16) & 0xFF) + fx * ify * ((p10 >> 16) & 0xFF)
+             + ifx * fy * ((p01 >> 16) & 0xFF) + fx * fy * ((p11 >> 16) & 0xFF)) >> 16;
+      int g = (ifx * ify * ((p00 >> 8) & 0xFF) + fx * ify * ((p10 >> 8) & 0xFF)
+             + ifx * fy * ((p01 >> 8) & 0xFF) + fx * fy * ((p11 >> 8) & 0xFF)) >> 16;
+      int b = (ifx * ify * (p00 & 0xFF) + fx * ify * (p10 & 0xFF)
+             + ifx * fy * (p01 & 0xFF) + fx * fy * (p11 & 0xFF)) >> 16;
+      dstPixels[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+    return dstPixels;
+  }
+
+  /** The previous color pass: a full-frame copy, one pixel at a time. */
+  private static void referenceColorPass(int[] frame) {
+    int[] pixels = frame.clone();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = ImageKernels.colorPixel(pixels[i]);
+    }
+    System.arraycopy(pixels, 0, frame, 0, frame.length);
+  }
+
+  /** Gradients plus noise, so the bilinear blend sees every fractional offset. */
+  static int[] testImage(int w, int h, long seed) {
+    Random random = new Random(seed);
+    int[] pixels = new int[w * h];
+    for (int y = 0; y < h; y++) {
+      for (int x = 0; x < w; x++) {
+        int r = (x * 255 / w + random.nextInt(32)) & 0xFF;
+        int g = (y * 255 / h + random.nextInt(32)) & 0xFF;
+        int b = ((x + y) * 255 / (w + h) + random.nextInt(32)) & 0xFF;
+        pixels[y * w + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+    return pixels;
+  }
+}
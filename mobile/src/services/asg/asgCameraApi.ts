@@ -10,6 +10,7 @@ import {BgTimer} from "@mentra/island"
 
 import {localStorageService} from "./localStorageService"
 import {validateDownloadedMediaFile} from "./galleryMediaValidation"
+import {SyncPage} from "./gallerySyncCursor"
 
 export class AsgCameraApiClient {
   private baseUrl: string
@@ -556,24 +557,22 @@ export class AsgCameraApiClient {
   }
 
   /**
-   * Sync with server to get changed files since last sync
+   * Sync with server to get changed files since last sync.
+   * With a cursor (empty for the first page) glasses that keep a media change log answer one
+   * page of changes and deletions after it, with next_cursor/has_more for paging and
+   * full_resync when the cursor was no longer valid; last_sync_time then only filters a walk
+   * that starts from an empty cursor. Older glasses ignore the cursor and answer from
+   * last_sync_time alone.
    */
   async syncWithServer(
     clientId: string,
     lastSyncTime?: number,
     includeThumbnails: boolean = false,
+    cursor?: string,
+    limit?: number,
   ): Promise<{
     status: string
-    data: {
-      api_version?: number
-      client_id: string
-      captures?: CaptureGroup[]
-      changed_files: PhotoInfo[]
-      deleted_files: string[]
-      server_time: number
-      total_changed: number
-      total_size: number
-    }
+    data: SyncPage
   }> {
     const params = new URLSearchParams({
       client_id: clientId,
@@ -583,6 +582,12 @@ export class AsgCameraApiClient {
     if (lastSyncTime) {
       params.append("last_sync_time", lastSyncTime.toString())
     }
+    if (cursor !== undefined) {
+      params.append("cursor", cursor)
+      if (limit) {
+        params.append("limit", limit.toString())
+      }
+    }
 
     const response = await this.makeRequest(`/api/sync?${params.toString()}`, {
       method: "GET",
@@ -590,16 +595,7 @@ export class AsgCameraApiClient {
 
     return response as {
       status: string
-      data: {
-        api_version?: number
-        client_id: string
-        captures?: CaptureGroup[]
-        changed_files: PhotoInfo[]
-        deleted_files: string[]
-        server_time: number
-        total_changed: number
-        total_size: number
-      }
+      data: SyncPage
     }
   }
 
@@ -0,0 +1,70 @@
+import {CaptureGroup} from "@/types/asg"
+
+import {SyncPage, mergeSyncPage} from "./gallerySyncCursor"
+
+describe("gallerySyncCursor", () => {
+  const capture = (id: string, files: string[]): CaptureGroup => ({
+    capture_id: id,
+    type: "photo",
+    timestamp: 1000,
+    total_size: files.length * 10,
+    files: files.map((name) => ({name, size: 10, role: name.endsWith("base.jpg") ? "primary" : "sidecar"})),
+  })
+
+  const page = (overrides: Partial<SyncPage>): SyncPage => ({
+    api_version: 2,
+    client_id: "c1",
+    server_time: 5000,
+    captures: [],
+    changed_files: [],
+    ...overrides,
+  })
+
+  describe("mergeSyncPage", () => {
+    it("joins a capture split across pages", () => {
+      const first = mergeSyncPage(null, page({captures: [capture("IMG_1", ["IMG_1/base.jpg"])]}))
+      const merged = mergeSyncPage(first, page({server_time: 6000, captures: [capture("IMG_1", ["IMG_1/imu.json"])]}))
+
+      expect(merged.captures).toHaveLength(1)
+      expect(merged.captures![0].files.map((f) => f.name)).toEqual(["IMG_1/base.jpg", "IMG_1/imu.json"])
+      expect(merged.captures![0].total_size).toBe(20)
+      expect(merged.server_time).toBe(5000)
+    })
+
+    it("drops files an earlier page listed when a later page deletes them", () => {
+      const first = mergeSyncPage(
+        null,
+        page({
+          captures: [capture("IMG_1", ["IMG_1/base.jpg"]), capture("IMG_2", ["IMG_2/base.jpg", "IMG_2/imu.json"])],
+        }),
+      )
+      const merged = mergeSyncPage(
+        first,
+        page({
+          deleted_files: [
+            {name: "IMG_1/base.jpg", capture_id: "IMG_1", deleted_at: 5500},
+            {name: "IMG_2/imu.json", capture_id: "IMG_2", deleted_at: 5500},
+          ],
+        }),
+      )
+
+      expect(merged.captures!.map((c) => c.capture_id)).toEqual(["IMG_2"])
+      expect(merged.captures![0].files.map((f) => f.name)).toEqual(["IMG_2/base.jpg"])
+    })
+
+    it("keeps the latest listing of a file reported on two pages", () => {
+      const first = mergeSyncPage(
+        null,
+        page({changed_files: [{name: "a.jpg", url: "", download: "", size: 1, modified: 1}]}),
+      )
+      const merged = mergeSyncPage(
+        first,
+        page({changed_files: [{name: "a.jpg", url: "", download: "", size: 2, modified: 2}], next_cursor: "e:3"}),
+      )
+
+      expect(merged.changed_files).toHaveLength(1)
+      expect(merged.changed_files[0].size).toBe(2)
+      expect(merged.next_cursor).toBe("e:3")
+    })
+  })
+})
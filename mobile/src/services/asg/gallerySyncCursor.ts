@@ -0,0 +1,83 @@
+/**
+ * Paging helpers for cursor-based gallery sync.
+ * Glasses with a media change log answer /api/sync?cursor=... one page at a time; the pages
+ * are merged here into the single manifest the download paths expect.
+ */
+
+import {CaptureGroup, PhotoInfo, SyncDeletedFile} from "@/types/asg"
+
+// Upper bound on pages fetched in one sync, in case the glasses keep reporting has_more
+export const MAX_SYNC_PAGES = 100
+
+export interface SyncPage {
+  api_version?: number
+  client_id: string
+  captures?: CaptureGroup[]
+  changed_files: PhotoInfo[]
+  deleted_files?: (string | SyncDeletedFile)[]
+  server_time: number
+  total_changed?: number
+  total_size?: number
+  next_cursor?: string
+  has_more?: boolean
+  full_resync?: boolean
+}
+
+export function deletedFileName(deleted: string | SyncDeletedFile): string {
+  return typeof deleted === "string" ? deleted : deleted.name
+}
+
+/**
+ * Append a page to the manifest built so far (null for the first page).
+ * A file listed again replaces its earlier listing, a capture split across pages is joined
+ * back into one group, and deletions on this page drop anything earlier pages listed.
+ * server_time stays that of the first page, like a single snapshot taken when the sync began.
+ */
+export function mergeSyncPage(merged: SyncPage | null, page: SyncPage): SyncPage {
+  if (!merged) {
+    return {...page, captures: page.captures ? [...page.captures] : page.captures}
+  }
+
+  const deleted = new Set((page.deleted_files || []).map(deletedFileName))
+  const changedNames = new Set(page.changed_files.map((f) => f.name))
+  const changedFiles = merged.changed_files
+    .filter((f) => !deleted.has(f.name) && !changedNames.has(f.name))
+    .concat(page.changed_files)
+
+  let captures = merged.captures
+  if (merged.captures || page.captures) {
+    const byId = new Map<string, CaptureGroup>()
+    for (const capture of merged.captures || []) {
+      const files = capture.files.filter((f) => !deleted.has(f.name))
+      if (files.length > 0) {
+        byId.set(capture.capture_id, withFiles(capture, files))
+      }
+    }
+    for (const capture of page.captures || []) {
+      const earlier = byId.get(capture.capture_id)
+      if (!earlier) {
+        byId.set(capture.capture_id, capture)
+        continue
+      }
+      const pageNames = new Set(capture.files.map((f) => f.name))
+      const files = earlier.files.filter((f) => !pageNames.has(f.name)).concat(capture.files)
+      byId.set(capture.capture_id, withFiles({...earlier, ...capture}, files))
+    }
+    captures = Array.from(byId.values())
+  }
+
+  return {
+    ...page,
+    server_time: merged.server_time,
+    api_version: merged.api_version ?? page.api_version,
+    captures,
+    changed_files: changedFiles,
+    deleted_files: (merged.deleted_files || []).concat(page.deleted_files || []),
+    total_changed: changedFiles.length,
+    total_size: changedFiles.reduce((sum, f) => sum + (f.size || 0), 0),
+  }
+}
+
+function withFiles(capture: CaptureGroup, files: CaptureGroup["files"]): CaptureGroup {
+  return {...capture, files, total_size: files.reduce((sum, f) => sum + f.size, 0)}
+}
@@ -5,6 +5,7 @@ import {gallerySyncNotifications} from "@/services/asg/gallerySyncNotifications"
 import {localStorageService} from "@/services/asg/localStorageService"
 import {mediaProcessingQueue} from "@/services/asg/mediaProcessingQueue"
 import {gallerySyncService} from "./gallerySyncService"
+import {MAX_SYNC_PAGES} from "./gallerySyncCursor"
 import {useGallerySyncStore} from "@/stores/gallerySync"
 import {useGlassesStore} from "@/stores/glasses"
 import GlobalEventEmitter from "@/utils/GlobalEventEmitter"
@@ -309,9 +310,9 @@ describe("GallerySyncService", () => {
       await startFileDownload()
 
       expect(mockSyncWithServer).toHaveBeenCalledTimes(2)
-      expect(mockSyncWithServer).toHaveBeenNthCalledWith(1, "test_client", 1500, true)
-      expect(mockSyncWithServer).toHaveBeenNthCalledWith(2, "test_client", 0, true)
-      expect(executeCaptureDownloadSpy).toHaveBeenCalledWith([FAKE_CAPTURE], 2000)
+      expect(mockSyncWithServer).toHaveBeenNthCalledWith(1, "test_client", 1500, true, "")
+      expect(mockSyncWithServer).toHaveBeenNthCalledWith(2, "test_client", 0, true, "")
+      expect(executeCaptureDownloadSpy).toHaveBeenCalledWith([FAKE_CAPTURE], 2000, undefined)
       expect(consoleLogSpy).toHaveBeenCalledWith(
         expect.stringContaining("Empty sync but glasses report content — retrying with last_sync_time=0"),
       )
@@ -330,7 +331,7 @@ describe("GallerySyncService", () => {
       await startFileDownload()
 
       expect(mockSyncWithServer).toHaveBeenCalledTimes(1)
-      expect(mockSyncWithServer).toHaveBeenCalledWith("test_client", 1500, true)
+      expect(mockSyncWithServer).toHaveBeenCalledWith("test_client", 1500, true, "")
       expect(executeCaptureDownloadSpy).not.toHaveBeenCalled()
       expect(useGallerySyncStore.getState().syncState).toBe("complete")
     })
@@ -347,7 +348,7 @@ describe("GallerySyncService", () => {
       await startFileDownload()
 
       expect(mockSyncWithServer).toHaveBeenCalledTimes(1)
-      expect(mockSyncWithServer).toHaveBeenCalledWith("test_client", 0, true)
+      expect(mockSyncWithServer).toHaveBeenCalledWith("test_client", 0, true, "")
       expect(consoleWarnSpy).not.toHaveBeenCalledWith(expect.stringContaining("Desync detected"))
     })
 
@@ -384,7 +385,7 @@ describe("GallerySyncService", () => {
       await startFileDownload()
 
       expect(mockSyncWithServer).toHaveBeenCalledTimes(1)
-      expect(executeCaptureDownloadSpy).toHaveBeenCalledWith([FAKE_CAPTURE], 2000)
+      expect(executeCaptureDownloadSpy).toHaveBeenCalledWith([FAKE_CAPTURE], 2000, undefined)
       expect(consoleWarnSpy).not.toHaveBeenCalledWith(expect.stringContaining("Desync detected"))
     })
 
@@ -419,8 +420,8 @@ describe("GallerySyncService", () => {
   })
 
   describe("resolveSyncManifest (clock skew)", () => {
-    const resolveSyncManifest = (clientId: string, lastSyncTime: number) =>
-      (gallerySyncService as any).resolveSyncManifest(clientId, lastSyncTime)
+    const resolveSyncManifest = (clientId: string, lastSyncTime: number, cursor?: string) =>
+      (gallerySyncService as any).resolveSyncManifest(clientId, lastSyncTime, cursor)
 
     beforeEach(() => {
       mockSyncWithServer.mockReset()
@@ -448,8 +449,8 @@ describe("GallerySyncService", () => {
       const result = await resultPromise
 
       expect(BluetoothSdk.setSystemTime).toHaveBeenCalledTimes(1)
-      expect(mockSyncWithServer).toHaveBeenNthCalledWith(1, "c1", futureWatermark, true)
-      expect(mockSyncWithServer).toHaveBeenNthCalledWith(2, "c1", 0, true)
+      expect(mockSyncWithServer).toHaveBeenNthCalledWith(1, "c1", futureWatermark, true, "")
+      expect(mockSyncWithServer).toHaveBeenNthCalledWith(2, "c1", 0, true, "")
       expect(result).not.toBeNull()
       expect(result?.syncData.changed_files).toHaveLength(1)
     })
@@ -484,7 +485,7 @@ describe("GallerySyncService", () => {
       const result = await resolveSyncManifest("c1", now - 5000)
 
       expect(BluetoothSdk.setSystemTime).not.toHaveBeenCalled()
-      expect(mockSyncWithServer).toHaveBeenNthCalledWith(2, "c1", 0, true)
+      expect(mockSyncWithServer).toHaveBeenNthCalledWith(2, "c1", 0, true, "")
       expect(result?.syncData.changed_files).toHaveLength(1)
     })
 
@@ -501,6 +502,123 @@ describe("GallerySyncService", () => {
       expect(result).toBeNull()
     })
 
+    it("pages through the glasses change log from the stored cursor", async () => {
+      const now = Date.now()
+      mockSyncWithServer
+        .mockResolvedValueOnce({
+          data: {
+            server_time: now,
+            changed_files: [
+              {name: "a.jpg", size: 1},
+              {name: "b.jpg", size: 1},
+            ],
+            client_id: "c1",
+            next_cursor: "e:7",
+            has_more: true,
+          },
+        })
+        .mockResolvedValueOnce({
+          data: {
+            server_time: now + 10,
+            changed_files: [{name: "c.jpg", size: 1}],
+            deleted_files: [{name: "a.jpg", deleted_at: now}],
+            client_id: "c1",
+            next_cursor: "e:9",
+            has_more: false,
+          },
+        })
+
+      const result = await resolveSyncManifest("c1", now - 5000, "e:5")
+
+      expect(mockSyncWithServer).toHaveBeenNthCalledWith(1, "c1", 0, true, "e:5")
+      expect(mockSyncWithServer).toHaveBeenNthCalledWith(2, "c1", 0, true, "e:7")
+      expect(result?.syncData.changed_files.map((f: {name: string}) => f.name)).toEqual(["b.jpg", "c.jpg"])
+      expect(result?.syncData.next_cursor).toBe("e:9")
+      expect(result?.syncData.server_time).toBe(now)
+    })
+
+    it("walks from last_sync_time when the glasses reject the stored cursor", async () => {
+      const now = Date.now()
+      const watermark = now - 5000
+      mockSyncWithServer
+        .mockResolvedValueOnce({
+          data: {
+            server_time: now,
+            changed_files: [{name: "old.jpg", size: 1}],
+            client_id: "c1",
+            next_cursor: "f:1",
+            has_more: true,
+            full_resync: true,
+          },
+        })
+        .mockResolvedValueOnce({
+          data: {
+            server_time: now,
+            changed_files: [{name: "new.jpg", size: 1}],
+            client_id: "c1",
+            next_cursor: "f:4",
+            has_more: false,
+            full_resync: true,
+          },
+        })
+
+      const result = await resolveSyncManifest("c1", watermark, "e:5")
+
+      expect(mockSyncWithServer).toHaveBeenCalledTimes(2)
+      expect(mockSyncWithServer).toHaveBeenNthCalledWith(2, "c1", watermark, true, "")
+      expect(result?.syncData.changed_files.map((f: {name: string}) => f.name)).toEqual(["new.jpg"])
+      expect(result?.syncData.next_cursor).toBe("f:4")
+    })
+
+    it("returns the restarted walk when the cursor is rejected after many pages", async () => {
+      const now = Date.now()
+      const watermark = now - 5000
+      let calls = 0
+      mockSyncWithServer.mockImplementation(async () => {
+        calls++
+        if (calls < MAX_SYNC_PAGES) {
+          return {
+            data: {
+              server_time: now,
+              changed_files: [{name: `p${calls}.jpg`, size: 1}],
+              client_id: "c1",
+              next_cursor: `e:${calls}`,
+              has_more: true,
+            },
+          }
+        }
+        if (calls === MAX_SYNC_PAGES) {
+          return {
+            data: {
+              server_time: now,
+              changed_files: [{name: "old.jpg", size: 1}],
+              client_id: "c1",
+              next_cursor: "f:1",
+              has_more: true,
+              full_resync: true,
+            },
+          }
+        }
+        return {
+          data: {
+            server_time: now,
+            changed_files: [{name: "new.jpg", size: 1}],
+            client_id: "c1",
+            next_cursor: "f:2",
+            has_more: false,
+            full_resync: true,
+          },
+        }
+      })
+
+      const result = await resolveSyncManifest("c1", watermark, "e:0")
+
+      expect(mockSyncWithServer).toHaveBeenCalledTimes(MAX_SYNC_PAGES + 1)
+      expect(mockSyncWithServer).toHaveBeenLastCalledWith("c1", watermark, true, "")
+      expect(result?.syncData.changed_files.map((f: {name: string}) => f.name)).toEqual(["new.jpg"])
+      expect(result?.syncData.next_cursor).toBe("f:2")
+    })
+
     it("allows legitimate empty sync when glasses have no content", async () => {
       const now = Date.now()
       useGallerySyncStore.getState().setGlassesGalleryStatus(0, 0, 0, false)
@@ -23,6 +23,7 @@ import {translate} from "@/i18n"
 import {asgCameraApi} from "./asgCameraApi"
 import {fixGlassesClockIfSkewed} from "./glassesClockSync"
 import {detectClockSkew, isSyncManifestEmpty} from "./gallerySyncClock"
+import {MAX_SYNC_PAGES, SyncPage, mergeSyncPage} from "./gallerySyncCursor"
 import {gallerySettingsService} from "./gallerySettingsService"
 import {gallerySyncNotifications} from "./gallerySyncNotifications"
 import {localStorageService} from "./localStorageService"
@@ -50,16 +51,7 @@ const TIMING = {
   WIFI_COOLDOWN_MS: 3000, // Wait 3 seconds after user visits WiFi settings before showing alert again
 } as const
 
-type SyncManifestData = {
-  api_version?: number
-  client_id: string
-  captures?: CaptureGroup[]
-  changed_files: PhotoInfo[]
-  deleted_files?: string[]
-  server_time: number
-  total_changed?: number
-  total_size?: number
-}
+type SyncManifestData = SyncPage
 
 class GallerySyncService {
   private static instance: GallerySyncService
@@ -1171,9 +1163,41 @@ class GallerySyncService {
     }
   }
 
-  private async fetchSyncManifest(clientId: string, lastSyncTime: number): Promise<SyncManifestData> {
-    const syncResponse = await asgCameraApi.syncWithServer(clientId, lastSyncTime, true)
-    return (syncResponse.data || syncResponse) as SyncManifestData
+  /**
+   * Fetch the sync manifest. A stored cursor asks for the glasses' change log after it; an
+   * empty one walks the whole log, skipping files not modified after lastSyncTime. Pages are
+   * merged into one manifest, and a cursor the glasses no longer accept falls back to that
+   * walk. Glasses without a change log answer the first request from lastSyncTime and return
+   * no next_cursor.
+   */
+  private async fetchSyncManifest(clientId: string, lastSyncTime: number, cursor: string): Promise<SyncManifestData> {
+    let pageCursor = cursor
+    // last_sync_time filters every page of a walk from an empty cursor; a stored cursor stands alone
+    let walkFromWatermark = cursor === ""
+    let merged: SyncManifestData | null = null
+    let pages = 0
+    for (;;) {
+      const since = walkFromWatermark ? lastSyncTime : 0
+      const syncResponse = await asgCameraApi.syncWithServer(clientId, since, true, pageCursor)
+      const syncData = (syncResponse.data || syncResponse) as SyncManifestData
+      if (syncData.next_cursor === undefined) {
+        return syncData
+      }
+      // Restarts at most once, and the pages walked before it don't count against the limit
+      if (syncData.full_resync && !walkFromWatermark) {
+        console.log("[GallerySyncService]   🔄 Glasses no longer accept the sync cursor — walking from last_sync_time")
+        pageCursor = ""
+        walkFromWatermark = true
+        merged = null
+        pages = 0
+        continue
+      }
+      merged = mergeSyncPage(merged, syncData)
+      pageCursor = syncData.next_cursor
+      if (!syncData.has_more || ++pages >= MAX_SYNC_PAGES) {
+        return merged
+      }
+    }
   }
 
   /**
@@ -1182,9 +1206,10 @@ class GallerySyncService {
   private async resolveSyncManifest(
     clientId: string,
     lastSyncTime: number,
+    cursor: string = "",
   ): Promise<{syncData: SyncManifestData; usedFullSync: boolean} | null> {
     const store = useGallerySyncStore.getState()
-    let syncData = await this.fetchSyncManifest(clientId, lastSyncTime)
+    let syncData = await this.fetchSyncManifest(clientId, lastSyncTime, cursor)
     let clockFixed = false
 
     const skewOnFirst = detectClockSkew(Date.now(), syncData.server_time, lastSyncTime)
@@ -1192,7 +1217,7 @@ class GallerySyncService {
       clockFixed = await fixGlassesClockIfSkewed(syncData.server_time, lastSyncTime)
       if (clockFixed) {
         console.log("[GallerySyncService]   🔄 Retrying /api/sync with last_sync_time=0 after clock fix")
-        syncData = await this.fetchSyncManifest(clientId, 0)
+        syncData = await this.fetchSyncManifest(clientId, 0, "")
       }
     }
 
@@ -1208,7 +1233,7 @@ class GallerySyncService {
     if (!clockFixed && store.glassesHasContent && lastSyncTime !== 0 && !alreadyRetriedForThisWatermark) {
       this.lastFullSyncRetryKey = retryKey
       console.log("[GallerySyncService]   🔄 Empty sync but glasses report content — retrying with last_sync_time=0")
-      syncData = await this.fetchSyncManifest(clientId, 0)
+      syncData = await this.fetchSyncManifest(clientId, 0, "")
       if (!isSyncManifestEmpty(syncData)) {
         return {syncData, usedFullSync: true}
       }
@@ -1258,7 +1283,11 @@ class GallerySyncService {
 
       console.log("[GallerySyncService]   📡 Calling /api/sync endpoint...")
       const syncStartTime = Date.now()
-      const resolved = await this.resolveSyncManifest(syncState.client_id, syncState.last_sync_time)
+      const resolved = await this.resolveSyncManifest(
+        syncState.client_id,
+        syncState.last_sync_time,
+        syncState.sync_cursor ?? "",
+      )
       const _syncDuration = Date.now() - syncStartTime
       console.log(`[GallerySyncService]   ✅ /api/sync completed in ${_syncDuration}ms`)
 
@@ -1281,6 +1310,9 @@ class GallerySyncService {
 
       if (isSyncManifestEmpty(syncData)) {
         console.log("[GallerySyncService]   ✅ No new files to sync - already up to date!")
+        if (syncData.next_cursor !== undefined) {
+          await localStorageService.updateSyncState({sync_cursor: syncData.next_cursor})
+        }
         store.setSyncComplete()
         await this.onSyncComplete(0, 0)
         return
@@ -1332,7 +1364,7 @@ class GallerySyncService {
         await gallerySyncNotifications.showSyncStarted(captures.length)
 
         console.log("[GallerySyncService]   🚀 Beginning capture download execution...")
-        await this.executeCaptureDownload(captures, syncData.server_time)
+        await this.executeCaptureDownload(captures, syncData.server_time, syncData.next_cursor)
       } else {
         // Legacy flat file sync path
         const filesToSync = syncData.changed_files
@@ -1368,7 +1400,7 @@ class GallerySyncService {
         await gallerySyncNotifications.showSyncStarted(userVisibleCount)
 
         console.log("[GallerySyncService]   🚀 Beginning download execution (legacy)...")
-        await this.executeDownload(filesToSync, syncData.server_time)
+        await this.executeDownload(filesToSync, syncData.server_time, syncData.next_cursor)
       }
     } catch (error: any) {
       console.error("[GallerySyncService] Failed to start download:", error)
@@ -1387,7 +1419,7 @@ class GallerySyncService {
    * NOTE: The sidecar/bracket filtering within is likely dead code — old firmware
    * only produces flat photos/videos with no sidecars or HDR brackets.
    */
-  private async executeDownload(files: PhotoInfo[], serverTime: number): Promise<void> {
+  private async executeDownload(files: PhotoInfo[], serverTime: number, nextCursor?: string): Promise<void> {
     const downloadStartTime = Date.now()
     console.log("[GallerySyncService] ========================================")
     console.log("[GallerySyncService] ⬇️ DOWNLOAD EXECUTION STARTED")
@@ -1628,6 +1660,13 @@ class GallerySyncService {
           total_size: currentSyncState.total_size + downloadResult.total_size,
         })
       }
+      // The change-log cursor only moves past this batch if nothing failed; otherwise the next
+      // sync walks again from the rolled-back watermark
+      if (nextCursor !== undefined) {
+        await localStorageService.updateSyncState({
+          sync_cursor: downloadResult.failed.length > 0 ? "" : nextCursor,
+        })
+      }
       console.log("[GallerySyncService]   ✅ Sync state updated:")
       console.log(
         `[GallerySyncService]      - New last_sync_time: ${syncWatermark} (${new Date(syncWatermark).toISOString()})`,
@@ -1670,7 +1709,11 @@ class GallerySyncService {
    * Execute capture-aware download (api_version=2).
    * Downloads captures as groups, runs HDR merge, saves single metadata entry per capture.
    */
-  private async executeCaptureDownload(captures: CaptureGroup[], serverTime: number): Promise<void> {
+  private async executeCaptureDownload(
+    captures: CaptureGroup[],
+    serverTime: number,
+    nextCursor?: string,
+  ): Promise<void> {
     const downloadStartTime = Date.now()
     console.log("[GallerySyncService] ========================================")
     console.log("[GallerySyncService] ⬇️ CAPTURE DOWNLOAD EXECUTION STARTED")
@@ -1843,6 +1886,11 @@ class GallerySyncService {
           total_size: currentSyncState.total_size + totalSizeDownloaded,
         })
       }
+      // The change-log cursor only moves past this batch if nothing failed; otherwise the next
+      // sync walks again from the rolled-back watermark
+      if (nextCursor !== undefined) {
+        await localStorageService.updateSyncState({sync_cursor: failedCount > 0 ? "" : nextCursor})
+      }
 
       store.setSyncComplete()
       await this.onSyncComplete(downloadedCount, failedCount)
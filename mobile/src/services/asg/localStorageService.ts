@@ -25,6 +25,9 @@ export interface DownloadedFile {
 
 interface SyncState {
   last_sync_time: number
+  // Change-log cursor from glasses that page /api/sync; empty until they hand one out, and
+  // cleared when a sync leaves failures so the next one walks again from last_sync_time
+  sync_cursor?: string
   client_id: string
   total_downloaded: number
   total_size: number
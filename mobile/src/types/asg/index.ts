@@ -37,6 +37,14 @@ export interface CaptureGroup {
   duration?: number // video only
 }
 
+// Tombstone from /api/sync: a file removed from the glasses after the sync cursor
+export interface SyncDeletedFile {
+  name: string // same form as CaptureFile.name
+  capture_id?: string
+  deleted_at: number
+  sequence?: number
+}
+
 export interface GalleryResponse {
   status: "success" | "error"
   data: {